@@ -0,0 +1,370 @@
+/*
+* By downloading the PROGRAM you agree to the following terms of use:
+* 
+* BROAD INSTITUTE
+* SOFTWARE LICENSE AGREEMENT
+* FOR ACADEMIC NON-COMMERCIAL RESEARCH PURPOSES ONLY
+* 
+* This Agreement is made between the Broad Institute, Inc. with a principal address at 415 Main Street, Cambridge, MA 02142 ("BROAD") and the LICENSEE and is effective at the date the downloading is completed ("EFFECTIVE DATE").
+* 
+* WHEREAS, LICENSEE desires to license the PROGRAM, as defined hereinafter, and BROAD wishes to have this PROGRAM utilized in the public interest, subject only to the royalty-free, nonexclusive, nontransferable license rights of the United States Government pursuant to 48 CFR 52.227-14; and
+* WHEREAS, LICENSEE desires to license the PROGRAM and BROAD desires to grant a license on the following terms and conditions.
+* NOW, THEREFORE, in consideration of the promises and covenants made herein, the parties hereto agree as follows:
+* 
+* 1. DEFINITIONS
+* 1.1 PROGRAM shall mean copyright in the object code and source code known as GATK3 and related documentation, if any, as they exist on the EFFECTIVE DATE and can be downloaded from http://www.broadinstitute.org/gatk on the EFFECTIVE DATE.
+* 
+* 2. LICENSE
+* 2.1 Grant. Subject to the terms of this Agreement, BROAD hereby grants to LICENSEE, solely for academic non-commercial research purposes, a non-exclusive, non-transferable license to: (a) download, execute and display the PROGRAM and (b) create bug fixes and modify the PROGRAM. LICENSEE hereby automatically grants to BROAD a non-exclusive, royalty-free, irrevocable license to any LICENSEE bug fixes or modifications to the PROGRAM with unlimited rights to sublicense and/or distribute.  LICENSEE agrees to provide any such modifications and bug fixes to BROAD promptly upon their creation.
+* The LICENSEE may apply the PROGRAM in a pipeline to data owned by users other than the LICENSEE and provide these users the results of the PROGRAM provided LICENSEE does so for academic non-commercial purposes only. For clarification purposes, academic sponsored research is not a commercial use under the terms of this Agreement.
+* 2.2 No Sublicensing or Additional Rights. LICENSEE shall not sublicense or distribute the PROGRAM, in whole or in part, without prior written permission from BROAD. LICENSEE shall ensure that all of its users agree to the terms of this Agreement. LICENSEE further agrees that it shall not put the PROGRAM on a network, server, or other similar technology that may be accessed by anyone other than the LICENSEE and its employees and users who have agreed to the terms of this agreement.
+* 2.3 License Limitations. Nothing in this Agreement shall be construed to confer any rights upon LICENSEE by implication, estoppel, or otherwise to any computer software, trademark, intellectual property, or patent rights of BROAD, or of any other entity, except as expressly granted herein. LICENSEE agrees that the PROGRAM, in whole or part, shall not be used for any commercial purpose, including without limitation, as the basis of a commercial software or hardware product or to provide services. LICENSEE further agrees that the PROGRAM shall not be copied or otherwise adapted in order to circumvent the need for obtaining a license for use of the PROGRAM.
+* 
+* 3. PHONE-HOME FEATURE
+* LICENSEE expressly acknowledges that the PROGRAM contains an embedded automatic reporting system ("PHONE-HOME") which is enabled by default upon download. Unless LICENSEE requests disablement of PHONE-HOME, LICENSEE agrees that BROAD may collect limited information transmitted by PHONE-HOME regarding LICENSEE and its use of the PROGRAM.  Such information shall include LICENSEE'S user identification, version number of the PROGRAM and tools being run, mode of analysis employed, and any error reports generated during run-time.  Collection of such information is used by BROAD solely to monitor usage rates, fulfill reporting requirements to BROAD funding agencies, drive improvements to the PROGRAM, and facilitate adjustments to PROGRAM-related documentation.
+* 
+* 4. OWNERSHIP OF INTELLECTUAL PROPERTY
+* LICENSEE acknowledges that title to the PROGRAM shall remain with BROAD. The PROGRAM is marked with the following BROAD copyright notice and notice of attribution to contributors. LICENSEE shall retain such notice on all copies. LICENSEE agrees to include appropriate attribution if any results obtained from use of the PROGRAM are included in any publication.
+* Copyright 2012-2016 Broad Institute, Inc.
+* Notice of attribution: The GATK3 program was made available through the generosity of Medical and Population Genetics program at the Broad Institute, Inc.
+* LICENSEE shall not use any trademark or trade name of BROAD, or any variation, adaptation, or abbreviation, of such marks or trade names, or any names of officers, faculty, students, employees, or agents of BROAD except as states above for attribution purposes.
+* 
+* 5. INDEMNIFICATION
+* LICENSEE shall indemnify, defend, and hold harmless BROAD, and their respective officers, faculty, students, employees, associated investigators and agents, and their respective successors, heirs and assigns, (Indemnitees), against any liability, damage, loss, or expense (including reasonable attorneys fees and expenses) incurred by or imposed upon any of the Indemnitees in connection with any claims, suits, actions, demands or judgments arising out of any theory of liability (including, without limitation, actions in the form of tort, warranty, or strict liability and regardless of whether such action has any factual basis) pursuant to any right or license granted under this Agreement.
+* 
+* 6. NO REPRESENTATIONS OR WARRANTIES
+* THE PROGRAM IS DELIVERED AS IS. BROAD MAKES NO REPRESENTATIONS OR WARRANTIES OF ANY KIND CONCERNING THE PROGRAM OR THE COPYRIGHT, EXPRESS OR IMPLIED, INCLUDING, WITHOUT LIMITATION, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NONINFRINGEMENT, OR THE ABSENCE OF LATENT OR OTHER DEFECTS, WHETHER OR NOT DISCOVERABLE. BROAD EXTENDS NO WARRANTIES OF ANY KIND AS TO PROGRAM CONFORMITY WITH WHATEVER USER MANUALS OR OTHER LITERATURE MAY BE ISSUED FROM TIME TO TIME.
+* IN NO EVENT SHALL BROAD OR ITS RESPECTIVE DIRECTORS, OFFICERS, EMPLOYEES, AFFILIATED INVESTIGATORS AND AFFILIATES BE LIABLE FOR INCIDENTAL OR CONSEQUENTIAL DAMAGES OF ANY KIND, INCLUDING, WITHOUT LIMITATION, ECONOMIC DAMAGES OR INJURY TO PROPERTY AND LOST PROFITS, REGARDLESS OF WHETHER BROAD SHALL BE ADVISED, SHALL HAVE OTHER REASON TO KNOW, OR IN FACT SHALL KNOW OF THE POSSIBILITY OF THE FOREGOING.
+* 
+* 7. ASSIGNMENT
+* This Agreement is personal to LICENSEE and any rights or obligations assigned by LICENSEE without the prior written consent of BROAD shall be null and void.
+* 
+* 8. MISCELLANEOUS
+* 8.1 Export Control. LICENSEE gives assurance that it will comply with all United States export control laws and regulations controlling the export of the PROGRAM, including, without limitation, all Export Administration Regulations of the United States Department of Commerce. Among other things, these laws and regulations prohibit, or require a license for, the export of certain types of software to specified countries.
+* 8.2 Termination. LICENSEE shall have the right to terminate this Agreement for any reason upon prior written notice to BROAD. If LICENSEE breaches any provision hereunder, and fails to cure such breach within thirty (30) days, BROAD may terminate this Agreement immediately. Upon termination, LICENSEE shall provide BROAD with written assurance that the original and all copies of the PROGRAM have been destroyed, except that, upon prior written authorization from BROAD, LICENSEE may retain a copy for archive purposes.
+* 8.3 Survival. The following provisions shall survive the expiration or termination of this Agreement: Articles 1, 3, 4, 5 and Sections 2.2, 2.3, 7.3, and 7.4.
+* 8.4 Notice. Any notices under this Agreement shall be in writing, shall specifically refer to this Agreement, and shall be sent by hand, recognized national overnight courier, confirmed facsimile transmission, confirmed electronic mail, or registered or certified mail, postage prepaid, return receipt requested. All notices under this Agreement shall be deemed effective upon receipt.
+* 8.5 Amendment and Waiver; Entire Agreement. This Agreement may be amended, supplemented, or otherwise modified only by means of a written instrument signed by all parties. Any waiver of any rights or failure to act in a specific instance shall relate only to such instance and shall not be construed as an agreement to waive any rights or fail to act in any other instance, whether or not similar. This Agreement constitutes the entire agreement among the parties with respect to its subject matter and supersedes prior agreements or understandings between the parties relating to its subject matter.
+* 8.6 Binding Effect; Headings. This Agreement shall be binding upon and inure to the benefit of the parties and their respective permitted successors and assigns. All headings are for convenience only and shall not affect the meaning of any provision of this Agreement.
+* 8.7 Governing Law. This Agreement shall be construed, governed, interpreted and applied in accordance with the internal laws of the Commonwealth of Massachusetts, U.S.A., without regard to conflict of laws principles.
+*/
+
+
+package org.broadinstitute.gatk.benchmarks;
+
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.Genotype;
+import htsjdk.variant.variantcontext.GenotypeBuilder;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.VariantContextBuilder;
+import htsjdk.variant.variantcontext.VariantContextUtils;
+import htsjdk.variant.vcf.VCFConstants;
+import htsjdk.variant.vcf.VCFHeader;
+import htsjdk.variant.vcf.VCFHeaderLine;
+import htsjdk.variant.vcf.VCFStandardHeaderLines;
+import org.broadinstitute.gatk.utils.BaseUtils;
+import org.broadinstitute.gatk.utils.genotyper.ReadLikelihoods;
+import org.broadinstitute.gatk.utils.gvcf.ReferenceConfidenceList;
+import org.broadinstitute.gatk.utils.haplotype.Haplotype;
+import org.broadinstitute.gatk.utils.sam.ArtificialBAMBuilder;
+import org.broadinstitute.gatk.utils.sam.ArtificialSAMUtils;
+import org.broadinstitute.gatk.utils.sam.GATKSAMRecord;
+import org.broadinstitute.gatk.utils.variant.GATKVCFConstants;
+
+import java.util.*;
+
+/**
+ * Deterministic generator of the synthetic data sets the benchmarks run over
+ *
+ * Every benchmark builds its inputs from a generator with a fixed seed in its setup, so that the same work
+ * is measured on every run and on every commit, without depending on any BAM or VCF that isn't checked in.
+ */
+public final class BenchmarkData {
+    /** The seed used by all of the benchmarks, so that runs across commits see identical inputs */
+    public static final long DEFAULT_SEED = 42L;
+
+    /** The contig of all generated reads and variants */
+    public static final String CONTIG = "1";
+
+    /** The length of the generated contig */
+    public static final int CONTIG_LENGTH = 1000000;
+
+    private static final byte[] BASES = {'A', 'C', 'G', 'T'};
+
+    private final Random random;
+
+    public BenchmarkData() {
+        this(DEFAULT_SEED);
+    }
+
+    public BenchmarkData(final long seed) {
+        random = new Random(seed);
+    }
+
+    /**
+     * @return a SAM header with a single contig of CONTIG_LENGTH bp named CONTIG
+     */
+    public static SAMFileHeader header() {
+        return ArtificialSAMUtils.createArtificialSamHeader(Collections.singletonList(CONTIG), Collections.singletonList(CONTIG_LENGTH));
+    }
+
+    /**
+     * @param length the number of bases
+     * @return uniformly random ACGT bases
+     */
+    public byte[] bases(final int length) {
+        final byte[] bases = new byte[length];
+        for ( int i = 0; i < length; i++ )
+            bases[i] = BASES[random.nextInt(BASES.length)];
+        return bases;
+    }
+
+    /**
+     * @param length the number of qualities
+     * @param minQual the smallest quality to generate
+     * @param maxQual the largest quality to generate
+     * @return uniformly random qualities in [minQual, maxQual]
+     */
+    public byte[] qualities(final int length, final int minQual, final int maxQual) {
+        final byte[] quals = new byte[length];
+        for ( int i = 0; i < length; i++ )
+            quals[i] = (byte)(minQual + random.nextInt(maxQual - minQual + 1));
+        return quals;
+    }
+
+    /**
+     * Apply random SNPs and short indels to a sequence
+     *
+     * @param ref the sequence to mutate, which is not modified
+     * @param nSNPs the number of substitutions
+     * @param nIndels the number of 1-5 bp insertions or deletions
+     * @return the mutated sequence
+     */
+    public byte[] mutate(final byte[] ref, final int nSNPs, final int nIndels) {
+        final byte[] snps = ref.clone();
+        for ( int i = 0; i < nSNPs; i++ ) {
+            final int offset = random.nextInt(snps.length);
+            snps[offset] = otherBase(snps[offset]);
+        }
+
+        final StringBuilder mutated = new StringBuilder(new String(snps));
+        for ( int i = 0; i < nIndels; i++ ) {
+            final int length = 1 + random.nextInt(5);
+            // keep the indels away from the ends, so that the haplotypes still anchor on the reference
+            final int offset = length + random.nextInt(Math.max(1, mutated.length() - 4 * length));
+            if ( random.nextBoolean() )
+                mutated.insert(offset, new String(bases(length)));
+            else
+                mutated.delete(offset, offset + length);
+        }
+        return mutated.toString().getBytes();
+    }
+
+    /**
+     * @param ref the reference haplotype bases
+     * @param nHaplotypes the total number of haplotypes, including the reference
+     * @param nSNPs the number of SNPs in each non-reference haplotype
+     * @param nIndels the number of indels in each non-reference haplotype
+     * @return the reference haplotype followed by nHaplotypes - 1 mutated ones
+     */
+    public List<Haplotype> haplotypes(final byte[] ref, final int nHaplotypes, final int nSNPs, final int nIndels) {
+        final List<Haplotype> haplotypes = new ArrayList<>(nHaplotypes);
+        haplotypes.add(new Haplotype(ref, true));
+        while ( haplotypes.size() < nHaplotypes )
+            haplotypes.add(new Haplotype(mutate(ref, nSNPs, nIndels), false));
+        return haplotypes;
+    }
+
+    /**
+     * Sample reads from haplotypes, as from a diploid sequencing run with uniform coverage
+     *
+     * The reads are given a full-length M cigar at the position of their offset in the haplotype, which is exact
+     * for the reference and close enough for the non-reference haplotypes to drive assembly and the PairHMM.
+     *
+     * @param header the header of the reads
+     * @param haplotypes the haplotypes to sample from, uniformly
+     * @param refStart the alignment start of the haplotypes
+     * @param nReads the number of reads
+     * @param readLength the length of every read, which must not exceed that of any haplotype
+     * @param errorRate the per-base probability of a sequencing error
+     * @return reads sorted by alignment start
+     */
+    public List<GATKSAMRecord> readsFromHaplotypes(final SAMFileHeader header, final List<Haplotype> haplotypes, final int refStart,
+                                                   final int nReads, final int readLength, final double errorRate) {
+        final List<GATKSAMRecord> reads = new ArrayList<>(nReads);
+        for ( int i = 0; i < nReads; i++ ) {
+            final byte[] haplotype = haplotypes.get(random.nextInt(haplotypes.size())).getBases();
+            final int offset = random.nextInt(haplotype.length - readLength + 1);
+            final byte[] bases = Arrays.copyOfRange(haplotype, offset, offset + readLength);
+            final byte[] quals = qualities(readLength, 25, 40);
+            for ( int j = 0; j < readLength; j++ ) {
+                if ( random.nextDouble() < errorRate ) {
+                    bases[j] = otherBase(bases[j]);
+                    quals[j] = (byte)(2 + random.nextInt(18));
+                }
+            }
+            reads.add(ArtificialSAMUtils.createArtificialRead(header, "read" + i, 0, refStart + offset, bases, quals, readLength + "M"));
+        }
+        Collections.sort(reads, new Comparator<GATKSAMRecord>() {
+            @Override
+            public int compare(final GATKSAMRecord r1, final GATKSAMRecord r2) {
+                return Integer.compare(r1.getAlignmentStart(), r2.getAlignmentStart());
+            }
+        });
+        return reads;
+    }
+
+    /**
+     * Make a coordinate sorted stack of reads over consecutive loci with an ArtificialBAMBuilder, with random
+     * bases and qualities
+     *
+     * @param nSamples the number of samples, each with its own read group
+     * @param nReadsPerLocus the number of reads per sample starting at each locus
+     * @param nLoci the number of consecutive loci at which reads start
+     * @param readLength the length of the reads
+     * @return the builder, whose reads have already been made
+     */
+    public ArtificialBAMBuilder pileup(final int nSamples, final int nReadsPerLocus, final int nLoci, final int readLength) {
+        final ArtificialBAMBuilder builder = new ArtificialBAMBuilder(header().getSequenceDictionary(), nReadsPerLocus, nLoci)
+                .createAndSetHeader(nSamples)
+                .setReadLength(readLength);
+        for ( final GATKSAMRecord read : builder.makeReads() ) {
+            read.setReadBases(bases(readLength));
+            read.setBaseQualities(qualities(readLength, 5, 40));
+            if ( random.nextBoolean() )
+                read.setReadNegativeStrandFlag(true);
+        }
+        return builder;
+    }
+
+    /**
+     * Fill in read likelihoods as a PairHMM would: each read strongly supports one allele over the others
+     *
+     * @param likelihoods the likelihoods to overwrite
+     */
+    public void randomizeLikelihoods(final ReadLikelihoods<?> likelihoods) {
+        for ( int s = 0; s < likelihoods.sampleCount(); s++ ) {
+            final ReadLikelihoods.Matrix<?> matrix = likelihoods.sampleMatrix(s);
+            for ( int r = 0; r < matrix.readCount(); r++ ) {
+                final int supported = random.nextInt(matrix.alleleCount());
+                for ( int a = 0; a < matrix.alleleCount(); a++ )
+                    matrix.set(a, r, a == supported ? -random.nextDouble() * 0.1 : -1 - random.nextDouble() * 10);
+            }
+        }
+    }
+
+    /**
+     * @param samples the samples of the header
+     * @return a VCF header with the contig and the standard INFO and FORMAT lines of the generated variants
+     */
+    public static VCFHeader vcfHeader(final Collection<String> samples) {
+        final Set<VCFHeaderLine> lines = new LinkedHashSet<>();
+        for ( final String key : Arrays.asList(VCFConstants.GENOTYPE_KEY, VCFConstants.GENOTYPE_ALLELE_DEPTHS,
+                VCFConstants.DEPTH_KEY, VCFConstants.GENOTYPE_QUALITY_KEY, VCFConstants.GENOTYPE_PL_KEY) )
+            lines.add(VCFStandardHeaderLines.getFormatLine(key));
+        for ( final String key : Arrays.asList(VCFConstants.ALLELE_COUNT_KEY, VCFConstants.ALLELE_FREQUENCY_KEY,
+                VCFConstants.ALLELE_NUMBER_KEY, VCFConstants.DEPTH_KEY) )
+            lines.add(VCFStandardHeaderLines.getInfoLine(key));
+        final VCFHeader header = new VCFHeader(lines, new ArrayList<>(samples));
+        header.setSequenceDictionary(header().getSequenceDictionary());
+        return header;
+    }
+
+    /**
+     * @param nSamples the number of samples
+     * @return sample names sample0 ... sample(nSamples-1)
+     */
+    public static List<String> samples(final int nSamples) {
+        final List<String> samples = new ArrayList<>(nSamples);
+        for ( int i = 0; i < nSamples; i++ )
+            samples.add("sample" + i);
+        return samples;
+    }
+
+    /**
+     * Make multi-sample diploid SNP calls, one in ten of them tri-allelic
+     *
+     * @param nVariants the number of sites, one every 100 bp
+     * @param samples the samples of every site
+     * @return the variants, with GT, AD, DP, GQ and PL for every sample
+     */
+    public List<VariantContext> variants(final int nVariants, final List<String> samples) {
+        final List<VariantContext> variants = new ArrayList<>(nVariants);
+        for ( int i = 0; i < nVariants; i++ ) {
+            final int position = 100 * (i + 1);
+            final byte refBase = BASES[random.nextInt(BASES.length)];
+            final List<Allele> alleles = new ArrayList<>(3);
+            alleles.add(Allele.create(refBase, true));
+            byte altBase = otherBase(refBase);
+            alleles.add(Allele.create(altBase, false));
+            if ( random.nextInt(10) == 0 ) {
+                do { altBase = otherBase(refBase); } while ( alleles.get(1).getBases()[0] == altBase );
+                alleles.add(Allele.create(altBase, false));
+            }
+
+            final List<Genotype> genotypes = new ArrayList<>(samples.size());
+            for ( final String sample : samples )
+                genotypes.add(genotype(sample, alleles));
+
+            final VariantContextBuilder builder = new VariantContextBuilder("benchmark", CONTIG, position, position, alleles)
+                    .genotypes(genotypes)
+                    .log10PError(-(10 + random.nextInt(1000)) / 10.0);
+            int depth = 0;
+            for ( final Genotype g : genotypes )
+                depth += g.getDP();
+            builder.attribute(VCFConstants.DEPTH_KEY, depth);
+            VariantContextUtils.calculateChromosomeCounts(builder, false);
+            variants.add(builder.make());
+        }
+        return variants;
+    }
+
+    /**
+     * Make the single-sample reference confidence of a contiguous stretch of the genome, as the HaplotypeCaller
+     * does in GVCF mode: mostly hom-ref sites whose GQ wanders across the bands, with a call every ~500 sites.
+     *
+     * @param sample the sample
+     * @param start the first position
+     * @param nSites the number of consecutive positions
+     * @return the sites in order
+     */
+    public ReferenceConfidenceList referenceConfidence(final String sample, final int start, final int nSites) {
+        final ReferenceConfidenceList sites = new ReferenceConfidenceList("HC", sample, 2, nSites);
+        int GQ = 30;
+        for ( int position = start; position < start + nSites; position++ ) {
+            final byte refBase = BASES[random.nextInt(BASES.length)];
+            if ( random.nextInt(500) == 0 ) {
+                final List<Allele> alleles = Arrays.asList(Allele.create(refBase, true), Allele.create(otherBase(refBase), false), GATKVCFConstants.NON_REF_SYMBOLIC_ALLELE);
+                sites.addCall(new VariantContextBuilder("HC", CONTIG, position, position, alleles)
+                        .genotypes(genotype(sample, alleles)).make());
+                continue;
+            }
+
+            GQ = Math.max(0, Math.min(99, GQ + random.nextInt(7) - 3));
+            final int depth = 10 + random.nextInt(30);
+            final int nonRef = random.nextInt(10) == 0 ? 1 : 0;
+            sites.addSite(CONTIG, position, refBase, new int[]{depth - nonRef, nonRef}, GQ, new int[]{0, GQ, 10 * depth});
+        }
+        return sites;
+    }
+
+    private Genotype genotype(final String sample, final List<Allele> alleles) {
+        final Allele first = alleles.get(random.nextInt(2));
+        final Allele second = alleles.get(random.nextInt(alleles.size()));
+        final int depth = 5 + random.nextInt(50);
+        final int[] AD = new int[alleles.size()];
+        for ( int i = 0; i < depth; i++ )
+            AD[random.nextBoolean() ? alleles.indexOf(first) : alleles.indexOf(second)]++;
+        final int[] PL = new int[alleles.size() * (alleles.size() + 1) / 2];
+        for ( int i = 0; i < PL.length; i++ )
+            PL[i] = random.nextInt(10 * depth);
+        PL[random.nextInt(PL.length)] = 0;
+        return new GenotypeBuilder(sample, Arrays.asList(first, second)).AD(AD).DP(depth).GQ(random.nextInt(100)).PL(PL).make();
+    }
+
+    private byte otherBase(final byte base) {
+        final int index = BaseUtils.simpleBaseToBaseIndex(base);
+        return BASES[(index + 1 + random.nextInt(BASES.length - 1)) % BASES.length];
+    }
+}
@@ -107,6 +107,12 @@ public class GatherBqsrReports extends CommandLineProgram {
     @Option(shortName = StandardOptionDefinitions.OUTPUT_SHORT_NAME, doc="File to output the gathered file to")
     public File OUTPUT;
 
+    @Option(doc="Number of threads used to read the scattered BQSR files", optional = true)
+    public int NUM_THREADS = BQSRGatherer.DEFAULT_NUM_THREADS;
+
+    @Option(doc="Maximum number of scattered BQSR files held in memory while they are read and combined", optional = true)
+    public int MAX_REPORTS_IN_MEMORY = BQSRGatherer.DEFAULT_MAX_REPORTS_IN_MEMORY;
+
     public static void main(final String[] args) {
         new GatherBqsrReports().instanceMainWithExit(args);
     }
@@ -119,7 +125,7 @@ public class GatherBqsrReports extends CommandLineProgram {
 
         IOUtil.assertFileIsWritable(OUTPUT);
 
-        new BQSRGatherer().gather(INPUT, OUTPUT);
+        new BQSRGatherer(NUM_THREADS, MAX_REPORTS_IN_MEMORY).gather(INPUT, OUTPUT);
 
         return 0;
     }
@@ -294,20 +294,13 @@ public abstract class AS_RankSumTest extends RankSumTest implements ReducibleAnn
         //shortcut to not try to calculate rank sum if there are no reads that unambiguously support the ref
         if (perAlleleValues.get(ref).isEmpty())
             return perAltRankSumResults;
+        //load refs (series 2) once; the test sorts it in place, so later alts get it already sorted
+        final double[] refs = convertToArray(perAlleleValues.get(ref));
         for (final Allele alt : perAlleleValues.keySet()) {
             if (alt.equals(ref, false))
                 continue;
-            final MannWhitneyU mannWhitneyU = new MannWhitneyU();
             //load alts (series 1)
-            List<Double> alts = new ArrayList<>();
-            for (final Number qual : perAlleleValues.get(alt)) {
-                alts.add((double) qual.intValue());
-            }
-            //load refs (series 2)
-            List<Double> refs = new ArrayList<>();
-            for (final Number qual : perAlleleValues.get(ref)) {
-                refs.add((double) qual.intValue());
-            }
+            final double[] alts = convertToArray(perAlleleValues.get(alt));
 
             if (DEBUG) {
                 System.out.format("%s, REF QUALS:", this.getClass().getName());
@@ -321,10 +314,26 @@ public abstract class AS_RankSumTest extends RankSumTest implements ReducibleAnn
 
             }
             // we are testing that set1 (the alt bases) have lower quality scores than set2 (the ref bases)
-            final MannWhitneyU.Result result = mannWhitneyU.test(convertToArray(alts), convertToArray(refs), MannWhitneyU.TestType.FIRST_DOMINATES);
+            final MannWhitneyU.Result result = mannWhitneyU.get().test(alts, refs, MannWhitneyU.TestType.FIRST_DOMINATES);
             perAltRankSumResults.put(alt, result.getZ());
         }
         return perAltRankSumResults;
     }
 
+    /**
+     * Expands the <value,count> pairs of a compressed list into a primitive array without boxing each element
+     */
+    protected static double[] convertToArray(final CompressedDataList<Integer> compressedList) {
+        int size = 0;
+        for (final int count : compressedList.getValueCounts().values())
+            size += count;
+        final double[] ret = new double[size];
+        int offset = 0;
+        for (final Map.Entry<Integer, Integer> valueCount : compressedList.getValueCounts().entrySet()) {
+            Arrays.fill(ret, offset, offset + valueCount.getValue(), valueCount.getKey());
+            offset += valueCount.getValue();
+        }
+        return ret;
+    }
+
 }
@@ -104,7 +104,6 @@ public class ExcessHet extends InfoFieldAnnotation implements StandardAnnotation
     private final double minNeededValue = 1.0E-16;
     private Set<String> founderIds;
     private final boolean RETURN_ROUNDED = true;
-    private int sampleCount = -1;
 
     @Override
     public void initialize ( AnnotatorCompatible walker, GenomeAnalysisEngine toolkit, Set<VCFHeaderLine> headerLines ) {
@@ -128,9 +127,15 @@ public class ExcessHet extends InfoFieldAnnotation implements StandardAnnotation
     }
 
     protected double calculateEH(final VariantContext vc, final GenotypesContext genotypes) {
-        HeterozygosityUtils heterozygosityUtils = new HeterozygosityUtils(RETURN_ROUNDED);
+        return calculateEH(vc, genotypes, new HeterozygosityUtils(RETURN_ROUNDED));
+    }
+
+    /**
+     * The sample count is read back from {@code heterozygosityUtils} rather than kept on the annotation, which is
+     * shared by every thread under -nct.
+     */
+    private double calculateEH(final VariantContext vc, final GenotypesContext genotypes, final HeterozygosityUtils heterozygosityUtils) {
         final double[] genotypeCountsDoubles = heterozygosityUtils.getGenotypeCountsForRefVsAllAlts(vc, genotypes);
-        sampleCount = heterozygosityUtils.getSampleCount();
         final int[] genotypeCounts = new int[genotypeCountsDoubles.length];
         for(int i = 0; i < genotypeCountsDoubles.length; i++) {
             genotypeCounts[i] = (int)genotypeCountsDoubles[i];
@@ -258,8 +263,9 @@ public class ExcessHet extends InfoFieldAnnotation implements StandardAnnotation
         final GenotypesContext genotypes = (founderIds == null || founderIds.isEmpty()) ? vc.getGenotypes() : vc.getGenotypes(founderIds);
         if (genotypes == null || !vc.isVariant())
             return null;
-        double EH = calculateEH(vc, genotypes);
-        if (sampleCount < 1)
+        final HeterozygosityUtils heterozygosityUtils = new HeterozygosityUtils(RETURN_ROUNDED);
+        double EH = calculateEH(vc, genotypes, heterozygosityUtils);
+        if (heterozygosityUtils.getSampleCount() < 1)
             return null;
         return Collections.singletonMap(getKeyNames().get(0), (Object) String.format("%.4f", EH));
     }
@@ -199,11 +199,51 @@ public class QualByDepth extends InfoFieldAnnotation implements StandardAnnotati
     protected static double fixTooHighQD(final double QD) {
         if ( QD < MAX_QD_BEFORE_FIXING ) {
             return QD;
-        } else {
-            return IDEAL_HIGH_QD + Utils.getRandomGenerator().nextGaussian() * JITTER_SIGMA;
         }
+
+        final JitterDeferral deferral = jitterDeferral.get();
+        if ( deferral.deferring ) {
+            deferral.jitterNeeded = true;
+            return IDEAL_HIGH_QD;
+        }
+        return IDEAL_HIGH_QD + Utils.getRandomGenerator().nextGaussian() * JITTER_SIGMA;
+    }
+
+    /**
+     * Stop drawing the jitter of too high QD values from the shared random generator on this thread.
+     *
+     * The jitter drawn for a site depends on the sites annotated before it, so a walker annotating sites in parallel
+     * defers the jitter in its worker threads, and annotates the sites that needed it again in genomic order.
+     */
+    public static void deferJitter() {
+        final JitterDeferral deferral = jitterDeferral.get();
+        deferral.deferring = true;
+        deferral.jitterNeeded = false;
+    }
+
+    /**
+     * Draw the jitter of too high QD values from the shared random generator again on this thread
+     *
+     * @return true if a QD value needed jitter since {@link #deferJitter()}, in which case it must be computed again
+     */
+    public static boolean stopDeferringJitter() {
+        final JitterDeferral deferral = jitterDeferral.get();
+        deferral.deferring = false;
+        return deferral.jitterNeeded;
     }
 
+    private static final class JitterDeferral {
+        private boolean deferring = false;
+        private boolean jitterNeeded = false;
+    }
+
+    private static final ThreadLocal<JitterDeferral> jitterDeferral = new ThreadLocal<JitterDeferral>() {
+        @Override
+        protected JitterDeferral initialValue() {
+            return new JitterDeferral();
+        }
+    };
+
     protected final static double MAX_QD_BEFORE_FIXING = 35;
     protected final static double IDEAL_HIGH_QD = 30;
     protected final static double JITTER_SIGMA = 3;
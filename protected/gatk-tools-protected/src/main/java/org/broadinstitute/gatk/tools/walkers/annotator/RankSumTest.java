@@ -79,6 +79,16 @@ public abstract class RankSumTest extends InfoFieldAnnotation implements ActiveR
     static final boolean DEBUG = false;
     protected static double INVALID_ELEMENT_FROM_READ = Double.NEGATIVE_INFINITY;
 
+    /**
+     * MannWhitneyU reuses its ranking buffers between tests, so keep one per thread rather than one per site
+     */
+    protected static final ThreadLocal<MannWhitneyU> mannWhitneyU = new ThreadLocal<MannWhitneyU>() {
+        @Override
+        protected MannWhitneyU initialValue() {
+            return new MannWhitneyU();
+        }
+    };
+
     public Map<String, Object> annotate(final RefMetaDataTracker tracker,
                                         final AnnotatorCompatible walker,
                                         final ReferenceContext ref,
@@ -120,8 +130,6 @@ public abstract class RankSumTest extends InfoFieldAnnotation implements ActiveR
         if ( refQuals.isEmpty() && altQuals.isEmpty() )
             return null;
 
-        final MannWhitneyU mannWhitneyU = new MannWhitneyU();
-
         if (DEBUG) {
             System.out.format("%s, REF QUALS:", this.getClass().getName());
             for (final Double qual : refQuals)
@@ -134,7 +142,7 @@ public abstract class RankSumTest extends InfoFieldAnnotation implements ActiveR
 
         }
         // we are testing that set1 (the alt bases) have lower quality scores than set2 (the ref bases)
-        final MannWhitneyU.Result result = mannWhitneyU.test(convertToArray(altQuals), convertToArray(refQuals), MannWhitneyU.TestType.FIRST_DOMINATES);
+        final MannWhitneyU.Result result = mannWhitneyU.get().test(convertToArray(altQuals), convertToArray(refQuals), MannWhitneyU.TestType.FIRST_DOMINATES);
         final double zScore = result.getZ();
 
 
@@ -71,11 +71,14 @@ import org.broadinstitute.gatk.tools.walkers.genotyper.VariantCallContext;
 import org.broadinstitute.gatk.utils.GenomeLoc;
 import org.broadinstitute.gatk.utils.exceptions.GATKException;
 import org.broadinstitute.gatk.utils.exceptions.UserException;
+import org.broadinstitute.gatk.utils.pileup.PileupElement;
 import org.broadinstitute.gatk.utils.pileup.ReadBackedPileup;
+import org.broadinstitute.gatk.utils.sam.GATKSAMReadGroupRecord;
 import htsjdk.variant.variantcontext.*;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Estimate cross-sample contamination
@@ -123,12 +126,13 @@ import java.util.*;
  *
  * <h3>Notes</h3>
  * Multiple modes are supported simultaneously, e.g. contamination by sample and readgroup can be computed in the same run.
+ * The tool may be run with multiple threads (-nt).
  */
 @DocumentedGATKFeature( groupName = HelpConstants.DOCS_CAT_QC, extraDocs = {CommandLineGATK.class} )
 @Allows(value = {DataSource.READS, DataSource.REFERENCE})
 @Requires(value = {DataSource.READS, DataSource.REFERENCE}, referenceMetaData = @RMD(name = "genotypes", type = VariantContext.class))
 @By(DataSource.READS)
-public class ContEst extends RodWalker<Map<String, Map<String, ContaminationStats>>, ContaminationResults> {
+public class ContEst extends RodWalker<ContaminationResults.SiteObservations, ContaminationResults> implements TreeReducible<ContaminationResults> {
 
     // ------------------------------------------------------------------------------------------------------------------------------------------------------
     // Some constants we use
@@ -230,6 +234,9 @@ public class ContEst extends RodWalker<Map<String, Map<String, ContaminationStat
     private final Map<String, ContaminationRunType> contaminationNames = new LinkedHashMap<String, ContaminationRunType>();       // a list, containing the contamination names, be it read groups or bam file names
     private static String[] ALL_POPULATIONS = new String[]{"ALL", "CHD", "LWK", "CHB", "CEU", "MXL", "GIH", "MKK", "TSI", "CLM", "GBR", "ASW", "YRI", "IBS", "FIN", "PUR", "JPT", "CHS"};
     private String[] populationsToEvaluate;
+    private String[] contaminationNameList;                                        // the contamination names, indexed as in the ContaminationResults
+    private final Map<String, int[]> readGroupContaminationNames = new HashMap<String, int[]>();     // read group id to the indices of the contamination names its reads count towards
+    private int[] noReadGroupContaminationNames;                                   // the contamination names for reads without a read group
 
     // variables involved in the array-free mode
     private boolean useSequencingGenotypes = false; // if false we're using the sequencing geneotypes; otherwise we require array genotypes
@@ -239,13 +246,13 @@ public class ContEst extends RodWalker<Map<String, Map<String, ContaminationStat
     String genotypeSample = null;
 
 
-    // counts for each of the possible combinations
-    int totalSites = 0;
-    int countPopulationSites = 0;
-    int countGenotypeNonHomVar = 0;
-    int countGenotypeHomVar = 0;
-    int countPassCoverage = 0;
-    int countResults = 0;
+    // counts for each of the possible combinations; shared by all the threads of the traversal
+    final AtomicLong totalSites = new AtomicLong();
+    final AtomicLong countPopulationSites = new AtomicLong();
+    final AtomicLong countGenotypeNonHomVar = new AtomicLong();
+    final AtomicLong countGenotypeHomVar = new AtomicLong();
+    final AtomicLong countPassCoverage = new AtomicLong();
+    final AtomicLong countResults = new AtomicLong();
 
     public enum SeqGenotypeMode { HARD_THRESHOLD, UNIFIED_GENOTYPER }
     // create our list of allele characters for conversion
@@ -318,33 +325,58 @@ public class ContEst extends RodWalker<Map<String, Map<String, ContaminationStat
 
         this.populationsToEvaluate = (population == null || "EVERY".equals(population)) ? ALL_POPULATIONS : new String[]{population};
 
+        // work out up front which contamination names the reads of each read group count towards
+        this.contaminationNameList = contaminationNames.keySet().toArray(new String[contaminationNames.size()]);
+        this.noReadGroupContaminationNames = getContaminationNameIndices(null);
+        for (SAMReadGroupRecord readGroup : getToolkit().getSAMFileHeader().getReadGroups())
+            readGroupContaminationNames.put(readGroup.getId(), getContaminationNameIndices(readGroup));
     }
+
     /**
-     * our map function, which emits a contamination stats for each of the subgroups (lanes, samples, etc) that we encounter
+     * get the indices of the contamination names to which the reads of a read group contribute
+     * @param readGroup the read group, or null for reads without one
+     * @return the indices into contaminationNameList
+     */
+    private int[] getContaminationNameIndices(SAMReadGroupRecord readGroup) {
+        int[] indices = new int[contaminationNameList.length];
+        int count = 0;
+        for (int index = 0; index < contaminationNameList.length; index++) {
+            String name = contaminationNameList[index];
+            ContaminationRunType type = contaminationNames.get(name);
+            if (type == ContaminationRunType.META ||
+                    (readGroup != null && type == ContaminationRunType.READGROUP && name.equals(readGroup.getId())) ||
+                    (readGroup != null && type == ContaminationRunType.SAMPLE && name.equals(readGroup.getSample())))
+                indices[count++] = index;
+        }
+        return Arrays.copyOf(indices, count);
+    }
+
+    /**
+     * our map function, which emits the observations of each of the subgroups (lanes, samples, etc) that we encounter
      *
      * @param tracker the reference meta data tracker, from which we get the array truth data
      * @param ref     the reference information at this position
      * @param context the read context, where we get the alignment data
-     * @return a mapping of our subgroup name to contamination estimate
+     * @return the base counts of each subgroup and the population alleles at this site, or null if the site is uninformative
      */
     @Override
-    public Map<String, Map<String, ContaminationStats>> map(RefMetaDataTracker tracker, ReferenceContext ref, AlignmentContext context) {
-        totalSites++;
+    public ContaminationResults.SiteObservations map(RefMetaDataTracker tracker, ReferenceContext ref, AlignmentContext context) {
+        totalSites.incrementAndGet();
         if (tracker == null) return null;
         if (context == null) return null;
 
         VariantContext popVC = tracker.getFirstValue(pop);
         byte referenceBase = ref.getBase();
         if (popVC == null) return null;
-        countPopulationSites++;
+        countPopulationSites.incrementAndGet();
         Genotype genotype = getGenotype(tracker,context,ref,useSequencingGenotypes);
 
         // only use homozygous sites
         if (genotype == null || !genotype.isHomVar()) {
-            countGenotypeNonHomVar++;
+            countGenotypeNonHomVar.incrementAndGet();
             return null;
         } else {
-            countGenotypeHomVar++;
+            countGenotypeHomVar.incrementAndGet();
         }
 
 
@@ -353,9 +385,6 @@ public class ContEst extends RodWalker<Map<String, Map<String, ContaminationStat
 
         String rsNumber = "";
 
-        // our map of contamination results
-        Map<String, Map<String, ContaminationStats>> stats = new HashMap<String, Map<String, ContaminationStats>>();
-
         // get the base pileup.  This is only really required when we have both a genotyping and EVAL_BAM_TAG tagged bams
         // becuase we only want contamination estimates drawn from the eval tagged bam
         ReadBackedPileup defaultPile;
@@ -364,60 +393,101 @@ public class ContEst extends RodWalker<Map<String, Map<String, ContaminationStat
         else
             defaultPile = context.getBasePileup();
 
-        // if we're by-lane, get those stats
-        for (Map.Entry<String, ContaminationRunType> namePair : contaminationNames.entrySet()) {
-            ReadBackedPileup pile;
-            if (namePair.getValue() == ContaminationRunType.READGROUP)
-                pile = defaultPile.getPileupForReadGroup(namePair.getKey());
-            else if (namePair.getValue() == ContaminationRunType.META)
-                pile = defaultPile;
-            else if (namePair.getValue() == ContaminationRunType.SAMPLE)
-                pile = defaultPile.getPileupForSample(namePair.getKey());
-            else
-                throw new IllegalStateException("Unknown state, contamination type = " + laneStats + " is unsupported");
-            if (pile != null) {
-
-                ReadBackedPileup filteredPile =
-                        pile.getBaseAndMappingFilteredPileup(MIN_QSCORE, MIN_MAPQ);
+        // a single pass over the pileup collects the quality histogram of the filtered bases of each subgroup
+        int[][] qualityHistograms = new int[contaminationNameList.length][];
+        int[] depths = new int[contaminationNameList.length];
+        if (defaultPile != null) {
+            for (PileupElement p : defaultPile) {
+                GATKSAMReadGroupRecord readGroup = p.getRead().getReadGroup();
+                int[] nameIndices = readGroup == null ? noReadGroupContaminationNames : readGroupContaminationNames.get(readGroup.getReadGroupId());
+                if (nameIndices == null) nameIndices = noReadGroupContaminationNames;
+
+                // a subgroup is present at the site if it has any reads here, even if none pass the filters
+                boolean passesFilters = p.getMappingQual() >= MIN_MAPQ && (p.isDeletion() || p.getQual() >= MIN_QSCORE);
+                int baseIndex = getBaseIndex(p.getBase());
+                int qual = FIXED_EPSILON == null ? p.getQual() : FIXED_EPSILON;
+                for (int name : nameIndices) {
+                    if (qualityHistograms[name] == null)
+                        qualityHistograms[name] = new int[ContaminationEstimate.ALLELE_COUNT * ContaminationEstimate.QUAL_COUNT];
+                    if (passesFilters) {
+                        depths[name]++;
+                        if (baseIndex >= 0) qualityHistograms[name][ContaminationEstimate.histogramOffset(baseIndex, qual)]++;
+                    }
+                }
+            }
+        }
 
-                byte[] bases = filteredPile.getBases();
+        // restrict to sites that have greater than our required total depth, and count the bases of each subgroup
+        int[][] alleleCounts = new int[contaminationNameList.length][];
+        boolean covered = false;
+        for (int name = 0; name < contaminationNameList.length; name++) {
+            if (qualityHistograms[name] == null) continue;
+            if (depths[name] < MIN_SITE_DEPTH) {
+                qualityHistograms[name] = null;
+                continue;
+            }
+            countPassCoverage.incrementAndGet();
+            covered = true;
 
-                // restrict to sites that have greater than our required total depth
-                if (bases.length < MIN_SITE_DEPTH) {
-                    continue;
-                } else {
-                    countPassCoverage++;
-                }
+            alleleCounts[name] = new int[ContaminationEstimate.ALLELE_COUNT];
+            for (int base = 0; base < ContaminationEstimate.ALLELE_COUNT; base++)
+                for (int qual = 0; qual < ContaminationEstimate.QUAL_COUNT; qual++)
+                    alleleCounts[name][base] += qualityHistograms[name][ContaminationEstimate.histogramOffset(base, qual)];
+        }
+        if (!covered) return null;
+
+        // only use sites where our allele is the minor allele of the population
+        int[] minorAlleles = new int[populationsToEvaluate.length];
+        int[] majorAlleles = new int[populationsToEvaluate.length];
+        double[] minorAlleleFrequencies = new double[populationsToEvaluate.length];
+        boolean informative = false;
+        for (int index = 0; index < populationsToEvaluate.length; index++) {
+            String pop = populationsToEvaluate[index];
+            PopulationFrequencyInfo info = parsePopulationFrequencyInfo(popVC, pop);
+            if ( info == null )
+                throw new RuntimeException("No population frequency annotation for " + pop + " in " + popVC.toString());
 
-                byte[] quals;
-                if (FIXED_EPSILON == null) {
-                    quals = filteredPile.getQuals();
-                } else {
-                    quals = new byte[bases.length];
-                    Arrays.fill(quals, FIXED_EPSILON);
-                }
+            double alleleFreq = info.getMinorAlleleFrequency();
+            if (alleleFreq > 0.5) {
+                throw new RuntimeException("Minor allele frequency is greater than 0.5, this is an error; we saw AF of " + alleleFreq);
+            }
 
-                Map<String, ContaminationStats> results =
-                        calcStats(referenceBase,
-                                bases,
-                                quals,
-                                myBase,
+            minorAlleles[index] = myBase == info.getMinorAllele() ? getBaseIndex(info.getMinorAllele()) : -1;
+            majorAlleles[index] = getBaseIndex(info.getMajorAllele());
+            minorAlleleFrequencies[index] = alleleFreq;
+            informative |= minorAlleles[index] >= 0;
+        }
+        if (!informative) return null;
+
+        for (int name = 0; name < contaminationNameList.length; name++) {
+            if (qualityHistograms[name] == null) continue;
+            countResults.incrementAndGet();
+
+            if (baseReport != null && populationsToEvaluate.length == 1) {
+                int[] alts = alleleCounts[name];
+                PopulationFrequencyInfo info = parsePopulationFrequencyInfo(popVC, populationsToEvaluate[0]);
+                StringBuilder line = new StringBuilder(
+                        StringUtil.join("\t",
+                                contaminationNameList[name],
+                                context.getLocation().getContig(),
+                                "" + context.getLocation().getStart(),
                                 rsNumber,
-                                popVC,
-                                baseReport,
-                                context.getLocation(),
-                                precision,
-                                namePair.getKey(),
-                                populationsToEvaluate);
-
-                if (!results.isEmpty()) {
-                    countResults++;
-                    stats.put(namePair.getKey(), results);
-                }
+                                "" + (char) referenceBase,
+                                "" + (char) info.getMajorAllele(),
+                                "" + (char) info.getMinorAllele(),
+                                "" + (char) info.getMinorAllele() + "" + (char) info.getMinorAllele(),
+                                String.format("%1.4f", info.getMinorAlleleFrequency()),
+                                "" + alts[majorAlleles[0]],
+                                "" + alts[minorAlleles[0]]));
+
+                for (long cnt : alts)
+                    line.append("\t").append(cnt);
+                baseReport.println(line);
             }
         }
-        // return our collected stats
-        return stats;
+
+        return new ContaminationResults.SiteObservations(context.getLocation(), qualityHistograms, alleleCounts, depths,
+                minorAlleles, majorAlleles, minorAlleleFrequencies);
     }
 
     /**
@@ -581,94 +651,6 @@ public class ContEst extends RodWalker<Map<String, Map<String, ContaminationStat
     }
 
 
-    /**
-     * Calculate the contamination values per division, be it lane, meta, sample, etc
-     * @param referenceBase the reference base
-     * @param bases the bases seen
-     * @param quals and the bases qual values
-     * @param myAllele the allele we have (our hom var genotype allele)
-     * @param rsNumber the dbsnp number if available
-     * @param popVC the population variant context from hapmap
-     * @param baseReport if we're writing a base report, write it here
-     * @param loc our location
-     * @param precision the percision we're aiming for
-     * @param lane the lane name information
-     * @param pops our pops to run over
-     * @return a mapping of each target population to their estimated contamination
-     */
-    private static Map<String, ContaminationStats> calcStats(byte referenceBase,
-                                                             byte[] bases,
-                                                             byte[] quals,
-                                                             byte myAllele,
-                                                             String rsNumber,
-                                                             VariantContext popVC,
-                                                             PrintStream baseReport,
-                                                             GenomeLoc loc,
-                                                             Double precision,
-                                                             String lane,
-                                                             String[] pops) {
-        int[] alts = new int[4];
-        int total = 0;
-        // get the depth ratio we are aiming for
-        for (byte base : bases) {
-            if (base == 'A' || base == 'a') alts[0]++;
-            if (base == 'C' || base == 'c') alts[1]++;
-            if (base == 'G' || base == 'g') alts[2]++;
-            if (base == 'T' || base == 't') alts[3]++;
-            total++;
-        }
-
-        Map<String, ContaminationStats> ret = new HashMap<String, ContaminationStats>();
-
-        for (String pop : pops) {
-            PopulationFrequencyInfo info = parsePopulationFrequencyInfo(popVC, pop);
-            if ( info == null )
-                throw new RuntimeException("No population frequency annotation for " + pop + " in " + popVC.toString());
-
-            double alleleFreq = info.getMinorAlleleFrequency();
-            if (alleleFreq > 0.5) {
-                throw new RuntimeException("Minor allele frequency is greater than 0.5, this is an error; we saw AF of " + alleleFreq);
-            }
-
-            int majorCounts = alts[getBaseIndex(info.getMajorAllele())];
-            int minorCounts = alts[getBaseIndex(info.getMinorAllele())];
-            int otherCounts = total - majorCounts - minorCounts;
-
-
-            // only use sites where this is the minor allele
-            if (myAllele == info.minorAllele) {
-
-                if (pops.length == 1) {
-                    if (baseReport != null) {
-                        baseReport.print(
-                                StringUtil.join("\t",
-                                        lane,
-                                        loc.getContig(),
-                                        "" + loc.getStart(),
-                                        rsNumber,
-                                        "" + (char) referenceBase,
-                                        "" + (char) info.getMajorAllele(),
-                                        "" + (char) info.getMinorAllele(),
-                                        "" + (char) info.getMinorAllele() + "" + (char) info.getMinorAllele(),
-                                        String.format("%1.4f", alleleFreq),
-                                        "" + majorCounts,
-                                        "" + minorCounts));
-
-                        for (long cnt : alts)
-                            baseReport.print("\t" + cnt);
-                        baseReport.println();
-                    }
-                }
-
-                ContaminationEstimate est = new ContaminationEstimate(precision, alleleFreq, bases, quals, info.getMinorAllele(), info.getMajorAllele(), pop, loc);
-                ret.put(pop, new ContaminationStats(loc, 1, alleleFreq, minorCounts, majorCounts, otherCounts, alts, est));
-
-            }
-
-        }
-        return ret;
-    }
-
     private static int getBaseIndex(byte base) {
         if (base == 'A' || base == 'a') return 0;
         if (base == 'C' || base == 'c') return 1;
@@ -680,17 +662,23 @@ public class ContEst extends RodWalker<Map<String, Map<String, ContaminationStat
     // create a ContaminationResults to store the run information
     @Override
     public ContaminationResults reduceInit() {
-        return new ContaminationResults(precision);
+        return new ContaminationResults(precision, contaminationNameList, populationsToEvaluate, BETA_THRESHOLD);
     }
 
 
     @Override
-    public ContaminationResults reduce(Map<String, Map<String, ContaminationStats>> value, ContaminationResults sum) {
+    public ContaminationResults reduce(ContaminationResults.SiteObservations value, ContaminationResults sum) {
         if (value != null)
             sum.add(value);
         return sum;
     }
 
+    @Override
+    public ContaminationResults treeReduce(ContaminationResults lhs, ContaminationResults rhs) {
+        lhs.add(rhs);
+        return lhs;
+    }
+
     /**
      * on traversal done, output all the stats to the appropriate files
      *
@@ -720,7 +708,7 @@ public class ContEst extends RodWalker<Map<String, Map<String, ContaminationStat
 
         // output results at the end, based on the input parameters
         result.setStats(cleanedMap);
-        result.outputReport(precision, out, TRIM_FRACTION, TRIM_INTERVAL, BETA_THRESHOLD);
+        result.outputReport(precision, out, TRIM_FRACTION, TRIM_INTERVAL);
         if (likelihoodFile != null) result.writeCurves(likelihoodFile);
         logger.info("Total sites:  " + totalSites);
         logger.info("Population informed sites:  " + countPopulationSites);
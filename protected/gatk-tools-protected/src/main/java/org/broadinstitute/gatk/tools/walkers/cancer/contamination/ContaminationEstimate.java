@@ -52,30 +52,25 @@
 package org.broadinstitute.gatk.tools.walkers.cancer.contamination;
 
 
-import org.broadinstitute.gatk.utils.GenomeLoc;
-import org.broadinstitute.gatk.utils.collections.Pair;
-
-import java.util.Arrays;
-
 /**
- * a class that estimates and stores the contamination values for a site.
+ * a class that estimates the contamination likelihoods for a site, accumulating them into a grid of contamination bins.
+ *
+ * The bases at a site are summarized as a histogram of base qualities per allele, so the log likelihood of each bin is
+ * evaluated once per distinct quality rather than once per base.
  */
 class ContaminationEstimate {
-    private final double precision;             // to what precision do we want to run; e.g. if set to 1, we run using 1% increments
-    private final double[] bins;                // the bins representing the discrete contamination levels we're evaluating
-    private double populationFit = 0.0;
-    private String popultationName = "";
+    static final int QUAL_COUNT = Byte.MAX_VALUE + 1;   // the number of possible base quality values
+    static final int ALLELE_COUNT = 4;                  // A, C, G and T
 
     private static double[] precalculatedEpsilon;
 
-    private int arrayAlleleObservations = 0;
-    private int alternateAlleleObservations = 0;
+    private final double[] contaminationRates;         // the contamination level represented by each bin
 
     // precalculate the 128 values of epsilon that are possible
     static {
-        precalculatedEpsilon = new double[Byte.MAX_VALUE+1];
+        precalculatedEpsilon = new double[QUAL_COUNT];
 
-        for(int i=0; i <= (int)Byte.MAX_VALUE; i++) {
+        for(int i=0; i < QUAL_COUNT; i++) {
             precalculatedEpsilon[i] = Math.pow(10.0,-1.0*(((double)i)/10.0));
         }
     }
@@ -84,74 +79,71 @@ class ContaminationEstimate {
      * create the contamination estimate, given:
      * @param precision the precision value, to what level are we calculating the contamination
      */
-    public ContaminationEstimate(double precision,
-                                 double maf,
-                                 byte[] bases,
-                                 byte[] quals,
-                                 byte arrayAllele,
-                                 byte hapmapAlt,
-                                 String popName,
-                                 GenomeLoc locus
-                                 ) {
-        // setup the bins to the correct precision
-        this.precision = precision;
-        bins = new double[(int)Math.ceil(100/precision)+1];
-        if (maf == 0) maf = 0.00001;
+    public ContaminationEstimate(double precision) {
+        contaminationRates = new double[(int)Math.ceil(100/precision)+1];
+        for (int index = 0; index < contaminationRates.length; index++)
+            contaminationRates[index] = 1.0 - (double) index / (double) contaminationRates.length;
+    }
 
-        popultationName = popName;
+    /**
+     * @return the number of bins representing the discrete contamination levels we're evaluating
+     */
+    public int getBinCount() {
+        return contaminationRates.length;
+    }
 
-        Arrays.fill(bins,0.0); // just to make sure we don't have any residual values
+    /**
+     * the offset of a base and quality in a histogram of base qualities, laid out as ALLELE_COUNT runs of QUAL_COUNT
+     * @param baseIndex the index of the base (0 to 3 for A, C, G and T)
+     * @param qual the base quality
+     * @return the histogram offset
+     */
+    static int histogramOffset(int baseIndex, int qual) {
+        return baseIndex * QUAL_COUNT + qual;
+    }
 
-        // convert the quals
-        double[] realQuals = new double[quals.length];
-        int qIndex = 0;
-        for (byte qual : quals) {realQuals[qIndex++] = Math.pow(10.0,-1.0*(qual/10.0));}
+    /**
+     * add the log likelihood of the observed bases to each of the contamination bins
+     *
+     * @param bins the bins to accumulate into
+     * @param maf the minor allele frequency in the population
+     * @param qualityHistogram the count of bases for each base and quality, see histogramOffset
+     * @param arrayAllele the index of the allele we genotyped (the population minor allele)
+     * @param hapmapAlt the index of the population major allele
+     * @param popName the population name, for error reporting
+     */
+    public void addLikelihoods(double[] bins, double maf, int[] qualityHistogram, int arrayAllele, int hapmapAlt, String popName) {
+        if (bins.length != contaminationRates.length) throw new IllegalArgumentException("Expected " + contaminationRates.length + " bins, but saw " + bins.length);
+        if (maf == 0) maf = 0.00001;
 
         // check our inputs
         if (maf > 1.0 || maf < 0.0) throw new IllegalArgumentException("Invalid allele Freq: must be between 0 and 1 (inclusive), maf was " + maf + " for population " + popName);
 
-        // calculate the contamination for each bin
-        int qualOffset = 0;
-        for (byte base : bases) {
-
-            if (base == arrayAllele) { arrayAlleleObservations++; }
-            if (base == hapmapAlt) { alternateAlleleObservations++; }
-            double epsilon = precalculatedEpsilon[quals[qualOffset++]];
+        for (int qual = 0; qual < QUAL_COUNT; qual++) {
+            double epsilon = precalculatedEpsilon[qual];
 
-            for (int index = 0; index < bins.length; index++) {
+            int arrayAlleleObservations = qualityHistogram[histogramOffset(arrayAllele, qual)];
+            if (arrayAlleleObservations > 0)
+                addLikelihood(bins, arrayAlleleObservations,
+                        1.0 - epsilon,
+                        (maf) * (1.0 - epsilon) + (1.0 - maf) * (epsilon / 3.0));
 
-
-                double contaminationRate = (1.0 - (double) index / (double) bins.length);
-
-                if (base == arrayAllele) {
-                    bins[index] += Math.log((1.0 - contaminationRate) * (1.0 - epsilon) +
-                        contaminationRate * ((maf) * (1.0 - epsilon) + (1.0 - maf) * (epsilon/3.0)));
-                    populationFit += Math.log(epsilon);
-
-                } else if(hapmapAlt == base) {
-                    bins[index] += Math.log((1.0 - contaminationRate) * (epsilon / 3.0) +
-                            contaminationRate * ((maf) * (epsilon/3.0) + (1.0 - maf) * (1.0 - epsilon)));
-
-                    populationFit += Math.log(maf + epsilon);
-                }
-            }
+            int alternateAlleleObservations = qualityHistogram[histogramOffset(hapmapAlt, qual)];
+            if (alternateAlleleObservations > 0)
+                addLikelihood(bins, alternateAlleleObservations,
+                        epsilon / 3.0,
+                        (maf) * (epsilon / 3.0) + (1.0 - maf) * (1.0 - epsilon));
         }
     }
 
-    public double[] getBins() {
-        return bins;
-    }
-
-    public void setPopulationFit(double populationFit) {
-        this.populationFit = populationFit;
-    }
-
-    public double getPopulationFit() {
-        return populationFit;
-    }
-
-    public String getPopultationName() {
-        return popultationName;
+    /**
+     * add count * log((1 - c) * pure + c * contaminated) to each bin, where c is the contamination rate of the bin
+     */
+    private void addLikelihood(double[] bins, int count, double pure, double contaminated) {
+        final double[] rates = contaminationRates;
+        final double slope = contaminated - pure;
+        for (int index = 0; index < bins.length; index++)
+            bins[index] += count * Math.log(pure + rates[index] * slope);
     }
 
     public static class ConfidenceInterval {
@@ -64,6 +64,10 @@ import java.util.*;
 /**
  * our contamination results object; this object aggregates the results of the contamination run over lanes, samples,
  * or whatever other divisor we've used on the read data
+ *
+ * Each aggregation entity and population pair (a cell) accumulates its likelihoods into a single primitive grid.  The
+ * per-site likelihoods are only kept for sites that may be trimmed at the end of the run (see outputReport), and
+ * results from separate shards can be merged with add(ContaminationResults).
  */
 public class ContaminationResults {
 
@@ -95,7 +99,15 @@ public class ContaminationResults {
             return p;
         }
 
+        public GenomeLoc getSite() {
+            return site;
+        }
+
         public ContaminationData(GenomeLoc site, long basesMatching, long basesMismatching, double[] bins) {
+            this(site, basesMatching, basesMismatching, bins, probabilityOfMismatchMajority(basesMatching, basesMismatching));
+        }
+
+        private ContaminationData(GenomeLoc site, long basesMatching, long basesMismatching, double[] bins, double p) {
             this.site = site;
             this.basesMatching = basesMatching;
             this.basesMismatching = basesMismatching;
@@ -104,20 +116,27 @@ public class ContaminationResults {
             if (totalBases != 0) {
                 this.mismatchFraction = (double)this.basesMismatching / (double) totalBases;
             }
+            this.p = p;
+        }
 
-            int a = (int) this.getBasesMismatching() + 1;
-            int b = (int) this.getBasesMatching() + 1;
+        /**
+         * @return p(f>=0.5), the probability that the mismatching bases are the majority at the site
+         */
+        static double probabilityOfMismatchMajority(long basesMatching, long basesMismatching) {
+            int a = (int) basesMismatching + 1;
+            int b = (int) basesMatching + 1;
             BetaDistribution dist = new BetaDistributionImpl(a,b);
             try {
-                this.p = 1.0d - dist.cumulativeProbability(0.5d);
+                return 1.0d - dist.cumulativeProbability(0.5d);
             } catch (MathException me) {
                 throw new RuntimeException("Error! - " + me.toString());
             }
-
         }
 
+        // order by decreasing p, then by position so that the trimmed sites don't depend on the order of the shards
         public int compareTo(ContaminationData other) {
-            return -Double.compare(this.getP(), other.getP());
+            int cmp = -Double.compare(this.getP(), other.getP());
+            return cmp != 0 ? cmp : this.site.compareTo(other.site);
         }
 
         @Override
@@ -131,68 +150,119 @@ public class ContaminationResults {
         }
     }
 
+    /**
+     * the observations at one population site: the filtered base counts of each aggregation entity, and the alleles
+     * and minor allele frequency of each population
+     */
+    public static class SiteObservations {
+        private final GenomeLoc site;
+        private final int[][] qualityHistograms;        // per entity; null if the entity has no bases here
+        private final int[][] alleleCounts;             // per entity, the counts of A, C, G and T
+        private final int[] depths;                     // per entity, all bases including deletions and Ns
+        private final int[] minorAlleles;               // per population; -1 if our genotype isn't the minor allele
+        private final int[] majorAlleles;
+        private final double[] minorAlleleFrequencies;
+
+        public SiteObservations(GenomeLoc site, int[][] qualityHistograms, int[][] alleleCounts, int[] depths,
+                                int[] minorAlleles, int[] majorAlleles, double[] minorAlleleFrequencies) {
+            this.site = site;
+            this.qualityHistograms = qualityHistograms;
+            this.alleleCounts = alleleCounts;
+            this.depths = depths;
+            this.minorAlleles = minorAlleles;
+            this.majorAlleles = majorAlleles;
+            this.minorAlleleFrequencies = minorAlleleFrequencies;
+        }
+    }
+
 
     // what precision are we using in our calculations
     private final double precision;
 
-    // a map of our contamination targets and their stats
+    // the threshold for p(f>=0.5) at which sites may be trimmed
+    private final double betaThreshold;
+
+    private final ContaminationEstimate estimate;
+
+    // the aggregation entities ("META", sample names, or lane names) and the populations; cells are entity-major
+    private final String[] names;
+    private final String[] populations;
+
+    // the stats of each cell, created on the first site of the cell; the bins exclude the trim candidates
+    private final ContaminationStats[] cells;
+
+    // the sites of each cell that may be trimmed, with their own bins
+    private final List<List<ContaminationData>> trimCandidates;
+
+    // a map of our contamination targets and their stats, as filtered for output
     // key: aggregation entity ("META", sample name, or lane name)
-    // value: ContaminationStats (whcih
-    private Map<String,Map<String, ContaminationStats>> stats = new HashMap<String,Map<String, ContaminationStats>>();
+    // value: a map of population to ContaminationStats
+    private Map<String,Map<String, ContaminationStats>> stats = null;
 
-    public ContaminationResults(double precision) {
+    public ContaminationResults(double precision, String[] names, String[] populations, double betaThreshold) {
         this.precision = precision;
+        this.betaThreshold = betaThreshold;
+        this.estimate = new ContaminationEstimate(precision);
+        this.names = names;
+        this.populations = populations;
+        this.cells = new ContaminationStats[names.length * populations.length];
+        this.trimCandidates = new ArrayList<List<ContaminationData>>(cells.length);
+        for (int i = 0; i < cells.length; i++)
+            trimCandidates.add(new ArrayList<ContaminationData>());
     }
 
-
-    Map<String, Map<String, List<ContaminationData>>> storedData = new HashMap<String, Map<String, List<ContaminationData>>>();
-
     /**
-     * add to the stats
+     * add a site to the stats
      *
-     * @param newAggregationStats a mapping of the stat name to their statistics collected
+     * @param site the observations at the site
      */
-    public void add(Map<String, Map<String, ContaminationStats>> newAggregationStats) {
-
-        // for each aggregation level
-        for (String aggregationKey : newAggregationStats.keySet()) {
-            Map<String, ContaminationStats> populationContaminationStats = newAggregationStats.get(aggregationKey);
-
-
-            // a new way of doing this... store all the data until the end...
-            if (!storedData.containsKey(aggregationKey)) { storedData.put(aggregationKey, new HashMap<String, List<ContaminationData>>()); }
-            for (String pop : populationContaminationStats.keySet()) {
-                ContaminationStats newStats = populationContaminationStats.get(pop);
-
-                // if it exists... just merge it
-                if (!storedData.get(aggregationKey).containsKey(pop)) {
-                    storedData.get(aggregationKey).put(pop, new ArrayList<ContaminationData>());
+    public void add(SiteObservations site) {
+        for (int name = 0; name < names.length; name++) {
+            int[] histogram = site.qualityHistograms[name];
+            if (histogram == null) continue;
+            int[] alts = site.alleleCounts[name];
+
+            for (int pop = 0; pop < populations.length; pop++) {
+                int minor = site.minorAlleles[pop];
+                if (minor < 0) continue;
+                int major = site.majorAlleles[pop];
+                double maf = site.minorAlleleFrequencies[pop];
+
+                int cell = name * populations.length + pop;
+                if (cells[cell] == null) cells[cell] = new ContaminationStats(populations[pop], estimate.getBinCount());
+                ContaminationStats cellStats = cells[cell];
+
+                int majorCounts = alts[major];
+                int minorCounts = alts[minor];
+                cellStats.addSite(maf, minorCounts, majorCounts, site.depths[name] - majorCounts - minorCounts, alts);
+
+                // p(f>=0.5) can only reach a threshold above one half when the mismatching bases are the majority
+                double p = betaThreshold > 0.5 && majorCounts <= minorCounts ?
+                        0.0 : ContaminationData.probabilityOfMismatchMajority(minorCounts, majorCounts);
+                if (p >= betaThreshold) {
+                    double[] bins = new double[estimate.getBinCount()];
+                    estimate.addLikelihoods(bins, maf, histogram, minor, major, populations[pop]);
+                    trimCandidates.get(cell).add(new ContaminationData(site.site, minorCounts, majorCounts, bins, p));
+                } else {
+                    estimate.addLikelihoods(cellStats.getBins(), maf, histogram, minor, major, populations[pop]);
                 }
-
-                double[] newData = new double[newStats.getContamination().getBins().length];
-                System.arraycopy(newStats.getContamination().getBins(),0,newData,0,newStats.getContamination().getBins().length);
-                storedData.get(aggregationKey).get(pop).add(new ContaminationData(newStats.getSite(), newStats.getBasesMatching(), newStats.getBasesMismatching(), newData));
             }
+        }
+    }
 
-
-
-            // merge the sets
-            if (stats.containsKey(aggregationKey)) {
-
-                // and for each population
-                for (String pop : populationContaminationStats.keySet()) {
-                    ContaminationStats newStats = populationContaminationStats.get(pop);
-
-                    // if it exists... just merge it
-                    if (stats.get(aggregationKey).containsKey(pop)) {
-                        stats.get(aggregationKey).get(pop).add(newStats);
-                    } else {
-                        stats.get(aggregationKey).put(pop, newStats);
-                    }
-                }
-            } else {
-                stats.put(aggregationKey, populationContaminationStats);
-            }
+    /**
+     * merge in the results of another shard
+     *
+     * @param other the results to merge
+     */
+    public void add(ContaminationResults other) {
+        for (int cell = 0; cell < cells.length; cell++) {
+            if (other.cells[cell] == null) continue;
+            if (cells[cell] == null)
+                cells[cell] = other.cells[cell];
+            else
+                cells[cell].add(other.cells[cell]);
+            trimCandidates.get(cell).addAll(other.trimCandidates.get(cell));
         }
     }
 
@@ -201,56 +271,31 @@ public class ContaminationResults {
      * @param out the output source
      * @return the contamination value
      */
-    public void outputReport(double precision, PrintStream out, double fractionToTrim, double trimInterval, double betaThreshold) {
+    public void outputReport(double precision, PrintStream out, double fractionToTrim, double trimInterval) {
         out.println("name\tpopulation\tpopulation_fit\tcontamination\tconfidence_interval_95_width\tconfidence_interval_95_low\tconfidence_interval_95_high\tsites");
 
-        for (Map.Entry<String,Map<String, ContaminationStats>> entry : stats.entrySet()) {
+        for (Map.Entry<String,Map<String, ContaminationStats>> entry : getStats().entrySet()) {
             for (ContaminationStats stats : entry.getValue().values()) {
                 String aggregationLevel = entry.getKey();
-                String population = stats.getContamination().getPopultationName();
+                String population = stats.getPopulationName();
 
-                List<ContaminationData> newStats = storedData.get(aggregationLevel).get(population);
+                List<ContaminationData> candidates = new ArrayList<ContaminationData>(trimCandidates.get(getCell(aggregationLevel, population)));
                 String pm = "%3." + Math.round(Math.log10(1/precision)) +"f";
 
-                int bins = newStats.iterator().next().getBins().length;
-                int maxTrim = (int) Math.floor((double)(newStats.size()) * fractionToTrim);
-
-                // sort the collection
-                Collections.sort(newStats);
+                int maxTrim = (int) Math.floor((double)(stats.getNumberOfSites()) * fractionToTrim);
 
-                List<ContaminationData> data = new ArrayList<ContaminationData>(newStats);
+                // sort the candidates
+                Collections.sort(candidates);
 
                 // trim sites with > 95% p of being > 0.5 f (based on beta distribution)
-                int trimmed = 0;
-                for(Iterator<ContaminationData> i = data.iterator(); trimmed < maxTrim && i.hasNext();) {
-                        ContaminationData x = i.next();
-                        if (x.getP() >= betaThreshold) {
-                            System.out.println("Trimming " + x.toString() + " with p(f>=0.5) >= " + betaThreshold + " with a value of  " + x.getP());
-                            i.remove();
-                            trimmed++;
-                        }
-                }
+                int trimmed = Math.min(maxTrim, candidates.size());
+                for (ContaminationData x : candidates.subList(0, trimmed))
+                    System.out.println("Trimming " + x.toString() + " with p(f>=0.5) >= " + betaThreshold + " with a value of  " + x.getP());
 
-                double[][] matrix = new double[bins][data.size()];
-
-                for (int i = 0; i<bins; i++) {
-                    for (int j=0; j<data.size(); j++) {
-                        matrix[i][j] = data.get(j).getBins()[i];
-                    }
-                }
-
-                // now perform the sum
-                double[] output = new double[bins];
-                for (int i = 0; i<bins; i++) {
-                    double[] binData = matrix[i];
-
-                    // remove the top and bottom
-                    output[i] = 0;
-                    for (int x = 0; x < binData.length; x++) {
-                        output[i] += binData[x];
-                    }
-                }
-                double[] newTrimmedStats = output;
+                // now perform the sum, adding back the candidates we didn't trim
+                double[] newTrimmedStats = Arrays.copyOf(stats.getBins(), stats.getBins().length);
+                for (ContaminationData x : candidates.subList(trimmed, candidates.size()))
+                    addBins(newTrimmedStats, x.getBins());
 
                 // get the confidence interval, at the set width
                 ContaminationEstimate.ConfidenceInterval newInterval = new ContaminationEstimate.ConfidenceInterval(newTrimmedStats, 0.95);
@@ -264,7 +309,7 @@ public class ContaminationResults {
                                 (newInterval.getStop() - newInterval.getStart()),
                                 newInterval.getStart(),
                                 newInterval.getStop(),
-                                data.size())
+                                stats.getNumberOfSites() - trimmed)
                 );
 
             }
@@ -274,31 +319,53 @@ public class ContaminationResults {
 
     public void writeCurves(PrintStream out) {
         boolean outputBins = false;
-        for (Map.Entry<String, Map<String, ContaminationStats>> entry : stats.entrySet()) {
+        for (Map.Entry<String, Map<String, ContaminationStats>> entry : getStats().entrySet()) {
             for (ContaminationStats stats : entry.getValue().values()) {
+                double[] curve = Arrays.copyOf(stats.getBins(), stats.getBins().length);
+                for (ContaminationData x : trimCandidates.get(getCell(entry.getKey(), stats.getPopulationName())))
+                    addBins(curve, x.getBins());
+
                 if (!outputBins) {
-                    String[] bins = new String[stats.getContamination().getBins().length];
-                    for (int index = 0; index < stats.getContamination().getBins().length; index++)
-                        bins[index] = String.valueOf(100.0 * (1 - (double) index / stats.getContamination().getBins().length));
+                    String[] bins = new String[curve.length];
+                    for (int index = 0; index < curve.length; index++)
+                        bins[index] = String.valueOf(100.0 * (1 - (double) index / curve.length));
                     outputBins = true;
                     out.print("name,pop,");
                     out.println(Utils.join(",",bins));
                 }
-                String[] bins = new String[stats.getContamination().getBins().length];
+                String[] bins = new String[curve.length];
                 int index = 0;
-                for (double value : stats.getContamination().getBins())
+                for (double value : curve)
                     bins[index++] = String.valueOf(value);
-                out.print(entry.getKey()+",\""+stats.getContamination().getPopultationName()+"\",");
+                out.print(entry.getKey()+",\""+stats.getPopulationName()+"\",");
                 out.println(Utils.join(",", bins));
             }
         }
     }
 
+    private int getCell(String name, String population) {
+        return Arrays.asList(names).indexOf(name) * populations.length + Arrays.asList(populations).indexOf(population);
+    }
+
+    private static void addBins(double[] sum, double[] bins) {
+        for (int i = 0; i < sum.length; i++) sum[i] += bins[i];
+    }
+
     public Map<String, Map<String, ContaminationStats>> getStats() {
+        if (stats == null) {
+            Map<String, Map<String, ContaminationStats>> allStats = new HashMap<String, Map<String, ContaminationStats>>();
+            for (int cell = 0; cell < cells.length; cell++) {
+                if (cells[cell] == null) continue;
+                String name = names[cell / populations.length];
+                if (!allStats.containsKey(name)) allStats.put(name, new HashMap<String, ContaminationStats>());
+                allStats.get(name).put(populations[cell % populations.length], cells[cell]);
+            }
+            return Collections.unmodifiableMap(allStats);
+        }
         return Collections.unmodifiableMap(stats);
     }
 
     public void setStats(Map<String, Map<String,ContaminationStats>> stats) {
         this.stats = stats;
     }
-}
\ No newline at end of file
+}
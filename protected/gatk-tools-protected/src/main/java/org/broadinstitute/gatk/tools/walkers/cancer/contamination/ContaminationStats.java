@@ -52,33 +52,47 @@
 package org.broadinstitute.gatk.tools.walkers.cancer.contamination;
 
 
-import org.broadinstitute.gatk.utils.GenomeLoc;
-import org.omg.PortableInterceptor.SYSTEM_EXCEPTION;
-
 /**
- * a class that tracks our contamination stats; both the estimate of contamination, as well as the number of sites and other
- * run-specific data
+ * a class that tracks our contamination stats for one aggregation entity and population; both the likelihood grid of
+ * contamination, as well as the number of sites and other run-specific data
  */
 public class ContaminationStats {
-    final static int ALLELE_COUNT = 4;
-    private GenomeLoc site;
+    final static int ALLELE_COUNT = ContaminationEstimate.ALLELE_COUNT;
+    private final String populationName;
     private int numberOfSites = 0;
     private double sumOfAlleleFrequency = 0.0;
     private long basesFor = 0l;
     private long basesAgainst = 0l;
     private long basesOther = 0l;
-    private ContaminationEstimate contaminationEstimate;
-    private final int[] alleleBreakdown;
+    private final double[] bins;                // the log likelihood of each of the discrete contamination levels
+    private final int[] alleleBreakdown = new int[ALLELE_COUNT];
+
+    public ContaminationStats(String populationName, int binCount) {
+        this.populationName = populationName;
+        this.bins = new double[binCount];
+    }
 
-    public ContaminationStats(GenomeLoc site, int numberOfSites, double sumOfAlleleFrequency, long basesFor, long basesAgainst, long basesOther, int alleleBreakdown[], ContaminationEstimate estimate) {
-        this.site = site;
-        this.numberOfSites = numberOfSites;
-        this.sumOfAlleleFrequency = sumOfAlleleFrequency;
-        this.basesFor = basesFor;
-        this.basesAgainst = basesAgainst;
-        this.contaminationEstimate = estimate;
+    /**
+     * add a site to the stats; the site's likelihoods are accumulated into the bins separately
+     *
+     * @param alleleFrequency the minor allele frequency of the site in our population
+     * @param basesFor the count of bases matching our genotype
+     * @param basesAgainst the count of bases matching the population major allele
+     * @param basesOther the count of any other bases
+     * @param alleleBreakdown the counts of A, C, G and T
+     */
+    public void addSite(double alleleFrequency, long basesFor, long basesAgainst, long basesOther, int[] alleleBreakdown) {
         if (alleleBreakdown.length != ALLELE_COUNT) throw new IllegalArgumentException("Allele breakdown should have length " + ALLELE_COUNT);
-        this.alleleBreakdown = alleleBreakdown;
+        this.numberOfSites++;
+        this.sumOfAlleleFrequency   += alleleFrequency;
+        this.basesFor               += basesFor;
+        this.basesAgainst           += basesAgainst;
+        this.basesOther             += basesOther;
+        for (int x = 0; x < ALLELE_COUNT; x++) this.alleleBreakdown[x] += alleleBreakdown[x];
+    }
+
+    public String getPopulationName() {
+        return populationName;
     }
 
     public int getNumberOfSites() {
@@ -101,25 +115,21 @@ public class ContaminationStats {
         return basesAgainst;
     }
 
-    public ContaminationEstimate getContamination() {
-        return this.contaminationEstimate;
-    }
-
-    public GenomeLoc getSite() {
-        return site;
+    /**
+     * @return the log likelihood grid; callers may add site likelihoods directly to it
+     */
+    public double[] getBins() {
+        return bins;
     }
 
     public void add(ContaminationStats other) {
-        if (other == null) return; 
+        if (other == null) return;
         this.numberOfSites          += other.numberOfSites;
         this.sumOfAlleleFrequency   += other.sumOfAlleleFrequency;
         this.basesOther             += other.basesOther;
         this.basesFor               += other.basesFor;
         this.basesAgainst           += other.basesAgainst;
         for (int x = 0; x < ALLELE_COUNT; x++) this.alleleBreakdown[x] += other.alleleBreakdown[x];
-        for (int i = 0; i < this.contaminationEstimate.getBins().length; i++) {
-            this.contaminationEstimate.getBins()[i] += other.contaminationEstimate.getBins()[i];
-        }
-        this.contaminationEstimate.setPopulationFit(this.contaminationEstimate.getPopulationFit() +other.contaminationEstimate.getPopulationFit()); 
+        for (int i = 0; i < this.bins.length; i++) this.bins[i] += other.bins[i];
     }
-}
\ No newline at end of file
+}
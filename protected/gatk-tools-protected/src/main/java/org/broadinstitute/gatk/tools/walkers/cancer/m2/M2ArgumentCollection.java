@@ -150,6 +150,24 @@ public class M2ArgumentCollection extends AssemblyBasedCallerArgumentCollection
     @Argument(fullName = "max_alt_allele_in_normal_fraction", required = false, doc="Threshold for maximum alternate allele fraction in normal")
     public double MAX_ALT_ALLELE_IN_NORMAL_FRACTION = 0.03;
 
+    /**
+     * Before assembly, each active region is checked for tumor evidence that could support a call: at each position, the
+     * count and base quality sum of the mismatching tumor bases bound the tumor LOD a SNV could reach there.  Regions
+     * where this bound stays below the initial tumor LOD threshold, and with no indel or soft clip evidence, are skipped.
+     * The check is not done when the active regions are given with -AR, or when every region is made active with --forceActive.
+     */
+    @Advanced
+    @Argument(fullName = "disable_active_region_prefilter", required = false, doc = "Assemble every active region, without first checking its tumor evidence")
+    public boolean DISABLE_ACTIVE_REGION_PREFILTER = false;
+
+    /**
+     * With a panel of normals, also skip active regions whose only sufficient tumor evidence lies at panel of normals
+     * sites.  Calls at those sites would be filtered as panel_of_normals, so this only drops filtered records from the output.
+     */
+    @Advanced
+    @Argument(fullName = "skip_panel_of_normals_regions", required = false, doc = "Skip active regions whose tumor evidence is only at panel of normals sites")
+    public boolean SKIP_PANEL_OF_NORMALS_REGIONS = false;
+
     /**
      * This argument is used for the M1-style strand bias filter
      */
@@ -75,6 +75,7 @@ import org.broadinstitute.gatk.utils.MathUtils;
 import org.broadinstitute.gatk.utils.QualityUtils;
 import org.broadinstitute.gatk.utils.activeregion.ActiveRegion;
 import org.broadinstitute.gatk.utils.activeregion.ActiveRegionReadState;
+import org.broadinstitute.gatk.utils.activeregion.ActiveRegionTrace;
 import org.broadinstitute.gatk.utils.activeregion.ActivityProfileState;
 import org.broadinstitute.gatk.utils.clipping.ReadClipper;
 import org.broadinstitute.gatk.utils.commandline.*;
@@ -188,6 +189,7 @@ public class MuTect2 extends ActiveRegionWalker<List<VariantContext>, Integer> i
     protected LocalAssemblyEngine assemblyEngine = null;
     protected ReadLikelihoodCalculationEngine likelihoodCalculationEngine = null;
     protected SomaticGenotypingEngine genotypingEngine = null;
+    protected ActiveRegionPreFilter activeRegionPreFilter = null;
     private HaplotypeBAMWriter haplotypeBAMWriter;
 
     private byte MIN_TAIL_QUALITY;
@@ -359,6 +361,7 @@ public class MuTect2 extends ActiveRegionWalker<List<VariantContext>, Integer> i
         assemblyEngine.setDebugGraphTransformations(RTAC.debugGraphTransformations);
         assemblyEngine.setAllowCyclesInKmerGraphToGeneratePaths(RTAC.allowCyclesInKmerGraphToGeneratePaths);
         assemblyEngine.setRecoverDanglingBranches(!RTAC.doNotRecoverDanglingBranches);
+        assemblyEngine.setSmithWatermanImplementation(RTAC.smithWaterman);
         assemblyEngine.setMinBaseQualityToUseInAssembly(MIN_BASE_QUALTY_SCORE);
 
         MIN_TAIL_QUALITY = (byte)(MIN_BASE_QUALTY_SCORE - 1);
@@ -411,6 +414,15 @@ public class MuTect2 extends ActiveRegionWalker<List<VariantContext>, Integer> i
         if( MTAC.CONTAMINATION_FRACTION_FILE != null )
             MTAC.setSampleContamination(AlleleBiasedDownsamplingUtils.loadContaminationFile(MTAC.CONTAMINATION_FRACTION_FILE, MTAC.CONTAMINATION_FRACTION, sampleSet, logger));
 
+        // with preset active regions, activity is still determined at every locus but only the preset regions are
+        // mapped, so the evidence recorded outside of them would never be consumed; with --forceActive every region
+        // was asked for, so none of them may be skipped
+        if ( !MTAC.DISABLE_ACTIVE_REGION_PREFILTER && !justDetermineActiveRegions && !hasPresetActiveRegions() && !forceActive ) {
+            final boolean skipPanelOfNormalsRegions = MTAC.SKIP_PANEL_OF_NORMALS_REGIONS && !MTAC.ARTIFACT_DETECTION_MODE && !MTAC.normalPanelRod.isEmpty();
+            activeRegionPreFilter = new ActiveRegionPreFilter(toolkit.getGenomeLocParser(), MTAC.INITIAL_TUMOR_LOD_THRESHOLD,
+                    skipPanelOfNormalsRegions ? MTAC.normalPanelRod : null);
+        }
+
     }
 
     private VariantAnnotatorEngine initializeVCFOutput() {
@@ -523,6 +535,8 @@ public class MuTect2 extends ActiveRegionWalker<List<VariantContext>, Integer> i
 
         // KCIBUL -- this method was inlined and modified from ReferenceConfidenceModel
         final ReadBackedPileup tumorPileup = tumorContext.getBasePileup().getMappingFilteredPileup(MQthreshold);
+        if ( activeRegionPreFilter != null )
+            activeRegionPreFilter.addTumorPileup(ref.getLocus(), tumorPileup, ref.getBase());
         final double[] tumorGLs = calcGenotypeLikelihoodsOfRefVsAny(tumorPileup, ref.getBase(), MIN_BASE_QUALTY_SCORE);
         final double tumorLod = tumorGLs[1] - tumorGLs[0];
 
@@ -558,12 +572,20 @@ public class MuTect2 extends ActiveRegionWalker<List<VariantContext>, Integer> i
     private final static List<VariantContext> NO_CALLS = Collections.emptyList();
     @Override
     public List<VariantContext> map( final ActiveRegion originalActiveRegion, final RefMetaDataTracker metaDataTracker ) {
+        // always test the region, so the pre-filter forgets the tumor evidence recorded within it
+        final ActiveRegionPreFilter.Outcome preFilterOutcome = activeRegionPreFilter == null ? ActiveRegionPreFilter.Outcome.PASS :
+                activeRegionPreFilter.test(originalActiveRegion.getLocation(), metaDataTracker);
+
         if ( justDetermineActiveRegions ) {
             return NO_CALLS;
         } else if( !originalActiveRegion.isActive() ) {
             return referenceModelForNoVariation(originalActiveRegion, true);
         } else if( originalActiveRegion.size() == 0 ) {
             return referenceModelForNoVariation(originalActiveRegion, true);
+        } else if( preFilterOutcome != ActiveRegionPreFilter.Outcome.PASS ) {
+            // no position in the region has the tumor evidence for a call, so don't bother assembling it
+            activeRegionPreFilter.recordSkippedRegion(preFilterOutcome);
+            return referenceModelForNoVariation(originalActiveRegion, true);
         }
         logReadInfo(DEBUG_READ_NAME, originalActiveRegion.getReads(), "Present in original active region");
 
@@ -578,7 +600,14 @@ public class MuTect2 extends ActiveRegionWalker<List<VariantContext>, Integer> i
         logReadInfo(DEBUG_READ_NAME, assemblyActiveRegion.getReads(), "Present in assembly active region");
 
         // run the local assembler, getting back a collection of information on how we should proceed
-        final AssemblyResultSet untrimmedAssemblyResult = assembleReads(assemblyActiveRegion, Collections.EMPTY_LIST);
+        final AssemblyResultSet untrimmedAssemblyResult;
+        ActiveRegionTrace.enterPhase(ActiveRegionTrace.Phase.ASSEMBLY);
+        try {
+            untrimmedAssemblyResult = assembleReads(assemblyActiveRegion, Collections.EMPTY_LIST);
+        } finally {
+            ActiveRegionTrace.exitPhase();
+        }
+        ActiveRegionTrace.setHaplotypeCount(untrimmedAssemblyResult.getHaplotypeCount());
         final TreeSet<VariantContext> allVariationEvents = untrimmedAssemblyResult.getVariationEvents();
         final ActiveRegionTrimmer.Result trimmingResult = trimmer.trim(originalActiveRegion,allVariationEvents);
         if (!trimmingResult.isVariationPresent()) {
@@ -641,7 +670,13 @@ public class MuTect2 extends ActiveRegionWalker<List<VariantContext>, Integer> i
         }
 
         logger.debug("Computing read likelihoods with " + regionForGenotyping.getReads().size() + " reads against " + haplotypes.size() + " haplotypes across region " + assemblyResult.getRegionForGenotyping().toString());
-        final ReadLikelihoods<Haplotype> readLikelihoods = likelihoodCalculationEngine.computeReadLikelihoods(assemblyResult,samplesList,reads);
+        final ReadLikelihoods<Haplotype> readLikelihoods;
+        ActiveRegionTrace.enterPhase(ActiveRegionTrace.Phase.PAIRHMM);
+        try {
+            readLikelihoods = likelihoodCalculationEngine.computeReadLikelihoods(assemblyResult,samplesList,reads);
+        } finally {
+            ActiveRegionTrace.exitPhase();
+        }
 
         final Map<GATKSAMRecord,GATKSAMRecord> readRealignments = realignReadsToTheirBestHaplotype(readLikelihoods, assemblyResult.getReferenceHaplotype(), assemblyResult.getPaddedReferenceLoc());
 
@@ -657,14 +692,20 @@ public class MuTect2 extends ActiveRegionWalker<List<VariantContext>, Integer> i
             logReadInfo(DEBUG_READ_NAME, rec, "Present after computing read likelihoods");
         }
 
-        final HaplotypeCallerGenotypingEngine.CalledHaplotypes calledHaplotypes = genotypingEngine.callMutations(
-                readLikelihoods,
-                ARreads_origNormalMQ,
-                perSampleFilteredReadList,
-                assemblyResult.getFullReferenceWithPadding(),
-                assemblyResult.getPaddedReferenceLoc(),
-                regionForGenotyping.getLocation(),
-                metaDataTracker);
+        final HaplotypeCallerGenotypingEngine.CalledHaplotypes calledHaplotypes;
+        ActiveRegionTrace.enterPhase(ActiveRegionTrace.Phase.GENOTYPING);
+        try {
+            calledHaplotypes = genotypingEngine.callMutations(
+                    readLikelihoods,
+                    ARreads_origNormalMQ,
+                    perSampleFilteredReadList,
+                    assemblyResult.getFullReferenceWithPadding(),
+                    assemblyResult.getPaddedReferenceLoc(),
+                    regionForGenotyping.getLocation(),
+                    metaDataTracker);
+        } finally {
+            ActiveRegionTrace.exitPhase();
+        }
 
         if ( MTAC.bamWriter != null ) {
             final Set<Haplotype> calledHaplotypeSet = new HashSet<>(calledHaplotypes.getCalledHaplotypes());
@@ -683,7 +724,12 @@ public class MuTect2 extends ActiveRegionWalker<List<VariantContext>, Integer> i
         }
 
         if( MTAC.DEBUG ) { logger.info("----------------------------------------------------------------------------------"); }
-        return annotateVCs(calledHaplotypes, metaDataTracker);
+        ActiveRegionTrace.enterPhase(ActiveRegionTrace.Phase.ANNOTATION);
+        try {
+            return annotateVCs(calledHaplotypes, metaDataTracker);
+        } finally {
+            ActiveRegionTrace.exitPhase();
+        }
     }
 
     private Set<String> calculateFilters(final RefMetaDataTracker metaDataTracker, final VariantContext vc, final Map<String, Object> eventDistanceAttributes) {
@@ -930,6 +976,9 @@ public class MuTect2 extends ActiveRegionWalker<List<VariantContext>, Integer> i
         //TODO (open & close) at the walker, not the engine.
         likelihoodCalculationEngine.close();
         logger.info("Ran local assembly on " + result + " active regions");
+        if ( activeRegionPreFilter != null )
+            logger.info("Skipped " + activeRegionPreFilter.getSkippedRegionCount(ActiveRegionPreFilter.Outcome.LOW_TUMOR_EVIDENCE) + " active regions with too little tumor evidence and "
+                    + activeRegionPreFilter.getSkippedRegionCount(ActiveRegionPreFilter.Outcome.PANEL_OF_NORMALS) + " with tumor evidence only at panel of normals sites");
     }
 
     // The following are not used but are required by the AnnotatorCompatible interface
@@ -1085,7 +1134,7 @@ public class MuTect2 extends ActiveRegionWalker<List<VariantContext>, Integer> i
             final GATKSAMRecord originalRead = bestAllele.read;
             final Haplotype bestHaplotype = bestAllele.allele;
             final boolean isInformative = bestAllele.isInformative();
-            final GATKSAMRecord realignedRead = AlignmentUtils.createReadAlignedToRef(originalRead, bestHaplotype, refHaplotype, paddedReferenceLoc.getStart(), isInformative);
+            final GATKSAMRecord realignedRead = AlignmentUtils.createReadAlignedToRef(originalRead, bestHaplotype, refHaplotype, paddedReferenceLoc.getStart(), isInformative, RTAC.smithWaterman);
             result.put(originalRead,realignedRead);
         }
         return result;
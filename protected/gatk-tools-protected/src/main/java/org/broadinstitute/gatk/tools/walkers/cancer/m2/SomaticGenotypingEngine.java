@@ -60,6 +60,7 @@ import org.broadinstitute.gatk.tools.walkers.genotyper.afcalc.AFCalculatorProvid
 import org.broadinstitute.gatk.tools.walkers.haplotypecaller.HaplotypeCallerGenotypingEngine;
 import org.broadinstitute.gatk.utils.GenomeLoc;
 import org.broadinstitute.gatk.utils.GenomeLocParser;
+import org.broadinstitute.gatk.utils.activeregion.ActiveRegionTrace;
 import org.broadinstitute.gatk.utils.contexts.ReferenceContext;
 import org.broadinstitute.gatk.utils.genotyper.MostLikelyAllele;
 import org.broadinstitute.gatk.utils.genotyper.PerReadAlleleLikelihoodMap;
@@ -372,7 +373,13 @@ public class SomaticGenotypingEngine extends HaplotypeCallerGenotypingEngine {
                     genomeLocParser, false, alleleMapper, readAlleleLikelihoods, call);
 
             final ReferenceContext referenceContext = new ReferenceContext(genomeLocParser, genomeLocParser.createGenomeLoc(mergedVC.getChr(), mergedVC.getStart(), mergedVC.getEnd()), refLoc, ref);
-            VariantContext annotatedCall = annotationEngine.annotateContextForActiveRegion(referenceContext, tracker, readAlleleLikelihoods, call, false);
+            VariantContext annotatedCall;
+            ActiveRegionTrace.enterPhase(ActiveRegionTrace.Phase.ANNOTATION);
+            try {
+                annotatedCall = annotationEngine.annotateContextForActiveRegion(referenceContext, tracker, readAlleleLikelihoods, call, false);
+            } finally {
+                ActiveRegionTrace.exitPhase();
+            }
 
             if( call.getAlleles().size() != mergedVC.getAlleles().size() )
                 annotatedCall = GATKVariantContextUtils.reverseTrimAlleles(annotatedCall);
@@ -105,11 +105,21 @@ abstract class AbstractStratification {
     private long calculateTotalCoverage(Iterable<AbstractStratification> elements) {
         long cov = 0;
         for (AbstractStratification element : elements) {
-            cov += element.getCoverage();
+            cov += element.getCoverage() * element.getLength();
         }
         return cov;
     }
 
+    /**
+     * How many elements of the enclosing stratification does this one stand for? Runs of loci with the same
+     * coverage are kept as a single element, so they count once per locus in the tallies of their sample.
+     *
+     * @return the weight of this element
+     */
+    public int getLength() {
+        return 1;
+    }
+
     /**
      * What are the list of elements in your class? For example:
      *
@@ -138,7 +148,7 @@ abstract class AbstractStratification {
             statusTally = new HashMap<CallableStatus, Integer>(CallableStatus.values().length);
             for (AbstractStratification stats : getElements()) {
                 for (CallableStatus status : stats.callableStatuses()) {
-                    statusTally.put(status, !statusTally.containsKey(status) ? 1 : statusTally.get(status) + 1);
+                    statusTally.put(status, !statusTally.containsKey(status) ? stats.getLength() : statusTally.get(status) + stats.getLength());
                 }
             }
         }
@@ -51,16 +51,22 @@
 
 package org.broadinstitute.gatk.tools.walkers.diagnostics.diagnosetargets;
 
-import htsjdk.samtools.util.PeekableIterator;
+import htsjdk.samtools.CigarElement;
+import htsjdk.samtools.reference.ReferenceSequenceFile;
+import org.broadinstitute.gatk.engine.filters.DuplicateReadFilter;
+import org.broadinstitute.gatk.engine.filters.FailsVendorQualityCheckFilter;
+import org.broadinstitute.gatk.engine.filters.NotPrimaryAlignmentFilter;
+import org.broadinstitute.gatk.engine.filters.UnmappedReadFilter;
 import org.broadinstitute.gatk.engine.walkers.*;
 import org.broadinstitute.gatk.utils.commandline.ArgumentCollection;
 import org.broadinstitute.gatk.utils.commandline.Output;
 import org.broadinstitute.gatk.engine.CommandLineGATK;
-import org.broadinstitute.gatk.utils.contexts.AlignmentContext;
 import org.broadinstitute.gatk.utils.contexts.ReferenceContext;
 import org.broadinstitute.gatk.utils.downsampling.DownsampleType;
+import org.broadinstitute.gatk.utils.locusiterator.ReadCoverageSweep;
 import org.broadinstitute.gatk.utils.refdata.RefMetaDataTracker;
 import org.broadinstitute.gatk.utils.GenomeLoc;
+import org.broadinstitute.gatk.utils.GenomeLocSortedSet;
 import org.broadinstitute.gatk.utils.classloader.PluginManager;
 import org.broadinstitute.gatk.utils.exceptions.DynamicClassResolutionException;
 import org.broadinstitute.gatk.utils.exceptions.UserException;
@@ -69,6 +75,7 @@ import org.broadinstitute.gatk.utils.help.HelpConstants;
 import htsjdk.variant.variantcontext.*;
 import htsjdk.variant.variantcontext.writer.VariantContextWriter;
 import htsjdk.variant.vcf.*;
+import org.broadinstitute.gatk.utils.sam.GATKSAMRecord;
 import org.broadinstitute.gatk.utils.sam.ReadUtils;
 import org.broadinstitute.gatk.utils.variant.GATKVCFConstants;
 import org.broadinstitute.gatk.utils.variant.GATKVCFHeaderLines;
@@ -112,10 +119,9 @@ import java.util.*;
  * @since 5/8/12
  */
 @DocumentedGATKFeature( groupName = HelpConstants.DOCS_CAT_QC, extraDocs = {CommandLineGATK.class} )
-@By(value = DataSource.READS)
-@PartitionBy(PartitionType.INTERVAL)
+@ReadFilters({UnmappedReadFilter.class,NotPrimaryAlignmentFilter.class,DuplicateReadFilter.class,FailsVendorQualityCheckFilter.class})
 @Downsample(by = DownsampleType.NONE)
-public class DiagnoseTargets extends LocusWalker<Long, Long> {
+public class DiagnoseTargets extends ReadWalker<Long, Long> {
 
     @Output(doc = "File to which interval statistics should be written")
     private VariantContextWriter vcfWriter = null;
@@ -123,12 +129,14 @@ public class DiagnoseTargets extends LocusWalker<Long, Long> {
     @ArgumentCollection
     private ThresHolder thresholds = new ThresHolder();
 
-    private Map<GenomeLoc, IntervalStratification> intervalMap = null;          // maps each interval => statistics
-    private PeekableIterator<GenomeLoc> intervalListIterator;                   // an iterator to go over all the intervals provided as we traverse the genome
+    private TreeMap<GenomeLoc, IntervalStratification> intervalMap = null;      // maps each interval not output yet => statistics
+    private GenomeLocSortedSet intervals = null;                                // all the intervals provided
     private Set<String> samples = null;                                         // all the samples being processed
+    private Map<String, Integer> sampleIndices = null;                          // the index of each sample in the iteration order of samples
+    private ReadCoverageSweep coverageSweep = null;                             // the coverage of each sample over the intervals, as reads come in
+    private ReferenceSequenceFile reference = null;
     private static final Allele SYMBOLIC_ALLELE = Allele.create("<DT>", false); // avoid creating the symbolic allele multiple times
     private static final Allele UNCOVERED_ALLELE = Allele.create("A", true);    // avoid creating the 'fake' ref allele for uncovered intervals multiple times
-    private static final int INITIAL_HASH_SIZE = 50;                            // enough room for potential overlapping intervals plus recently finished intervals
 
     @Override
     public void initialize() {
@@ -137,29 +145,43 @@ public class DiagnoseTargets extends LocusWalker<Long, Long> {
         if (getToolkit().getIntervals() == null || getToolkit().getIntervals().isEmpty())
             throw new UserException("This tool only works if you provide one or more intervals (use the -L argument). If you want to run whole genome, use -T DepthOfCoverage instead.");
 
-        intervalMap = new LinkedHashMap<>(INITIAL_HASH_SIZE);
-        intervalListIterator = new PeekableIterator<>(getToolkit().getIntervals().iterator());
+        intervalMap = new TreeMap<>();
+        intervals = getToolkit().getIntervals();
+        reference = getToolkit().getReferenceDataSource().getReference();
 
         // get all of the unique sample names for the VCF Header
         samples = ReadUtils.getSAMFileSamples(getToolkit().getSAMFileHeader());
         vcfWriter.writeHeader(new VCFHeader(getHeaderInfo(), samples));
 
+        // each sample gets a track with the coverage of all its bases and one with the coverage of its good bases
+        sampleIndices = new HashMap<>(samples.size());
+        for (String sample : samples)
+            sampleIndices.put(sample, sampleIndices.size());
+        coverageSweep = new ReadCoverageSweep(2 * samples.size(), false, intervals, new ReadCoverageSweep.SegmentHandler() {
+            @Override
+            public void addSegment(final GenomeLoc interval, final int start, final int stop, final int[] depths) {
+                addLoci(interval, start, stop, depths);
+            }
+        });
+
         // pre load all the statistics classes because it is costly to operate on the JVM and we only want to do it once.
         loadAllPlugins(thresholds);
     }
 
     @Override
-    public Long map(final RefMetaDataTracker tracker, final ReferenceContext ref, final AlignmentContext context) {
-        GenomeLoc refLocus = ref.getLocus();
+    public Long map(final ReferenceContext ref, final GATKSAMRecord read, final RefMetaDataTracker tracker) {
+        final Integer sampleIndex = read.getReadGroup() == null ? null : sampleIndices.get(read.getReadGroup().getSample());
+        if (sampleIndex == null)
+            return 0L;
 
-        // process and remove any intervals in the map that are don't overlap the current locus anymore
-        // and add all new intervals that may overlap this reference locus
-        addNewOverlappingIntervals(refLocus);
-        outputFinishedIntervals(refLocus, ref.getBase());
+        coverageSweep.addRead(read, 2 * sampleIndex);
+        if (read.getMappingQuality() >= thresholds.minimumMappingQuality)
+            coverageSweep.addRead(read, 2 * sampleIndex + 1, thresholds.minimumBaseQuality);
 
-        // at this point, all intervals in intervalMap overlap with this locus, so update all of them
-        for (IntervalStratification intervalStratification : intervalMap.values())
-            intervalStratification.addLocus(context, ref);
+        // tally the read (and its mate pairing) in the first interval where it shows up in the pileups
+        final GenomeLoc interval = getFirstIntervalInPileups(read);
+        if (interval != null)
+            getIntervalStatistic(interval).getSampleStatistics(sampleIndex).addRead(read);
 
         return 1L;
     }
@@ -188,21 +210,41 @@ public class DiagnoseTargets extends LocusWalker<Long, Long> {
      */
     @Override
     public void onTraversalDone(final Long result) {
+        coverageSweep.finish();
+
         for (GenomeLoc interval : intervalMap.keySet())
             outputStatsToVCF(intervalMap.get(interval), UNCOVERED_ALLELE);
 
-        GenomeLoc interval = intervalListIterator.peek();
-        while (interval != null) {
-            outputStatsToVCF(createIntervalStatistic(interval), UNCOVERED_ALLELE);
-            intervalListIterator.next();
-            interval = intervalListIterator.peek();
-        }
-
         if (thresholds.missingTargets != null) {
             thresholds.missingTargets.close();
         }
     }
 
+    /**
+     * Adds a run of loci of an interval with the same coverages to its statistics. The loci covered by any read
+     * first output all the intervals behind them.
+     *
+     * @param interval the interval of the loci
+     * @param start    the first locus of the run
+     * @param stop     the last locus of the run
+     * @param depths   the raw and the filtered coverage of each sample over the run
+     */
+    private void addLoci(final GenomeLoc interval, final int start, final int stop, final int[] depths) {
+        boolean covered = false;
+        for (int i = 0; i < depths.length && !covered; i += 2)
+            covered = depths[i] > 0;
+
+        long gcCount = 0;
+        if (covered) {
+            final byte[] bases = reference.getSubsequenceAt(interval.getContig(), start, stop).getBases();
+            outputFinishedIntervals(getToolkit().getGenomeLocParser().createGenomeLoc(interval.getContig(), start), bases[0]);
+            for (byte base : bases)
+                gcCount += (base == 'G' || base == 'C') ? 1 : 0;
+        }
+
+        getIntervalStatistic(interval).addLoci(start, stop, depths, gcCount);
+    }
+
     /**
      * Outputs all intervals that are behind the current reference locus
      *
@@ -211,34 +253,65 @@ public class DiagnoseTargets extends LocusWalker<Long, Long> {
      */
     private void outputFinishedIntervals(final GenomeLoc refLocus, final byte refBase) {
         // output any intervals that were finished
-        final List<GenomeLoc> toRemove = new LinkedList<>();
-        for (GenomeLoc key : intervalMap.keySet()) {
-            if (key.isBefore(refLocus)) {
-                final IntervalStratification intervalStats = intervalMap.get(key);
-                outputStatsToVCF(intervalStats, Allele.create(refBase, true));
-                if (hasMissingLoci(intervalStats)) {
-                    outputMissingInterval(intervalStats);
-                }
-                toRemove.add(key);
+        final Iterator<IntervalStratification> iterator = intervalMap.values().iterator();
+        while (iterator.hasNext()) {
+            final IntervalStratification intervalStats = iterator.next();
+            if (!intervalStats.getInterval().isBefore(refLocus))
+                break;
+
+            outputStatsToVCF(intervalStats, Allele.create(refBase, true));
+            if (hasMissingLoci(intervalStats)) {
+                outputMissingInterval(intervalStats);
             }
+            iterator.remove();
         }
-        for (GenomeLoc key : toRemove) {
-            intervalMap.remove(key);
+    }
+
+    /**
+     * Gets the statistics of an interval that wasn't output yet, creating them on first use
+     *
+     * @param interval the interval
+     * @return the statistics of the interval
+     */
+    private IntervalStratification getIntervalStatistic(final GenomeLoc interval) {
+        IntervalStratification stats = intervalMap.get(interval);
+        if (stats == null) {
+            stats = new IntervalStratification(samples, interval, thresholds);
+            intervalMap.put(interval, stats);
         }
+        return stats;
     }
 
     /**
-     * Adds all intervals that overlap the current reference locus to the intervalMap
+     * Finds the first interval overlapping one of the aligned bases of the read outside of its adaptor, the bases
+     * that make it into the pileups
      *
-     * @param refLocus the current reference locus
+     * @param read the read
+     * @return the interval, or null if there is none
      */
-    private void addNewOverlappingIntervals(final GenomeLoc refLocus) {
-        GenomeLoc interval = intervalListIterator.peek();
-        while (interval != null && !interval.isPast(refLocus)) {
-            intervalMap.put(interval, createIntervalStatistic(interval));
-            intervalListIterator.next();
-            interval = intervalListIterator.peek();
+    private GenomeLoc getFirstIntervalInPileups(final GATKSAMRecord read) {
+        final int firstPosition = ReadCoverageSweep.getFirstPositionOutsideAdaptor(read);
+        final int lastPosition = ReadCoverageSweep.getLastPositionOutsideAdaptor(read);
+
+        int position = read.getAlignmentStart();
+        for (final CigarElement element : read.getCigar().getCigarElements()) {
+            switch (element.getOperator()) {
+                case M:
+                case EQ:
+                case X:
+                    final int start = Math.max(position, firstPosition);
+                    final int stop = Math.min(position + element.getLength() - 1, lastPosition);
+                    if (start <= stop) {
+                        final List<GenomeLoc> overlapping = intervals.getOverlapping(getToolkit().getGenomeLocParser().createGenomeLoc(read.getReferenceName(), start, stop));
+                        if (!overlapping.isEmpty())
+                            return overlapping.get(0);
+                    }
+                    break;
+            }
+            if (element.getOperator().consumesReferenceBases())
+                position += element.getLength();
         }
+        return null;
     }
 
     /**
@@ -297,11 +370,11 @@ public class DiagnoseTargets extends LocusWalker<Long, Long> {
         for (AbstractStratification sample : stats.getElements()) {
             if (hasMissingStatuses(sample)) {
                 int pos = 0;
-                for (AbstractStratification locus : sample.getElements()) {
-                    if (locus.callableStatuses().isEmpty()) {
-                        missing[pos] = false;
+                for (AbstractStratification loci : sample.getElements()) {
+                    if (loci.callableStatuses().isEmpty()) {
+                        Arrays.fill(missing, pos, pos + loci.getLength(), false);
                     }
-                    pos++;
+                    pos += loci.getLength();
                 }
             }
         }
@@ -343,10 +416,6 @@ public class DiagnoseTargets extends LocusWalker<Long, Long> {
         return output;
     }
 
-    private IntervalStratification createIntervalStatistic(GenomeLoc interval) {
-        return new IntervalStratification(samples, interval, thresholds);
-    }
-
     protected static void loadAllPlugins(final ThresHolder thresholds) {
         for (Class<?> stat : new PluginManager<LocusMetric>(LocusMetric.class).getPlugins()) {
             try {
@@ -51,16 +51,13 @@
 
 package org.broadinstitute.gatk.tools.walkers.diagnostics.diagnosetargets;
 
-import org.broadinstitute.gatk.utils.contexts.AlignmentContext;
-import org.broadinstitute.gatk.utils.contexts.ReferenceContext;
 import org.broadinstitute.gatk.utils.GenomeLoc;
-import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
-import org.broadinstitute.gatk.utils.pileup.ReadBackedPileup;
 
 import java.util.*;
 
 final class IntervalStratification extends AbstractStratification {
     private final Map<String, AbstractStratification> samples;
+    private final SampleStratification[] sampleStratifications;   // the same statistics, in the order of the samples
     private final GenomeLoc interval;
     private List<CallableStatus> callableStatuses;
     private long gcCount = 0;
@@ -72,14 +69,27 @@ final class IntervalStratification extends AbstractStratification {
 
         this.interval = interval;
         this.samples = new HashMap<String, AbstractStratification>(samples.size());
-        for (String sample : samples)
-            this.samples.put(sample, new SampleStratification(interval, thresholds));
+        this.sampleStratifications = new SampleStratification[samples.size()];
+        int sampleIndex = 0;
+        for (String sample : samples) {
+            final SampleStratification sampleStratification = new SampleStratification(interval, thresholds);
+            this.samples.put(sample, sampleStratification);
+            this.sampleStratifications[sampleIndex++] = sampleStratification;
+        }
     }
 
     public SampleStratification getSampleStatistics(String sample) {
         return (SampleStratification) samples.get(sample);
     }
 
+    /**
+     * @param sampleIndex the index of the sample in the iteration order of the samples given to the constructor
+     * @return the statistics of that sample
+     */
+    public SampleStratification getSampleStatistics(int sampleIndex) {
+        return sampleStratifications[sampleIndex];
+    }
+
     public GenomeLoc getInterval() {
         return interval;
     }
@@ -90,29 +100,18 @@ final class IntervalStratification extends AbstractStratification {
 
     /**
      * The function to populate data into the Statistics from the walker.
-     * This takes the input and manages passing the data to the SampleStatistics and Locus Statistics
+     * This takes a run of consecutive loci of the interval with the same coverages and passes it to the SampleStatistics
      *
-     * @param context    The alignment context given from the walker
-     * @param ref        The reference context given from the walker
+     * @param start      the first locus of the run
+     * @param stop       the last locus of the run
+     * @param depths     the raw and the filtered coverage of each sample, at 2i and 2i+1 for the i-th sample in the
+     *                   iteration order of the samples given to the constructor
+     * @param gcCount    the number of G or C reference bases among the loci of the run covered by any read
      */
-    public void addLocus(final AlignmentContext context,  final ReferenceContext ref) {
-        assert ref != null;  // contracts
-
-        ReadBackedPileup pileup = context.getBasePileup();
-
-        Map<String, ReadBackedPileup> samplePileups = pileup.getPileupsForSamples(samples.keySet());
-
-        for (Map.Entry<String, ReadBackedPileup> entry : samplePileups.entrySet()) {
-            String sample = entry.getKey();
-            ReadBackedPileup samplePileup = entry.getValue();
-            SampleStratification sampleStratification = (SampleStratification) samples.get(sample);
-
-            if (sampleStratification == null)
-                throw new ReviewedGATKException(String.format("Trying to add locus statistics to a sample (%s) that doesn't exist in the Interval.", sample));
-
-            sampleStratification.addLocus(context.getLocation(), samplePileup);
-        }
-        gcCount += (ref.getBase() == 'G' || ref.getBase() == 'C') ? 1 : 0;
+    public void addLoci(final int start, final int stop, final int[] depths, final long gcCount) {
+        for (int i = 0; i < sampleStratifications.length; i++)
+            sampleStratifications[i].addLoci(start, stop, depths[2 * i + 1], depths[2 * i]);
+        this.gcCount += gcCount;
     }
 
     public double gcContent() {
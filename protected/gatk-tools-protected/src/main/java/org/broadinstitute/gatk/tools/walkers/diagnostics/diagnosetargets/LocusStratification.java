@@ -53,28 +53,34 @@ package org.broadinstitute.gatk.tools.walkers.diagnostics.diagnosetargets;
 
 import java.util.List;
 
+/**
+ * The statistics of a run of consecutive loci that all have the same coverages
+ */
 final class LocusStratification extends AbstractStratification {
-    private long coverage;
-    private long rawCoverage;
+    private final long coverage;
+    private final long rawCoverage;
+    private final int length;
 
-    public LocusStratification(ThresHolder thresholds) {
-        this(0,0,thresholds);
+    protected LocusStratification(int coverage, int rawCoverage, ThresHolder thresholds) {
+        this(coverage, rawCoverage, 1, thresholds);
     }
 
-    protected LocusStratification(int coverage, int rawCoverage, ThresHolder thresholds) {
+    protected LocusStratification(int coverage, int rawCoverage, int length, ThresHolder thresholds) {
         super(thresholds);
         this.coverage = coverage;
         this.rawCoverage = rawCoverage;
+        this.length = length;
     }
 
     @Override
     public long getCoverage() {return coverage;}
     public long getRawCoverage() {return rawCoverage;}
 
-    public void addLocus(final int coverage, final int rawCoverage) {
-        this.coverage = coverage;
-        this.rawCoverage = rawCoverage;
-    }
+    /**
+     * @return the number of loci in this run
+     */
+    @Override
+    public int getLength() {return length;}
 
     /**
      * Generates all applicable statuses from the coverages in this locus
@@ -53,7 +53,6 @@ package org.broadinstitute.gatk.tools.walkers.diagnostics.diagnosetargets;
 
 import org.broadinstitute.gatk.utils.GenomeLoc;
 import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
-import org.broadinstitute.gatk.utils.pileup.ReadBackedPileup;
 import org.broadinstitute.gatk.utils.sam.GATKSAMRecord;
 
 import java.util.ArrayList;
@@ -65,7 +64,8 @@ import java.util.List;
  */
 final class SampleStratification extends AbstractStratification {
     private final GenomeLoc interval;
-    private final ArrayList<AbstractStratification> loci;
+    private final ArrayList<AbstractStratification> loci;   // runs of loci with the same coverage, in order
+    private int nLoci = 0;
 
     private int nReads = -1;
     private int nBadMates = -1;
@@ -73,13 +73,9 @@ final class SampleStratification extends AbstractStratification {
     public SampleStratification(final GenomeLoc interval, final ThresHolder thresholds) {
         super(thresholds);
         this.interval = interval;
-        this.loci = new ArrayList<AbstractStratification>(interval.size());
+        this.loci = new ArrayList<AbstractStratification>();
         nReads = 0;
         nBadMates = 0;
-
-        // Initialize every loci (this way we don't have to worry about non-existent loci in the object
-        for (int i = 0; i < interval.size(); i++)
-            this.loci.add(new LocusStratification(thresholds));
     }
 
     /**
@@ -90,27 +86,25 @@ final class SampleStratification extends AbstractStratification {
     public int getnBadMates() {return nBadMates;}
 
     /**
-     * Adds a locus to the interval wide stats
+     * Adds the next run of loci of the interval, all with the same coverage, to the interval wide stats
      *
-     * @param locus      The locus given as a GenomeLoc
-     * @param pileup     The pileup of that locus, this exclusively contains the sample
+     * @param start       the first locus of the run, right after the last one added
+     * @param stop        the last locus of the run
+     * @param coverage    the coverage of the bases passing the base and mapping quality requirements at each locus
+     * @param rawCoverage the coverage of all bases at each locus
      */
-    public void addLocus(GenomeLoc locus, ReadBackedPileup pileup) {
-        if (!interval.containsP(locus))
-            throw new ReviewedGATKException(String.format("Locus %s is not part of the Interval %s", locus, interval));
-
-        // a null pileup means there nothing to add
-        if (pileup != null) {
-            final int locusIndex = locus.getStart() - interval.getStart();
-            final int rawCoverage = pileup.depthOfCoverage();
-            final int coverage = pileup.getBaseAndMappingFilteredPileup(thresholds.minimumBaseQuality, thresholds.minimumMappingQuality).depthOfCoverage();
-            final LocusStratification locusData = (LocusStratification) loci.get(locusIndex);
-            locusData.addLocus(coverage, rawCoverage);
-
-            // process all the reads in this pileup (tallying number of reads and bad mates)
-            for (GATKSAMRecord read : pileup.getReads())
-                processRead(read);
-        }
+    public void addLoci(final int start, final int stop, final int coverage, final int rawCoverage) {
+        if (start != interval.getStart() + nLoci || stop > interval.getStop())
+            throw new ReviewedGATKException(String.format("Loci %d-%d are not the next loci of the Interval %s", start, stop, interval));
+
+        final int length = stop - start + 1;
+        final int last = loci.size() - 1;
+        final LocusStratification lastRun = last < 0 ? null : (LocusStratification) loci.get(last);
+        if (lastRun != null && lastRun.getCoverage() == coverage && lastRun.getRawCoverage() == rawCoverage)
+            loci.set(last, new LocusStratification(coverage, rawCoverage, lastRun.getLength() + length, thresholds));
+        else
+            loci.add(new LocusStratification(coverage, rawCoverage, length, thresholds));
+        nLoci += length;
     }
 
     @Override
@@ -145,18 +139,15 @@ final class SampleStratification extends AbstractStratification {
 
 
     /**
-     * Account for the read and check it for any statistics necessary. Reads are marked in the temporary
-     * attribute "seen" to make sure they're not counted twice.
-     * 
+     * Account for the read and check it for any statistics necessary. The caller makes sure that each read is
+     * only accounted for once, in the first interval where it is part of the pileups.
+     *
      * @param read the read
      */
-    private void processRead(GATKSAMRecord read) {
-        if (read.getTemporaryAttribute("seen") == null) {
-            nReads++;
-            if (read.getReadPairedFlag() && !read.getProperPairFlag())
-                nBadMates++;
-            read.setTemporaryAttribute("seen", true);
-        }
+    public void addRead(GATKSAMRecord read) {
+        nReads++;
+        if (read.getReadPairedFlag() && !read.getProperPairFlag())
+            nBadMates++;
     }
 
     public int getNLowCoveredLoci() {
@@ -59,7 +59,7 @@ import org.broadinstitute.gatk.engine.CommandLineGATK;
 import org.broadinstitute.gatk.utils.contexts.AlignmentContext;
 import org.broadinstitute.gatk.utils.contexts.ReferenceContext;
 import org.broadinstitute.gatk.utils.refdata.RefMetaDataTracker;
-import org.broadinstitute.gatk.utils.report.GATKReport;
+import org.broadinstitute.gatk.utils.report.GATKReportTableWriter;
 import org.broadinstitute.gatk.utils.report.GATKReportGatherer;
 import org.broadinstitute.gatk.utils.GenomeLoc;
 import org.broadinstitute.gatk.utils.GenomeLocParser;
@@ -188,7 +188,7 @@ public final class QualifyMissingIntervals extends LocusWalker<Metrics, Metrics>
         SMALL_INTERVAL
     }
 
-    GATKReport simpleReport;
+    GATKReportTableWriter simpleReport;
     GenomeLocSortedSet targets;
     GenomeLocSortedSet baits;
 
@@ -201,7 +201,9 @@ public final class QualifyMissingIntervals extends LocusWalker<Metrics, Metrics>
         if (baitsFile == null)
             baitsFile = targetsFile;
 
-        simpleReport = GATKReport.newSimpleReport("QualifyMissingIntervals", "INTERVAL", "GC", "BQ", "MQ", "DP", "POS_IN_TARGET", "TARGET_SIZE", "BAITED", "MISSING_SIZE", "INTERPRETATION");
+        simpleReport = new GATKReportTableWriter("QualifyMissingIntervals", "A simplified GATK table report");
+        for (final String column : new String[]{"INTERVAL", "GC", "BQ", "MQ", "DP", "POS_IN_TARGET", "TARGET_SIZE", "BAITED", "MISSING_SIZE", "INTERPRETATION"})
+            simpleReport.addColumn(column);
         final GenomeLocParser parser = getToolkit().getGenomeLocParser();
         targets = new GenomeLocSortedSet(parser, IntervalUtils.intervalFileToList(parser, targetsFile));
         baits = new GenomeLocSortedSet(parser, IntervalUtils.intervalFileToList(parser, baitsFile));
@@ -262,7 +264,7 @@ public final class QualifyMissingIntervals extends LocusWalker<Metrics, Metrics>
                     interpret(metrics, interval)
             );
         }
-        simpleReport.print(out);
+        simpleReport.writeReport(out);
         out.close();
     }
 
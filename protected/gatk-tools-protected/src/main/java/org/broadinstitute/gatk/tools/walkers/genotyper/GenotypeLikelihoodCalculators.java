@@ -66,7 +66,9 @@ import java.util.stream.IntStream;
  * </p>
  *
  * <p>
- *     This class is thread-safe.
+ *     This class is thread-safe. The genotype tables are immutable once published and shared by all threads, whereas
+ *     calculators (which hold mutable scratch buffers) are cached per thread and reused across calls to
+ *     {@link #getInstance}.
  * </p>
  *
  * @author Valentin Ruano-Rubio &lt;valentin@broadinstitute.org&gt;
@@ -90,7 +92,7 @@ public class GenotypeLikelihoodCalculators {
      *     Feel free to change it to anything reasonable that is non-negative.
      * </p>
      */
-    private static int maximumAllele = 1; // its initial value is the initial capacity of the shared tables.
+    private static int maximumAllele = 7; // its initial value is the initial capacity of the shared tables.
 
     /**
      * The current maximum ploidy supported by the tables.
@@ -101,6 +103,20 @@ public class GenotypeLikelihoodCalculators {
      */
     private static int maximumPloidy = 2; // its initial value is the initial capacity of the shared tables.
 
+    /**
+     * Per-thread cache of calculators indexed by ploidy and then allele count.
+     * <p>
+     *     Calculators are not thread-safe but they can be reused for any number of consecutive calculations, so
+     *     keeping one per thread spares the reconstruction of their buffers at every site. Both dimensions grow on demand.
+     * </p>
+     */
+    private static final ThreadLocal<GenotypeLikelihoodCalculator[][]> calculatorCache = new ThreadLocal<GenotypeLikelihoodCalculator[][]>() {
+        @Override
+        protected GenotypeLikelihoodCalculator[][] initialValue() {
+            return new GenotypeLikelihoodCalculator[maximumPloidy + 1][];
+        }
+    };
+
     /**
      * Shared copy of the offset table as described in {@link #buildGenotypeAlleleCountsTable(int, int, int[][])}.
      *
@@ -212,6 +228,11 @@ public class GenotypeLikelihoodCalculators {
         // We leave the first allele offset to it correct value 0 by starting with allele := 1.
         for (int ploidy = 1; ploidy < rowCount; ploidy++)
             for (int allele = 1; allele < colCount; allele++) {
+                // once a count overflows every count that depends on it overflows as well.
+                if (result[ploidy][allele - 1] == GENOTYPE_COUNT_OVERFLOW || result[ploidy - 1][allele] == GENOTYPE_COUNT_OVERFLOW) {
+                    result[ploidy][allele] = GENOTYPE_COUNT_OVERFLOW;
+                    continue;
+                }
                 result[ploidy][allele] = result[ploidy][allele - 1] + result[ploidy - 1][allele];
                 if (result[ploidy][allele] < result[ploidy][allele - 1])
                     result[ploidy][allele] = GENOTYPE_COUNT_OVERFLOW;
@@ -301,6 +322,11 @@ public class GenotypeLikelihoodCalculators {
     /**
      * Returns an instance given its ploidy and the number of alleles.
      *
+     * <p>
+     *     The instance returned is owned by the calling thread and the same one is returned for later requests
+     *     with the same ploidy and allele count from that thread. Therefore it must not be handed over to other threads.
+     * </p>
+     *
      * @param alleleCount the required allele-count.
      * @param ploidy the required ploidy-count.
      *
@@ -311,6 +337,38 @@ public class GenotypeLikelihoodCalculators {
     public static GenotypeLikelihoodCalculator getInstance(final int ploidy, final int alleleCount) {
         checkPloidyAndMaximumAllele(ploidy, alleleCount);
 
+        GenotypeLikelihoodCalculator[][] cache = calculatorCache.get();
+        if (ploidy < cache.length && cache[ploidy] != null && alleleCount < cache[ploidy].length) {
+            final GenotypeLikelihoodCalculator cached = cache[ploidy][alleleCount];
+            if (cached != null)
+                return cached;
+        }
+
+        final GenotypeLikelihoodCalculator result = newInstance(ploidy, alleleCount);
+
+        if (ploidy >= cache.length) {
+            cache = Arrays.copyOf(cache, Math.max(ploidy + 1, cache.length << 1));
+            calculatorCache.set(cache);
+        }
+        if (cache[ploidy] == null)
+            cache[ploidy] = new GenotypeLikelihoodCalculator[Math.max(alleleCount, maximumAllele) + 1];
+        else if (alleleCount >= cache[ploidy].length)
+            cache[ploidy] = Arrays.copyOf(cache[ploidy], Math.max(alleleCount + 1, cache[ploidy].length << 1));
+        cache[ploidy][alleleCount] = result;
+        return result;
+    }
+
+    /**
+     * Creates a new calculator instance, bypassing the per-thread cache.
+     *
+     * @param alleleCount the required allele-count.
+     * @param ploidy the required ploidy-count.
+     *
+     * @throws IllegalArgumentException if either {@code ploidy} or {@code alleleCount} is negative, or the resulting number of genotypes is too large.
+     *
+     * @return never {@code null}.
+     */
+    private static GenotypeLikelihoodCalculator newInstance(final int ploidy, final int alleleCount) {
         // Non-thread safe (fast) check on tables capacities,
         // if not enough capacity we expand the tables in a thread-safe manner
         // also checks if the requested ploidy and allele count result in a genotype count too large to deal with
@@ -338,8 +396,10 @@ public class GenotypeLikelihoodCalculators {
         if (!needsToExpandAlleleCapacity && !needsToExpandPloidyCapacity)
             return;
 
-        final int newMaximumPloidy = Math.max(maximumPloidy,requestedMaximumPloidy);
-        final int newMaximumAllele = Math.max(maximumAllele,requestedMaximumAllele);
+        // Grow geometrically so that sites with slowly increasing ploidy or allele count (e.g. pools or
+        // multi-allelic gVCF merges) do not trigger a full table rebuild every time.
+        final int newMaximumPloidy = needsToExpandPloidyCapacity ? Math.max(maximumPloidy << 1, requestedMaximumPloidy) : maximumPloidy;
+        final int newMaximumAllele = needsToExpandAlleleCapacity ? Math.max(maximumAllele << 1, requestedMaximumAllele) : maximumAllele;
 
         // Update tables first.
         alleleFirstGenotypeOffsetByPloidy = buildAlleleFirstGenotypeOffsetTable(newMaximumPloidy,newMaximumAllele);
@@ -355,9 +415,9 @@ public class GenotypeLikelihoodCalculators {
         // Just after updating tables update the capacity fields:
 
         if (needsToExpandAlleleCapacity)
-            maximumAllele = requestedMaximumAllele;
+            maximumAllele = newMaximumAllele;
         if (needsToExpandPloidyCapacity)
-            maximumPloidy = requestedMaximumPloidy;
+            maximumPloidy = newMaximumPloidy;
     }
 
     /**
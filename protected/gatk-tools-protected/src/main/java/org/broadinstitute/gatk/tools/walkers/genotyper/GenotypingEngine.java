@@ -106,7 +106,10 @@ public abstract class GenotypingEngine<Config extends StandardCallerArgumentColl
 
     protected final GenomeLocParser genomeLocParser;
 
-    private final List<GenomeLoc> upstreamDeletionsLoc = new LinkedList<>();
+    /**
+     * The deletions output by this engine, for callers genotyping their sites in order with the engine's own state
+     */
+    private final UpstreamDeletions upstreamDeletions = new UpstreamDeletions();
 
     protected final AFCalculator newAFCalculator;
 
@@ -229,6 +232,24 @@ public abstract class GenotypingEngine<Config extends StandardCallerArgumentColl
                                                  final boolean inheritAttributesFromInputVC,
                                                  final Map<String, PerReadAlleleLikelihoodMap> perReadAlleleLikelihoodMap,
                                                  final boolean doAlleleSpecificCalcs) {
+        return calculateGenotypes(tracker, refContext, rawContext, stratifiedContexts, vc, model, inheritAttributesFromInputVC,
+                perReadAlleleLikelihoodMap, doAlleleSpecificCalcs, upstreamDeletions);
+    }
+
+    /**
+     * Main entry function to calculate genotypes, deciding on spanning deletion alleles with the given deletions
+     * rather than with the engine's own.
+     *
+     * @param upstreamDeletions                  deletions output upstream of vc, to which the deletions output at vc are added
+     * @see #calculateGenotypes(RefMetaDataTracker, ReferenceContext, AlignmentContext, Map, VariantContext, GenotypeLikelihoodsCalculationModel.Model, boolean, Map, boolean)
+     */
+    protected VariantCallContext calculateGenotypes(final RefMetaDataTracker tracker, final ReferenceContext refContext,
+                                                 final AlignmentContext rawContext, Map<String, AlignmentContext> stratifiedContexts,
+                                                 final VariantContext vc, final GenotypeLikelihoodsCalculationModel.Model model,
+                                                 final boolean inheritAttributesFromInputVC,
+                                                 final Map<String, PerReadAlleleLikelihoodMap> perReadAlleleLikelihoodMap,
+                                                 final boolean doAlleleSpecificCalcs,
+                                                 final UpstreamDeletions upstreamDeletions) {
 
         final boolean limitedContext = tracker == null || refContext == null || rawContext == null || stratifiedContexts == null;
         // if input VC can't be genotyped, exit with either null VCC or, in case where we need to emit all sites, an empty call
@@ -248,7 +269,7 @@ public abstract class GenotypingEngine<Config extends StandardCallerArgumentColl
 
         final AFCalculationResult AFresult = afCalculatorForQualScore.getLog10PNonRef(vc, defaultPloidy,maxAltAlleles, getAlleleFrequencyPriors(vc,defaultPloidy,model));
 
-        final OutputAlleleSubset outputAlternativeAlleles = calculateOutputAlleleSubset(AFresult, vc);
+        final OutputAlleleSubset outputAlternativeAlleles = calculateOutputAlleleSubset(AFresult, vc, upstreamDeletions);
 
         final double PoFGT0 = Math.pow(10, AFresult.getLog10PosteriorOfAFGT0());
 
@@ -360,9 +381,10 @@ public abstract class GenotypingEngine<Config extends StandardCallerArgumentColl
      * Provided the exact mode computations it returns the appropriate subset of alleles that progress to genotyping.
      * @param afcr the exact model calcualtion result.
      * @param  vc the input variant context
+     * @param upstreamDeletions the deletions output upstream of vc
      * @return information about the alternative allele subsetting {@code null}.
      */
-    private OutputAlleleSubset calculateOutputAlleleSubset(final AFCalculationResult afcr, final VariantContext vc) {
+    private OutputAlleleSubset calculateOutputAlleleSubset(final AFCalculationResult afcr, final VariantContext vc, final UpstreamDeletions upstreamDeletions) {
         final List<Allele> alleles = afcr.getAllelesUsedInGenotyping();
 
         final int alternativeAlleleCount = alleles.size() - 1;
@@ -384,12 +406,12 @@ public abstract class GenotypingEngine<Config extends StandardCallerArgumentColl
                 boolean toOutput = (isPlausible || forceKeepAllele(allele) || isNonRefWhichIsLoneAltAllele);
                 if ( allele.equals(GATKVCFConstants.SPANNING_DELETION_SYMBOLIC_ALLELE_DEPRECATED) ||
                         allele.equals(Allele.SPAN_DEL) ) {
-                    toOutput &= coveredByDeletion(vc);
+                    toOutput &= upstreamDeletions.covers(vc);
                 }
                 if (toOutput) {
                     outputAlleles[outputAlleleCount] = allele;
                     mleCounts[outputAlleleCount++] = afcr.getAlleleCountAtMLE(allele);
-                    recordDeletion(referenceAlleleSize, allele, vc);
+                    recordDeletion(referenceAlleleSize, allele, vc, upstreamDeletions);
                 }
             }
         }
@@ -404,38 +426,16 @@ public abstract class GenotypingEngine<Config extends StandardCallerArgumentColl
      * @param referenceAlleleSize   reference allele length
      * @param allele                allele of interest
      * @param vc                    variant context
+     * @param upstreamDeletions     the deletions to add to
      */
-    private void recordDeletion(final int referenceAlleleSize, final Allele allele, final VariantContext vc) {
+    private void recordDeletion(final int referenceAlleleSize, final Allele allele, final VariantContext vc, final UpstreamDeletions upstreamDeletions) {
         final int deletionSize = referenceAlleleSize - allele.length();
 
         // Allele ia a deletion
         if (deletionSize > 0) {
             final GenomeLoc genomeLoc = genomeLocParser.createGenomeLocOnContig(vc.getContig(), vc.getStart(), vc.getStart() + deletionSize);
-            upstreamDeletionsLoc.add(genomeLoc);
-        }
-    }
-
-    /**
-     * Is the variant context covered by an upstream deletion?
-     *
-     * @param vc    variant context
-     * @return  true if the location is covered by an upstream deletion, false otherwise
-     */
-    private boolean coveredByDeletion(final VariantContext vc) {
-        for (Iterator<GenomeLoc> it = upstreamDeletionsLoc.iterator(); it.hasNext(); ) {
-            final GenomeLoc loc = it.next();
-            if (!loc.getContig().equals(vc.getContig())) { // past contig deletion.
-                it.remove();
-            } else if (loc.getStop() < vc.getStart()) { // past position in current contig deletion.
-                it.remove();
-            } else if (loc.getStart() == vc.getStart()) {
-                // ignore this deletion, the symbolic one does not make reference to it.
-            } else { // deletion covers.
-                return true;
-            }
+            upstreamDeletions.add(genomeLoc);
         }
-
-        return false;
     }
 
     /**
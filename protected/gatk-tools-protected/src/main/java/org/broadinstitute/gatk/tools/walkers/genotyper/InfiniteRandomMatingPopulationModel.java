@@ -76,28 +76,6 @@ import java.util.List;
  */
 public class InfiniteRandomMatingPopulationModel implements GenotypingModel {
 
-    private final int cachePloidyCapacity;
-    private final int cacheAlleleCountCapacity;
-    private ThreadLocal<GenotypeLikelihoodCalculator[][]> likelihoodCalculators;
-
-    /**
-     * Create a new infinite model instance.
-     */
-    public InfiniteRandomMatingPopulationModel() {
-        this(10,50);
-    }
-
-    public InfiniteRandomMatingPopulationModel(final int calculatorCachePloidyCapacity, final int calculatorCacheAlleleCapacity) {
-        cachePloidyCapacity = calculatorCachePloidyCapacity;
-        cacheAlleleCountCapacity = calculatorCachePloidyCapacity;
-        likelihoodCalculators = new ThreadLocal<GenotypeLikelihoodCalculator[][]>( ) {
-            @Override
-            public GenotypeLikelihoodCalculator[][] initialValue() {
-                return new GenotypeLikelihoodCalculator[calculatorCachePloidyCapacity][calculatorCacheAlleleCapacity];
-            }
-        };
-    }
-
     @Override
     public <A extends Allele> GenotypingLikelihoods<A> calculateLikelihoods(final AlleleList<A> genotypingAlleles, final GenotypingData<A> data) {
         if (genotypingAlleles == null)
@@ -141,13 +119,8 @@ public class InfiniteRandomMatingPopulationModel implements GenotypingModel {
     }
 
     private GenotypeLikelihoodCalculator getLikelihoodsCalculator(final int samplePloidy, final int alleleCount) {
-        if (samplePloidy >= cachePloidyCapacity)
-            return GenotypeLikelihoodCalculators.getInstance(samplePloidy, alleleCount);
-        else if (alleleCount >= cacheAlleleCountCapacity)
-            return GenotypeLikelihoodCalculators.getInstance(samplePloidy, alleleCount);
-        final GenotypeLikelihoodCalculator[][] cache = likelihoodCalculators.get();
-        final GenotypeLikelihoodCalculator result = cache[samplePloidy][alleleCount];
-        return result != null ? result : (cache[samplePloidy][alleleCount] = GenotypeLikelihoodCalculators.getInstance(samplePloidy, alleleCount));
+        // calculators are cached per thread by GenotypeLikelihoodCalculators.
+        return GenotypeLikelihoodCalculators.getInstance(samplePloidy, alleleCount);
     }
 
     private <A extends Allele> GenotypingLikelihoods<A> multiSampleHeterogeneousPloidyModelLikelihoods(final AlleleList<A> genotypingAlleles,
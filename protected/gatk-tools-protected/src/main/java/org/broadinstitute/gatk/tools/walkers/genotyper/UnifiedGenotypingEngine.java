@@ -315,6 +315,18 @@ public class UnifiedGenotypingEngine extends GenotypingEngine<UnifiedArgumentCol
      * @return the VariantCallContext object (can be null)
      */
     public VariantCallContext calculateGenotypes(VariantContext vc) {
+        return calculateGenotypes(vc, (UpstreamDeletions) null);
+    }
+
+    /**
+     * Compute genotypes at a given locus, deciding on spanning deletion alleles with the given upstream deletions.
+     *
+     * @param vc         the GL-annotated variant context
+     * @param upstreamDeletions the deletions output upstream of vc, to which the deletions output at vc are added;
+     *                          if {@code null}, the engine's own are used
+     * @return the VariantCallContext object (can be null)
+     */
+    public VariantCallContext calculateGenotypes(final VariantContext vc, final UpstreamDeletions upstreamDeletions) {
         final VariantContext.Type type = vc.getType();
         final GenotypeLikelihoodsCalculationModel.Model model;
         /**
@@ -327,7 +339,9 @@ public class UnifiedGenotypingEngine extends GenotypingEngine<UnifiedArgumentCol
             model = GenotypeLikelihoodsCalculationModel.Model.SNP;
         }
 
-        return calculateGenotypes(null, null, null, null, vc, model, null, doAlleleSpecificCalcs);
+        if ( upstreamDeletions == null )
+            return calculateGenotypes(null, null, null, null, vc, model, null, doAlleleSpecificCalcs);
+        return calculateGenotypes(null, null, null, null, vc, model, false, null, doAlleleSpecificCalcs, upstreamDeletions);
     }
 
 
@@ -83,6 +83,7 @@ import org.broadinstitute.gatk.utils.MathUtils;
 import org.broadinstitute.gatk.utils.QualityUtils;
 import org.broadinstitute.gatk.utils.activeregion.ActiveRegion;
 import org.broadinstitute.gatk.utils.activeregion.ActiveRegionReadState;
+import org.broadinstitute.gatk.utils.activeregion.ActiveRegionTrace;
 import org.broadinstitute.gatk.utils.activeregion.ActivityProfileState;
 import org.broadinstitute.gatk.utils.clipping.ReadClipper;
 import org.broadinstitute.gatk.utils.commandline.*;
@@ -99,6 +100,7 @@ import org.broadinstitute.gatk.utils.fragments.FragmentUtils;
 import org.broadinstitute.gatk.utils.genotyper.*;
 import org.broadinstitute.gatk.utils.gga.GenotypingGivenAllelesUtils;
 import org.broadinstitute.gatk.utils.gvcf.GVCFWriter;
+import org.broadinstitute.gatk.utils.gvcf.ReferenceConfidenceList;
 import org.broadinstitute.gatk.utils.haplotype.Haplotype;
 import org.broadinstitute.gatk.utils.haplotypeBAMWriter.DroppedReadsTracker;
 import org.broadinstitute.gatk.utils.haplotypeBAMWriter.HaplotypeBAMWriter;
@@ -697,6 +699,7 @@ public class HaplotypeCaller extends ActiveRegionWalker<List<VariantContext>, In
         assemblyEngine.setDebugGraphTransformations(RTAC.debugGraphTransformations);
         assemblyEngine.setAllowCyclesInKmerGraphToGeneratePaths(RTAC.allowCyclesInKmerGraphToGeneratePaths);
         assemblyEngine.setRecoverDanglingBranches(!RTAC.doNotRecoverDanglingBranches);
+        assemblyEngine.setSmithWatermanImplementation(RTAC.smithWaterman);
         assemblyEngine.setMinDanglingBranchLength(RTAC.minDanglingBranchLength);
         assemblyEngine.setMinBaseQualityToUseInAssembly(MIN_BASE_QUALTY_SCORE);
 
@@ -866,7 +869,7 @@ public class HaplotypeCaller extends ActiveRegionWalker<List<VariantContext>, In
 
         if( !originalActiveRegion.isActive() )
             // Not active so nothing to do!
-            return referenceModelForNoVariation(originalActiveRegion, true);
+            return noVariationResult(originalActiveRegion, true);
 
         final List<VariantContext> givenAlleles = new ArrayList<>();
         if( HCAC.genotypingOutputMode == GenotypingOutputMode.GENOTYPE_GIVEN_ALLELES ) {
@@ -876,14 +879,21 @@ public class HaplotypeCaller extends ActiveRegionWalker<List<VariantContext>, In
                 }
             }
             // No alleles found in this region so nothing to do!
-            if ( givenAlleles.isEmpty() ) { return referenceModelForNoVariation(originalActiveRegion, true); }
+            if ( givenAlleles.isEmpty() ) { return noVariationResult(originalActiveRegion, true); }
         } else {
             // No reads here so nothing to do!
-            if( originalActiveRegion.size() == 0 ) { return referenceModelForNoVariation(originalActiveRegion, true); }
+            if( originalActiveRegion.size() == 0 ) { return noVariationResult(originalActiveRegion, true); }
         }
 
         // run the local assembler, getting back a collection of information on how we should proceed
-        final AssemblyResultSet untrimmedAssemblyResult = assembleReads(originalActiveRegion, givenAlleles);
+        final AssemblyResultSet untrimmedAssemblyResult;
+        ActiveRegionTrace.enterPhase(ActiveRegionTrace.Phase.ASSEMBLY);
+        try {
+            untrimmedAssemblyResult = assembleReads(originalActiveRegion, givenAlleles);
+        } finally {
+            ActiveRegionTrace.exitPhase();
+        }
+        ActiveRegionTrace.setHaplotypeCount(untrimmedAssemblyResult.getHaplotypeCount());
 
         final TreeSet<VariantContext> allVariationEvents = untrimmedAssemblyResult.getVariationEvents();
         // TODO - line bellow might be unnecessary : it might be that assemblyResult will always have those alleles anyway
@@ -893,7 +903,7 @@ public class HaplotypeCaller extends ActiveRegionWalker<List<VariantContext>, In
         final ActiveRegionTrimmer.Result trimmingResult = trimmer.trim(originalActiveRegion,allVariationEvents);
 
         if (!trimmingResult.isVariationPresent() && !HCAC.disableOptimizations)
-            return referenceModelForNoVariation(originalActiveRegion,false);
+            return noVariationResult(originalActiveRegion,false);
 
         final AssemblyResultSet assemblyResult =
                 trimmingResult.needsTrimming() ? untrimmedAssemblyResult.trimTo(trimmingResult.getCallableRegion()) : untrimmedAssemblyResult;
@@ -920,7 +930,7 @@ public class HaplotypeCaller extends ActiveRegionWalker<List<VariantContext>, In
         // abort early if something is out of the acceptable range
         // TODO is this ever true at this point??? perhaps GGA. Need to check.
         if( ! assemblyResult.isVariationPresent() && ! HCAC.disableOptimizations)
-            return referenceModelForNoVariation(originalActiveRegion, false);
+            return noVariationResult(originalActiveRegion, false);
 
         // For sure this is not true if gVCF is on.
         if (dontGenotype) return NO_CALLS; // user requested we not proceed
@@ -929,7 +939,7 @@ public class HaplotypeCaller extends ActiveRegionWalker<List<VariantContext>, In
         // TODO is this ever true at this point??? perhaps GGA. Need to check.
         if( regionForGenotyping.size() == 0 && ! HCAC.disableOptimizations) {
             // no reads remain after filtering so nothing else to do!
-            return referenceModelForNoVariation(originalActiveRegion, false);
+            return noVariationResult(originalActiveRegion, false);
         }
 
         // evaluate each sample's reads against all haplotypes
@@ -938,8 +948,13 @@ public class HaplotypeCaller extends ActiveRegionWalker<List<VariantContext>, In
         final Map<String,List<GATKSAMRecord>> reads = splitReadsBySample( regionForGenotyping.getReads() );
 
         // Calculate the likelihoods: CPU intensive part.
-        final ReadLikelihoods<Haplotype> readLikelihoods =
-                likelihoodCalculationEngine.computeReadLikelihoods(assemblyResult,samplesList,reads);
+        final ReadLikelihoods<Haplotype> readLikelihoods;
+        ActiveRegionTrace.enterPhase(ActiveRegionTrace.Phase.PAIRHMM);
+        try {
+            readLikelihoods = likelihoodCalculationEngine.computeReadLikelihoods(assemblyResult,samplesList,reads);
+        } finally {
+            ActiveRegionTrace.exitPhase();
+        }
 
         // Realign reads to their best haplotype.
         final Map<GATKSAMRecord,GATKSAMRecord> readRealignments = realignReadsToTheirBestHaplotype(readLikelihoods, assemblyResult.getReferenceHaplotype(), assemblyResult.getPaddedReferenceLoc());
@@ -959,17 +974,23 @@ public class HaplotypeCaller extends ActiveRegionWalker<List<VariantContext>, In
         //  haplotype containing C as reference (and vice versa).  Now this is fine if all possible haplotypes are included
         //  in the genotyping, but we lose information if we select down to a few haplotypes.  [EB]
 
-        final HaplotypeCallerGenotypingEngine.CalledHaplotypes calledHaplotypes = genotypingEngine.assignGenotypeLikelihoods(
-                haplotypes,
-                readLikelihoods,
-                perSampleFilteredReadList,
-                assemblyResult.getFullReferenceWithPadding(),
-                assemblyResult.getPaddedReferenceLoc(),
-                regionForGenotyping.getLocation(),
-                getToolkit().getGenomeLocParser(),
-                metaDataTracker,
-                (RTAC.consensusMode ? Collections.<VariantContext>emptyList() : givenAlleles),
-                emitReferenceConfidence());
+        final HaplotypeCallerGenotypingEngine.CalledHaplotypes calledHaplotypes;
+        ActiveRegionTrace.enterPhase(ActiveRegionTrace.Phase.GENOTYPING);
+        try {
+            calledHaplotypes = genotypingEngine.assignGenotypeLikelihoods(
+                    haplotypes,
+                    readLikelihoods,
+                    perSampleFilteredReadList,
+                    assemblyResult.getFullReferenceWithPadding(),
+                    assemblyResult.getPaddedReferenceLoc(),
+                    regionForGenotyping.getLocation(),
+                    getToolkit().getGenomeLocParser(),
+                    metaDataTracker,
+                    (RTAC.consensusMode ? Collections.<VariantContext>emptyList() : givenAlleles),
+                    emitReferenceConfidence());
+        } finally {
+            ActiveRegionTrace.exitPhase();
+        }
 
         if ( HCAC.bamWriter != null ) {
             final Set<Haplotype> calledHaplotypeSet = new HashSet<>(calledHaplotypes.getCalledHaplotypes());
@@ -995,17 +1016,26 @@ public class HaplotypeCaller extends ActiveRegionWalker<List<VariantContext>, In
                 // no called all of the potential haplotypes
                 return referenceModelForNoVariation(originalActiveRegion, false);
             } else {
-                final List<VariantContext> result = new LinkedList<>();
                 // output left-flanking non-variant section:
-                if (trimmingResult.hasLeftFlankingRegion())
-                    result.addAll(referenceModelForNoVariation(trimmingResult.nonVariantLeftFlankRegion(),false));
+                final ReferenceConfidenceList leftFlankResult = trimmingResult.hasLeftFlankingRegion() ?
+                        referenceModelForNoVariation(trimmingResult.nonVariantLeftFlankRegion(),false) : null;
                 // output variant containing region.
-                result.addAll(referenceConfidenceModel.calculateRefConfidence(assemblyResult.getReferenceHaplotype(),
-                        calledHaplotypes.getCalledHaplotypes(), assemblyResult.getPaddedReferenceLoc(), regionForGenotyping,
-                        readLikelihoods, genotypingEngine.getPloidyModel(), genotypingEngine.getGenotypingModel(), calledHaplotypes.getCalls()));
+                final ReferenceConfidenceList result;
+                ActiveRegionTrace.enterPhase(ActiveRegionTrace.Phase.REFERENCE_CONFIDENCE);
+                try {
+                    result = referenceConfidenceModel.calculateRefConfidence(assemblyResult.getReferenceHaplotype(),
+                            calledHaplotypes.getCalledHaplotypes(), assemblyResult.getPaddedReferenceLoc(), regionForGenotyping,
+                            readLikelihoods, genotypingEngine.getPloidyModel(), genotypingEngine.getGenotypingModel(), calledHaplotypes.getCalls());
+                } finally {
+                    ActiveRegionTrace.exitPhase();
+                }
                 // output right-flanking non-variant section:
                 if (trimmingResult.hasRightFlankingRegion())
-                    result.addAll(referenceModelForNoVariation(trimmingResult.nonVariantRightFlankRegion(),false));
+                    result.append(referenceModelForNoVariation(trimmingResult.nonVariantRightFlankRegion(),false));
+                if (leftFlankResult != null) {
+                    leftFlankResult.append(result);
+                    return leftFlankResult;
+                }
                 return result;
             }
         } else
@@ -1028,7 +1058,7 @@ public class HaplotypeCaller extends ActiveRegionWalker<List<VariantContext>, In
             final GATKSAMRecord originalRead = bestAllele.read;
             final Haplotype bestHaplotype = bestAllele.allele;
             final boolean isInformative = bestAllele.isInformative();
-            final GATKSAMRecord realignedRead = AlignmentUtils.createReadAlignedToRef(originalRead, bestHaplotype, refHaplotype, paddedReferenceLoc.getStart(), isInformative);
+            final GATKSAMRecord realignedRead = AlignmentUtils.createReadAlignedToRef(originalRead, bestHaplotype, refHaplotype, paddedReferenceLoc.getStart(), isInformative, RTAC.smithWaterman);
             result.put(originalRead,realignedRead);
         }
         return result;
@@ -1097,29 +1127,42 @@ public class HaplotypeCaller extends ActiveRegionWalker<List<VariantContext>, In
     }
 
     /**
-     * Create an ref model result (ref model or no calls depending on mode) for an active region without any variation
+     * Create the result (ref model or no calls depending on mode) for an active region without any variation
      * (not is active, or assembled to just ref)
      *
      * @param region the region to return a no-variation result
      * @param needsToBeFinalized should the region be finalized before computing the ref model (should be false if already done)
      * @return a list of variant contexts (can be empty) to emit for this ref region
      */
-    private List<VariantContext> referenceModelForNoVariation(final ActiveRegion region, final boolean needsToBeFinalized) {
-        if ( emitReferenceConfidence() ) {
-            //TODO - why the activeRegion cannot manage its own one-time finalization and filtering?
-            //TODO - perhaps we can remove the last parameter of this method and the three lines bellow?
-            if ( needsToBeFinalized )
-                finalizeActiveRegion(region);
-            filterNonPassingReads(region);
+    private List<VariantContext> noVariationResult(final ActiveRegion region, final boolean needsToBeFinalized) {
+        return emitReferenceConfidence() ? referenceModelForNoVariation(region, needsToBeFinalized) : NO_CALLS;
+    }
 
+    /**
+     * Create the ref model for an active region without any variation; only to be used when emitting reference confidence
+     *
+     * @param region the region to return the ref model of
+     * @param needsToBeFinalized should the region be finalized before computing the ref model (should be false if already done)
+     * @return the reference confidence records of this ref region
+     */
+    private ReferenceConfidenceList referenceModelForNoVariation(final ActiveRegion region, final boolean needsToBeFinalized) {
+        //TODO - why the activeRegion cannot manage its own one-time finalization and filtering?
+        //TODO - perhaps we can remove the last parameter of this method and the three lines bellow?
+        if ( needsToBeFinalized )
+            finalizeActiveRegion(region);
+        filterNonPassingReads(region);
+
+        ActiveRegionTrace.enterPhase(ActiveRegionTrace.Phase.REFERENCE_CONFIDENCE);
+        try {
             final GenomeLoc paddedLoc = region.getExtendedLoc();
             final Haplotype refHaplotype = createReferenceHaplotype(region, paddedLoc);
             final List<Haplotype> haplotypes = Collections.singletonList(refHaplotype);
             return referenceConfidenceModel.calculateRefConfidence(refHaplotype, haplotypes,
                     paddedLoc, region, createDummyStratifiedReadMap(refHaplotype, samplesList, region),
                     genotypingEngine.getPloidyModel(), genotypingEngine.getGenotypingModel(), Collections.<VariantContext>emptyList());
-        } else
-            return NO_CALLS;
+        } finally {
+            ActiveRegionTrace.exitPhase();
+        }
     }
 
     /**
@@ -1150,8 +1193,13 @@ public class HaplotypeCaller extends ActiveRegionWalker<List<VariantContext>, In
 
     @Override
     public Integer reduce(List<VariantContext> callsInRegion, Integer numCalledRegions) {
-        for( final VariantContext call : callsInRegion ) {
-            vcfWriter.add( call );
+        if ( vcfWriter instanceof GVCFWriter ) {
+            // fold the reference confidence sites into the gVCF bands without making a VariantContext for each
+            ((GVCFWriter)vcfWriter).addAll(callsInRegion);
+        } else {
+            for( final VariantContext call : callsInRegion ) {
+                vcfWriter.add( call );
+            }
         }
         return (callsInRegion.isEmpty() ? 0 : 1) + numCalledRegions;
     }
@@ -57,6 +57,7 @@ import com.google.java.contract.Requires;
 import htsjdk.variant.variantcontext.*;
 import org.broadinstitute.gatk.engine.arguments.GenotypeCalculationArgumentCollection;
 import org.broadinstitute.gatk.utils.*;
+import org.broadinstitute.gatk.utils.activeregion.ActiveRegionTrace;
 import org.broadinstitute.gatk.utils.contexts.ReferenceContext;
 import org.broadinstitute.gatk.utils.genotyper.IndexedAlleleList;
 import org.broadinstitute.gatk.utils.genotyper.SampleList;
@@ -325,7 +326,13 @@ public class HaplotypeCallerGenotypingEngine extends GenotypingEngine<AssemblyBa
 
         ReferenceContext referenceContext = new ReferenceContext(genomeLocParser, genomeLocParser.createGenomeLoc(mergedVC), refLoc, ref);
         final boolean someAlternativeAllelesWereDropped = call.getAlleles().size() != initialAlleleNumber;
-        VariantContext annotatedCall = annotationEngine.annotateContextForActiveRegion(referenceContext, tracker,readAlleleLikelihoodsForAnnotation, call, emitReferenceConfidence);
+        VariantContext annotatedCall;
+        ActiveRegionTrace.enterPhase(ActiveRegionTrace.Phase.ANNOTATION);
+        try {
+            annotatedCall = annotationEngine.annotateContextForActiveRegion(referenceContext, tracker,readAlleleLikelihoodsForAnnotation, call, emitReferenceConfidence);
+        } finally {
+            ActiveRegionTrace.exitPhase();
+        }
         if (someAlternativeAllelesWereDropped || someAlternativeAllelesWereAlreadyDropped)
             annotatedCall = GATKVariantContextUtils.reverseTrimAlleles(annotatedCall);
 
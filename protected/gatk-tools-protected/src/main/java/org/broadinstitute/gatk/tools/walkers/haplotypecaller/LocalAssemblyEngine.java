@@ -62,8 +62,13 @@ import org.broadinstitute.gatk.utils.GenomeLoc;
 import org.broadinstitute.gatk.utils.activeregion.ActiveRegion;
 import org.broadinstitute.gatk.utils.gga.GenotypingGivenAllelesUtils;
 import org.broadinstitute.gatk.utils.haplotype.Haplotype;
+import org.broadinstitute.gatk.utils.instrumentation.Counter;
+import org.broadinstitute.gatk.utils.instrumentation.LatencyHistogram;
+import org.broadinstitute.gatk.utils.instrumentation.MetricsRegistry;
+import org.broadinstitute.gatk.utils.instrumentation.Subsystem;
 import org.broadinstitute.gatk.utils.sam.CigarUtils;
 import org.broadinstitute.gatk.utils.sam.GATKSAMRecord;
+import org.broadinstitute.gatk.utils.smithwaterman.SWImplementation;
 import htsjdk.variant.variantcontext.VariantContext;
 
 import java.io.File;
@@ -86,6 +91,9 @@ public abstract class LocalAssemblyEngine {
     public static final byte DEFAULT_MIN_BASE_QUALITY_TO_USE = (byte) 10;
     private static final int MIN_HAPLOTYPE_REFERENCE_LENGTH = 30;
 
+    private static final LatencyHistogram assemblyTime = MetricsRegistry.getInstance().histogram(Subsystem.ASSEMBLY, "runLocalAssembly");
+    private static final Counter assembledHaplotypes = MetricsRegistry.getInstance().counter(Subsystem.ASSEMBLY, "haplotypes");
+
     protected final int numBestHaplotypesPerGraph;
 
     protected boolean debug = false;
@@ -97,6 +105,7 @@ public abstract class LocalAssemblyEngine {
     protected byte minBaseQualityToUseInAssembly = DEFAULT_MIN_BASE_QUALITY_TO_USE;
     protected int pruneFactor = 2;
     protected boolean errorCorrectKmers = false;
+    protected SWImplementation swImplementation = SWImplementation.ORIGINAL;
 
     private PrintStream graphWriter = null;
 
@@ -141,6 +150,8 @@ public abstract class LocalAssemblyEngine {
         if( fullReferenceWithPadding.length != refLoc.size() ) { throw new IllegalArgumentException("Reference bases and reference loc must be the same size."); }
         if( pruneFactor < 0 ) { throw new IllegalArgumentException("Pruning factor cannot be negative"); }
 
+        final long startNanos = System.nanoTime();
+
         // create the list of artificial haplotypes that should be added to the graph for GGA mode
         final List<Haplotype> givenHaplotypes = GenotypingGivenAllelesUtils.composeGivenHaplotypes(refHaplotype, givenAlleles, activeRegion.getExtendedLoc());
 
@@ -182,6 +193,8 @@ public abstract class LocalAssemblyEngine {
         // print the graphs if the appropriate debug option has been turned on
         if ( graphWriter != null ) { printGraphs(nonRefGraphs); }
 
+        assemblyTime.recordSince(startNanos);
+        assembledHaplotypes.add(resultSet.getHaplotypeCount());
         return resultSet;
     }
 
@@ -207,7 +220,7 @@ public abstract class LocalAssemblyEngine {
                 final KBestHaplotype kBestHaplotype = bestHaplotypes.next();
                 final Haplotype h = kBestHaplotype.haplotype();
                 if( !returnHaplotypes.contains(h) ) {
-                    final Cigar cigar = CigarUtils.calculateCigar(refHaplotype.getBases(),h.getBases());
+                    final Cigar cigar = CigarUtils.calculateCigar(refHaplotype.getBases(),h.getBases(),swImplementation);
 
                     if ( cigar == null ) {
                         failedCigars++; // couldn't produce a meaningful alignment of haplotype to reference, fail quietly
@@ -451,4 +464,11 @@ public abstract class LocalAssemblyEngine {
     }
 
     public void setMinDanglingBranchLength(final int minDanglingBranchLength) { this.minDanglingBranchLength = minDanglingBranchLength; }
+
+    public SWImplementation getSmithWatermanImplementation() { return swImplementation; }
+
+    public void setSmithWatermanImplementation(final SWImplementation swImplementation) {
+        if ( swImplementation == null ) throw new IllegalArgumentException("swImplementation cannot be null");
+        this.swImplementation = swImplementation;
+    }
 }
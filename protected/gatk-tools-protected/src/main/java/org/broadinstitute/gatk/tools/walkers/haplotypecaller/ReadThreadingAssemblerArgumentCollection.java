@@ -56,6 +56,7 @@ import org.broadinstitute.gatk.utils.commandline.Advanced;
 import org.broadinstitute.gatk.utils.commandline.Argument;
 import org.broadinstitute.gatk.utils.commandline.Hidden;
 import org.broadinstitute.gatk.utils.commandline.Output;
+import org.broadinstitute.gatk.utils.smithwaterman.SWImplementation;
 
 import java.io.PrintStream;
 import java.util.Arrays;
@@ -173,6 +174,15 @@ public class ReadThreadingAssemblerArgumentCollection {
     @Argument(fullName="allowCyclesInKmerGraphToGeneratePaths", shortName="allowCyclesInKmerGraphToGeneratePaths", doc="Allow cycles in the kmer graphs to generate paths with multiple copies of the path sequenece rather than just the shortest paths", required = false)
     public boolean allowCyclesInKmerGraphToGeneratePaths = false;
 
+    /**
+     * Smith-Waterman is used to align every assembled haplotype to the reference and, when writing a bamout, every read to its
+     * best haplotype.  All implementations produce the same alignments; FAST reuses its working memory across alignments, and
+     * BANDED in addition only explores alignments whose net indel length is within a fixed band of the diagonal.
+     */
+    @Advanced
+    @Argument(fullName="smithWaterman", shortName="smithWaterman", doc="Which Smith-Waterman implementation to use for haplotype and read alignment", required = false)
+    public SWImplementation smithWaterman = SWImplementation.ORIGINAL;
+
     /**
      * This argument is meant for debugging and is not immediately useful for normal analysis use.
      */
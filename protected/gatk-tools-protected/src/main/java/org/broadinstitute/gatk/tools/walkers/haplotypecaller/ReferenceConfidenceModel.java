@@ -62,17 +62,15 @@ import org.broadinstitute.gatk.utils.GenomeLocParser;
 import org.broadinstitute.gatk.utils.MathUtils;
 import org.broadinstitute.gatk.utils.QualityUtils;
 import org.broadinstitute.gatk.utils.activeregion.ActiveRegion;
-import org.broadinstitute.gatk.utils.contexts.AlignmentContext;
 import org.broadinstitute.gatk.utils.genotyper.ReadLikelihoods;
 import org.broadinstitute.gatk.utils.genotyper.SampleList;
-import org.broadinstitute.gatk.utils.genotyper.SampleListUtils;
+import org.broadinstitute.gatk.utils.gvcf.ReferenceConfidenceList;
 import org.broadinstitute.gatk.utils.haplotype.Haplotype;
-import org.broadinstitute.gatk.utils.locusiterator.LocusIteratorByState;
 import org.broadinstitute.gatk.utils.pileup.PileupElement;
 import org.broadinstitute.gatk.utils.pileup.ReadBackedPileup;
-import org.broadinstitute.gatk.utils.pileup.ReadBackedPileupImpl;
 import org.broadinstitute.gatk.utils.sam.AlignmentUtils;
 import org.broadinstitute.gatk.utils.sam.GATKSAMRecord;
+import org.broadinstitute.gatk.utils.sam.ReadUtils;
 import org.broadinstitute.gatk.utils.variant.GATKVCFConstants;
 import org.broadinstitute.gatk.utils.variant.GATKVariantContextUtils;
 
@@ -188,9 +186,10 @@ public class ReferenceConfidenceModel {
      *                     correct order by genomic position, and any variant in this list will stop us emitting a ref confidence
      *                     under any position it covers (for snps and insertions that is 1 bp, but for deletions its the entire ref span)
      * @return an ordered list of variant contexts that spans activeRegion.getLoc() and includes both reference confidence
-     *         contexts as well as calls from variantCalls if any were provided
+     *         contexts as well as calls from variantCalls if any were provided.  The reference confidence sites are
+     *         stored in primitive form and only become VariantContexts when they are read from the list
      */
-    public List<VariantContext> calculateRefConfidence(final Haplotype refHaplotype,
+    public ReferenceConfidenceList calculateRefConfidence(final Haplotype refHaplotype,
                                                        final Collection<Haplotype> calledHaplotypes,
                                                        final GenomeLoc paddedReferenceLoc,
                                                        final ActiveRegion activeRegion,
@@ -211,37 +210,40 @@ public class ReferenceConfidenceModel {
         final int ploidy = ploidyModel.samplePloidy(0); // the first sample = the only sample in reference-confidence mode.
 
         final GenomeLoc refSpan = activeRegion.getLocation();
-        final List<ReadBackedPileup> refPileups = getPileupsOverReference(refHaplotype, calledHaplotypes, paddedReferenceLoc, activeRegion, refSpan, readLikelihoods);
         final byte[] ref = refHaplotype.getBases();
-        final List<VariantContext> results = new ArrayList<>(refSpan.size());
         final String sampleName = readLikelihoods.sampleAt(0);
+        final ReferenceConfidenceList results = new ReferenceConfidenceList("HC", sampleName, ploidy, refSpan.size());
+
+        // find out first which positions are covered by a call, as no reference confidence is needed over them
+        final VariantContext[] callsStartingAt = new VariantContext[refSpan.size()];
+        final boolean[] isRefConfidenceSite = new boolean[refSpan.size()];
+        for ( int offset = 0; offset < refSpan.size(); offset++ ) {
+            final GenomeLoc curPos = genomeLocParser.createGenomeLoc(refSpan.getContig(), refSpan.getStart() + offset);
+            final VariantContext overlappingSite = getOverlappingVariantContext(curPos, variantCalls);
+            if ( overlappingSite != null && overlappingSite.getStart() == curPos.getStart() )
+                callsStartingAt[offset] = overlappingSite;
+            else
+                isRefConfidenceSite[offset] = true;
+        }
 
         final int globalRefOffset = refSpan.getStart() - activeRegion.getExtendedLoc().getStart();
-        for ( final ReadBackedPileup pileup : refPileups ) {
-            final GenomeLoc curPos = pileup.getLocation();
-            final int offset = curPos.getStart() - refSpan.getStart();
+        final RefVsAnyColumns columns = calcRefVsAnyColumns(ploidy, activeRegion.getReads(), refSpan, ref, globalRefOffset, isRefConfidenceSite);
+        final double log10Ploidy = MathUtils.Log10Cache.get(ploidy);
 
-            final VariantContext overlappingSite = getOverlappingVariantContext(curPos, variantCalls);
-            if ( overlappingSite != null && overlappingSite.getStart() == curPos.getStart() ) {
-                    results.add(overlappingSite);
+        for ( int offset = 0; offset < refSpan.size(); offset++ ) {
+            if ( ! isRefConfidenceSite[offset] ) {
+                results.addCall(callsStartingAt[offset]);
             } else {
                 // otherwise emit a reference confidence variant context
                 // Assume infinite population on a single sample.
                 final int refOffset = offset + globalRefOffset;
                 final byte refBase = ref[refOffset];
-                final RefVsAnyResult homRefCalc = calcGenotypeLikelihoodsOfRefVsAny(ploidy, pileup, refBase, BASE_QUAL_THRESHOLD, null);
+                final RefVsAnyResult homRefCalc = columns.getResult(offset, log10Ploidy);
                 homRefCalc.capByHomRefLikelihood();
 
-                final Allele refAllele = Allele.create(refBase, true);
-                final List<Allele> refSiteAlleles = Arrays.asList(refAllele, GATKVCFConstants.NON_REF_SYMBOLIC_ALLELE);
-                final VariantContextBuilder vcb = new VariantContextBuilder("HC", curPos.getContig(), curPos.getStart(), curPos.getStart(), refSiteAlleles);
-                final GenotypeBuilder gb = new GenotypeBuilder(sampleName, GATKVariantContextUtils.homozygousAlleleList(refAllele, ploidy));
-                gb.AD(homRefCalc.AD_Ref_Any);
-                gb.DP(homRefCalc.getDP());
-
                 // genotype likelihood calculation
                 final GenotypeLikelihoods snpGLs = GenotypeLikelihoods.fromLog10Likelihoods(homRefCalc.genotypeLikelihoods);
-                final int nIndelInformativeReads = calcNIndelInformativeReads(pileup, refOffset, ref, indelInformativeDepthIndelSize);
+                final int nIndelInformativeReads = columns.nIndelInformativeReads[offset];
                 final GenotypeLikelihoods indelGLs = getIndelPLs(ploidy,nIndelInformativeReads);
 
                 // now that we have the SNP and indel GLs, we take the one with the least confidence,
@@ -252,14 +254,10 @@ public class ReferenceConfidenceModel {
                 // as our GLs for the site.
                 final GenotypeLikelihoods leastConfidenceGLs = getGLwithWorstGQ(indelGLs, snpGLs);
 
+                // the site is kept in primitive form; a VariantContext is only made for it if the list is read as such
                 final int[] leastConfidenceGLsAsPLs = leastConfidenceGLs.getAsPLs();
-                gb.GQ(GATKVariantContextUtils.calculateGQFromPLs(leastConfidenceGLsAsPLs));
-                gb.PL(leastConfidenceGLsAsPLs);
-                //gb.attribute(INDEL_INFORMATIVE_DEPTH, nIndelInformativeReads);
-
-                vcb.genotypes(gb.make());
-                results.add(vcb.make());
-//                logger.info("  => VariantContext " + vcb.make());
+                results.addSite(refSpan.getContig(), refSpan.getStart() + offset, refBase, homRefCalc.AD_Ref_Any,
+                        GATKVariantContextUtils.calculateGQFromPLs(leastConfidenceGLsAsPLs), leastConfidenceGLsAsPLs);
             }
         }
 
@@ -358,6 +356,7 @@ public class ReferenceConfidenceModel {
 
         final int likelihoodCount = ploidy + 1;
         final double log10Ploidy = MathUtils.Log10Cache.get(ploidy);
+        final double[] likelihoods = refVsAnyLikelihoods(ploidy);
 
         final RefVsAnyResult result = new RefVsAnyResult(likelihoodCount);
         int readCount = 0;
@@ -366,7 +365,7 @@ public class ReferenceConfidenceModel {
             if (!p.isDeletion() && qual <= minBaseQual)
                 continue;
             readCount++;
-            calcPileupElementRefVsNonRefLikelihoodAndCount(refBase, likelihoodCount, log10Ploidy, result, p, qual, hqSoftClips);
+            calcPileupElementRefVsNonRefLikelihoodAndCount(refBase, likelihoodCount, likelihoods, result, p, qual, hqSoftClips);
         }
         final double denominator = readCount * log10Ploidy;
         for (int i = 0; i < likelihoodCount; i++)
@@ -374,74 +373,313 @@ public class ReferenceConfidenceModel {
         return result;
     }
 
-    private void calcPileupElementRefVsNonRefLikelihoodAndCount(final byte refBase, final int likelihoodCount, final double log10Ploidy, final RefVsAnyResult result, final PileupElement element, final byte qual, final MathUtils.RunningAverage hqSoftClips) {
+    private void calcPileupElementRefVsNonRefLikelihoodAndCount(final byte refBase, final int likelihoodCount, final double[] likelihoods, final RefVsAnyResult result, final PileupElement element, final byte qual, final MathUtils.RunningAverage hqSoftClips) {
         final boolean isAlt = element.getBase() != refBase || element.isDeletion() || element.isBeforeDeletionStart()
                 || element.isAfterDeletionEnd() || element.isBeforeInsertion() || element.isAfterInsertion() || element.isNextToSoftClip();
-        final double referenceLikelihood;
-        final double nonRefLikelihood;
-        if (isAlt) {
-            nonRefLikelihood = QualityUtils.qualToProbLog10(qual);
-            referenceLikelihood = QualityUtils.qualToErrorProbLog10(qual) + MathUtils.LOG_ONE_THIRD;
-            result.AD_Ref_Any[1]++;
-        } else {
-            referenceLikelihood = QualityUtils.qualToProbLog10(qual);
-            nonRefLikelihood = QualityUtils.qualToErrorProbLog10(qual) + MathUtils.LOG_ONE_THIRD;
-            result.AD_Ref_Any[0]++;
-        }
-        // Homozygous likelihoods don't need the logSum trick.
-        result.genotypeLikelihoods[0] += referenceLikelihood + log10Ploidy;
-        result.genotypeLikelihoods[likelihoodCount - 1] += nonRefLikelihood + log10Ploidy;
-        // Heterozyougs likelihoods need the logSum trick:
-        for (int i = 1, j = likelihoodCount - 2; i < likelihoodCount - 1; i++, j--)
-            result.genotypeLikelihoods[i] +=
-                    MathUtils.approximateLog10SumLog10(
-                            referenceLikelihood + MathUtils.Log10Cache.get(j),
-                            nonRefLikelihood + MathUtils.Log10Cache.get(i));
+        result.AD_Ref_Any[isAlt ? 1 : 0]++;
+        final int likelihoodsOffset = refVsAnyLikelihoodsOffset(likelihoodCount, isAlt, qual);
+        for (int i = 0; i < likelihoodCount; i++)
+            result.genotypeLikelihoods[i] += likelihoods[likelihoodsOffset + i];
         if (isAlt && hqSoftClips != null && element.isNextToSoftClip())
             hqSoftClips.add(AlignmentUtils.calcNumHighQualitySoftClips(element.getRead(), HQ_BASE_QUALITY_SOFTCLIP_THRESHOLD));
     }
 
     /**
-     * Get a list of pileups that span the entire active region span, in order, one for each position
+     * Number of distinct base qualities in the ref-vs-any likelihood tables; only qualities above the base quality
+     * threshold, which are never negative as bytes, are looked up.
      */
-    private List<ReadBackedPileup> getPileupsOverReference(final Haplotype refHaplotype,
-                                                           final Collection<Haplotype> calledHaplotypes,
-                                                           final GenomeLoc paddedReferenceLoc,
-                                                           final ActiveRegion activeRegion,
-                                                           final GenomeLoc activeRegionSpan,
-                                                           final ReadLikelihoods<Haplotype> readLikelihoods) {
+    private static final int REF_VS_ANY_QUAL_COUNT = Byte.MAX_VALUE + 1;
 
-        if ( refHaplotype == null ) throw new IllegalArgumentException("refHaplotype cannot be null");
-        if ( calledHaplotypes == null ) throw new IllegalArgumentException("calledHaplotypes cannot be null");
-        if ( !calledHaplotypes.contains(refHaplotype)) throw new IllegalArgumentException("calledHaplotypes must contain the refHaplotype");
-        if ( paddedReferenceLoc == null ) throw new IllegalArgumentException("paddedReferenceLoc cannot be null");
-        if ( activeRegion == null ) throw new IllegalArgumentException("activeRegion cannot be null");
-        if ( readLikelihoods == null ) throw new IllegalArgumentException("readLikelihoods cannot be null");
-        if ( readLikelihoods.sampleCount() != 1 ) throw new IllegalArgumentException("readLikelihoods must contain exactly one sample but it contained " + readLikelihoods.sampleCount());
+    private static volatile double[][] refVsAnyLikelihoodCache = new double[INITIAL_INDEL_LK_CACHE_PLOIDY_CAPACITY + 1][];
 
-        final List<GATKSAMRecord> reads = activeRegion.getReads();
+    /**
+     * Get the per base contributions to the ref-vs-any genotype likelihoods for a ploidy
+     *
+     * <p>
+     *     For each combination of ref or non-ref base and base quality the table holds {@code ploidy + 1}
+     *     consecutive values, starting at {@link #refVsAnyLikelihoodsOffset}, that are to be added to the
+     *     genotype likelihoods of the site.
+     * </p>
+     *
+     * @param ploidy the sample ploidy
+     * @return never {@code null}
+     */
+    private static double[] refVsAnyLikelihoods(final int ploidy) {
+        final double[][] cache = refVsAnyLikelihoodCache;
+        if (ploidy < cache.length && cache[ploidy] != null)
+            return cache[ploidy];
+        return initializeRefVsAnyLikelihoods(ploidy);
+    }
+
+    private static int refVsAnyLikelihoodsOffset(final int likelihoodCount, final boolean isAlt, final byte qual) {
+        return ((isAlt ? REF_VS_ANY_QUAL_COUNT : 0) + qual) * likelihoodCount;
+    }
+
+    private static synchronized double[] initializeRefVsAnyLikelihoods(final int ploidy) {
+        if (ploidy < refVsAnyLikelihoodCache.length && refVsAnyLikelihoodCache[ploidy] != null)
+            return refVsAnyLikelihoodCache[ploidy];
+
+        final int likelihoodCount = ploidy + 1;
+        final double log10Ploidy = MathUtils.Log10Cache.get(ploidy);
+        final double[] result = new double[2 * REF_VS_ANY_QUAL_COUNT * likelihoodCount];
+        for (final boolean isAlt : new boolean[] { false, true }) {
+            for (int q = 0; q < REF_VS_ANY_QUAL_COUNT; q++) {
+                final byte qual = (byte) q;
+                final double referenceLikelihood;
+                final double nonRefLikelihood;
+                if (isAlt) {
+                    nonRefLikelihood = QualityUtils.qualToProbLog10(qual);
+                    referenceLikelihood = QualityUtils.qualToErrorProbLog10(qual) + MathUtils.LOG_ONE_THIRD;
+                } else {
+                    referenceLikelihood = QualityUtils.qualToProbLog10(qual);
+                    nonRefLikelihood = QualityUtils.qualToErrorProbLog10(qual) + MathUtils.LOG_ONE_THIRD;
+                }
+                final int offset = refVsAnyLikelihoodsOffset(likelihoodCount, isAlt, qual);
+                // Homozygous likelihoods don't need the logSum trick.
+                result[offset] = referenceLikelihood + log10Ploidy;
+                result[offset + likelihoodCount - 1] = nonRefLikelihood + log10Ploidy;
+                // Heterozyougs likelihoods need the logSum trick:
+                for (int i = 1, j = likelihoodCount - 2; i < likelihoodCount - 1; i++, j--)
+                    result[offset + i] = MathUtils.approximateLog10SumLog10(
+                            referenceLikelihood + MathUtils.Log10Cache.get(j),
+                            nonRefLikelihood + MathUtils.Log10Cache.get(i));
+            }
+        }
 
+        // copy on write, so that unsynchronized readers always see complete tables
+        final double[][] cache = Arrays.copyOf(refVsAnyLikelihoodCache, Math.max(refVsAnyLikelihoodCache.length, ploidy + 1));
+        cache[ploidy] = result;
+        refVsAnyLikelihoodCache = cache;
+        return result;
+    }
+
+    /**
+     * Calculate the ref-vs-any evidence over all the positions of a region in one pass over the aligned bases of each read
+     *
+     * <p>
+     *     The result at each position is exactly what {@link #calcGenotypeLikelihoodsOfRefVsAny} with {@link #BASE_QUAL_THRESHOLD}
+     *     and {@link #calcNIndelInformativeReads} would give on the pileup of the reads at that position, but without
+     *     materializing the pileups: bases within adaptors and positions within skipped ('N') regions are left out as
+     *     the locus iterator would, and the neighboring indels and soft-clips of a base are taken from the read's cigar.
+     * </p>
+     *
+     * @param ploidy the sample ploidy
+     * @param reads the reads of the region, in the order they would appear in a pileup
+     * @param refSpan the positions to calculate the evidence over
+     * @param ref the reference bases
+     * @param globalRefOffset the offset in {@code ref} of the first position of {@code refSpan}
+     * @param isRefConfidenceSite which positions need the evidence; all others are skipped
+     * @return never {@code null}
+     */
+    RefVsAnyColumns calcRefVsAnyColumns(final int ploidy,
+                                        final List<GATKSAMRecord> reads,
+                                        final GenomeLoc refSpan,
+                                        final byte[] ref,
+                                        final int globalRefOffset,
+                                        final boolean[] isRefConfidenceSite) {
         if ( debuggingWriter != null )
             for ( final GATKSAMRecord read : reads )
                 debuggingWriter.addAlignment(read);
 
-        final LocusIteratorByState libs = new LocusIteratorByState(reads.iterator(), LocusIteratorByState.NO_DOWNSAMPLING,
-                true, genomeLocParser, SampleListUtils.asSet(samples), false);
+        final RefVsAnyColumns columns = new RefVsAnyColumns(refSpan.size(), ploidy + 1);
+        final double[] likelihoods = refVsAnyLikelihoods(ploidy);
+        final IndelInformativeness indelInformativeness = new IndelInformativeness(ref, indelInformativeDepthIndelSize);
+        for ( final GATKSAMRecord read : reads )
+            addReadToColumns(read, columns, likelihoods, indelInformativeness, refSpan, ref, globalRefOffset, isRefConfidenceSite);
+        return columns;
+    }
 
-        final List<ReadBackedPileup> pileups = new LinkedList<>();
-        final int startPos = activeRegionSpan.getStart();
-        AlignmentContext next = libs.advanceToLocus(startPos, true);
-        for ( int curPos = startPos; curPos <= activeRegionSpan.getStop(); curPos++ ) {
-            if ( next != null && next.getLocation().getStart() == curPos ) {
-                pileups.add(next.getBasePileup());
-                next = libs.hasNext() ? libs.next() : null;
-            } else {
-                // no data, so we create empty pileups
-                pileups.add(new ReadBackedPileupImpl(genomeLocParser.createGenomeLoc(activeRegionSpan.getContig(), curPos)));
+    /**
+     * Add the evidence of a single read to the columns
+     */
+    private void addReadToColumns(final GATKSAMRecord read,
+                                  final RefVsAnyColumns columns,
+                                  final double[] likelihoods,
+                                  final IndelInformativeness indelInformativeness,
+                                  final GenomeLoc refSpan,
+                                  final byte[] ref,
+                                  final int globalRefOffset,
+                                  final boolean[] isRefConfidenceSite) {
+        final Cigar cigar = read.getCigar();
+        final int nElements = cigar.numCigarElements();
+        final byte[] bases = read.getReadBases();
+        final byte[] quals = read.getBaseQualities();
+        final int likelihoodCount = columns.likelihoodCount;
+        final int spanStart = refSpan.getStart();
+        final int spanStop = refSpan.getStop();
+        final int deletionLikelihoodsOffset = refVsAnyLikelihoodsOffset(likelihoodCount, true, REF_MODEL_DELETION_QUAL);
+
+        indelInformativeness.setRead(bases, quals);
+        int genomePosition = read.getAlignmentStart();
+        int readOffset = 0;
+        for ( int e = 0; e < nElements; e++ ) {
+            final CigarElement element = cigar.getCigarElement(e);
+            final CigarOperator op = element.getOperator();
+            final int length = element.getLength();
+            switch ( op ) {
+                case D: {
+                    // deletions are non-ref evidence with a surrogate quality, and never indel informative
+                    final int last = Math.min(genomePosition + length - 1, spanStop);
+                    for ( int pos = Math.max(genomePosition, spanStart); pos <= last; pos++ ) {
+                        final int offset = pos - spanStart;
+                        if ( isRefConfidenceSite[offset] && ! ReadUtils.isBaseInsideAdaptor(read, pos) )
+                            columns.add(offset, true, likelihoods, deletionLikelihoodsOffset);
+                    }
+                    genomePosition += length;
+                    break;
+                }
+                case M:
+                case EQ:
+                case X: {
+                    // only the first and last base of the element can be next to an indel or soft-clip
+                    final boolean afterDeletion = previousOnGenomeOperator(cigar, e) == CigarOperator.D;
+                    final boolean afterInsertionOrSoftClip = e > 0 && isInsertionOrSoftClip(cigar.getCigarElement(e - 1).getOperator());
+                    final boolean beforeDeletion = nextOnGenomeOperator(cigar, e) == CigarOperator.D;
+                    final boolean beforeInsertion = e + 1 < nElements && cigar.getCigarElement(e + 1).getOperator() == CigarOperator.I;
+                    final boolean beforeSoftClip = e + 1 < nElements && cigar.getCigarElement(e + 1).getOperator() == CigarOperator.S;
+
+                    final int last = Math.min(genomePosition + length - 1, spanStop);
+                    for ( int pos = Math.max(genomePosition, spanStart); pos <= last; pos++ ) {
+                        final int offset = pos - spanStart;
+                        if ( ! isRefConfidenceSite[offset] || ReadUtils.isBaseInsideAdaptor(read, pos) )
+                            continue;
+                        final int inElement = pos - genomePosition;
+                        final int baseOffset = readOffset + inElement;
+                        final int refOffset = offset + globalRefOffset;
+                        final boolean atStart = inElement == 0;
+                        final boolean atEnd = inElement == length - 1;
+
+                        final byte qual = quals[baseOffset];
+                        if ( qual > BASE_QUAL_THRESHOLD ) {
+                            final boolean isAlt = bases[baseOffset] != ref[refOffset]
+                                    || (atStart && (afterDeletion || afterInsertionOrSoftClip))
+                                    || (atEnd && (beforeDeletion || beforeInsertion || beforeSoftClip));
+                            columns.add(offset, isAlt, likelihoods, refVsAnyLikelihoodsOffset(likelihoodCount, isAlt, qual));
+                        }
+
+                        // bases right before an indel don't count as evidence
+                        if ( atEnd && (beforeDeletion || beforeInsertion) )
+                            continue;
+                        // the count is capped, so once over the cap there's no need to look at more reads
+                        if ( columns.nIndelInformativeReads[offset] <= MAX_N_INDEL_INFORMATIVE_READS
+                                && indelInformativeness.isInformative(baseOffset, refOffset) )
+                            columns.nIndelInformativeReads[offset]++;
+                    }
+                    readOffset += length;
+                    genomePosition += length;
+                    break;
+                }
+                case N:
+                    // N's are never added to any pileup
+                    genomePosition += length;
+                    break;
+                default:
+                    if ( op.consumesReadBases() )
+                        readOffset += length;
+            }
+        }
+    }
+
+    private static boolean isInsertionOrSoftClip(final CigarOperator op) {
+        return op == CigarOperator.I || op == CigarOperator.S;
+    }
+
+    private static boolean isOnGenome(final CigarOperator op) {
+        return op == CigarOperator.M || op == CigarOperator.EQ || op == CigarOperator.X || op == CigarOperator.D;
+    }
+
+    private static CigarOperator previousOnGenomeOperator(final Cigar cigar, final int elementIndex) {
+        for ( int i = elementIndex - 1; i >= 0; i-- ) {
+            final CigarOperator op = cigar.getCigarElement(i).getOperator();
+            if ( isOnGenome(op) )
+                return op;
+        }
+        return null;
+    }
+
+    private static CigarOperator nextOnGenomeOperator(final Cigar cigar, final int elementIndex) {
+        for ( int i = elementIndex + 1; i < cigar.numCigarElements(); i++ ) {
+            final CigarOperator op = cigar.getCigarElement(i).getOperator();
+            if ( isOnGenome(op) )
+                return op;
+        }
+        return null;
+    }
+
+    /**
+     * Answers {@link #isReadInformativeAboutIndelsOfSize} for every base of a read with suffix sums of mismatching
+     * qualities along the diagonals of the read vs. reference alignment matrix.
+     *
+     * <p>
+     *     The sum of mismatching qualities of the read from readStart aligned without gaps at refStart only depends on
+     *     the diagonal {@code refStart - readStart} and on readStart, so each diagonal is summed once per read, lazily,
+     *     instead of once per base and candidate indel size.
+     * </p>
+     */
+    private static final class IndelInformativeness {
+        private final byte[] ref;
+        private final int maxIndelSize;
+
+        private byte[] bases;
+        private byte[] quals;
+
+        /**
+         * Suffix sums per diagonal, indexed by diagonal + readLength, each of readLength + 1 values; null if not yet computed
+         */
+        private int[][] suffixSums = new int[0][];
+        private int diagonalShift;
+
+        private IndelInformativeness(final byte[] ref, final int maxIndelSize) {
+            this.ref = ref;
+            this.maxIndelSize = maxIndelSize;
+        }
+
+        private void setRead(final byte[] bases, final byte[] quals) {
+            this.bases = bases;
+            this.quals = quals;
+            // any diagonal visited by the read has -readLength <= diagonal <= ref.length
+            diagonalShift = bases.length;
+            final int nDiagonals = bases.length + ref.length + 1;
+            if ( suffixSums.length < nDiagonals )
+                suffixSums = new int[nDiagonals][];
+            else
+                Arrays.fill(suffixSums, 0, nDiagonals, null);
+        }
+
+        /**
+         * @see ReferenceConfidenceModel#isReadInformativeAboutIndelsOfSize
+         */
+        private boolean isInformative(final int readStart, final int refStart) {
+            // fast exit when n bases left < maxIndelSize
+            if( bases.length - readStart < maxIndelSize || ref.length - refStart < maxIndelSize ) {
+                return false;
             }
+
+            final int baselineMMSum = sumMismatchingQualities(readStart, refStart);
+
+            // an indel that deletes either the ref bases (deletion) or read bases (insertion) must not fit as well as
+            // the baseline sum of mismatching quality scores
+            for ( int indelSize = 1; indelSize <= maxIndelSize; indelSize++ ) {
+                if ( sumMismatchingQualities(readStart + indelSize, refStart) <= baselineMMSum )
+                    return false;
+                if ( sumMismatchingQualities(readStart, refStart + indelSize) <= baselineMMSum )
+                    return false;
+            }
+            return true;
         }
 
-        return pileups;
+        private int sumMismatchingQualities(final int readStart, final int refStart) {
+            final int diagonal = refStart - readStart;
+            int[] sums = suffixSums[diagonal + diagonalShift];
+            if ( sums == null ) {
+                sums = new int[bases.length + 1];
+                final int first = Math.max(0, -diagonal);
+                for ( int i = Math.min(bases.length, ref.length - diagonal) - 1; i >= first; i-- )
+                    sums[i] = sums[i + 1] + (bases[i] != ref[i + diagonal] ? quals[i] : 0);
+                suffixSums[diagonal + diagonalShift] = sums;
+            }
+            return sums[readStart];
+        }
     }
 
     /**
@@ -56,6 +56,7 @@ import org.broadinstitute.gatk.tools.walkers.haplotypecaller.AssemblyResult;
 import org.broadinstitute.gatk.tools.walkers.haplotypecaller.LocalAssemblyEngine;
 import org.broadinstitute.gatk.tools.walkers.haplotypecaller.graphs.*;
 import org.broadinstitute.gatk.utils.MathUtils;
+import org.broadinstitute.gatk.utils.activeregion.ActiveRegionTrace;
 import org.broadinstitute.gatk.utils.haplotype.Haplotype;
 import org.broadinstitute.gatk.utils.sam.GATKSAMRecord;
 
@@ -150,6 +151,7 @@ public class ReadThreadingAssembler extends LocalAssemblyEngine {
                                          final List<Haplotype> activeAlleleHaplotypes,
                                          final boolean allowLowComplexityGraphs,
                                          final boolean allowNonUniqueKmersInRef) {
+        ActiveRegionTrace.addKmerSize(kmerSize);
         if ( refHaplotype.length() < kmerSize ) {
             // happens in cases where the assembled region is just too small
             return new AssemblyResult(AssemblyResult.Status.FAILED, null);
@@ -108,7 +108,8 @@ import java.util.regex.Pattern;
  * <h3>Input</h3>
  * <ul>
  * <li>The raw input variants to be filtered.</li>
- * <li>The recalibration table file that was generated by the VariantRecalibrator tool.</li>
+ * <li>The recalibration table file that was generated by the VariantRecalibrator tool, either as the recal file
+ * (-recalFile) or as the faster binary recal table (-recalTable).</li>
  * <li>The tranches file that was generated by the VariantRecalibrator tool.</li>
  * </ul>
  *
@@ -179,8 +180,14 @@ public class ApplyRecalibration extends RodWalker<Integer, Integer> implements T
      */
     @Input(fullName="input", shortName = "input", doc="The raw input variants to be recalibrated", required=true)
     public List<RodBinding<VariantContext>> input;
-    @Input(fullName="recal_file", shortName="recalFile", doc="The input recal file used by ApplyRecalibration", required=true)
+    @Input(fullName="recal_file", shortName="recalFile", doc="The input recal file used by ApplyRecalibration", required=false)
     protected RodBinding<VariantContext> recal;
+    /**
+     * The binary recalibration table written by VariantRecalibrator with -recalTable. It is looked up directly instead of
+     * being read in step with the input as a ROD, which makes applying the recalibration much faster.
+     */
+    @Input(fullName="recal_table", shortName="recalTable", doc="The input binary recal table used by ApplyRecalibration, instead of the recal file", required=false)
+    protected File RECAL_TABLE_FILE = null;
     @Input(fullName="tranches_file", shortName="tranchesFile", doc="The input tranches file describing where to cut the data", required=false)
     protected File TRANCHES_FILE;
 
@@ -223,6 +230,7 @@ public class ApplyRecalibration extends RodWalker<Integer, Integer> implements T
     // Private Member Variables
     /////////////////////////////
     final private List<Tranche> tranches = new ArrayList<>();
+    private VQSLODTable recalTable = null;
     final private Set<String> inputNames = new HashSet<>();
     final private Set<String> ignoreInputFilterSet = new TreeSet<>();
     final static private String listPrintSeparator = ",";
@@ -239,6 +247,19 @@ public class ApplyRecalibration extends RodWalker<Integer, Integer> implements T
     //---------------------------------------------------------------------------------------------------------------
 
     public void initialize() {
+        if( RECAL_TABLE_FILE != null ) {
+            if( recal.isBound() ) {
+                throw new UserException("Arguments --recal_file and --recal_table are mutually exclusive. Please only specify one option.");
+            }
+            recalTable = new VQSLODTable(RECAL_TABLE_FILE);
+            // the allele-specific and site-level tables are keyed differently, so no lookup would ever match
+            if( recalTable.isAlleleSpecific() != useASannotations ) {
+                throw new UserException.BadArgumentValue("recal_table", "The recalibration table " + RECAL_TABLE_FILE + " was written by VariantRecalibrator " + (recalTable.isAlleleSpecific() ? "with" : "without") + " -AS, so ApplyRecalibration must also be run " + (recalTable.isAlleleSpecific() ? "with" : "without") + " -AS");
+            }
+        } else if( !recal.isBound() ) {
+            throw new UserException.CommandLineException("Either --recal_file or --recal_table must be specified.");
+        }
+
         if( TS_FILTER_LEVEL != null ) {
             for ( final Tranche t : Tranche.readTranches(TRANCHES_FILE) ) {
                 if ( t.ts >= TS_FILTER_LEVEL ) {
@@ -372,7 +393,7 @@ public class ApplyRecalibration extends RodWalker<Integer, Integer> implements T
         }
 
         final List<VariantContext> VCs =  tracker.getValues(input, context.getLocation());
-        final List<VariantContext> recals =  tracker.getValues(recal, context.getLocation());
+        final List<VariantContext> recals = ( recalTable == null ? tracker.getValues(recal, context.getLocation()) : Collections.<VariantContext>emptyList() );
 
         for( final VariantContext vc : VCs ) {
 
@@ -514,6 +535,41 @@ public class ApplyRecalibration extends RodWalker<Integer, Integer> implements T
         return filterString;
     }
 
+    /**
+     * Find the recalibration of a variant, or of one of its alternate alleles in allele-specific mode
+     * @param target the input variant
+     * @param recalVCs the records of the recal file at this locus, if the recal file is being used
+     * @param allele the alternate allele, or null for site-level recalibration
+     * @return the recalibration, or null if there is none
+     */
+    private VQSLODTable.Entry getMatchingRecalibration(final VariantContext target, final List<VariantContext> recalVCs, final Allele allele) {
+        if (recalTable != null) {
+            return recalTable.find(target.getContig(), target.getStart(), target.getEnd(), allele);
+        }
+
+        final VariantContext recalDatum = getMatchingRecalVC(target, recalVCs, allele);
+        if (recalDatum == null) {
+            return null;
+        }
+
+        final double lod;
+        if (allele != null) {
+            lod = recalDatum.getAttributeAsDouble(GATKVCFConstants.VQS_LOD_KEY, VariantRecalibratorEngine.MIN_ACCEPTABLE_LOD_SCORE);
+        } else {
+            final String lodString = recalDatum.getAttributeAsString(GATKVCFConstants.VQS_LOD_KEY, null);
+            if( lodString == null ) {
+                throw new UserException("Encountered a malformed record in the input recal file. There is no lod for the record at: " + target );
+            }
+            try {
+                lod = Double.valueOf(lodString);
+            } catch (NumberFormatException e) {
+                throw new UserException("Encountered a malformed record in the input recal file. The lod is unreadable for the record at: " + target );
+            }
+        }
+        return new VQSLODTable.Entry(lod, recalDatum.getAttributeAsString(GATKVCFConstants.CULPRIT_KEY, null),
+                recalDatum.hasAttribute(GATKVCFConstants.POSITIVE_LABEL_KEY), recalDatum.hasAttribute(GATKVCFConstants.NEGATIVE_LABEL_KEY));
+    }
+
     private VariantContext getMatchingRecalVC(final VariantContext target, final List<VariantContext> recalVCs, final Allele allele) {
         for( final VariantContext recalVC : recalVCs ) {
             if ( target.getEnd() == recalVC.getEnd() ) {
@@ -597,26 +653,24 @@ public class ApplyRecalibration extends RodWalker<Integer, Integer> implements T
 
             //if it's not a spanning deletion, replace those allele strings with the real values
             if (!allele.equals(Allele.SPAN_DEL)) {
-                VariantContext recalDatum = getMatchingRecalVC(vc, recals, allele);
+                final VQSLODTable.Entry recalDatum = getMatchingRecalibration(vc, recals, allele);
                 if (recalDatum == null) {
                     throw new UserException("Encountered input allele which isn't found in the input recal file. Please make sure VariantRecalibrator and ApplyRecalibration were run on the same set of input variants with flag -AS. First seen at: " + vc);
                 }
 
                 //compare VQSLODs for all alleles in the current mode for filtering later
-                final double lod = recalDatum.getAttributeAsDouble(GATKVCFConstants.VQS_LOD_KEY, VariantRecalibratorEngine.MIN_ACCEPTABLE_LOD_SCORE);
+                final double lod = recalDatum.lod;
                 if (lod > bestLod)
                     bestLod = lod;
 
                 alleleLodString = String.format("%.4f", lod);
                 alleleFilterString = generateFilterString(lod);
-                alleleCulpritString = recalDatum.getAttributeAsString(GATKVCFConstants.CULPRIT_KEY, ".");
+                alleleCulpritString = (recalDatum.culprit != null ? recalDatum.culprit : ".");
 
-                if(recalDatum != null) {
-                    if (recalDatum.hasAttribute(GATKVCFConstants.POSITIVE_LABEL_KEY))
-                        builder.attribute(GATKVCFConstants.POSITIVE_LABEL_KEY, true);
-                    if (recalDatum.hasAttribute(GATKVCFConstants.NEGATIVE_LABEL_KEY))
-                        builder.attribute(GATKVCFConstants.NEGATIVE_LABEL_KEY, true);
-                }
+                if (recalDatum.atPositiveTrainingSite)
+                    builder.attribute(GATKVCFConstants.POSITIVE_LABEL_KEY, true);
+                if (recalDatum.atNegativeTrainingSite)
+                    builder.attribute(GATKVCFConstants.NEGATIVE_LABEL_KEY, true);
             }
 
             //append per-allele VQSR annotations
@@ -644,32 +698,19 @@ public class ApplyRecalibration extends RodWalker<Integer, Integer> implements T
      * @return a String with the filter status for this site
      */
     private String doSiteSpecificFiltering(final VariantContext vc, final List<VariantContext> recals, final VariantContextBuilder builder) {
-        VariantContext recalDatum = getMatchingRecalVC(vc, recals, null);
+        final VQSLODTable.Entry recalDatum = getMatchingRecalibration(vc, recals, null);
         if( recalDatum == null ) {
             throw new UserException("Encountered input variant which isn't found in the input recal file. Please make sure VariantRecalibrator and ApplyRecalibration were run on the same set of input variants. First seen at: " + vc );
         }
 
-        final String lodString = recalDatum.getAttributeAsString(GATKVCFConstants.VQS_LOD_KEY, null);
-        if( lodString == null ) {
-            throw new UserException("Encountered a malformed record in the input recal file. There is no lod for the record at: " + vc );
-        }
-        final double lod;
-        try {
-            lod = Double.valueOf(lodString);
-        } catch (NumberFormatException e) {
-            throw new UserException("Encountered a malformed record in the input recal file. The lod is unreadable for the record at: " + vc );
-        }
-
-        builder.attribute(GATKVCFConstants.VQS_LOD_KEY, lod);
-        builder.attribute(GATKVCFConstants.CULPRIT_KEY, recalDatum.getAttribute(GATKVCFConstants.CULPRIT_KEY));
-        if(recalDatum != null) {
-            if (recalDatum.hasAttribute(GATKVCFConstants.POSITIVE_LABEL_KEY))
-                builder.attribute(GATKVCFConstants.POSITIVE_LABEL_KEY, true);
-            if (recalDatum.hasAttribute(GATKVCFConstants.NEGATIVE_LABEL_KEY))
-                builder.attribute(GATKVCFConstants.NEGATIVE_LABEL_KEY, true);
-        }
+        builder.attribute(GATKVCFConstants.VQS_LOD_KEY, recalDatum.lod);
+        builder.attribute(GATKVCFConstants.CULPRIT_KEY, recalDatum.culprit);
+        if (recalDatum.atPositiveTrainingSite)
+            builder.attribute(GATKVCFConstants.POSITIVE_LABEL_KEY, true);
+        if (recalDatum.atNegativeTrainingSite)
+            builder.attribute(GATKVCFConstants.NEGATIVE_LABEL_KEY, true);
 
-        return generateFilterString(lod);
+        return generateFilterString(recalDatum.lod);
     }
 
     //---------------------------------------------------------------------------------------------------------------
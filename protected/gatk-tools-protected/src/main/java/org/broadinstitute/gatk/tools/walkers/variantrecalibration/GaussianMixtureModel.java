@@ -71,6 +71,11 @@ public class GaussianMixtureModel {
 
     protected final static Logger logger = Logger.getLogger(GaussianMixtureModel.class);
 
+    /**
+     * Number of variants handed to a thread at a time when a step is run over the data in parallel
+     */
+    public final static int DATA_BLOCK_SIZE = 4096;
+
     private final List<MultivariateGaussian> gaussians;
     private final double shrinkage;
     private final double dirichletParameter;
@@ -79,6 +84,7 @@ public class GaussianMixtureModel {
     private final Matrix empiricalSigma;
     public boolean isModelReadyForEvaluation;
     public boolean failedToConverge = false;
+    private double[][] pVarInGaussian; // probability of each training variant being in each Gaussian, indexed by Gaussian then variant
 
     public GaussianMixtureModel( final int numGaussians, final int numAnnotations,
                                  final double shrinkage, final double dirichletParameter, final double priorCounts ) {
@@ -113,7 +119,7 @@ public class GaussianMixtureModel {
 
     }
 
-    public void initializeRandomModel( final List<VariantDatum> data, final int numKMeansIterations ) {
+    public void initializeRandomModel( final AnnotationMatrix data, final int numKMeansIterations, final ParallelBlockRunner runner ) {
 
         // initialize random Gaussian means // BUGBUG: this is broken up this way to match the order of calls to rand.nextDouble() in the old code
         for( final MultivariateGaussian gaussian : gaussians ) {
@@ -122,7 +128,7 @@ public class GaussianMixtureModel {
 
         // initialize means using K-means algorithm
         logger.info( "Initializing model with " + numKMeansIterations + " k-means iterations..." );
-        initializeMeansUsingKMeans( data, numKMeansIterations );
+        initializeMeansUsingKMeans( data, numKMeansIterations, runner );
 
         // initialize uniform mixture coefficients, random covariance matrices, and initial hyperparameters
         for( final MultivariateGaussian gaussian : gaussians ) {
@@ -135,72 +141,106 @@ public class GaussianMixtureModel {
         }
     }
 
-    private void initializeMeansUsingKMeans( final List<VariantDatum> data, final int numIterations ) {
+    private void initializeMeansUsingKMeans( final AnnotationMatrix data, final int numIterations, final ParallelBlockRunner runner ) {
 
+        final int numData = data.getNumData();
+        final int[] assignments = new int[numData];
+        final int[] numAssigned = new int[gaussians.size()];
         int ttt = 0;
         while( ttt++ < numIterations ) {
             // E step: assign each variant to the nearest cluster
-            for( final VariantDatum datum : data ) {
-                double minDistance = Double.MAX_VALUE;
-                MultivariateGaussian minGaussian = null;
-                datum.assignment = minGaussian;
-                for( final MultivariateGaussian gaussian : gaussians ) {
-                    final double dist = gaussian.calculateDistanceFromMeanSquared( datum );
-                    if( dist < minDistance ) {
-                        minDistance = dist;
-                        minGaussian = gaussian;
+            runner.run( numData, DATA_BLOCK_SIZE, (start, end) -> {
+                final double[] annotations = new double[data.getNumAnnotations()];
+                for( int nnn = start; nnn < end; nnn++ ) {
+                    data.getRow( nnn, annotations );
+                    double minDistance = Double.MAX_VALUE;
+                    int minGaussian = -1;
+                    for( int kkk = 0; kkk < gaussians.size(); kkk++ ) {
+                        final double dist = gaussians.get(kkk).calculateDistanceFromMeanSquared( annotations );
+                        if( dist < minDistance ) {
+                            minDistance = dist;
+                            minGaussian = kkk;
+                        }
                     }
+                    assignments[nnn] = minGaussian;
                 }
-                datum.assignment = minGaussian;
-            }
+            });
 
             // M step: update gaussian means based on assigned variants
-            for( final MultivariateGaussian gaussian : gaussians ) {
-                gaussian.zeroOutMu();
-                int numAssigned = 0;
-
-                for( final VariantDatum datum : data ) {
-                    if( datum.assignment.equals(gaussian) ) {
-                        numAssigned++;
-                        gaussian.incrementMu( datum );
-                    }
+            runner.run( gaussians.size(), 1, (start, end) -> {
+                for( int kkk = start; kkk < end; kkk++ ) {
+                    numAssigned[kkk] = gaussians.get(kkk).computeAssignedMean( data, assignments, kkk );
                 }
-                if( numAssigned != 0 ) {
-                    gaussian.divideEqualsMu( ((double) numAssigned) );
-                } else {
-                    gaussian.initializeRandomMu( Utils.getRandomGenerator() );
+            });
+            // empty clusters are re-seeded in order so that the random number sequence doesn't depend on threading
+            for( int kkk = 0; kkk < gaussians.size(); kkk++ ) {
+                if( numAssigned[kkk] == 0 ) {
+                    gaussians.get(kkk).initializeRandomMu( Utils.getRandomGenerator() );
                 }
             }
         }
     }
 
-    public void expectationStep( final List<VariantDatum> data ) {
+    public void expectationStep( final AnnotationMatrix data, final ParallelBlockRunner runner ) {
 
         for( final MultivariateGaussian gaussian : gaussians ) {
             gaussian.precomputeDenominatorForVariationalBayes( getSumHyperParameterLambda() );
         }
 
-        for( final VariantDatum datum : data ) {
+        final int numData = data.getNumData();
+        if( pVarInGaussian == null || pVarInGaussian[0].length != numData ) {
+            pVarInGaussian = new double[gaussians.size()][numData];
+        }
+
+        // each variant is evaluated independently, so blocks of variants can be processed in any order
+        runner.run( numData, DATA_BLOCK_SIZE, (start, end) -> {
+            final double[] annotations = new double[data.getNumAnnotations()];
+            final double[] scratch = new double[data.getNumAnnotations()];
             final double[] pVarInGaussianLog10 = new double[gaussians.size()];
-            int gaussianIndex = 0;
-            for( final MultivariateGaussian gaussian : gaussians ) {
-                final double pVarLog10 = gaussian.evaluateDatumLog10( datum );
-                pVarInGaussianLog10[gaussianIndex++] = pVarLog10;
-            }
-            final double[] pVarInGaussianNormalized = MathUtils.normalizeFromLog10( pVarInGaussianLog10, false );
-            gaussianIndex = 0;
-            for( final MultivariateGaussian gaussian : gaussians ) {
-                gaussian.assignPVarInGaussian( pVarInGaussianNormalized[gaussianIndex++] );
+            for( int nnn = start; nnn < end; nnn++ ) {
+                data.getRow( nnn, annotations );
+                for( int kkk = 0; kkk < gaussians.size(); kkk++ ) {
+                    pVarInGaussianLog10[kkk] = gaussians.get(kkk).evaluateDatumLog10( annotations, scratch );
+                }
+                final double[] pVarInGaussianNormalized = MathUtils.normalizeFromLog10( pVarInGaussianLog10, false );
+                for( int kkk = 0; kkk < gaussians.size(); kkk++ ) {
+                    pVarInGaussian[kkk][nnn] = pVarInGaussianNormalized[kkk];
+                }
             }
-        }
+        });
     }
 
-    public void maximizationStep( final List<VariantDatum> data ) {
+    public void maximizationStep( final AnnotationMatrix data, final ParallelBlockRunner runner ) {
+        computeWeightedMoments( data, 1E-10, runner );
         for( final MultivariateGaussian gaussian : gaussians ) {
-            gaussian.maximizeGaussian( data, empiricalMu, empiricalSigma, shrinkage, dirichletParameter, priorCounts);
+            gaussian.maximizeGaussian( empiricalMu, empiricalSigma, shrinkage, dirichletParameter, priorCounts );
         }
     }
 
+    /**
+     * Compute the weighted mean and scatter matrix of every Gaussian from the probabilities of the last expectation step
+     *
+     * Each sum runs over all the data in a single thread, so the results are the same whatever the number of threads;
+     * the parallelism comes from the Gaussians and the rows of their scatter matrices being independent of each other.
+     */
+    private void computeWeightedMoments( final AnnotationMatrix data, final double initialSumProb, final ParallelBlockRunner runner ) {
+        if( pVarInGaussian == null ) { throw new IllegalStateException("The expectation step must be run before the model can be updated"); }
+
+        runner.run( gaussians.size(), 1, (start, end) -> {
+            for( int kkk = start; kkk < end; kkk++ ) {
+                gaussians.get(kkk).computeWeightedMean( data, pVarInGaussian[kkk], initialSumProb );
+            }
+        });
+
+        final int numAnnotations = data.getNumAnnotations();
+        runner.run( gaussians.size() * numAnnotations, 1, (start, end) -> {
+            for( int iii = start; iii < end; iii++ ) {
+                final int kkk = iii / numAnnotations;
+                gaussians.get(kkk).computeWeightedScatterRow( data, pVarInGaussian[kkk], iii % numAnnotations );
+            }
+        });
+    }
+
     private double getSumHyperParameterLambda() {
         double sum = 0.0;
         for( final MultivariateGaussian gaussian : gaussians ) {
@@ -209,10 +249,12 @@ public class GaussianMixtureModel {
         return sum;
     }
 
-    public void evaluateFinalModelParameters( final List<VariantDatum> data ) {
+    public void evaluateFinalModelParameters( final AnnotationMatrix data, final ParallelBlockRunner runner ) {
+        computeWeightedMoments( data, 0.0, runner );
         for( final MultivariateGaussian gaussian : gaussians ) {
-            gaussian.evaluateFinalModelParameters(data);
+            gaussian.evaluateFinalModelParameters();
         }
+        pVarInGaussian = null; // clean up some memory
         normalizePMixtureLog10();
     }
 
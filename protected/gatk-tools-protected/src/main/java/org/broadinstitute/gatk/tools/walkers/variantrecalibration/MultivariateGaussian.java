@@ -54,11 +54,8 @@ package org.broadinstitute.gatk.tools.walkers.variantrecalibration;
 import Jama.Matrix;
 import org.apache.commons.math.special.Gamma;
 import org.broadinstitute.gatk.utils.MathUtils;
-import org.broadinstitute.gatk.utils.collections.ExpandingArrayList;
 import org.broadinstitute.gatk.utils.exceptions.UserException;
 
-import java.util.Arrays;
-import java.util.List;
 import java.util.Random;
 
 /**
@@ -77,25 +74,11 @@ public class MultivariateGaussian {
     public double hyperParameter_lambda;
     private double cachedDenomLog10;
     private Matrix cachedSigmaInverse;
-    final private ExpandingArrayList<Double> pVarInGaussian;
+    private double[] cachedSigmaInverseByColumn; // column-major copy of cachedSigmaInverse for evaluateDatumLog10
 
     public MultivariateGaussian( final int numAnnotations ) {
         mu = new double[numAnnotations];
         sigma = new Matrix(numAnnotations, numAnnotations);
-        pVarInGaussian = new ExpandingArrayList<>();
-    }
-
-    public void zeroOutMu() {
-        Arrays.fill( mu, 0.0 );
-    }
-
-    public void zeroOutSigma() {
-        final double[][] zeroSigma = new double[mu.length][mu.length];
-        for( final double[] row : zeroSigma ) {
-            Arrays.fill(row, 0);
-        }
-        final Matrix tmp = new Matrix(zeroSigma);
-        sigma.setMatrix(0, mu.length - 1, 0, mu.length - 1, tmp);
     }
 
     public void initializeRandomMu( final Random rand ) {
@@ -120,24 +103,8 @@ public class MultivariateGaussian {
         sigma.setMatrix(0, mu.length - 1, 0, mu.length - 1, tmp);
     }
 
-    public double calculateDistanceFromMeanSquared( final VariantDatum datum ) {
-        return MathUtils.distanceSquared( datum.annotations, mu );
-    }
-
-    public void incrementMu( final VariantDatum datum ) {
-        incrementMu( datum, 1.0 );
-    }
-    
-    public void incrementMu( final VariantDatum datum, final double prob ) {
-        for( int jjj = 0; jjj < mu.length; jjj++ ) {
-            mu[jjj] += prob * datum.annotations[jjj];
-        }
-    }
-
-    public void divideEqualsMu( final double x ) {
-        for( int jjj = 0; jjj < mu.length; jjj++ ) {
-            mu[jjj] /= x;
-        }
+    public double calculateDistanceFromMeanSquared( final double[] annotations ) {
+        return MathUtils.distanceSquared( annotations, mu );
     }
 
     private void precomputeInverse() {
@@ -148,9 +115,20 @@ public class MultivariateGaussian {
         }
     }
 
+    private void cacheSigmaInverseByColumn() {
+        final int numAnnotations = mu.length;
+        final double[] byColumn = new double[numAnnotations * numAnnotations];
+        for( int iii = 0; iii < numAnnotations; iii++ ) {
+            for( int jjj = 0; jjj < numAnnotations; jjj++ ) {
+                byColumn[iii * numAnnotations + jjj] = cachedSigmaInverse.get(jjj, iii);
+            }
+        }
+        cachedSigmaInverseByColumn = byColumn;
+    }
 
     public void precomputeDenominatorForEvaluation() {
         precomputeInverse();
+        cacheSigmaInverseByColumn();
         cachedDenomLog10 = Math.log10(Math.pow(2.0 * Math.PI, -1.0 * ((double) mu.length) / 2.0)) + Math.log10(Math.pow(sigma.det(), -0.5)) ;
     }
 
@@ -159,6 +137,7 @@ public class MultivariateGaussian {
         // Variational Bayes calculations from Bishop
         precomputeInverse();
         cachedSigmaInverse.timesEquals( hyperParameter_a );
+        cacheSigmaInverseByColumn();
         double sum = 0.0;
         for(int jjj = 1; jjj <= mu.length; jjj++) {
             sum += Gamma.digamma( (hyperParameter_a + 1.0 - jjj) / 2.0 );
@@ -172,44 +151,127 @@ public class MultivariateGaussian {
     }
 
     public double evaluateDatumLog10( final VariantDatum datum ) {
+        return evaluateDatumLog10( datum.annotations, new double[mu.length] );
+    }
+
+    /**
+     * Evaluate the log10 density of this Gaussian at a point
+     *
+     * Only reads the state set up by the precompute methods, so once those have been called this can be used
+     * from several threads at the same time.
+     *
+     * @param annotations the point to evaluate
+     * @param scratch a buffer of length at least mu.length, owned by the calling thread
+     * @return the log10 probability density
+     */
+    public double evaluateDatumLog10( final double[] annotations, final double[] scratch ) {
+        final int numAnnotations = mu.length;
+        for( int jjj = 0; jjj < numAnnotations; jjj++ ) {
+            scratch[jjj] = annotations[jjj] - mu[jjj];
+        }
         double sumKernel = 0.0;
-        final double[] crossProdTmp = new double[mu.length];
-        Arrays.fill(crossProdTmp, 0.0);
-        for( int iii = 0; iii < mu.length; iii++ ) {
-            for( int jjj = 0; jjj < mu.length; jjj++ ) {
-                crossProdTmp[iii] += (datum.annotations[jjj] - mu[jjj]) * cachedSigmaInverse.get(jjj, iii);
+        for( int iii = 0; iii < numAnnotations; iii++ ) {
+            final int columnOffset = iii * numAnnotations;
+            double crossProd = 0.0;
+            for( int jjj = 0; jjj < numAnnotations; jjj++ ) {
+                crossProd += scratch[jjj] * cachedSigmaInverseByColumn[columnOffset + jjj];
             }
+            sumKernel += crossProd * scratch[iii];
         }
-        for( int iii = 0; iii < mu.length; iii++ ) {
-            sumKernel += crossProdTmp[iii] * (datum.annotations[iii] - mu[iii]);
-        }
-        
+
         return (( -0.5 * sumKernel ) / Math.log(10.0)) + cachedDenomLog10; // This is the definition of a Gaussian PDF Log10
     }
 
-    public void assignPVarInGaussian( final double pVar ) {
-        pVarInGaussian.add( pVar );
+    /**
+     * Set mu to the mean of the data points assigned to this Gaussian, leaving it untouched if there are none
+     *
+     * @param data the data
+     * @param assignments the index of the Gaussian each data point is assigned to
+     * @param gaussianIndex the index of this Gaussian
+     * @return the number of data points assigned to this Gaussian
+     */
+    public int computeAssignedMean( final AnnotationMatrix data, final int[] assignments, final int gaussianIndex ) {
+        final int numData = data.getNumData();
+        final double[] sums = new double[mu.length];
+        int numAssigned = 0;
+        for( int nnn = 0; nnn < numData; nnn++ ) {
+            if( assignments[nnn] == gaussianIndex ) {
+                numAssigned++;
+                for( int jjj = 0; jjj < mu.length; jjj++ ) {
+                    sums[jjj] += data.getColumn(jjj)[nnn];
+                }
+            }
+        }
+        if( numAssigned != 0 ) {
+            for( int jjj = 0; jjj < mu.length; jjj++ ) {
+                mu[jjj] = sums[jjj] / ((double) numAssigned);
+            }
+        }
+        return numAssigned;
+    }
+
+    /**
+     * Set sumProb to initialSumProb plus the total probability of the data under this Gaussian, and mu to the mean
+     * of the data weighted by those probabilities
+     *
+     * @param data the data
+     * @param pVarInGaussian the probability of each data point being in this Gaussian
+     * @param initialSumProb the starting value of sumProb
+     */
+    public void computeWeightedMean( final AnnotationMatrix data, final double[] pVarInGaussian, final double initialSumProb ) {
+        final int numData = data.getNumData();
+        double sum = initialSumProb;
+        for( int nnn = 0; nnn < numData; nnn++ ) {
+            sum += pVarInGaussian[nnn];
+        }
+        sumProb = sum;
+
+        for( int jjj = 0; jjj < mu.length; jjj++ ) {
+            final double[] column = data.getColumn(jjj);
+            double weightedSum = 0.0;
+            for( int nnn = 0; nnn < numData; nnn++ ) {
+                weightedSum += pVarInGaussian[nnn] * column[nnn];
+            }
+            mu[jjj] = weightedSum / sumProb;
+        }
     }
 
-    public void resetPVarInGaussian() {
-        pVarInGaussian.clear();
+    /**
+     * Set row iii of sigma to the scatter of the data around mu, weighted by the probability of each data point
+     * being in this Gaussian
+     *
+     * Every row is independent of the others, so different rows can be computed by different threads.
+     *
+     * @param data the data
+     * @param pVarInGaussian the probability of each data point being in this Gaussian
+     * @param iii the row of sigma to compute
+     */
+    public void computeWeightedScatterRow( final AnnotationMatrix data, final double[] pVarInGaussian, final int iii ) {
+        final int numData = data.getNumData();
+        final double[][] columns = new double[mu.length][];
+        for( int jjj = 0; jjj < mu.length; jjj++ ) {
+            columns[jjj] = data.getColumn(jjj);
+        }
+
+        final double[] row = new double[mu.length];
+        for( int nnn = 0; nnn < numData; nnn++ ) {
+            final double weightedDeviation = pVarInGaussian[nnn] * (columns[iii][nnn] - mu[iii]);
+            for( int jjj = 0; jjj < mu.length; jjj++ ) {
+                row[jjj] += weightedDeviation * (columns[jjj][nnn] - mu[jjj]);
+            }
+        }
+        for( int jjj = 0; jjj < mu.length; jjj++ ) {
+            sigma.set(iii, jjj, row[jjj]);
+        }
     }
 
-    public void maximizeGaussian( final List<VariantDatum> data, final double[] empiricalMu, final Matrix empiricalSigma,
+    /**
+     * Finish the maximization step once computeWeightedMean and computeWeightedScatterRow have been run on the
+     * current probabilities, applying the priors to mu and sigma and updating the hyperparameters
+     */
+    public void maximizeGaussian( final double[] empiricalMu, final Matrix empiricalSigma,
                                   final double SHRINKAGE, final double DIRICHLET_PARAMETER, final double DEGREES_OF_FREEDOM ) {
-        sumProb = 1E-10;
         final Matrix wishart = new Matrix(mu.length, mu.length);
-        zeroOutMu();
-        zeroOutSigma();
-        
-        int datumIndex = 0;
-        for( final VariantDatum datum : data ) {
-            final double prob = pVarInGaussian.get(datumIndex++);
-            sumProb += prob;
-            incrementMu( datum, prob );
-        }
-        divideEqualsMu( sumProb );
-
         final double shrinkageFactor = (SHRINKAGE * sumProb) / (SHRINKAGE + sumProb);
         for( int iii = 0; iii < mu.length; iii++ ) {
             for( int jjj = 0; jjj < mu.length; jjj++ ) {
@@ -217,18 +279,6 @@ public class MultivariateGaussian {
             }
         }
 
-        datumIndex = 0;
-        final Matrix pVarSigma = new Matrix(mu.length, mu.length);
-        for( final VariantDatum datum : data ) {
-            final double prob = pVarInGaussian.get(datumIndex++);
-            for( int iii = 0; iii < mu.length; iii++ ) {
-                for( int jjj = 0; jjj < mu.length; jjj++ ) {
-                    pVarSigma.set(iii, jjj, prob * (datum.annotations[iii]-mu[iii]) * (datum.annotations[jjj]-mu[jjj]));
-                }
-            }
-            sigma.plusEquals( pVarSigma );
-        }
-
         sigma.plusEquals( empiricalSigma );
         sigma.plusEquals( wishart );
 
@@ -239,36 +289,12 @@ public class MultivariateGaussian {
         hyperParameter_a = sumProb + DEGREES_OF_FREEDOM;
         hyperParameter_b = sumProb + SHRINKAGE;
         hyperParameter_lambda = sumProb + DIRICHLET_PARAMETER;
-
-        resetPVarInGaussian(); // clean up some memory
     }
 
-    public void evaluateFinalModelParameters( final List<VariantDatum> data ) {
-        sumProb = 0.0;
-        zeroOutMu();
-        zeroOutSigma();
-
-        int datumIndex = 0;
-        for( final VariantDatum datum : data ) {
-            final double prob = pVarInGaussian.get(datumIndex++);
-            sumProb += prob;
-            incrementMu( datum, prob );
-        }
-        divideEqualsMu( sumProb );
-
-        datumIndex = 0;
-        final Matrix pVarSigma = new Matrix(mu.length, mu.length);
-        for( final VariantDatum datum : data ) {
-            final double prob = pVarInGaussian.get(datumIndex++);
-            for( int iii = 0; iii < mu.length; iii++ ) {
-                for( int jjj = 0; jjj < mu.length; jjj++ ) {
-                    pVarSigma.set(iii, jjj, prob * (datum.annotations[iii]-mu[iii]) * (datum.annotations[jjj]-mu[jjj]));
-                }
-            }
-            sigma.plusEquals( pVarSigma );
-        }
+    /**
+     * Turn the weighted scatter left in sigma by computeWeightedScatterRow into the final covariance
+     */
+    public void evaluateFinalModelParameters() {
         sigma.timesEquals( 1.0 / sumProb );
-
-        resetPVarInGaussian(); // clean up some memory
     }
-}
\ No newline at end of file
+}
@@ -88,9 +88,9 @@ public class TrancheManager {
 
         public abstract double getThreshold(double tranche);
         public abstract double getTarget();
-        public abstract void calculateRunningMetric(List<VariantDatum> data);
+        public abstract void calculateRunningMetric(TrancheData data);
         public abstract double getRunningMetric(int i);
-        public abstract int datumValue(VariantDatum d);
+        public abstract int datumValue(TrancheData data, int i);
     }
 
     public static class NovelTiTvMetric extends SelectionMetric {
@@ -108,14 +108,13 @@ public class TrancheManager {
 
         public double getTarget() { return targetTiTv; }
 
-        public void calculateRunningMetric(List<VariantDatum> data) {
+        public void calculateRunningMetric(TrancheData data) {
             int ti = 0, tv = 0;
             runningTiTv = new double[data.size()];
 
             for ( int i = data.size() - 1; i >= 0; i-- ) {
-                VariantDatum datum = data.get(i);
-                if ( ! datum.isKnown ) {
-                    if ( datum.isTransition ) { ti++; } else { tv++; }
+                if ( ! data.isKnown(i) ) {
+                    if ( data.isTransition(i) ) { ti++; } else { tv++; }
                     runningTiTv[i] = ti / Math.max(1.0 * tv, 1.0);
                 }
             }
@@ -125,8 +124,8 @@ public class TrancheManager {
             return runningTiTv[i];
         }
 
-        public int datumValue(VariantDatum d) {
-            return d.isTransition ? 1 : 0;
+        public int datumValue(TrancheData data, int i) {
+            return data.isTransition(i) ? 1 : 0;
         }
     }
 
@@ -145,13 +144,12 @@ public class TrancheManager {
 
         public double getTarget() { return 1.0; }
 
-        public void calculateRunningMetric(List<VariantDatum> data) {
+        public void calculateRunningMetric(TrancheData data) {
             int nCalledAtTruth = 0;
             runningSensitivity = new double[data.size()];
 
             for ( int i = data.size() - 1; i >= 0; i-- ) {
-                VariantDatum datum = data.get(i);
-                nCalledAtTruth += datum.atTruthSite ? 1 : 0;
+                nCalledAtTruth += data.atTruthSite(i) ? 1 : 0;
                 runningSensitivity[i] = 1 - nCalledAtTruth / (1.0 * nTrueSites);
             }
         }
@@ -160,8 +158,8 @@ public class TrancheManager {
             return runningSensitivity[i];
         }
 
-        public int datumValue(VariantDatum d) {
-            return d.atTruthSite ? 1 : 0;
+        public int datumValue(TrancheData data, int i) {
+            return data.atTruthSite(i) ? 1 : 0;
         }
     }
 
@@ -170,9 +168,18 @@ public class TrancheManager {
     }
 
     public static List<Tranche> findTranches( final List<VariantDatum> data, final List<Double> trancheThresholds, final SelectionMetric metric, final VariantRecalibratorArgumentCollection.Mode model, final File debugFile ) {
+        Collections.sort( data, new VariantDatum.VariantDatumLODComparator() );
+        return findTranches( new TrancheData(data), trancheThresholds, metric, model, debugFile );
+    }
+
+    public static List<Tranche> findTranches( final TrancheData data, final List<Double> tranches, final SelectionMetric metric, final VariantRecalibratorArgumentCollection.Mode model ) {
+        return findTranches( data, tranches, metric, model, null );
+    }
+
+    public static List<Tranche> findTranches( final TrancheData data, final List<Double> trancheThresholds, final SelectionMetric metric, final VariantRecalibratorArgumentCollection.Mode model, final File debugFile ) {
         logger.info(String.format("Finding %d tranches for %d variants", trancheThresholds.size(), data.size()));
 
-        Collections.sort( data, new VariantDatum.VariantDatumLODComparator() );
+        data.sortByLod();
         metric.calculateRunningMetric(data);
 
         if ( debugFile != null) { writeTranchesDebuggingInfo(debugFile, data, metric); }
@@ -193,15 +200,14 @@ public class TrancheManager {
         return tranches;
     }
 
-    private static void writeTranchesDebuggingInfo(File f, List<VariantDatum> tranchesData, SelectionMetric metric ) {
+    private static void writeTranchesDebuggingInfo(File f, TrancheData tranchesData, SelectionMetric metric ) {
         try {
             PrintStream out = new PrintStream(f);
             out.println("Qual metricValue runningValue");
             for ( int i = 0; i < tranchesData.size(); i++ ) {
-                VariantDatum  d = tranchesData.get(i);
-                int score = metric.datumValue(d);
+                int score = metric.datumValue(tranchesData, i);
                 double runningValue = metric.getRunningMetric(i);
-                out.printf("%.4f %d %.4f%n", d.lod, score, runningValue);
+                out.printf("%.4f %d %.4f%n", tranchesData.getLod(i), score, runningValue);
             }
             out.close();
         } catch (FileNotFoundException e) {
@@ -209,7 +215,7 @@ public class TrancheManager {
         }
     }
 
-    public static Tranche findTranche( final List<VariantDatum> data, final SelectionMetric metric, final double trancheThreshold, final VariantRecalibratorArgumentCollection.Mode model ) {
+    public static Tranche findTranche( final TrancheData data, final SelectionMetric metric, final double trancheThreshold, final VariantRecalibratorArgumentCollection.Mode model ) {
         logger.info(String.format("  Tranche threshold %.2f => selection metric threshold %.3f", trancheThreshold, metric.getThreshold(trancheThreshold)));
 
         double metricThreshold = metric.getThreshold(trancheThreshold);
@@ -228,22 +234,21 @@ public class TrancheManager {
         return null;
     }
 
-    public static Tranche trancheOfVariants( final List<VariantDatum> data, int minI, double ts, final VariantRecalibratorArgumentCollection.Mode model ) {
+    public static Tranche trancheOfVariants( final TrancheData data, int minI, double ts, final VariantRecalibratorArgumentCollection.Mode model ) {
         int numKnown = 0, numNovel = 0, knownTi = 0, knownTv = 0, novelTi = 0, novelTv = 0;
 
-        double minLod = data.get(minI).lod;
-        for ( final VariantDatum datum : data ) {
-            if ( datum.lod >= minLod ) {
-                //if( ! datum.isKnown ) System.out.println(datum.pos);
-                if ( datum.isKnown ) {
+        double minLod = data.getLod(minI);
+        for ( int i = 0; i < data.size(); i++ ) {
+            if ( data.getLod(i) >= minLod ) {
+                if ( data.isKnown(i) ) {
                     numKnown++;
-                    if( datum.isSNP ) {
-                        if ( datum.isTransition ) { knownTi++; } else { knownTv++; }
+                    if( data.isSNP(i) ) {
+                        if ( data.isTransition(i) ) { knownTi++; } else { knownTv++; }
                     }
                 } else {
                     numNovel++;
-                    if( datum.isSNP ) {
-                        if ( datum.isTransition ) { novelTi++; } else { novelTv++; }
+                    if( data.isSNP(i) ) {
+                        if ( data.isTransition(i) ) { novelTi++; } else { novelTv++; }
                     }
                 }
             }
@@ -267,4 +272,10 @@ public class TrancheManager {
         for ( VariantDatum d : data ) { n += (d.atTruthSite && d.lod >= minLOD ? 1 : 0); }
         return n;
     }
+
+    public static int countCallsAtTruth(final TrancheData data, double minLOD ) {
+        int n = 0;
+        for ( int i = 0; i < data.size(); i++ ) { n += (data.atTruthSite(i) && data.getLod(i) >= minLOD ? 1 : 0); }
+        return n;
+    }
 }
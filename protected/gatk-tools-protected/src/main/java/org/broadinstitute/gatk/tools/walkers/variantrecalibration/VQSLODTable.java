@@ -0,0 +1,390 @@
+/*
+* By downloading the PROGRAM you agree to the following terms of use:
+* 
+* BROAD INSTITUTE
+* SOFTWARE LICENSE AGREEMENT
+* FOR ACADEMIC NON-COMMERCIAL RESEARCH PURPOSES ONLY
+* 
+* This Agreement is made between the Broad Institute, Inc. with a principal address at 415 Main Street, Cambridge, MA 02142 ("BROAD") and the LICENSEE and is effective at the date the downloading is completed ("EFFECTIVE DATE").
+* 
+* WHEREAS, LICENSEE desires to license the PROGRAM, as defined hereinafter, and BROAD wishes to have this PROGRAM utilized in the public interest, subject only to the royalty-free, nonexclusive, nontransferable license rights of the United States Government pursuant to 48 CFR 52.227-14; and
+* WHEREAS, LICENSEE desires to license the PROGRAM and BROAD desires to grant a license on the following terms and conditions.
+* NOW, THEREFORE, in consideration of the promises and covenants made herein, the parties hereto agree as follows:
+* 
+* 1. DEFINITIONS
+* 1.1 PROGRAM shall mean copyright in the object code and source code known as GATK3 and related documentation, if any, as they exist on the EFFECTIVE DATE and can be downloaded from http://www.broadinstitute.org/gatk on the EFFECTIVE DATE.
+* 
+* 2. LICENSE
+* 2.1 Grant. Subject to the terms of this Agreement, BROAD hereby grants to LICENSEE, solely for academic non-commercial research purposes, a non-exclusive, non-transferable license to: (a) download, execute and display the PROGRAM and (b) create bug fixes and modify the PROGRAM. LICENSEE hereby automatically grants to BROAD a non-exclusive, royalty-free, irrevocable license to any LICENSEE bug fixes or modifications to the PROGRAM with unlimited rights to sublicense and/or distribute.  LICENSEE agrees to provide any such modifications and bug fixes to BROAD promptly upon their creation.
+* The LICENSEE may apply the PROGRAM in a pipeline to data owned by users other than the LICENSEE and provide these users the results of the PROGRAM provided LICENSEE does so for academic non-commercial purposes only. For clarification purposes, academic sponsored research is not a commercial use under the terms of this Agreement.
+* 2.2 No Sublicensing or Additional Rights. LICENSEE shall not sublicense or distribute the PROGRAM, in whole or in part, without prior written permission from BROAD. LICENSEE shall ensure that all of its users agree to the terms of this Agreement. LICENSEE further agrees that it shall not put the PROGRAM on a network, server, or other similar technology that may be accessed by anyone other than the LICENSEE and its employees and users who have agreed to the terms of this agreement.
+* 2.3 License Limitations. Nothing in this Agreement shall be construed to confer any rights upon LICENSEE by implication, estoppel, or otherwise to any computer software, trademark, intellectual property, or patent rights of BROAD, or of any other entity, except as expressly granted herein. LICENSEE agrees that the PROGRAM, in whole or part, shall not be used for any commercial purpose, including without limitation, as the basis of a commercial software or hardware product or to provide services. LICENSEE further agrees that the PROGRAM shall not be copied or otherwise adapted in order to circumvent the need for obtaining a license for use of the PROGRAM.
+* 
+* 3. PHONE-HOME FEATURE
+* LICENSEE expressly acknowledges that the PROGRAM contains an embedded automatic reporting system ("PHONE-HOME") which is enabled by default upon download. Unless LICENSEE requests disablement of PHONE-HOME, LICENSEE agrees that BROAD may collect limited information transmitted by PHONE-HOME regarding LICENSEE and its use of the PROGRAM.  Such information shall include LICENSEE'S user identification, version number of the PROGRAM and tools being run, mode of analysis employed, and any error reports generated during run-time.  Collection of such information is used by BROAD solely to monitor usage rates, fulfill reporting requirements to BROAD funding agencies, drive improvements to the PROGRAM, and facilitate adjustments to PROGRAM-related documentation.
+* 
+* 4. OWNERSHIP OF INTELLECTUAL PROPERTY
+* LICENSEE acknowledges that title to the PROGRAM shall remain with BROAD. The PROGRAM is marked with the following BROAD copyright notice and notice of attribution to contributors. LICENSEE shall retain such notice on all copies. LICENSEE agrees to include appropriate attribution if any results obtained from use of the PROGRAM are included in any publication.
+* Copyright 2012-2016 Broad Institute, Inc.
+* Notice of attribution: The GATK3 program was made available through the generosity of Medical and Population Genetics program at the Broad Institute, Inc.
+* LICENSEE shall not use any trademark or trade name of BROAD, or any variation, adaptation, or abbreviation, of such marks or trade names, or any names of officers, faculty, students, employees, or agents of BROAD except as states above for attribution purposes.
+* 
+* 5. INDEMNIFICATION
+* LICENSEE shall indemnify, defend, and hold harmless BROAD, and their respective officers, faculty, students, employees, associated investigators and agents, and their respective successors, heirs and assigns, (Indemnitees), against any liability, damage, loss, or expense (including reasonable attorneys fees and expenses) incurred by or imposed upon any of the Indemnitees in connection with any claims, suits, actions, demands or judgments arising out of any theory of liability (including, without limitation, actions in the form of tort, warranty, or strict liability and regardless of whether such action has any factual basis) pursuant to any right or license granted under this Agreement.
+* 
+* 6. NO REPRESENTATIONS OR WARRANTIES
+* THE PROGRAM IS DELIVERED AS IS. BROAD MAKES NO REPRESENTATIONS OR WARRANTIES OF ANY KIND CONCERNING THE PROGRAM OR THE COPYRIGHT, EXPRESS OR IMPLIED, INCLUDING, WITHOUT LIMITATION, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NONINFRINGEMENT, OR THE ABSENCE OF LATENT OR OTHER DEFECTS, WHETHER OR NOT DISCOVERABLE. BROAD EXTENDS NO WARRANTIES OF ANY KIND AS TO PROGRAM CONFORMITY WITH WHATEVER USER MANUALS OR OTHER LITERATURE MAY BE ISSUED FROM TIME TO TIME.
+* IN NO EVENT SHALL BROAD OR ITS RESPECTIVE DIRECTORS, OFFICERS, EMPLOYEES, AFFILIATED INVESTIGATORS AND AFFILIATES BE LIABLE FOR INCIDENTAL OR CONSEQUENTIAL DAMAGES OF ANY KIND, INCLUDING, WITHOUT LIMITATION, ECONOMIC DAMAGES OR INJURY TO PROPERTY AND LOST PROFITS, REGARDLESS OF WHETHER BROAD SHALL BE ADVISED, SHALL HAVE OTHER REASON TO KNOW, OR IN FACT SHALL KNOW OF THE POSSIBILITY OF THE FOREGOING.
+* 
+* 7. ASSIGNMENT
+* This Agreement is personal to LICENSEE and any rights or obligations assigned by LICENSEE without the prior written consent of BROAD shall be null and void.
+* 
+* 8. MISCELLANEOUS
+* 8.1 Export Control. LICENSEE gives assurance that it will comply with all United States export control laws and regulations controlling the export of the PROGRAM, including, without limitation, all Export Administration Regulations of the United States Department of Commerce. Among other things, these laws and regulations prohibit, or require a license for, the export of certain types of software to specified countries.
+* 8.2 Termination. LICENSEE shall have the right to terminate this Agreement for any reason upon prior written notice to BROAD. If LICENSEE breaches any provision hereunder, and fails to cure such breach within thirty (30) days, BROAD may terminate this Agreement immediately. Upon termination, LICENSEE shall provide BROAD with written assurance that the original and all copies of the PROGRAM have been destroyed, except that, upon prior written authorization from BROAD, LICENSEE may retain a copy for archive purposes.
+* 8.3 Survival. The following provisions shall survive the expiration or termination of this Agreement: Articles 1, 3, 4, 5 and Sections 2.2, 2.3, 7.3, and 7.4.
+* 8.4 Notice. Any notices under this Agreement shall be in writing, shall specifically refer to this Agreement, and shall be sent by hand, recognized national overnight courier, confirmed facsimile transmission, confirmed electronic mail, or registered or certified mail, postage prepaid, return receipt requested. All notices under this Agreement shall be deemed effective upon receipt.
+* 8.5 Amendment and Waiver; Entire Agreement. This Agreement may be amended, supplemented, or otherwise modified only by means of a written instrument signed by all parties. Any waiver of any rights or failure to act in a specific instance shall relate only to such instance and shall not be construed as an agreement to waive any rights or fail to act in any other instance, whether or not similar. This Agreement constitutes the entire agreement among the parties with respect to its subject matter and supersedes prior agreements or understandings between the parties relating to its subject matter.
+* 8.6 Binding Effect; Headings. This Agreement shall be binding upon and inure to the benefit of the parties and their respective permitted successors and assigns. All headings are for convenience only and shall not affect the meaning of any provision of this Agreement.
+* 8.7 Governing Law. This Agreement shall be construed, governed, interpreted and applied in accordance with the internal laws of the Commonwealth of Massachusetts, U.S.A., without regard to conflict of laws principles.
+*/
+
+
+package org.broadinstitute.gatk.tools.walkers.variantrecalibration;
+
+import htsjdk.variant.variantcontext.Allele;
+import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
+import org.broadinstitute.gatk.utils.exceptions.UserException;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+ * A binary, sorted version of the VQSR recalibration table for fast lookups in ApplyRecalibration
+ *
+ * The file starts with a fixed size header, followed by fixed width records sorted by contig, start, end and alternate
+ * allele, and ends with the tables of contig and culprit names the records refer to and whether the table was written
+ * in allele-specific mode. Each record holds:
+ *
+ * <pre>
+ *     int    contig index, in order of first appearance
+ *     int    start
+ *     int    end
+ *     short  culprit index
+ *     byte   flags (positive and negative training site labels)
+ *     byte   padding
+ *     long   hash of the alternate allele, or 0 for site-level recalibration
+ *     double VQSLOD, rounded as in the recal VCF
+ * </pre>
+ *
+ * The records are memory-mapped and looked up by binary search, so the table can be queried in any order and from
+ * any number of threads without decoding a VCF record per site.
+ */
+public class VQSLODTable {
+
+    private static final int MAGIC = 0x56515352; // "VQSR"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 24;
+    private static final int RECORD_SIZE = 32;
+    // records per memory mapping, keeping each mapping at 1GB
+    private static final int RECORDS_PER_SEGMENT = 1 << 25;
+
+    private static final int POSITIVE_LABEL = 1;
+    private static final int NEGATIVE_LABEL = 1 << 1;
+
+    private final long numRecords;
+    private final MappedByteBuffer[] segments;
+    private final Map<String, Integer> contigIndices = new HashMap<>();
+    private final String[] culprits;
+    private final boolean alleleSpecific;
+
+    /**
+     * The recalibration of one variant or allele
+     */
+    public static class Entry {
+        public final double lod;
+        public final String culprit;
+        public final boolean atPositiveTrainingSite;
+        public final boolean atNegativeTrainingSite;
+
+        public Entry( final double lod, final String culprit, final boolean atPositiveTrainingSite, final boolean atNegativeTrainingSite ) {
+            this.lod = lod;
+            this.culprit = culprit;
+            this.atPositiveTrainingSite = atPositiveTrainingSite;
+            this.atNegativeTrainingSite = atNegativeTrainingSite;
+        }
+    }
+
+    /**
+     * Open an existing table
+     *
+     * @param file a table written by VQSLODTable.Writer
+     */
+    public VQSLODTable( final File file ) {
+        try ( final RandomAccessFile raf = new RandomAccessFile(file, "r") ) {
+            if( raf.length() < HEADER_SIZE || raf.readInt() != MAGIC ) {
+                throw new UserException.MalformedFile(file, "Not a binary VQSR recalibration table");
+            }
+            final int version = raf.readInt();
+            if( version != VERSION ) {
+                throw new UserException.MalformedFile(file, "Unsupported recalibration table version " + version);
+            }
+            numRecords = raf.readLong();
+            final long footerOffset = raf.readLong();
+            if( footerOffset != HEADER_SIZE + numRecords * RECORD_SIZE || footerOffset > raf.length() ) {
+                throw new UserException.MalformedFile(file, "The recalibration table is truncated");
+            }
+
+            final FileChannel channel = raf.getChannel();
+            segments = new MappedByteBuffer[(int) ((numRecords + RECORDS_PER_SEGMENT - 1) / RECORDS_PER_SEGMENT)];
+            for( int iii = 0; iii < segments.length; iii++ ) {
+                final long firstRecord = (long) iii * RECORDS_PER_SEGMENT;
+                final long segmentRecords = Math.min(RECORDS_PER_SEGMENT, numRecords - firstRecord);
+                segments[iii] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + firstRecord * RECORD_SIZE, segmentRecords * RECORD_SIZE);
+            }
+
+            raf.seek(footerOffset);
+            final int numContigs = raf.readInt();
+            for( int iii = 0; iii < numContigs; iii++ ) {
+                contigIndices.put(raf.readUTF(), iii);
+            }
+            culprits = new String[raf.readInt()];
+            for( int iii = 0; iii < culprits.length; iii++ ) {
+                culprits[iii] = raf.readUTF();
+            }
+            alleleSpecific = raf.readBoolean();
+        } catch ( IOException e ) {
+            throw new UserException.CouldNotReadInputFile(file, e);
+        }
+    }
+
+    /**
+     * @return the number of records in the table
+     */
+    public long size() {
+        return numRecords;
+    }
+
+    /**
+     * @return true if the table holds the recalibration of each alternate allele, false if it holds one per site
+     */
+    public boolean isAlleleSpecific() {
+        return alleleSpecific;
+    }
+
+    /**
+     * Find the recalibration of a variant
+     *
+     * @param contig the contig of the variant
+     * @param start the start of the variant
+     * @param end the end of the variant
+     * @param alternateAllele the alternate allele for allele-specific recalibration, or null for site-level recalibration
+     * @return the recalibration, or null if the variant is not in the table
+     */
+    public Entry find( final String contig, final int start, final int end, final Allele alternateAllele ) {
+        final Integer contigIndex = contigIndices.get(contig);
+        if( contigIndex == null ) {
+            return null;
+        }
+        final long alleleKey = alleleKey(alternateAllele);
+
+        // find the first record not less than the key
+        long low = 0;
+        long high = numRecords;
+        while( low < high ) {
+            final long mid = (low + high) >>> 1;
+            if( compareRecordToKey(mid, contigIndex, start, end, alleleKey) < 0 ) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        if( low == numRecords || compareRecordToKey(low, contigIndex, start, end, alleleKey) != 0 ) {
+            return null;
+        }
+
+        final ByteBuffer segment = segments[(int) (low / RECORDS_PER_SEGMENT)];
+        final int offset = (int) (low % RECORDS_PER_SEGMENT) * RECORD_SIZE;
+        final int flags = segment.get(offset + 14);
+        return new Entry(segment.getDouble(offset + 24), culprits[segment.getShort(offset + 12)], (flags & POSITIVE_LABEL) != 0, (flags & NEGATIVE_LABEL) != 0);
+    }
+
+    private int compareRecordToKey( final long record, final int contigIndex, final int start, final int end, final long alleleKey ) {
+        final ByteBuffer segment = segments[(int) (record / RECORDS_PER_SEGMENT)];
+        final int offset = (int) (record % RECORDS_PER_SEGMENT) * RECORD_SIZE;
+        int cmp = Integer.compare(segment.getInt(offset), contigIndex);
+        if( cmp == 0 ) { cmp = Integer.compare(segment.getInt(offset + 4), start); }
+        if( cmp == 0 ) { cmp = Integer.compare(segment.getInt(offset + 8), end); }
+        if( cmp == 0 ) { cmp = Long.compare(segment.getLong(offset + 16), alleleKey); }
+        return cmp;
+    }
+
+    /**
+     * A 64-bit FNV-1a hash of the allele's display string, never 0 so that it can't collide with the site-level key
+     */
+    private static long alleleKey( final Allele alternateAllele ) {
+        if( alternateAllele == null ) {
+            return 0L;
+        }
+        long hash = 0xcbf29ce484222325L;
+        final String bases = alternateAllele.getDisplayString();
+        for( int iii = 0; iii < bases.length(); iii++ ) {
+            hash ^= bases.charAt(iii);
+            hash *= 0x100000001b3L;
+        }
+        return hash == 0L ? 1L : hash;
+    }
+
+    /**
+     * Writes a table from records added in coordinate order
+     *
+     * The records starting at a single position may be added in any order, since they are buffered and sorted by end
+     * and allele before being written.
+     */
+    public static class Writer implements Closeable {
+        private final File file;
+        private final boolean alleleSpecific;
+        private final DataOutputStream out;
+        private final Map<String, Integer> contigIndices = new LinkedHashMap<>();
+        private final Map<String, Integer> culpritIndices = new LinkedHashMap<>();
+        private final List<PendingRecord> pending = new ArrayList<>();
+        private long numRecords = 0;
+        private String lastContig = null;
+        private int lastContigIndex = -1;
+        private int lastStart = -1;
+
+        private static class PendingRecord {
+            private final int end;
+            private final long alleleKey;
+            private final short culprit;
+            private final byte flags;
+            private final double lod;
+
+            private PendingRecord( final int end, final long alleleKey, final short culprit, final byte flags, final double lod ) {
+                this.end = end;
+                this.alleleKey = alleleKey;
+                this.culprit = culprit;
+                this.flags = flags;
+                this.lod = lod;
+            }
+        }
+
+        /**
+         * @param file the table to write
+         * @param alleleSpecific will the records be recalibrations of alternate alleles rather than of sites?
+         */
+        public Writer( final File file, final boolean alleleSpecific ) {
+            this.file = file;
+            this.alleleSpecific = alleleSpecific;
+            try {
+                out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(0L); // the number of records and footer offset are filled in by close()
+                out.writeLong(0L);
+            } catch ( IOException e ) {
+                throw new UserException.CouldNotCreateOutputFile(file, e);
+            }
+        }
+
+        /**
+         * Add the recalibration of a variant
+         *
+         * @param contig the contig of the variant
+         * @param start the start of the variant
+         * @param end the end of the variant
+         * @param alternateAllele the alternate allele in allele-specific mode, or null otherwise
+         * @param lod the VQSLOD
+         * @param culprit the worst performing annotation
+         * @param atPositiveTrainingSite was the variant used to train the positive model?
+         * @param atNegativeTrainingSite was the variant used to train the negative model?
+         */
+        public void add( final String contig, final int start, final int end, final Allele alternateAllele, final double lod,
+                         final String culprit, final boolean atPositiveTrainingSite, final boolean atNegativeTrainingSite ) {
+            if( (alternateAllele != null) != alleleSpecific ) {
+                throw new IllegalArgumentException("The alternate allele must " + (alleleSpecific ? "" : "not ") + "be given for a table in " + (alleleSpecific ? "" : "non-") + "allele-specific mode");
+            }
+            Integer contigIndex = contigIndices.get(contig);
+            if( contigIndex == null ) {
+                contigIndex = contigIndices.size();
+                contigIndices.put(contig, contigIndex);
+            }
+            if( contigIndex != lastContigIndex || start != lastStart ) {
+                if( contigIndex < lastContigIndex || (contigIndex == lastContigIndex && start < lastStart) ) {
+                    throw new ReviewedGATKException("Recalibration table records must be added in coordinate order, but saw " + contig + ":" + start + " after " + lastContig + ":" + lastStart);
+                }
+                flushPending();
+                lastContig = contig;
+                lastContigIndex = contigIndex;
+                lastStart = start;
+            }
+
+            Integer culpritIndex = culpritIndices.get(culprit);
+            if( culpritIndex == null ) {
+                culpritIndex = culpritIndices.size();
+                culpritIndices.put(culprit, culpritIndex);
+            }
+            final int flags = (atPositiveTrainingSite ? POSITIVE_LABEL : 0) | (atNegativeTrainingSite ? NEGATIVE_LABEL : 0);
+            pending.add(new PendingRecord(end, alleleKey(alternateAllele), culpritIndex.shortValue(), (byte) flags, lod));
+        }
+
+        private void flushPending() {
+            if( pending.size() > 1 ) {
+                Collections.sort(pending, new Comparator<PendingRecord>() {
+                    @Override
+                    public int compare( final PendingRecord a, final PendingRecord b ) {
+                        final int cmp = Integer.compare(a.end, b.end);
+                        return cmp != 0 ? cmp : Long.compare(a.alleleKey, b.alleleKey);
+                    }
+                });
+            }
+            try {
+                for( final PendingRecord record : pending ) {
+                    out.writeInt(lastContigIndex);
+                    out.writeInt(lastStart);
+                    out.writeInt(record.end);
+                    out.writeShort(record.culprit);
+                    out.writeByte(record.flags);
+                    out.writeByte(0);
+                    out.writeLong(record.alleleKey);
+                    out.writeDouble(record.lod);
+                    numRecords++;
+                }
+            } catch ( IOException e ) {
+                throw new UserException.CouldNotCreateOutputFile(file, e);
+            }
+            pending.clear();
+        }
+
+        /**
+         * Write out the remaining records and the name tables, and complete the header
+         */
+        @Override
+        public void close() {
+            flushPending();
+            try {
+                out.writeInt(contigIndices.size());
+                for( final String contig : contigIndices.keySet() ) {
+                    out.writeUTF(contig);
+                }
+                out.writeInt(culpritIndices.size());
+                for( final String culprit : culpritIndices.keySet() ) {
+                    out.writeUTF(culprit);
+                }
+                out.writeBoolean(alleleSpecific);
+                out.close();
+
+                try ( final RandomAccessFile raf = new RandomAccessFile(file, "rw") ) {
+                    raf.seek(8);
+                    raf.writeLong(numRecords);
+                    raf.writeLong(HEADER_SIZE + numRecords * RECORD_SIZE);
+                }
+            } catch ( IOException e ) {
+                throw new UserException.CouldNotCreateOutputFile(file, e);
+            }
+        }
+    }
+}
@@ -56,6 +56,7 @@ import org.apache.log4j.Logger;
 import org.broadinstitute.gatk.utils.Utils;
 import org.broadinstitute.gatk.utils.refdata.RefMetaDataTracker;
 import org.broadinstitute.gatk.utils.GenomeLoc;
+import org.broadinstitute.gatk.utils.GenomeLocParser;
 import org.broadinstitute.gatk.utils.MathUtils;
 import htsjdk.variant.vcf.VCFConstants;
 import htsjdk.variant.variantcontext.writer.VariantContextWriter;
@@ -83,12 +84,25 @@ public class VariantDataManager {
     private final VariantRecalibratorArgumentCollection VRAC;
     protected final static Logger logger = Logger.getLogger(VariantDataManager.class);
     protected final List<TrainingSet> trainingSets;
+    private static final List<Allele> DUMMY_ALLELES = Arrays.asList(Allele.create("N", true), Allele.create("<VQSR>", false));
     private static final double SAFETY_OFFSET = 0.01;     //To use for example as 1/(X + SAFETY_OFFSET) to protect against dividing or taking log of X=0.
     private static final double PRECISION = 0.01;         //To use mainly with MathUtils.compareDoubles(a,b,PRECISION)
 
+    // In streaming mode the input variants are written to a spill file as they arrive, and only the moments of their
+    // annotations and a random sample of the training variants are kept in memory
+    private final List<String> inputAnnotationKeys;
+    private GenomeLocParser genomeLocParser = null;
+    private VariantDatumSpillFile streamedData = null;
+    private RunningMoments trainingMoments = null;
+    private RunningMoments nonTrainingMoments = null;
+    private final List<VariantDatum> trainingSample = new ArrayList<>();
+    private long numTrainingDataStreamed = 0;
+    private List<Integer> annotationOrder = null;
+
     public VariantDataManager( final List<String> annotationKeys, final VariantRecalibratorArgumentCollection VRAC ) {
         this.data = Collections.emptyList();
         this.annotationKeys = new ArrayList<>( annotationKeys );
+        this.inputAnnotationKeys = new ArrayList<>( annotationKeys );
         this.VRAC = VRAC;
         meanVector = new double[this.annotationKeys.size()];
         varianceVector = new double[this.annotationKeys.size()];
@@ -147,6 +161,192 @@ public class VariantDataManager {
         logger.info("Annotations are now ordered by their information content: " + annotationKeys.toString());
     }
 
+    /**
+     * Switch to streaming mode, in which variants are added with addStreamedDatum instead of setData
+     *
+     * @param genomeLocParser parser used to restore the locations of the variants read back from disk
+     */
+    public void startStreaming( final GenomeLocParser genomeLocParser ) {
+        this.genomeLocParser = genomeLocParser;
+        streamedData = createSpillFile();
+        trainingMoments = new RunningMoments( inputAnnotationKeys.size() );
+        nonTrainingMoments = new RunningMoments( inputAnnotationKeys.size() );
+    }
+
+    public boolean isStreaming() {
+        return streamedData != null;
+    }
+
+    /**
+     * Add an input variant in streaming mode
+     *
+     * The datum is written to the spill file and its annotations are added to the moments used for normalization.
+     * Training variants are also reservoir sampled, so that at most MAX_NUM_TRAINING_DATA of them are kept in memory.
+     *
+     * @param datum a datum with decoded but not yet normalized annotations
+     */
+    public void addStreamedDatum( final VariantDatum datum ) {
+        streamedData.add( datum );
+        if( datum.atTrainingSite ) {
+            trainingMoments.add( datum );
+            numTrainingDataStreamed++;
+            if( trainingSample.size() < VRAC.MAX_NUM_TRAINING_DATA ) {
+                trainingSample.add( datum );
+            } else {
+                final long slot = (long) (Utils.getRandomGenerator().nextDouble() * numTrainingDataStreamed);
+                if( slot < VRAC.MAX_NUM_TRAINING_DATA ) {
+                    trainingSample.set( (int) slot, datum );
+                }
+            }
+        } else {
+            nonTrainingMoments.add( datum );
+        }
+    }
+
+    /**
+     * @return the spill file holding every variant added in streaming mode, in the order they were added
+     */
+    public VariantDatumSpillFile getStreamedData() {
+        return streamedData;
+    }
+
+    /**
+     * Create an empty spill file for variants with this manager's annotations
+     */
+    public VariantDatumSpillFile createSpillFile() {
+        return new VariantDatumSpillFile( genomeLocParser, inputAnnotationKeys.size(), VRAC.useASannotations );
+    }
+
+    /**
+     * The streaming version of normalizeData
+     *
+     * Computes the normalization and annotation order from the moments of all the streamed variants, and sets the
+     * data to normalized copies of the sampled training variants. Unlike normalizeData this leaves the sampled
+     * variants untouched, so it can be called again if the model has to be rebuilt.
+     */
+    public void normalizeStreamedData() {
+        final int numAnnotations = inputAnnotationKeys.size();
+        final double[] means = new double[numAnnotations];
+        final double[] standardDeviations = new double[numAnnotations];
+        final double[] nonTrainingMeans = new double[numAnnotations];
+        boolean foundZeroVarianceAnnotation = false;
+        for( int iii = 0; iii < numAnnotations; iii++ ) {
+            final double theMean = trainingMoments.getMean(iii);
+            final double theSTD = trainingMoments.getStandardDeviation(iii);
+            logger.info( inputAnnotationKeys.get(iii) + String.format(": \t mean = %.2f\t standard deviation = %.2f", theMean, theSTD) );
+            if( Double.isNaN(theMean) ) {
+                throw new UserException.BadInput("Values for " + inputAnnotationKeys.get(iii) + " annotation not detected for ANY training variant in the input callset. VariantAnnotator may be used to add these annotations.");
+            }
+
+            foundZeroVarianceAnnotation = foundZeroVarianceAnnotation || (theSTD < 1E-5);
+            means[iii] = theMean;
+            standardDeviations[iii] = theSTD;
+            // normalizeData orders the annotations using the mean of the normalized non-training data
+            nonTrainingMeans[iii] = ( nonTrainingMoments.getMean(iii) - theMean ) / theSTD;
+        }
+        if( foundZeroVarianceAnnotation ) {
+            throw new UserException.BadInput( "Found annotations with zero variance. They must be excluded before proceeding." );
+        }
+
+        annotationOrder = calculateSortOrder(means, nonTrainingMeans);
+        annotationKeys = reorderList(inputAnnotationKeys, annotationOrder);
+        meanVector = ArrayUtils.toPrimitive(reorderArray(ArrayUtils.toObject(means), annotationOrder));
+        varianceVector = ArrayUtils.toPrimitive(reorderArray(ArrayUtils.toObject(standardDeviations), annotationOrder));
+        logger.info("Annotations are now ordered by their information content: " + annotationKeys.toString());
+
+        logger.info( "Sampled " + trainingSample.size() + " of " + numTrainingDataStreamed + " training variants." );
+        final List<VariantDatum> normalizedSample = new ExpandingArrayList<>();
+        for( final VariantDatum datum : trainingSample ) {
+            final VariantDatum copy = copyDatum( datum );
+            normalizeStreamedDatum( copy );
+            normalizedSample.add( copy );
+        }
+        data = normalizedSample;
+    }
+
+    /**
+     * Normalize and reorder the annotations of a streamed variant the same way as the training data, and mark it
+     * if it fails the standard deviation threshold
+     *
+     * normalizeStreamedData must have been called first.
+     *
+     * @param datum a datum as read back from the spill file
+     */
+    public void normalizeStreamedDatum( final VariantDatum datum ) {
+        final int numAnnotations = annotationOrder.size();
+        final double[] annotations = new double[numAnnotations];
+        final boolean[] isNull = new boolean[numAnnotations];
+        boolean remove = false;
+        for( int iii = 0; iii < numAnnotations; iii++ ) {
+            final int inputIndex = annotationOrder.get(iii);
+            isNull[iii] = datum.isNull[inputIndex];
+            annotations[iii] = ( isNull[iii] ? 0.1 * Utils.getRandomGenerator().nextGaussian() : ( datum.annotations[inputIndex] - meanVector[iii] ) / varianceVector[iii] );
+            remove = remove || (Math.abs(annotations[iii]) > VRAC.STD_THRESHOLD);
+        }
+        datum.annotations = annotations;
+        datum.isNull = isNull;
+        datum.failingSTDThreshold = remove;
+    }
+
+    private static VariantDatum copyDatum( final VariantDatum datum ) {
+        final VariantDatum copy = new VariantDatum();
+        copy.annotations = datum.annotations.clone();
+        copy.isNull = datum.isNull.clone();
+        copy.isKnown = datum.isKnown;
+        copy.lod = datum.lod;
+        copy.atTruthSite = datum.atTruthSite;
+        copy.atTrainingSite = datum.atTrainingSite;
+        copy.atAntiTrainingSite = datum.atAntiTrainingSite;
+        copy.isTransition = datum.isTransition;
+        copy.isSNP = datum.isSNP;
+        copy.failingSTDThreshold = datum.failingSTDThreshold;
+        copy.originalQual = datum.originalQual;
+        copy.prior = datum.prior;
+        copy.consensusCount = datum.consensusCount;
+        copy.loc = datum.loc;
+        copy.worstAnnotation = datum.worstAnnotation;
+        copy.worstValue = datum.worstValue;
+        copy.isAggregate = datum.isAggregate;
+        copy.referenceAllele = datum.referenceAllele;
+        copy.alternateAllele = datum.alternateAllele;
+        return copy;
+    }
+
+    /**
+     * Running mean and standard deviation of the non-missing values of each annotation, using Welford's method
+     */
+    private static class RunningMoments {
+        private final long[] counts;
+        private final double[] means;
+        private final double[] sumsOfSquaredDeviations;
+
+        private RunningMoments( final int numAnnotations ) {
+            counts = new long[numAnnotations];
+            means = new double[numAnnotations];
+            sumsOfSquaredDeviations = new double[numAnnotations];
+        }
+
+        private void add( final VariantDatum datum ) {
+            for( int iii = 0; iii < counts.length; iii++ ) {
+                if( !datum.isNull[iii] ) {
+                    final double value = datum.annotations[iii];
+                    counts[iii]++;
+                    final double delta = value - means[iii];
+                    means[iii] += delta / counts[iii];
+                    sumsOfSquaredDeviations[iii] += delta * (value - means[iii]);
+                }
+            }
+        }
+
+        private double getMean( final int index ) {
+            return counts[index] == 0 ? Double.NaN : means[index];
+        }
+
+        private double getStandardDeviation( final int index ) {
+            return Math.sqrt( sumsOfSquaredDeviations[index] / ((double) counts[index]) );
+        }
+    }
+
     public double[] getMeanVector() {
         return meanVector;
     }
@@ -161,11 +361,25 @@ public class VariantDataManager {
      * @return a non-null list of integers with length matching the length of the input array
      */
     protected List<Integer> calculateSortOrder(final double[] inputVector) {
+        final double[] nonTrainingMeans = new double[inputVector.length];
+        for( int iii = 0; iii < inputVector.length; iii++ ) {
+            nonTrainingMeans[iii] = mean(iii, false);
+        }
+        return calculateSortOrder(inputVector, nonTrainingMeans);
+    }
+
+    /**
+     * Get a list of indices which give the ascending sort order of the data array
+     * @param inputVector the data to consider
+     * @param nonTrainingMeans the mean of each normalized annotation over the variants not at training sites
+     * @return a non-null list of integers with length matching the length of the input array
+     */
+    private List<Integer> calculateSortOrder(final double[] inputVector, final double[] nonTrainingMeans) {
         final List<Integer> theOrder = new ArrayList<>(inputVector.length);
         final List<MyDoubleForSorting> toBeSorted = new ArrayList<>(inputVector.length);
         int count = 0;
         for( int iii = 0; iii < inputVector.length; iii++ ) {
-            toBeSorted.add(new MyDoubleForSorting(-1.0 * Math.abs(inputVector[iii] - mean(iii, false)), count++));
+            toBeSorted.add(new MyDoubleForSorting(-1.0 * Math.abs(inputVector[iii] - nonTrainingMeans[iii]), count++));
         }
         Collections.sort(toBeSorted);
         for( final MyDoubleForSorting d : toBeSorted ) {
@@ -271,22 +485,33 @@ public class VariantDataManager {
         final List<VariantDatum> trainingData = new ExpandingArrayList<>();
 
         for( final VariantDatum datum : data ) {
-            if( datum != null && !datum.failingSTDThreshold && !Double.isInfinite(datum.lod) && datum.lod < VRAC.BAD_LOD_CUTOFF ) {
+            if( isWorstVariant(datum) ) {
                 datum.atAntiTrainingSite = true;
                 trainingData.add( datum );
             }
         }
 
-        logger.info( "Training with worst " + trainingData.size() + " scoring variants --> variants with LOD <= " + String.format("%.4f", VRAC.BAD_LOD_CUTOFF) + "." );
+        logWorstVariantsSelected( trainingData.size() );
 
         return trainingData;
     }
 
+    /**
+     * @return true if the datum should be used to train the negative model, given its score under the positive model
+     */
+    public boolean isWorstVariant( final VariantDatum datum ) {
+        return datum != null && !datum.failingSTDThreshold && !Double.isInfinite(datum.lod) && datum.lod < VRAC.BAD_LOD_CUTOFF;
+    }
+
+    public void logWorstVariantsSelected( final int numSelected ) {
+        logger.info( "Training with worst " + numSelected + " scoring variants --> variants with LOD <= " + String.format("%.4f", VRAC.BAD_LOD_CUTOFF) + "." );
+    }
+
     public List<VariantDatum> getEvaluationData() {
         final List<VariantDatum> evaluationData = new ExpandingArrayList<>();
 
         for( final VariantDatum datum : data ) {
-            if( datum != null && !datum.failingSTDThreshold && !datum.atTrainingSite && !datum.atAntiTrainingSite ) {
+            if( isEvaluationDatum(datum) ) {
                 evaluationData.add( datum );
             }
         }
@@ -294,6 +519,13 @@ public class VariantDataManager {
         return evaluationData;
     }
 
+    /**
+     * @return true if the datum was used to train neither model
+     */
+    public static boolean isEvaluationDatum( final VariantDatum datum ) {
+        return datum != null && !datum.failingSTDThreshold && !datum.atTrainingSite && !datum.atAntiTrainingSite;
+    }
+
     /**
      * Remove all VariantDatum's from the data list which are marked as aggregate data
      */
@@ -472,28 +704,45 @@ public class VariantDataManager {
         }
     }
 
-    public void writeOutRecalibrationTable( final VariantContextWriter recalWriter ) {
+    public void writeOutRecalibrationTable( final VariantContextWriter recalWriter, final VQSLODTable.Writer recalTableWriter ) {
         // we need to sort in coordinate order in order to produce a valid VCF
         Collections.sort( data, new Comparator<VariantDatum>() {
             public int compare(VariantDatum vd1, VariantDatum vd2) {
                 return vd1.loc.compareTo(vd2.loc);
             }} );
 
-        // create dummy alleles to be used
-        List<Allele> alleles = Arrays.asList(Allele.create("N", true), Allele.create("<VQSR>", false));
-
         for( final VariantDatum datum : data ) {
-            if (VRAC.useASannotations)
-                alleles = Arrays.asList(datum.referenceAllele, datum.alternateAllele); //use the alleles to distinguish between multiallelics in AS mode
-            VariantContextBuilder builder = new VariantContextBuilder("VQSR", datum.loc.getContig(), datum.loc.getStart(), datum.loc.getStop(), alleles);
-            builder.attribute(VCFConstants.END_KEY, datum.loc.getStop());
-            builder.attribute(GATKVCFConstants.VQS_LOD_KEY, String.format("%.4f", datum.lod));
-            builder.attribute(GATKVCFConstants.CULPRIT_KEY, (datum.worstAnnotation != -1 ? annotationKeys.get(datum.worstAnnotation) : "NULL"));
-
-            if ( datum.atTrainingSite ) builder.attribute(GATKVCFConstants.POSITIVE_LABEL_KEY, true);
-            if ( datum.atAntiTrainingSite ) builder.attribute(GATKVCFConstants.NEGATIVE_LABEL_KEY, true);
+            writeRecalibrationRecord( recalWriter, recalTableWriter, datum );
+        }
+    }
 
-            recalWriter.add(builder.make());
+    /**
+     * Write the recalibration table entry of one variant
+     *
+     * @param recalWriter the recalibration table
+     * @param recalTableWriter the binary recalibration table, or null if none is being written
+     * @param datum a scored, non-aggregate datum
+     */
+    public void writeRecalibrationRecord( final VariantContextWriter recalWriter, final VQSLODTable.Writer recalTableWriter, final VariantDatum datum ) {
+        final List<Allele> alleles = ( VRAC.useASannotations ?
+                Arrays.asList(datum.referenceAllele, datum.alternateAllele) : //use the alleles to distinguish between multiallelics in AS mode
+                DUMMY_ALLELES );
+        VariantContextBuilder builder = new VariantContextBuilder("VQSR", datum.loc.getContig(), datum.loc.getStart(), datum.loc.getStop(), alleles);
+        builder.attribute(VCFConstants.END_KEY, datum.loc.getStop());
+        final String lodString = String.format("%.4f", datum.lod);
+        final String culprit = (datum.worstAnnotation != -1 ? annotationKeys.get(datum.worstAnnotation) : "NULL");
+        builder.attribute(GATKVCFConstants.VQS_LOD_KEY, lodString);
+        builder.attribute(GATKVCFConstants.CULPRIT_KEY, culprit);
+
+        if ( datum.atTrainingSite ) builder.attribute(GATKVCFConstants.POSITIVE_LABEL_KEY, true);
+        if ( datum.atAntiTrainingSite ) builder.attribute(GATKVCFConstants.NEGATIVE_LABEL_KEY, true);
+
+        recalWriter.add(builder.make());
+
+        if ( recalTableWriter != null ) {
+            // store the lod as it reads back from the recal file, so that either one gives the same results
+            recalTableWriter.add(datum.loc.getContig(), datum.loc.getStart(), datum.loc.getStop(), (VRAC.useASannotations ? datum.alternateAllele : null),
+                    Double.parseDouble(lodString), culprit, datum.atTrainingSite, datum.atAntiTrainingSite);
         }
     }
 }
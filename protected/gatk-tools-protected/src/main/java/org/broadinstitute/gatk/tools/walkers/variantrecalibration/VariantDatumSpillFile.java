@@ -0,0 +1,315 @@
+/*
+* By downloading the PROGRAM you agree to the following terms of use:
+* 
+* BROAD INSTITUTE
+* SOFTWARE LICENSE AGREEMENT
+* FOR ACADEMIC NON-COMMERCIAL RESEARCH PURPOSES ONLY
+* 
+* This Agreement is made between the Broad Institute, Inc. with a principal address at 415 Main Street, Cambridge, MA 02142 ("BROAD") and the LICENSEE and is effective at the date the downloading is completed ("EFFECTIVE DATE").
+* 
+* WHEREAS, LICENSEE desires to license the PROGRAM, as defined hereinafter, and BROAD wishes to have this PROGRAM utilized in the public interest, subject only to the royalty-free, nonexclusive, nontransferable license rights of the United States Government pursuant to 48 CFR 52.227-14; and
+* WHEREAS, LICENSEE desires to license the PROGRAM and BROAD desires to grant a license on the following terms and conditions.
+* NOW, THEREFORE, in consideration of the promises and covenants made herein, the parties hereto agree as follows:
+* 
+* 1. DEFINITIONS
+* 1.1 PROGRAM shall mean copyright in the object code and source code known as GATK3 and related documentation, if any, as they exist on the EFFECTIVE DATE and can be downloaded from http://www.broadinstitute.org/gatk on the EFFECTIVE DATE.
+* 
+* 2. LICENSE
+* 2.1 Grant. Subject to the terms of this Agreement, BROAD hereby grants to LICENSEE, solely for academic non-commercial research purposes, a non-exclusive, non-transferable license to: (a) download, execute and display the PROGRAM and (b) create bug fixes and modify the PROGRAM. LICENSEE hereby automatically grants to BROAD a non-exclusive, royalty-free, irrevocable license to any LICENSEE bug fixes or modifications to the PROGRAM with unlimited rights to sublicense and/or distribute.  LICENSEE agrees to provide any such modifications and bug fixes to BROAD promptly upon their creation.
+* The LICENSEE may apply the PROGRAM in a pipeline to data owned by users other than the LICENSEE and provide these users the results of the PROGRAM provided LICENSEE does so for academic non-commercial purposes only. For clarification purposes, academic sponsored research is not a commercial use under the terms of this Agreement.
+* 2.2 No Sublicensing or Additional Rights. LICENSEE shall not sublicense or distribute the PROGRAM, in whole or in part, without prior written permission from BROAD. LICENSEE shall ensure that all of its users agree to the terms of this Agreement. LICENSEE further agrees that it shall not put the PROGRAM on a network, server, or other similar technology that may be accessed by anyone other than the LICENSEE and its employees and users who have agreed to the terms of this agreement.
+* 2.3 License Limitations. Nothing in this Agreement shall be construed to confer any rights upon LICENSEE by implication, estoppel, or otherwise to any computer software, trademark, intellectual property, or patent rights of BROAD, or of any other entity, except as expressly granted herein. LICENSEE agrees that the PROGRAM, in whole or part, shall not be used for any commercial purpose, including without limitation, as the basis of a commercial software or hardware product or to provide services. LICENSEE further agrees that the PROGRAM shall not be copied or otherwise adapted in order to circumvent the need for obtaining a license for use of the PROGRAM.
+* 
+* 3. PHONE-HOME FEATURE
+* LICENSEE expressly acknowledges that the PROGRAM contains an embedded automatic reporting system ("PHONE-HOME") which is enabled by default upon download. Unless LICENSEE requests disablement of PHONE-HOME, LICENSEE agrees that BROAD may collect limited information transmitted by PHONE-HOME regarding LICENSEE and its use of the PROGRAM.  Such information shall include LICENSEE'S user identification, version number of the PROGRAM and tools being run, mode of analysis employed, and any error reports generated during run-time.  Collection of such information is used by BROAD solely to monitor usage rates, fulfill reporting requirements to BROAD funding agencies, drive improvements to the PROGRAM, and facilitate adjustments to PROGRAM-related documentation.
+* 
+* 4. OWNERSHIP OF INTELLECTUAL PROPERTY
+* LICENSEE acknowledges that title to the PROGRAM shall remain with BROAD. The PROGRAM is marked with the following BROAD copyright notice and notice of attribution to contributors. LICENSEE shall retain such notice on all copies. LICENSEE agrees to include appropriate attribution if any results obtained from use of the PROGRAM are included in any publication.
+* Copyright 2012-2016 Broad Institute, Inc.
+* Notice of attribution: The GATK3 program was made available through the generosity of Medical and Population Genetics program at the Broad Institute, Inc.
+* LICENSEE shall not use any trademark or trade name of BROAD, or any variation, adaptation, or abbreviation, of such marks or trade names, or any names of officers, faculty, students, employees, or agents of BROAD except as states above for attribution purposes.
+* 
+* 5. INDEMNIFICATION
+* LICENSEE shall indemnify, defend, and hold harmless BROAD, and their respective officers, faculty, students, employees, associated investigators and agents, and their respective successors, heirs and assigns, (Indemnitees), against any liability, damage, loss, or expense (including reasonable attorneys fees and expenses) incurred by or imposed upon any of the Indemnitees in connection with any claims, suits, actions, demands or judgments arising out of any theory of liability (including, without limitation, actions in the form of tort, warranty, or strict liability and regardless of whether such action has any factual basis) pursuant to any right or license granted under this Agreement.
+* 
+* 6. NO REPRESENTATIONS OR WARRANTIES
+* THE PROGRAM IS DELIVERED AS IS. BROAD MAKES NO REPRESENTATIONS OR WARRANTIES OF ANY KIND CONCERNING THE PROGRAM OR THE COPYRIGHT, EXPRESS OR IMPLIED, INCLUDING, WITHOUT LIMITATION, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NONINFRINGEMENT, OR THE ABSENCE OF LATENT OR OTHER DEFECTS, WHETHER OR NOT DISCOVERABLE. BROAD EXTENDS NO WARRANTIES OF ANY KIND AS TO PROGRAM CONFORMITY WITH WHATEVER USER MANUALS OR OTHER LITERATURE MAY BE ISSUED FROM TIME TO TIME.
+* IN NO EVENT SHALL BROAD OR ITS RESPECTIVE DIRECTORS, OFFICERS, EMPLOYEES, AFFILIATED INVESTIGATORS AND AFFILIATES BE LIABLE FOR INCIDENTAL OR CONSEQUENTIAL DAMAGES OF ANY KIND, INCLUDING, WITHOUT LIMITATION, ECONOMIC DAMAGES OR INJURY TO PROPERTY AND LOST PROFITS, REGARDLESS OF WHETHER BROAD SHALL BE ADVISED, SHALL HAVE OTHER REASON TO KNOW, OR IN FACT SHALL KNOW OF THE POSSIBILITY OF THE FOREGOING.
+* 
+* 7. ASSIGNMENT
+* This Agreement is personal to LICENSEE and any rights or obligations assigned by LICENSEE without the prior written consent of BROAD shall be null and void.
+* 
+* 8. MISCELLANEOUS
+* 8.1 Export Control. LICENSEE gives assurance that it will comply with all United States export control laws and regulations controlling the export of the PROGRAM, including, without limitation, all Export Administration Regulations of the United States Department of Commerce. Among other things, these laws and regulations prohibit, or require a license for, the export of certain types of software to specified countries.
+* 8.2 Termination. LICENSEE shall have the right to terminate this Agreement for any reason upon prior written notice to BROAD. If LICENSEE breaches any provision hereunder, and fails to cure such breach within thirty (30) days, BROAD may terminate this Agreement immediately. Upon termination, LICENSEE shall provide BROAD with written assurance that the original and all copies of the PROGRAM have been destroyed, except that, upon prior written authorization from BROAD, LICENSEE may retain a copy for archive purposes.
+* 8.3 Survival. The following provisions shall survive the expiration or termination of this Agreement: Articles 1, 3, 4, 5 and Sections 2.2, 2.3, 7.3, and 7.4.
+* 8.4 Notice. Any notices under this Agreement shall be in writing, shall specifically refer to this Agreement, and shall be sent by hand, recognized national overnight courier, confirmed facsimile transmission, confirmed electronic mail, or registered or certified mail, postage prepaid, return receipt requested. All notices under this Agreement shall be deemed effective upon receipt.
+* 8.5 Amendment and Waiver; Entire Agreement. This Agreement may be amended, supplemented, or otherwise modified only by means of a written instrument signed by all parties. Any waiver of any rights or failure to act in a specific instance shall relate only to such instance and shall not be construed as an agreement to waive any rights or fail to act in any other instance, whether or not similar. This Agreement constitutes the entire agreement among the parties with respect to its subject matter and supersedes prior agreements or understandings between the parties relating to its subject matter.
+* 8.6 Binding Effect; Headings. This Agreement shall be binding upon and inure to the benefit of the parties and their respective permitted successors and assigns. All headings are for convenience only and shall not affect the meaning of any provision of this Agreement.
+* 8.7 Governing Law. This Agreement shall be construed, governed, interpreted and applied in accordance with the internal laws of the Commonwealth of Massachusetts, U.S.A., without regard to conflict of laws principles.
+*/
+
+
+package org.broadinstitute.gatk.tools.walkers.variantrecalibration;
+
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.variant.variantcontext.Allele;
+import org.broadinstitute.gatk.utils.GenomeLoc;
+import org.broadinstitute.gatk.utils.GenomeLocParser;
+import org.broadinstitute.gatk.utils.exceptions.UserException;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A temporary file of VariantDatum records in a compact binary format, read back in the order they were written
+ *
+ * Used by the streaming mode of VariantRecalibrator so that the input variants can be kept on disk rather than in
+ * memory between passes. Each record holds the location as contig index and positions, the boolean fields packed
+ * into flag bits, the prior, qual, lod and culprit, and the annotation values as raw doubles with a bit mask of the
+ * missing ones. Alleles are only stored in allele-specific mode, and worstValue, which is only used for plotting,
+ * is not stored at all.
+ */
+public class VariantDatumSpillFile {
+
+    private static final int HAS_LOC = 1;
+    private static final int IS_KNOWN = 1 << 1;
+    private static final int AT_TRUTH_SITE = 1 << 2;
+    private static final int AT_TRAINING_SITE = 1 << 3;
+    private static final int AT_ANTI_TRAINING_SITE = 1 << 4;
+    private static final int IS_TRANSITION = 1 << 5;
+    private static final int IS_SNP = 1 << 6;
+    private static final int FAILING_STD_THRESHOLD = 1 << 7;
+    private static final int IS_AGGREGATE = 1 << 8;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final File file;
+    private final GenomeLocParser genomeLocParser;
+    private final int numAnnotations;
+    private final boolean hasAlleles;
+    private final String[] contigNames;
+    private DataOutputStream out;
+    private long numRecords = 0;
+
+    /**
+     * Create a new, empty spill file in the temporary directory
+     *
+     * The file is only removed by {@link #delete()}, which its owner must call once it is done with it.
+     *
+     * @param genomeLocParser parser used to turn the stored positions back into GenomeLocs
+     * @param numAnnotations the number of annotations of every datum
+     * @param hasAlleles should the reference and alternate alleles of each datum be stored?
+     */
+    public VariantDatumSpillFile( final GenomeLocParser genomeLocParser, final int numAnnotations, final boolean hasAlleles ) {
+        if( genomeLocParser == null ) { throw new IllegalArgumentException("genomeLocParser cannot be null"); }
+        if( numAnnotations < 0 ) { throw new IllegalArgumentException("numAnnotations cannot be negative but found: " + numAnnotations); }
+
+        this.genomeLocParser = genomeLocParser;
+        this.numAnnotations = numAnnotations;
+        this.hasAlleles = hasAlleles;
+        final List<SAMSequenceRecord> sequences = genomeLocParser.getContigs().getSequences();
+        contigNames = new String[sequences.size()];
+        for( final SAMSequenceRecord sequence : sequences ) {
+            contigNames[sequence.getSequenceIndex()] = sequence.getSequenceName();
+        }
+
+        try {
+            file = File.createTempFile("VariantRecalibrator.", ".spill");
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+        } catch( IOException e ) {
+            throw new UserException.BadTmpDir("Could not create a temporary file for the variant data: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return the number of records added so far
+     */
+    public long size() {
+        return numRecords;
+    }
+
+    /**
+     * Append a datum to the file
+     *
+     * @param datum the datum, whose annotations must have the length given at construction
+     */
+    public void add( final VariantDatum datum ) {
+        if( out == null ) { throw new IllegalStateException("Cannot add to a spill file that has been read"); }
+        if( datum.annotations.length != numAnnotations ) {
+            throw new IllegalArgumentException("Expected " + numAnnotations + " annotations but found " + datum.annotations.length);
+        }
+
+        try {
+            out.writeShort(getFlags(datum));
+            if( datum.loc != null ) {
+                out.writeInt(datum.loc.getContigIndex());
+                out.writeInt(datum.loc.getStart());
+                out.writeInt(datum.loc.getStop());
+            }
+            out.writeDouble(datum.prior);
+            out.writeDouble(datum.originalQual);
+            out.writeDouble(datum.lod);
+            out.writeInt(datum.consensusCount);
+            out.writeInt(datum.worstAnnotation);
+            for( final double annotation : datum.annotations ) {
+                out.writeDouble(annotation);
+            }
+            int mask = 0;
+            for( int iii = 0; iii < numAnnotations; iii++ ) {
+                if( datum.isNull[iii] ) { mask |= 1 << (iii % 8); }
+                if( iii % 8 == 7 || iii == numAnnotations - 1 ) {
+                    out.writeByte(mask);
+                    mask = 0;
+                }
+            }
+            if( hasAlleles ) {
+                out.writeUTF(datum.referenceAllele.getDisplayString());
+                out.writeUTF(datum.alternateAllele.getDisplayString());
+            }
+            numRecords++;
+        } catch( IOException e ) {
+            throw new UserException.CouldNotCreateOutputFile(file, e);
+        }
+    }
+
+    /**
+     * Finish writing and open the file for reading from the first record
+     *
+     * No more data may be added once this has been called, but the file may be read any number of times.
+     *
+     * @return a reader positioned at the first record
+     */
+    public Reader openReader() {
+        try {
+            if( out != null ) {
+                out.close();
+                out = null;
+            }
+            return new Reader(new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE)));
+        } catch( IOException e ) {
+            throw new UserException.CouldNotReadInputFile(file, e);
+        }
+    }
+
+    /**
+     * Close and remove the file
+     */
+    public void delete() {
+        try {
+            if( out != null ) {
+                out.close();
+                out = null;
+            }
+        } catch( IOException e ) {
+            // nothing left to write, so failing to close is harmless
+        }
+        file.delete();
+    }
+
+    private static int getFlags( final VariantDatum datum ) {
+        int flags = 0;
+        if( datum.loc != null ) { flags |= HAS_LOC; }
+        if( datum.isKnown ) { flags |= IS_KNOWN; }
+        if( datum.atTruthSite ) { flags |= AT_TRUTH_SITE; }
+        if( datum.atTrainingSite ) { flags |= AT_TRAINING_SITE; }
+        if( datum.atAntiTrainingSite ) { flags |= AT_ANTI_TRAINING_SITE; }
+        if( datum.isTransition ) { flags |= IS_TRANSITION; }
+        if( datum.isSNP ) { flags |= IS_SNP; }
+        if( datum.failingSTDThreshold ) { flags |= FAILING_STD_THRESHOLD; }
+        if( datum.isAggregate ) { flags |= IS_AGGREGATE; }
+        return flags;
+    }
+
+    /**
+     * Reads the records of a spill file back in order
+     */
+    public class Reader implements Closeable {
+        private final DataInputStream in;
+        private long numRead = 0;
+
+        private Reader( final DataInputStream in ) {
+            this.in = in;
+        }
+
+        /**
+         * @return true if there are records left to read
+         */
+        public boolean hasNext() {
+            return numRead < numRecords;
+        }
+
+        /**
+         * @return the next record as a new VariantDatum
+         */
+        public VariantDatum next() {
+            if( !hasNext() ) { throw new IllegalStateException("No records left in " + file); }
+
+            try {
+                final VariantDatum datum = new VariantDatum();
+                final int flags = in.readShort();
+                if( (flags & HAS_LOC) != 0 ) {
+                    final int contigIndex = in.readInt();
+                    final int start = in.readInt();
+                    final int stop = in.readInt();
+                    datum.loc = genomeLocParser.createGenomeLoc(contigNames[contigIndex], contigIndex, start, stop);
+                }
+                datum.isKnown = (flags & IS_KNOWN) != 0;
+                datum.atTruthSite = (flags & AT_TRUTH_SITE) != 0;
+                datum.atTrainingSite = (flags & AT_TRAINING_SITE) != 0;
+                datum.atAntiTrainingSite = (flags & AT_ANTI_TRAINING_SITE) != 0;
+                datum.isTransition = (flags & IS_TRANSITION) != 0;
+                datum.isSNP = (flags & IS_SNP) != 0;
+                datum.failingSTDThreshold = (flags & FAILING_STD_THRESHOLD) != 0;
+                datum.isAggregate = (flags & IS_AGGREGATE) != 0;
+                datum.prior = in.readDouble();
+                datum.originalQual = in.readDouble();
+                datum.lod = in.readDouble();
+                datum.consensusCount = in.readInt();
+                datum.worstAnnotation = in.readInt();
+                datum.annotations = new double[numAnnotations];
+                for( int iii = 0; iii < numAnnotations; iii++ ) {
+                    datum.annotations[iii] = in.readDouble();
+                }
+                datum.isNull = new boolean[numAnnotations];
+                int mask = 0;
+                for( int iii = 0; iii < numAnnotations; iii++ ) {
+                    if( iii % 8 == 0 ) { mask = in.readUnsignedByte(); }
+                    datum.isNull[iii] = (mask & (1 << (iii % 8))) != 0;
+                }
+                if( hasAlleles ) {
+                    datum.referenceAllele = Allele.create(in.readUTF(), true);
+                    datum.alternateAllele = Allele.create(in.readUTF(), false);
+                }
+                numRead++;
+                return datum;
+            } catch( IOException e ) {
+                throw new UserException.CouldNotReadInputFile(file, e);
+            }
+        }
+
+        /**
+         * Read up to maxRecords records
+         *
+         * @param maxRecords the maximum number of records to read
+         * @return the records, empty once the end of the file has been reached
+         */
+        public List<VariantDatum> next( final int maxRecords ) {
+            final List<VariantDatum> records = new ArrayList<>((int) Math.min(maxRecords, numRecords - numRead));
+            while( records.size() < maxRecords && hasNext() ) {
+                records.add(next());
+            }
+            return records;
+        }
+
+        @Override
+        public void close() {
+            try {
+                in.close();
+            } catch( IOException e ) {
+                throw new UserException.CouldNotReadInputFile(file, e);
+            }
+        }
+    }
+}
@@ -126,6 +126,8 @@ import Jama.Matrix;
  * <ul>
  * <li>A recalibration table file that will be used by the ApplyRecalibration tool.</li>
  * <li>A tranches file which shows various metrics of the recalibration callset for slices of the data.</li>
+ * <li>Optionally, a binary copy of the recalibration table (-recalTable) that ApplyRecalibration can look variants up in
+ * much faster than it can read the recalibration table file.</li>
  * </ul>
  *
  * <h3>Usage example</h3>
@@ -166,6 +168,15 @@ import Jama.Matrix;
  * The input VCF must have been produced using allele-specific annotations in HaplotypeCaller.
  * Note that each allele will have a separate line in the output .recal file with its own VQSLOD and culprit that will be transferred to the final VCF in ApplyRecalibration.
  *
+ * <h3>Multi-threading</h3>
+ * <p>The threads requested with -nt are also used to train the Gaussian mixture models and to score the variants
+ * once the input has been read. The recalibration results do not depend on the number of threads.</p>
+ *
+ * <h3>Low-memory mode</h3>
+ * <p>With --stream_data the input variants are written to a temporary file as they are read instead of being held in
+ * memory, and the model is trained on a random sample of at most --maxNumTrainingData training variants. The
+ * recalibration table is written in input order. This mode cannot be combined with -nt.</p>
+ *
  * <h3>Caveats</h3>
  *
  * <ul>
@@ -262,6 +273,12 @@ public class VariantRecalibrator extends RodWalker<ExpandingArrayList<VariantDat
     private List<String> IGNORE_INPUT_FILTERS = new ArrayList<String>();
     @Argument(fullName="ignore_all_filters", shortName="ignoreAllFilters", doc="If specified, the variant recalibrator will ignore all input filters. Useful to rerun the VQSR from a filtered output file.", required=false)
     private boolean IGNORE_ALL_FILTERS = false;
+    /**
+     * A binary copy of the recalibration table, sorted and indexed for fast lookups. ApplyRecalibration can read it with
+     * -recalTable instead of reading the recal file with -recalFile.
+     */
+    @Output(fullName="recal_table_file", shortName="recalTable", doc="The output binary recal table file used by ApplyRecalibration", required=false, defaultToStdout=false)
+    private File RECAL_TABLE_FILE = null;
     @Output(fullName="rscript_file", shortName="rscriptFile", doc="The output rscript file generated by the VQSR to aid in visualization of the input data and learned model", required=false, defaultToStdout=false)
     private File RSCRIPT_FILE = null;
 
@@ -297,6 +314,15 @@ public class VariantRecalibrator extends RodWalker<ExpandingArrayList<VariantDat
     @Argument(fullName="max_attempts", shortName = "max_attempts", doc="Number of attempts to build a model before failing", required=false)
     protected int max_attempts = 1;
 
+    /**
+     * Keep the input variants in a temporary file between the passes over them instead of in memory. The results are
+     * statistically equivalent to but not identical with the in-memory mode, since the training data are sampled
+     * while streaming.
+     */
+    @Advanced
+    @Argument(fullName="stream_data", shortName = "streamData", doc="Spill the input variants to disk to reduce memory usage", required=false)
+    protected boolean STREAM_DATA = false;
+
     /////////////////////////////
     // Debug Arguments
     /////////////////////////////
@@ -312,6 +338,9 @@ public class VariantRecalibrator extends RodWalker<ExpandingArrayList<VariantDat
     private final Set<String> ignoreInputFilterSet = new TreeSet<>();
     private final VariantRecalibratorEngine engine = new VariantRecalibratorEngine( VRAC );
 
+    // number of variants read back from the spill files at a time in streaming mode
+    private static final int STREAMING_CHUNK_SIZE = 500000;
+
     //---------------------------------------------------------------------------------------------------------------
     //
     // initialize
@@ -321,6 +350,15 @@ public class VariantRecalibrator extends RodWalker<ExpandingArrayList<VariantDat
     @Override
     public void initialize() {
         dataManager = new VariantDataManager( new ArrayList<>(USE_ANNOTATIONS), VRAC );
+        // the traversal threads are idle by the time the models are built, so the model building reuses them
+        engine.setNumberOfThreads(getToolkit().getTotalNumberOfThreads());
+
+        if( STREAM_DATA ) {
+            if( getToolkit().getArguments().numberOfDataThreads > 1 ) {
+                throw new UserException.CommandLineException( "--stream_data cannot be used with -nt greater than 1" );
+            }
+            dataManager.startStreaming( getToolkit().getGenomeLocParser() );
+        }
 
         if (RSCRIPT_FILE != null && !RScriptExecutor.RSCRIPT_EXISTS)
             Utils.warnUser(logger, String.format(
@@ -456,6 +494,12 @@ public class VariantRecalibrator extends RodWalker<ExpandingArrayList<VariantDat
 
     @Override
     public ExpandingArrayList<VariantDatum> reduce( final ExpandingArrayList<VariantDatum> mapValue, final ExpandingArrayList<VariantDatum> reduceSum ) {
+        if( dataManager.isStreaming() ) {
+            for( final VariantDatum datum : mapValue ) {
+                dataManager.addStreamedDatum( datum );
+            }
+            return reduceSum;
+        }
         reduceSum.addAll( mapValue );
         return reduceSum;
     }
@@ -474,8 +518,25 @@ public class VariantRecalibrator extends RodWalker<ExpandingArrayList<VariantDat
 
     @Override
     public void onTraversalDone( final ExpandingArrayList<VariantDatum> reduceSum ) {
+        try {
+            recalibrate(reduceSum);
+        } finally {
+            // every attempt reads the streamed input again, so it is only removed once they are all done
+            if (dataManager.isStreaming()) {
+                dataManager.getStreamedData().delete();
+            }
+        }
+    }
+
+    private void recalibrate( final ExpandingArrayList<VariantDatum> reduceSum ) {
         for (int i = 1; i <= max_attempts; i++) {
             try {
+                if (dataManager.isStreaming()) {
+                    recalibrateStreamedData();
+                    plotTranches();
+                    return;
+                }
+
                 dataManager.setData(reduceSum);
                 dataManager.normalizeData(); // Each data point is now (x - mean) / standard deviation
 
@@ -490,9 +551,7 @@ public class VariantRecalibrator extends RodWalker<ExpandingArrayList<VariantDat
                 dataManager.dropAggregateData(); // Don't need the aggregate data anymore so let's free up the memory
                 engine.evaluateData(dataManager.getData(), badModel, true);
 
-                if (badModel.failedToConverge || goodModel.failedToConverge) {
-                    throw new UserException("NaN LOD value assigned. Clustering with this few variants and these annotations is unsafe. Please consider " + (badModel.failedToConverge ? "raising the number of variants used to train the negative model (via --minNumBadVariants 5000, for example)." : "lowering the maximum number of Gaussians allowed for use in the model (via --maxGaussians 4, for example)."));
-                }
+                checkModelsConverged(goodModel, badModel);
 
                 if (outputModel) {
                     GATKReport report = writeModelReport(goodModel, badModel, USE_ANNOTATIONS);
@@ -508,24 +567,17 @@ public class VariantRecalibrator extends RodWalker<ExpandingArrayList<VariantDat
                 tranchesStream.print(Tranche.tranchesString(tranches));
 
                 logger.info("Writing out recalibration table...");
-                dataManager.writeOutRecalibrationTable(recalWriter);
+                final VQSLODTable.Writer recalTableWriter = openRecalTableWriter();
+                dataManager.writeOutRecalibrationTable(recalWriter, recalTableWriter);
+                if (recalTableWriter != null) {
+                    recalTableWriter.close();
+                }
                 if (RSCRIPT_FILE != null) {
                     logger.info("Writing out visualization Rscript file...");
                     createVisualizationScript(dataManager.getRandomDataForPlotting(1000, positiveTrainingData, negativeTrainingData, dataManager.getEvaluationData()), goodModel, badModel, 0.0, dataManager.getAnnotationKeys().toArray(new String[USE_ANNOTATIONS.size()]));
                 }
 
-                if (VRAC.MODE == VariantRecalibratorArgumentCollection.Mode.INDEL) {
-                    // Print out an info message to make it clear why the tranches plot is not generated
-                    logger.info("Tranches plot will not be generated since we are running in INDEL mode");
-                } else {
-                    // Execute the RScript command to plot the table of truth values
-                    RScriptExecutor executor = new RScriptExecutor();
-                    executor.addScript(new Resource(PLOT_TRANCHES_RSCRIPT, VariantRecalibrator.class));
-                    executor.addArgs(TRANCHES_FILE.getAbsoluteFile(), TARGET_TITV);
-                    // Print out the command line to make it clear to the user what is being executed and how one might modify it
-                    logger.info("Executing: " + executor.getApproximateCommandLine());
-                    executor.exec();
-                }
+                plotTranches();
                 return;
             } catch (Exception e) {
                 if (i == max_attempts) {
@@ -537,6 +589,150 @@ public class VariantRecalibrator extends RodWalker<ExpandingArrayList<VariantDat
         }
     }
 
+    /**
+     * The streaming mode equivalent of the model building and output in onTraversalDone
+     *
+     * The input variants were spilled to disk during the traversal. They are read back in chunks three times: to
+     * score them with the positive model and collect the worst ones for the negative model, to score them with the
+     * negative model and find their culprits, and finally to write the recalibration table in input order once both
+     * models are known to have converged. Only the training data, the worst variants and the lod and flags of each
+     * variant for the tranche calculation are kept in memory. The spill files are removed even if an attempt fails.
+     */
+    private void recalibrateStreamedData() {
+        dataManager.normalizeStreamedData();
+
+        // Generate the positive model using the sampled training data and evaluate each variant
+        final List<VariantDatum> positiveTrainingData = dataManager.getTrainingData();
+        final GaussianMixtureModel goodModel = engine.generateModel(positiveTrainingData, VRAC.MAX_GAUSSIANS);
+
+        final VariantDatumSpillFile scoredData = dataManager.createSpillFile();
+        final VariantDatumSpillFile recalibratedData = dataManager.createSpillFile();
+        try {
+            final List<VariantDatum> negativeTrainingData = new ExpandingArrayList<>();
+            try (final VariantDatumSpillFile.Reader reader = dataManager.getStreamedData().openReader()) {
+                for (List<VariantDatum> chunk = reader.next(STREAMING_CHUNK_SIZE); !chunk.isEmpty() && !goodModel.failedToConverge; chunk = reader.next(STREAMING_CHUNK_SIZE)) {
+                    for (final VariantDatum datum : chunk) {
+                        dataManager.normalizeStreamedDatum(datum);
+                    }
+                    engine.evaluateData(chunk, goodModel, false);
+                    for (final VariantDatum datum : chunk) {
+                        if (dataManager.isWorstVariant(datum)) {
+                            datum.atAntiTrainingSite = true;
+                            negativeTrainingData.add(datum);
+                        }
+                        scoredData.add(datum);
+                    }
+                }
+            }
+            checkModelsConverged(goodModel, null);
+            dataManager.logWorstVariantsSelected(negativeTrainingData.size());
+
+            // Generate the negative model using the worst performing data and evaluate each variant contrastively
+            final GaussianMixtureModel badModel = engine.generateModel(negativeTrainingData, Math.min(VRAC.MAX_GAUSSIANS_FOR_NEGATIVE_MODEL, VRAC.MAX_GAUSSIANS));
+            final TrancheData trancheData = new TrancheData(STREAMING_CHUNK_SIZE);
+            final List<VariantDatum> evaluationData = new ExpandingArrayList<>();
+            long numEvaluationData = 0;
+            try (final VariantDatumSpillFile.Reader reader = scoredData.openReader()) {
+                for (List<VariantDatum> chunk = reader.next(STREAMING_CHUNK_SIZE); !chunk.isEmpty() && !badModel.failedToConverge; chunk = reader.next(STREAMING_CHUNK_SIZE)) {
+                    // the aggregate data are only used to train the models
+                    for (final Iterator<VariantDatum> iter = chunk.iterator(); iter.hasNext(); ) {
+                        if (iter.next().isAggregate) {
+                            iter.remove();
+                        }
+                    }
+                    engine.evaluateData(chunk, badModel, true);
+                    if (badModel.failedToConverge) {
+                        break;
+                    }
+                    engine.calculateWorstPerformingAnnotation(chunk, goodModel, badModel);
+                    for (final VariantDatum datum : chunk) {
+                        recalibratedData.add(datum);
+                        trancheData.add(datum);
+                        if (VariantDataManager.isEvaluationDatum(datum)) {
+                            // keep a uniform sample of the evaluation data for plotting
+                            numEvaluationData++;
+                            if (evaluationData.size() < 1000) {
+                                evaluationData.add(datum);
+                            } else {
+                                final long slot = (long) (Utils.getRandomGenerator().nextDouble() * numEvaluationData);
+                                if (slot < 1000) {
+                                    evaluationData.set((int) slot, datum);
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+            checkModelsConverged(goodModel, badModel);
+
+            if (outputModel) {
+                GATKReport report = writeModelReport(goodModel, badModel, USE_ANNOTATIONS);
+                report.print(modelReport);
+            }
+
+            // Find the VQSLOD cutoff values which correspond to the various tranches of calls requested by the user
+            final int nCallsAtTruth = TrancheManager.countCallsAtTruth(trancheData, Double.NEGATIVE_INFINITY);
+            final TrancheManager.SelectionMetric metric = new TrancheManager.TruthSensitivityMetric(nCallsAtTruth);
+            final List<Tranche> tranches = TrancheManager.findTranches(trancheData, TS_TRANCHES, metric, VRAC.MODE);
+            tranchesStream.print(Tranche.tranchesString(tranches));
+
+            logger.info("Writing out recalibration table...");
+            final VQSLODTable.Writer recalTableWriter = openRecalTableWriter();
+            try (final VariantDatumSpillFile.Reader reader = recalibratedData.openReader()) {
+                while (reader.hasNext()) {
+                    dataManager.writeRecalibrationRecord(recalWriter, recalTableWriter, reader.next());
+                }
+            }
+            if (recalTableWriter != null) {
+                recalTableWriter.close();
+            }
+
+            if (RSCRIPT_FILE != null) {
+                logger.info("Writing out visualization Rscript file...");
+                // the training data were only scored by the model they trained
+                engine.evaluateData(positiveTrainingData, goodModel, false);
+                engine.evaluateData(positiveTrainingData, badModel, true);
+                engine.evaluateData(negativeTrainingData, badModel, true);
+                createVisualizationScript(dataManager.getRandomDataForPlotting(1000, positiveTrainingData, negativeTrainingData, evaluationData), goodModel, badModel, 0.0, dataManager.getAnnotationKeys().toArray(new String[USE_ANNOTATIONS.size()]));
+            }
+        } finally {
+            scoredData.delete();
+            recalibratedData.delete();
+        }
+    }
+
+    private VQSLODTable.Writer openRecalTableWriter() {
+        return RECAL_TABLE_FILE == null ? null : new VQSLODTable.Writer(RECAL_TABLE_FILE, VRAC.useASannotations);
+    }
+
+    /**
+     * Throw a UserException if either model failed to converge
+     *
+     * @param goodModel the positive model
+     * @param badModel the negative model, or null if it has not been built yet
+     */
+    private static void checkModelsConverged(final GaussianMixtureModel goodModel, final GaussianMixtureModel badModel) {
+        final boolean badModelFailed = badModel != null && badModel.failedToConverge;
+        if (badModelFailed || goodModel.failedToConverge) {
+            throw new UserException("NaN LOD value assigned. Clustering with this few variants and these annotations is unsafe. Please consider " + (badModelFailed ? "raising the number of variants used to train the negative model (via --minNumBadVariants 5000, for example)." : "lowering the maximum number of Gaussians allowed for use in the model (via --maxGaussians 4, for example)."));
+        }
+    }
+
+    private void plotTranches() {
+        if (VRAC.MODE == VariantRecalibratorArgumentCollection.Mode.INDEL) {
+            // Print out an info message to make it clear why the tranches plot is not generated
+            logger.info("Tranches plot will not be generated since we are running in INDEL mode");
+        } else {
+            // Execute the RScript command to plot the table of truth values
+            RScriptExecutor executor = new RScriptExecutor();
+            executor.addScript(new Resource(PLOT_TRANCHES_RSCRIPT, VariantRecalibrator.class));
+            executor.addArgs(TRANCHES_FILE.getAbsoluteFile(), TARGET_TITV);
+            // Print out the command line to make it clear to the user what is being executed and how one might modify it
+            logger.info("Executing: " + executor.getApproximateCommandLine());
+            executor.exec();
+        }
+    }
+
     protected GATKReport writeModelReport(final GaussianMixtureModel goodModel, final GaussianMixtureModel badModel, List<String> annotationList) {
         final String formatString = "%.3f";
         final GATKReport report = new GATKReport();
@@ -76,6 +76,9 @@ public class VariantRecalibratorEngine {
 
     private final static double MIN_PROB_CONVERGENCE = 2E-3;
 
+    // runs model training and evaluation over blocks of variants in parallel
+    private ParallelBlockRunner runner = new ParallelBlockRunner(1);
+
     /////////////////////////////
     // Public Methods to interface with the Engine
     /////////////////////////////
@@ -84,6 +87,17 @@ public class VariantRecalibratorEngine {
         this.VRAC = VRAC;
     }
 
+    /**
+     * Set the number of threads used to train the models and evaluate the data
+     *
+     * The results are the same whatever the number of threads.
+     *
+     * @param numThreads the number of threads, at least 1
+     */
+    public void setNumberOfThreads( final int numThreads ) {
+        runner = new ParallelBlockRunner(numThreads);
+    }
+
     public GaussianMixtureModel generateModel( final List<VariantDatum> data, final int maxGaussians ) {
         if( data == null || data.isEmpty() ) { throw new IllegalArgumentException("No data found."); }
         if( maxGaussians <= 0 ) { throw new IllegalArgumentException("maxGaussians must be a positive integer but found: " + maxGaussians); }
@@ -104,8 +118,22 @@ public class VariantRecalibratorEngine {
         }
         
         logger.info("Evaluating full set of " + data.size() + " variants...");
-        for( final VariantDatum datum : data ) {
-            final double thisLod = evaluateDatum( datum, model );
+
+        // Variants with missing annotations are marginalized over random draws, so they are left for the loop below,
+        // which visits the variants in order and keeps the sequence of random numbers the same as single threaded
+        final VariantDatum[] dataArray = data.toArray(new VariantDatum[data.size()]);
+        final double[] lods = new double[dataArray.length];
+        runner.run( dataArray.length, GaussianMixtureModel.DATA_BLOCK_SIZE, (start, end) -> {
+            for( int nnn = start; nnn < end; nnn++ ) {
+                if( !hasMissingAnnotation(dataArray[nnn]) ) {
+                    lods[nnn] = evaluateDatum( dataArray[nnn], model );
+                }
+            }
+        });
+
+        for( int nnn = 0; nnn < dataArray.length; nnn++ ) {
+            final VariantDatum datum = dataArray[nnn];
+            final double thisLod = ( hasMissingAnnotation(datum) ? evaluateDatum( datum, model ) : lods[nnn] );
             if( Double.isNaN(thisLod) ) {
                 model.failedToConverge = true;
                 return;
@@ -120,21 +148,25 @@ public class VariantRecalibratorEngine {
     }
 
     public void calculateWorstPerformingAnnotation( final List<VariantDatum> data, final GaussianMixtureModel goodModel, final GaussianMixtureModel badModel ) {
-        for( final VariantDatum datum : data ) {
-            int worstAnnotation = -1;
-            double minProb = Double.MAX_VALUE;
-            double worstValue = -1;
-            for( int iii = 0; iii < datum.annotations.length; iii++ ) {
-                final Double goodProbLog10 = goodModel.evaluateDatumInOneDimension(datum, iii);
-                final Double badProbLog10 = badModel.evaluateDatumInOneDimension(datum, iii);
-                if( goodProbLog10 != null && badProbLog10 != null ) {
-                    final double prob = goodProbLog10 - badProbLog10;
-                    if(prob < minProb) { minProb = prob; worstAnnotation = iii; worstValue = datum.annotations[iii];}
+        final VariantDatum[] dataArray = data.toArray(new VariantDatum[data.size()]);
+        runner.run( dataArray.length, GaussianMixtureModel.DATA_BLOCK_SIZE, (start, end) -> {
+            for( int nnn = start; nnn < end; nnn++ ) {
+                final VariantDatum datum = dataArray[nnn];
+                int worstAnnotation = -1;
+                double minProb = Double.MAX_VALUE;
+                double worstValue = -1;
+                for( int iii = 0; iii < datum.annotations.length; iii++ ) {
+                    final Double goodProbLog10 = goodModel.evaluateDatumInOneDimension(datum, iii);
+                    final Double badProbLog10 = badModel.evaluateDatumInOneDimension(datum, iii);
+                    if( goodProbLog10 != null && badProbLog10 != null ) {
+                        final double prob = goodProbLog10 - badProbLog10;
+                        if(prob < minProb) { minProb = prob; worstAnnotation = iii; worstValue = datum.annotations[iii];}
+                    }
                 }
+                datum.worstAnnotation = worstAnnotation;
+                datum.worstValue = worstValue;
             }
-            datum.worstAnnotation = worstAnnotation;
-            datum.worstValue = worstValue;
-        }
+        });
     }
 
 
@@ -142,21 +174,22 @@ public class VariantRecalibratorEngine {
     // Private Methods used for generating a GaussianMixtureModel
     /////////////////////////////
 
-    private void variationalBayesExpectationMaximization( final GaussianMixtureModel model, final List<VariantDatum> data ) {
+    private void variationalBayesExpectationMaximization( final GaussianMixtureModel model, final List<VariantDatum> trainingData ) {
 
-        model.initializeRandomModel( data, VRAC.NUM_KMEANS_ITERATIONS );
+        final AnnotationMatrix data = new AnnotationMatrix( trainingData );
+        model.initializeRandomModel( data, VRAC.NUM_KMEANS_ITERATIONS, runner );
 
         // The VBEM loop
         model.normalizePMixtureLog10();
-        model.expectationStep( data );
+        model.expectationStep( data, runner );
         double currentChangeInMixtureCoefficients;
         int iteration = 0;
         logger.info("Finished iteration " + iteration + ".");
         while( iteration < VRAC.MAX_ITERATIONS ) {
             iteration++;
-            model.maximizationStep( data );
+            model.maximizationStep( data, runner );
             currentChangeInMixtureCoefficients = model.normalizePMixtureLog10();
-            model.expectationStep( data );
+            model.expectationStep( data, runner );
             if( iteration % 5 == 0 ) { // cut down on the number of output lines so that users can read the warning messages
                 logger.info("Finished iteration " + iteration + ". \tCurrent change in mixture coefficients = " + String.format("%.5f", currentChangeInMixtureCoefficients));
             }
@@ -166,7 +199,7 @@ public class VariantRecalibratorEngine {
             }
         }
 
-        model.evaluateFinalModelParameters( data );
+        model.evaluateFinalModelParameters( data, runner );
     }
 
     /////////////////////////////
@@ -176,4 +209,11 @@ public class VariantRecalibratorEngine {
     private double evaluateDatum( final VariantDatum datum, final GaussianMixtureModel model ) {
         return model.evaluateDatum( datum );
     }
+
+    private static boolean hasMissingAnnotation( final VariantDatum datum ) {
+        for( final boolean isNull : datum.isNull ) {
+            if( isNull ) { return true; }
+        }
+        return false;
+    }
 }
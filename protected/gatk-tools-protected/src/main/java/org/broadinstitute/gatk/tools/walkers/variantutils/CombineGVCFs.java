@@ -65,7 +65,9 @@ import org.broadinstitute.gatk.engine.walkers.RodWalker;
 import org.broadinstitute.gatk.engine.walkers.Window;
 import org.broadinstitute.gatk.utils.GenomeLoc;
 import org.broadinstitute.gatk.utils.GenomeLocParser;
+import org.broadinstitute.gatk.utils.codecs.gvcfcolumn.GVCFCohortStore;
 import org.broadinstitute.gatk.engine.SampleUtils;
+import org.broadinstitute.gatk.utils.exceptions.UserException;
 import org.broadinstitute.gatk.utils.help.DocumentedGATKFeature;
 import org.broadinstitute.gatk.utils.help.HelpConstants;
 import org.broadinstitute.gatk.engine.GATKVCFUtils;
@@ -75,6 +77,7 @@ import htsjdk.variant.variantcontext.*;
 import htsjdk.variant.variantcontext.writer.VariantContextWriter;
 import htsjdk.variant.vcf.*;
 
+import java.io.File;
 import java.util.*;
 
 /**
@@ -162,13 +165,102 @@ public class CombineGVCFs extends RodWalker<CombineGVCFs.PositionalState, Combin
         }
     }
 
+    /**
+     * The VariantContexts that are currently open, i.e. that started at or before the current position and have not yet
+     * been written out, in the order in which they were seen.
+     *
+     * With many inputs most of the work per site used to be rescanning the open VariantContexts, so the state also
+     * keeps a multiset of their ends, to find out in log time whether any of them ends at a given position, and a
+     * count of the open VariantContexts of each sample.
+     */
     protected final class OverallState {
-        final LinkedList<VariantContext> VCs = new LinkedList<>();
-        final Set<String> samples = new HashSet<>();
+        final ArrayList<VariantContext> VCs = new ArrayList<>();
         GenomeLoc prevPos = null;
         byte refAfterPrevPos;
 
+        private final TreeMap<Integer, Integer> ends = new TreeMap<>();
+        private int nWithTrueAltAllele = 0;
+
+        private final Map<String, Integer> sampleCounts = new HashMap<>();
+
+        /**
+         * Samples removed from the state while another of their VariantContexts is still open.  They count as absent
+         * until the next VariantContexts are added, at which point every open sample is present again.
+         */
+        private final Set<String> removedSamples = new HashSet<>();
+
         public OverallState() {}
+
+        /**
+         * Open the given VariantContexts
+         */
+        void addAll(final List<VariantContext> newVCs) {
+            for ( final VariantContext vc : newVCs ) {
+                VCs.add(vc);
+                final Integer count = ends.get(vc.getEnd());
+                ends.put(vc.getEnd(), count == null ? 1 : count + 1);
+                if ( vc.getNAlleles() > 2 )
+                    nWithTrueAltAllele++;
+                for ( final String sample : vc.getSampleNames() ) {
+                    final Integer sampleCount = sampleCounts.get(sample);
+                    sampleCounts.put(sample, sampleCount == null ? 1 : sampleCount + 1);
+                }
+            }
+            removedSamples.clear();
+        }
+
+        /**
+         * Close the VariantContexts at the given indexes of VCs
+         *
+         * @param toRemove  flags, indexed like VCs, of the VariantContexts to close
+         */
+        void removeAll(final boolean[] toRemove) {
+            int kept = 0;
+            for ( int i = 0; i < VCs.size(); i++ ) {
+                final VariantContext vc = VCs.get(i);
+                if ( !toRemove[i] ) {
+                    VCs.set(kept++, vc);
+                    continue;
+                }
+
+                final int count = ends.get(vc.getEnd());
+                if ( count == 1 )
+                    ends.remove(vc.getEnd());
+                else
+                    ends.put(vc.getEnd(), count - 1);
+                if ( vc.getNAlleles() > 2 )
+                    nWithTrueAltAllele--;
+                for ( final String sample : vc.getSampleNames() ) {
+                    final int sampleCount = sampleCounts.get(sample);
+                    if ( sampleCount == 1 ) {
+                        sampleCounts.remove(sample);
+                    } else {
+                        sampleCounts.put(sample, sampleCount - 1);
+                        removedSamples.add(sample);
+                    }
+                }
+            }
+            VCs.subList(kept, VCs.size()).clear();
+        }
+
+        /**
+         * @return true if the sample has an open VariantContext, false otherwise
+         */
+        boolean containsSample(final String sample) {
+            return sampleCounts.containsKey(sample) && !removedSamples.contains(sample);
+        }
+
+        /**
+         * Does any open VariantContext end (in terms of reference blocks, not necessarily formally) at the given position?
+         * Note that for the purposes of this method/tool, deletions are considered to be single base events (as opposed to
+         * reference blocks), hence the check for the number of alleles (because we know there will always be a <NON_REF> allele).
+         *
+         * @param pos  the position to check against
+         * @return true if there are one or more VCs that end at pos, false otherwise
+         */
+        boolean containsEndingContext(final int pos) {
+            return nWithTrueAltAllele > 0 || ends.containsKey(pos);
+        }
     }
 
     /**
@@ -194,6 +286,18 @@ public class CombineGVCFs extends RodWalker<CombineGVCFs.PositionalState, Combin
     @Argument(fullName="breakBandsAtMultiplesOf", shortName="breakBandsAtMultiplesOf", doc = "If > 0, reference bands will be broken up at genomic positions that are multiples of this number", required=false)
     protected int multipleAtWhichToBreakBands = 0;
 
+    /**
+     * If given, the samples of the input gVCFs are also added to the gVCF cohort store in this directory (which is created if needed).
+     * Samples are stored as one compressed column per sample, so later batches can be added to the same store without rewriting the earlier ones;
+     * the store's cohort.gvcfstore manifest can then be passed to GenotypeGVCFs with -V to genotype the whole cohort as a single input.
+     * Only single-sample gVCFs can be added, since the site-level annotations of a combined gVCF cannot be split between its samples.
+     */
+    @Advanced
+    @Argument(fullName="cohortStore", shortName="cohortStore", doc = "Add the input samples to the gVCF cohort store in this directory", required=false)
+    protected File cohortStoreDirectory = null;
+
+    private VariantContextWriter cohortStoreWriter = null;
+
     private GenomeLocParser genomeLocParser;
 
     public void initialize() {
@@ -206,6 +310,15 @@ public class CombineGVCFs extends RodWalker<CombineGVCFs.PositionalState, Combin
         final VCFHeader vcfHeader = new VCFHeader(headerLines, samples);
         vcfWriter.writeHeader(vcfHeader);
 
+        if ( cohortStoreDirectory != null ) {
+            for ( final Map.Entry<String, VCFHeader> rod : vcfRods.entrySet() ) {
+                if ( rod.getValue().getNGenotypeSamples() != 1 )
+                    throw new UserException.BadInput("Only single-sample gVCFs can be added to a gVCF cohort store, but " + rod.getKey() + " has " + rod.getValue().getNGenotypeSamples() + " samples");
+            }
+            cohortStoreWriter = new GVCFCohortStore(cohortStoreDirectory).addSamples();
+            cohortStoreWriter.writeHeader(vcfHeader);
+        }
+
         // collect the actual rod bindings into a list for use later
         for ( final RodBindingCollection<VariantContext> variantCollection : variantCollections )
             variants.addAll(variantCollection.getRodBindings());
@@ -242,14 +355,15 @@ public class CombineGVCFs extends RodWalker<CombineGVCFs.PositionalState, Combin
         if ( !startingStates.VCs.isEmpty() ) {
             if ( ! okayToSkipThisSite(startingStates, previousState) )
                 endPreviousStates(previousState, startingStates.loc.incPos(-1), startingStates, false);
-            previousState.VCs.addAll(startingStates.VCs);
-            for(final VariantContext vc : previousState.VCs){
-                previousState.samples.addAll(vc.getSampleNames());
-            }
+            previousState.addAll(startingStates.VCs);
 
+            if ( cohortStoreWriter != null ) {
+                for ( final VariantContext vc : startingStates.VCs )
+                    cohortStoreWriter.add(vc);
+            }
         }
 
-        if ( breakBand(startingStates.loc) || containsEndingContext(previousState.VCs, startingStates.loc.getStart()) ) {
+        if ( breakBand(startingStates.loc) || previousState.containsEndingContext(startingStates.loc.getStart()) ) {
             endPreviousStates(previousState, startingStates.loc, startingStates, true);
         }
 
@@ -278,41 +392,15 @@ public class CombineGVCFs extends RodWalker<CombineGVCFs.PositionalState, Combin
     private boolean okayToSkipThisSite(final PositionalState startingStates, final OverallState previousState) {
         final int thisPos = startingStates.loc.getStart();
         final GenomeLoc lastPosRun = previousState.prevPos;
-        Set<String> intersection = new HashSet<String>(startingStates.samples);
-        intersection.retainAll(previousState.samples);
+        if ( lastPosRun == null || thisPos != lastPosRun.getStart() + 1 )
+            return false;
 
         //if there's a starting VC with a sample that's already in a current VC, don't skip this position
-        return lastPosRun != null && thisPos == lastPosRun.getStart() + 1 && intersection.isEmpty();
-    }
-
-    /**
-     * Does the given list of VariantContexts contain any whose context ends at the given position?
-     *
-     * @param VCs  list of VariantContexts
-     * @param pos  the position to check against
-     * @return true if there are one or more VCs that end at pos, false otherwise
-     */
-    private boolean containsEndingContext(final List<VariantContext> VCs, final int pos) {
-        if ( VCs == null ) throw new IllegalArgumentException("The list of VariantContexts cannot be null");
-
-        for ( final VariantContext vc : VCs ) {
-            if ( isEndingContext(vc, pos) )
-                return true;
+        for ( final String sample : startingStates.samples ) {
+            if ( previousState.containsSample(sample) )
+                return false;
         }
-        return false;
-    }
-
-    /**
-     * Does the given variant context end (in terms of reference blocks, not necessarily formally) at the given position.
-     * Note that for the purposes of this method/tool, deletions are considered to be single base events (as opposed to
-     * reference blocks), hence the check for the number of alleles (because we know there will always be a <NON_REF> allele).
-     *
-     * @param vc   the variant context
-     * @param pos  the position to query against
-     * @return true if this variant context "ends" at this position, false otherwise
-     */
-    private boolean isEndingContext(final VariantContext vc, final int pos) {
-        return vc.getNAlleles() > 2 || vc.getEnd() == pos;
+        return true;
     }
 
     /**
@@ -330,6 +418,7 @@ public class CombineGVCFs extends RodWalker<CombineGVCFs.PositionalState, Combin
         final byte refNextBase = (atCurrentPosition) ? (startingStates.refBases.length > 1 ? startingStates.refBases[1] : (byte)'N' ): refBase;
 
         final List<VariantContext> stoppedVCs = new ArrayList<>(state.VCs.size());
+        final boolean[] toRemove = new boolean[state.VCs.size()];
 
         for ( int i = state.VCs.size() - 1; i >= 0; i-- ) {
             final VariantContext vc = state.VCs.get(i);
@@ -340,18 +429,17 @@ public class CombineGVCFs extends RodWalker<CombineGVCFs.PositionalState, Combin
 
                 // if it was ending anyways, then remove it from the future state
                 if ( vc.getEnd() == pos.getStart()) {
-                    state.samples.removeAll(vc.getSampleNames());
-                    state.VCs.remove(i);
+                    toRemove[i] = true;
                     continue; //don't try to remove twice
                 }
 
                 //if ending vc is the same sample as a starting VC, then remove it from the future state
                 if(startingStates.VCs.size() > 0 && !atCurrentPosition && startingStates.samples.containsAll(vc.getSampleNames())) {
-                    state.samples.removeAll(vc.getSampleNames());
-                    state.VCs.remove(i);
+                    toRemove[i] = true;
                 }
             }
         }
+        state.removeAll(toRemove);
 
         //output the stopped VCs if there is no previous output (state.prevPos == null) or our current position is past
         // the last write position (state.prevPos)
@@ -432,5 +520,8 @@ public class CombineGVCFs extends RodWalker<CombineGVCFs.PositionalState, Combin
         // there shouldn't be any state left unless the user cut in the middle of a gVCF block
         if ( !state.VCs.isEmpty() )
             logger.warn("You have asked for an interval that cuts in the middle of one or more gVCF blocks. Please note that this will cause you to lose records that don't end within your interval.");
+
+        if ( cohortStoreWriter != null )
+            cohortStoreWriter.close();
     }
 }
@@ -60,11 +60,14 @@ import org.broadinstitute.gatk.engine.GenomeAnalysisEngine;
 import org.broadinstitute.gatk.engine.SampleUtils;
 import org.broadinstitute.gatk.engine.arguments.DbsnpArgumentCollection;
 import org.broadinstitute.gatk.engine.arguments.GenotypeCalculationArgumentCollection;
+import org.broadinstitute.gatk.engine.datasources.rmd.ReferenceOrderedDataSource;
+import org.broadinstitute.gatk.engine.walkers.NanoSchedulable;
 import org.broadinstitute.gatk.engine.walkers.Reference;
 import org.broadinstitute.gatk.engine.walkers.RodWalker;
 import org.broadinstitute.gatk.engine.walkers.TreeReducible;
 import org.broadinstitute.gatk.engine.walkers.Window;
 import org.broadinstitute.gatk.tools.walkers.annotator.RankSumTest;
+import org.broadinstitute.gatk.tools.walkers.annotator.QualByDepth;
 import org.broadinstitute.gatk.tools.walkers.annotator.RMSAnnotation;
 import org.broadinstitute.gatk.tools.walkers.annotator.VariantAnnotatorEngine;
 import org.broadinstitute.gatk.tools.walkers.annotator.interfaces.AS_StandardAnnotation;
@@ -74,8 +77,11 @@ import org.broadinstitute.gatk.tools.walkers.annotator.interfaces.StandardAnnota
 import org.broadinstitute.gatk.tools.walkers.genotyper.OutputMode;
 import org.broadinstitute.gatk.tools.walkers.genotyper.UnifiedArgumentCollection;
 import org.broadinstitute.gatk.tools.walkers.genotyper.UnifiedGenotypingEngine;
+import org.broadinstitute.gatk.tools.walkers.genotyper.UpstreamDeletions;
 import org.broadinstitute.gatk.tools.walkers.genotyper.afcalc.GeneralPloidyFailOverAFCalculatorProvider;
 import org.broadinstitute.gatk.utils.GenomeLoc;
+import org.broadinstitute.gatk.utils.codecs.gvcfcolumn.GVCFCohortCodec;
+import org.broadinstitute.gatk.utils.codecs.gvcfcolumn.GVCFCohortReader;
 import org.broadinstitute.gatk.utils.commandline.*;
 import org.broadinstitute.gatk.utils.contexts.AlignmentContext;
 import org.broadinstitute.gatk.utils.contexts.ReferenceContext;
@@ -104,7 +110,8 @@ import java.util.*;
  *
  * <h3>Input</h3>
  * <p>
- * One or more HaplotypeCaller gVCFs to genotype.
+ * One or more HaplotypeCaller gVCFs to genotype.  A gVCF cohort store built with CombineGVCFs --cohortStore can be
+ * given through its cohort.gvcfstore manifest, and is read as a single input holding all of its samples.
  * </p>
  *
  * <h3>Output</h3>
@@ -131,11 +138,19 @@ import java.util.*;
  * <p>This tool is able to handle any ploidy (or mix of ploidies) intelligently; there is no need to specify ploidy
  * for non-diploid organisms.</p>
  *
+ * <h3>Multi-threading</h3>
+ * <p>With -nct, the input gVCF records are read and decoded by one thread while batches of sites are merged,
+ * re-genotyped and re-annotated by a pool of worker threads; the results are written out in genomic order.
+ * Sites with a spanning deletion allele are re-genotyped as they are written out, since whether that allele is kept
+ * depends on the deletions called upstream of them, and likewise sites whose QD is jittered are re-annotated as they
+ * are written out, so the output is the same as with a single thread.
+ * This can be combined with -nt, in which case each data thread runs its own such pipeline.</p>
+ *
  */
 @DocumentedGATKFeature( groupName = HelpConstants.DOCS_CAT_VARDISC, extraDocs = {CommandLineGATK.class} )
 @Reference(window=@Window(start=-10,stop=10))
 @SuppressWarnings("unused")
-public class GenotypeGVCFs extends RodWalker<VariantContext, VariantContextWriter> implements AnnotatorCompatible, TreeReducible<VariantContextWriter> {
+public class GenotypeGVCFs extends RodWalker<GenotypeGVCFs.GenotypedSite, VariantContextWriter> implements AnnotatorCompatible, TreeReducible<VariantContextWriter>, NanoSchedulable {
 
     private static String GVCF_BLOCK = "GVCFBlock";
 
@@ -145,6 +160,8 @@ public class GenotypeGVCFs extends RodWalker<VariantContext, VariantContextWrite
     @Input(fullName="variant", shortName = "V", doc="One or more input gVCF files", required=true)
     public List<RodBindingCollection<VariantContext>> variantCollections;
     final private List<RodBinding<VariantContext>> variants = new ArrayList<>();
+    // the inputs that are gVCF cohort stores, which hold a record for each of their samples at a site
+    final private Set<RodBinding<VariantContext>> cohortStores = new HashSet<>();
 
     @Output(doc="File to which variants should be written")
     protected VariantContextWriter vcfWriter = null;
@@ -189,6 +206,9 @@ public class GenotypeGVCFs extends RodWalker<VariantContext, VariantContextWrite
 
     // the genotyping engine
     private UnifiedGenotypingEngine genotypingEngine;
+
+    // the deletions written out so far, which decide whether the spanning deletion alleles that follow are kept
+    private final UpstreamDeletions upstreamDeletions = new UpstreamDeletions();
     // the annotation engine
     private VariantAnnotatorEngine annotationEngine;
     // the INFO field annotation key names to remove
@@ -222,6 +242,16 @@ public class GenotypeGVCFs extends RodWalker<VariantContext, VariantContextWrite
         final GenomeAnalysisEngine toolkit = getToolkit();
         final Map<String, VCFHeader> vcfRods = GATKVCFUtils.getVCFHeadersFromRods(toolkit, variants);
 
+        final Set<String> cohortStoreNames = new HashSet<>();
+        for ( final ReferenceOrderedDataSource source : toolkit.getRodDataSources() ) {
+            if ( source.getType() == GVCFCohortCodec.class )
+                cohortStoreNames.add(source.getName());
+        }
+        for ( final RodBinding<VariantContext> rb : variants ) {
+            if ( cohortStoreNames.contains(rb.getName()) )
+                cohortStores.add(rb);
+        }
+
         final GATKVariantContextUtils.GenotypeMergeType mergeType = uniquifySamples ?
                 GATKVariantContextUtils.GenotypeMergeType.UNIQUIFY : GATKVariantContextUtils.GenotypeMergeType.REQUIRE_UNIQUE;
         final SampleList samples = new IndexedSampleList(SampleUtils.getSampleList(vcfRods, mergeType));
@@ -290,18 +320,105 @@ public class GenotypeGVCFs extends RodWalker<VariantContext, VariantContextWrite
         logger.info("Notice that the -ploidy parameter is ignored in " + getClass().getSimpleName() + " tool as this is automatically determined by the input variant files");
     }
 
+    /**
+     * The outcome of map at one site.  Map re-genotypes and re-annotates every site it can without depending on the
+     * sites before it; reduce finishes the others in genomic order.
+     */
+    protected static final class GenotypedSite {
+        // the finished site, or null if it was dropped or must be finished by reduce
+        private final VariantContext result;
+        // the deletions called at the site, or null if it must be genotyped by reduce
+        private final UpstreamDeletions deletions;
+
+        // what reduce needs to finish the site
+        private final RefMetaDataTracker tracker;
+        private final ReferenceContext ref;
+        private final VariantContext combinedVC;
+        // the genotyped site, if reduce only needs to annotate it
+        private final VariantContext genotypedVC;
+
+        private GenotypedSite(final VariantContext result, final UpstreamDeletions deletions, final RefMetaDataTracker tracker,
+                              final ReferenceContext ref, final VariantContext combinedVC, final VariantContext genotypedVC) {
+            this.result = result;
+            this.deletions = deletions;
+            this.tracker = tracker;
+            this.ref = ref;
+            this.combinedVC = combinedVC;
+            this.genotypedVC = genotypedVC;
+        }
+
+        private static GenotypedSite finished(final VariantContext result, final UpstreamDeletions deletions) {
+            return new GenotypedSite(result, deletions, null, null, null, null);
+        }
+
+        private static GenotypedSite toGenotype(final RefMetaDataTracker tracker, final ReferenceContext ref, final VariantContext combinedVC) {
+            return new GenotypedSite(null, null, tracker, ref, combinedVC, null);
+        }
+
+        private static GenotypedSite toAnnotate(final RefMetaDataTracker tracker, final ReferenceContext ref, final VariantContext combinedVC,
+                                                final VariantContext genotypedVC, final UpstreamDeletions deletions) {
+            return new GenotypedSite(null, deletions, tracker, ref, combinedVC, genotypedVC);
+        }
+    }
+
+    /**
+     * Get the records to merge at a site: one for each input gVCF, and one for each sample of a gVCF cohort store
+     */
+    private List<VariantContext> getVCsAtThisLocus(final RefMetaDataTracker tracker, final GenomeLoc loc) {
+        if ( cohortStores.isEmpty() )
+            return tracker.getPrioritizedValue(variants, loc);
+
+        final List<VariantContext> vcs = new ArrayList<>();
+        for ( final RodBinding<VariantContext> rb : variants ) {
+            if ( cohortStores.contains(rb) )
+                vcs.addAll(GVCFCohortReader.getPrioritizedValuePerSample(tracker.getValues(rb), loc));
+            else
+                vcs.addAll(tracker.getPrioritizedValue(Collections.singletonList(rb), loc));
+        }
+        return vcs;
+    }
+
     // get VariantContexts from input gVCFs, merge, and regenotype
-    public VariantContext map(final RefMetaDataTracker tracker, final ReferenceContext ref, final AlignmentContext context) {
+    // Note that with -nct this is called concurrently for different loci, so it must not modify any walker state,
+    // and input records may be shared with the map calls of other loci they overlap
+    public GenotypedSite map(final RefMetaDataTracker tracker, final ReferenceContext ref, final AlignmentContext context) {
         if ( tracker == null ) // RodWalkers can make funky map calls
             return null;
 
         final GenomeLoc loc = ref.getLocus();
-        final List<VariantContext> vcsAtThisLocus = tracker.getPrioritizedValue(variants, loc);
+        final List<VariantContext> vcsAtThisLocus = getVCsAtThisLocus(tracker, loc);
+        for ( final VariantContext vc : vcsAtThisLocus )
+            GATKVariantContextUtils.prepareForConcurrentAccess(vc);
         final Byte refBase = INCLUDE_NON_VARIANTS ? ref.getBase() : null;
         final boolean removeNonRefSymbolicAllele = !INCLUDE_NON_VARIANTS;
         final VariantContext combinedVC = ReferenceConfidenceVariantContextMerger.merge(vcsAtThisLocus, loc,
                refBase, removeNonRefSymbolicAllele, uniquifySamples, annotationEngine);
-        return combinedVC == null ? null : regenotypeVC(tracker, ref, combinedVC);
+        if ( combinedVC == null )
+            return null;
+        if ( hasSpanningDeletionAllele(combinedVC) )
+            return GenotypedSite.toGenotype(tracker, ref, combinedVC);
+
+        // any deletions called here only matter to the spanning deletion alleles downstream, so they are passed on to reduce
+        final UpstreamDeletions deletions = new UpstreamDeletions();
+        final VariantContext genotypedVC = genotypeVC(combinedVC, deletions);
+        if ( genotypedVC == null )
+            return GenotypedSite.finished(null, deletions);
+
+        // the QD jitter comes from the shared random generator, so it must be drawn in order too
+        QualByDepth.deferJitter();
+        final VariantContext result;
+        final boolean jitterNeeded;
+        try {
+            result = annotateVC(tracker, ref, combinedVC, genotypedVC);
+        } finally {
+            jitterNeeded = QualByDepth.stopDeferringJitter();
+        }
+        return jitterNeeded ? GenotypedSite.toAnnotate(tracker, ref, combinedVC, genotypedVC, deletions)
+                : GenotypedSite.finished(result, deletions);
+    }
+
+    private static boolean hasSpanningDeletionAllele(final VariantContext vc) {
+        return vc.hasAllele(Allele.SPAN_DEL) || vc.hasAllele(GATKVCFConstants.SPANNING_DELETION_SYMBOLIC_ALLELE_DEPRECATED);
     }
 
     /**
@@ -310,9 +427,23 @@ public class GenotypeGVCFs extends RodWalker<VariantContext, VariantContextWrite
      * @param tracker        the ref tracker
      * @param ref            the ref context
      * @param originalVC     the combined genomic VC
+     * @param upstreamDeletions the deletions called upstream of the site, to which those called at the site are added
      * @return a new VariantContext or null if the site turned monomorphic and we don't want such sites
      */
-    protected VariantContext regenotypeVC(final RefMetaDataTracker tracker, final ReferenceContext ref, final VariantContext originalVC) {
+    protected VariantContext regenotypeVC(final RefMetaDataTracker tracker, final ReferenceContext ref, final VariantContext originalVC,
+                                          final UpstreamDeletions upstreamDeletions) {
+        final VariantContext genotypedVC = genotypeVC(originalVC, upstreamDeletions);
+        return genotypedVC == null ? null : annotateVC(tracker, ref, originalVC, genotypedVC);
+    }
+
+    /**
+     * Re-genotype a combined genomic VC
+     *
+     * @param originalVC     the combined genomic VC
+     * @param upstreamDeletions the deletions called upstream of the site, to which those called at the site are added
+     * @return the re-genotyped VC, not yet annotated, or null if the site turned monomorphic and we don't want such sites
+     */
+    private VariantContext genotypeVC(final VariantContext originalVC, final UpstreamDeletions upstreamDeletions) {
         if ( originalVC == null ) {
             throw new IllegalArgumentException("originalVC cannot be null");
         } else if (!isProperlyPolymorphic(originalVC) && !INCLUDE_NON_VARIANTS) {
@@ -323,14 +454,27 @@ public class GenotypeGVCFs extends RodWalker<VariantContext, VariantContextWrite
 
         //don't need to calculate quals for sites with no data whatsoever
         if (result.getAttributeAsInt(VCFConstants.DEPTH_KEY,0) > 0 ) {
-            result = genotypingEngine.calculateGenotypes(originalVC);
+            result = genotypingEngine.calculateGenotypes(originalVC, upstreamDeletions);
         } 
 
         if (result == null || (!isProperlyPolymorphic(result) && !INCLUDE_NON_VARIANTS)) {
             return null;
         }
+        return result;
+    }
 
-        result = addGenotypingAnnotations(originalVC.getAttributes(), result);
+    /**
+     * Re-annotate a re-genotyped genomic VC
+     *
+     * @param tracker        the ref tracker
+     * @param ref            the ref context
+     * @param originalVC     the combined genomic VC
+     * @param genotypedVC    the re-genotyped VC
+     * @return a new VariantContext or null if the site turned monomorphic and we don't want such sites
+     */
+    private VariantContext annotateVC(final RefMetaDataTracker tracker, final ReferenceContext ref, final VariantContext originalVC,
+                                      final VariantContext genotypedVC) {
+        VariantContext result = addGenotypingAnnotations(originalVC.getAttributes(), genotypedVC);
         //At this point we should already have DP and AD annotated
         result = annotationEngine.finalizeAnnotations(result, originalVC);
         //do trimming after allele-specific annotation reduction or the mapping is difficult
@@ -539,7 +683,17 @@ public class GenotypeGVCFs extends RodWalker<VariantContext, VariantContextWrite
         return vcfWriter;
     }
 
-    public VariantContextWriter reduce(final VariantContext vc, final VariantContextWriter writer) {
+    public VariantContextWriter reduce(final GenotypedSite site, final VariantContextWriter writer) {
+        if ( site == null )
+            return writer;
+
+        final VariantContext vc;
+        if ( site.deletions == null ) {
+            vc = regenotypeVC(site.tracker, site.ref, site.combinedVC, upstreamDeletions);
+        } else {
+            upstreamDeletions.addAll(site.deletions);
+            vc = site.genotypedVC == null ? site.result : annotateVC(site.tracker, site.ref, site.combinedVC, site.genotypedVC);
+        }
         if ( vc != null )
             writer.add(vc);
         return writer;
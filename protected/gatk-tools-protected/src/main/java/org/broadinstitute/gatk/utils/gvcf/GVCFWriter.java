@@ -61,6 +61,7 @@ import org.broadinstitute.gatk.utils.variant.GATKVCFConstants;
 import org.broadinstitute.gatk.utils.variant.GATKVCFHeaderLines;
 import org.broadinstitute.gatk.utils.variant.GATKVariantContextUtils;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -226,9 +227,50 @@ public class GVCFWriter implements VariantContextWriter {
         return result;
     }
 
+    /**
+     * Add the hom-ref site at index i of records to this gVCF hom-ref state tracking, emitting any pending states if appropriate
+     *
+     * Works like {@link #addHomRefSite(VariantContext, Genotype)} but without needing a VariantContext for the site
+     *
+     * @param records a non-null list of reference confidence records
+     * @param i the index of a reference confidence site in records
+     * @return a VariantContext to be emitted, or null if non is appropriate
+     */
+    private VariantContext addHomRefSite(final ReferenceConfidenceList records, final int i) {
+        final int pos = records.getPosition(i);
+
+        if ( nextAvailableStart != -1 ) {
+            // don't create blocks while the hom-ref site falls before nextAvailableStart (for deletions)
+            if ( pos <= nextAvailableStart && records.getContig().equals(contigOfNextAvailableStart) )
+                return null;
+            // otherwise, reset to non-relevant
+            nextAvailableStart = -1;
+            contigOfNextAvailableStart = null;
+        }
+
+        final int GQ = records.getGQ(i);
+        final VariantContext result;
+        if ( siteCanBeMergedInCurrentBlock(GQ, records.getPloidy(), records.getNumberOfPLs()) ) {
+            result = null;
+        } else {
+            result = blockToVCF(currentBlock);
+            final HomRefBlock partition = getPartition(GQ);
+            currentBlock = new HomRefBlock(records.getSource(), records.getContig(), pos, records.getRefAllele(i), partition.getGQLowerBound(), partition.getGQUpperBound(), records.getPloidy());
+        }
+        currentBlock.add(pos, GQ, records.getDP(i), records.getPLArray(), records.getPLOffset(i), records.getNumberOfPLs());
+        return result;
+    }
+
     private boolean genotypeCanBeMergedInCurrentBlock(final Genotype g) {
-        return currentBlock != null && currentBlock.withinBounds(capToMaxGQ(g.getGQ())) && currentBlock.getPloidy() == g.getPloidy()
-                && (currentBlock.getMinPLs() == null || !g.hasPL() || (currentBlock.getMinPLs().length == g.getPL().length));
+        return siteCanBeMergedInCurrentBlock(g.getGQ(), g.getPloidy(), g.hasPL() ? g.getPL().length : -1);
+    }
+
+    /**
+     * @param nPLs the number of PLs of the site, or -1 if it has none
+     */
+    private boolean siteCanBeMergedInCurrentBlock(final int GQ, final int ploidy, final int nPLs) {
+        return currentBlock != null && currentBlock.withinBounds(capToMaxGQ(GQ)) && currentBlock.getPloidy() == ploidy
+                && (currentBlock.getMinPLs() == null || nPLs == -1 || (currentBlock.getMinPLs().length == nPLs));
     }
 
     private int capToMaxGQ(final int gq) {
@@ -257,7 +299,8 @@ public class GVCFWriter implements VariantContextWriter {
     private VariantContext blockToVCF(final HomRefBlock block) {
         if ( block == null ) return null;
 
-        final VariantContextBuilder vcb = new VariantContextBuilder(block.getStartingVC());
+        final VariantContextBuilder vcb = block.getStartingVC() != null ? new VariantContextBuilder(block.getStartingVC())
+                : new VariantContextBuilder(block.getSource(), block.getContig(), block.getStart(), block.getStop(), Arrays.asList(block.getRef(), GATKVCFConstants.NON_REF_SYMBOLIC_ALLELE));
         vcb.attributes(new HashMap<String, Object>(2)); // clear the attributes
         vcb.stop(block.getStop());
         vcb.attribute(VCFConstants.END_KEY, block.getStop());
@@ -288,16 +331,7 @@ public class GVCFWriter implements VariantContextWriter {
      */
     private HomRefBlock createNewBlock(final VariantContext vc, final Genotype g) {
         // figure out the GQ limits to use based on the GQ of g
-        HomRefBlock partition = null;
-        for ( final HomRefBlock maybePartition : GQPartitions ) {
-            if ( maybePartition.withinBounds(capToMaxGQ(g.getGQ())) ) {
-                partition = maybePartition;
-                break;
-            }
-        }
-
-        if ( partition == null )
-            throw new IllegalStateException("GQ " + g + " from " + vc + " didn't fit into any partition");
+        final HomRefBlock partition = getPartition(g.getGQ());
 
         // create the block, add g to it, and return it for use
         final HomRefBlock block = new HomRefBlock(vc, partition.getGQLowerBound(), partition.getGQUpperBound(), defaultPloidy);
@@ -305,6 +339,69 @@ public class GVCFWriter implements VariantContextWriter {
         return block;
     }
 
+    /**
+     * Get the GQ partition a GQ value falls into
+     *
+     * @param GQ the GQ value, which will be capped at the max GQ
+     * @return the non-null partition
+     */
+    private HomRefBlock getPartition(final int GQ) {
+        for ( final HomRefBlock maybePartition : GQPartitions ) {
+            if ( maybePartition.withinBounds(capToMaxGQ(GQ)) )
+                return maybePartition;
+        }
+        throw new IllegalStateException("GQ " + GQ + " didn't fit into any partition");
+    }
+
+    /**
+     * Add all of the records of a reference confidence list to this writer for emission
+     *
+     * This is equivalent to adding each of the VariantContexts of the list in turn, but folds the hom-ref sites into
+     * the bands directly, without creating a VariantContext for each of them.
+     *
+     * @param records a non-null list of reference confidence records
+     */
+    public void add(final ReferenceConfidenceList records) {
+        if ( records == null ) throw new IllegalArgumentException("records cannot be null");
+
+        for ( int i = 0; i < records.size(); i++ ) {
+            if ( records.isCall(i) ) {
+                add(records.getCall(i));
+                continue;
+            }
+
+            if ( sampleName == null )
+                sampleName = records.getSampleName();
+
+            if ( currentBlock != null && ! currentBlock.isContiguous(records.getContig(), records.getPosition(i)) ) {
+                // we've made a non-contiguous step (across interval, onto another chr), so finalize
+                emitCurrentBlock();
+            }
+
+            final VariantContext maybeCompletedBand = addHomRefSite(records, i);
+            if ( maybeCompletedBand != null ) underlyingWriter.add(maybeCompletedBand);
+        }
+    }
+
+    /**
+     * Add the records of an active region to this writer for emission, in order
+     *
+     * Reference confidence lists take the {@link #add(ReferenceConfidenceList)} path; any other list is added one
+     * VariantContext at a time.
+     *
+     * @param records a non-null list of records
+     */
+    public void addAll(final List<VariantContext> records) {
+        if ( records == null ) throw new IllegalArgumentException("records cannot be null");
+
+        if ( records instanceof ReferenceConfidenceList ) {
+            add((ReferenceConfidenceList)records);
+        } else {
+            for ( final VariantContext vc : records )
+                add(vc);
+        }
+    }
+
     /**
      * Add a VariantContext to this writer for emission
      *
@@ -55,10 +55,8 @@ import htsjdk.variant.variantcontext.Allele;
 import htsjdk.variant.variantcontext.Genotype;
 import htsjdk.variant.variantcontext.VariantContext;
 import htsjdk.variant.vcf.VCFHeaderLine;
-import org.broadinstitute.gatk.utils.MathUtils;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
 /**
  * Helper class for calculating a GQ band in the GVCF writer
@@ -74,11 +72,15 @@ import java.util.List;
  */
 final class HomRefBlock {
     private final VariantContext startingVC;
+    private final String source;
+    private final String contig;
+    private final int start;
     private int stop;
     private final int minGQ, maxGQ;
     private int[] minPLs = null;
-    final private List<Integer> GQs = new ArrayList<>(100);
-    final private List<Integer> DPs = new ArrayList<>(100);
+    private int[] GQs = new int[100];
+    private int[] DPs = new int[100];
+    private int nSites = 0;
     private final Allele ref;
     private final int ploidy;
 
@@ -94,6 +96,9 @@ final class HomRefBlock {
         if ( minGQ > maxGQ ) throw new IllegalArgumentException("bad minGQ " + minGQ + " as its > maxGQ " + maxGQ);
 
         this.startingVC = startingVC;
+        this.source = startingVC.getSource();
+        this.contig = startingVC.getContig();
+        this.start = startingVC.getStart();
         this.stop = getStart() - 1;
         this.ref = startingVC.getReference();
         this.minGQ = minGQ;
@@ -101,6 +106,33 @@ final class HomRefBlock {
         this.ploidy = startingVC.getMaxPloidy(defaultPloidy);
     }
 
+    /**
+     * Create a new HomRefBlock starting at a reference confidence site that has no VariantContext
+     *
+     * @param source the source name of the band
+     * @param contig the contig of the band
+     * @param start the first position of the band
+     * @param ref the reference allele at the first position
+     * @param minGQ the minGQ (inclusive) to use in this band
+     * @param maxGQ the maxGQ (exclusive) to use in this band
+     * @param ploidy the ploidy of the genotypes in this band
+     */
+    public HomRefBlock(final String source, final String contig, final int start, final Allele ref, final int minGQ, final int maxGQ, final int ploidy) {
+        if ( contig == null ) throw new IllegalArgumentException("contig cannot be null");
+        if ( ref == null ) throw new IllegalArgumentException("ref cannot be null");
+        if ( minGQ > maxGQ ) throw new IllegalArgumentException("bad minGQ " + minGQ + " as its > maxGQ " + maxGQ);
+
+        this.startingVC = null;
+        this.source = source;
+        this.contig = contig;
+        this.start = start;
+        this.stop = start - 1;
+        this.ref = ref;
+        this.minGQ = minGQ;
+        this.maxGQ = maxGQ;
+        this.ploidy = ploidy;
+    }
+
     /**
      * Create a new HomRefBlock only for doing bounds checking
      *
@@ -111,6 +143,9 @@ final class HomRefBlock {
         if ( minGQ > maxGQ ) throw new IllegalArgumentException("bad minGQ " + minGQ + " as its > maxGQ " + maxGQ);
 
         this.startingVC = null;
+        this.source = null;
+        this.contig = null;
+        this.start = -1;
         this.stop = -1;
         this.ref = null;
         this.minGQ = minGQ;
@@ -126,23 +161,44 @@ final class HomRefBlock {
         if ( g == null ) throw new IllegalArgumentException("g cannot be null");
         if ( ! g.hasGQ() ) throw new IllegalArgumentException("g must have GQ field");
         if ( ! g.hasPL() ) throw new IllegalArgumentException("g must have PL field");
-        if ( pos != stop + 1 ) throw new IllegalArgumentException("adding genotype at pos " + pos + " isn't contiguous with previous stop " + stop);
         if ( g.getPloidy() != ploidy)
             throw new IllegalArgumentException("cannot add a genotype with a different ploidy: " + g.getPloidy() + " != " + ploidy);
 
+        final int[] PL = g.getPL();
+        add(pos, g.getGQ(), g.getDP(), PL, 0, PL.length);
+    }
+
+    /**
+     * Add the information of a hom-ref site with the ploidy of this band
+     *
+     * @param pos the position of the site, which must directly follow the stop of this band
+     * @param GQ the GQ of the site
+     * @param DP the DP of the site
+     * @param PLs an array holding the PLs of the site
+     * @param offset the offset of the site's PLs in PLs
+     * @param nPLs the number of PLs of the site
+     */
+    public void add(final int pos, final int GQ, final int DP, final int[] PLs, final int offset, final int nPLs) {
+        if ( pos != stop + 1 ) throw new IllegalArgumentException("adding genotype at pos " + pos + " isn't contiguous with previous stop " + stop);
+
         if( minPLs == null )
-            minPLs = g.getPL();
+            minPLs = Arrays.copyOfRange(PLs, offset, offset + nPLs);
         else { // otherwise take the min with the provided genotype's PLs
-            final int[] PL = g.getPL();
-            if (PL.length != minPLs.length)
-                throw new IllegalStateException("trying to merge different PL array sizes: " + PL.length + " != " + minPLs.length);
-            for (int i = 0; i < PL.length; i++)
-                if (minPLs[i] > PL[i])
-                    minPLs[i] = PL[i];
+            if (nPLs != minPLs.length)
+                throw new IllegalStateException("trying to merge different PL array sizes: " + nPLs + " != " + minPLs.length);
+            for (int i = 0; i < nPLs; i++)
+                if (minPLs[i] > PLs[offset + i])
+                    minPLs[i] = PLs[offset + i];
         }
         stop = pos;
-        GQs.add(Math.min(g.getGQ(), 99)); // cap the GQs by the max. of 99 emission
-        DPs.add(Math.max(g.getDP(),0));
+
+        if ( nSites == GQs.length ) {
+            GQs = Arrays.copyOf(GQs, nSites * 2);
+            DPs = Arrays.copyOf(DPs, nSites * 2);
+        }
+        GQs[nSites] = Math.min(GQ, 99); // cap the GQs by the max. of 99 emission
+        DPs[nSites] = Math.max(DP, 0);
+        nSites++;
     }
 
     /**
@@ -155,13 +211,13 @@ final class HomRefBlock {
     }
 
     /** Get the min GQ observed within this band */
-    public int getMinGQ() { return MathUtils.arrayMin(GQs); }
+    public int getMinGQ() { return min(GQs, nSites); }
     /** Get the median GQ observed within this band */
-    public int getMedianGQ() { return MathUtils.median(GQs); }
+    public int getMedianGQ() { return median(GQs, nSites); }
     /** Get the min DP observed within this band */
-    public int getMinDP() { return MathUtils.arrayMin(DPs); }
+    public int getMinDP() { return min(DPs, nSites); }
     /** Get the median DP observed within this band */
-    public int getMedianDP() { return MathUtils.median(DPs); }
+    public int getMedianDP() { return median(DPs, nSites); }
     /** Get the min PLs observed within this band, can be null if no PLs have yet been observed */
     public int[] getMinPLs() { return minPLs; }
 
@@ -169,11 +225,18 @@ final class HomRefBlock {
     protected int getGQLowerBound() { return minGQ; }
 
     public boolean isContiguous(final VariantContext vc) {
-        return vc.getEnd() == getStop() + 1 && startingVC.getChr().equals(vc.getChr());
+        return isContiguous(vc.getContig(), vc.getEnd());
+    }
+
+    public boolean isContiguous(final String contig, final int end) {
+        return end == getStop() + 1 && this.contig.equals(contig);
     }
 
+    /** Get the VariantContext that started this band, or null if it was started from a primitive site */
     public VariantContext getStartingVC() { return startingVC; }
-    public int getStart() { return startingVC.getStart(); }
+    public String getSource() { return source; }
+    public String getContig() { return contig; }
+    public int getStart() { return start; }
     public int getStop() { return stop; }
     public Allele getRef() { return ref; }
     public int getSize() { return getStop() - getStart() + 1; }
@@ -193,6 +256,22 @@ final class HomRefBlock {
         return new VCFHeaderLine(key, "minGQ=" + getGQLowerBound() + "(inclusive),maxGQ=" + getGQUpperBound() + "(exclusive)");
     }
 
+    private static int min(final int[] values, final int n) {
+        if ( n == 0 ) throw new IllegalArgumentException("Array must be non-null and non-empty");
+        int min = values[0];
+        for ( int i = 1; i < n; i++ )
+            if ( values[i] < min ) min = values[i];
+        return min;
+    }
+
+    /** Same definition of the median as MathUtils.median, i.e. the element at n / 2 in sorted order */
+    private static int median(final int[] values, final int n) {
+        if ( n == 0 ) throw new IllegalArgumentException("Array cannot have size 0");
+        final int[] sorted = Arrays.copyOf(values, n);
+        Arrays.sort(sorted);
+        return sorted[n / 2];
+    }
+
     /**
      * Get the ploidy of this hom-ref block.
      * @return
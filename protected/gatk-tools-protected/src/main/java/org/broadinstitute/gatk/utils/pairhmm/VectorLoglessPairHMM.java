@@ -212,8 +212,9 @@ public class VectorLoglessPairHMM extends JNILoglessPairHMM {
     public void computeLikelihoods(final ReadLikelihoods.Matrix<Haplotype> likelihoods, final List<GATKSAMRecord> processedReads, final Map<GATKSAMRecord, byte[]> gcp) {
         if (processedReads.isEmpty())
             return;
+        final long startNanos = System.nanoTime();
         if (doProfiling)
-            startTime = System.nanoTime();
+            startTime = startNanos;
         int readListSize = processedReads.size();
         int numHaplotypes = likelihoods.alleleCount();
         JNIReadDataHolderClass[] readDataArray = new JNIReadDataHolderClass[readListSize];
@@ -257,6 +258,7 @@ public class VectorLoglessPairHMM extends JNILoglessPairHMM {
                 pairHMMSetupTime += threadLocalSetupTimeDiff;
             }
         }
+        recordMetrics(startNanos, readListSize * numHaplotypes);
     }
 
     /**
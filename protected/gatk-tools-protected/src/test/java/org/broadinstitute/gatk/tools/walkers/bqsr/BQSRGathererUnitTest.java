@@ -57,6 +57,7 @@ import org.broadinstitute.gatk.utils.report.GATKReport;
 import org.broadinstitute.gatk.utils.report.GATKReportTable;
 import org.broadinstitute.gatk.engine.recalibration.RecalUtils;
 import org.testng.Assert;
+import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
 import java.io.BufferedWriter;
@@ -116,6 +117,26 @@ public class BQSRGathererUnitTest extends BaseTest {
         testReports(recal_original, output);
     }
 
+    @DataProvider(name = "GatherLimits")
+    public Object[][] makeGatherLimits() {
+        return new Object[][]{ {1, 1}, {1, 4}, {3, 1}, {3, 2}, {8, 8} };
+    }
+
+    @Test(dataProvider = "GatherLimits")
+    public void testGatherBQSRWithLimits(final int nThreads, final int maxReportsInMemory) {
+        final BQSRGatherer gatherer = new BQSRGatherer(nThreads, maxReportsInMemory);
+        final File output = BaseTest.createTempFile("BQSRgathererTest", ".table");
+
+        gatherer.gather(Arrays.asList(recal1, recal2, recal3, recal4, recal5), output);
+
+        testReports(recal_original, output);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testGatherRequiresRoomForAReport() {
+        new BQSRGatherer(2, 0);
+    }
+
     @Test
     public void testGatherBQSRWithEmptyFile() {
         final BQSRGatherer gatherer = new BQSRGatherer();
@@ -62,11 +62,20 @@ import org.broadinstitute.gatk.utils.GenomeLocParser;
 import org.broadinstitute.gatk.utils.sam.ArtificialSAMUtils;
 import htsjdk.variant.variantcontext.Allele;
 import htsjdk.variant.variantcontext.Genotype;
+import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
 
 import static org.testng.AssertJUnit.assertTrue;
 
@@ -130,5 +139,198 @@ public class ContEstUnitTest extends BaseTest {
                 toolKit);
     }
 
+    private static final double PRECISION = 0.1;
+    private static final double BETA_THRESHOLD = 0.95;
+    private static final String[] NAMES = {"sample1", "sample2"};
+    private static final String[] POPULATIONS = {"EUR", "AFR"};
 
+    /**
+     * the likelihoods of the bases of a site, one base at a time, as ContaminationEstimate used to compute them
+     */
+    private static double[] perBaseLikelihoods(int binCount, double maf, int[] bases, byte[] quals, int arrayAllele, int hapmapAlt) {
+        double[] bins = new double[binCount];
+        if (maf == 0) maf = 0.00001;
+        for (int i = 0; i < bases.length; i++) {
+            double epsilon = Math.pow(10.0, -1.0 * (quals[i] / 10.0));
+            for (int index = 0; index < bins.length; index++) {
+                double contaminationRate = (1.0 - (double) index / (double) bins.length);
+                if (bases[i] == arrayAllele) {
+                    bins[index] += Math.log((1.0 - contaminationRate) * (1.0 - epsilon) +
+                            contaminationRate * ((maf) * (1.0 - epsilon) + (1.0 - maf) * (epsilon / 3.0)));
+                } else if (bases[i] == hapmapAlt) {
+                    bins[index] += Math.log((1.0 - contaminationRate) * (epsilon / 3.0) +
+                            contaminationRate * ((maf) * (epsilon / 3.0) + (1.0 - maf) * (1.0 - epsilon)));
+                }
+            }
+        }
+        return bins;
+    }
+
+    private static int[] qualityHistogram(int[] bases, byte[] quals) {
+        int[] histogram = new int[ContaminationEstimate.ALLELE_COUNT * ContaminationEstimate.QUAL_COUNT];
+        for (int i = 0; i < bases.length; i++)
+            histogram[ContaminationEstimate.histogramOffset(bases[i], quals[i])]++;
+        return histogram;
+    }
+
+    @Test
+    public void testQualityHistogramMatchesPerBaseLikelihoods() {
+        final Random random = new Random(42);
+        final ContaminationEstimate estimate = new ContaminationEstimate(PRECISION);
+        for (double maf : new double[]{0.0, 0.01, 0.25, 0.5, 0.99}) {
+            for (int trial = 0; trial < 10; trial++) {
+                int[] bases = new int[1 + random.nextInt(200)];
+                byte[] quals = new byte[bases.length];
+                for (int i = 0; i < bases.length; i++) {
+                    bases[i] = random.nextInt(ContaminationEstimate.ALLELE_COUNT);
+                    quals[i] = (byte) random.nextInt(ContaminationEstimate.QUAL_COUNT);
+                }
+
+                double[] expected = perBaseLikelihoods(estimate.getBinCount(), maf, bases, quals, 3, 0);
+                double[] bins = new double[estimate.getBinCount()];
+                estimate.addLikelihoods(bins, maf, qualityHistogram(bases, quals), 3, 0, "POP");
+                for (int index = 0; index < bins.length; index++)
+                    Assert.assertEquals(bins[index], expected[index], 1e-9, "bin " + index + " with maf " + maf);
+            }
+        }
+    }
+
+    /**
+     * the inputs of a site where each sample is hom var for T and the population major allele is A; when mismatched,
+     * most of the bases of a sample are As, which makes the site a trimming candidate
+     */
+    private class TestSite {
+        final GenomeLoc location;
+        final int[][] qualityHistograms = new int[NAMES.length][];
+        final int[][] alleleCounts = new int[NAMES.length][ContaminationEstimate.ALLELE_COUNT];
+        final int[] depths = new int[NAMES.length];
+        final int[] minorAlleles;
+        final int[] majorAlleles = {0, 0};
+        final double[] minorAlleleFrequencies;
+
+        TestSite(Random random, int position, boolean mismatched) {
+            location = parser.createGenomeLoc(header.getSequenceDictionary().getSequence(0).getSequenceName(), position, position);
+            for (int name = 0; name < NAMES.length; name++) {
+                int[] bases = new int[10 + random.nextInt(40)];
+                byte[] quals = new byte[bases.length];
+                for (int i = 0; i < bases.length; i++) {
+                    double u = random.nextDouble();
+                    bases[i] = u < 0.05 ? 1 : (mismatched ? u < 0.3 : u < 0.9) ? 3 : 0;
+                    quals[i] = (byte) (5 + random.nextInt(36));
+                    alleleCounts[name][bases[i]]++;
+                }
+                qualityHistograms[name] = qualityHistogram(bases, quals);
+                depths[name] = bases.length + random.nextInt(3);
+            }
+            // the second population only has the site at every other position
+            minorAlleles = new int[]{3, position % 2 == 0 ? 3 : -1};
+            minorAlleleFrequencies = new double[]{random.nextDouble() * 0.5, random.nextDouble() * 0.5};
+        }
+
+        ContaminationResults.SiteObservations toObservations() {
+            return new ContaminationResults.SiteObservations(location, qualityHistograms, alleleCounts, depths,
+                    minorAlleles, majorAlleles, minorAlleleFrequencies);
+        }
+    }
+
+    private List<TestSite> makeSites(int count, int mismatchedEvery) {
+        final Random random = new Random(17);
+        List<TestSite> sites = new ArrayList<TestSite>();
+        for (int position = 1; position <= count; position++)
+            sites.add(new TestSite(random, position, position % mismatchedEvery == 0));
+        return sites;
+    }
+
+    private static String report(ContaminationResults results, double fractionToTrim) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes);
+        results.outputReport(PRECISION, out, fractionToTrim, 0);
+        out.close();
+        return bytes.toString();
+    }
+
+    @Test
+    public void testTrimmingMatchesSortingEverySite() {
+        final double fractionToTrim = 0.05;
+        final List<TestSite> sites = makeSites(400, 7);
+        final ContaminationResults results = new ContaminationResults(PRECISION, NAMES, POPULATIONS, BETA_THRESHOLD);
+        for (TestSite site : sites)
+            results.add(site.toObservations());
+
+        // the report made by sorting every site of a cell by p(f>=0.5), then trimming the first candidates
+        final ContaminationEstimate estimate = new ContaminationEstimate(PRECISION);
+        final String pm = "%3." + Math.round(Math.log10(1 / PRECISION)) + "f";
+        final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        final PrintStream out = new PrintStream(expected);
+        out.println("name\tpopulation\tpopulation_fit\tcontamination\tconfidence_interval_95_width\tconfidence_interval_95_low\tconfidence_interval_95_high\tsites");
+        for (Map.Entry<String, Map<String, ContaminationStats>> entry : results.getStats().entrySet()) {
+            final int name = Arrays.asList(NAMES).indexOf(entry.getKey());
+            for (ContaminationStats stats : entry.getValue().values()) {
+                final int pop = Arrays.asList(POPULATIONS).indexOf(stats.getPopulationName());
+                final List<ContaminationResults.ContaminationData> data = new ArrayList<ContaminationResults.ContaminationData>();
+                for (TestSite site : sites) {
+                    final int minor = site.minorAlleles[pop];
+                    if (minor < 0) continue;
+                    final int major = site.majorAlleles[pop];
+                    final double[] bins = new double[estimate.getBinCount()];
+                    estimate.addLikelihoods(bins, site.minorAlleleFrequencies[pop], site.qualityHistograms[name], minor, major, stats.getPopulationName());
+                    data.add(new ContaminationResults.ContaminationData(site.location, site.alleleCounts[name][minor], site.alleleCounts[name][major], bins));
+                }
+                Collections.sort(data);
+
+                final int maxTrim = (int) Math.floor((double) data.size() * fractionToTrim);
+                int trimmed = 0;
+                int candidates = 0;
+                for (Iterator<ContaminationResults.ContaminationData> i = data.iterator(); i.hasNext(); ) {
+                    final ContaminationResults.ContaminationData x = i.next();
+                    if (x.getP() >= BETA_THRESHOLD) {
+                        candidates++;
+                        if (trimmed < maxTrim) {
+                            i.remove();
+                            trimmed++;
+                        }
+                    }
+                }
+                Assert.assertTrue(trimmed > 0 && trimmed < candidates, "the trimming of " + entry.getKey() + " " + stats.getPopulationName() + " should be limited by the trim fraction");
+
+                final double[] sum = new double[estimate.getBinCount()];
+                for (ContaminationResults.ContaminationData x : data)
+                    for (int i = 0; i < sum.length; i++) sum[i] += x.getBins()[i];
+                final ContaminationEstimate.ConfidenceInterval interval = new ContaminationEstimate.ConfidenceInterval(sum, 0.95);
+                out.println(String.format("%s\t%s\t%s\t" + pm + "\t" + pm + "\t" + pm + "\t" + pm + "\t" + "%d",
+                        entry.getKey(), stats.getPopulationName(), "n/a", interval.getContamination(),
+                        (interval.getStop() - interval.getStart()), interval.getStart(), interval.getStop(), data.size()));
+            }
+        }
+        out.close();
+
+        Assert.assertEquals(report(results, fractionToTrim), expected.toString());
+    }
+
+    @Test
+    public void testAddingSitesMatchesTreeReduce() {
+        final List<TestSite> sites = makeSites(400, 7);
+        final ContaminationResults serial = new ContaminationResults(PRECISION, NAMES, POPULATIONS, BETA_THRESHOLD);
+        final ContaminationResults lhs = new ContaminationResults(PRECISION, NAMES, POPULATIONS, BETA_THRESHOLD);
+        final ContaminationResults rhs = new ContaminationResults(PRECISION, NAMES, POPULATIONS, BETA_THRESHOLD);
+        for (int i = 0; i < sites.size(); i++) {
+            serial.add(sites.get(i).toObservations());
+            (i < sites.size() / 2 ? lhs : rhs).add(sites.get(i).toObservations());
+        }
+        final ContaminationResults merged = new ContEst().treeReduce(lhs, rhs);
+
+        Assert.assertEquals(report(merged, 0.05), report(serial, 0.05));
+        for (Map.Entry<String, Map<String, ContaminationStats>> entry : serial.getStats().entrySet()) {
+            for (ContaminationStats expected : entry.getValue().values()) {
+                final ContaminationStats actual = merged.getStats().get(entry.getKey()).get(expected.getPopulationName());
+                Assert.assertEquals(actual.getNumberOfSites(), expected.getNumberOfSites());
+                Assert.assertEquals(actual.getBasesMatching(), expected.getBasesMatching());
+                Assert.assertEquals(actual.getBasesMismatching(), expected.getBasesMismatching());
+                Assert.assertEquals(actual.getBasesOther(), expected.getBasesOther());
+                Assert.assertEquals(actual.getMinorAlleleFrequency(), expected.getMinorAlleleFrequency(), 1e-12);
+                for (int i = 0; i < expected.getBins().length; i++)
+                    Assert.assertEquals(actual.getBins()[i], expected.getBins()[i], 1e-9);
+            }
+        }
+    }
 }
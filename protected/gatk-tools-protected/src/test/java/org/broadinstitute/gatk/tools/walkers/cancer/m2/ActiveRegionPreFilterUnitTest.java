@@ -0,0 +1,200 @@
+/*
+* By downloading the PROGRAM you agree to the following terms of use:
+* 
+* BROAD INSTITUTE
+* SOFTWARE LICENSE AGREEMENT
+* FOR ACADEMIC NON-COMMERCIAL RESEARCH PURPOSES ONLY
+* 
+* This Agreement is made between the Broad Institute, Inc. with a principal address at 415 Main Street, Cambridge, MA 02142 ("BROAD") and the LICENSEE and is effective at the date the downloading is completed ("EFFECTIVE DATE").
+* 
+* WHEREAS, LICENSEE desires to license the PROGRAM, as defined hereinafter, and BROAD wishes to have this PROGRAM utilized in the public interest, subject only to the royalty-free, nonexclusive, nontransferable license rights of the United States Government pursuant to 48 CFR 52.227-14; and
+* WHEREAS, LICENSEE desires to license the PROGRAM and BROAD desires to grant a license on the following terms and conditions.
+* NOW, THEREFORE, in consideration of the promises and covenants made herein, the parties hereto agree as follows:
+* 
+* 1. DEFINITIONS
+* 1.1 PROGRAM shall mean copyright in the object code and source code known as GATK3 and related documentation, if any, as they exist on the EFFECTIVE DATE and can be downloaded from http://www.broadinstitute.org/gatk on the EFFECTIVE DATE.
+* 
+* 2. LICENSE
+* 2.1 Grant. Subject to the terms of this Agreement, BROAD hereby grants to LICENSEE, solely for academic non-commercial research purposes, a non-exclusive, non-transferable license to: (a) download, execute and display the PROGRAM and (b) create bug fixes and modify the PROGRAM. LICENSEE hereby automatically grants to BROAD a non-exclusive, royalty-free, irrevocable license to any LICENSEE bug fixes or modifications to the PROGRAM with unlimited rights to sublicense and/or distribute.  LICENSEE agrees to provide any such modifications and bug fixes to BROAD promptly upon their creation.
+* The LICENSEE may apply the PROGRAM in a pipeline to data owned by users other than the LICENSEE and provide these users the results of the PROGRAM provided LICENSEE does so for academic non-commercial purposes only. For clarification purposes, academic sponsored research is not a commercial use under the terms of this Agreement.
+* 2.2 No Sublicensing or Additional Rights. LICENSEE shall not sublicense or distribute the PROGRAM, in whole or in part, without prior written permission from BROAD. LICENSEE shall ensure that all of its users agree to the terms of this Agreement. LICENSEE further agrees that it shall not put the PROGRAM on a network, server, or other similar technology that may be accessed by anyone other than the LICENSEE and its employees and users who have agreed to the terms of this agreement.
+* 2.3 License Limitations. Nothing in this Agreement shall be construed to confer any rights upon LICENSEE by implication, estoppel, or otherwise to any computer software, trademark, intellectual property, or patent rights of BROAD, or of any other entity, except as expressly granted herein. LICENSEE agrees that the PROGRAM, in whole or part, shall not be used for any commercial purpose, including without limitation, as the basis of a commercial software or hardware product or to provide services. LICENSEE further agrees that the PROGRAM shall not be copied or otherwise adapted in order to circumvent the need for obtaining a license for use of the PROGRAM.
+* 
+* 3. PHONE-HOME FEATURE
+* LICENSEE expressly acknowledges that the PROGRAM contains an embedded automatic reporting system ("PHONE-HOME") which is enabled by default upon download. Unless LICENSEE requests disablement of PHONE-HOME, LICENSEE agrees that BROAD may collect limited information transmitted by PHONE-HOME regarding LICENSEE and its use of the PROGRAM.  Such information shall include LICENSEE'S user identification, version number of the PROGRAM and tools being run, mode of analysis employed, and any error reports generated during run-time.  Collection of such information is used by BROAD solely to monitor usage rates, fulfill reporting requirements to BROAD funding agencies, drive improvements to the PROGRAM, and facilitate adjustments to PROGRAM-related documentation.
+* 
+* 4. OWNERSHIP OF INTELLECTUAL PROPERTY
+* LICENSEE acknowledges that title to the PROGRAM shall remain with BROAD. The PROGRAM is marked with the following BROAD copyright notice and notice of attribution to contributors. LICENSEE shall retain such notice on all copies. LICENSEE agrees to include appropriate attribution if any results obtained from use of the PROGRAM are included in any publication.
+* Copyright 2012-2016 Broad Institute, Inc.
+* Notice of attribution: The GATK3 program was made available through the generosity of Medical and Population Genetics program at the Broad Institute, Inc.
+* LICENSEE shall not use any trademark or trade name of BROAD, or any variation, adaptation, or abbreviation, of such marks or trade names, or any names of officers, faculty, students, employees, or agents of BROAD except as states above for attribution purposes.
+* 
+* 5. INDEMNIFICATION
+* LICENSEE shall indemnify, defend, and hold harmless BROAD, and their respective officers, faculty, students, employees, associated investigators and agents, and their respective successors, heirs and assigns, (Indemnitees), against any liability, damage, loss, or expense (including reasonable attorneys fees and expenses) incurred by or imposed upon any of the Indemnitees in connection with any claims, suits, actions, demands or judgments arising out of any theory of liability (including, without limitation, actions in the form of tort, warranty, or strict liability and regardless of whether such action has any factual basis) pursuant to any right or license granted under this Agreement.
+* 
+* 6. NO REPRESENTATIONS OR WARRANTIES
+* THE PROGRAM IS DELIVERED AS IS. BROAD MAKES NO REPRESENTATIONS OR WARRANTIES OF ANY KIND CONCERNING THE PROGRAM OR THE COPYRIGHT, EXPRESS OR IMPLIED, INCLUDING, WITHOUT LIMITATION, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NONINFRINGEMENT, OR THE ABSENCE OF LATENT OR OTHER DEFECTS, WHETHER OR NOT DISCOVERABLE. BROAD EXTENDS NO WARRANTIES OF ANY KIND AS TO PROGRAM CONFORMITY WITH WHATEVER USER MANUALS OR OTHER LITERATURE MAY BE ISSUED FROM TIME TO TIME.
+* IN NO EVENT SHALL BROAD OR ITS RESPECTIVE DIRECTORS, OFFICERS, EMPLOYEES, AFFILIATED INVESTIGATORS AND AFFILIATES BE LIABLE FOR INCIDENTAL OR CONSEQUENTIAL DAMAGES OF ANY KIND, INCLUDING, WITHOUT LIMITATION, ECONOMIC DAMAGES OR INJURY TO PROPERTY AND LOST PROFITS, REGARDLESS OF WHETHER BROAD SHALL BE ADVISED, SHALL HAVE OTHER REASON TO KNOW, OR IN FACT SHALL KNOW OF THE POSSIBILITY OF THE FOREGOING.
+* 
+* 7. ASSIGNMENT
+* This Agreement is personal to LICENSEE and any rights or obligations assigned by LICENSEE without the prior written consent of BROAD shall be null and void.
+* 
+* 8. MISCELLANEOUS
+* 8.1 Export Control. LICENSEE gives assurance that it will comply with all United States export control laws and regulations controlling the export of the PROGRAM, including, without limitation, all Export Administration Regulations of the United States Department of Commerce. Among other things, these laws and regulations prohibit, or require a license for, the export of certain types of software to specified countries.
+* 8.2 Termination. LICENSEE shall have the right to terminate this Agreement for any reason upon prior written notice to BROAD. If LICENSEE breaches any provision hereunder, and fails to cure such breach within thirty (30) days, BROAD may terminate this Agreement immediately. Upon termination, LICENSEE shall provide BROAD with written assurance that the original and all copies of the PROGRAM have been destroyed, except that, upon prior written authorization from BROAD, LICENSEE may retain a copy for archive purposes.
+* 8.3 Survival. The following provisions shall survive the expiration or termination of this Agreement: Articles 1, 3, 4, 5 and Sections 2.2, 2.3, 7.3, and 7.4.
+* 8.4 Notice. Any notices under this Agreement shall be in writing, shall specifically refer to this Agreement, and shall be sent by hand, recognized national overnight courier, confirmed facsimile transmission, confirmed electronic mail, or registered or certified mail, postage prepaid, return receipt requested. All notices under this Agreement shall be deemed effective upon receipt.
+* 8.5 Amendment and Waiver; Entire Agreement. This Agreement may be amended, supplemented, or otherwise modified only by means of a written instrument signed by all parties. Any waiver of any rights or failure to act in a specific instance shall relate only to such instance and shall not be construed as an agreement to waive any rights or fail to act in any other instance, whether or not similar. This Agreement constitutes the entire agreement among the parties with respect to its subject matter and supersedes prior agreements or understandings between the parties relating to its subject matter.
+* 8.6 Binding Effect; Headings. This Agreement shall be binding upon and inure to the benefit of the parties and their respective permitted successors and assigns. All headings are for convenience only and shall not affect the meaning of any provision of this Agreement.
+* 8.7 Governing Law. This Agreement shall be construed, governed, interpreted and applied in accordance with the internal laws of the Commonwealth of Massachusetts, U.S.A., without regard to conflict of laws principles.
+*/
+
+
+
+package org.broadinstitute.gatk.tools.walkers.cancer.m2;
+
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.VariantContextBuilder;
+import org.broadinstitute.gatk.utils.GenomeLoc;
+import org.broadinstitute.gatk.utils.GenomeLocParser;
+import org.broadinstitute.gatk.utils.Utils;
+import org.broadinstitute.gatk.utils.commandline.RodBinding;
+import org.broadinstitute.gatk.utils.pileup.ReadBackedPileup;
+import org.broadinstitute.gatk.utils.pileup.ReadBackedPileupImpl;
+import org.broadinstitute.gatk.utils.refdata.RODRecordListImpl;
+import org.broadinstitute.gatk.utils.refdata.RefMetaDataTracker;
+import org.broadinstitute.gatk.utils.refdata.utils.GATKFeature;
+import org.broadinstitute.gatk.utils.sam.ArtificialSAMUtils;
+import org.broadinstitute.gatk.utils.sam.GATKSAMRecord;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class ActiveRegionPreFilterUnitTest {
+    private static final double TUMOR_LOD_THRESHOLD = 6.3;
+    private static final int READ_START = 95;
+    private static final int OFFSET = 5;
+    private static final byte REF_BASE = 'A';
+
+    private SAMFileHeader header;
+    private GenomeLocParser parser;
+    private GenomeLoc locus;
+
+    @BeforeClass
+    public void setup() {
+        header = ArtificialSAMUtils.createArtificialSamHeader(1, 1, 1000);
+        parser = new GenomeLocParser(header.getSequenceDictionary());
+        locus = parser.createGenomeLoc("chr1", READ_START + OFFSET);
+    }
+
+    private GATKSAMRecord makeRead(final int i, final byte base, final int qual, final String cigar) {
+        final int length = 10;
+        final byte[] bases = Utils.dupBytes(REF_BASE, length);
+        bases[OFFSET] = base;
+        final byte[] quals = Utils.dupBytes((byte) qual, length);
+        return ArtificialSAMUtils.createArtificialRead(header, "read" + i, 0, READ_START, bases, quals, cigar);
+    }
+
+    private ReadBackedPileup makePileup(final int nRef, final int nAlt, final int altQual) {
+        final List<GATKSAMRecord> reads = new ArrayList<>();
+        for ( int i = 0; i < nRef; i++ )
+            reads.add(makeRead(i, REF_BASE, 30, "10M"));
+        for ( int i = 0; i < nAlt; i++ )
+            reads.add(makeRead(nRef + i, (byte) 'C', altQual, "10M"));
+        return new ReadBackedPileupImpl(locus, reads, OFFSET);
+    }
+
+    @DataProvider(name = "SNVEvidence")
+    public Object[][] makeSNVEvidence() {
+        return new Object[][]{
+                // a single high quality read can't reach the threshold, two can
+                {20, 1, 30, ActiveRegionPreFilter.Outcome.LOW_TUMOR_EVIDENCE},
+                {20, 2, 30, ActiveRegionPreFilter.Outcome.PASS},
+                // low quality mismatches need more reads
+                {20, 2, 15, ActiveRegionPreFilter.Outcome.LOW_TUMOR_EVIDENCE},
+                {20, 4, 15, ActiveRegionPreFilter.Outcome.PASS},
+                {20, 0, 30, ActiveRegionPreFilter.Outcome.LOW_TUMOR_EVIDENCE},
+        };
+    }
+
+    @Test(dataProvider = "SNVEvidence")
+    public void testSNVEvidence(final int nRef, final int nAlt, final int altQual, final ActiveRegionPreFilter.Outcome expected) {
+        final ActiveRegionPreFilter filter = new ActiveRegionPreFilter(parser, TUMOR_LOD_THRESHOLD, null);
+        filter.addTumorPileup(locus, makePileup(nRef, nAlt, altQual), REF_BASE);
+        Assert.assertEquals(filter.test(parser.createGenomeLoc("chr1", 50, 150), null), expected);
+    }
+
+    @Test
+    public void testIndelEvidenceAlwaysPasses() {
+        final ActiveRegionPreFilter filter = new ActiveRegionPreFilter(parser, TUMOR_LOD_THRESHOLD, null);
+        final List<GATKSAMRecord> reads = new ArrayList<>();
+        reads.add(makeRead(0, REF_BASE, 30, "10M"));
+        // the pileup element at the offset is the last base before the deletion
+        reads.add(makeRead(1, REF_BASE, 30, "6M2D4M"));
+        filter.addTumorPileup(locus, new ReadBackedPileupImpl(locus, reads, OFFSET), REF_BASE);
+        Assert.assertEquals(filter.test(parser.createGenomeLoc("chr1", 50, 150), null), ActiveRegionPreFilter.Outcome.PASS);
+    }
+
+    @Test
+    public void testEvidenceIsConsumedPerRegion() {
+        final ActiveRegionPreFilter filter = new ActiveRegionPreFilter(parser, TUMOR_LOD_THRESHOLD, null);
+        filter.addTumorPileup(locus, makePileup(20, 3, 30), REF_BASE);
+
+        // a region not covering the evidence neither uses nor removes it
+        Assert.assertEquals(filter.test(parser.createGenomeLoc("chr1", 200, 300), null), ActiveRegionPreFilter.Outcome.LOW_TUMOR_EVIDENCE);
+        Assert.assertEquals(filter.test(parser.createGenomeLoc("chr1", READ_START + OFFSET, 150), null), ActiveRegionPreFilter.Outcome.PASS);
+        // once tested, the evidence is gone
+        Assert.assertEquals(filter.test(parser.createGenomeLoc("chr1", 50, 150), null), ActiveRegionPreFilter.Outcome.LOW_TUMOR_EVIDENCE);
+    }
+
+    private RefMetaDataTracker makePanelOfNormalsTracker(final RodBinding<VariantContext> panelOfNormals, final GenomeLoc site) {
+        final VariantContext vc = new VariantContextBuilder("pon", site.getContig(), site.getStart(), site.getStop(),
+                Arrays.asList(Allele.create(REF_BASE, true), Allele.create((byte) 'C'))).make();
+        final List<GATKFeature> features = Collections.<GATKFeature>singletonList(new GATKFeature.TribbleGATKFeature(parser, vc, panelOfNormals.getName()));
+        return new RefMetaDataTracker(Collections.singletonList(new RODRecordListImpl(panelOfNormals.getName(), features, site)));
+    }
+
+    @Test
+    public void testPanelOfNormalsSitesAreIgnored() {
+        final RodBinding<VariantContext> panelOfNormals = new RodBinding<>(VariantContext.class, "normal_panel");
+        final RefMetaDataTracker tracker = makePanelOfNormalsTracker(panelOfNormals, locus);
+        final GenomeLoc region = parser.createGenomeLoc("chr1", 50, 150);
+
+        // enough evidence, but only at a panel of normals site
+        final ActiveRegionPreFilter filter = new ActiveRegionPreFilter(parser, TUMOR_LOD_THRESHOLD, Collections.singletonList(panelOfNormals));
+        filter.addTumorPileup(locus, makePileup(20, 3, 30), REF_BASE);
+        Assert.assertEquals(filter.test(region, tracker), ActiveRegionPreFilter.Outcome.PANEL_OF_NORMALS);
+
+        // too little evidence at the panel of normals site is still low tumor evidence
+        filter.addTumorPileup(locus, makePileup(20, 1, 30), REF_BASE);
+        Assert.assertEquals(filter.test(region, tracker), ActiveRegionPreFilter.Outcome.LOW_TUMOR_EVIDENCE);
+
+        // enough evidence at another position in the region passes
+        filter.addTumorPileup(locus, makePileup(20, 3, 30), REF_BASE);
+        filter.addTumorPileup(parser.createGenomeLoc("chr1", 120), makePileup(20, 3, 30), REF_BASE);
+        Assert.assertEquals(filter.test(region, tracker), ActiveRegionPreFilter.Outcome.PASS);
+
+        // without the panel of normals, the site is used
+        final ActiveRegionPreFilter noPanelFilter = new ActiveRegionPreFilter(parser, TUMOR_LOD_THRESHOLD, null);
+        noPanelFilter.addTumorPileup(locus, makePileup(20, 3, 30), REF_BASE);
+        Assert.assertEquals(noPanelFilter.test(region, tracker), ActiveRegionPreFilter.Outcome.PASS);
+    }
+
+    @Test
+    public void testSkippedRegionCounts() {
+        final ActiveRegionPreFilter filter = new ActiveRegionPreFilter(parser, TUMOR_LOD_THRESHOLD, null);
+        filter.recordSkippedRegion(ActiveRegionPreFilter.Outcome.LOW_TUMOR_EVIDENCE);
+        filter.recordSkippedRegion(ActiveRegionPreFilter.Outcome.LOW_TUMOR_EVIDENCE);
+        filter.recordSkippedRegion(ActiveRegionPreFilter.Outcome.PANEL_OF_NORMALS);
+        Assert.assertEquals(filter.getSkippedRegionCount(ActiveRegionPreFilter.Outcome.LOW_TUMOR_EVIDENCE), 2);
+        Assert.assertEquals(filter.getSkippedRegionCount(ActiveRegionPreFilter.Outcome.PANEL_OF_NORMALS), 1);
+    }
+}
@@ -121,6 +121,14 @@ public class MuTect2IntegrationTest extends WalkerTest {
         M2Test(CCLE_MICRO_TUMOR_BAM, CCLE_MICRO_NORMAL_BAM, CCLE_MICRO_INTERVALS_FILE, "", "dd3bb9526c85c0aed39545c4639ff138");
     }
 
+    /**
+     * The active region pre-filter only skips regions that can't produce a call, so it must not change the output
+     */
+    @Test
+    public void testMicroRegressionWithoutActiveRegionPreFilter() {
+        M2Test(CCLE_MICRO_TUMOR_BAM, CCLE_MICRO_NORMAL_BAM, CCLE_MICRO_INTERVALS_FILE, "--disable_active_region_prefilter", "dd3bb9526c85c0aed39545c4639ff138");
+    }
+
     /**
      * Tests all the True Positive sites in the DREAM 3 data set.  We don't necessarily call
      * all of these (e.g. we have some FNs) but it's the full set of things we want to be able
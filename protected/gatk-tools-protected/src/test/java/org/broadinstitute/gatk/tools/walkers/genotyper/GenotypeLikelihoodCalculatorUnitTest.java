@@ -170,6 +170,48 @@ public class GenotypeLikelihoodCalculatorUnitTest {
     }
 
 
+    @Test
+    public void testInstancesAreCachedPerThread() throws InterruptedException {
+        final GenotypeLikelihoodCalculator calculator = GenotypeLikelihoodCalculators.getInstance(3, 4);
+        Assert.assertSame(GenotypeLikelihoodCalculators.getInstance(3, 4), calculator);
+        Assert.assertNotSame(GenotypeLikelihoodCalculators.getInstance(3, 5), calculator);
+
+        final GenotypeLikelihoodCalculator[] otherThreadCalculator = new GenotypeLikelihoodCalculator[1];
+        final Thread otherThread = new Thread(() -> otherThreadCalculator[0] = GenotypeLikelihoodCalculators.getInstance(3, 4));
+        otherThread.start();
+        otherThread.join();
+        Assert.assertNotNull(otherThreadCalculator[0]);
+        Assert.assertNotSame(otherThreadCalculator[0], calculator);
+    }
+
+    @Test(dependsOnMethods = "testPloidyAndMaximumAllele")
+    public void testReusedInstanceMatchesNewInstance() throws InterruptedException {
+        final ReadLikelihoods<Allele> readLikelihoods = ReadLikelihoodsUnitTester.readLikelihoods(4, new int[] { 100, 3, 0, 40 });
+        final GenotypeLikelihoodCalculator reused = GenotypeLikelihoodCalculators.getInstance(4, 4);
+        for (int s = 0; s < readLikelihoods.sampleCount(); s++) {
+            final ReadLikelihoods.Matrix<Allele> sampleLikelihoods = readLikelihoods.sampleMatrix(s);
+            final double[] reusedResult = reused.genotypeLikelihoods(sampleLikelihoods).getAsVector();
+            // a different thread starts from an empty cache so it gets a fresh calculator.
+            final double[][] freshResult = new double[1][];
+            final Thread otherThread = new Thread(() -> freshResult[0] = GenotypeLikelihoodCalculators.getInstance(4, 4).genotypeLikelihoods(sampleLikelihoods).getAsVector());
+            otherThread.start();
+            otherThread.join();
+            Assert.assertEquals(reusedResult, freshResult[0]);
+        }
+    }
+
+    @Test
+    public void testTableGrowthWithLargePloidy() {
+        Assert.assertEquals(GenotypeLikelihoodCalculators.getInstance(200, 2).genotypeCount(), calculateGenotypeCount(200, 2));
+        Assert.assertEquals(GenotypeLikelihoodCalculators.getInstance(2, 30).genotypeCount(), calculateGenotypeCount(2, 30));
+        Assert.assertEquals(GenotypeLikelihoodCalculators.getInstance(20, 4).genotypeCount(), calculateGenotypeCount(20, 4));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testGenotypeCountOverflow() {
+        GenotypeLikelihoodCalculators.genotypeCount(200, 30);
+    }
+
     @Test
     public void testComputeMaxAcceptableAlleleCount(){
         Assert.assertEquals(1024, GenotypeLikelihoodCalculators.computeMaxAcceptableAlleleCount(1, 1024));
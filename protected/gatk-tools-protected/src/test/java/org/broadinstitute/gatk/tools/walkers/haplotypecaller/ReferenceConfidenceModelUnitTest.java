@@ -51,7 +51,10 @@
 
 package org.broadinstitute.gatk.tools.walkers.haplotypecaller;
 
+import htsjdk.samtools.Cigar;
+import htsjdk.samtools.CigarElement;
 import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.TextCigarCodec;
 import htsjdk.variant.variantcontext.Genotype;
 import htsjdk.variant.variantcontext.GenotypeLikelihoods;
 import htsjdk.variant.variantcontext.GenotypeType;
@@ -59,10 +62,12 @@ import htsjdk.variant.variantcontext.VariantContext;
 import org.broadinstitute.gatk.tools.walkers.genotyper.*;
 import org.broadinstitute.gatk.utils.*;
 import org.broadinstitute.gatk.utils.activeregion.ActiveRegion;
+import org.broadinstitute.gatk.utils.contexts.AlignmentContext;
 import org.broadinstitute.gatk.utils.genotyper.ReadLikelihoods;
 import org.broadinstitute.gatk.utils.genotyper.SampleList;
 import org.broadinstitute.gatk.utils.genotyper.SampleListUtils;
 import org.broadinstitute.gatk.utils.haplotype.Haplotype;
+import org.broadinstitute.gatk.utils.locusiterator.LocusIteratorByState;
 import org.broadinstitute.gatk.utils.pileup.ReadBackedPileup;
 import org.broadinstitute.gatk.utils.pileup.ReadBackedPileupImpl;
 import org.broadinstitute.gatk.utils.sam.ArtificialSAMUtils;
@@ -169,6 +174,96 @@ public class ReferenceConfidenceModelUnitTest extends BaseTest {
         }
     }
 
+    @DataProvider(name = "RefVsAnyColumnsData")
+    public Object[][] makeRefVsAnyColumnsData() {
+        final List<Object[]> tests = new ArrayList<>();
+        for ( final int ploidy : Arrays.asList(1, 2, 3) )
+            for ( final int nReads : Arrays.asList(1, 10, 60) )
+                tests.add(new Object[]{ploidy, nReads});
+        return tests.toArray(new Object[][]{});
+    }
+
+    @Test(dataProvider = "RefVsAnyColumnsData")
+    public void testRefVsAnyColumnsMatchPileups(final int ploidy, final int nReads) {
+        final Random random = Utils.getRandomGenerator();
+        final int refLength = 200;
+        final int globalRefOffset = 20;
+        final byte[] ref = new byte[refLength];
+        for ( int i = 0; i < refLength; i++ )
+            ref[i] = BaseUtils.baseIndexToSimpleBase(random.nextInt(4));
+        final GenomeLoc span = parser.createGenomeLoc("chr1", 1 + globalRefOffset, refLength - globalRefOffset);
+
+        final List<String> cigars = Arrays.asList("50M", "10S40M", "40M10S", "20M3D30M", "20M2I28M", "2H5S20M1I1D20M3S",
+                "15M5N35M", "25M1D1I25M", "10M2I3D10M1I20M", "1I49M");
+        final List<GATKSAMRecord> reads = new ArrayList<>();
+        for ( int i = 0; i < nReads; i++ ) {
+            final Cigar cigar = TextCigarCodec.decode(cigars.get(random.nextInt(cigars.size())));
+            final int start = 1 + random.nextInt(refLength - cigar.getReferenceLength());
+            final byte[] bases = new byte[cigar.getReadLength()];
+            final byte[] quals = new byte[bases.length];
+            int readOffset = 0;
+            int refOffset = start - 1;
+            for ( final CigarElement element : cigar.getCigarElements() ) {
+                for ( int j = 0; j < element.getLength(); j++ ) {
+                    final boolean onRead = element.getOperator().consumesReadBases();
+                    if ( onRead ) {
+                        final boolean copyRef = element.getOperator().consumesReferenceBases() && random.nextInt(10) != 0;
+                        bases[readOffset] = copyRef ? ref[refOffset] : BaseUtils.baseIndexToSimpleBase(random.nextInt(4));
+                        quals[readOffset++] = (byte)random.nextInt(41);
+                    }
+                    if ( element.getOperator().consumesReferenceBases() )
+                        refOffset++;
+                }
+            }
+            final GATKSAMRecord read = ArtificialSAMUtils.createArtificialRead(header, "read" + i, 0, start, bases, quals, cigar.toString());
+            read.setReadGroup(rg);
+            if ( random.nextBoolean() ) {
+                // short fragments put some of the bases in the adaptor
+                read.setReadPairedFlag(true);
+                read.setMateReferenceIndex(0);
+                read.setReadNegativeStrandFlag(random.nextBoolean());
+                read.setMateAlignmentStart(start + random.nextInt(40));
+                read.setInferredInsertSize(20 + random.nextInt(40));
+            }
+            reads.add(read);
+        }
+        Collections.sort(reads, new Comparator<GATKSAMRecord>() {
+            @Override
+            public int compare(final GATKSAMRecord o1, final GATKSAMRecord o2) {
+                return o1.getAlignmentStart() - o2.getAlignmentStart();
+            }
+        });
+
+        final boolean[] isRefConfidenceSite = new boolean[span.size()];
+        Arrays.fill(isRefConfidenceSite, true);
+        final RefVsAnyColumns columns = model.calcRefVsAnyColumns(ploidy, reads, span, ref, globalRefOffset, isRefConfidenceSite);
+
+        final LocusIteratorByState libs = new LocusIteratorByState(reads.iterator(), LocusIteratorByState.NO_DOWNSAMPLING,
+                true, parser, Collections.singleton(sample), false);
+        final double log10Ploidy = MathUtils.Log10Cache.get(ploidy);
+        final int maxIndelSize = 10;
+        AlignmentContext next = libs.advanceToLocus(span.getStart(), true);
+        for ( int pos = span.getStart(); pos <= span.getStop(); pos++ ) {
+            final ReadBackedPileup pileup;
+            if ( next != null && next.getLocation().getStart() == pos ) {
+                pileup = next.getBasePileup();
+                next = libs.hasNext() ? libs.next() : null;
+            } else {
+                pileup = new ReadBackedPileupImpl(parser.createGenomeLoc("chr1", pos));
+            }
+
+            final int offset = pos - span.getStart();
+            final int refOffset = offset + globalRefOffset;
+            final RefVsAnyResult expected = model.calcGenotypeLikelihoodsOfRefVsAny(ploidy, pileup, ref[refOffset], (byte)6, null);
+            final RefVsAnyResult actual = columns.getResult(offset, log10Ploidy);
+            Assert.assertEquals(actual.AD_Ref_Any, expected.AD_Ref_Any, "AD at " + pos);
+            for ( int i = 0; i < ploidy + 1; i++ )
+                Assert.assertEquals(actual.genotypeLikelihoods[i], expected.genotypeLikelihoods[i], 0.0, "likelihood " + i + " at " + pos);
+            Assert.assertEquals(Math.min(columns.nIndelInformativeReads[offset], ReferenceConfidenceModel.MAX_N_INDEL_INFORMATIVE_READS),
+                    model.calcNIndelInformativeReads(pileup, refOffset, ref, maxIndelSize), "indel informative reads at " + pos);
+        }
+    }
+
     @Test
     public void testClose() {
         model.close();
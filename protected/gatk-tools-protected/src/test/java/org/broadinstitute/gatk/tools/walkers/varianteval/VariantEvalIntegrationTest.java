@@ -585,26 +585,34 @@ public class VariantEvalIntegrationTest extends WalkerTest {
         executeTest("testIntervalStrat", spec);
     }
 
-    @Test
-    public void testModernVCFWithLargeIndels() {
-        WalkerTestSpec spec = new WalkerTestSpec(
+    private WalkerTestSpec modernVCFWithLargeIndelsSpec(final String extraArgs) {
+        return new WalkerTestSpec(
                                 buildCommandLine(
                                         "-T VariantEval",
                                         "-R " + b37KGReference,
                                         "-eval " + validationDataLocation + "/NA12878.HiSeq.WGS.b37_decoy.indel.recalibrated.vcf",
                                         "-L 20",
                                         "-D " + b37dbSNP132,
-                                        "-o %s"
+                                        "-o %s" + extraArgs
                                 ),
                                 1,
                                 Arrays.asList("af317f1ea1b80e5d4bc4f2d8523ef73d")
                               );
-        executeTest("testModernVCFWithLargeIndels", spec);
     }
 
     @Test
-    public void testStandardIndelEval() {
-        WalkerTestSpec spec = new WalkerTestSpec(
+    public void testModernVCFWithLargeIndels() {
+        executeTest("testModernVCFWithLargeIndels", modernVCFWithLargeIndelsSpec(""));
+    }
+
+    // all of the standard evaluators and stratifications, with each thread accumulating its own partial evaluation
+    @Test
+    public void testModernVCFWithLargeIndelsMultithreaded() {
+        executeTest("testModernVCFWithLargeIndelsMultithreaded", modernVCFWithLargeIndelsSpec(" -nt 4"));
+    }
+
+    private WalkerTestSpec standardIndelEvalSpec(final String extraArgs) {
+        return new WalkerTestSpec(
                 buildCommandLine(
                         "-T VariantEval",
                         "-R " + b37KGReference,
@@ -614,12 +622,21 @@ public class VariantEvalIntegrationTest extends WalkerTest {
                         "-noEV -EV IndelSummary -EV IndelLengthHistogram",
                         "-gold " + validationDataLocation + "/Mills_and_1000G_gold_standard.indels.b37.sites.vcf",
                         "-D " + b37dbSNP132,
-                        "-o %s"
+                        "-o %s" + extraArgs
                 ),
                 1,
                 Arrays.asList("7dc2d8983cb7d98b291ca2f60a9151b2")
         );
-        executeTest("testStandardIndelEval", spec);
+    }
+
+    @Test
+    public void testStandardIndelEval() {
+        executeTest("testStandardIndelEval", standardIndelEvalSpec(""));
+    }
+
+    @Test
+    public void testStandardIndelEvalMultithreaded() {
+        executeTest("testStandardIndelEvalMultithreaded", standardIndelEvalSpec(" -nt 4"));
     }
 
     @Test
@@ -51,14 +51,18 @@
 
 package org.broadinstitute.gatk.tools.walkers.variantrecalibration;
 
+import htsjdk.variant.variantcontext.Allele;
 import org.apache.commons.lang.ArrayUtils;
 import org.broadinstitute.gatk.utils.BaseTest;
+import org.broadinstitute.gatk.utils.GenomeLocParser;
+import org.broadinstitute.gatk.utils.sam.ArtificialSAMUtils;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Arrays;
+import java.util.Random;
 
 /**
  * Created with IntelliJ IDEA.
@@ -183,4 +187,118 @@ public class VariantDataManagerUnitTest extends BaseTest {
             Assert.assertFalse( datum.isAggregate );
         }
     }
+
+    private static List<VariantDatum> makeRandomData( final GenomeLocParser genomeLocParser, final int numData ) {
+        final Random random = new Random(42);
+        final List<VariantDatum> theData = new ArrayList<>();
+        for( int iii = 0; iii < numData; iii++ ) {
+            final VariantDatum datum = new VariantDatum();
+            datum.atTrainingSite = random.nextBoolean();
+            datum.isKnown = random.nextBoolean();
+            datum.isSNP = true;
+            datum.prior = random.nextDouble();
+            datum.originalQual = 400.0;
+            datum.loc = genomeLocParser.createGenomeLoc("chr1", iii + 1);
+            datum.annotations = new double[]{random.nextGaussian(), 5.0 + 3.0 * random.nextGaussian(), 100.0 * random.nextDouble()};
+            datum.isNull = new boolean[]{false, random.nextInt(10) == 0, false};
+            theData.add(datum);
+        }
+        return theData;
+    }
+
+    @Test
+    public final void testStreamedNormalizationMatchesInMemory() {
+        final GenomeLocParser genomeLocParser = new GenomeLocParser(ArtificialSAMUtils.createArtificialSamHeader(1, 1, 100000).getSequenceDictionary());
+        final VariantRecalibratorArgumentCollection VRAC = new VariantRecalibratorArgumentCollection();
+        final List<String> annotationKeys = Arrays.asList("A", "B", "C");
+
+        final VariantDataManager inMemory = new VariantDataManager(annotationKeys, VRAC);
+        inMemory.setData(makeRandomData(genomeLocParser, 10000));
+        inMemory.normalizeData();
+
+        final VariantDataManager streaming = new VariantDataManager(annotationKeys, VRAC);
+        streaming.startStreaming(genomeLocParser);
+        for( final VariantDatum datum : makeRandomData(genomeLocParser, 10000) ) {
+            streaming.addStreamedDatum(datum);
+        }
+        streaming.normalizeStreamedData();
+
+        Assert.assertEquals(streaming.getAnnotationKeys(), inMemory.getAnnotationKeys());
+        for( int iii = 0; iii < annotationKeys.size(); iii++ ) {
+            Assert.assertEquals(streaming.getMeanVector()[iii], inMemory.getMeanVector()[iii], 1e-9);
+            Assert.assertEquals(streaming.getVarianceVector()[iii], inMemory.getVarianceVector()[iii], 1e-9);
+        }
+
+        // normalizing the same variant either way gives the same values, except for the randomly imputed ones
+        final List<VariantDatum> normalized = inMemory.getData();
+        final VariantDatumSpillFile.Reader reader = streaming.getStreamedData().openReader();
+        for( final VariantDatum expected : normalized ) {
+            final VariantDatum datum = reader.next();
+            streaming.normalizeStreamedDatum(datum);
+            Assert.assertEquals(datum.loc, expected.loc);
+            Assert.assertEquals(datum.isNull, expected.isNull);
+            Assert.assertEquals(datum.failingSTDThreshold, expected.failingSTDThreshold);
+            for( int iii = 0; iii < annotationKeys.size(); iii++ ) {
+                if( !datum.isNull[iii] ) {
+                    Assert.assertEquals(datum.annotations[iii], expected.annotations[iii], 1e-9);
+                }
+            }
+        }
+        Assert.assertFalse(reader.hasNext());
+        reader.close();
+        streaming.getStreamedData().delete();
+    }
+
+    @Test
+    public final void testSpillFileRoundTrip() {
+        final GenomeLocParser genomeLocParser = new GenomeLocParser(ArtificialSAMUtils.createArtificialSamHeader(2, 1, 100000).getSequenceDictionary());
+        final List<VariantDatum> theData = makeRandomData(genomeLocParser, 1000);
+        theData.get(3).loc = null;
+        theData.get(3).isAggregate = true;
+        theData.get(7).atAntiTrainingSite = true;
+        theData.get(7).lod = -3.5;
+        theData.get(7).worstAnnotation = 2;
+        theData.get(11).loc = genomeLocParser.createGenomeLoc("chr2", 10, 15);
+        for( final VariantDatum datum : theData ) {
+            datum.referenceAllele = Allele.create("A", true);
+            datum.alternateAllele = Allele.create("ACG", false);
+        }
+
+        final VariantDatumSpillFile spillFile = new VariantDatumSpillFile(genomeLocParser, 3, true);
+        for( final VariantDatum datum : theData ) {
+            spillFile.add(datum);
+        }
+        Assert.assertEquals(spillFile.size(), theData.size());
+
+        // the file can be read more than once
+        for( int pass = 0; pass < 2; pass++ ) {
+            final VariantDatumSpillFile.Reader reader = spillFile.openReader();
+            final List<VariantDatum> firstChunk = reader.next(600);
+            final List<VariantDatum> secondChunk = reader.next(600);
+            Assert.assertEquals(firstChunk.size(), 600);
+            Assert.assertEquals(secondChunk.size(), 400);
+            Assert.assertTrue(reader.next(600).isEmpty());
+            reader.close();
+
+            final List<VariantDatum> readBack = new ArrayList<>(firstChunk);
+            readBack.addAll(secondChunk);
+            for( int iii = 0; iii < theData.size(); iii++ ) {
+                final VariantDatum expected = theData.get(iii);
+                final VariantDatum datum = readBack.get(iii);
+                Assert.assertEquals(datum.loc, expected.loc);
+                Assert.assertEquals(datum.annotations, expected.annotations);
+                Assert.assertEquals(datum.isNull, expected.isNull);
+                Assert.assertEquals(datum.atTrainingSite, expected.atTrainingSite);
+                Assert.assertEquals(datum.atAntiTrainingSite, expected.atAntiTrainingSite);
+                Assert.assertEquals(datum.isKnown, expected.isKnown);
+                Assert.assertEquals(datum.isAggregate, expected.isAggregate);
+                Assert.assertEquals(datum.prior, expected.prior);
+                Assert.assertEquals(datum.lod, expected.lod);
+                Assert.assertEquals(datum.worstAnnotation, expected.worstAnnotation);
+                Assert.assertEquals(datum.referenceAllele, expected.referenceAllele);
+                Assert.assertEquals(datum.alternateAllele, expected.alternateAllele);
+            }
+        }
+        spillFile.delete();
+    }
 }
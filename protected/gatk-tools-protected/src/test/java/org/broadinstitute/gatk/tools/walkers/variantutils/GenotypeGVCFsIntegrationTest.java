@@ -112,6 +112,19 @@ public class GenotypeGVCFsIntegrationTest extends WalkerTest {
         executeTest("combineSingleSamplePipelineGVCF", spec);
     }
 
+    @Test
+    public void combineSingleSamplePipelineGVCFMultithreaded() {
+        // must match the output of combineSingleSamplePipelineGVCF exactly
+        final WalkerTestSpec spec = new WalkerTestSpec(
+                baseTestString(" -V:sample1 " + privateTestDir + "combine.single.sample.pipeline.1.vcf" +
+                        " -V:sample2 " + privateTestDir + "combine.single.sample.pipeline.2.vcf" +
+                        " -V:sample3 " + privateTestDir + "combine.single.sample.pipeline.3.vcf" +
+                        " -L 20:10,000,000-11,000,000 -nct 4", b37KGReference),
+                1,
+                Collections.singletonList("7b2a135e694f9d1190e041e6fd420123"));
+        executeTest("combineSingleSamplePipelineGVCFMultithreaded", spec);
+    }
+
     @Test
     public void testTetraploidRun() {
         final WalkerTestSpec spec = new WalkerTestSpec(
@@ -517,6 +530,19 @@ public class GenotypeGVCFsIntegrationTest extends WalkerTest {
         executeTest("testMultipleSpanningDeletionsMD5", spec);
     }
 
+    @Test
+    public void testMultipleSpanningDeletionsMultithreaded() {
+        // whether a spanning deletion is kept depends on the calls upstream of it, so -nct must match testMultipleSpanningDeletionsMD5
+        final WalkerTestSpec spec = new WalkerTestSpec(
+                "-T GenotypeGVCFs --no_cmdline_in_header -o %s -R " + b37KGReference +
+                        " -V " + privateTestDir + "spanningDel.1.g.vcf -V " + privateTestDir + "spanningDel.2.g.vcf -V " + privateTestDir + "spanningDel.3.g.vcf" +
+                        " -nct 4",
+                1,
+                Collections.singletonList("907dfaa4d31c22705eadd5890ae23929"));
+        spec.disableShadowBCF();
+        executeTest("testMultipleSpanningDeletionsMultithreaded", spec);
+    }
+
     @Test
     public void testSpanningDeletionDoesNotGetGenotypedWithNoOtherAlleles() {
         final WalkerTestSpec spec = new WalkerTestSpec(
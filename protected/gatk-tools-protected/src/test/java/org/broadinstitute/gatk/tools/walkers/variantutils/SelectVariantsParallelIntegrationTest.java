@@ -51,12 +51,24 @@
 
 package org.broadinstitute.gatk.tools.walkers.variantutils;
 
+import htsjdk.samtools.util.BlockCompressedInputStream;
+import htsjdk.samtools.util.IOUtil;
+import htsjdk.tribble.AbstractFeatureReader;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCFCodec;
 import org.broadinstitute.gatk.engine.walkers.WalkerTest;
 import org.broadinstitute.gatk.utils.exceptions.UserException;
+import org.testng.Assert;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 public class SelectVariantsParallelIntegrationTest extends WalkerTest {
 
@@ -112,4 +124,47 @@ public class SelectVariantsParallelIntegrationTest extends WalkerTest {
         final WalkerTestSpec spec = new WalkerTestSpec( cfg.getCmdLine(), 1, Arrays.asList(cfg.md5) );
         executeTest(cfg.toString(), spec);
     }
+
+    private static List<String> readLines(final File file) throws IOException {
+        try ( final InputStream stream = file.getName().endsWith(".gz") ? new BlockCompressedInputStream(file) : new FileInputStream(file) ) {
+            return IOUtil.slurpLines(stream);
+        }
+    }
+
+    @DataProvider(name = "ParallelAppendedOutputTest")
+    public Object[][] makeParallelAppendedOutputTestProvider() {
+        return new Object[][]{{"vcf"}, {"vcf.gz"}};
+    }
+
+    /**
+     * The output of each -nt thread is merged by appending its records, or its BGZF blocks, so the records have to be
+     * those of a single thread and the index of the output has to find each of them where it was appended
+     */
+    @Test(dataProvider = "ParallelAppendedOutputTest")
+    public void testParallelAppendedOutput(final String extension) throws IOException {
+        final String cmdLine = "-T SelectVariants -R " + exampleFASTA + " -V " + publicTestDir + "exampleDBSNP.vcf"
+                + " -U ALLOW_SEQ_DICT_INCOMPATIBILITY --no_cmdline_in_header -o %s";
+        final File singleThreaded = executeTest("testParallelAppendedOutput-" + extension + "-nt-1",
+                new WalkerTestSpec(cmdLine, 1, Arrays.asList(extension), Arrays.asList(""))).getFirst().get(0);
+        final File multiThreaded = executeTest("testParallelAppendedOutput-" + extension + "-nt-3",
+                new WalkerTestSpec(cmdLine + " -nt 3", 1, Arrays.asList(extension), Arrays.asList(""))).getFirst().get(0);
+
+        Assert.assertEquals(readLines(multiThreaded), readLines(singleThreaded));
+
+        final List<VariantContext> records = new ArrayList<>();
+        try ( final AbstractFeatureReader<VariantContext, ?> reader = AbstractFeatureReader.getFeatureReader(singleThreaded.getAbsolutePath(), new VCFCodec(), false) ) {
+            for ( final VariantContext vc : reader.iterator() )
+                records.add(vc);
+        }
+        Assert.assertFalse(records.isEmpty());
+
+        try ( final AbstractFeatureReader<VariantContext, ?> reader = AbstractFeatureReader.getFeatureReader(multiThreaded.getAbsolutePath(), new VCFCodec(), true) ) {
+            for ( final VariantContext expected : records ) {
+                boolean found = false;
+                for ( final VariantContext vc : reader.query(expected.getContig(), expected.getStart(), expected.getEnd()) )
+                    found |= vc.getStart() == expected.getStart() && vc.getID().equals(expected.getID());
+                Assert.assertTrue(found, "index query didn't find " + expected.getID() + " at " + expected.getContig() + ":" + expected.getStart());
+            }
+        }
+    }
 }
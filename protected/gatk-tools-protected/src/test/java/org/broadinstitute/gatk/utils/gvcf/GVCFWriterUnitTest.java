@@ -375,6 +375,43 @@ public class GVCFWriterUnitTest extends BaseTest {
         assertGoodVC(mockWriter.emitted.get(2), "20", 4, 7, false);
     }
 
+    @Test
+    public void testReferenceConfidenceListMatchesAddingEachRecord() {
+        // GQs cross a band at 3, 5, 7 and 16, there is a call at 9 and positions 12-14 are missing
+        final int[] positions = {1, 2, 3, 4, 5, 6, 7, 8, 10, 11, 15, 16};
+        final int[] GQs =       {0, 0, 5, 7, 12, 12, 30, 35, 30, 30, 30, 2};
+        final ReferenceConfidenceList records = new ReferenceConfidenceList("test", SAMPLE_NAME, HomoSapiensConstants.DEFAULT_PLOIDY, 4);
+        for ( int i = 0; i < positions.length; i++ ) {
+            if ( positions[i] == 10 )
+                records.addCall(makeNonRef("20", 9, 30));
+            records.addSite("20", positions[i], (byte)'A', new int[]{i + 1, i % 2}, GQs[i], new int[]{0, GQs[i] + i, 100 - i});
+        }
+
+        final GVCFWriter listWriter = new GVCFWriter(mockWriter, standardPartition, HomoSapiensConstants.DEFAULT_PLOIDY);
+        listWriter.add(records);
+        listWriter.close();
+
+        final MockWriter eachWriter = new MockWriter();
+        final GVCFWriter vcWriter = new GVCFWriter(eachWriter, standardPartition, HomoSapiensConstants.DEFAULT_PLOIDY);
+        for ( final VariantContext vc : records )
+            vcWriter.add(vc);
+        vcWriter.close();
+
+        Assert.assertEquals(mockWriter.emitted.size(), eachWriter.emitted.size());
+        for ( int i = 0; i < eachWriter.emitted.size(); i++ )
+            Assert.assertEquals(mockWriter.emitted.get(i).toStringDecodeGenotypes(), eachWriter.emitted.get(i).toStringDecodeGenotypes());
+
+        Assert.assertEquals(mockWriter.emitted.size(), 8);
+        assertGoodVC(mockWriter.emitted.get(0), "20", 1, 2, false);
+        assertGoodVC(mockWriter.emitted.get(1), "20", 3, 4, false);
+        assertGoodVC(mockWriter.emitted.get(2), "20", 5, 6, false);
+        assertGoodVC(mockWriter.emitted.get(3), "20", 7, 8, false);
+        assertGoodVC(mockWriter.emitted.get(4), "20", 9, 9, true);
+        assertGoodVC(mockWriter.emitted.get(5), "20", 10, 11, false);
+        assertGoodVC(mockWriter.emitted.get(6), "20", 15, 15, false);
+        assertGoodVC(mockWriter.emitted.get(7), "20", 16, 16, false);
+    }
+
     @DataProvider(name = "BandPartitionData")
     public Object[][] makeBandPartitionData() {
         List<Object[]> tests = new ArrayList<>();
@@ -1042,6 +1042,7 @@ public class GenomeAnalysisEngine {
         final RMDTrackBuilder builder = new RMDTrackBuilder(sequenceDictionary,genomeLocParser, validationExclusionType,
                                                             getArguments().disableAutoIndexCreationAndLockingWhenReadingRods,
                                                             sampleRenameMap);
+        builder.setSamplesToDecode(getSamplesToDecode(referenceMetaDataFiles));
 
         final List<ReferenceOrderedDataSource> dataSources = new ArrayList<ReferenceOrderedDataSource>();
         for (RMDTriplet fileDescriptor : referenceMetaDataFiles)
@@ -1049,11 +1050,34 @@ public class GenomeAnalysisEngine {
                                                            builder,
                                                            sequenceDictionary,
                                                            genomeLocParser,
-                                                           flashbackData()));
+                                                           flashbackData(),
+                                                           getArguments().sharedRodCache,
+                                                           getTotalNumberOfThreads()));
 
         return dataSources;
     }
 
+    /**
+     * Ask the walker which samples it needs from each rod
+     *
+     * @param referenceMetaDataFiles the rods bound on the command line
+     * @return map of rod name -> samples to decode, or null if the walker needs every sample of every rod
+     */
+    private Map<String, Set<String>> getSamplesToDecode(final Collection<RMDTriplet> referenceMetaDataFiles) {
+        if ( ! (walker instanceof DecodesSampleSubset) )
+            return null;
+
+        final Map<String, Set<String>> samplesToDecode = new HashMap<>();
+        for ( final RMDTriplet fileDescriptor : referenceMetaDataFiles ) {
+            final Set<String> samples = ((DecodesSampleSubset)walker).getSamplesToDecode(fileDescriptor.getName());
+            if ( samples != null ) {
+                logger.info(String.format("Only decoding the genotypes of %d samples of rod %s", samples.size(), fileDescriptor.getName()));
+                samplesToDecode.put(fileDescriptor.getName(), samples);
+            }
+        }
+        return samplesToDecode;
+    }
+
     /**
      * Returns the SAM File Header from the input reads' data source file
      * @return the SAM File Header from the input reads' data source file
@@ -284,6 +284,19 @@ public class GATKArgumentCollection {
     @Argument(fullName = "performanceLog", shortName="PF", doc="Write GATK runtime performance log to this file", required = false)
     public File performanceLog = null;
 
+    /**
+     * The file name for the hot-path metrics of the GATK: counters and latency histograms of the PairHMM, assembly,
+     * Smith-Waterman, BAM and ROD decoding and output writers.  The file is a GATKReport that is rewritten every
+     * secondsBetweenMetricsUpdates seconds while the GATK runs, and once more at the end of the run.  The same
+     * metrics are always available over JMX.
+     */
+    @Argument(fullName = "metricsFile", shortName="metricsFile", doc="Periodically write GATK hot-path metrics to this file", required = false)
+    public File metricsFile = null;
+
+    @Advanced
+    @Argument(fullName="secondsBetweenMetricsUpdates", shortName = "secondsBetweenMetricsUpdates", doc = "Time interval for rewriting the metrics file (in seconds)", required=false)
+    public long secondsBetweenMetricsUpdates = 60;
+
     // --------------------------------------------------------------------------------------------------------------
     //
     // BQSR arguments
@@ -415,6 +428,18 @@ public class GATKArgumentCollection {
               required = false)
     public boolean disableAutoIndexCreationAndLockingWhenReadingRods = false;
 
+    /**
+     * By default each thread of a multi-threaded run opens and decodes its own copy of every indexed rod. With this
+     * option the records of each rod are instead decoded once, by a background thread that reads ahead of the
+     * traversal, and the decoded records are shared by all threads. This mostly helps when large VCFs are bound as rods
+     * and -nt/-nct are greater than one.
+     */
+    @Advanced
+    @Argument(fullName = "shared_rod_cache", shortName = "sharedRodCache",
+              doc = "Share decoded rod records between threads and decode them ahead of the traversal",
+              required = false)
+    public boolean sharedRodCache = false;
+
     /**
      * This option is intended to be used FOR DEBUGGING PURPOSES ONLY. Note to developers: it is required in order to pass integration tests.
      */
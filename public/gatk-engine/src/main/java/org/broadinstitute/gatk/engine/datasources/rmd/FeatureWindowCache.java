@@ -0,0 +1,336 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.engine.datasources.rmd;
+
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.variant.variantcontext.VariantContext;
+import org.broadinstitute.gatk.utils.GenomeLoc;
+import org.broadinstitute.gatk.utils.GenomeLocParser;
+import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
+import org.broadinstitute.gatk.utils.exceptions.UserException;
+import org.broadinstitute.gatk.utils.instrumentation.Counter;
+import org.broadinstitute.gatk.utils.instrumentation.LatencyHistogram;
+import org.broadinstitute.gatk.utils.instrumentation.MetricsRegistry;
+import org.broadinstitute.gatk.utils.instrumentation.Subsystem;
+import org.broadinstitute.gatk.utils.refdata.tracks.RMDTrack;
+import org.broadinstitute.gatk.utils.refdata.utils.GATKFeature;
+import org.broadinstitute.gatk.utils.variant.GATKVariantContextUtils;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * A cache of the decoded features of an indexed track, shared by every iterator over the track.
+ *
+ * The genome is divided into fixed size windows, and the features overlapping each window are decoded once, by a
+ * single background thread, into an immutable list. Requesting a window also schedules the decoding of the next few
+ * windows, so that the features are usually ready before the traversal gets to them. The least recently used windows
+ * are evicted once more than a fixed number are cached.
+ *
+ * Queries return exactly the features, in the same order, as querying the track itself would.
+ */
+class FeatureWindowCache {
+    /**
+     * The size of a window in bases
+     */
+    static final int DEFAULT_WINDOW_SIZE = 1 << 16;
+
+    /**
+     * The number of windows after the requested one to decode in the background
+     */
+    static final int READ_AHEAD_WINDOWS = 2;
+
+    private static final LatencyHistogram windowDecodeTime = MetricsRegistry.getInstance().histogram(Subsystem.ROD_DECODE, "decodeWindow");
+    private static final Counter featuresDecoded = MetricsRegistry.getInstance().counter(Subsystem.ROD_DECODE, "features");
+
+    private final RMDTrack track;
+    private final GenomeLocParser genomeLocParser;
+    private final SAMSequenceDictionary referenceSequenceDictionary;
+    private final int windowSize;
+    private final boolean prepareForConcurrentAccess;
+    private final ExecutorService decoder;
+
+    /**
+     * The decoded windows, keyed by their location, in least to most recently used order
+     */
+    private final LinkedHashMap<GenomeLoc, Future<List<GATKFeature>>> windows;
+
+    /**
+     * @param track the track to decode, which is owned by this cache from now on
+     * @param genomeLocParser the parser used for the windows
+     * @param referenceSequenceDictionary the dictionary giving the contig lengths
+     * @param windowSize the size of each window in bases
+     * @param numberOfThreads the number of threads that will query the cache
+     */
+    FeatureWindowCache(final RMDTrack track, final GenomeLocParser genomeLocParser, final SAMSequenceDictionary referenceSequenceDictionary,
+                       final int windowSize, final int numberOfThreads) {
+        if ( windowSize < 1 ) throw new IllegalArgumentException("windowSize must be positive but was " + windowSize);
+        if ( numberOfThreads < 1 ) throw new IllegalArgumentException("numberOfThreads must be positive but was " + numberOfThreads);
+
+        this.track = track;
+        this.genomeLocParser = genomeLocParser;
+        this.referenceSequenceDictionary = referenceSequenceDictionary;
+        this.windowSize = windowSize;
+        // the lazily decoded parts of variant contexts must be decoded up front if several threads can see them
+        this.prepareForConcurrentAccess = numberOfThreads > 1;
+
+        // room for the window each thread is in, the one it just left, and the ones being read ahead
+        final int maxWindows = numberOfThreads * (READ_AHEAD_WINDOWS + 2);
+        this.windows = new LinkedHashMap<GenomeLoc, Future<List<GATKFeature>>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<GenomeLoc, Future<List<GATKFeature>>> eldest) {
+                return size() > maxWindows;
+            }
+        };
+
+        this.decoder = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "FeatureWindowCache-" + track.getName());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public Object getHeader() {
+        return track.getHeader();
+    }
+
+    public SAMSequenceDictionary getSequenceDictionary() {
+        return track.getSequenceDictionary();
+    }
+
+    /**
+     * Get an iterator over the features overlapping an interval
+     * @param interval the interval to query
+     * @return the features, in the order the track would return them
+     */
+    CloseableIterator<GATKFeature> query(final GenomeLoc interval) {
+        return new WindowedFeatureIterator(interval);
+    }
+
+    /**
+     * Get an iterator over every feature on the contigs of the reference, in reference order
+     * @return the features
+     */
+    CloseableIterator<GATKFeature> iterator() {
+        final List<GenomeLoc> contigs = new ArrayList<>();
+        for ( final SAMSequenceRecord contig : referenceSequenceDictionary.getSequences() )
+            contigs.add(genomeLocParser.createOverEntireContig(contig.getSequenceName()));
+
+        return new CloseableIterator<GATKFeature>() {
+            private final Iterator<GenomeLoc> contigIterator = contigs.iterator();
+            private CloseableIterator<GATKFeature> current = null;
+
+            @Override
+            public boolean hasNext() {
+                while ( current == null || !current.hasNext() ) {
+                    if ( !contigIterator.hasNext() )
+                        return false;
+                    current = query(contigIterator.next());
+                }
+                return true;
+            }
+
+            @Override
+            public GATKFeature next() {
+                if ( !hasNext() ) throw new NoSuchElementException();
+                return current.next();
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    /**
+     * Stop the background decoding and close the track
+     */
+    void close() {
+        decoder.shutdownNow();
+        try {
+            decoder.awaitTermination(1, TimeUnit.MINUTES);
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+        }
+        track.close();
+    }
+
+    /**
+     * Get the features of a window, decoding them if necessary, and schedule the decoding of the following windows
+     * @param contig the contig of the window
+     * @param windowIndex the index of the window on its contig
+     * @return the features overlapping the window
+     */
+    private List<GATKFeature> getWindow(final String contig, final int windowIndex) {
+        final Future<List<GATKFeature>> window;
+        synchronized ( windows ) {
+            window = scheduleWindow(contig, windowIndex);
+            for ( int i = 1; i <= READ_AHEAD_WINDOWS && getWindowStart(windowIndex + i) <= getContigLength(contig); i++ )
+                scheduleWindow(contig, windowIndex + i);
+        }
+
+        try {
+            return window.get();
+        } catch ( InterruptedException e ) {
+            throw new ReviewedGATKException("Interrupted while decoding features of " + track.getName(), e);
+        } catch ( ExecutionException e ) {
+            if ( e.getCause() instanceof RuntimeException )
+                throw (RuntimeException)e.getCause();
+            throw new ReviewedGATKException("Unable to decode features of " + track.getName(), e.getCause());
+        }
+    }
+
+    private Future<List<GATKFeature>> scheduleWindow(final String contig, final int windowIndex) {
+        final GenomeLoc location = genomeLocParser.createGenomeLoc(contig, getWindowStart(windowIndex),
+                Math.min(getWindowStart(windowIndex + 1) - 1, getContigLength(contig)));
+        Future<List<GATKFeature>> window = windows.get(location);
+        if ( window == null ) {
+            window = decoder.submit(new Callable<List<GATKFeature>>() {
+                @Override
+                public List<GATKFeature> call() {
+                    return decode(location);
+                }
+            });
+            windows.put(location, window);
+        }
+        return window;
+    }
+
+    /**
+     * Decode the features overlapping a window.  Only ever called from the decoder thread, which owns the track.
+     */
+    private List<GATKFeature> decode(final GenomeLoc location) {
+        final List<GATKFeature> features = new ArrayList<>();
+        final long startNanos = System.nanoTime();
+        try ( final CloseableIterator<GATKFeature> iterator = track.query(location) ) {
+            while ( iterator.hasNext() ) {
+                final GATKFeature feature = iterator.next();
+                if ( prepareForConcurrentAccess && feature.getUnderlyingObject() instanceof VariantContext )
+                    GATKVariantContextUtils.prepareForConcurrentAccess((VariantContext)feature.getUnderlyingObject());
+                features.add(feature);
+            }
+        } catch ( IOException e ) {
+            throw new UserException.CouldNotReadInputFile(track.getFile(), "Unable to query " + location, e);
+        }
+        windowDecodeTime.recordSince(startNanos);
+        featuresDecoded.add(features.size());
+        return Collections.unmodifiableList(features);
+    }
+
+    private int getWindowIndex(final int position) {
+        return (position - 1) / windowSize;
+    }
+
+    private int getWindowStart(final int windowIndex) {
+        return windowIndex * windowSize + 1;
+    }
+
+    private int getContigLength(final String contig) {
+        return referenceSequenceDictionary.getSequence(contig).getSequenceLength();
+    }
+
+    /**
+     * Iterates over the features overlapping an interval, window by window.
+     *
+     * A feature spanning several windows is in the list of each of them, so in all but the first window only the
+     * features starting in the window are returned.  Since the features of each window are sorted by start, the
+     * result is sorted as well.
+     */
+    private class WindowedFeatureIterator implements CloseableIterator<GATKFeature> {
+        private final GenomeLoc interval;
+        private final int firstWindowIndex;
+        private final int lastWindowIndex;
+        private int windowIndex;
+        private List<GATKFeature> window = Collections.emptyList();
+        private int offset = 0;
+        private GATKFeature next = null;
+
+        private WindowedFeatureIterator(final GenomeLoc interval) {
+            this.interval = interval;
+            this.firstWindowIndex = getWindowIndex(interval.getStart());
+            this.lastWindowIndex = getWindowIndex(interval.getStop());
+            this.windowIndex = firstWindowIndex - 1;
+            advance();
+        }
+
+        private void advance() {
+            next = null;
+            while ( next == null ) {
+                if ( offset == window.size() ) {
+                    if ( windowIndex == lastWindowIndex )
+                        return;
+                    windowIndex++;
+                    window = getWindow(interval.getContig(), windowIndex);
+                    offset = 0;
+                    continue;
+                }
+
+                final GATKFeature feature = window.get(offset++);
+                if ( feature.getStart() > interval.getStop() ) {
+                    // no later feature can overlap the interval either
+                    windowIndex = lastWindowIndex;
+                    offset = window.size();
+                } else if ( feature.getEnd() >= interval.getStart() &&
+                            (windowIndex == firstWindowIndex || feature.getStart() >= getWindowStart(windowIndex)) ) {
+                    next = feature;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public GATKFeature next() {
+            if ( next == null ) throw new NoSuchElementException();
+            final GATKFeature feature = next;
+            advance();
+            return feature;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -80,11 +80,37 @@ public class ReferenceOrderedDataSource {
                                       SAMSequenceDictionary referenceSequenceDictionary,
                                       GenomeLocParser genomeLocParser,
                                       boolean flashbackData ) {
+        this(fileDescriptor, builder, referenceSequenceDictionary, genomeLocParser, flashbackData, false, 1);
+    }
+
+    /**
+     * Create a new reference-ordered data source.
+     *
+     * @param useSharedFeatureCache if true, the features of indexed files are decoded once, ahead of the traversal,
+     *                              and shared between all iterators instead of each iterator decoding its own
+     * @param numberOfThreads the number of threads that will be iterating over this data source
+     */
+    public ReferenceOrderedDataSource(RMDTriplet fileDescriptor,
+                                      RMDTrackBuilder builder,
+                                      SAMSequenceDictionary referenceSequenceDictionary,
+                                      GenomeLocParser genomeLocParser,
+                                      boolean flashbackData,
+                                      boolean useSharedFeatureCache,
+                                      int numberOfThreads ) {
         this.fileDescriptor = fileDescriptor;
         this.builder = builder;
 
         // TODO: Unify the two blocks of code below by creating a ReferenceOrderedDataPool base class of a coherent type (not RMDTrack for one and SeekableIterator for the other).
-        if (fileDescriptor.getStorageType() != RMDTriplet.RMDStorageType.STREAM) {
+        if (fileDescriptor.getStorageType() != RMDTriplet.RMDStorageType.STREAM && useSharedFeatureCache) {
+            iteratorPool = new ReferenceOrderedCachedDataPool(fileDescriptor,
+                                                              builder,
+                                                              referenceSequenceDictionary,
+                                                              genomeLocParser,
+                                                              numberOfThreads);
+            this.header = ((ReferenceOrderedCachedDataPool)iteratorPool).getHeader();
+            this.sequenceDictionary = ((ReferenceOrderedCachedDataPool)iteratorPool).getSequenceDictionary();
+        }
+        else if (fileDescriptor.getStorageType() != RMDTriplet.RMDStorageType.STREAM) {
             iteratorPool = new ReferenceOrderedQueryDataPool(fileDescriptor,
                                                              builder,
                                                              referenceSequenceDictionary,
@@ -254,4 +280,68 @@ class ReferenceOrderedQueryDataPool extends ResourcePool<RMDTrack,LocationAwareS
     protected void closeResource(RMDTrack track) {
         track.close();
     }
-}
\ No newline at end of file
+}
+
+/**
+ * a data pool for the query based RODs in which every iterator reads from a single cache of decoded features
+ */
+class ReferenceOrderedCachedDataPool extends ResourcePool<FeatureWindowCache,LocationAwareSeekableRODIterator> {
+    // the reference-ordered data itself.
+    private final RMDTriplet fileDescriptor;
+
+    // the cache shared by all iterators
+    private final FeatureWindowCache cache;
+
+    public ReferenceOrderedCachedDataPool(RMDTriplet fileDescriptor, RMDTrackBuilder builder, SAMSequenceDictionary referenceSequenceDictionary, GenomeLocParser genomeLocParser, int numberOfThreads) {
+        super(referenceSequenceDictionary,genomeLocParser);
+        this.fileDescriptor = fileDescriptor;
+        this.cache = new FeatureWindowCache(builder.createInstanceOfTrack(fileDescriptor),
+                                            genomeLocParser,
+                                            referenceSequenceDictionary,
+                                            FeatureWindowCache.DEFAULT_WINDOW_SIZE,
+                                            numberOfThreads);
+        this.addNewResource(cache);
+    }
+
+    public Object getHeader() {
+        return cache.getHeader();
+    }
+
+    public SAMSequenceDictionary getSequenceDictionary() {
+        return cache.getSequenceDictionary();
+    }
+
+    /**
+     * The cache is safe to share, so each additional entry in the pool is just another lease on it.
+     */
+    @Override
+    protected FeatureWindowCache createNewResource() {
+        return cache;
+    }
+
+    @Override
+    protected FeatureWindowCache selectBestExistingResource(DataStreamSegment segment, List<FeatureWindowCache> availableResources) {
+        return availableResources.isEmpty() ? null : availableResources.get(0);
+    }
+
+    @Override
+    protected LocationAwareSeekableRODIterator createIteratorFromResource(DataStreamSegment position, FeatureWindowCache cache) {
+        try {
+            if (position instanceof MappedStreamSegment) {
+                GenomeLoc pos = ((MappedStreamSegment) position).locus;
+                return new SeekableRODIterator(getHeader(),getSequenceDictionary(),referenceSequenceDictionary,genomeLocParser,cache.query(pos));
+            } else {
+                return new SeekableRODIterator(getHeader(),getSequenceDictionary(),referenceSequenceDictionary,genomeLocParser,cache.iterator());
+            }
+        } catch (UserException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw new ReviewedGATKException("Unable to create iterator for rod named " + fileDescriptor.getName(),e);
+        }
+    }
+
+    @Override
+    protected void closeResource(FeatureWindowCache cache) {
+        cache.close();
+    }
+}
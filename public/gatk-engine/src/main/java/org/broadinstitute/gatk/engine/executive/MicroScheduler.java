@@ -43,6 +43,7 @@ import org.broadinstitute.gatk.utils.AutoFormattingTime;
 import org.broadinstitute.gatk.utils.MathUtils;
 import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
 import org.broadinstitute.gatk.utils.exceptions.UserException;
+import org.broadinstitute.gatk.utils.instrumentation.MetricsRegistry;
 import org.broadinstitute.gatk.utils.progressmeter.ProgressMeter;
 import org.broadinstitute.gatk.utils.threading.ThreadEfficiencyMonitor;
 
@@ -224,6 +225,11 @@ public abstract class MicroScheduler implements MicroSchedulerMBean {
         catch (JMException ex) {
             throw new ReviewedGATKException("Unable to register microscheduler with JMX", ex);
         }
+
+        // the hot-path metrics are collected for the whole JVM, so they are registered only once
+        MetricsRegistry.getInstance().registerMBean();
+        if ( engine.getArguments() != null && engine.getArguments().metricsFile != null )
+            MetricsRegistry.getInstance().startReporting(engine.getArguments().metricsFile, engine.getArguments().secondsBetweenMetricsUpdates);
     }
 
     /**
@@ -401,6 +407,8 @@ public abstract class MicroScheduler implements MicroSchedulerMBean {
     public ReferenceSequenceFile getReference() { return reference; }
 
     protected void cleanup() {
+        MetricsRegistry.getInstance().stopReporting();
+
         try {
             mBeanServer.unregisterMBean(mBeanName);
         }
@@ -33,6 +33,9 @@ import org.apache.log4j.Logger;
 import org.broadinstitute.gatk.engine.io.stubs.SAMFileWriterStub;
 import org.broadinstitute.gatk.utils.exceptions.GATKException;
 import org.broadinstitute.gatk.utils.exceptions.UserException;
+import org.broadinstitute.gatk.utils.instrumentation.Counter;
+import org.broadinstitute.gatk.utils.instrumentation.MetricsRegistry;
+import org.broadinstitute.gatk.utils.instrumentation.Subsystem;
 import org.broadinstitute.gatk.utils.sam.SimplifyingSAMFileWriter;
 
 import java.io.File;
@@ -55,6 +58,8 @@ public class SAMFileWriterStorage implements SAMFileWriter, Storage<SAMFileWrite
 
     private static Logger logger = Logger.getLogger(SAMFileWriterStorage.class);
 
+    private static final Counter readsWritten = MetricsRegistry.getInstance().counter(Subsystem.WRITER, "addAlignment");
+
     public SAMFileWriterStorage( SAMFileWriterStub stub ) {
         this(stub,stub.getOutputFile());
     }
@@ -102,6 +107,7 @@ public class SAMFileWriterStorage implements SAMFileWriter, Storage<SAMFileWrite
 
     public void addAlignment( SAMRecord read ) {
         writer.addAlignment(read);
+        readsWritten.increment();
     }
 
     public void close() {
@@ -25,12 +25,21 @@
 
 package org.broadinstitute.gatk.engine.io.storage;
 
+import htsjdk.samtools.SAMSequenceDictionary;
 import htsjdk.samtools.util.BlockCompressedOutputStream;
+import htsjdk.samtools.util.PositionalOutputStream;
+import htsjdk.tribble.index.IndexCreator;
+import htsjdk.tribble.index.tabix.TabixFormat;
+import htsjdk.tribble.index.tabix.TabixIndexCreator;
 import org.apache.log4j.Logger;
 import htsjdk.tribble.AbstractFeatureReader;
 import htsjdk.tribble.Feature;
 import htsjdk.tribble.FeatureCodec;
+import htsjdk.tribble.SimpleFeature;
 import org.broadinstitute.gatk.engine.io.stubs.VariantContextWriterStub;
+import org.broadinstitute.gatk.utils.instrumentation.LatencyHistogram;
+import org.broadinstitute.gatk.utils.instrumentation.MetricsRegistry;
+import org.broadinstitute.gatk.utils.instrumentation.Subsystem;
 import org.broadinstitute.gatk.utils.refdata.tracks.FeatureManager;
 import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
 import org.broadinstitute.gatk.utils.exceptions.UserException;
@@ -42,6 +51,8 @@ import htsjdk.variant.variantcontext.writer.VariantContextWriterBuilder;
 import htsjdk.variant.vcf.VCFHeader;
 
 import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.List;
@@ -58,6 +69,8 @@ public class VariantContextWriterStorage implements Storage<VariantContextWriter
      */
     private static Logger logger = Logger.getLogger(VariantContextWriterStorage.class);
 
+    private static final LatencyHistogram addTime = MetricsRegistry.getInstance().histogram(Subsystem.WRITER, "addVariant");
+
     private final static int BUFFER_SIZE = 1048576;
 
     protected final File file;
@@ -65,6 +78,40 @@ public class VariantContextWriterStorage implements Storage<VariantContextWriter
     protected final VariantContextWriter writer;
     boolean closed = false;
 
+    /**
+     * Whether records are written in their final VCF encoding to streams this storage controls, so that temporary
+     * storage can be merged by appending its bytes (or, when compressed, its BGZF blocks) to the target instead
+     * of decoding and re-encoding every record.
+     */
+    private final boolean appendable;
+    private final boolean blockCompressed;
+
+    /**
+     * The stream the VCF text is written to when appendable and not compressed
+     */
+    private PositionalOutputStream plainStream;
+
+    /**
+     * The compressor the VCF text is written to when appendable and compressed, the stream below it to which whole
+     * BGZF blocks of temporary storage are appended, and how many bytes have been appended behind its back.
+     */
+    private BlockCompressedOutputStream blockStream;
+    private OutputStream compressedStream;
+    private long appendedCompressedBytes = 0;
+
+    /**
+     * Index built by this storage on the fly, as the writer can't index records it didn't write itself
+     */
+    private IndexCreator indexCreator;
+    private SAMSequenceDictionary indexSequenceDictionary;
+
+    /**
+     * For appendable temporary storage, where the records start and end in the file, and where each of them starts
+     */
+    private long recordsStart;
+    private long recordsEnd;
+    private RecordLocations recordLocations = null;
+
     /**
      * Constructs an object which will write directly into the output file provided by the stub.
      * Intentionally delaying the writing of the header -- this should be filled in by the walker.
@@ -75,15 +122,35 @@ public class VariantContextWriterStorage implements Storage<VariantContextWriter
      * @param stub Stub to use when constructing the output file.
      */
     public VariantContextWriterStorage(VariantContextWriterStub stub)  {
+        appendable = canAppendRecords(stub);
+        blockCompressed = appendable && stub.getOutputFile() != null && stub.isCompressed();
         if ( stub.getOutputFile() != null ) {
             this.file = stub.getOutputFile();
-            writer = vcfWriterToFile(stub,stub.getOutputFile(),true,true);
+            if ( appendable ) {
+                writer = appendableVcfWriterToFile(stub, file);
+                indexSequenceDictionary = stub.getMasterSequenceDictionary();
+                if ( ! blockCompressed )
+                    indexCreator = stub.getIndexCreator();
+                else if ( indexSequenceDictionary == null )
+                    indexCreator = new TabixIndexCreator(TabixFormat.VCF);
+                else
+                    indexCreator = new TabixIndexCreator(indexSequenceDictionary, TabixFormat.VCF);
+            }
+            else
+                writer = vcfWriterToFile(stub,stub.getOutputFile(),true,true);
         }
         else if ( stub.getOutputStream() != null ) {
             this.file = null;
             this.stream = stub.getOutputStream();
+            final OutputStream vcfStream;
+            if ( appendable ) {
+                plainStream = new PositionalOutputStream(stream);
+                vcfStream = plainStream;
+            } else {
+                vcfStream = stream;
+            }
             writer = new VariantContextWriterBuilder()
-                    .setOutputVCFStream(stream)
+                    .setOutputVCFStream(vcfStream)
                     .setReferenceDictionary(stub.getMasterSequenceDictionary())
                     .setOptions(stub.getWriterOptions(false))
                     .build();
@@ -95,8 +162,9 @@ public class VariantContextWriterStorage implements Storage<VariantContextWriter
     /**
      * Constructs an object which will redirect into a different file.
      *
-     * Note that this function does not respect the isCompressed() request from the stub, in order
-     * to ensure that tmp. files can be read back in by the Tribble system, and merged with the mergeInto function.
+     * Note that unless the records can be appended as they are to the target (see {@link #canAppendRecords}),
+     * this function does not respect the isCompressed() request from the stub, in order to ensure that tmp.
+     * files can be read back in by the Tribble system, and merged with the mergeInto function.
      *
      * @param stub Stub to use when synthesizing file / header info.
      * @param tempFile File into which to direct the output data.
@@ -104,8 +172,63 @@ public class VariantContextWriterStorage implements Storage<VariantContextWriter
     public VariantContextWriterStorage(VariantContextWriterStub stub, File tempFile) {
         //logger.debug("Creating temporary output file " + tempFile.getAbsolutePath() + " for VariantContext output.");
         this.file = tempFile;
-        this.writer = vcfWriterToFile(stub, file, false, false);
-        writer.writeHeader(stub.getVCFHeader());
+        appendable = canAppendRecords(stub);
+        blockCompressed = appendable && stub.getOutputFile() != null && stub.isCompressed();
+        if ( appendable ) {
+            this.writer = appendableVcfWriterToFile(stub, file);
+            writer.writeHeader(stub.getVCFHeader());
+            // the header is needed to encode the records, but only the records are appended to the target
+            recordsStart = startOfNextRecords();
+            recordLocations = new RecordLocations();
+        } else {
+            this.writer = vcfWriterToFile(stub, file, false, false);
+            writer.writeHeader(stub.getVCFHeader());
+        }
+    }
+
+    /**
+     * Can the records written for this stub be appended byte for byte from temporary storage to the target?
+     *
+     * True for VCF output, plain or compressed, to either a file or a stream; BCF output (and the test-only shadow
+     * BCF) is still merged record by record.
+     *
+     * @param stub Stub describing the output.
+     * @return true if storage for this stub should be appendable.
+     */
+    private static boolean canAppendRecords(final VariantContextWriterStub stub) {
+        return ! stub.getWriterOptions(false).contains(Options.FORCE_BCF) && ! stub.alsoWriteBCFForTest();
+    }
+
+    /**
+     * Create a VCF writer to a file over streams controlled by this storage, so that records can be appended to them
+     * directly and located for the index.
+     *
+     * @param stub Stub to use when constructing the output file.
+     * @param file Target file into which to write VCF records.
+     * @return A VCF writer for use with this class
+     */
+    private VariantContextWriter appendableVcfWriterToFile(final VariantContextWriterStub stub, final File file) {
+        final OutputStream vcfStream;
+        try {
+            if ( blockCompressed ) {
+                compressedStream = new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE);
+                blockStream = new BlockCompressedOutputStream(compressedStream, file);
+                vcfStream = blockStream;
+            } else {
+                plainStream = new PositionalOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+                vcfStream = plainStream;
+            }
+        }
+        catch(IOException ex) {
+            throw new UserException.CouldNotCreateOutputFile(file, "Unable to open target output stream", ex);
+        }
+        stream = vcfStream;
+
+        return new VariantContextWriterBuilder()
+                .setOutputVCFStream(vcfStream)
+                .setReferenceDictionary(stub.getMasterSequenceDictionary())
+                .setOptions(stub.getWriterOptions(false))
+                .build();
     }
 
     /**
@@ -210,7 +333,13 @@ public class VariantContextWriterStorage implements Storage<VariantContextWriter
 
     public void add(VariantContext vc) {
         if ( closed ) throw new ReviewedGATKException("Attempting to write to a closed VariantContextWriterStorage " + vc.getStart() + " storage=" + this);
+        final long startNanos = System.nanoTime();
+        if ( indexCreator != null )
+            indexCreator.addFeature(vc, getLocation());
+        else if ( recordLocations != null )
+            recordLocations.add(vc, getLocation());
         writer.add(vc);
+        addTime.recordSince(startNanos);
     }
 
     /**
@@ -226,11 +355,64 @@ public class VariantContextWriterStorage implements Storage<VariantContextWriter
      * Close the VCF storage object.
      */
     public void close() {
+        if ( recordLocations != null )
+            recordsEnd = startOfNextRecords();
         writer.close();
+        if ( indexCreator != null ) {
+            indexCreator.setIndexSequenceDictionary(indexSequenceDictionary);
+            try {
+                indexCreator.finalizeIndex(getLocation()).writeBasedOnFeatureFile(file);
+            } catch (IOException e) {
+                throw new UserException.CouldNotCreateOutputFile(file, "Unable to write the index", e);
+            }
+        }
         closed = true;
     }
 
+    /**
+     * Get the location of the next record, as an index would point to it
+     *
+     * @return the byte offset of the next record, or its BGZF virtual file pointer if compressed.
+     */
+    private long getLocation() {
+        return blockCompressed ? blockStream.getFilePointer() + (appendedCompressedBytes << 16) : plainStream.getPosition();
+    }
+
+    /**
+     * Make sure the next records start at a point where whole records, or whole BGZF blocks of them, can be appended
+     *
+     * @return the byte offset in the file where the next records will start.
+     */
+    private long startOfNextRecords() {
+        if ( ! blockCompressed )
+            return plainStream.getPosition();
+        try {
+            blockStream.flush();
+        } catch (IOException e) {
+            throw new UserException.CouldNotCreateOutputFile(file, "Unable to flush compressed output", e);
+        }
+        return (blockStream.getFilePointer() >>> 16) + appendedCompressedBytes;
+    }
+
+    /**
+     * Where a record of appended temporary storage is in the target
+     *
+     * @param location the location of the record in the temporary storage.
+     * @param targetRecordsStart where the appended records start in the target.
+     * @return never negative.
+     */
+    private long getLocationInTarget(final long location, final long targetRecordsStart) {
+        if ( ! blockCompressed )
+            return location - recordsStart + targetRecordsStart;
+        final long blockAddress = (location >>> 16) - recordsStart + targetRecordsStart;
+        return (blockAddress << 16) | (location & 0xFFFF);
+    }
+
     public void mergeInto(VariantContextWriterStorage target) {
+        if ( appendable && target.appendable && blockCompressed == target.blockCompressed ) {
+            appendInto(target);
+            return;
+        }
         try {
             if ( ! closed )
                 throw new ReviewedGATKException("Writer not closed, but we are merging into the file!");
@@ -257,4 +439,77 @@ public class VariantContextWriterStorage implements Storage<VariantContextWriter
         }
     }
 
+
+    /**
+     * Merge by appending the records as they were written, whole BGZF blocks when compressed, and by adding the
+     * locations this storage recorded to the index of the target rather than reading the records back.
+     *
+     * @param target the appendable storage to merge into.
+     */
+    private void appendInto(final VariantContextWriterStorage target) {
+        if ( ! closed )
+            throw new ReviewedGATKException("Writer not closed, but we are merging into the file!");
+        final String targetFilePath = target.file != null ? target.file.getAbsolutePath() : "/dev/stdin";
+        logger.debug(String.format("Appending VariantContextWriterStorage from %s into %s", file.getAbsolutePath(), targetFilePath));
+
+        final long targetRecordsStart = target.startOfNextRecords();
+        if ( target.indexCreator != null ) {
+            for ( int i = 0; i < recordLocations.size(); i++ )
+                target.indexCreator.addFeature(recordLocations.getFeature(i), getLocationInTarget(recordLocations.getLocation(i), targetRecordsStart));
+        }
+
+        final OutputStream targetStream = blockCompressed ? target.compressedStream : target.plainStream;
+        try (final FileInputStream sourceStream = new FileInputStream(file)) {
+            final FileChannel sourceChannel = sourceStream.getChannel();
+            final long count = recordsEnd - recordsStart;
+            long transferred = 0;
+            while ( transferred < count )
+                transferred += sourceChannel.transferTo(recordsStart + transferred, count - transferred, Channels.newChannel(targetStream));
+        } catch (IOException e) {
+            throw new UserException.CouldNotReadInputFile(file, "Unable to append records in VCFWriterStorage: ", e);
+        }
+        if ( blockCompressed )
+            target.appendedCompressedBytes += recordsEnd - recordsStart;
+
+        file.delete(); // this should be last to aid in debugging when the process fails
+    }
+
+    /**
+     * The extent and location of the records written to appendable temporary storage, in primitive arrays
+     */
+    private static final class RecordLocations {
+        private String[] contigs = new String[16];
+        private int[] starts = new int[16];
+        private int[] ends = new int[16];
+        private long[] locations = new long[16];
+        private int size = 0;
+
+        private void add(final VariantContext vc, final long location) {
+            if ( size == locations.length ) {
+                final int capacity = size << 1;
+                contigs = Arrays.copyOf(contigs, capacity);
+                starts = Arrays.copyOf(starts, capacity);
+                ends = Arrays.copyOf(ends, capacity);
+                locations = Arrays.copyOf(locations, capacity);
+            }
+            // consecutive records mostly share their contig name, so keep a single copy of it
+            contigs[size] = size > 0 && contigs[size - 1].equals(vc.getContig()) ? contigs[size - 1] : vc.getContig();
+            starts[size] = vc.getStart();
+            ends[size] = vc.getEnd();
+            locations[size] = location;
+            size++;
+        }
+
+        private int size() {
+            return size;
+        }
+
+        private Feature getFeature(final int i) {
+            return new SimpleFeature(contigs[i], starts[i], ends[i]);
+        }
+
+        private long getLocation(final int i) {
+            return locations[i];
+        }
+    }
 }
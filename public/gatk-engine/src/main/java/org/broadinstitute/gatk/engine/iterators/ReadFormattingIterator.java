@@ -27,6 +27,10 @@ package org.broadinstitute.gatk.engine.iterators;
 
 import htsjdk.samtools.SAMRecord;
 import org.apache.log4j.Logger;
+import org.broadinstitute.gatk.utils.instrumentation.Counter;
+import org.broadinstitute.gatk.utils.instrumentation.LatencyHistogram;
+import org.broadinstitute.gatk.utils.instrumentation.MetricsRegistry;
+import org.broadinstitute.gatk.utils.instrumentation.Subsystem;
 import org.broadinstitute.gatk.utils.iterators.GATKSAMIterator;
 import org.broadinstitute.gatk.utils.sam.AlignmentUtils;
 
@@ -43,6 +47,20 @@ public class ReadFormattingIterator implements GATKSAMIterator {
      */
     final protected static Logger logger = Logger.getLogger(ReadFormattingIterator.class);    
 
+    /**
+     * Only one in this many reads is timed, and the read counter is updated in batches of this many reads, so that
+     * the metrics cost much less than decoding the reads.  Must be a power of two.
+     */
+    static final int METRICS_SAMPLING_INTERVAL = 64;
+
+    private static final Counter readsDecoded = MetricsRegistry.getInstance().counter(Subsystem.BAM_DECODE, "reads");
+    private static final LatencyHistogram sampledDecodeTime = MetricsRegistry.getInstance().histogram(Subsystem.BAM_DECODE, "sampledNext");
+
+    /**
+     * The number of reads returned so far
+     */
+    private long readCount = 0;
+
     /**
      * Iterator to which to pass
      */
@@ -87,6 +105,8 @@ public class ReadFormattingIterator implements GATKSAMIterator {
      * Close this iterator.
      */
     public void close() {
+        readsDecoded.add(readCount & (METRICS_SAMPLING_INTERVAL - 1));
+        readCount = 0;
         wrappedIterator.close();
     }
 
@@ -104,7 +124,15 @@ public class ReadFormattingIterator implements GATKSAMIterator {
      *         no next exists.
      */
     public SAMRecord next() {
-        SAMRecord rec = wrappedIterator.next();
+        final SAMRecord rec;
+        if ( (++readCount & (METRICS_SAMPLING_INTERVAL - 1)) == 0 ) {
+            final long startNanos = System.nanoTime();
+            rec = wrappedIterator.next();
+            sampledDecodeTime.recordSince(startNanos);
+            readsDecoded.add(METRICS_SAMPLING_INTERVAL);
+        } else {
+            rec = wrappedIterator.next();
+        }
 
         // Always consolidate the cigar string into canonical form, collapsing zero-length / repeated cigar elements.
         // Downstream code (like LocusIteratorByState) cannot necessarily handle non-consolidated cigar strings.
@@ -32,12 +32,14 @@ import org.broadinstitute.gatk.utils.report.GATKReport;
 import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
 import org.broadinstitute.gatk.utils.exceptions.UserException;
 import org.broadinstitute.gatk.utils.text.XReadLines;
+import org.broadinstitute.gatk.utils.threading.NamedThreadFactory;
 
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * User: carneiro
@@ -52,6 +54,40 @@ public class BQSRGatherer extends Gatherer  {
     private static final String MISSING_OUTPUT_FILE = "missing output file name";
     private static final String MISSING_READ_GROUPS = "Missing read group(s)";
 
+    /**
+     * The default number of threads used to read the input reports.  Gathering is usually run next to other jobs
+     * (e.g. by Queue after a scatter), so it only uses a few of the processors by default.
+     */
+    public static final int DEFAULT_NUM_THREADS = Math.min(4, Runtime.getRuntime().availableProcessors());
+
+    /**
+     * The default number of input reports kept in memory while they are read or wait to be combined
+     */
+    public static final int DEFAULT_MAX_REPORTS_IN_MEMORY = 4;
+
+    private final int nThreads;
+    private final int maxReportsInMemory;
+
+    /**
+     * Create a gatherer that reads the input reports with the default number of threads
+     */
+    public BQSRGatherer() {
+        this(DEFAULT_NUM_THREADS, DEFAULT_MAX_REPORTS_IN_MEMORY);
+    }
+
+    /**
+     * Create a gatherer that reads the input reports with the given number of threads
+     *
+     * @param nThreads           the number of threads used to read the input reports
+     * @param maxReportsInMemory the maximum number of input reports kept in memory at the same time
+     */
+    public BQSRGatherer(final int nThreads, final int maxReportsInMemory) {
+        if ( nThreads < 1 ) throw new IllegalArgumentException("nThreads must be >= 1 but got " + nThreads);
+        if ( maxReportsInMemory < 1 ) throw new IllegalArgumentException("maxReportsInMemory must be >= 1 but got " + maxReportsInMemory);
+        this.nThreads = nThreads;
+        this.maxReportsInMemory = maxReportsInMemory;
+    }
+
     @Override
     public void gather(final List<File> inputs, final File output) {
         final PrintStream outputFile;
@@ -60,7 +96,7 @@ public class BQSRGatherer extends Gatherer  {
         } catch(final FileNotFoundException e) {
             throw new UserException.MissingArgument("output", MISSING_OUTPUT_FILE);
         }
-        final GATKReport report = gatherReport(inputs);
+        final GATKReport report = gatherReport(inputs, nThreads, maxReportsInMemory);
         report.print(outputFile);
     }
 
@@ -71,48 +107,111 @@ public class BQSRGatherer extends Gatherer  {
      * @return gathered recalibration GATK report
      */
     public static GATKReport gatherReport(final List<File> inputs) {
+        return gatherReport(inputs, DEFAULT_NUM_THREADS, DEFAULT_MAX_REPORTS_IN_MEMORY);
+    }
+
+    /**
+     * Gathers the input recalibration reports into a single report, reading the reports with multiple threads.
+     *
+     * The reports are read concurrently, but combined one at a time in the order of the inputs, so the gathered
+     * report doesn't depend on the number of threads.  Besides the report they are combined into, only the reports
+     * being read or waiting to be combined, at most maxReportsInMemory of them, are kept in memory at the same time,
+     * so no more than that many threads are ever busy reading them.
+     *
+     * @param inputs             Input recalibration GATK reports
+     * @param nThreads           the number of threads used to read the input reports
+     * @param maxReportsInMemory the maximum number of input reports read ahead of the one being combined
+     * @return gathered recalibration GATK report
+     */
+    public static GATKReport gatherReport(final List<File> inputs, final int nThreads, final int maxReportsInMemory) {
+        if ( nThreads < 1 ) throw new IllegalArgumentException("nThreads must be >= 1 but got " + nThreads);
+        if ( maxReportsInMemory < 1 ) throw new IllegalArgumentException("maxReportsInMemory must be >= 1 but got " + maxReportsInMemory);
+
         final SortedSet<String> allReadGroups = new TreeSet<String>();
         final LinkedHashMap<File, Set<String>> inputReadGroups = new LinkedHashMap<>();
 
         // Parse the input list for .list files and replace them with the files contained within them
         final List<File> parsedInputs = parseInputList(inputs);
 
-        // Get the read groups from each input report
-        for (final File input : parsedInputs) {
-            final Set<String> readGroups = RecalibrationReport.getReadGroups(input);
-            inputReadGroups.put(input, readGroups);
-            allReadGroups.addAll(readGroups);
-        }
+        final ExecutorService threadPool = Executors.newFixedThreadPool(nThreads, new NamedThreadFactory("BQSRGatherer-thread-%d"));
+        try {
+            // Get the read groups from each input report
+            final List<Future<SortedSet<String>>> readGroupsOfInputs = new ArrayList<>(parsedInputs.size());
+            for (final File input : parsedInputs) {
+                readGroupsOfInputs.add(threadPool.submit(new Callable<SortedSet<String>>() {
+                    @Override
+                    public SortedSet<String> call() {
+                        return RecalibrationReport.getReadGroups(input);
+                    }
+                }));
+            }
+            for (int i = 0; i < parsedInputs.size(); i++) {
+                final Set<String> readGroups = getResult(readGroupsOfInputs.get(i));
+                inputReadGroups.put(parsedInputs.get(i), readGroups);
+                allReadGroups.addAll(readGroups);
+            }
 
-        // Log the read groups that are missing from specific inputs
-        for (Map.Entry<File, Set<String>> entry: inputReadGroups.entrySet()) {
-            final File input = entry.getKey();
-            final Set<String> readGroups = entry.getValue();
-            if (allReadGroups.size() != readGroups.size()) {
-                // Since this is not completely unexpected, more than debug, but less than a proper warning.
-                logger.info(MISSING_READ_GROUPS + ": " + input.getAbsolutePath());
-                for (final Object readGroup: CollectionUtils.subtract(allReadGroups, readGroups)) {
-                    logger.info("  " + readGroup);
+            // Log the read groups that are missing from specific inputs
+            for (Map.Entry<File, Set<String>> entry: inputReadGroups.entrySet()) {
+                final File input = entry.getKey();
+                final Set<String> readGroups = entry.getValue();
+                if (allReadGroups.size() != readGroups.size()) {
+                    // Since this is not completely unexpected, more than debug, but less than a proper warning.
+                    logger.info(MISSING_READ_GROUPS + ": " + input.getAbsolutePath());
+                    for (final Object readGroup: CollectionUtils.subtract(allReadGroups, readGroups)) {
+                        logger.info("  " + readGroup);
+                    }
                 }
             }
-        }
 
-        RecalibrationReport generalReport = null;
-        for (final File input : parsedInputs) {
-            final RecalibrationReport inputReport = new RecalibrationReport(input, allReadGroups);
-            if( inputReport.isEmpty() ) { continue; }
+            // Read ahead of the report being combined, but only by a bounded number of reports
+            final Queue<Future<RecalibrationReport>> pendingReports = new ArrayDeque<>();
+            final Iterator<File> inputsToRead = parsedInputs.iterator();
+
+            RecalibrationReport generalReport = null;
+            while (inputsToRead.hasNext() || !pendingReports.isEmpty()) {
+                while (inputsToRead.hasNext() && pendingReports.size() < maxReportsInMemory) {
+                    final File input = inputsToRead.next();
+                    pendingReports.add(threadPool.submit(new Callable<RecalibrationReport>() {
+                        @Override
+                        public RecalibrationReport call() {
+                            return new RecalibrationReport(input, allReadGroups);
+                        }
+                    }));
+                }
+
+                final RecalibrationReport inputReport = getResult(pendingReports.remove());
+                if( inputReport.isEmpty() ) { continue; }
 
+                if (generalReport == null)
+                    generalReport = inputReport;
+                else
+                    generalReport.combine(inputReport);
+            }
             if (generalReport == null)
-                generalReport = inputReport;
-            else
-                generalReport.combine(inputReport);
-        }
-        if (generalReport == null)
-            throw new ReviewedGATKException(EMPTY_INPUT_LIST);
+                throw new ReviewedGATKException(EMPTY_INPUT_LIST);
 
-        generalReport.calculateQuantizedQualities();
+            generalReport.calculateQuantizedQualities();
+
+            return generalReport.createGATKReport();
+        } finally {
+            threadPool.shutdownNow();
+        }
+    }
 
-        return generalReport.createGATKReport();
+    /**
+     * Waits for the result of reading an input report, rethrowing any exception thrown while reading it
+     */
+    private static <T> T getResult(final Future<T> future) {
+        try {
+            return future.get();
+        } catch (final InterruptedException e) {
+            throw new ReviewedGATKException("Interrupted while reading the recalibration reports", e);
+        } catch (final ExecutionException e) {
+            if ( e.getCause() instanceof RuntimeException )
+                throw (RuntimeException) e.getCause();
+            throw new ReviewedGATKException("Failed to read a recalibration report", e.getCause());
+        }
     }
 
     /**
@@ -323,17 +323,36 @@ public class RecalDatum {
     //static final boolean DEBUG = false;
     static private final double RESOLUTION_BINS_PER_QUAL = 1.0;
 
+    static private final int NUM_BINS = (QualityUtils.MAX_REASONABLE_Q_SCORE + 1) * (int)RESOLUTION_BINS_PER_QUAL;
+
+    // log10 of the error rate implied by the Qempirical of each bin, and of one minus that rate
+    static private final double[] log10ErrorRateOfBin = new double[NUM_BINS];
+    static private final double[] log10OneMinusErrorRateOfBin = new double[NUM_BINS];
+    static {
+        for ( int bin = 0; bin < NUM_BINS; bin++ ) {
+            log10ErrorRateOfBin[bin] = QualityUtils.qualToErrorProbLog10(bin / RESOLUTION_BINS_PER_QUAL);
+            log10OneMinusErrorRateOfBin[bin] = Math.log10(1 - Math.pow(10, log10ErrorRateOfBin[bin]));
+        }
+    }
+
     static public double bayesianEstimateOfEmpiricalQuality(final long nObservations, final long nErrors, final double QReported) {
 
-        final int numBins = (QualityUtils.MAX_REASONABLE_Q_SCORE + 1) * (int)RESOLUTION_BINS_PER_QUAL;
+        final int numBins = NUM_BINS;
 
         final double[] log10Posteriors = new double[numBins];
 
+        // the binomial coefficient of the likelihood is the same in every bin, so compute it just once
+        final int n = cappedObservations(nObservations);
+        final int k = cappedErrors(nObservations, nErrors);
+        final double log10BinomialCoefficient = nObservations == 0 ? 0.0 : MathUtils.log10BinomialCoefficient(n, k);
+
         for ( int bin = 0; bin < numBins; bin++ ) {
 
             final double QEmpOfBin = bin / RESOLUTION_BINS_PER_QUAL;
 
-            log10Posteriors[bin] = log10QempPrior(QEmpOfBin, QReported) + log10QempLikelihood(QEmpOfBin, nObservations, nErrors);
+            final double log10Likelihood = nObservations == 0 ? 0.0 :
+                    log10BinomialLikelihood(log10BinomialCoefficient, log10ErrorRateOfBin[bin], log10OneMinusErrorRateOfBin[bin], n, k);
+            log10Posteriors[bin] = log10QempPrior(QEmpOfBin, QReported) + log10Likelihood;
 
             //if ( DEBUG )
             //    System.out.println(String.format("bin = %d, Qreported = %f, nObservations = %f, nErrors = %f, posteriors = %f", bin, QReported, nObservations, nErrors, log10Posteriors[bin]));
@@ -342,13 +361,37 @@ public class RecalDatum {
         //if ( DEBUG )
         //    System.out.println(String.format("Qreported = %f, nObservations = %f, nErrors = %f", QReported, nObservations, nErrors));
 
-        final double[] normalizedPosteriors = MathUtils.normalizeFromLog10(log10Posteriors);
-        final int MLEbin = MathUtils.maxElementIndex(normalizedPosteriors);
+        final int MLEbin = maxPosteriorBin(log10Posteriors);
 
         final double Qemp = MLEbin / RESOLUTION_BINS_PER_QUAL;
         return Qemp;
     }
 
+    /**
+     * Two log10 posteriors further apart than this can't be rounded to the same value by MathUtils.normalizeFromLog10
+     */
+    static private final double NORMALIZATION_TIE_TOLERANCE = 1e-10;
+
+    /**
+     * Get the bin with the highest posterior, which is the first bin with the highest normalized posterior.
+     *
+     * Normalizing is monotonic, so it can only change the answer by rounding the best bin and another one very close
+     * to it to the same value.  Unless there is such a bin, the best log10 posterior is the answer, and we can skip
+     * converting every bin to linear space.
+     *
+     * @param log10Posteriors the log10 posterior of each bin
+     * @return the index of the bin with the highest posterior
+     */
+    static private int maxPosteriorBin(final double[] log10Posteriors) {
+        final int maxBin = MathUtils.maxElementIndex(log10Posteriors);
+        final double maxPosterior = log10Posteriors[maxBin];
+        boolean needsNormalization = Double.isInfinite(maxPosterior) || Double.isNaN(maxPosterior);
+        for ( int bin = 0; bin < log10Posteriors.length && ! needsNormalization; bin++ )
+            needsNormalization = bin != maxBin && ! (log10Posteriors[bin] < maxPosterior - NORMALIZATION_TIE_TOLERANCE);
+
+        return needsNormalization ? MathUtils.maxElementIndex(MathUtils.normalizeFromLog10(log10Posteriors)) : maxBin;
+    }
+
     /**
      * Quals above this value should be capped down to this value (because they are too high)
      * in the base quality score recalibrator
@@ -385,24 +428,41 @@ public class RecalDatum {
         if ( nObservations == 0 )
             return 0.0;
 
-        // the binomial code requires ints as input (because it does caching).  This should theoretically be fine because
-        // there is plenty of precision in 2^31 observations, but we need to make sure that we don't have overflow
-        // before casting down to an int.
-        if ( nObservations > MAX_NUMBER_OF_OBSERVATIONS ) {
-            // we need to decrease nErrors by the same fraction that we are decreasing nObservations
-            final double fraction = (double)MAX_NUMBER_OF_OBSERVATIONS / (double)nObservations;
-            nErrors = Math.round((double)nErrors * fraction);
-            nObservations = MAX_NUMBER_OF_OBSERVATIONS;
-        }
+        final int n = cappedObservations(nObservations);
+        final int k = cappedErrors(nObservations, nErrors);
 
         // this is just a straight binomial PDF
-        double log10Prob = MathUtils.log10BinomialProbability((int)nObservations, (int)nErrors, QualityUtils.qualToErrorProbLog10(Qempirical));
-        if ( Double.isInfinite(log10Prob) || Double.isNaN(log10Prob) )
-            log10Prob = -Double.MAX_VALUE;
+        final double log10p = QualityUtils.qualToErrorProbLog10(Qempirical);
+        return log10BinomialLikelihood(MathUtils.log10BinomialCoefficient(n, k), log10p, Math.log10(1 - Math.pow(10, log10p)), n, k);
+    }
 
-        //if ( DEBUG )
-        //    System.out.println(String.format("Qemp = %f, log10Likelihood = %f", Qempirical, log10Prob));
+    /**
+     * The binomial code requires ints as input (because it does caching).  This should theoretically be fine because
+     * there is plenty of precision in 2^31 observations, but we need to make sure that we don't have overflow
+     * before casting down to an int.
+     */
+    static private int cappedObservations(final long nObservations) {
+        return (int)Math.min(nObservations, MAX_NUMBER_OF_OBSERVATIONS);
+    }
 
+    /**
+     * When the observations are capped, we need to decrease nErrors by the same fraction that we are decreasing nObservations
+     */
+    static private int cappedErrors(final long nObservations, final long nErrors) {
+        if ( nObservations <= MAX_NUMBER_OF_OBSERVATIONS )
+            return (int)nErrors;
+        final double fraction = (double)MAX_NUMBER_OF_OBSERVATIONS / (double)nObservations;
+        return (int)Math.round((double)nErrors * fraction);
+    }
+
+    /**
+     * The binomial probability of k errors in n observations, computed exactly as MathUtils.log10BinomialProbability
+     * but from a precomputed binomial coefficient and error rates
+     */
+    static private double log10BinomialLikelihood(final double log10BinomialCoefficient, final double log10p, final double log10OneMinusP, final int n, final int k) {
+        double log10Prob = log10BinomialCoefficient + log10p * k + log10OneMinusP * (n - k);
+        if ( Double.isInfinite(log10Prob) || Double.isNaN(log10Prob) )
+            log10Prob = -Double.MAX_VALUE;
         return log10Prob;
     }
-}
\ No newline at end of file
+}
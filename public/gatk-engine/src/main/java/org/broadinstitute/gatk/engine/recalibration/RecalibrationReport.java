@@ -106,17 +106,17 @@ public class RecalibrationReport {
      * @return the unique read groups
      */
     public static SortedSet<String> getReadGroups(final File recalFile) {
-        return getReadGroups(new GATKReport(recalFile));
+        // the read group table is written before the (much larger) quality score and covariates tables, so skip those
+        return getReadGroups(GATKReport.readTable(recalFile, RecalUtils.READGROUP_REPORT_TABLE_TITLE));
     }
 
     /**
      * Gets the unique read groups in the table
      *
-     * @param report the GATKReport containing the table with RecalUtils.READGROUP_REPORT_TABLE_TITLE
+     * @param reportTable the GATKReportTable titled RecalUtils.READGROUP_REPORT_TABLE_TITLE
      * @return the unique read groups
      */
-    private static SortedSet<String> getReadGroups(final GATKReport report) {
-        final GATKReportTable reportTable = report.getTable(RecalUtils.READGROUP_REPORT_TABLE_TITLE);
+    private static SortedSet<String> getReadGroups(final GATKReportTable reportTable) {
         final SortedSet<String> readGroups = new TreeSet<String>();
         for ( int i = 0; i < reportTable.getNumRows(); i++ )
             readGroups.add(reportTable.get(i, RecalUtils.READGROUP_COLUMN_NAME).toString());
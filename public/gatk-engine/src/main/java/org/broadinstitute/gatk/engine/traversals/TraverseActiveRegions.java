@@ -39,6 +39,7 @@ import org.broadinstitute.gatk.engine.walkers.Walker;
 import org.broadinstitute.gatk.utils.GenomeLoc;
 import org.broadinstitute.gatk.utils.Utils;
 import org.broadinstitute.gatk.utils.activeregion.ActiveRegion;
+import org.broadinstitute.gatk.utils.activeregion.ActiveRegionTrace;
 import org.broadinstitute.gatk.utils.activeregion.ActivityProfile;
 import org.broadinstitute.gatk.utils.activeregion.ActivityProfileState;
 import org.broadinstitute.gatk.utils.activeregion.BandPassActivityProfile;
@@ -142,6 +143,11 @@ public final class TraverseActiveRegions<M, T> extends TraversalEngine<M,T,Activ
      */
     private boolean streamsInitialized = false;
 
+    /**
+     * The per-region profiling trace, or null if the walker was not asked for one
+     */
+    private ActiveRegionTrace activeRegionTrace = null;
+
     @Override
     public void initialize(GenomeAnalysisEngine engine, Walker walker, ProgressMeter progressMeter) {
         super.initialize(engine, walker, progressMeter);
@@ -267,6 +273,7 @@ public final class TraverseActiveRegions<M, T> extends TraversalEngine<M,T,Activ
         if ( LOG_READ_CARRYING || logger.isDebugEnabled() )
             logger.info(String.format("TraverseActiveRegions.traverse: Shard is %s", dataProvider));
 
+        initializeOutputStreamsIfNecessary();
         nanoScheduler.setDebug(false);
         final Iterator<MapData> activeRegionIterator = new ActiveRegionIterator(dataProvider);
         final TraverseActiveRegionMap myMap = new TraverseActiveRegionMap();
@@ -507,7 +514,7 @@ public final class TraverseActiveRegions<M, T> extends TraversalEngine<M,T,Activ
     // -------------------------------------------------------------------------------------
 
     /**
-     * Initialize the debugging output streams (activity profile and active regions), if not done so already
+     * Initialize the debugging output streams (activity profile, active regions and trace), if not done so already
      */
     @Ensures("streamsInitialized == true")
     private void initializeOutputStreamsIfNecessary() {
@@ -520,6 +527,10 @@ public final class TraverseActiveRegions<M, T> extends TraversalEngine<M,T,Activ
             if ( walker.activeRegionOutStream != null ) {
                 printIGVFormatHeader(walker.activeRegionOutStream, "line", "ActiveRegions");
             }
+
+            if ( walker.activeRegionTraceOutStream != null ) {
+                activeRegionTrace = new ActiveRegionTrace(walker.activeRegionTraceOutStream);
+            }
         }
     }
 
@@ -706,7 +717,15 @@ public final class TraverseActiveRegions<M, T> extends TraversalEngine<M,T,Activ
         @Override
         public M apply(final MapData mapData) {
             if ( DEBUG ) logger.info("Executing walker.map for " + mapData.activeRegion + " in thread " + Thread.currentThread().getName());
-            return walker.map(mapData.activeRegion, mapData.tracker);
+            if ( activeRegionTrace == null )
+                return walker.map(mapData.activeRegion, mapData.tracker);
+
+            activeRegionTrace.startRegion(mapData.activeRegion);
+            try {
+                return walker.map(mapData.activeRegion, mapData.tracker);
+            } finally {
+                activeRegionTrace.endRegion();
+            }
         }
     }
 
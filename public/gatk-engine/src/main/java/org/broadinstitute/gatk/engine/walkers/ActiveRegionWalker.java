@@ -84,6 +84,18 @@ public abstract class ActiveRegionWalker<MapType, ReduceType> extends Walker<Map
     @Output(fullName="activeRegionOut", shortName="ARO", doc="Output the active region to this IGV formatted file", required = false, defaultToStdout = false)
     public PrintStream activeRegionOutStream = null;
 
+    /**
+     * If provided, this walker will write out one tab-delimited line per active region it processes, with the span
+     * of the region, its number of reads, and the time and memory spent on it.  Walkers such as the HaplotypeCaller
+     * also report the haplotypes and kmer sizes of their assembly and break the time down into assembly, PairHMM,
+     * genotyping, annotation and reference confidence (gVCF) phases.
+     *
+     * Intended to find the regions responsible for slow shards, and to tune the limits on reads and haplotypes per region
+     */
+    @Advanced
+    @Output(fullName="activeRegionTrace", shortName="activeRegionTrace", doc="Output a per-active-region profiling trace to this file", required = false, defaultToStdout = false)
+    public PrintStream activeRegionTraceOutStream = null;
+
     @Advanced
     @Input(fullName="activeRegionIn", shortName="AR", doc="Use this interval list file as the active regions to process", required = false)
     protected List<IntervalBinding<Feature>> activeRegionBindings = null;
@@ -0,0 +1,44 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.engine.walkers;
+
+import java.util.Set;
+
+/**
+ * Walkers that implement this interface only look at the genotypes of some samples, or at no genotypes at all, of
+ * their VCF rods.  The engine then skips parsing the genotype columns of the other samples, and the VariantContexts
+ * the walker receives only contain genotypes for the declared samples.
+ *
+ * This is called before the walker is initialized, so the answer can only depend on the command line arguments.
+ */
+public interface DecodesSampleSubset {
+    /**
+     * @param rodName the name of a rod bound on the command line
+     * @return the samples whose genotypes are needed from this rod, an empty set if no genotypes are needed,
+     *         or null if all samples are needed
+     */
+    public Set<String> getSamplesToDecode(final String rodName);
+}
@@ -0,0 +1,153 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.engine.datasources.rmd;
+
+import htsjdk.samtools.reference.ReferenceSequenceFile;
+import htsjdk.samtools.util.CloseableIterator;
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.broadinstitute.gatk.utils.GenomeLoc;
+import org.broadinstitute.gatk.utils.GenomeLocParser;
+import org.broadinstitute.gatk.utils.commandline.Tags;
+import org.broadinstitute.gatk.utils.fasta.CachingIndexedFastaSequenceFile;
+import org.broadinstitute.gatk.utils.refdata.tracks.RMDTrack;
+import org.broadinstitute.gatk.utils.refdata.tracks.RMDTrackBuilder;
+import org.broadinstitute.gatk.utils.refdata.utils.GATKFeature;
+import org.broadinstitute.gatk.utils.refdata.utils.LocationAwareSeekableRODIterator;
+import org.broadinstitute.gatk.utils.refdata.utils.RMDTriplet;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+public class FeatureWindowCacheUnitTest extends BaseTest {
+    private ReferenceSequenceFile seq;
+    private GenomeLocParser genomeLocParser;
+    private RMDTriplet triplet;
+    private RMDTrackBuilder builder;
+
+    @BeforeClass
+    public void init() throws IOException {
+        seq = new CachingIndexedFastaSequenceFile(new File(exampleFASTA));
+        genomeLocParser = new GenomeLocParser(seq);
+        triplet = new RMDTriplet("dbsnp", "VCF", publicTestDir + "exampleDBSNP.vcf", RMDTriplet.RMDStorageType.FILE, new Tags());
+        builder = new RMDTrackBuilder(seq.getSequenceDictionary(), genomeLocParser, null, true, null);
+    }
+
+    @DataProvider(name = "WindowSizes")
+    public Object[][] makeWindowSizes() {
+        // small windows, so that many features span several of them
+        return new Object[][]{ {1}, {7}, {100}, {1000}, {FeatureWindowCache.DEFAULT_WINDOW_SIZE} };
+    }
+
+    @Test(dataProvider = "WindowSizes")
+    public void testQueriesMatchTrack(final int windowSize) throws IOException {
+        final RMDTrack track = builder.createInstanceOfTrack(triplet);
+        final FeatureWindowCache cache = new FeatureWindowCache(builder.createInstanceOfTrack(triplet), genomeLocParser, seq.getSequenceDictionary(), windowSize, 1);
+
+        for ( final GenomeLoc interval : makeIntervals() )
+            Assert.assertEquals(describe(cache.query(interval)), describe(track.query(interval)), "Features differ for " + interval);
+
+        Assert.assertEquals(describe(cache.iterator()), describe(track.getIterator()));
+
+        cache.close();
+        track.close();
+    }
+
+    @Test
+    public void testConcurrentQueries() throws Exception {
+        final RMDTrack track = builder.createInstanceOfTrack(triplet);
+        final List<GenomeLoc> intervals = makeIntervals();
+        final List<List<String>> expected = new ArrayList<>();
+        for ( final GenomeLoc interval : intervals )
+            expected.add(describe(track.query(interval)));
+        track.close();
+
+        final int nThreads = 4;
+        final FeatureWindowCache cache = new FeatureWindowCache(builder.createInstanceOfTrack(triplet), genomeLocParser, seq.getSequenceDictionary(), 50, nThreads);
+        final ExecutorService executor = Executors.newFixedThreadPool(nThreads);
+        final List<Future<List<List<String>>>> results = new ArrayList<>();
+        for ( int i = 0; i < nThreads; i++ ) {
+            results.add(executor.submit(new Callable<List<List<String>>>() {
+                @Override
+                public List<List<String>> call() {
+                    final List<List<String>> observed = new ArrayList<>();
+                    for ( final GenomeLoc interval : intervals )
+                        observed.add(describe(cache.query(interval)));
+                    return observed;
+                }
+            }));
+        }
+
+        for ( final Future<List<List<String>>> result : results )
+            Assert.assertEquals(result.get(), expected);
+
+        executor.shutdown();
+        cache.close();
+    }
+
+    @Test
+    public void testCachedPoolSharesOneCache() {
+        final ReferenceOrderedCachedDataPool pool = new ReferenceOrderedCachedDataPool(triplet, builder, seq.getSequenceDictionary(), genomeLocParser, 2);
+        final GenomeLoc interval = genomeLocParser.createGenomeLoc("chr1", 10000, 20000);
+
+        final LocationAwareSeekableRODIterator iterator1 = pool.iterator(new MappedStreamSegment(interval));
+        final LocationAwareSeekableRODIterator iterator2 = pool.iterator(new MappedStreamSegment(interval));
+        Assert.assertEquals(pool.numIterators(), 2);
+        Assert.assertEquals(iterator1.next().getLocation(), iterator2.next().getLocation());
+        Assert.assertNotNull(pool.getHeader());
+
+        pool.release(iterator1);
+        pool.release(iterator2);
+        Assert.assertEquals(pool.numAvailableIterators(), 2);
+    }
+
+    private List<GenomeLoc> makeIntervals() {
+        final List<GenomeLoc> intervals = new ArrayList<>();
+        final int contigLength = seq.getSequenceDictionary().getSequence("chr1").getSequenceLength();
+        intervals.add(genomeLocParser.createOverEntireContig("chr1"));
+        for ( int start = 1; start < contigLength; start += 997 )
+            intervals.add(genomeLocParser.createGenomeLoc("chr1", start, Math.min(contigLength, start + 2500)));
+        intervals.add(genomeLocParser.createGenomeLoc("chr1", 10145, 10145));
+        intervals.add(genomeLocParser.createGenomeLoc("chr1", 10144, 10234));
+        return intervals;
+    }
+
+    private static List<String> describe(final CloseableIterator<GATKFeature> iterator) {
+        final List<String> features = new ArrayList<>();
+        while ( iterator.hasNext() ) {
+            final GATKFeature feature = iterator.next();
+            features.add(feature.getLocation() + " " + feature.getUnderlyingObject());
+        }
+        iterator.close();
+        return features;
+    }
+}
@@ -0,0 +1,146 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.engine.io.storage;
+
+import htsjdk.samtools.util.BlockCompressedInputStream;
+import htsjdk.tribble.AbstractFeatureReader;
+import htsjdk.tribble.Tribble;
+import htsjdk.tribble.util.TabixUtils;
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.VariantContextBuilder;
+import htsjdk.variant.vcf.VCFCodec;
+import htsjdk.variant.vcf.VCFHeader;
+import org.broadinstitute.gatk.engine.GenomeAnalysisEngine;
+import org.broadinstitute.gatk.engine.arguments.GATKArgumentCollection;
+import org.broadinstitute.gatk.engine.io.DirectOutputTracker;
+import org.broadinstitute.gatk.engine.io.stubs.VariantContextWriterStub;
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class VariantContextWriterStorageUnitTest extends BaseTest {
+    private static final int N_SHARDS = 4;
+    // enough records for the records of each shard to span several BGZF blocks
+    private static final int RECORDS_PER_SHARD = 2000;
+    private static final Allele REF = Allele.create("A", true);
+    private static final Allele ALT = Allele.create("C");
+
+    private GenomeAnalysisEngine engine;
+
+    @BeforeClass
+    public void setUp() {
+        engine = new GenomeAnalysisEngine();
+        engine.setArguments(new GATKArgumentCollection());
+        engine.setReferenceDataSource(new File(exampleFASTA));
+    }
+
+    private VariantContext makeRecord(final int i) {
+        final int start = i * 10 + 1;
+        return new VariantContextBuilder("test", "chr1", start, start, Arrays.asList(REF, ALT))
+                .id(String.format("rec%d_%x", i, (long)i * 2654435761L)).make();
+    }
+
+    private static int countBlocks(final File file) throws IOException {
+        final Set<Long> blockAddresses = new HashSet<>();
+        try ( final BlockCompressedInputStream stream = new BlockCompressedInputStream(file) ) {
+            while ( stream.readLine() != null )
+                blockAddresses.add(stream.getFilePointer() >>> 16);
+        }
+        return blockAddresses.size();
+    }
+
+    @DataProvider(name = "AppendedShards")
+    public Object[][] makeAppendedShards() {
+        return new Object[][]{{".vcf"}, {".vcf.gz"}};
+    }
+
+    /**
+     * Merge several shards, each spanning more than one BGZF block when compressed, and check that the index of the
+     * target locates every record where it was appended
+     */
+    @Test(dataProvider = "AppendedShards")
+    public void testIndexLocatesAppendedRecords(final String extension) throws IOException {
+        final File output = createTempFile("appendedShards", extension);
+        final boolean compressed = extension.endsWith(".gz");
+        final File index = compressed ? new File(output.getAbsolutePath() + TabixUtils.STANDARD_INDEX_EXTENSION) : Tribble.indexFile(output);
+        index.deleteOnExit();
+
+        final VariantContextWriterStub stub = new VariantContextWriterStub(engine, output, Collections.emptyList());
+        stub.setCompressed(compressed);
+        final DirectOutputTracker tracker = new DirectOutputTracker();
+        stub.register(tracker);
+        final VCFHeader header = new VCFHeader();
+        header.setWriteEngineHeaders(false);
+        stub.writeHeader(header);
+        final VariantContextWriterStorage target = (VariantContextWriterStorage)tracker.getStorage(stub);
+
+        final List<VariantContext> records = new ArrayList<>();
+        for ( int shard = 0; shard < N_SHARDS; shard++ ) {
+            final File tempFile = createTempFile("appendedShard" + shard, extension);
+            final VariantContextWriterStorage storage = new VariantContextWriterStorage(stub, tempFile);
+            for ( int i = 0; i < RECORDS_PER_SHARD; i++ ) {
+                final VariantContext vc = makeRecord(shard * RECORDS_PER_SHARD + i);
+                storage.add(vc);
+                records.add(vc);
+            }
+            storage.close();
+            if ( compressed )
+                Assert.assertTrue(countBlocks(tempFile) > 2, "shard " + shard + " should span several BGZF blocks");
+            storage.mergeInto(target);
+        }
+        target.close();
+
+        Assert.assertTrue(index.exists());
+        try ( final AbstractFeatureReader<VariantContext, ?> reader = AbstractFeatureReader.getFeatureReader(output.getAbsolutePath(), new VCFCodec(), true) ) {
+            int nRead = 0;
+            for ( final VariantContext vc : reader.iterator() ) {
+                Assert.assertEquals(vc.getID(), records.get(nRead).getID());
+                nRead++;
+            }
+            Assert.assertEquals(nRead, records.size());
+
+            for ( final VariantContext expected : records ) {
+                final List<VariantContext> found = new ArrayList<>();
+                for ( final VariantContext vc : reader.query(expected.getContig(), expected.getStart(), expected.getEnd()) )
+                    found.add(vc);
+                Assert.assertEquals(found.size(), 1, "query at " + expected.getStart());
+                Assert.assertEquals(found.get(0).getID(), expected.getID());
+            }
+        }
+    }
+}
@@ -229,6 +229,47 @@ public class RecalDatumUnitTest extends BaseTest {
         Assert.assertEquals(RecalDatum.bayesianEstimateOfEmpiricalQuality(1000000, 10, Qrep), Qrep + 16.0);
     }
 
+    /**
+     * The likelihood of Qempirical given the observations, from the binomial probability of the errors
+     */
+    private static double log10BinomialLikelihood(final double Qempirical, long nObservations, long nErrors) {
+        if ( nObservations == 0 )
+            return 0.0;
+
+        // log10BinomialProbability takes ints, so scale the counts down the way RecalDatum does
+        final long maxObservations = Integer.MAX_VALUE - 1;
+        if ( nObservations > maxObservations ) {
+            nErrors = Math.round((double)nErrors * ((double)maxObservations / (double)nObservations));
+            nObservations = maxObservations;
+        }
+
+        final double log10Prob = MathUtils.log10BinomialProbability((int)nObservations, (int)nErrors, QualityUtils.qualToErrorProbLog10(Qempirical));
+        return Double.isInfinite(log10Prob) || Double.isNaN(log10Prob) ? -Double.MAX_VALUE : log10Prob;
+    }
+
+    @Test
+    public void testBayesianEstimateMatchesNormalizedPosteriors() {
+        final long[] observations = new long[] {0, 1, 10, 1000, 123456, 100000000, 3L * Integer.MAX_VALUE};
+        final double[] errorRates = new double[] {0.0, 1e-6, 1e-4, 1e-3, 0.01, 0.1, 0.5, 1.0};
+
+        for ( int Qrep = 0; Qrep <= QualityUtils.MAX_REASONABLE_Q_SCORE; Qrep += 3 ) {
+            for ( final long nObservations : observations ) {
+                for ( final double errorRate : errorRates ) {
+                    final long nErrors = (long)(nObservations * errorRate);
+
+                    // the posteriors as computed bin by bin with the full binomial probability, and normalized
+                    final double[] log10Posteriors = new double[QualityUtils.MAX_REASONABLE_Q_SCORE + 1];
+                    for ( int bin = 0; bin < log10Posteriors.length; bin++ )
+                        log10Posteriors[bin] = RecalDatum.log10QempPrior(bin, Qrep) + log10BinomialLikelihood(bin, nObservations, nErrors);
+                    final double expected = MathUtils.maxElementIndex(MathUtils.normalizeFromLog10(log10Posteriors));
+
+                    Assert.assertEquals(RecalDatum.bayesianEstimateOfEmpiricalQuality(nObservations, nErrors, Qrep), expected,
+                            "Qrep " + Qrep + " observations " + nObservations + " errors " + nErrors);
+                }
+            }
+        }
+    }
+
     @Test
     public void testlog10QempLikelihood() {
 
@@ -25,21 +25,25 @@
 
 package org.broadinstitute.gatk.tools.walkers.coverage;
 
+import htsjdk.samtools.reference.ReferenceSequenceFile;
+import org.broadinstitute.gatk.engine.filters.DuplicateReadFilter;
+import org.broadinstitute.gatk.engine.filters.FailsVendorQualityCheckFilter;
+import org.broadinstitute.gatk.engine.filters.NotPrimaryAlignmentFilter;
+import org.broadinstitute.gatk.engine.filters.UnmappedReadFilter;
 import org.broadinstitute.gatk.utils.commandline.Advanced;
 import org.broadinstitute.gatk.utils.commandline.Argument;
 import org.broadinstitute.gatk.utils.commandline.Output;
 import org.broadinstitute.gatk.engine.CommandLineGATK;
-import org.broadinstitute.gatk.utils.contexts.AlignmentContext;
 import org.broadinstitute.gatk.utils.contexts.ReferenceContext;
+import org.broadinstitute.gatk.utils.locusiterator.ReadCoverageSweep;
 import org.broadinstitute.gatk.utils.refdata.RefMetaDataTracker;
-import org.broadinstitute.gatk.engine.walkers.By;
-import org.broadinstitute.gatk.engine.walkers.DataSource;
-import org.broadinstitute.gatk.engine.walkers.LocusWalker;
+import org.broadinstitute.gatk.engine.walkers.ReadFilters;
+import org.broadinstitute.gatk.engine.walkers.ReadWalker;
 import org.broadinstitute.gatk.utils.*;
 import org.broadinstitute.gatk.utils.exceptions.UserException;
 import org.broadinstitute.gatk.utils.help.DocumentedGATKFeature;
 import org.broadinstitute.gatk.utils.help.HelpConstants;
-import org.broadinstitute.gatk.utils.pileup.PileupElement;
+import org.broadinstitute.gatk.utils.sam.GATKSAMRecord;
 
 import java.io.File;
 import java.io.FileNotFoundException;
@@ -121,8 +125,8 @@ import java.io.PrintStream;
  * @since May 7, 2010
  */
 @DocumentedGATKFeature( groupName = HelpConstants.DOCS_CAT_QC, extraDocs = {CommandLineGATK.class} )
-@By(DataSource.REFERENCE)
-public class CallableLoci extends LocusWalker<CallableLoci.CallableBaseState, CallableLoci.Integrator> {
+@ReadFilters({UnmappedReadFilter.class,NotPrimaryAlignmentFilter.class,DuplicateReadFilter.class,FailsVendorQualityCheckFilter.class})
+public class CallableLoci extends ReadWalker<Integer, Integer> {
     @Output
     PrintStream out;
 
@@ -238,10 +242,19 @@ public class CallableLoci extends LocusWalker<CallableLoci.CallableBaseState, Ca
     // STANDARD WALKER METHODS
     ////////////////////////////////////////////////////////////////////////////////////
 
-    @Override
-    public boolean includeReadsWithDeletionAtLoci() {
-        return true;
-    }
+    /**
+     * The depths computed for each locus: of all reads, of reads with MAPQ <= maxLowMAPQ, and of QC+ bases
+     */
+    private static final int RAW_DEPTH = 0, LOW_MAPQ_DEPTH = 1, QC_DEPTH = 2;
+
+    /**
+     * The reference is read for each segment of constant depth in windows of at most this many bases
+     */
+    private static final int REFERENCE_WINDOW = 65536;
+
+    private ReadCoverageSweep sweep;
+    private ReferenceSequenceFile reference;
+    private final Integrator integrator = new Integrator();
 
     @Override
     public void initialize() {
@@ -255,6 +268,19 @@ public class CallableLoci extends LocusWalker<CallableLoci.CallableBaseState, Ca
         } catch (FileNotFoundException e) {
             throw new UserException.CouldNotCreateOutputFile(summaryFile, e);
         }
+
+        // the reads only tell us where the depths change, so walk every locus of the intervals through the sweep
+        GenomeLocSortedSet intervals = getToolkit().getIntervals();
+        if (intervals == null)
+            intervals = GenomeLocSortedSet.createSetFromSequenceDictionary(getMasterSequenceDictionary());
+
+        reference = getToolkit().getReferenceDataSource().getReference();
+        sweep = new ReadCoverageSweep(3, true, intervals, new ReadCoverageSweep.SegmentHandler() {
+            @Override
+            public void addSegment(final GenomeLoc interval, final int start, final int stop, final int[] depths) {
+                callSegment(interval.getContig(), start, stop, depths);
+            }
+        });
     }
 
     protected static class Integrator {
@@ -301,68 +327,90 @@ public class CallableLoci extends LocusWalker<CallableLoci.CallableBaseState, Ca
     }
 
     @Override
-    public CallableBaseState map(RefMetaDataTracker tracker, ReferenceContext ref, AlignmentContext context) {
-        CalledState state;
-
-        if ( BaseUtils.isNBase(ref.getBase())) {
-            state = CalledState.REF_N;
-        } else {
-            // count up the depths of all and QC+ bases
-            int rawDepth = 0, QCDepth = 0, lowMAPQDepth = 0;
-            for (PileupElement e : context.getBasePileup()) {
-                rawDepth++;
-
-                if (e.getMappingQual() <= maxLowMAPQ)
-                    lowMAPQDepth++;
+    public Integer map(ReferenceContext ref, GATKSAMRecord read, RefMetaDataTracker metaDataTracker) {
+        sweep.addRead(read, RAW_DEPTH);
 
-                if (e.getMappingQual() >= minMappingQuality && (e.getQual() >= minBaseQuality || e.isDeletion())) {
-                    QCDepth++;
-                }
-            }
+        if (read.getMappingQuality() <= maxLowMAPQ)
+            sweep.addRead(read, LOW_MAPQ_DEPTH);
 
-            //System.out.printf("%s rawdepth = %d QCDepth = %d lowMAPQ = %d%n", context.getLocation(), rawDepth, QCDepth, lowMAPQDepth);
-            if (rawDepth == 0) {
-                state = CalledState.NO_COVERAGE;
-            } else if (rawDepth >= minDepthLowMAPQ && MathUtils.ratio(lowMAPQDepth, rawDepth) >= maxLowMAPQFraction) {
-                state = CalledState.POOR_MAPPING_QUALITY;
-            } else if (QCDepth < minDepth) {
-                state = CalledState.LOW_COVERAGE;
-            } else if (rawDepth >= maxDepth && maxDepth != -1) {
-                state = CalledState.EXCESSIVE_COVERAGE;
-            } else {
-                state = CalledState.CALLABLE;
-            }
-        }
+        if (read.getMappingQuality() >= minMappingQuality)
+            sweep.addRead(read, QC_DEPTH, minBaseQuality);
 
-        return new CallableBaseState(getToolkit().getGenomeLocParser(), context.getLocation(), state);
+        return 1;
     }
 
     @Override
-    public Integrator reduceInit() {
-        return new Integrator();
+    public Integer reduceInit() {
+        return 0;
     }
 
     @Override
-    public Integrator reduce(CallableBaseState state, Integrator integrator) {
-        // update counts
-        integrator.counts[state.getState().ordinal()]++;
+    public Integer reduce(Integer value, Integer sum) {
+        return value + sum;
+    }
 
-        if (outputFormat == OutputFormat.STATE_PER_BASE) {
-            out.println(state.toString());
+    /**
+     * Calls the state of a run of loci with the same depths, splitting off the runs of N bases in the reference
+     */
+    private void callSegment(final String contig, final int start, final int stop, final int[] depths) {
+        final CalledState state = callState(depths[RAW_DEPTH], depths[LOW_MAPQ_DEPTH], depths[QC_DEPTH]);
+
+        for (int windowStart = start; windowStart <= stop; windowStart += REFERENCE_WINDOW) {
+            final int windowStop = (int)Math.min((long)windowStart + REFERENCE_WINDOW - 1, stop);
+            final byte[] bases = reference.getSubsequenceAt(contig, windowStart, windowStop).getBases();
+
+            int runStart = 0;
+            for (int i = 1; i <= bases.length; i++) {
+                if (i == bases.length || BaseUtils.isNBase(bases[i]) != BaseUtils.isNBase(bases[runStart])) {
+                    integrate(contig, windowStart + runStart, windowStart + i - 1, BaseUtils.isNBase(bases[runStart]) ? CalledState.REF_N : state);
+                    runStart = i;
+                }
+            }
         }
+    }
 
-        // format is integrating
-        if (integrator.state == null)
-            integrator.state = state;
-        else if (state.getLocation().getStart() != integrator.state.getLocation().getStop() + 1 ||
-                integrator.state.changingState(state.getState())) {
-            out.println(integrator.state.toString());
-            integrator.state = state;
+    private CalledState callState(final int rawDepth, final int lowMAPQDepth, final int QCDepth) {
+        if (rawDepth == 0) {
+            return CalledState.NO_COVERAGE;
+        } else if (rawDepth >= minDepthLowMAPQ && MathUtils.ratio(lowMAPQDepth, rawDepth) >= maxLowMAPQFraction) {
+            return CalledState.POOR_MAPPING_QUALITY;
+        } else if (QCDepth < minDepth) {
+            return CalledState.LOW_COVERAGE;
+        } else if (rawDepth >= maxDepth && maxDepth != -1) {
+            return CalledState.EXCESSIVE_COVERAGE;
         } else {
-            integrator.state.update(state.getLocation());
+            return CalledState.CALLABLE;
         }
+    }
+
+    /**
+     * Adds a run of loci in the same state to the counts and the output
+     */
+    private void integrate(final String contig, final int start, final int stop, final CalledState state) {
+        // update counts
+        integrator.counts[state.ordinal()] += stop - start + 1;
 
-        return integrator;
+        // format is integrating
+        final CallableBaseState last = integrator.state;
+        final boolean extendsLast = last != null && last.getLocation().getContig().equals(contig) &&
+                start == last.getLocation().getStop() + 1 && ! last.changingState(state);
+
+        if (outputFormat == OutputFormat.STATE_PER_BASE) {
+            // the run being integrated is printed right after the first base following it
+            out.println(String.format("%s\t%d\t%d\t%s", contig, start - 1, start, state));
+            if (last != null && ! extendsLast)
+                out.println(last.toString());
+            for (int pos = start + 1; pos <= stop; pos++)
+                out.println(String.format("%s\t%d\t%d\t%s", contig, pos - 1, pos, state));
+        } else if (last != null && ! extendsLast) {
+            out.println(last.toString());
+        }
+
+        final GenomeLocParser genomeLocParser = getToolkit().getGenomeLocParser();
+        if (extendsLast)
+            last.update(genomeLocParser.createGenomeLoc(contig, start, stop));
+        else
+            integrator.state = new CallableBaseState(genomeLocParser, genomeLocParser.createGenomeLoc(contig, start, stop), state);
     }
 
 
@@ -371,22 +419,22 @@ public class CallableLoci extends LocusWalker<CallableLoci.CallableBaseState, Ca
     ////////////////////////////////////////////////////////////////////////////////////
 
     @Override
-    public void onTraversalDone(Integrator result) {
+    public void onTraversalDone(Integer result) {
+        sweep.finish();
+
         // print out the last state
-        if (result != null) {
-            if (outputFormat == OutputFormat.BED)  // get the last interval
-                out.println(result.state.toString());
-
-            try {
-                PrintStream summaryOut = new PrintStream(summaryFile);
-                summaryOut.printf("%30s %s%n", "state", "nBases");
-                for (CalledState state : CalledState.values()) {
-                    summaryOut.printf("%30s %d%n", state, result.counts[state.ordinal()]);
-                }
-                summaryOut.close();
-            } catch (FileNotFoundException e) {
-                throw new UserException.CouldNotCreateOutputFile(summaryFile, e);
+        if (outputFormat == OutputFormat.BED && integrator.state != null)  // get the last interval
+            out.println(integrator.state.toString());
+
+        try {
+            PrintStream summaryOut = new PrintStream(summaryFile);
+            summaryOut.printf("%30s %s%n", "state", "nBases");
+            for (CalledState state : CalledState.values()) {
+                summaryOut.printf("%30s %d%n", state, integrator.counts[state.ordinal()]);
             }
+            summaryOut.close();
+        } catch (FileNotFoundException e) {
+            throw new UserException.CouldNotCreateOutputFile(summaryFile, e);
         }
     }
-}
\ No newline at end of file
+}
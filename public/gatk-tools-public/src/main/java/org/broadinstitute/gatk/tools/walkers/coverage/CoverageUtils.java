@@ -44,6 +44,11 @@ import java.util.*;
  */
 public class CoverageUtils {
 
+    /**
+     * The number of base counts per sample or read group, indexed by the index fields of BaseUtils
+     */
+    public static final int NUM_BASE_COUNTS = BaseUtils.Base.values().length;
+
     public enum CountPileupType {
         /**
          * Count all reads independently (even if from the same fragment).
@@ -69,7 +74,7 @@ public class CoverageUtils {
      * @return
      */
     public static int[] getBaseCounts(AlignmentContext context, int minMapQ, int minBaseQ) {
-        int[] counts = new int[6];
+        int[] counts = new int[NUM_BASE_COUNTS];
 
         for (PileupElement e : context.getBasePileup()) {
             if ( e.getMappingQual() >= minMapQ && ( e.getQual() >= minBaseQ || e.isDeletion() ) ) {
@@ -140,7 +145,50 @@ public class CoverageUtils {
         Map<String, int[]> countsByRGName = new HashMap<String, int[]>();
         Map<String, SAMReadGroupRecord> RGByName = new HashMap<String, SAMReadGroupRecord>();
 
-        List<PileupElement> countPileup = new LinkedList<PileupElement>();
+        for (PileupElement e : getCountedElements(context, minMapQ, maxMapQ, minBaseQ, maxBaseQ, countType)) {
+            SAMReadGroupRecord readGroup = getReadGroup(e.getRead());
+
+            String readGroupId = readGroup.getSample() + "_" + readGroup.getReadGroupId();
+            int[] counts = countsByRGName.get(readGroupId);
+            if (counts == null) {
+                counts = new int[NUM_BASE_COUNTS];
+                countsByRGName.put(readGroupId, counts);
+                RGByName.put(readGroupId, readGroup);
+            }
+
+            updateCounts(counts, e);
+        }
+
+        for (String readGroupId : RGByName.keySet()) {
+            countsByRG.put(RGByName.get(readGroupId), countsByRGName.get(readGroupId));
+        }
+
+        return countsByRG;
+    }
+
+    /**
+     * Returns the counts of bases as getBaseCountsByReadGroup does, but for all read groups in a single array: the
+     * NUM_BASE_COUNTS counts of each read group one after the other, in the order given by readGroupIndices.
+     * Reads from read groups missing from readGroupIndices are not counted.
+     *
+     * @param readGroupIndices the index of each read group, by read group ID
+     * @return an array of readGroupIndices.size() * NUM_BASE_COUNTS counts, each group indexed by the index fields of BaseUtils
+     */
+    public static int[] getBaseCountsByReadGroupIndex(AlignmentContext context, int minMapQ, int maxMapQ, byte minBaseQ, byte maxBaseQ, CountPileupType countType, Map<String,Integer> readGroupIndices) {
+        int[] counts = new int[readGroupIndices.size() * NUM_BASE_COUNTS];
+
+        for (PileupElement e : getCountedElements(context, minMapQ, maxMapQ, minBaseQ, maxBaseQ, countType)) {
+            Integer index = readGroupIndices.get(getReadGroup(e.getRead()).getReadGroupId());
+            if (index != null) {
+                updateCounts(counts, index * NUM_BASE_COUNTS, e);
+            }
+        }
+
+        return counts;
+    }
+
+    private static List<PileupElement> getCountedElements(AlignmentContext context, int minMapQ, int maxMapQ, byte minBaseQ, byte maxBaseQ, CountPileupType countType) {
+        List<PileupElement> countPileup = new ArrayList<PileupElement>();
         FragmentCollection<PileupElement> fpile;
 
         switch (countType) {
@@ -203,25 +251,7 @@ public class CoverageUtils {
                 throw new UserException("Must use valid CountPileupType");
         }
 
-        for (PileupElement e : countPileup) {
-            SAMReadGroupRecord readGroup = getReadGroup(e.getRead());
-
-            String readGroupId = readGroup.getSample() + "_" + readGroup.getReadGroupId();
-            int[] counts = countsByRGName.get(readGroupId);
-            if (counts == null) {
-                counts = new int[6];
-                countsByRGName.put(readGroupId, counts);
-                RGByName.put(readGroupId, readGroup);
-            }
-
-            updateCounts(counts, e);
-        }
-
-        for (String readGroupId : RGByName.keySet()) {
-            countsByRG.put(RGByName.get(readGroupId), countsByRGName.get(readGroupId));
-        }
-
-        return countsByRG;
+        return countPileup;
     }
 
     private static boolean countElement(PileupElement e, int minMapQ, int maxMapQ, byte minBaseQ, byte maxBaseQ) {
@@ -229,16 +259,20 @@ public class CoverageUtils {
     }
 
     private static void updateCounts(int[] counts, PileupElement e) {
+        updateCounts(counts, 0, e);
+    }
+
+    private static void updateCounts(int[] counts, int offset, PileupElement e) {
         if ( e.isDeletion() ) {
-            counts[BaseUtils.Base.D.ordinal()]++;
+            counts[offset + BaseUtils.Base.D.ordinal()]++;
         } else if ( BaseUtils.basesAreEqual(BaseUtils.Base.N.base, e.getBase()) ) {
-            counts[BaseUtils.Base.N.ordinal()]++;
+            counts[offset + BaseUtils.Base.N.ordinal()]++;
         } else {
-            try {
-                counts[BaseUtils.simpleBaseToBaseIndex(e.getBase())]++;
-            } catch (ArrayIndexOutOfBoundsException exc) {
+            final int baseIndex = BaseUtils.simpleBaseToBaseIndex(e.getBase());
+            if ( baseIndex < 0 ) {
                 throw new ReviewedGATKException("Expected a simple base, but actually received"+(char)e.getBase());
             }
+            counts[offset + baseIndex]++;
         }
     }
 
@@ -110,7 +110,7 @@ import java.util.*;
 @By(DataSource.REFERENCE)
 @PartitionBy(PartitionType.NONE)
 @Downsample(by= DownsampleType.NONE, toCoverage=Integer.MAX_VALUE)
-public class DepthOfCoverage extends LocusWalker<Map<DoCOutputType.Partition,Map<String,int[]>>, CoveragePartitioner> implements TreeReducible<CoveragePartitioner> {
+public class DepthOfCoverage extends LocusWalker<int[], CoveragePartitioner> implements TreeReducible<CoveragePartitioner> {
     private final static Logger logger = Logger.getLogger(DepthOfCoverage.class);
 
     /**
@@ -254,6 +254,14 @@ public class DepthOfCoverage extends LocusWalker<Map<DoCOutputType.Partition,Map
     String separator = "\t";
     Map<DoCOutputType.Partition,List<String>> orderCheck = new HashMap<DoCOutputType.Partition,List<String>>();
 
+    /**
+     * Sample IDs and bins are assigned once from the header and arguments, and shared by every reduceInit()
+     */
+    private Map<DoCOutputType.Partition,Set<String>> identifiersByType = new HashMap<DoCOutputType.Partition,Set<String>>();
+    private List<SAMReadGroupRecord> readGroups;
+    private Map<String,Integer> readGroupIndices = new HashMap<String,Integer>();
+    private int[] binEndpoints;
+
     ////////////////////////////////////////////////////////////////////////////////////
     // STANDARD WALKER METHODS
     ////////////////////////////////////////////////////////////////////////////////////
@@ -321,12 +329,20 @@ public class DepthOfCoverage extends LocusWalker<Map<DoCOutputType.Partition,Map
         }
 
         for (DoCOutputType.Partition type : partitionTypes ) {
+            identifiersByType.put(type,getSamplesFromToolKit(type));
             orderCheck.put(type,new ArrayList<String>());
-            for ( String id : getSamplesFromToolKit(type) ) {
+            for ( String id : identifiersByType.get(type) ) {
                 orderCheck.get(type).add(id);
             }
             Collections.sort(orderCheck.get(type));
         }
+
+        readGroups = getToolkit().getSAMFileHeader().getReadGroups();
+        for ( SAMReadGroupRecord rg : readGroups ) {
+            readGroupIndices.put(rg.getReadGroupId(),readGroupIndices.size());
+        }
+
+        binEndpoints = DepthOfCoverageStats.calculateBinEndpoints(start,stop,nBins);
     }
 
     private HashSet<String> getSamplesFromToolKit( Collection<DoCOutputType.Partition> types ) {
@@ -382,38 +398,36 @@ public class DepthOfCoverage extends LocusWalker<Map<DoCOutputType.Partition,Map
     }
 
     public CoveragePartitioner reduceInit() {
-        CoveragePartitioner aggro = new CoveragePartitioner(partitionTypes,start,stop,nBins);
+        CoveragePartitioner aggro = new CoveragePartitioner(partitionTypes,binEndpoints);
         for (DoCOutputType.Partition t : partitionTypes ) {
-            aggro.addIdentifiers(t,getSamplesFromToolKit(t));
+            aggro.addIdentifiers(t,identifiersByType.get(t),orderCheck.get(t));
         }
-        aggro.initialize(includeDeletions,omitLocusTable);
-        checkOrder(aggro);
+        aggro.initialize(includeDeletions,omitLocusTable,readGroups);
         return aggro;
     }
 
-    public Map<DoCOutputType.Partition,Map<String,int[]>> map(RefMetaDataTracker tracker, ReferenceContext ref, AlignmentContext context) {
+    public int[] map(RefMetaDataTracker tracker, ReferenceContext ref, AlignmentContext context) {
         if (includeRefNBases || BaseUtils.isRegularBase(ref.getBase())) {
             if ( ! omitDepthOutput ) {
                 getCorrectStream(null, DoCOutputType.Aggregation.locus, DoCOutputType.FileType.summary).printf("%s",ref.getLocus()); // yes: print locus in map, and the rest of the info in reduce (for eventual cumulatives)
                 //System.out.printf("\t[log]\t%s",ref.getLocus());
             }
 
-            return CoverageUtils.getBaseCountsByPartition(context,minMappingQuality,maxMappingQuality,minBaseQuality,maxBaseQuality,countType,partitionTypes);
+            return CoverageUtils.getBaseCountsByReadGroupIndex(context,minMappingQuality,maxMappingQuality,minBaseQuality,maxBaseQuality,countType,readGroupIndices);
         } else {
             return null;
         }
     }
 
-    public CoveragePartitioner reduce(Map<DoCOutputType.Partition,Map<String,int[]>> thisMap, CoveragePartitioner prevReduce) {
+    public CoveragePartitioner reduce(int[] thisMap, CoveragePartitioner prevReduce) {
         if ( thisMap != null ) { // skip sites we didn't want to include in the calculation (ref Ns)
+            prevReduce.update(thisMap);
+
             if ( ! omitDepthOutput ) {
-                //checkOrder(prevReduce); // tests prevReduce.getIdentifiersByType().get(t) against the initialized header order
-                printDepths(getCorrectStream(null, DoCOutputType.Aggregation.locus, DoCOutputType.FileType.summary),thisMap,prevReduce.getIdentifiersByType());
-                // this is an additional iteration through thisMap, plus dealing with IO, so should be much slower without
+                printDepths(getCorrectStream(null, DoCOutputType.Aggregation.locus, DoCOutputType.FileType.summary),prevReduce);
+                // this is an additional iteration through the counts, plus dealing with IO, so should be much slower without
                 // turning on omit
             }
-
-            prevReduce.update(thisMap); // note that in "useBoth" cases, this method alters the thisMap object
         }
 
         return prevReduce;
@@ -907,20 +921,21 @@ public class DepthOfCoverage extends LocusWalker<Map<DoCOutputType.Partition,Map
         return 100*( (double) above )/( above + below );
     }
 
-    private void printDepths(PrintStream stream, Map<DoCOutputType.Partition,Map<String,int[]>> countsBySampleByType, Map<DoCOutputType.Partition,List<String>> identifiersByType) {
+    private void printDepths(PrintStream stream, CoveragePartitioner partitioner) {
         // get the depths per sample and build up the output string while tabulating total and average coverage
         StringBuilder perSampleOutput = new StringBuilder();
         int tDepth = 0;
         boolean depthCounted = false;
         for (DoCOutputType.Partition type : partitionTypes ) {
-            Map<String,int[]> countsByID = countsBySampleByType.get(type);
-            for ( String s : identifiersByType.get(type) ) {
+            int[] countsByID = partitioner.getLocusCounts(type);
+            for ( int index : partitioner.getIdentifierIndices(type) ) {
+                int offset = index * CoverageUtils.NUM_BASE_COUNTS;
                 perSampleOutput.append(separator);
-                long dp = (countsByID != null && countsByID.keySet().contains(s)) ? sumArray(countsByID.get(s)) : 0 ;
+                long dp = sumArray(countsByID, offset);
                 perSampleOutput.append(dp);
                 if ( printBaseCounts ) {
                     perSampleOutput.append(separator);
-                    perSampleOutput.append(baseCounts(countsByID != null ? countsByID.get(s) : null ));
+                    perSampleOutput.append(baseCounts(countsByID, offset));
                 }
                 if ( ! depthCounted ) {
                     tDepth += dp;
@@ -932,23 +947,20 @@ public class DepthOfCoverage extends LocusWalker<Map<DoCOutputType.Partition,Map
         // remember -- genome locus was printed in map()
         stream.printf("%s%d",separator,tDepth);
         for (DoCOutputType.Partition type : partitionTypes ) {
-            stream.printf("%s%.2f",separator, ( (double) tDepth / identifiersByType.get(type).size() ) );
+            stream.printf("%s%.2f",separator, ( (double) tDepth / partitioner.getIdentifiersByType().get(type).size() ) );
         }
         stream.printf("%s%n",perSampleOutput);
     }
 
-    private long sumArray(int[] array) {
+    private long sumArray(int[] array, int offset) {
         long i = 0;
-        for ( int j : array ) {
-            i += j;
+        for ( int j = offset; j < offset + CoverageUtils.NUM_BASE_COUNTS; j++ ) {
+            i += array[j];
         }
         return i;
     }
 
-    private String baseCounts(int[] counts) {
-        if ( counts == null ) {
-            counts = new int[6];
-        }
+    private String baseCounts(int[] counts, int offset) {
         StringBuilder s = new StringBuilder();
         int nbases = 0;
         for ( byte b : BaseUtils.EXTENDED_BASES ) {
@@ -956,7 +968,7 @@ public class DepthOfCoverage extends LocusWalker<Map<DoCOutputType.Partition,Map
             if ( includeDeletions || b != BaseUtils.Base.D.base ) {
                 s.append((char)b);
                 s.append(":");
-                s.append(counts[BaseUtils.extendedBaseToBaseIndex(b)]);
+                s.append(counts[offset + BaseUtils.extendedBaseToBaseIndex(b)]);
                 if ( nbases < 6 ) {
                     s.append(" ");
                 }
@@ -966,24 +978,6 @@ public class DepthOfCoverage extends LocusWalker<Map<DoCOutputType.Partition,Map
         return s.toString();
     }
 
-    private void checkOrder(CoveragePartitioner ag) {
-        // make sure the ordering stored at initialize() is propagated along reduce
-        for (DoCOutputType.Partition t : partitionTypes ) {
-            List<String> order = orderCheck.get(t);
-            List<String> namesInAg = ag.getIdentifiersByType().get(t);
-
-            // todo -- chris check me
-            Set<String> namesInDOCS = ag.getCoverageByAggregationType(t).getAllSamples();
-            int index = 0;
-            for ( String s : namesInAg ) {
-                if ( ! s.equalsIgnoreCase(order.get(index)) ) {
-                    throw new ReviewedGATKException("IDs are out of order for type "+t+"! Aggregator has different ordering");
-                }
-                index++;
-            }
-        }
-    }
-
     public boolean checkType(DepthOfCoverageStats stats, DoCOutputType.Partition type ) {
         if ( stats.getHistograms().isEmpty() ) {
             logger.warn("The histogram per partition type "+type.toString()+" was empty\n"+
@@ -1071,12 +1065,21 @@ class CoveragePartitioner {
     private Map<DoCOutputType.Partition,DepthOfCoverageStats> coverageProfiles;
     private Map<DoCOutputType.Partition,List<String>> identifiersByType;
     private Set<String> allIdentifiers;
-    public CoveragePartitioner(Collection<DoCOutputType.Partition> typesToUse, int start, int stop, int nBins) {
+    // per type: the stats index of the identifier of each read group, of each identifier in sorted order,
+    // and the base counts of each identifier at the last locus, by stats index
+    private Map<DoCOutputType.Partition,int[]> identifierIndicesByReadGroup;
+    private Map<DoCOutputType.Partition,int[]> sortedIdentifierIndices;
+    private Map<DoCOutputType.Partition,int[]> locusCounts;
+
+    public CoveragePartitioner(Collection<DoCOutputType.Partition> typesToUse, int[] binEndpoints) {
         coverageProfiles = new TreeMap<DoCOutputType.Partition,DepthOfCoverageStats>();
         identifiersByType = new HashMap<DoCOutputType.Partition,List<String>>();
+        identifierIndicesByReadGroup = new HashMap<DoCOutputType.Partition,int[]>();
+        sortedIdentifierIndices = new HashMap<DoCOutputType.Partition,int[]>();
+        locusCounts = new HashMap<DoCOutputType.Partition,int[]>();
         types = typesToUse;
         for ( DoCOutputType.Partition type : types ) {
-            coverageProfiles.put(type,new DepthOfCoverageStats(DepthOfCoverageStats.calculateBinEndpoints(start,stop,nBins)));
+            coverageProfiles.put(type,new DepthOfCoverageStats(binEndpoints));
             identifiersByType.put(type,new ArrayList<String>());
         }
         allIdentifiers = new HashSet<String>();
@@ -1092,32 +1095,81 @@ class CoveragePartitioner {
         return coverageProfiles.get(t);
     }
 
-    public void addIdentifiers(DoCOutputType.Partition t, Set<String> ids) {
+    /**
+     * @param t the partition type
+     * @param ids the identifiers of type t
+     * @param sortedIds the same identifiers, sorted; shared, not copied
+     */
+    public void addIdentifiers(DoCOutputType.Partition t, Set<String> ids, List<String> sortedIds) {
         for ( String s : ids ) {
             coverageProfiles.get(t).addSample(s);
-            identifiersByType.get(t).add(s);
             allIdentifiers.add(s);
         }
-        Collections.sort(identifiersByType.get(t));
+        identifiersByType.put(t,sortedIds);
     }
 
-    public void initialize(boolean useDels, boolean omitLocusTable) {
+    public void initialize(boolean useDels, boolean omitLocusTable, List<SAMReadGroupRecord> readGroups) {
         for ( DoCOutputType.Partition t : types ) {
+            DepthOfCoverageStats stats = coverageProfiles.get(t);
             if ( useDels ) {
-                coverageProfiles.get(t).initializeDeletions();
+                stats.initializeDeletions();
             }
             if ( ! omitLocusTable ) {
-                coverageProfiles.get(t).initializeLocusCounts();
+                stats.initializeLocusCounts();
             }
+
+            int[] indicesByReadGroup = new int[readGroups.size()];
+            for ( int rg = 0; rg < indicesByReadGroup.length; rg++ ) {
+                indicesByReadGroup[rg] = stats.getSampleIndex(CoverageUtils.getTypeID(readGroups.get(rg),t));
+            }
+            identifierIndicesByReadGroup.put(t,indicesByReadGroup);
+
+            List<String> ids = identifiersByType.get(t);
+            int[] sortedIndices = new int[ids.size()];
+            for ( int i = 0; i < sortedIndices.length; i++ ) {
+                sortedIndices[i] = stats.getSampleIndex(ids.get(i));
+            }
+            sortedIdentifierIndices.put(t,sortedIndices);
+
+            locusCounts.put(t,new int[stats.getAllSamples().size() * CoverageUtils.NUM_BASE_COUNTS]);
         }
     }
 
-    public void update(Map<DoCOutputType.Partition,Map<String,int[]>> countsByIdentifierByType) {
+    /**
+     * Sums the base counts of the read groups into the counts of each identifier, and adds them to the stats
+     *
+     * @param countsByReadGroup the base counts of each read group, as returned by CoverageUtils.getBaseCountsByReadGroupIndex
+     */
+    public void update(int[] countsByReadGroup) {
         for ( DoCOutputType.Partition t : types ) {
-            coverageProfiles.get(t).update(countsByIdentifierByType.get(t));
+            int[] indicesByReadGroup = identifierIndicesByReadGroup.get(t);
+            int[] counts = locusCounts.get(t);
+            Arrays.fill(counts,0);
+            for ( int rg = 0; rg < indicesByReadGroup.length; rg++ ) {
+                int from = rg * CoverageUtils.NUM_BASE_COUNTS;
+                int to = indicesByReadGroup[rg] * CoverageUtils.NUM_BASE_COUNTS;
+                for ( int b = 0; b < CoverageUtils.NUM_BASE_COUNTS; b++ ) {
+                    counts[to + b] += countsByReadGroup[from + b];
+                }
+            }
+            coverageProfiles.get(t).update(counts);
         }
     }
 
+    /**
+     * @return the base counts of each identifier of type t at the last locus passed to update(), by stats index
+     */
+    public int[] getLocusCounts(DoCOutputType.Partition t) {
+        return locusCounts.get(t);
+    }
+
+    /**
+     * @return the stats index of each identifier of type t, in the sorted order of getIdentifiersByType()
+     */
+    public int[] getIdentifierIndices(DoCOutputType.Partition t) {
+        return sortedIdentifierIndices.get(t);
+    }
+
     public Set<String> getAllIdentifiers() {
         return allIdentifiers;
     }
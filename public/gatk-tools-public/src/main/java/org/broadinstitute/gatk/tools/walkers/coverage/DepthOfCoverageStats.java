@@ -28,10 +28,7 @@ package org.broadinstitute.gatk.tools.walkers.coverage;
 import org.broadinstitute.gatk.utils.BaseUtils;
 import org.broadinstitute.gatk.utils.exceptions.UserException;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Set;
-import java.util.TreeMap;
+import java.util.*;
 
 /**
  * IF THERE IS NO JAVADOC RIGHT HERE, YELL AT chartl
@@ -50,10 +47,13 @@ public class DepthOfCoverageStats {
     // STANDARD DATA
     ////////////////////////////////////////////////////////////////////////////////////
 
-    private Map<String,long[]> granularHistogramBySample; // holds the counts per each bin
-    private Map<String,Long> totalCoverages; // holds total coverage per sample
+    private Map<String,long[]> granularHistogramBySample; // the rows of histograms, by sample name
+    private Map<String,Integer> sampleIndices; // the index of each sample's row in histograms and totalCoverages
+    private List<String> samples; // the sample of each row, in the order they were added
+    private long[][] histograms; // holds the counts per each bin, per sample index
+    private long[] totalCoverages; // holds total coverage per sample index
     private int[] binLeftEndpoints; // describes the left endpoint for each bin
-    private long[][] locusCoverageCounts; // holds counts of number of bases with >=X samples at >=Y coverage
+    private long[][] locusCoverageCounts; // holds counts of number of bases with exactly X samples at >=Y coverage; see getLocusCounts()
     private boolean tabulateLocusCounts = false;
     private long nLoci; // number of loci seen
     private long totalDepthOfCoverage;
@@ -63,8 +63,8 @@ public class DepthOfCoverageStats {
     // TEMPORARY DATA ( not worth re-instantiating )
     ////////////////////////////////////////////////////////////////////////////////////
 
-    private int[] locusHistogram; // holds a histogram for each locus; reset after each update() call
-    private int totalLocusDepth; // holds the total depth of coverage for each locus; reset after each update() call
+    private int[] locusHistogram; // holds the number of samples in each bin for each locus; reset after each update() call
+    private int[] locusDepths; // holds the depth of each sample index for each locus
 
     ////////////////////////////////////////////////////////////////////////////////////
     // STATIC METHODS
@@ -102,61 +102,63 @@ public class DepthOfCoverageStats {
     ////////////////////////////////////////////////////////////////////////////////////
 
     public DepthOfCoverageStats(int[] leftEndpoints) {
+        for ( int b = 1; b < leftEndpoints.length; b++ ) {
+            if ( leftEndpoints[b] < leftEndpoints[b-1] ) {
+                throw new IllegalArgumentException("Bin left endpoints must be in increasing order: "+Arrays.toString(leftEndpoints));
+            }
+        }
         this.binLeftEndpoints = leftEndpoints;
         granularHistogramBySample = new HashMap<String,long[]>();
-        totalCoverages = new HashMap<String,Long>();
+        sampleIndices = new HashMap<String,Integer>();
+        samples = new ArrayList<String>();
+        histograms = new long[0][];
+        totalCoverages = new long[0];
         nLoci = 0;
-        totalLocusDepth = 0;
         totalDepthOfCoverage = 0;
     }
 
     public DepthOfCoverageStats(DepthOfCoverageStats cloneMe) {
         this.binLeftEndpoints = cloneMe.binLeftEndpoints;
         granularHistogramBySample = new TreeMap<String,long[]>();
-        totalCoverages = new TreeMap<String,Long>();
-        for ( String s : cloneMe.getAllSamples() ) {
-            granularHistogramBySample.put(s,new long[cloneMe.getHistograms().get(s).length]);
-            for ( int i = 0; i < granularHistogramBySample.get(s).length; i++ ) {
-                granularHistogramBySample.get(s)[i] = cloneMe.getHistograms().get(s)[i];
-            }
-            totalCoverages.put(s,cloneMe.totalCoverages.get(s));
+        sampleIndices = new HashMap<String,Integer>(cloneMe.sampleIndices);
+        samples = new ArrayList<String>(cloneMe.samples);
+        histograms = new long[samples.size()][];
+        for ( int i = 0; i < histograms.length; i++ ) {
+            histograms[i] = cloneMe.histograms[i].clone();
+            granularHistogramBySample.put(samples.get(i),histograms[i]);
         }
+        totalCoverages = Arrays.copyOf(cloneMe.totalCoverages,samples.size());
 
         this.includeDeletions = cloneMe.includeDeletions;
         if ( cloneMe.tabulateLocusCounts ) {
             this.locusCoverageCounts = new long[cloneMe.locusCoverageCounts.length][cloneMe.locusCoverageCounts[0].length];
         }
-        //this.granularHistogramBySample = cloneMe.granularHistogramBySample;
-        //this.totalCoverages = cloneMe.totalCoverages;
         this.nLoci = cloneMe.nLoci;
         this.totalDepthOfCoverage = cloneMe.totalDepthOfCoverage;
         this.tabulateLocusCounts = cloneMe.tabulateLocusCounts;
     }
 
     public void addSample(String sample) {
-        if ( granularHistogramBySample.containsKey(sample) ) {
+        if ( sampleIndices.containsKey(sample) ) {
             return;
         }
 
-        long[] binCounts = new long[this.binLeftEndpoints.length+1];
-        for ( int b = 0; b < binCounts.length; b ++ ) {
-            binCounts[b] = 0;
+        final int index = samples.size();
+        if ( index == histograms.length ) {
+            final int capacity = Math.max(8,2*index);
+            histograms = Arrays.copyOf(histograms,capacity);
+            totalCoverages = Arrays.copyOf(totalCoverages,capacity);
         }
 
-        granularHistogramBySample.put(sample,binCounts);
-        totalCoverages.put(sample,0l);
+        histograms[index] = new long[this.binLeftEndpoints.length+1];
+        samples.add(sample);
+        sampleIndices.put(sample,index);
+        granularHistogramBySample.put(sample,histograms[index]);
     }
 
     public void initializeLocusCounts() {
-        locusCoverageCounts = new long[granularHistogramBySample.size()][binLeftEndpoints.length+1];
+        locusCoverageCounts = new long[samples.size()][binLeftEndpoints.length+1];
         locusHistogram = new int[binLeftEndpoints.length+1];
-        for ( int b = 0; b < binLeftEndpoints.length+1; b ++ ) {
-            for ( int a = 0; a < granularHistogramBySample.size(); a ++ ) {
-                locusCoverageCounts[a][b] = 0;
-            }
-            locusHistogram[b] = 0;
-        }
-
         tabulateLocusCounts = true;
     }
 
@@ -169,85 +171,137 @@ public class DepthOfCoverageStats {
     ////////////////////////////////////////////////////////////////////////////////////
 
     public void updateDepths(Map<String,Integer> depthBySample) {
-        int b;
-        for ( String sample : granularHistogramBySample.keySet() ) {
-            if ( depthBySample.containsKey(sample) ) {
-                b = updateSample(sample,depthBySample.get(sample));
-                totalLocusDepth += depthBySample.get(sample);
-            } else {
-                b = updateSample(sample,0);
+        final int[] depths = getLocusDepths();
+        for ( Map.Entry<String,Integer> sampleDepth : depthBySample.entrySet() ) {
+            final Integer index = sampleIndices.get(sampleDepth.getKey());
+            if ( index != null ) {
+                depths[index] = sampleDepth.getValue();
             }
+        }
+
+        this.updateDepths(depths);
+    }
+
+    /**
+     * Update with the depth of each sample at a locus
+     *
+     * @param depthBySampleIndex the depth of each sample, indexed by getSampleIndex()
+     */
+    public void updateDepths(int[] depthBySampleIndex) {
+        int totalLocusDepth = 0;
+        for ( int i = 0; i < samples.size(); i++ ) {
+            final int depth = depthBySampleIndex[i];
+            final int b = depthToBin(depth);
+            histograms[i][b]++;
+            totalCoverages[i] += depth;
+            totalLocusDepth += depth;
 
             if ( tabulateLocusCounts ) {
-                for ( int i = 0; i <= b; i ++ ) {
-                    locusHistogram[i]++;
-                }
+                locusHistogram[b]++;
             }
         }
-        updateLocusCounts(locusHistogram);
+
+        if ( tabulateLocusCounts ) {
+            updateLocusCounts(locusHistogram);
+        }
 
         nLoci++;
         totalDepthOfCoverage += totalLocusDepth;
-        totalLocusDepth = 0;
     }
 
     public void update(Map<String,int[]> countsBySample) {
-        if ( countsBySample == null ) {
-            this.updateDepths(new HashMap<String,Integer>(1));
-            return;
+        final int[] depths = getLocusDepths();
+        if ( countsBySample != null ) {
+            // todo -- do we want to do anything special regarding base count or deletion statistics?
+            for ( Map.Entry<String,int[]> sampleCounts : countsBySample.entrySet() ) {
+                final Integer index = sampleIndices.get(sampleCounts.getKey());
+                if ( index != null ) {
+                    depths[index] = getDepth(sampleCounts.getValue(),0);
+                }
+            }
         }
-        // todo -- do we want to do anything special regarding base count or deletion statistics?
-        HashMap<String,Integer> depthBySample = new HashMap<String,Integer>();
+
+        this.updateDepths(depths);
+    }
+
+    /**
+     * Update with the base counts of each sample at a locus
+     *
+     * @param countsBySampleIndex the CoverageUtils.NUM_BASE_COUNTS base counts of each sample, one after the other
+     *                            in the order of getSampleIndex(), each indexed by the index fields of BaseUtils
+     */
+    public void update(int[] countsBySampleIndex) {
+        final int[] depths = getLocusDepths();
+        for ( int i = 0; i < samples.size(); i++ ) {
+            depths[i] = getDepth(countsBySampleIndex,i*CoverageUtils.NUM_BASE_COUNTS);
+        }
+
+        this.updateDepths(depths);
+    }
+
+    private int getDepth(int[] counts, int offset) {
+        int total = 0;
         // todo -- needs fixing with advent of new baseutils functionality using ENUMS and handling N,D
-        for ( String s : countsBySample.keySet() ) {
-            int total = 0;
-            int[] counts = countsBySample.get(s);
-            for ( byte base : BaseUtils.EXTENDED_BASES ) {
-                if ( includeDeletions || ! ( base == BaseUtils.Base.D.base) ) { // note basesAreEqual assigns TRUE to (N,D) as both have simple index -1
-                    total += counts[BaseUtils.extendedBaseToBaseIndex(base)];
-                }
+        for ( byte base : BaseUtils.EXTENDED_BASES ) {
+            if ( includeDeletions || ! ( base == BaseUtils.Base.D.base) ) { // note basesAreEqual assigns TRUE to (N,D) as both have simple index -1
+                total += counts[offset+BaseUtils.extendedBaseToBaseIndex(base)];
             }
-            depthBySample.put(s,total);
         }
-        
-        this.updateDepths(depthBySample);
+
+        return total;
     }
 
-    private int updateSample(String sample, int depth) {
-        totalCoverages.put(sample,totalCoverages.get(sample)+depth);
+    /**
+     * @return a zeroed array to hold the depth of each sample at a locus
+     */
+    private int[] getLocusDepths() {
+        if ( locusDepths == null || locusDepths.length < samples.size() ) {
+            locusDepths = new int[samples.size()];
+        } else {
+            Arrays.fill(locusDepths,0);
+        }
+
+        return locusDepths;
+    }
 
-        long[] granularBins = granularHistogramBySample.get(sample);
-        for ( int b = 0; b < binLeftEndpoints.length; b ++ ) {
-            if ( depth < binLeftEndpoints[b] ) {
-                granularBins[b]++;
-                return b;
+    /**
+     * @param depth a depth of coverage
+     * @return the index of the first bin whose left endpoint is above depth, or the number of endpoints if none is
+     */
+    private int depthToBin(int depth) {
+        int low = 0;
+        int high = binLeftEndpoints.length;
+        while ( low < high ) {
+            final int mid = (low + high) >>> 1;
+            if ( depth < binLeftEndpoints[mid] ) {
+                high = mid;
+            } else {
+                low = mid + 1;
             }
         }
 
-        granularBins[binLeftEndpoints.length]++; // greater than all left-endpoints
-        return binLeftEndpoints.length;
+        return low;
     }
 
     public void merge(DepthOfCoverageStats newStats) {
         this.mergeSamples(newStats);
         if ( this.tabulateLocusCounts && newStats.tabulateLocusCounts ) {
-            this.mergeLocusCounts(newStats.getLocusCounts());
+            this.mergeLocusCounts(newStats.locusCoverageCounts);
         }
         nLoci += newStats.getTotalLoci();
         totalDepthOfCoverage += newStats.getTotalCoverage();
     }
 
     private void mergeSamples(DepthOfCoverageStats otherStats) {
-        Map<String,long[]> otherHistogram = otherStats.getHistograms();
-        Map<String,Double> otherMeans = otherStats.getMeans();
-        for ( String s : this.getAllSamples() ) {
-            long[] internalCounts = granularHistogramBySample.get(s);
-            long[] externalCounts = otherHistogram.get(s);
+        for ( int i = 0; i < samples.size(); i++ ) {
+            final int otherIndex = otherStats.sampleIndices.get(samples.get(i));
+            long[] internalCounts = histograms[i];
+            long[] externalCounts = otherStats.histograms[otherIndex];
             for ( int b = 0; b < internalCounts.length; b++ ) {
                 internalCounts[b] += externalCounts[b];
             }
 
-            this.totalCoverages.put(s, this.totalCoverages.get(s) + otherStats.totalCoverages.get(s));
+            this.totalCoverages[i] += otherStats.totalCoverages[otherIndex];
         }
     }
 
@@ -261,24 +315,27 @@ public class DepthOfCoverageStats {
 
     /*
      * Update locus counts -- takes an array in which the number of samples
-     * with depth ABOVE [i] is held. So if the bin left endpoints were 2, 5, 10
+     * with depth in bin [i] is held. So if the bin left endpoints were 2, 5, 10
      * then we'd have an array that represented:
-     * [# samples with depth 0 - inf], [# samples with depth 2 - inf],
-     * [# samples with depth 5 - inf], [# samples with depth 10-inf];
+     * [# samples with depth 0 - 2), [# samples with depth 2 - 5),
+     * [# samples with depth 5 - 10), [# samples with depth 10-inf];
+     *
+     * Summing from the top bin down gives the number of samples with depth ABOVE
+     * each bin's left endpoint, and the locus is counted once per bin, in the row
+     * of that number of samples; getLocusCounts() sums the rows back up into the
+     * number of loci with at least that many samples.
      *
-     * this is
-     * @argument cumulativeSamplesByDepthBin - see above
+     * @argument samplesByDepthBin - see above; reset to zeros in advance of next update()
      */
-    private void updateLocusCounts(int[] cumulativeSamplesByDepthBin) {
-        if ( tabulateLocusCounts ) {
-            for ( int bin = 0; bin < cumulativeSamplesByDepthBin.length; bin ++ ) {
-                int numSamples = cumulativeSamplesByDepthBin[bin];
-                for ( int i = 0; i < numSamples; i ++ ) {
-                    locusCoverageCounts[i][bin]++;
-                }
-
-                cumulativeSamplesByDepthBin[bin] = 0; // reset counts in advance of next update()
+    private void updateLocusCounts(int[] samplesByDepthBin) {
+        int numSamples = 0;
+        for ( int bin = samplesByDepthBin.length-1; bin >= 0; bin -- ) {
+            numSamples += samplesByDepthBin[bin];
+            if ( numSamples > 0 ) {
+                locusCoverageCounts[numSamples-1][bin]++;
             }
+
+            samplesByDepthBin[bin] = 0;
         }
     }
 
@@ -290,8 +347,25 @@ public class DepthOfCoverageStats {
         return granularHistogramBySample;
     }
 
+    /**
+     * @return the number of loci at which at least [row+1] samples have at least the depth of [column]; see printPerLocus
+     */
     public long[][] getLocusCounts() {
-        return locusCoverageCounts;
+        if ( locusCoverageCounts == null ) {
+            return null;
+        }
+
+        final long[][] cumulativeCounts = new long[locusCoverageCounts.length][];
+        for ( int a = locusCoverageCounts.length-1; a >= 0; a -- ) {
+            cumulativeCounts[a] = locusCoverageCounts[a].clone();
+            if ( a < locusCoverageCounts.length-1 ) {
+                for ( int b = 0; b < cumulativeCounts[a].length; b ++ ) {
+                    cumulativeCounts[a][b] += cumulativeCounts[a+1][b];
+                }
+            }
+        }
+
+        return cumulativeCounts;
     }
 
     public int[] getEndpoints() {
@@ -300,15 +374,20 @@ public class DepthOfCoverageStats {
 
     public Map<String,Double> getMeans() {
         HashMap<String,Double> means = new HashMap<String,Double>();
-        for ( String s : getAllSamples() ) {
-            means.put(s,( (double)totalCoverages.get(s))/( (double) nLoci ));
+        for ( int i = 0; i < samples.size(); i++ ) {
+            means.put(samples.get(i),( (double)totalCoverages[i])/( (double) nLoci ));
         }
 
         return means;
     }
 
     public Map<String,Long> getTotals() {
-        return totalCoverages;
+        HashMap<String,Long> totals = new HashMap<String,Long>();
+        for ( int i = 0; i < samples.size(); i++ ) {
+            totals.put(samples.get(i),totalCoverages[i]);
+        }
+
+        return totals;
     }
 
     public long getTotalLoci() {
@@ -319,6 +398,15 @@ public class DepthOfCoverageStats {
         return granularHistogramBySample.keySet();
     }
 
+    /**
+     * @param sample a sample added with addSample()
+     * @return the index of sample in the arrays passed to update(int[]) and updateDepths(int[]), or -1 if it wasn't added
+     */
+    public int getSampleIndex(String sample) {
+        final Integer index = sampleIndices.get(sample);
+        return index == null ? -1 : index;
+    }
+
     public double getTotalMeanCoverage() {
         return ( (double) totalDepthOfCoverage )/ ( (double) nLoci );
     }
@@ -41,7 +41,8 @@ import org.broadinstitute.gatk.engine.walkers.ReadWalker;
 import org.broadinstitute.gatk.utils.BaseUtils;
 import org.broadinstitute.gatk.utils.GenomeLoc;
 import org.broadinstitute.gatk.utils.smithwaterman.Parameters;
-import org.broadinstitute.gatk.utils.smithwaterman.SWPairwiseAlignment;
+import org.broadinstitute.gatk.utils.smithwaterman.SWImplementation;
+import org.broadinstitute.gatk.utils.smithwaterman.SmithWaterman;
 import org.broadinstitute.gatk.utils.Utils;
 import org.broadinstitute.gatk.utils.baq.BAQ;
 import org.broadinstitute.gatk.utils.collections.Pair;
@@ -239,6 +240,13 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
     @Argument(fullName="noOriginalAlignmentTags", shortName="noTags", required=false, doc="Don't output the original cigar or alignment start tags for each realigned read in the output bam")
     protected boolean NO_ORIGINAL_ALIGNMENT_TAGS = false;
 
+    /**
+     * All implementations produce the same alternate consenses; FAST and BANDED reuse their working memory across alignments.
+     */
+    @Advanced
+    @Argument(fullName="smithWaterman", shortName="smithWaterman", required=false, doc="Which Smith-Waterman implementation to use when aligning reads to the reference to create alternate consenses")
+    protected SWImplementation SW_IMPLEMENTATION = SWImplementation.ORIGINAL;
+
     /**
      * Reads from all input files will be realigned together, but then each read will be saved in the output file corresponding to the input file that
      * the read came from. There are two ways to generate output bam file names: 1) if the value of this argument is a general string (e.g. '.cleaned.bam'),
@@ -972,7 +980,7 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
     private void createAndAddAlternateConsensus(final byte[] read, final Set<Consensus> altConsensesToPopulate, final byte[] reference) {
 
         // do a pairwise alignment against the reference
-         SWPairwiseAlignment swConsensus = new SWPairwiseAlignment(reference, read, swParameters);
+         SmithWaterman swConsensus = SW_IMPLEMENTATION.align(reference, read, swParameters);
          Consensus c = createAlternateConsensus(swConsensus.getAlignmentStart2wrt1(), swConsensus.getCigar(), reference, read);
          if ( c != null )
              altConsensesToPopulate.add(c);
@@ -989,7 +997,7 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
          }
          // do a pairwise alignment against the reference
          SWalignmentRuns++;
-         SWPairwiseAlignment swConsensus = new SWPairwiseAlignment(reference, read.getReadBases(), swParameters);
+         SmithWaterman swConsensus = SW_IMPLEMENTATION.align(reference, read.getReadBases(), swParameters);
          Consensus c = createAlternateConsensus(swConsensus.getAlignmentStart2wrt1(), swConsensus.getCigar(), reference, read.getReadBases());
          if ( c != null ) {
              altConsensesToPopulate.add(c);
@@ -276,9 +276,12 @@ public class VariantEval extends RodWalker<Integer, Integer> implements TreeRedu
     final private static String ALL_SAMPLE_NAME = "all";
     final private static String ALL_FAMILY_NAME = "all";
 
-    // the number of processed bp for this walker
+    // the number of processed bp for this walker, summed over the partial evaluations in onTraversalDone
     long nProcessedLoci = 0;
 
+    // the index of each sample in sampleNamesForEvaluation, for evaluators that keep per-sample arrays
+    private Map<String, Integer> sampleIndicesForEvaluation = null;
+
     // Utility class
     private final VariantEvalUtils variantEvalUtils = new VariantEvalUtils(this);
 
@@ -287,6 +290,23 @@ public class VariantEval extends RodWalker<Integer, Integer> implements TreeRedu
 
     // The set of all possible evaluation contexts
     StratificationManager<VariantStratifier, EvaluationContext> stratManager;
+    private Set<Class<? extends VariantEvaluator>> evaluationClasses;
+
+    // if all evaluators support combine() each thread accumulates into its own partial evaluation, which are
+    // merged into the contexts of stratManager at the end of the traversal; otherwise the contexts are shared
+    private boolean combinePartialEvaluations = false;
+    private final List<PartialEvaluation> partialEvaluations = new ArrayList<PartialEvaluation>();
+    private final ThreadLocal<PartialEvaluation> threadPartialEvaluation = new ThreadLocal<PartialEvaluation>() {
+        @Override
+        protected PartialEvaluation initialValue() {
+            synchronized (partialEvaluations) {
+                // the first thread accumulates directly into the contexts of stratManager
+                final PartialEvaluation partial = new PartialEvaluation(! combinePartialEvaluations || partialEvaluations.isEmpty());
+                partialEvaluations.add(partial);
+                return partial;
+            }
+        }
+    };
     //Set<DynamicStratification> dynamicStratifications = Collections.emptySet();
 
     /**
@@ -410,13 +430,49 @@ public class VariantEval extends RodWalker<Integer, Integer> implements TreeRedu
     final void createStratificationStates(final List<VariantStratifier> stratificationObjects, final Set<Class<? extends VariantEvaluator>> evaluationObjects) {
         final List<VariantStratifier> strats = new ArrayList<VariantStratifier>(stratificationObjects);
         stratManager = new StratificationManager<VariantStratifier, EvaluationContext>(strats);
+        evaluationClasses = evaluationObjects;
 
         logger.info("Creating " + stratManager.size() + " combinatorial stratification states");
         for ( int i = 0; i < stratManager.size(); i++ ) {
             EvaluationContext ec = new EvaluationContext(this, evaluationObjects);
             stratManager.set(i, ec);
         }
-    }    
+
+        combinePartialEvaluations = true;
+        for ( final VariantEvaluator ve : stratManager.get(0).getVariantEvaluators() )
+            combinePartialEvaluations &= ve.supportsCombine();
+    }
+
+    /**
+     * The evaluation contexts accumulated by a single thread, indexed by stratification key.  Contexts
+     * are created as the thread first touches each key, unless the partial evaluation shares the
+     * contexts of stratManager.
+     */
+    private final class PartialEvaluation {
+        final EvaluationContext[] contexts;
+        long nProcessedLoci = 0;
+
+        private PartialEvaluation(final boolean shareManagerContexts) {
+            contexts = new EvaluationContext[stratManager.size()];
+            if ( shareManagerContexts )
+                for ( int key = 0; key < contexts.length; key++ )
+                    contexts[key] = stratManager.get(key);
+        }
+
+        private EvaluationContext getContext(final int key) {
+            if ( contexts[key] == null )
+                contexts[key] = new EvaluationContext(VariantEval.this, evaluationClasses);
+            return contexts[key];
+        }
+
+        private void mergeInto(final StratificationManager<VariantStratifier, EvaluationContext> manager) {
+            for ( int key = 0; key < contexts.length; key++ ) {
+                final EvaluationContext nec = manager.get(key);
+                if ( contexts[key] != null && contexts[key] != nec )
+                    nec.combine(contexts[key]);
+            }
+        }
+    }
     
     public final Map<String, IntervalTree<GenomeLoc>> createIntervalTreeByContig(final IntervalBinding<Feature> intervals) {
         final Map<String, IntervalTree<GenomeLoc>> byContig = new HashMap<String, IntervalTree<GenomeLoc>>();
@@ -439,14 +495,19 @@ public class VariantEval extends RodWalker<Integer, Integer> implements TreeRedu
      */
     @Override
     public Integer map(RefMetaDataTracker tracker, ReferenceContext ref, AlignmentContext context) {
+        final PartialEvaluation partial = threadPartialEvaluation.get();
+
         // we track the processed bp and expose this for modules instead of wasting CPU power on calculating
         // the same thing over and over in evals that want the processed bp
-        synchronized (this) {
-            nProcessedLoci += context.getSkippedBases() + (ref == null ? 0 : 1);
-        }
+        partial.nProcessedLoci += context.getSkippedBases() + (ref == null ? 0 : 1);
 
         if (tracker != null) {
-            String aastr = (ancestralAlignments == null) ? null : new String(ancestralAlignments.getSubsequenceAt(ref.getLocus().getContig(), ref.getLocus().getStart(), ref.getLocus().getStop()).getBases());
+            String aastr = null;
+            if ( ancestralAlignments != null ) {
+                synchronized (ancestralAlignments) {
+                    aastr = new String(ancestralAlignments.getSubsequenceAt(ref.getLocus().getContig(), ref.getLocus().getStart(), ref.getLocus().getStop()).getBases());
+                }
+            }
 
 //            // update the dynamic stratifications
 //            for (final VariantContext vc : tracker.getValues(evals, ref.getLocus())) {
@@ -496,30 +557,24 @@ public class VariantEval extends RodWalker<Integer, Integer> implements TreeRedu
                             // find the comp
                             final VariantContext comp = findMatchingComp(eval, compSet);
 
-                            Collection<EvaluationContext> contextsForStratification;
+                            final int[] keysForStratification;
                             if (perFamilyIsEnabled)
-                                contextsForStratification = getEvaluationContexts(tracker, ref, eval, evalRod.getName(), comp, compRod.getName(), null, stratLevelName);
+                                keysForStratification = getEvaluationContextKeys(tracker, ref, eval, evalRod.getName(), comp, compRod.getName(), null, stratLevelName);
                             else {
                                 String familyID;
                                 if (stratLevelName.equals("all"))
                                     familyID = "all";
                                 else
                                     familyID = getSampleDB().getSample(stratLevelName).getFamilyID();
-                                contextsForStratification = getEvaluationContexts(tracker, ref, eval, evalRod.getName(), comp, compRod.getName(), stratLevelName, familyID);
+                                keysForStratification = getEvaluationContextKeys(tracker, ref, eval, evalRod.getName(), comp, compRod.getName(), stratLevelName, familyID);
                             }
-                            for ( EvaluationContext nec : contextsForStratification ) {
-
-                                // eval against the comp
-                                synchronized (nec) {
-                                    nec.apply(tracker, ref, context, comp, eval);
-                                }
-
-                                // eval=null against all comps of different type that aren't bound to another eval
-                                for ( VariantContext otherComp : compSet ) {
-                                    if ( otherComp != comp && ! compHasMatchingEval(otherComp, evalSetBySample) ) {
-                                        synchronized (nec) {
-                                            nec.apply(tracker, ref, context, otherComp, null);
-                                        }
+                            for ( final int key : keysForStratification ) {
+                                final EvaluationContext nec = partial.getContext(key);
+                                if ( combinePartialEvaluations ) {
+                                    apply(nec, tracker, ref, context, eval, comp, compSet, evalSetBySample);
+                                } else {
+                                    synchronized (nec) {
+                                        apply(nec, tracker, ref, context, eval, comp, compSet, evalSetBySample);
                                     }
                                 }
                             }
@@ -534,6 +589,25 @@ public class VariantEval extends RodWalker<Integer, Integer> implements TreeRedu
         return null;
     }
 
+    private void apply(final EvaluationContext nec,
+                       final RefMetaDataTracker tracker,
+                       final ReferenceContext ref,
+                       final AlignmentContext context,
+                       final VariantContext eval,
+                       final VariantContext comp,
+                       final Collection<VariantContext> compSet,
+                       final Collection<VariantContext> evalSetBySample) {
+        // eval against the comp
+        nec.apply(tracker, ref, context, comp, eval);
+
+        // eval=null against all comps of different type that aren't bound to another eval
+        for ( VariantContext otherComp : compSet ) {
+            if ( otherComp != comp && ! compHasMatchingEval(otherComp, evalSetBySample) ) {
+                nec.apply(tracker, ref, context, otherComp, null);
+            }
+        }
+    }
+
     /**
      * Given specific eval and comp VCs and the sample name, return an iterable
      * over all of the applicable state keys.
@@ -557,9 +631,8 @@ public class VariantEval extends RodWalker<Integer, Integer> implements TreeRedu
      *
      *   K = [0, 1] where EVAL x COMP x ALL = 0 and EVAL x COMP x NOVEL = 1
      *
-     * It's clear that a better
-     *
-     * TODO -- create an inline version that doesn't create the intermediate list of list
+     * See getEvaluationContextKeys for the version used by map(), which returns the dense keys
+     * of the contexts rather than the shared contexts themselves
      *
      * @param tracker
      * @param ref
@@ -578,11 +651,37 @@ public class VariantEval extends RodWalker<Integer, Integer> implements TreeRedu
                                                                   final String compName,
                                                                   final String sampleName,
                                                                   final String familyName) {
-        final List<List<Object>> states = new LinkedList<List<Object>>();
-        for ( final VariantStratifier vs : stratManager.getStratifiers() ) {
+        return stratManager.values(getRelevantStates(tracker, ref, eval, evalName, comp, compName, sampleName, familyName));
+    }
+
+    /**
+     * As getEvaluationContexts, but returns the keys of the applicable contexts in stratManager
+     */
+    protected int[] getEvaluationContextKeys(final RefMetaDataTracker tracker,
+                                             final ReferenceContext ref,
+                                             final VariantContext eval,
+                                             final String evalName,
+                                             final VariantContext comp,
+                                             final String compName,
+                                             final String sampleName,
+                                             final String familyName) {
+        return stratManager.getKeyArray(getRelevantStates(tracker, ref, eval, evalName, comp, compName, sampleName, familyName));
+    }
+
+    private List<List<Object>> getRelevantStates(final RefMetaDataTracker tracker,
+                                                 final ReferenceContext ref,
+                                                 final VariantContext eval,
+                                                 final String evalName,
+                                                 final VariantContext comp,
+                                                 final String compName,
+                                                 final String sampleName,
+                                                 final String familyName) {
+        final List<VariantStratifier> stratifiers = stratManager.getStratifiers();
+        final List<List<Object>> states = new ArrayList<List<Object>>(stratifiers.size());
+        for ( final VariantStratifier vs : stratifiers ) {
             states.add(vs.getRelevantStates(ref, tracker, comp, compName, eval, evalName, sampleName, familyName));
         }
-        return stratManager.values(states);
+        return states;
     }
 
 
@@ -660,7 +759,13 @@ public class VariantEval extends RodWalker<Integer, Integer> implements TreeRedu
      */
     public void onTraversalDone(Integer result) {
         logger.info("Finalizing variant report");
-        
+
+        // merge the partial evaluations of each thread
+        for ( final PartialEvaluation partial : partialEvaluations ) {
+            nProcessedLoci += partial.nProcessedLoci;
+            partial.mergeInto(stratManager);
+        }
+
         // go through the evaluations and finalize them
         for ( final EvaluationContext nec : stratManager.values() )
             for ( final VariantEvaluator ve : nec.getVariantEvaluators() )
@@ -714,6 +819,19 @@ public class VariantEval extends RodWalker<Integer, Integer> implements TreeRedu
     public boolean isSubsettingToSpecificSamples() { return isSubsettingSamples; }
     public Set<String> getSampleNamesForEvaluation() { return sampleNamesForEvaluation; }
 
+    /**
+     * @return a map from each sample name for evaluation to its index in getSampleNamesForEvaluation()
+     */
+    public synchronized Map<String, Integer> getSampleIndicesForEvaluation() {
+        if ( sampleIndicesForEvaluation == null ) {
+            final Map<String, Integer> indices = new HashMap<String, Integer>(sampleNamesForEvaluation.size());
+            for ( final String sample : sampleNamesForEvaluation )
+                indices.put(sample, indices.size());
+            sampleIndicesForEvaluation = Collections.unmodifiableMap(indices);
+        }
+        return sampleIndicesForEvaluation;
+    }
+
     public Set<String> getFamilyNamesForEvaluation() { return familyNamesForEvaluation; }
 
     public int getNumberOfSamplesForEvaluation() {
@@ -46,32 +46,25 @@ import java.util.*;
  */
 @Analysis(description = "Indel length histogram", molten = true)
 public class IndelLengthHistogram extends VariantEvaluator implements StandardEval {
-    private final Map<Integer, Integer> counts = new HashMap<Integer, Integer>();
+    public final static int MAX_SIZE_FOR_HISTOGRAM = 10;
+    private final static boolean INCLUDE_LONG_EVENTS_AT_MAX_SIZE = false;
+
+    // counts of indels of length -MAX_SIZE_FOR_HISTOGRAM ... MAX_SIZE_FOR_HISTOGRAM, offset by MAX_SIZE_FOR_HISTOGRAM
+    private final int[] counts = new int[2 * MAX_SIZE_FOR_HISTOGRAM + 1];
     private final static boolean asFrequencies = true;
     int nIndels = 0;
 
     @Molten(variableName = "Length", valueName = "Freq", variableFormat = "%d", valueFormat = "%.2f")
     public TreeMap<Object, Object> results;
-    
-    public final static int MAX_SIZE_FOR_HISTOGRAM = 10;
-    private final static boolean INCLUDE_LONG_EVENTS_AT_MAX_SIZE = false;
-
-    public IndelLengthHistogram() {
-        initializeCounts(MAX_SIZE_FOR_HISTOGRAM);
-    }
-
-    private void initializeCounts(int size) {
-        for ( int i = -size; i <= size; i++ ) {
-            if ( i != 0 ) counts.put(i, 0);
-        }
-    }
 
     @Override
     public void finalizeEvaluation() {
         if ( asFrequencies ) {
             results = new TreeMap<Object, Object>();
-            for ( final int len : counts.keySet() ) {
-                final double value = nIndels == 0 ? 0.0 : counts.get(len) / (1.0 * nIndels);
+            for ( int len = -MAX_SIZE_FOR_HISTOGRAM; len <= MAX_SIZE_FOR_HISTOGRAM; len++ ) {
+                if ( len == 0 ) continue;
+                final int count = counts[len + MAX_SIZE_FOR_HISTOGRAM];
+                final double value = nIndels == 0 ? 0.0 : count / (1.0 * nIndels);
                 results.put(len, value);
             }
         } else {
@@ -79,6 +72,19 @@ public class IndelLengthHistogram extends VariantEvaluator implements StandardEv
         }
     }
 
+    @Override
+    public boolean supportsCombine() {
+        return true;
+    }
+
+    @Override
+    public void combine(final VariantEvaluator other) {
+        final IndelLengthHistogram o = (IndelLengthHistogram)other;
+        nIndels += o.nIndels;
+        for ( int i = 0; i < counts.length; i++ )
+            counts[i] += o.counts[i];
+    }
+
     @Override
     public int getComparisonOrder() {
         return 1;
@@ -118,6 +124,6 @@ public class IndelLengthHistogram extends VariantEvaluator implements StandardEv
             return;
         
         nIndels++;
-        counts.put(len, counts.get(len) + 1);
+        counts[len + MAX_SIZE_FOR_HISTOGRAM]++;
     }
 }
@@ -184,4 +184,42 @@ public class MendelianViolationEvaluator extends VariantEvaluator {
             }
         }
     }
+
+    @Override
+    public boolean supportsCombine() {
+        return true;
+    }
+
+    @Override
+    public void combine(final VariantEvaluator other) {
+        final MendelianViolationEvaluator o = (MendelianViolationEvaluator)other;
+        nVariants += o.nVariants;
+        nSkipped += o.nSkipped;
+        nFamCalled += o.nFamCalled;
+        nVarFamCalled += o.nVarFamCalled;
+        nLowQual += o.nLowQual;
+        nNoCall += o.nNoCall;
+        nLociViolations += o.nLociViolations;
+        nViolations += o.nViolations;
+        mvRefRef_Var += o.mvRefRef_Var;
+        mvRefRef_Het += o.mvRefRef_Het;
+        mvRefHet_Var += o.mvRefHet_Var;
+        mvRefVar_Var += o.mvRefVar_Var;
+        mvRefVar_Ref += o.mvRefVar_Ref;
+        mvVarHet_Ref += o.mvVarHet_Ref;
+        mvVarVar_Ref += o.mvVarVar_Ref;
+        mvVarVar_Het += o.mvVarVar_Het;
+        HomRefHomRef_HomRef += o.HomRefHomRef_HomRef;
+        HetHet_Het += o.HetHet_Het;
+        HetHet_HomRef += o.HetHet_HomRef;
+        HetHet_HomVar += o.HetHet_HomVar;
+        HomVarHomVar_HomVar += o.HomVarHomVar_HomVar;
+        HomRefHomVAR_Het += o.HomRefHomVAR_Het;
+        HetHet_inheritedRef += o.HetHet_inheritedRef;
+        HetHet_inheritedVar += o.HetHet_inheritedVar;
+        HomRefHet_inheritedRef += o.HomRefHet_inheritedRef;
+        HomRefHet_inheritedVar += o.HomRefHet_inheritedVar;
+        HomVarHet_inheritedRef += o.HomVarHet_inheritedRef;
+        HomVarHet_inheritedVar += o.HomVarHet_inheritedVar;
+    }
 }
@@ -64,4 +64,14 @@ public class MetricsCollection extends VariantEvaluator {
         this.indelRatioLociBased = indelRatioLociBased;
         this.tiTvRatio = tiTvRatio;
     }
+
+    @Override
+    public boolean supportsCombine() {
+        return true;
+    }
+
+    @Override
+    public void combine(final VariantEvaluator other) {
+        // nothing to do, the metrics are collected from the other evaluators in VariantEval.onTraversalDone
+    }
 }
@@ -161,4 +161,24 @@ public class MultiallelicSummary extends VariantEvaluator implements StandardEva
         SNPNoveltyRate = Utils.formattedNoveltyRate(knownSNPsPartial + knownSNPsComplete, nMultiSNPs);
         indelNoveltyRate = Utils.formattedNoveltyRate(knownIndelsPartial + knownIndelsComplete, nMultiSNPs);
     }
+
+    @Override
+    public boolean supportsCombine() {
+        return true;
+    }
+
+    @Override
+    public void combine(final VariantEvaluator other) {
+        final MultiallelicSummary o = (MultiallelicSummary)other;
+        nSNPs += o.nSNPs;
+        nMultiSNPs += o.nMultiSNPs;
+        nIndels += o.nIndels;
+        nMultiIndels += o.nMultiIndels;
+        nTi += o.nTi;
+        nTv += o.nTv;
+        knownSNPsPartial += o.knownSNPsPartial;
+        knownSNPsComplete += o.knownSNPsComplete;
+        knownIndelsPartial += o.knownIndelsPartial;
+        knownIndelsComplete += o.knownIndelsComplete;
+    }
 }
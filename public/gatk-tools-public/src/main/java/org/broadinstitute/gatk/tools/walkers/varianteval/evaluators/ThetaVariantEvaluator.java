@@ -140,4 +140,18 @@ public class ThetaVariantEvaluator extends VariantEvaluator {
 
         }
     }
-}
\ No newline at end of file
+
+    @Override
+    public boolean supportsCombine() {
+        return true;
+    }
+
+    @Override
+    public void combine(final VariantEvaluator other) {
+        final ThetaVariantEvaluator o = (ThetaVariantEvaluator)other;
+        numSites += o.numSites;
+        totalHet += o.totalHet;
+        thetaRegionNumSites += o.thetaRegionNumSites;
+        totalAvgDiffs += o.totalAvgDiffs;
+    }
+}
@@ -97,4 +97,20 @@ public class TiTvVariantEvaluator extends VariantEvaluator implements StandardEv
         this.tiTvDerivedRatio = rate(nTiDerived,nTvDerived);
         this.TiTvRatioStandard = rate(nTiInComp, nTvInComp);
     }
+
+    @Override
+    public boolean supportsCombine() {
+        return true;
+    }
+
+    @Override
+    public void combine(final VariantEvaluator other) {
+        final TiTvVariantEvaluator o = (TiTvVariantEvaluator)other;
+        nTi += o.nTi;
+        nTv += o.nTv;
+        nTiInComp += o.nTiInComp;
+        nTvInComp += o.nTvInComp;
+        nTiDerived += o.nTiDerived;
+        nTvDerived += o.nTvDerived;
+    }
 }
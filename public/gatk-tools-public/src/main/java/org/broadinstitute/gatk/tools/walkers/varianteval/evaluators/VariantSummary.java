@@ -98,55 +98,57 @@ public class VariantSummary extends VariantEvaluator implements StandardEval {
     TypeSampleMap transitionsPerSample, transversionsPerSample;
     TypeSampleMap depthPerSample;
 
-    private final static String ALL = "ALL";
-
-    private class TypeSampleMap extends EnumMap<Type, Map<String, Integer>> {
-        public TypeSampleMap(final Collection<String> samples) {
-            super(Type.class);
-            for ( Type type : Type.values() ) {
-                Map<String, Integer> bySample = new HashMap<String, Integer>(samples.size());
-                for ( final String sample : samples ) {
-                    bySample.put(sample, 0);
-                }
-                bySample.put(ALL, 0);
-                this.put(type, bySample);
-            }
+    // the index of each sample in the per-sample count arrays, shared with the walker
+    Map<String, Integer> sampleIndices;
+
+    /**
+     * Counts by type and sample index, where the last index of each type holds the count over all samples
+     */
+    private class TypeSampleMap {
+        private final int[][] counts;
+        private final int all;
+
+        public TypeSampleMap(final int nSamples) {
+            counts = new int[Type.values().length][nSamples + 1];
+            all = nSamples;
+        }
+
+        public final void inc(final Type type, final int sampleIndex) {
+            counts[type.ordinal()][sampleIndex]++;
         }
 
-        public final void inc(final Type type, final String sample) {
-            final int count = this.get(type).get(sample);
-            get(type).put(sample, count + 1);
+        public final void incAll(final Type type) {
+            counts[type.ordinal()][all]++;
         }
 
         public final int all(Type type) {
-            return get(type).get(ALL);
+            return counts[type.ordinal()][all];
         }
 
         public final int meanValue(Type type) {
+            final int[] bySample = counts[type.ordinal()];
             long sum = 0;
-            int n = 0;
-            for ( final Map.Entry<String, Integer> pair : get(type).entrySet() ) {
-                if ( pair.getKey() != ALL)  { // truly must be string ==
-                    n++;
-                    sum += pair.getValue();
-                }
-            }
-            return (int)(Math.round(sum / (1.0 * n)));
+            for ( int i = 0; i < all; i++ )
+                sum += bySample[i];
+            return (int)(Math.round(sum / (1.0 * all)));
         }
 
         public final double ratioValue(Type type, TypeSampleMap denoms, boolean allP) {
+            final int[] nums = counts[type.ordinal()];
+            final int[] dens = denoms.counts[type.ordinal()];
+            if ( allP )
+                return ratio(nums[all], dens[all]);
+
             double sum = 0;
-            int n = 0;
-            for ( final String sample : get(type).keySet() ) {
-                if ( (allP && sample == ALL) || (!allP && sample != ALL) ) { // truly must be string ==
-                    final long num = get(type).get(sample);
-                    final long denom = denoms.get(type).get(sample);
-                    sum += ratio(num, denom);
-                    n++;
-                }
-            }
+            for ( int i = 0; i < all; i++ )
+                sum += ratio(nums[i], dens[i]);
+            return all > 0 ? sum / (1.0 * all) : 0.0;
+        }
 
-            return n > 0 ? sum / (1.0 * n) : 0.0;
+        public final void add(final TypeSampleMap other) {
+            for ( int t = 0; t < counts.length; t++ )
+                for ( int i = 0; i < counts[t].length; i++ )
+                    counts[t][i] += other.counts[t][i];
         }
     }
 
@@ -155,12 +157,13 @@ public class VariantSummary extends VariantEvaluator implements StandardEval {
         super.initialize(walker);
 
         nSamples = walker.getSampleNamesForEvaluation().size();
-        countsPerSample = new TypeSampleMap(walker.getSampleNamesForEvaluation());
-        transitionsPerSample = new TypeSampleMap(walker.getSampleNamesForEvaluation());
-        transversionsPerSample = new TypeSampleMap(walker.getSampleNamesForEvaluation());
-        allVariantCounts = new TypeSampleMap(walker.getSampleNamesForEvaluation());
-        knownVariantCounts = new TypeSampleMap(walker.getSampleNamesForEvaluation());
-        depthPerSample = new TypeSampleMap(walker.getSampleNamesForEvaluation());
+        sampleIndices = walker.getSampleIndicesForEvaluation();
+        countsPerSample = new TypeSampleMap((int)nSamples);
+        transitionsPerSample = new TypeSampleMap((int)nSamples);
+        transversionsPerSample = new TypeSampleMap((int)nSamples);
+        allVariantCounts = new TypeSampleMap((int)nSamples);
+        knownVariantCounts = new TypeSampleMap((int)nSamples);
+        depthPerSample = new TypeSampleMap((int)nSamples);
 
         if ( walker.knownCNVsFile != null ) {
             knownCNVs = walker.createIntervalTreeByContig(walker.knownCNVsFile);
@@ -219,35 +222,52 @@ public class VariantSummary extends VariantEvaluator implements StandardEval {
 
         // update DP, if possible
         if ( eval.hasAttribute(VCFConstants.DEPTH_KEY) )
-            depthPerSample.inc(type, ALL);
+            depthPerSample.incAll(type);
 
         // update counts
-        allVariantCounts.inc(type, ALL);
+        allVariantCounts.incAll(type);
 
         // type specific calculations
         if ( type == Type.SNP && eval.isBiallelic() ) {
             titvTable = GATKVariantContextUtils.isTransition(eval) ? transitionsPerSample : transversionsPerSample;
-            titvTable.inc(type, ALL);
+            titvTable.incAll(type);
         }
 
         // novelty calculation
         if ( comp != null || (type == Type.CNV && overlapsKnownCNV(eval)))
-            knownVariantCounts.inc(type, ALL);
+            knownVariantCounts.incAll(type);
 
         // per sample metrics
         for (final Genotype g : eval.getGenotypes()) {
             if ( ! g.isNoCall() && ! g.isHomRef() ) {
-                countsPerSample.inc(type, g.getSampleName());
+                final int sampleIndex = sampleIndices.get(g.getSampleName());
+                countsPerSample.inc(type, sampleIndex);
 
                 // update transition / transversion ratio
-                if ( titvTable != null ) titvTable.inc(type, g.getSampleName());
+                if ( titvTable != null ) titvTable.inc(type, sampleIndex);
 
                 if ( g.hasDP() )
-                    depthPerSample.inc(type, g.getSampleName());
+                    depthPerSample.inc(type, sampleIndex);
             }
         }
     }
 
+    @Override
+    public boolean supportsCombine() {
+        return true;
+    }
+
+    @Override
+    public void combine(final VariantEvaluator other) {
+        final VariantSummary o = (VariantSummary)other;
+        allVariantCounts.add(o.allVariantCounts);
+        knownVariantCounts.add(o.knownVariantCounts);
+        countsPerSample.add(o.countsPerSample);
+        transitionsPerSample.add(o.transitionsPerSample);
+        transversionsPerSample.add(o.transversionsPerSample);
+        depthPerSample.add(o.depthPerSample);
+    }
+
     private String noveltyRate(Type type) {
         final int all = allVariantCounts.all(type);
         final int known = knownVariantCounts.all(type);
@@ -45,6 +45,12 @@ public class StratificationManager<K extends Stratifier, V> implements Map<List<
 
     private final ArrayList<K> stratifiers;
 
+    // dense index of each combination of states, the sum over stratifiers of ordinal(state) * stride(stratifier),
+    // and the key of the leaf for each dense index
+    private final ArrayList<Map<Object, Integer>> stateOrdinals;
+    private final int[] strides;
+    private final int[] keysByIndex;
+
     // values associated with each key
     private final ArrayList<V> valuesByKey;
     private final ArrayList<List<Object>> stratifierValuesByKey;
@@ -66,6 +72,22 @@ public class StratificationManager<K extends Stratifier, V> implements Map<List<
     public StratificationManager(final List<K> strats) {
         this.stratifiers = new ArrayList<K>(strats);
 
+        // number the states of each stratifier, so that keys can be computed without walking the tree
+        this.stateOrdinals = new ArrayList<Map<Object, Integer>>(strats.size());
+        this.strides = new int[strats.size()];
+        for ( final K strat : strats ) {
+            final Map<Object, Integer> ordinals = new HashMap<Object, Integer>();
+            for ( final Object state : strat.getAllStates() )
+                if ( ! ordinals.containsKey(state) )
+                    ordinals.put(state, ordinals.size());
+            stateOrdinals.add(ordinals);
+        }
+        int stride = 1;
+        for ( int i = strats.size() - 1; i >= 0; i-- ) {
+            strides[i] = stride;
+            stride *= stateOrdinals.get(i).size();
+        }
+
         // construct and store the full tree of strats
         this.root = buildStratificationTree(new LinkedList<K>(strats));
         // assign the linear key ordering to the leafs
@@ -76,6 +98,9 @@ public class StratificationManager<K extends Stratifier, V> implements Map<List<
         if ( this.size == 0 )
             throw new ReviewedGATKException("Size == 0 in StratificationManager");
 
+        this.keysByIndex = new int[size];
+        assignKeysByIndex(root, 0, 0);
+
         // prepare the assocated data vectors mapping from key -> data
         this.valuesByKey = new ArrayList<V>(size());
         this.stratifierValuesByKey = new ArrayList<List<Object>>(size());
@@ -134,6 +159,19 @@ public class StratificationManager<K extends Stratifier, V> implements Map<List<
         }
     }
 
+    /**
+     * Fill in keysByIndex, so that keys can be looked up from the dense index of their states
+     * without walking the tree
+     */
+    private void assignKeysByIndex(final StratNode<K> node, final int offset, final int index) {
+        if ( node.isLeaf() )
+            keysByIndex[index] = node.getKey();
+        else {
+            for ( final Map.Entry<Object, StratNode<K>> entry : node.getSubnodes().entrySet() )
+                assignKeysByIndex(entry.getValue(), offset + 1, index + stateOrdinals.get(offset).get(entry.getKey()) * strides[offset]);
+        }
+    }
+
     /**
      * Entry point to recursive tool that fills in the list of state values corresponding
      * to each key.  After this function is called you can map from key -> List of StateValues
@@ -198,17 +236,78 @@ public class StratificationManager<K extends Stratifier, V> implements Map<List<
     @Requires("states != null")
     @Ensures("result >= -1")
     public int getKey(final List<Object> states) {
-        return root.find(states, 0);
+        int index = 0;
+        for ( int i = 0; i < strides.length; i++ ) {
+            final Integer ordinal = stateOrdinals.get(i).get(states.get(i));
+            if ( ordinal == null )
+                return -1;
+            index += ordinal * strides[i];
+        }
+        return keysByIndex[index];
     }
 
     @Requires("allStates != null")
     @Ensures("result != null")
     public Set<Integer> getKeys(final List<List<Object>> allStates) {
         final HashSet<Integer> keys = new HashSet<Integer>();
-        root.find(allStates, 0, keys);
+        for ( final int key : getKeyArray(allStates) )
+            keys.add(key);
         return keys;
     }
 
+    /**
+     * Get the distinct keys of all combinations of the states in allStates, where allStates
+     * contains one list of states for each stratifier in order.
+     *
+     * Unlike getKeys this looks the keys up by the dense index of their states, without
+     * walking the tree or boxing the keys, and is intended for the per-site fan out of
+     * VariantEval.
+     *
+     * @param allStates the list of relevant states for each stratifier
+     * @return an array of the distinct keys, in no particular order
+     */
+    @Requires("allStates != null")
+    @Ensures("result != null")
+    public int[] getKeyArray(final List<List<Object>> allStates) {
+        int[] indices = new int[]{0};
+        int[] ordinals = new int[1];
+        int i = 0;
+        for ( final List<Object> states : allStates ) {
+            if ( i == strides.length )
+                break;
+
+            // find the distinct ordinals of the states for this stratifier
+            if ( ordinals.length < states.size() )
+                ordinals = new int[states.size()];
+            int nOrdinals = 0;
+            for ( final Object state : states ) {
+                final Integer ordinal = stateOrdinals.get(i).get(state);
+                if ( ordinal == null )
+                    throw new ReviewedGATKException("Couldn't find state for " + state + " in stratifier " + stratifiers.get(i));
+                boolean seen = false;
+                for ( int j = 0; j < nOrdinals && ! seen; j++ )
+                    seen = ordinals[j] == ordinal;
+                if ( ! seen )
+                    ordinals[nOrdinals++] = ordinal;
+            }
+
+            // expand the indices so far by each of these ordinals
+            final int[] expanded = new int[indices.length * nOrdinals];
+            int n = 0;
+            for ( final int index : indices )
+                for ( int j = 0; j < nOrdinals; j++ )
+                    expanded[n++] = index + ordinals[j] * strides[i];
+            indices = expanded;
+            i++;
+        }
+        if ( i != strides.length )
+            throw new ReviewedGATKException("Expected states for " + strides.length + " stratifiers but got " + allStates.size());
+
+        for ( int j = 0; j < indices.length; j++ )
+            indices[j] = keysByIndex[indices[j]];
+        return indices;
+    }
+
     public List<Object> getStatesForKey(final int key) {
         final List<Object> states = new ArrayList<Object>(stratifiers.size());
         for ( int i = 0; i < stratifiers.size(); i++ ) {
@@ -255,9 +354,9 @@ public class StratificationManager<K extends Stratifier, V> implements Map<List<
     }
     
     public Collection<V> values(List<List<Object>> states) {
-        // TODO -- SHOULD BE INLINE TO AVOID CREATING LIST OF KEYS JUST TO ITERATE OVER IT
-        Collection<V> vals = new LinkedList<V>();
-        for ( int key : getKeys(states) ) 
+        final int[] keys = getKeyArray(states);
+        final List<V> vals = new ArrayList<V>(keys.length);
+        for ( final int key : keys )
             vals.add(get(key));
         return vals;
     }
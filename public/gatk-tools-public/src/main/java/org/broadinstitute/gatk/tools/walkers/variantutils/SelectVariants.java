@@ -31,6 +31,7 @@ import org.broadinstitute.gatk.engine.arguments.StandardVariantContextInputArgum
 import org.broadinstitute.gatk.utils.contexts.AlignmentContext;
 import org.broadinstitute.gatk.utils.contexts.ReferenceContext;
 import org.broadinstitute.gatk.utils.refdata.RefMetaDataTracker;
+import org.broadinstitute.gatk.engine.walkers.DecodesSampleSubset;
 import org.broadinstitute.gatk.engine.walkers.RodWalker;
 import org.broadinstitute.gatk.engine.walkers.TreeReducible;
 import org.broadinstitute.gatk.utils.variant.ChromosomeCountConstants;
@@ -307,7 +308,7 @@ import java.util.*;
  *
  */
 @DocumentedGATKFeature( groupName = HelpConstants.DOCS_CAT_VARMANIP, extraDocs = {CommandLineGATK.class} )
-public class SelectVariants extends RodWalker<Integer, Integer> implements TreeReducible<Integer> {
+public class SelectVariants extends RodWalker<Integer, Integer> implements TreeReducible<Integer>, DecodesSampleSubset {
     static final int MAX_FILTERED_GENOTYPES_DEFAULT_VALUE  = Integer.MAX_VALUE;
     static final double MAX_FRACTION_FILTERED_GENOTYPES_DEFAULT_VALUE = 1.0;
     static final int MIN_FILTERED_GENOTYPES_DEFAULT_VALUE  = 0;
@@ -781,6 +782,33 @@ public class SelectVariants extends RodWalker<Integer, Integer> implements TreeR
         return null;
     }
 
+    /**
+     * @return the number of samples in the header of the track vc was read from
+     */
+    private int getNumberOfSamplesInInput(final VariantContext vc) {
+        final VCFHeader header = vcfRods.get(vc.getSource());
+        return header == null ? vc.getNSamples() : header.getNGenotypeSamples();
+    }
+
+    /**
+     * When the samples to include are listed explicitly (-sn, -sf), only their genotypes need to be decoded from the
+     * variant track.  Sample expressions can only be resolved against the header, and the no-call and Mendelian
+     * violation filters look at samples outside of the selection, so in these cases every sample is decoded.  So is
+     * every sample when non-overlapping samples are allowed, since selecting none of the samples present selects all.
+     */
+    @Override
+    public Set<String> getSamplesToDecode(final String rodName) {
+        if ( ! rodName.equals(variantCollection.variants.getName()) )
+            return null;
+        if ( (sampleExpressions != null && ! sampleExpressions.isEmpty()) || considerNoCallGenotypes() || mendelianViolations ||
+                allowNonOverlappingCommandLineSamples )
+            return null;
+
+        final Set<String> samplesToDecode = new HashSet<>(sampleNames);
+        samplesToDecode.addAll(SampleUtils.getSamplesFromFiles(sampleFiles));
+        return samplesToDecode.isEmpty() ? null : samplesToDecode;
+    }
+
     /**
      * Subset VC record if necessary and emit the modified record (provided it satisfies criteria for printing)
      *
@@ -1083,8 +1111,9 @@ public class SelectVariants extends RodWalker<Integer, Integer> implements TreeR
         // strip out the alternate alleles that aren't being used
         final VariantContext sub = vc.subContextFromSamples(samples, removeUnusedAlternates);
 
-        //If no subsetting happened, exit now
-        if ( sub.getNSamples() == vc.getNSamples() && sub.getNAlleles() == vc.getNAlleles() )
+        //If no subsetting happened, exit now.  The vc may only carry the genotypes we asked the engine to decode, so
+        //compare against the samples in its header rather than in the vc itself
+        if ( sub.getNSamples() == getNumberOfSamplesInInput(vc) && sub.getNAlleles() == vc.getNAlleles() )
             return vc;
 
         final VariantContextBuilder builder = new VariantContextBuilder(sub);
@@ -39,6 +39,7 @@ import htsjdk.variant.variantcontext.VariantContext;
 import org.broadinstitute.gatk.utils.contexts.AlignmentContext;
 import org.broadinstitute.gatk.utils.contexts.ReferenceContext;
 import org.broadinstitute.gatk.utils.refdata.RefMetaDataTracker;
+import org.broadinstitute.gatk.engine.walkers.DecodesSampleSubset;
 import org.broadinstitute.gatk.engine.walkers.RodWalker;
 import org.broadinstitute.gatk.utils.Utils;
 import org.broadinstitute.gatk.utils.exceptions.UserException;
@@ -106,7 +107,7 @@ import java.util.*;
  * @since 2010
  */
 @DocumentedGATKFeature( groupName = HelpConstants.DOCS_CAT_VARMANIP, extraDocs = {CommandLineGATK.class} )
-public class VariantsToTable extends RodWalker<Integer, Integer> {
+public class VariantsToTable extends RodWalker<Integer, Integer> implements DecodesSampleSubset {
     /**
      * Variants from this VCF file are used by this tool as input.
      * The file must at least contain the standard VCF header lines, but
@@ -203,6 +204,24 @@ public class VariantsToTable extends RodWalker<Integer, Integer> {
         }
     }
 
+    /**
+     * Unless genotype fields or fields counting genotypes are requested, the genotypes are never looked at, so none
+     * of them need to be decoded.
+     */
+    @Override
+    public Set<String> getSamplesToDecode(final String rodName) {
+        if ( ! genotypeFieldsToTake.isEmpty() )
+            return null;
+        for ( final String field : fieldsToTake )
+            if ( FIELDS_COUNTING_GENOTYPES.contains(field) )
+                return null;
+
+        for ( final RodBinding<VariantContext> variant : variants )
+            if ( variant.getName().equals(rodName) )
+                return Collections.emptySet();
+        return null;
+    }
+
     public Integer map(RefMetaDataTracker tracker, ReferenceContext ref, AlignmentContext context) {
         if ( tracker == null ) // RodWalkers can make funky map calls
             return 0;
@@ -400,6 +419,9 @@ public class VariantsToTable extends RodWalker<Integer, Integer> {
     // ----------------------------------------------------------------------------------------------------
 
     public static abstract class Getter { public abstract String get(VariantContext vc); }
+
+    // the getters that look at the genotypes of the record
+    private static final Set<String> FIELDS_COUNTING_GENOTYPES = new HashSet<String>(Arrays.asList("HET", "HOM-REF", "HOM-VAR", "NO-CALL", "VAR", "NSAMPLES", "NCALLED"));
     public static final Map<String, Getter> getters = new HashMap<String, Getter>();
 
     static {
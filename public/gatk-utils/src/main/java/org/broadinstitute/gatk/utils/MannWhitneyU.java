@@ -25,13 +25,11 @@
 
 package org.broadinstitute.gatk.utils;
 
-import htsjdk.samtools.util.Histogram;
 import org.apache.commons.math3.distribution.NormalDistribution;
 import org.apache.log4j.Logger;
 
 
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Imported with changes from Picard private.
@@ -163,44 +161,11 @@ public class MannWhitneyU {
         }
     }
 
-    /**
-     * Key for the map from Integer[] to set of all permutations of that array.
-     */
-    private static class Key {
-        final Integer[] listToPermute;
-
-        private Key(Integer[] listToPermute) {
-            this.listToPermute = listToPermute;
-        }
-
-        @Override
-        public boolean equals(Object o) {
-            if (o == null || getClass() != o.getClass()) return false;
-
-            Key that = (Key) o;
-            return (Arrays.deepEquals(this.listToPermute, that.listToPermute));
-        }
-
-        @Override
-        public int hashCode() {
-            int result = 17;
-            for (Integer i : listToPermute) {
-                result = 31 * result + listToPermute[i];
-            }
-            return result;
-        }
-    }
-
     // Constructs a normal distribution; this needs to be a standard normal in order to get a Z-score in the exact case
     private static final double NORMAL_MEAN = 0;
     private static final double NORMAL_SD = 1;
     private static final NormalDistribution NORMAL = new NormalDistribution(NORMAL_MEAN, NORMAL_SD);
 
-    /**
-     * A map of an Integer[] of the labels to the set of all possible permutations of those labels.
-     */
-    private static Map<Key, Set<List<Integer>>> PERMUTATIONS = new ConcurrentHashMap<Key, Set<List<Integer>>>();
-
     /**
      * The minimum length for both data series in order to use a normal distribution
      * to calculate Z and p. If both series are shorter than this value then a permutation test
@@ -208,6 +173,14 @@ public class MannWhitneyU {
      */
     private int minimumNormalN = 10;
 
+    /**
+     * Scratch space reused across calls to {@link #test} so that ranking the merged data does not allocate per call.
+     * Instances are therefore not thread-safe; callers that share a test across threads should keep one per thread.
+     */
+    private float[] mergedRanks = new float[0];
+    private boolean[] mergedIsFirst = new boolean[0];
+    private double[] exactCounts = new double[0];
+
     /**
      * Sets the minimum number of values in each data series to use the normal distribution approximation.
      */
@@ -277,18 +250,14 @@ public class MannWhitneyU {
      * Rank both groups together and return a TestStatistic object that includes U1, U2 and number of ties for sigma
      */
     public TestStatistic calculateU1andU2(final double[] series1, final double[] series2) {
-        RankedData ranked = calculateRank(series1, series2);
-        Rank[] ranks = ranked.getRank();
-        ArrayList<Integer> numOfTies = ranked.getNumOfTies();
-        int lengthOfRanks = ranks.length;
-
-        double numOfTiesForSigma = transformTies(lengthOfRanks, numOfTies);
+        final double numOfTiesForSigma = rankMergedSeries(series1, series2);
+        final int lengthOfRanks = series1.length + series2.length;
 
         // Calculate R1 and R2 and U.
         float r1 = 0, r2 = 0;
-        for (Rank rank : ranks) {
-            if (rank.series == 1) r1 += rank.rank;
-            else r2 += rank.rank;
+        for (int i = 0; i < lengthOfRanks; i++) {
+            if (mergedIsFirst[i]) r1 += mergedRanks[i];
+            else r2 += mergedRanks[i];
         }
 
         double n1 = series1.length;
@@ -300,6 +269,69 @@ public class MannWhitneyU {
         return result;
     }
 
+    /**
+     * Sorts both series in place and ranks them together into the reusable merged buffers, averaging the ranks of
+     * tied values. This is the primitive equivalent of {@link #calculateRank} and produces the same ranks.
+     *
+     * @return the transformed number of ties needed for sigma, as computed by {@link #transformTies}
+     */
+    private double rankMergedSeries(final double[] series1, final double[] series2) {
+        Arrays.sort(series1);
+        Arrays.sort(series2);
+
+        final int n = series1.length + series2.length;
+        if (mergedRanks.length < n) {
+            mergedRanks = new float[n];
+            mergedIsFirst = new boolean[n];
+        }
+
+        // Merge the two series, ties going to series 1 first
+        {
+            int i = 0, j = 0, r = 0;
+            while (r < n) {
+                mergedIsFirst[r] = j >= series2.length || (i < series1.length && series1[i] <= series2[j]);
+                if (mergedIsFirst[r]) i++;
+                else j++;
+                mergedRanks[r] = ++r;
+            }
+        }
+
+        // Now sort out any tie bands
+        double numOfTiesForSigma = 0.0;
+        int i = 0, i1 = 0, i2 = 0;
+        while (i < n) {
+            final double value = mergedIsFirst[i] ? series1[i1] : series2[i2];
+            float rank = mergedRanks[i];
+            int count = 1;
+            if (mergedIsFirst[i]) i1++;
+            else i2++;
+
+            for (int j = i + 1; j < n; ++j) {
+                final double next = mergedIsFirst[j] ? series1[i1] : series2[i2];
+                if (next != value) break;
+                rank += mergedRanks[j];
+                ++count;
+                if (mergedIsFirst[j]) i1++;
+                else i2++;
+            }
+
+            if (count > 1) {
+                rank /= count;
+                for (int j = i; j < i + count; ++j) {
+                    mergedRanks[j] = rank;
+                }
+                // see transformTies for why a band covering every datapoint is not counted
+                if (count != n) {
+                    numOfTiesForSigma += Math.pow(count, 3) - count;
+                }
+            }
+
+            i += count;
+        }
+
+        return numOfTiesForSigma;
+    }
+
     public double transformTies(int numOfRanks, ArrayList<Integer> numOfTies) {
         //Calculate number of ties transformed for formula for Sigma to calculate Z-score
         ArrayList<Double> transformedTies = new ArrayList<>();
@@ -438,119 +470,46 @@ public class MannWhitneyU {
         return new Result(u, z, p, Math.abs(median(series1) - median(series2)));
     }
 
-    private void swap(Integer[] arr, int i, int j) {
-        int temp = arr[i];
-        arr[i] = arr[j];
-        arr[j] = temp;
-    }
-
     /**
-     * Uses a method that generates permutations in lexicographic order. (https://en.wikipedia.org/wiki/Permutation#Generation_in_lexicographic_order)
-     * @param temp Sorted list of elements to be permuted.
-     * @param allPermutations Empty set that will hold all possible permutations.
-     */
-    private void calculatePermutations(Integer[] temp, Set<List<Integer>> allPermutations) {
-        allPermutations.add(new ArrayList<>(Arrays.asList(temp)));
-        while (true) {
-            int k = -1;
-            for (int i = temp.length - 2; i >= 0; i--) {
-                if (temp[i] < temp[i + 1]) {
-                    k = i;
-                    break;
-                }
-            }
-
-            if (k == -1) {
-                break;
-            }
-
-            int l = -1;
-            for (int i = temp.length - 1; i >= k + 1; i--) {
-                if (temp[k] < temp[i]) {
-                    l = i;
-                    break;
-                }
-            }
-
-            swap(temp, k, l);
-
-            int end = temp.length - 1;
-            for (int begin = k + 1; begin < end; begin++) {
-                swap(temp, begin, end);
-                end--;
-            }
-            allPermutations.add(new ArrayList<>(Arrays.asList(temp)));
-        }
-    }
-
-    /**
-     * Checks to see if the permutations have already been computed before creating them from scratch.
-     * @param listToPermute List of tags in numerical order to be permuted
-     * @param numOfPermutations The number of permutations this list will have (n1+n2 choose n1)
-     * @return Set of all possible permutations for the given list.
-     */
-    Set<List<Integer>> getPermutations(final Integer[] listToPermute, int numOfPermutations) {
-        Key key = new Key(listToPermute);
-        Set<List<Integer>> permutations = PERMUTATIONS.get(key);
-        if (permutations == null) {
-            permutations = new HashSet<>(numOfPermutations);
-            calculatePermutations(listToPermute, permutations);
-            PERMUTATIONS.put(key, permutations);
-        }
-        return permutations;
-    }
-
-    /**
-     * Creates histogram of test statistics from a permutation test.
+     * Computes the exact one-sided p-value of U by counting, for every possible assignment of the pooled ranks to
+     * the two groups, the resulting rank sum of group 1.  The counts are built with a subset-sum recurrence over the
+     * doubled ranks (tied ranks are always whole or half integers), which gives the same distribution as enumerating
+     * every permutation of the group labels without materializing any of them.
      *
      * @param series1 Data from group 1
      * @param series2 Data from group 2
      * @param testStatU Test statistic U from observed data
-     * @return P-value based on histogram with u calculated for every possible permutation of group tag.
+     * @return P-value based on the distribution of u over every possible permutation of group tag.
      */
     public double permutationTest(final double[] series1, final double[] series2, final double testStatU) {
-        final Histogram<Double> histo = new Histogram<>();
         final int n1 = series1.length;
         final int n2 = series2.length;
-
-        RankedData rankedGroups = calculateRank(series1, series2);
-        Rank[] ranks = rankedGroups.getRank();
-
-        Integer[] firstPermutation = new Integer[n1 + n2];
-
-        for (int i = 0; i < firstPermutation.length; i++) {
-            if (i < n1) {
-                firstPermutation[i] = 0;
-            } else {
-                firstPermutation[i] = 1;
-            }
-        }
-
-        final int numOfPerms = (int) MathUtils.binomialCoefficient(n1 + n2, n2);
-        Set<List<Integer>> allPermutations = getPermutations(firstPermutation, numOfPerms);
-
-        double[] newSeries1 = new double[n1];
-        double[] newSeries2 = new double[n2];
-
-        //iterate over all permutations
-        for (List<Integer> currPerm : allPermutations) {
-            int series1End = 0;
-            int series2End = 0;
-            for (int i = 0; i < currPerm.size(); i++) {
-                int grouping = currPerm.get(i);
-                if (grouping == 0) {
-                    newSeries1[series1End] = ranks[i].rank;
-                    series1End++;
-                } else {
-                    newSeries2[series2End] = ranks[i].rank;
-                    series2End++;
+        final int n = n1 + n2;
+
+        rankMergedSeries(series1, series2);
+
+        // the largest possible doubled rank sum of group 1 is bounded by the doubled sum of all ranks, n * (n + 1)
+        final int maxSum = n * (n + 1);
+        final int width = maxSum + 1;
+        final int size = (n1 + 1) * width;
+        if (exactCounts.length < size) {
+            exactCounts = new double[size];
+        }
+        Arrays.fill(exactCounts, 0, size, 0.0);
+
+        // exactCounts[k * width + s] is the number of ways to choose k of the ranks seen so far with doubled sum s
+        exactCounts[0] = 1;
+        int partialMax = 0;
+        for (int i = 0; i < n; i++) {
+            final int doubledRank = Math.round(2 * mergedRanks[i]);
+            partialMax += doubledRank;
+            for (int k = Math.min(i + 1, n1); k >= 1; k--) {
+                final int row = k * width;
+                final int previousRow = row - width;
+                for (int s = Math.min(partialMax, maxSum); s >= doubledRank; s--) {
+                    exactCounts[row + s] += exactCounts[previousRow + s - doubledRank];
                 }
             }
-            assert (series1End == n1);
-            assert (series2End == n2);
-
-            double newU = MathUtils.sum(newSeries1) - ((n1 * (n1 + 1)) / 2.0);
-            histo.increment(newU);
         }
 
         /**
@@ -559,13 +518,18 @@ public class MannWhitneyU {
          * and dividing by the total count of everything in the histogram. Just using getCumulativeDistribution() gives
          * a p-value of 1 in the most extreme case which doesn't result in a usable z-score.
          */
-        double sumOfAllSmallerBins = histo.get(testStatU).getValue() / 2.0;
-
-        for (final Histogram.Bin<Double> bin : histo.values()) {
-            if (bin.getId() < testStatU) sumOfAllSmallerBins += bin.getValue();
-        }
-
-        return sumOfAllSmallerBins / histo.getCount();
+        final int row = n1 * width;
+        final long observedSum = Math.round(2 * (testStatU + (n1 * (n1 + 1)) / 2.0));
+        double sumOfAllSmallerBins = 0.0;
+        double totalCount = 0.0;
+        for (int s = 0; s <= maxSum; s++) {
+            final double count = exactCounts[row + s];
+            totalCount += count;
+            if (s < observedSum) sumOfAllSmallerBins += count;
+            else if (s == observedSum) sumOfAllSmallerBins += count / 2.0;
+        }
+
+        return sumOfAllSmallerBins / totalCount;
     }
 
 }
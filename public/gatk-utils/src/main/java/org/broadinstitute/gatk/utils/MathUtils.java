@@ -104,7 +104,7 @@ public class MathUtils {
         }
 
         //initialize with the special case: log10(0) = NEGATIVE_INFINITY
-        private static double[] cache = new double[] { Double.NEGATIVE_INFINITY };
+        private static volatile double[] cache = new double[] { Double.NEGATIVE_INFINITY };
     }
 
     /**
@@ -134,16 +134,18 @@ public class MathUtils {
 
         private static synchronized void initialize() {
             if (cache == null) {
+                // fill the table before publishing it, as get() reads it without locking
                 final int tableSize = (int) (MAX_TOLERANCE / TABLE_STEP) + 1;
-                cache = new double[tableSize];
-                for (int k = 0; k < cache.length; k++)
-                    cache[k] = Math.log10(1.0 + Math.pow(10.0, -((double) k) * TABLE_STEP));
+                final double[] table = new double[tableSize];
+                for (int k = 0; k < table.length; k++)
+                    table[k] = Math.log10(1.0 + Math.pow(10.0, -((double) k) * TABLE_STEP));
+                cache = table;
             }
         }
 
         private static final double TABLE_STEP = 0.0001;
         private static final double INV_STEP = 1.0 / TABLE_STEP;
-        private static double[] cache = null;
+        private static volatile double[] cache = null;
     }
 
     // A fast implementation of the Math.round() method.  This method does not perform
@@ -1524,15 +1526,17 @@ public class MathUtils {
 
         private static synchronized void initialize() {
             if (cache == null) {
+                // fill the table before publishing it, as get() reads it without locking
                 Log10Cache.ensureCacheContains(CACHE_SIZE);
-                cache = new double[CACHE_SIZE];
-                cache[0] = 0.0;
-                for (int k = 1; k < cache.length; k++)
-                    cache[k] = cache[k-1] + Log10Cache.get(k);
+                final double[] table = new double[CACHE_SIZE];
+                table[0] = 0.0;
+                for (int k = 1; k < table.length; k++)
+                    table[k] = table[k-1] + Log10Cache.get(k);
+                cache = table;
             }
         }
 
-        private static double[] cache = null;
+        private static volatile double[] cache = null;
     }
 
     /**
@@ -0,0 +1,236 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.activeregion;
+
+import org.broadinstitute.gatk.utils.GenomeLoc;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+
+/**
+ * A per-active-region trace of where an active region walker spends its time.
+ *
+ * The traversal calls {@link #startRegion(ActiveRegion)} and {@link #endRegion()} around each call to map, which
+ * writes one tab-delimited line per region with its span, its read count, the haplotypes and kmer sizes of its
+ * assembly, the nanoseconds spent in each {@link Phase} and the bytes allocated by the thread that processed it.
+ *
+ * The code processing a region reports its phases and assembly details through the static methods of this class,
+ * which apply to the region being traced on the calling thread and do nothing if there is none, so they can be left
+ * in place whether or not a trace was requested.  Time is attributed to the innermost phase being run, so the time
+ * of a phase nested in another, such as the annotation of the calls being genotyped, is not counted twice.
+ */
+public final class ActiveRegionTrace {
+    /**
+     * The parts of the processing of a region that are timed separately
+     */
+    public enum Phase {
+        ASSEMBLY("assemblyNanos"),
+        PAIRHMM("pairHMMNanos"),
+        GENOTYPING("genotypingNanos"),
+        ANNOTATION("annotationNanos"),
+        REFERENCE_CONFIDENCE("gvcfNanos");
+
+        private final String columnName;
+
+        Phase(final String columnName) {
+            this.columnName = columnName;
+        }
+    }
+
+    private static final String[] REGION_COLUMNS = {"contig", "start", "end", "extendedStart", "extendedEnd", "active",
+            "reads", "haplotypes", "kmerSizes", "totalNanos"};
+
+    private static final ThreadLocal<RegionProfile> currentProfile = new ThreadLocal<>();
+
+    private final PrintStream out;
+    private final ThreadMXBean threadMXBean;
+
+    /**
+     * Create a trace, and write its header line
+     * @param out where to write the trace
+     */
+    public ActiveRegionTrace(final PrintStream out) {
+        if ( out == null ) throw new IllegalArgumentException("out cannot be null");
+        this.out = out;
+
+        final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        this.threadMXBean = bean instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean)bean).isThreadAllocatedMemorySupported()
+                && ((com.sun.management.ThreadMXBean)bean).isThreadAllocatedMemoryEnabled() ? bean : null;
+
+        final StringBuilder header = new StringBuilder();
+        for ( final String column : REGION_COLUMNS )
+            header.append(column).append('\t');
+        for ( final Phase phase : Phase.values() )
+            header.append(phase.columnName).append('\t');
+        header.append("allocatedBytes");
+        out.println(header);
+    }
+
+    /**
+     * Start tracing a region on the calling thread
+     * @param region the region about to be processed
+     */
+    public void startRegion(final ActiveRegion region) {
+        currentProfile.set(new RegionProfile(region, getAllocatedBytes()));
+    }
+
+    /**
+     * Stop tracing the region of the calling thread, and write its line
+     */
+    public void endRegion() {
+        final RegionProfile profile = currentProfile.get();
+        if ( profile == null ) throw new IllegalStateException("No region is being traced on thread " + Thread.currentThread().getName());
+        currentProfile.remove();
+
+        final long totalNanos = System.nanoTime() - profile.startNanos;
+        final long allocatedBytes = profile.startAllocatedBytes < 0 ? -1 : getAllocatedBytes() - profile.startAllocatedBytes;
+        final String line = profile.toLine(totalNanos, allocatedBytes);
+        synchronized ( out ) {
+            out.println(line);
+        }
+    }
+
+    /**
+     * @return the number of bytes allocated by the calling thread so far, or -1 if the JVM cannot tell
+     */
+    private long getAllocatedBytes() {
+        return threadMXBean == null ? -1 : ((com.sun.management.ThreadMXBean)threadMXBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Start timing a phase of the region traced on the calling thread, if any
+     * @param phase the phase starting
+     */
+    public static void enterPhase(final Phase phase) {
+        final RegionProfile profile = currentProfile.get();
+        if ( profile != null )
+            profile.enterPhase(phase);
+    }
+
+    /**
+     * Stop timing the phase most recently entered on the calling thread, if any
+     */
+    public static void exitPhase() {
+        final RegionProfile profile = currentProfile.get();
+        if ( profile != null )
+            profile.exitPhase();
+    }
+
+    /**
+     * Record the number of haplotypes assembled in the region traced on the calling thread, if any
+     * @param haplotypeCount the number of haplotypes
+     */
+    public static void setHaplotypeCount(final int haplotypeCount) {
+        final RegionProfile profile = currentProfile.get();
+        if ( profile != null )
+            profile.haplotypeCount = haplotypeCount;
+    }
+
+    /**
+     * Record that the assembly of the region traced on the calling thread, if any, tried a kmer size
+     * @param kmerSize the kmer size
+     */
+    public static void addKmerSize(final int kmerSize) {
+        final RegionProfile profile = currentProfile.get();
+        if ( profile != null )
+            profile.addKmerSize(kmerSize);
+    }
+
+    /**
+     * What is known about the region being processed on a thread
+     */
+    private static final class RegionProfile {
+        private final ActiveRegion region;
+        private final int readCount;
+        private final long startNanos;
+        private final long startAllocatedBytes;
+        private final long[] phaseNanos = new long[Phase.values().length];
+
+        private int haplotypeCount = -1;
+        private int[] kmerSizes = new int[4];
+        private int nKmerSizes = 0;
+
+        // the phases being run, innermost last, and when the innermost one last started running
+        private Phase[] phaseStack = new Phase[4];
+        private int phaseDepth = 0;
+        private long phaseStartNanos;
+
+        private RegionProfile(final ActiveRegion region, final long startAllocatedBytes) {
+            this.region = region;
+            this.readCount = region.size();
+            this.startAllocatedBytes = startAllocatedBytes;
+            this.startNanos = System.nanoTime();
+        }
+
+        private void enterPhase(final Phase phase) {
+            final long now = System.nanoTime();
+            if ( phaseDepth > 0 )
+                phaseNanos[phaseStack[phaseDepth - 1].ordinal()] += now - phaseStartNanos;
+            if ( phaseDepth == phaseStack.length )
+                phaseStack = Arrays.copyOf(phaseStack, phaseDepth * 2);
+            phaseStack[phaseDepth++] = phase;
+            phaseStartNanos = now;
+        }
+
+        private void exitPhase() {
+            if ( phaseDepth == 0 ) throw new IllegalStateException("No phase to exit");
+            final long now = System.nanoTime();
+            phaseNanos[phaseStack[--phaseDepth].ordinal()] += now - phaseStartNanos;
+            phaseStartNanos = now;
+        }
+
+        private void addKmerSize(final int kmerSize) {
+            if ( nKmerSizes == kmerSizes.length )
+                kmerSizes = Arrays.copyOf(kmerSizes, nKmerSizes * 2);
+            kmerSizes[nKmerSizes++] = kmerSize;
+        }
+
+        private String toLine(final long totalNanos, final long allocatedBytes) {
+            final GenomeLoc location = region.getLocation();
+            final GenomeLoc extendedLocation = region.getExtendedLoc();
+            final StringBuilder line = new StringBuilder();
+            line.append(location.getContig()).append('\t')
+                    .append(location.getStart()).append('\t')
+                    .append(location.getStop()).append('\t')
+                    .append(extendedLocation.getStart()).append('\t')
+                    .append(extendedLocation.getStop()).append('\t')
+                    .append(region.isActive()).append('\t')
+                    .append(readCount).append('\t')
+                    .append(haplotypeCount < 0 ? "NA" : Integer.toString(haplotypeCount)).append('\t');
+            if ( nKmerSizes == 0 )
+                line.append("NA");
+            for ( int i = 0; i < nKmerSizes; i++ )
+                line.append(i == 0 ? "" : ",").append(kmerSizes[i]);
+            line.append('\t').append(totalNanos).append('\t');
+            for ( final long nanos : phaseNanos )
+                line.append(nanos).append('\t');
+            line.append(allocatedBytes);
+            return line.toString();
+        }
+    }
+}
@@ -25,18 +25,20 @@
 
 package org.broadinstitute.gatk.utils.baq;
 
-import htsjdk.samtools.reference.ReferenceSequence;
 import htsjdk.samtools.CigarElement;
 import htsjdk.samtools.CigarOperator;
 import htsjdk.samtools.SAMRecord;
 import htsjdk.samtools.SAMUtils;
 import htsjdk.samtools.reference.ReferenceSequenceFile;
+import htsjdk.samtools.SAMSequenceRecord;
 import org.apache.log4j.Logger;
 import org.broadinstitute.gatk.utils.collections.Pair;
 import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
 import org.broadinstitute.gatk.utils.exceptions.UserException;
 import org.broadinstitute.gatk.utils.sam.ReadUtils;
 
+import java.util.Arrays;
+
 /*
   The topology of the profile HMM:
 
@@ -193,6 +195,16 @@ public class BAQ {
     // ####################################################################################################
     public int hmm_glocal(final byte[] ref, final byte[] query, int qstart, int l_query, final byte[] _iqual, int[] state, byte[] q) {
         if ( ref == null ) throw new ReviewedGATKException("BUG: ref sequence is null");
+        return hmm_glocal(ref, 0, ref.length, query, qstart, l_query, _iqual, state, q);
+    }
+
+    /**
+     * Same as {@link #hmm_glocal(byte[], byte[], int, int, byte[], int[], byte[])}, but the reference is the
+     * l_ref bases of ref starting at refStart, so that many reads can share a single reference window
+     */
+    protected int hmm_glocal(final byte[] ref, final int refStart, final int l_ref, final byte[] query, int qstart, int l_query, final byte[] _iqual, int[] state, byte[] q) {
+        if ( ref == null ) throw new ReviewedGATKException("BUG: ref sequence is null");
+        if ( refStart < 0 || l_ref < 0 || refStart + l_ref > ref.length ) throw new ReviewedGATKException("BUG: reference window [" + refStart + "," + (refStart + l_ref) + ") is outside of the reference sequence of length " + ref.length);
         if ( query == null ) throw new ReviewedGATKException("BUG: query sequence is null");
         if ( _iqual == null ) throw new ReviewedGATKException("BUG: query quality vector is null");
         if ( query.length != _iqual.length ) throw new ReviewedGATKException("BUG: read sequence length != qual length");
@@ -205,9 +217,6 @@ public class BAQ {
 		int i, k;
 
         /*** initialization ***/
-		// change coordinates
-		final int l_ref = ref.length;
-
 		// set band width
 		int bw2, bw = l_ref > l_query? l_ref : l_query;
         if (cb < Math.abs(l_ref - l_query)) {
@@ -223,17 +232,18 @@ public class BAQ {
         //System.out.printf("c->bw = %d, bw = %d, l_ref = %d, l_query = %d\n", cb, bw, l_ref, l_query);
 		bw2 = bw * 2 + 1;
 
-        // allocate the forward and backward matrices f[][] and b[][] and the scaling array s[]
-		double[][] f = new double[l_query+1][bw2*3 + 6];
-		double[][] b = new double[l_query+1][bw2*3 + 6];
-		double[] s = new double[l_query+2];
+        // get the (cleared) forward and backward matrices f[][] and b[][] and the scaling array s[] of this thread
+        final HMMBuffers buffers = HMM_BUFFERS.get();
+		final double[][] f = buffers.forwardMatrix(l_query+1, bw2*3 + 6);
+		final double[][] b = buffers.backwardMatrix(l_query+1, bw2*3 + 6);
+		final double[] s = buffers.scalingFactors(l_query+2);
 
 		// initialize transition probabilities
 		double sM, sI, bM, bI;
 		sM = sI = 1. / (2 * l_query + 2);
         bM = (1 - cd) / l_ref; bI = cd / l_ref; // (bM+bI)*l_ref==1
 
-		double[] m = new double[9];
+		final double[] m = buffers.transitions;
 		m[0*3+0] = (1 - cd - cd) * (1 - sM); m[0*3+1] = m[0*3+2] = cd * (1 - sM);
 		m[1*3+0] = (1 - ce) * (1 - sI); m[1*3+1] = ce * (1 - sI); m[1*3+2] = 0.;
 		m[2*3+0] = 1 - ce; m[2*3+1] = 0.; m[2*3+2] = ce;
@@ -248,7 +258,7 @@ public class BAQ {
 			int beg = 1, end = l_ref < bw + 1? l_ref : bw + 1, _beg, _end;
 			for (k = beg, sum = 0.; k <= end; ++k) {
 				int u;
-                double e = calcEpsilon(ref[k-1], query[qstart], _iqual[qstart]);
+                double e = calcEpsilon(ref[refStart+k-1], query[qstart], _iqual[qstart]);
 				u = set_u(bw, 1, k);
 				fi[u+0] = e * bM; fi[u+1] = EI * bI;
 				sum += fi[u] + fi[u+1];
@@ -269,7 +279,7 @@ public class BAQ {
 			x = i + bw; end = end < x? end : x; // band end
 			for (k = beg, sum = 0.; k <= end; ++k) {
 				int u, v11, v01, v10;
-                double e = calcEpsilon(ref[k-1], qyi, _iqual[qstart+i-1]);
+                double e = calcEpsilon(ref[refStart+k-1], qyi, _iqual[qstart+i-1]);
 				u = set_u(bw, i, k); v11 = set_u(bw, i-1, k-1); v10 = set_u(bw, i-1, k); v01 = set_u(bw, i, k-1);
 				fi[u+0] = e * (m[0] * fi1[v11+0] + m[3] * fi1[v11+1] + m[6] * fi1[v11+2]);
 				fi[u+1] = EI * (m[1] * fi1[v10+0] + m[4] * fi1[v10+1]);
@@ -311,7 +321,7 @@ public class BAQ {
 			for (k = end; k >= beg; --k) {
 				int u, v11, v01, v10;
 				u = set_u(bw, i, k); v11 = set_u(bw, i+1, k+1); v10 = set_u(bw, i+1, k); v01 = set_u(bw, i, k+1);
-                final double e = (k >= l_ref? 0 : calcEpsilon(ref[k], qyi1, _iqual[qstart+i])) * bi1[v11];
+                final double e = (k >= l_ref? 0 : calcEpsilon(ref[refStart+k], qyi1, _iqual[qstart+i])) * bi1[v11];
                 bi[u+0] = e * m[0] + EI * m[1] * bi1[v10+1] + m[2] * bi[v01+2]; // bi1[v11] has been folded into e.
 				bi[u+1] = e * m[3] + EI * m[4] * bi1[v10+1];
 				bi[u+2] = (e * m[6] + m[8] * bi[v01+2]) * y;
@@ -327,7 +337,7 @@ public class BAQ {
 			double sum = 0.;
 			for (k = end; k >= beg; --k) {
 				int u = set_u(bw, 1, k);
-                double e = calcEpsilon(ref[k-1], query[qstart], _iqual[qstart]);
+                double e = calcEpsilon(ref[refStart+k-1], query[qstart], _iqual[qstart]);
                 if (u < 3 || u >= bw2*3+3) continue;
 				sum += e * b[1][u+0] * bM + EI * b[1][u+1] * bI;
 			}
@@ -357,6 +367,7 @@ public class BAQ {
 			//System.out.println("("+pb+","+sum+")"+" ("+(i-1)+","+(max_k>>2)+","+(max_k&3)+","+max+")");
 		}
 
+        buffers.releaseIfTooLarge();
 		return 0;
 	}
 
@@ -390,6 +401,63 @@ public class BAQ {
 		return (k + 1 - x) * 3;
 	}
 
+    /**
+     * Matrices bigger than this (in cells) are not kept around by a thread once its calculation is done
+     */
+    private final static int MAX_CACHED_MATRIX_SIZE = 1 << 22;
+
+    /**
+     * The forward-backward working storage of each thread, reused across reads
+     */
+    private final static ThreadLocal<HMMBuffers> HMM_BUFFERS = new ThreadLocal<HMMBuffers>() {
+        @Override
+        protected HMMBuffers initialValue() {
+            return new HMMBuffers();
+        }
+    };
+
+    /**
+     * Grow-only forward, backward and scaling arrays
+     *
+     * The rows of the matrices may be longer than requested, but the first {@code cols} entries of each requested
+     * row are always zeroed, as hmm_glocal relies on the cells outside of the band being 0.
+     */
+    private final static class HMMBuffers {
+        private final double[] transitions = new double[9];
+        private double[][] f = new double[0][0], b = new double[0][0];
+        private double[] s = new double[0];
+
+        private double[][] forwardMatrix(final int rows, final int cols) {
+            f = ensureCapacity(f, rows, cols);
+            return f;
+        }
+
+        private double[][] backwardMatrix(final int rows, final int cols) {
+            b = ensureCapacity(b, rows, cols);
+            return b;
+        }
+
+        private double[] scalingFactors(final int size) {
+            if ( s.length < size ) s = new double[size];
+            return s;
+        }
+
+        private static double[][] ensureCapacity(final double[][] matrix, final int rows, final int cols) {
+            if ( matrix.length < rows || matrix[0].length < cols )
+                return new double[Math.max(rows, matrix.length)][Math.max(cols, matrix.length == 0 ? 0 : matrix[0].length)];
+            for ( int i = 0; i < rows; i++ )
+                Arrays.fill(matrix[i], 0, cols, 0.0);
+            return matrix;
+        }
+
+        private void releaseIfTooLarge() {
+            if ( (long) f.length * (f.length == 0 ? 0 : f[0].length) > MAX_CACHED_MATRIX_SIZE ) {
+                f = new double[0][0];
+                b = new double[0][0];
+            }
+        }
+    }
+
     // ---------------------------------------------------------------------------------------------------------------
     //
     // Actually working with the BAQ tag now
@@ -505,6 +573,11 @@ public class BAQ {
         public byte[] refBases, rawQuals, readBases, bq;
         public int[] state;
 
+        /**
+         * The reference of the calculation is the refLength bases of refBases starting at refStart
+         */
+        public int refStart, refLength;
+
         public BAQCalculationResult(SAMRecord read, byte[] ref) {
             this(read.getBaseQualities(), read.getReadBases(), ref);
         }
@@ -518,6 +591,8 @@ public class BAQ {
             bq = new byte[rawQuals.length];
             state = new int[rawQuals.length];
             this.refBases = ref;
+            this.refStart = 0;
+            this.refLength = ref == null ? 0 : ref.length;
         }
     }
 
@@ -528,19 +603,69 @@ public class BAQ {
         long start = Math.max(readStart - offset - ReadUtils.getFirstInsertionOffset(read), 1);
         long stop = (includeClippedBases ? read.getUnclippedEnd() : read.getAlignmentEnd()) + offset + ReadUtils.getLastInsertionOffset(read);
 
-        if ( stop > refReader.getSequenceDictionary().getSequence(read.getReferenceName()).getSequenceLength() ) {
+        final SAMSequenceRecord contig = refReader.getSequenceDictionary().getSequence(read.getReferenceName());
+        if ( stop > contig.getSequenceLength() ) {
             return null;
         } else {
-            // now that we have the start and stop, get the reference sequence covering it
-            ReferenceSequence refSeq = refReader.getSubsequenceAt(read.getReferenceName(), start, stop);
-            return calcBAQFromHMM(read, refSeq.getBases(), (int)(start - readStart));
+            // now that we have the start and stop, get the reference window covering it, shared with the nearby reads
+            final ReferenceWindow window = getReferenceWindow(refReader, contig, start, stop);
+            return calcBAQFromHMM(read, window.bases, (int)(start - window.start), (int)(stop - start + 1), (int)(start - readStart));
         }
     }
 
+    /**
+     * Number of reference bases fetched past the end of the read being BAQ'ed, so that the following reads
+     * (which overlap it, as reads come in coordinate order) can use the same reference window
+     */
+    public final static int REFERENCE_WINDOW_LOOKAHEAD = 10000;
+
+    /**
+     * The reference window most recently fetched by each thread
+     */
+    private final ThreadLocal<ReferenceWindow> referenceWindow = new ThreadLocal<ReferenceWindow>();
+
+    /**
+     * A contiguous stretch of reference bases [start, stop] (1-based, inclusive) of a contig
+     */
+    private final static class ReferenceWindow {
+        private final ReferenceSequenceFile refReader;
+        private final String contig;
+        private final long start, stop;
+        private final byte[] bases;
+
+        private ReferenceWindow(final ReferenceSequenceFile refReader, final String contig, final long start, final long stop) {
+            this.refReader = refReader;
+            this.contig = contig;
+            this.start = start;
+            this.stop = stop;
+            this.bases = refReader.getSubsequenceAt(contig, start, stop).getBases();
+        }
+
+        private boolean covers(final ReferenceSequenceFile refReader, final String contig, final long start, final long stop) {
+            return this.refReader == refReader && this.contig.equals(contig) && start >= this.start && stop <= this.stop;
+        }
+    }
+
+    /**
+     * Get a reference window covering [start, stop] of contig, reusing this thread's current window if possible
+     */
+    private ReferenceWindow getReferenceWindow(final ReferenceSequenceFile refReader, final SAMSequenceRecord contig, final long start, final long stop) {
+        ReferenceWindow window = referenceWindow.get();
+        if ( window == null || ! window.covers(refReader, contig.getSequenceName(), start, stop) ) {
+            window = new ReferenceWindow(refReader, contig.getSequenceName(), start, Math.min(contig.getSequenceLength(), stop + REFERENCE_WINDOW_LOOKAHEAD));
+            referenceWindow.set(window);
+        }
+        return window;
+    }
+
 //    final SimpleTimer total = new SimpleTimer();
 //    final SimpleTimer local = new SimpleTimer();
 //    int n = 0;
     public BAQCalculationResult calcBAQFromHMM(final byte[] ref, final byte[] query, final byte[] quals, final int queryStart, final int queryEnd ) {
+        return calcBAQFromHMM(ref, 0, ref.length, query, quals, queryStart, queryEnd);
+    }
+
+    private BAQCalculationResult calcBAQFromHMM(final byte[] ref, final int refStart, final int refLength, final byte[] query, final byte[] quals, final int queryStart, final int queryEnd ) {
 //        total.restart();
         if ( queryStart < 0 ) throw new ReviewedGATKException("BUG: queryStart < 0: " + queryStart);
         if ( queryEnd < 0 ) throw new ReviewedGATKException("BUG: queryEnd < 0: " + queryEnd);
@@ -548,9 +673,11 @@ public class BAQ {
 
         // note -- assumes ref is offset from the *CLIPPED* start
         BAQCalculationResult baqResult = new BAQCalculationResult(query, quals, ref);
+        baqResult.refStart = refStart;
+        baqResult.refLength = refLength;
         int queryLen = queryEnd - queryStart;
 //        local.restart();
-        hmm_glocal(baqResult.refBases, baqResult.readBases, queryStart, queryLen, baqResult.rawQuals, baqResult.state, baqResult.bq);
+        hmm_glocal(baqResult.refBases, refStart, refLength, baqResult.readBases, queryStart, queryLen, baqResult.rawQuals, baqResult.state, baqResult.bq);
 //        local.stop();
 //        total.stop();
 //        if ( n++ % 100000 == 0 )
@@ -600,6 +727,14 @@ public class BAQ {
 
     // we need to pad ref by at least the bandwidth / 2 on either side
     public BAQCalculationResult calcBAQFromHMM(final SAMRecord read, final byte[] ref, final int refOffset) {
+        return calcBAQFromHMM(read, ref, 0, ref.length, refOffset);
+    }
+
+    /**
+     * Same as {@link #calcBAQFromHMM(SAMRecord, byte[], int)}, using the refLength bases of ref starting at refStart
+     * as the reference for the read
+     */
+    private BAQCalculationResult calcBAQFromHMM(final SAMRecord read, final byte[] ref, final int refStart, final int refLength, final int refOffset) {
         // todo -- need to handle the case where the cigar sum of lengths doesn't cover the whole read
         Pair<Integer, Integer> queryRange = calculateQueryRange(read);
         if ( queryRange == null ) return null; // read has Ns, or is completely clipped away
@@ -607,7 +742,7 @@ public class BAQ {
         int queryStart = queryRange.getFirst();
         int queryEnd = queryRange.getSecond();
 
-        BAQCalculationResult baqResult = calcBAQFromHMM(ref, read.getReadBases(), read.getBaseQualities(), queryStart, queryEnd);
+        BAQCalculationResult baqResult = calcBAQFromHMM(ref, refStart, refLength, read.getReadBases(), read.getBaseQualities(), queryStart, queryEnd);
 
         // cap quals
         int readI = 0, refI = 0;
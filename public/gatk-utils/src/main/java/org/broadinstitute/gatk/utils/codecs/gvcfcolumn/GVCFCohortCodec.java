@@ -0,0 +1,87 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.codecs.gvcfcolumn;
+
+import htsjdk.tribble.AsciiFeatureCodec;
+import htsjdk.tribble.NameAwareCodec;
+import htsjdk.tribble.readers.LineIterator;
+import htsjdk.variant.variantcontext.VariantContext;
+
+import java.io.File;
+
+/**
+ * Identifies the manifest of a {@link GVCFCohortStore}, so that a cohort store can be given as a ROD
+ *
+ * <p>
+ *     A cohort store is not a single Tribble file, so the engine reads it with a {@link GVCFCohortReader} rather
+ *     than through this codec.  The whole cohort is a single ROD, whose records are the single-sample gVCF records of
+ *     all of its samples.
+ * </p>
+ *
+ * <h2>File format example</h2>
+ * <pre>
+ *     ##gvcfCohortStore=2
+ *     NA12878.gcol
+ *     NA12891.gcol
+ * </pre>
+ */
+public class GVCFCohortCodec extends AsciiFeatureCodec<VariantContext> implements NameAwareCodec {
+    private String name = null;
+
+    public GVCFCohortCodec() {
+        super(VariantContext.class);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void setName(final String name) {
+        this.name = name;
+    }
+
+    @Override
+    public VariantContext decode(final String line) {
+        throw new UnsupportedOperationException("gVCF cohort stores are read with " + GVCFCohortReader.class.getSimpleName());
+    }
+
+    @Override
+    public Object readActualHeader(final LineIterator reader) {
+        throw new UnsupportedOperationException("gVCF cohort stores are read with " + GVCFCohortReader.class.getSimpleName());
+    }
+
+    /**
+     * Can the file be decoded?
+     * @param path path the file to test for parsability with this codec
+     * @return true if the path is the manifest of a gVCF cohort store
+     */
+    @Override
+    public boolean canDecode(final String path) {
+        return GVCFCohortStore.isManifest(new File(path));
+    }
+}
@@ -0,0 +1,238 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.codecs.gvcfcolumn;
+
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.tribble.AbstractFeatureReader;
+import htsjdk.tribble.CloseableTribbleIterator;
+import htsjdk.tribble.FeatureCodecHeader;
+import htsjdk.tribble.readers.LineIterator;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCFContigHeaderLine;
+import htsjdk.variant.vcf.VCFHeader;
+import htsjdk.variant.vcf.VCFHeaderLine;
+import htsjdk.variant.vcf.VCFUtils;
+import org.broadinstitute.gatk.utils.GenomeLoc;
+
+import java.io.File;
+import java.util.*;
+
+/**
+ * Reads all of the columns of a {@link GVCFCohortStore} as a single source of gVCF records
+ *
+ * <p>
+ *     The engine opens a cohort store through this reader, so the whole cohort is one ROD rather than one per sample.
+ *     Its header holds the header lines of all of the columns and every sample of the store.  Queries merge the
+ *     single-sample records of all of the columns into one stream sorted by start, and only inflate the blocks of
+ *     each column that overlap the query.
+ * </p>
+ *
+ * <p>
+ *     Each sample contributes its own single-sample record at a position, so the ROD can hold several records at a
+ *     position, one for each sample.  Use {@link #getPrioritizedValuePerSample(List, GenomeLoc)} to pick the records
+ *     to merge at a site.
+ * </p>
+ */
+public class GVCFCohortReader extends AbstractFeatureReader<VariantContext, LineIterator> {
+    private final List<GVCFColumnReader> columns = new ArrayList<>();
+    private final List<String> contigs = new ArrayList<>();
+
+    /**
+     * Open a cohort store
+     *
+     * @param codec the codec of the store's manifest, whose name is used as the source of all records
+     */
+    public GVCFCohortReader(final File manifest, final GVCFCohortCodec codec) {
+        super(manifest.getPath(), codec);
+        final String source = codec.getName() == null ? manifest.getPath() : codec.getName();
+
+        final Map<String, GVCFColumnReader.ColumnHeader> headers = new LinkedHashMap<>();
+        final List<String> samples = new ArrayList<>();
+        for ( final File column : new GVCFCohortStore(manifest.getAbsoluteFile().getParentFile()).getColumns() ) {
+            final GVCFColumnReader reader = new GVCFColumnReader(column, source, headers);
+            columns.add(reader);
+            samples.add(reader.getSample());
+        }
+
+        final List<VCFHeader> distinctHeaders = new ArrayList<>(headers.size());
+        for ( final GVCFColumnReader.ColumnHeader columnHeader : headers.values() )
+            distinctHeaders.add(columnHeader.header);
+        final Set<VCFHeaderLine> lines = VCFUtils.smartMergeHeaders(distinctHeaders, true);
+        final VCFHeader merged = new VCFHeader(lines, samples);
+        header = new FeatureCodecHeader(merged, FeatureCodecHeader.NO_HEADER_END);
+
+        // the contigs in the order of the header, followed by any others in the order the columns first have them
+        for ( final VCFContigHeaderLine line : merged.getContigLines() )
+            contigs.add(line.getID());
+        for ( final GVCFColumnReader column : columns ) {
+            for ( final String contig : column.getContigs() ) {
+                if ( ! contigs.contains(contig) )
+                    contigs.add(contig);
+            }
+        }
+    }
+
+    @Override
+    public CloseableTribbleIterator<VariantContext> query(final String chr, final int start, final int end) {
+        return new MergingIterator(Collections.singletonList(chr), start, end);
+    }
+
+    @Override
+    public CloseableTribbleIterator<VariantContext> iterator() {
+        return new MergingIterator(contigs, 1, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return the sequence dictionary of the contig lines of the store's header, or null if it has none
+     */
+    public SAMSequenceDictionary getSequenceDictionary() {
+        return ((VCFHeader)getHeader()).getSequenceDictionary();
+    }
+
+    @Override
+    public List<String> getSequenceNames() {
+        return Collections.unmodifiableList(contigs);
+    }
+
+    @Override
+    public void close() {
+        // columns are only opened while their blocks are read
+    }
+
+    /**
+     * Pick the records of each sample to merge at a site, the way RefMetaDataTracker.getPrioritizedValue picks the
+     * record of each single-sample ROD: the record of the sample starting at the site if there is one, otherwise any
+     * of its records spanning the site
+     *
+     * @param records the records of a cohort store spanning the site
+     * @param loc     the site
+     * @return at most one record per sample, in the order the samples first appear in {@code records}
+     */
+    public static List<VariantContext> getPrioritizedValuePerSample(final List<VariantContext> records, final GenomeLoc loc) {
+        final Map<String, VariantContext> bySample = new LinkedHashMap<>();
+        for ( final VariantContext vc : records ) {
+            final String sample = vc.getGenotype(0).getSampleName();
+            final VariantContext previous = bySample.get(sample);
+            if ( previous == null || (previous.getStart() != loc.getStart() && vc.getStart() == loc.getStart()) )
+                bySample.put(sample, vc);
+        }
+        return new ArrayList<>(bySample.values());
+    }
+
+    /**
+     * Merges the records of all of the columns over some contigs, sorted by contig, start and column
+     */
+    private final class MergingIterator implements CloseableTribbleIterator<VariantContext> {
+        private final Iterator<String> remainingContigs;
+        private final int start;
+        private final int end;
+        private final GVCFColumnReader.BlockInflater inflater = new GVCFColumnReader.BlockInflater();
+        private final PriorityQueue<ColumnHead> heads = new PriorityQueue<>(Math.max(1, columns.size()));
+        private boolean closed = false;
+
+        private MergingIterator(final List<String> contigs, final int start, final int end) {
+            this.remainingContigs = contigs.iterator();
+            this.start = start;
+            this.end = end;
+            fill();
+        }
+
+        /**
+         * Start the next contig with records if the current one is done
+         */
+        private void fill() {
+            while ( heads.isEmpty() && remainingContigs.hasNext() ) {
+                final String contig = remainingContigs.next();
+                for ( int i = 0; i < columns.size(); i++ ) {
+                    final Iterator<VariantContext> records = columns.get(i).query(contig, start, end, inflater);
+                    if ( records.hasNext() )
+                        heads.add(new ColumnHead(i, records));
+                }
+            }
+            if ( heads.isEmpty() )
+                close();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return ! heads.isEmpty();
+        }
+
+        @Override
+        public VariantContext next() {
+            final ColumnHead head = heads.poll();
+            if ( head == null ) throw new NoSuchElementException();
+            final VariantContext vc = head.next;
+            if ( head.records.hasNext() ) {
+                head.next = head.records.next();
+                heads.add(head);
+            } else if ( heads.isEmpty() ) {
+                fill();
+            }
+            return vc;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+            if ( ! closed ) {
+                heads.clear();
+                inflater.close();
+                closed = true;
+            }
+        }
+
+        @Override
+        public Iterator<VariantContext> iterator() {
+            return this;
+        }
+    }
+
+    /**
+     * The next record of a column, ordered by start and then by column
+     */
+    private static final class ColumnHead implements Comparable<ColumnHead> {
+        private final int column;
+        private final Iterator<VariantContext> records;
+        private VariantContext next;
+
+        private ColumnHead(final int column, final Iterator<VariantContext> records) {
+            this.column = column;
+            this.records = records;
+            this.next = records.next();
+        }
+
+        @Override
+        public int compareTo(final ColumnHead other) {
+            final int byStart = Integer.compare(next.getStart(), other.next.getStart());
+            return byStart != 0 ? byStart : Integer.compare(column, other.column);
+        }
+    }
+}
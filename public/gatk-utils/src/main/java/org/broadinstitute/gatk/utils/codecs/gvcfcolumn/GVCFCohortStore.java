@@ -0,0 +1,222 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.codecs.gvcfcolumn;
+
+import htsjdk.variant.variantcontext.Genotype;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.writer.VariantContextWriter;
+import htsjdk.variant.vcf.VCFHeader;
+import org.broadinstitute.gatk.utils.exceptions.UserException;
+import org.broadinstitute.gatk.utils.text.XReadLines;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * A directory of per-sample gVCF columns that grows incrementally as samples are added
+ *
+ * <p>
+ *     Each sample of the cohort lives in its own compressed {@link GVCFColumnWriter column file}, and the store's
+ *     manifest names all of the columns, one per line.  Adding samples only writes new column files and appends to
+ *     the manifest, so existing samples never need to be rewritten.  The manifest can be passed directly as the -V
+ *     argument of GenotypeGVCFs or CombineGVCFs, which then read the whole cohort as a single ROD through a
+ *     {@link GVCFCohortReader}.
+ * </p>
+ *
+ * <p>
+ *     New columns are written under a temporary name and renamed when complete, and a sample only becomes part of the
+ *     store once its column is listed in the manifest.  Any column file left behind by an interrupted addition is
+ *     therefore not part of the store and is simply replaced when that sample is added again.
+ * </p>
+ */
+public final class GVCFCohortStore {
+    public static final String MANIFEST_EXTENSION = ".gvcfstore";
+    public static final String MANIFEST_NAME = "cohort" + MANIFEST_EXTENSION;
+    private static final String MANIFEST_MAGIC = "##gvcfCohortStore=" + GVCFColumnFormat.VERSION;
+    private static final String PARTIAL_EXTENSION = ".partial";
+
+    private final File directory;
+    private final File manifest;
+
+    /**
+     * Open the store in the given directory, creating the directory if necessary
+     *
+     * @param directory the store directory
+     */
+    public GVCFCohortStore(final File directory) {
+        if ( directory == null ) throw new IllegalArgumentException("directory cannot be null");
+        if ( ! directory.isDirectory() && ! directory.mkdirs() )
+            throw new UserException.CouldNotCreateOutputFile(directory, "could not create the gVCF cohort store directory");
+        this.directory = directory;
+        this.manifest = new File(directory, MANIFEST_NAME);
+    }
+
+    /**
+     * @return the manifest of this store, suitable for use as a -V argument
+     */
+    public File getManifest() {
+        return manifest;
+    }
+
+    /**
+     * Is the file the manifest of a gVCF cohort store?
+     *
+     * @param file the file to test
+     * @return true if the file has the manifest extension and starts with the manifest header line
+     */
+    public static boolean isManifest(final File file) {
+        if ( ! file.getName().endsWith(MANIFEST_EXTENSION) || ! file.isFile() )
+            return false;
+        try ( final BufferedReader reader = new BufferedReader(new FileReader(file)) ) {
+            return MANIFEST_MAGIC.equals(reader.readLine());
+        } catch ( final IOException e ) {
+            return false;
+        }
+    }
+
+    /**
+     * @return the column files already in this store, in the order they were added
+     */
+    public List<File> getColumns() {
+        final List<File> columns = new ArrayList<>();
+        if ( ! manifest.exists() )
+            return columns;
+        if ( ! isManifest(manifest) )
+            throw new UserException.MalformedFile(manifest, "is not a gVCF cohort store manifest of version " + GVCFColumnFormat.VERSION);
+        try {
+            boolean first = true;
+            for ( final String line : new XReadLines(manifest) ) {
+                if ( ! first && ! line.isEmpty() )
+                    columns.add(new File(directory, line).getAbsoluteFile());
+                first = false;
+            }
+        } catch ( final IOException e ) {
+            throw new UserException.CouldNotReadInputFile(manifest, e);
+        }
+        return columns;
+    }
+
+    /**
+     * Get the column file for a sample
+     *
+     * The file name is the sample name with any character other than letters, digits, '.', '_' and '-'
+     * percent-encoded, so that distinct samples never share a column.
+     *
+     * @param sample the sample name
+     * @return the column file, which is part of the store only if listed in its manifest
+     */
+    public File getColumn(final String sample) {
+        if ( sample == null || sample.isEmpty() ) throw new IllegalArgumentException("sample cannot be null or empty");
+        final StringBuilder name = new StringBuilder(sample.length());
+        for ( final byte b : sample.getBytes(GVCFColumnFormat.CHARSET) ) {
+            final char c = (char)(b & 0xFF);
+            if ( (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '.' || c == '_' || c == '-' )
+                name.append(c);
+            else
+                name.append(String.format("%%%02X", b & 0xFF));
+        }
+        return new File(directory, name + GVCFColumnFormat.FILE_EXTENSION).getAbsoluteFile();
+    }
+
+    /**
+     * Create a writer that adds the samples of the header it is given to this store.
+     *
+     * The new samples only become part of the store (i.e. are appended to its manifest) when the writer is closed.
+     *
+     * @return a new writer
+     */
+    public VariantContextWriter addSamples() {
+        return new SampleAppender();
+    }
+
+    /**
+     * Writes the records of single-sample gVCFs into the columns of their samples
+     *
+     * Multi-sample records are rejected: their site-level annotations describe all of their samples together, and
+     * copying them into every column would count them once per sample when the columns are merged again.  All of the
+     * columns share the dictionaries of the one header and a single block compressor, so that the memory used per
+     * sample is little more than the block it is building.
+     */
+    private final class SampleAppender implements VariantContextWriter {
+        private final Map<String, GVCFColumnWriter> writers = new LinkedHashMap<>();
+        private final GVCFColumnWriter.BlockCompressor compressor = new GVCFColumnWriter.BlockCompressor();
+
+        @Override
+        public void writeHeader(final VCFHeader header) {
+            final Set<File> existing = new HashSet<>(getColumns());
+            for ( final String sample : header.getGenotypeSamples() ) {
+                if ( existing.contains(getColumn(sample)) )
+                    throw new UserException.BadInput("Sample " + sample + " is already in the gVCF cohort store " + directory);
+            }
+
+            final GVCFColumnFormat.Dictionaries dictionaries = new GVCFColumnFormat.Dictionaries(header);
+            for ( final String sample : header.getGenotypeSamples() ) {
+                final File partial = new File(getColumn(sample).getPath() + PARTIAL_EXTENSION);
+                writers.put(sample, new GVCFColumnWriter(partial, sample, header, dictionaries, compressor));
+            }
+        }
+
+        @Override
+        public void add(final VariantContext vc) {
+            if ( vc.getNSamples() != 1 )
+                throw new UserException.BadInput("Only single-sample gVCF records can be added to a gVCF cohort store, but the record at " + vc.getContig() + ":" + vc.getStart() + " has " + vc.getNSamples() + " samples");
+            final Genotype g = vc.getGenotype(0);
+            final GVCFColumnWriter writer = writers.get(g.getSampleName());
+            if ( writer == null )
+                throw new IllegalArgumentException("Sample " + g.getSampleName() + " was not in the header given to the gVCF cohort store");
+            writer.add(vc, g);
+        }
+
+        @Override
+        public void close() {
+            final List<File> columns = new ArrayList<>(writers.size());
+            for ( final Map.Entry<String, GVCFColumnWriter> entry : writers.entrySet() ) {
+                final GVCFColumnWriter writer = entry.getValue();
+                writer.close();
+                final File column = getColumn(entry.getKey());
+                if ( (column.exists() && ! column.delete()) || ! writer.getFile().renameTo(column) )
+                    throw new UserException.CouldNotCreateOutputFile(column, "could not replace the leftover column file in the gVCF cohort store");
+                columns.add(column);
+            }
+            compressor.close();
+
+            final boolean isNew = ! manifest.exists();
+            try ( final PrintStream out = new PrintStream(new FileOutputStream(manifest, true)) ) {
+                if ( isNew )
+                    out.println(MANIFEST_MAGIC);
+                for ( final File column : columns )
+                    out.println(column.getName());
+            } catch ( final IOException e ) {
+                throw new UserException.CouldNotCreateOutputFile(manifest, e);
+            }
+        }
+
+        @Override
+        public boolean checkError() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,345 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.codecs.gvcfcolumn;
+
+import htsjdk.tribble.readers.LineIteratorImpl;
+import htsjdk.tribble.readers.SynchronousLineReader;
+import htsjdk.variant.vcf.*;
+import org.broadinstitute.gatk.utils.exceptions.UserException;
+
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.util.*;
+
+/**
+ * Constants and low-level encoding shared by the gVCF column reader and writer
+ *
+ * <p>
+ *     A column file holds the gVCF records of exactly one sample.  It starts with the magic bytes, a version byte,
+ *     the sample name and the text of the VCF header without its sample column.  The records follow in blocks of
+ *     up to {@link #MAX_RECORDS_PER_BLOCK} consecutive records of a single contig, each block deflated on its own.
+ *     The file ends with the block index (the contig, first start, largest end, record count and file offset of
+ *     every block), the offset of the block index and the magic bytes again.  Queries only inflate the blocks whose
+ *     span overlaps the query.
+ * </p>
+ *
+ * <p>
+ *     Within a block the records are stored field by field rather than record by record: the positions and
+ *     reference block spans of all records come first, then all of their alleles, site fields, INFO fields, GT, GQ,
+ *     DP, AD, PL and other FORMAT fields, each as a separate stream.  Similar values thus end up next to each other,
+ *     which is what makes the blocks compress well.  Each stream is length-prefixed, and all integers are unsigned
+ *     LEB128 varints of their 32 bit value.  INFO and FORMAT keys are written as indexes into the sorted ID lists of the header, and
+ *     alleles as indexes into a table built up within each block.
+ * </p>
+ */
+final class GVCFColumnFormat {
+    static final byte[] MAGIC = {'G', 'C', 'O', 'L'};
+    static final byte VERSION = 2;
+    static final String FILE_EXTENSION = ".gcol";
+    static final Charset CHARSET = Charset.forName("UTF-8");
+
+    /**
+     * A block is closed once it holds this many records, or its streams hold more than MAX_BYTES_PER_BLOCK bytes.
+     * A merged read of a cohort keeps one inflated block per column, so blocks are kept small.
+     */
+    static final int MAX_RECORDS_PER_BLOCK = 1024;
+    static final int MAX_BYTES_PER_BLOCK = 64 * 1024;
+
+    // the field streams of a block, in the order they are written
+    static final int POSITIONS = 0;
+    static final int ALLELES = 1;
+    static final int SITE = 2;
+    static final int INFO = 3;
+    static final int GENOTYPE = 4;
+    static final int GQ = 5;
+    static final int DP = 6;
+    static final int AD = 7;
+    static final int PL = 8;
+    static final int FORMAT = 9;
+    static final int N_FIELDS = 10;
+
+    // the flags following the span of a record in the POSITIONS stream
+    static final int HAS_END_ATTRIBUTE = 1;
+
+    // the FILTER field codes; anything above FILTERS_OFFSET is the number of filters that follow
+    static final int FILTERS_MISSING = 0;
+    static final int FILTERS_PASS = 1;
+    static final int FILTERS_OFFSET = 1;
+
+    // a zero dictionary code means that the string follows inline
+    static final int INLINE_STRING = 0;
+
+    // a zero value length means a flag value
+    static final int FLAG_VALUE = 0;
+
+    // a zero count means a missing value, anything else is one more than the number of values that follow
+    static final int MISSING_VALUE = 0;
+
+    private GVCFColumnFormat() {}
+
+    /**
+     * The dictionaries of a column file, derived deterministically from its header
+     */
+    static final class Dictionaries {
+        final List<String> infoKeys;
+        final List<String> formatKeys;
+        final Map<String, Integer> infoCodes;
+        final Map<String, Integer> formatCodes;
+
+        Dictionaries(final VCFHeader header) {
+            infoKeys = sortedIDs(header.getInfoHeaderLines());
+            formatKeys = sortedIDs(header.getFormatHeaderLines());
+            infoCodes = codes(infoKeys);
+            formatCodes = codes(formatKeys);
+        }
+
+        private static List<String> sortedIDs(final Collection<? extends VCFCompoundHeaderLine> lines) {
+            final List<String> ids = new ArrayList<>(lines.size());
+            for ( final VCFCompoundHeaderLine line : lines )
+                ids.add(line.getID());
+            Collections.sort(ids);
+            return ids;
+        }
+
+        private static Map<String, Integer> codes(final List<String> values) {
+            final Map<String, Integer> codes = new HashMap<>(values.size() * 2);
+            for ( int i = 0; i < values.size(); i++ )
+                codes.put(values.get(i), i + 1);
+            return codes;
+        }
+    }
+
+    /**
+     * Render the header lines of the given header as VCF text, in the same form as the VCF writer uses, but without
+     * the FORMAT and sample columns
+     *
+     * @param header the header to render
+     * @return the header text, including the #CHROM line
+     */
+    static String headerToText(final VCFHeader header) {
+        final StringBuilder sb = new StringBuilder();
+        sb.append(VCFHeader.METADATA_INDICATOR).append(VCFHeaderVersion.VCF4_2.getFormatString()).append('=').append(VCFHeaderVersion.VCF4_2.getVersionString()).append('\n');
+        for ( final VCFHeaderLine line : header.getMetaDataInInputOrder() ) {
+            if ( VCFHeaderVersion.isFormatString(line.getKey()) )
+                continue;
+            sb.append(VCFHeader.METADATA_INDICATOR).append(line.toString()).append('\n');
+        }
+        sb.append(VCFHeader.HEADER_INDICATOR);
+        boolean first = true;
+        for ( final VCFHeader.HEADER_FIELDS field : header.getHeaderFields() ) {
+            if ( ! first )
+                sb.append(VCFConstants.FIELD_SEPARATOR);
+            sb.append(field.toString());
+            first = false;
+        }
+        sb.append('\n');
+        return sb.toString();
+    }
+
+    /**
+     * Parse the header text written by {@link #headerToText(VCFHeader)}
+     *
+     * @param text the header text
+     * @return the parsed header, which has no samples
+     */
+    static VCFHeader headerFromText(final String text) {
+        final Object header = new VCFCodec().readActualHeader(new LineIteratorImpl(new SynchronousLineReader(new StringReader(text))));
+        return (VCFHeader)header;
+    }
+
+    /**
+     * A growable byte buffer used to build up a field stream, or a whole file section, before writing it
+     */
+    static final class FieldBuffer {
+        byte[] bytes;
+        int length = 0;
+
+        FieldBuffer() {
+            this(256);
+        }
+
+        FieldBuffer(final int capacity) {
+            bytes = new byte[capacity];
+        }
+
+        void clear() {
+            length = 0;
+        }
+
+        private void ensureCapacity(final int capacity) {
+            if ( bytes.length < capacity )
+                bytes = Arrays.copyOf(bytes, Math.max(capacity, bytes.length * 2));
+        }
+
+        void writeByte(final int b) {
+            if ( length == bytes.length )
+                ensureCapacity(length + 1);
+            bytes[length++] = (byte)b;
+        }
+
+        void writeBytes(final byte[] values, final int offset, final int n) {
+            ensureCapacity(length + n);
+            System.arraycopy(values, offset, bytes, length, n);
+            length += n;
+        }
+
+        /**
+         * Write a varint; negative values are written as their unsigned 32 bit value, which reads back the same
+         */
+        void writeVarInt(int value) {
+            while ( (value & ~0x7F) != 0 ) {
+                writeByte((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            writeByte(value);
+        }
+
+        void writeLong(final long value) {
+            for ( int shift = 56; shift >= 0; shift -= 8 )
+                writeByte((int)(value >>> shift));
+        }
+
+        void writeString(final String value) {
+            final byte[] encoded = value.getBytes(CHARSET);
+            writeVarInt(encoded.length);
+            writeBytes(encoded, 0, encoded.length);
+        }
+
+        /**
+         * Write a string as its code in the given dictionary, or inline if it is not there
+         */
+        void writeCoded(final String value, final Map<String, Integer> codes) {
+            final Integer code = codes.get(value);
+            if ( code == null ) {
+                writeVarInt(INLINE_STRING);
+                writeString(value);
+            } else {
+                writeVarInt(code);
+            }
+        }
+
+        /**
+         * Write an array of ints as a count followed by the values, or MISSING_VALUE for null
+         */
+        void writeInts(final int[] values) {
+            if ( values == null ) {
+                writeVarInt(MISSING_VALUE);
+                return;
+            }
+            writeVarInt(values.length + 1);
+            for ( final int value : values )
+                writeVarInt(value);
+        }
+
+        /**
+         * Append another buffer, prefixed with its length
+         */
+        void writeBuffer(final FieldBuffer buffer) {
+            writeVarInt(buffer.length);
+            writeBytes(buffer.bytes, 0, buffer.length);
+        }
+    }
+
+    /**
+     * A cursor over a range of bytes, such as one field stream of an inflated block
+     */
+    static final class FieldCursor {
+        byte[] bytes;
+        int offset;
+        int end;
+
+        void reset(final byte[] bytes, final int offset, final int end) {
+            this.bytes = bytes;
+            this.offset = offset;
+            this.end = end;
+        }
+
+        int readByte() {
+            if ( offset >= end )
+                throw new UserException.MalformedFile("Field in gVCF column file is shorter than its values");
+            return bytes[offset++] & 0xFF;
+        }
+
+        int readVarInt() {
+            int value = 0;
+            for ( int shift = 0; ; shift += 7 ) {
+                final int b = readByte();
+                value |= (b & 0x7F) << shift;
+                if ( (b & 0x80) == 0 )
+                    return value;
+            }
+        }
+
+        long readLong() {
+            long value = 0;
+            for ( int i = 0; i < 8; i++ )
+                value = (value << 8) | readByte();
+            return value;
+        }
+
+        String readString() {
+            return readString(readVarInt());
+        }
+
+        String readString(final int stringLength) {
+            if ( offset + stringLength > end )
+                throw new UserException.MalformedFile("Field in gVCF column file is shorter than its values");
+            final String value = new String(bytes, offset, stringLength, CHARSET);
+            offset += stringLength;
+            return value;
+        }
+
+        String readCoded(final List<String> dictionary) {
+            final int code = readVarInt();
+            if ( code == INLINE_STRING )
+                return readString();
+            if ( code > dictionary.size() )
+                throw new UserException.MalformedFile("Dictionary code " + code + " in gVCF column file is not defined by its header");
+            return dictionary.get(code - 1);
+        }
+
+        int[] readInts() {
+            final int n = readVarInt() - 1;
+            if ( n < 0 )
+                return null;
+            final int[] values = new int[n];
+            for ( int i = 0; i < n; i++ )
+                values[i] = readVarInt();
+            return values;
+        }
+
+        /**
+         * Point the given cursor at the next length-prefixed section of this cursor, and skip over it
+         */
+        void readSection(final FieldCursor section) {
+            final int sectionLength = readVarInt();
+            if ( offset + sectionLength > end )
+                throw new UserException.MalformedFile("Field in gVCF column file is shorter than its values");
+            section.reset(bytes, offset, offset + sectionLength);
+            offset += sectionLength;
+        }
+    }
+}
@@ -0,0 +1,483 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.codecs.gvcfcolumn;
+
+import htsjdk.variant.variantcontext.*;
+import htsjdk.variant.vcf.VCFConstants;
+import htsjdk.variant.vcf.VCFHeader;
+import org.broadinstitute.gatk.utils.exceptions.UserException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.*;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads the blocks of a gVCF column file
+ *
+ * <p>
+ *     Opening a column only reads its header and block index.  The file is opened again for each block that is
+ *     read, so that a cohort store with many columns never holds more than one of them open at a time, and a query
+ *     only keeps the inflated bytes of one block of the column.
+ * </p>
+ *
+ * @see GVCFColumnWriter
+ */
+final class GVCFColumnReader {
+    private final File file;
+    private final String sample;
+    private final String source;
+    private final ColumnHeader header;
+
+    // the block index, ordered by contig and then start
+    private final List<String> contigs = new ArrayList<>();
+    private final int[] blockContig;
+    private final int[] blockStart;
+    private final int[] blockMaxEnd;
+    private final int[] blockRunningMaxEnd;
+    private final int[] blockRecords;
+    private final long[] blockOffset;
+
+    /**
+     * The parsed header lines of a column, which all the columns added together share
+     */
+    static final class ColumnHeader {
+        final VCFHeader header;
+        final GVCFColumnFormat.Dictionaries dictionaries;
+
+        private ColumnHeader(final String text) {
+            header = GVCFColumnFormat.headerFromText(text);
+            dictionaries = new GVCFColumnFormat.Dictionaries(header);
+        }
+    }
+
+    /**
+     * Open a column
+     *
+     * @param file    the column file
+     * @param source  the source name to give the records read
+     * @param headers the headers already parsed, by header text; the header of this column is added if new
+     */
+    GVCFColumnReader(final File file, final String source, final Map<String, ColumnHeader> headers) {
+        this.file = file;
+        this.source = source;
+        try ( final RandomAccessFile in = new RandomAccessFile(file, "r") ) {
+            final byte[] magic = new byte[GVCFColumnFormat.MAGIC.length];
+            in.readFully(magic);
+            if ( ! Arrays.equals(magic, GVCFColumnFormat.MAGIC) )
+                throw new UserException.MalformedFile(file, "does not begin with the gVCF column magic bytes");
+            final int version = in.read();
+            if ( version != GVCFColumnFormat.VERSION )
+                throw new UserException.MalformedFile(file, "has gVCF column version " + version + " but only version " + GVCFColumnFormat.VERSION + " can be read");
+            sample = readString(in);
+            final String text = readString(in);
+            ColumnHeader columnHeader = headers.get(text);
+            if ( columnHeader == null ) {
+                columnHeader = new ColumnHeader(text);
+                headers.put(text, columnHeader);
+            }
+            header = columnHeader;
+
+            final long trailerOffset = in.length() - 8 - GVCFColumnFormat.MAGIC.length;
+            if ( trailerOffset < in.getFilePointer() )
+                throw new UserException.MalformedFile(file, "is truncated");
+            in.seek(trailerOffset);
+            final long indexOffset = in.readLong();
+            in.readFully(magic);
+            if ( ! Arrays.equals(magic, GVCFColumnFormat.MAGIC) || indexOffset < 0 || indexOffset > trailerOffset )
+                throw new UserException.MalformedFile(file, "does not end with a gVCF column block index");
+
+            final byte[] index = new byte[(int)(trailerOffset - indexOffset)];
+            in.seek(indexOffset);
+            in.readFully(index);
+            final GVCFColumnFormat.FieldCursor cursor = new GVCFColumnFormat.FieldCursor();
+            cursor.reset(index, 0, index.length);
+            final int nBlocks = cursor.readVarInt();
+            blockContig = new int[nBlocks];
+            blockStart = new int[nBlocks];
+            blockMaxEnd = new int[nBlocks];
+            blockRunningMaxEnd = new int[nBlocks];
+            blockRecords = new int[nBlocks];
+            blockOffset = new long[nBlocks];
+            for ( int i = 0; i < nBlocks; i++ ) {
+                final String contig = cursor.readString();
+                if ( contigs.isEmpty() || ! contigs.get(contigs.size() - 1).equals(contig) )
+                    contigs.add(contig);
+                blockContig[i] = contigs.size() - 1;
+                blockStart[i] = cursor.readVarInt();
+                blockMaxEnd[i] = cursor.readVarInt();
+                blockRecords[i] = cursor.readVarInt();
+                blockOffset[i] = cursor.readLong();
+                final boolean sameContig = i > 0 && blockContig[i - 1] == blockContig[i];
+                blockRunningMaxEnd[i] = sameContig ? Math.max(blockRunningMaxEnd[i - 1], blockMaxEnd[i]) : blockMaxEnd[i];
+            }
+        } catch ( final IOException e ) {
+            throw new UserException.CouldNotReadInputFile(file, e);
+        }
+    }
+
+    private String readString(final RandomAccessFile in) throws IOException {
+        int length = 0;
+        for ( int shift = 0; ; shift += 7 ) {
+            final int b = in.readUnsignedByte();
+            length |= (b & 0x7F) << shift;
+            if ( (b & 0x80) == 0 )
+                break;
+        }
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, GVCFColumnFormat.CHARSET);
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    String getSample() {
+        return sample;
+    }
+
+    /**
+     * @return the header lines of this column, without any samples
+     */
+    VCFHeader getHeader() {
+        return header.header;
+    }
+
+    /**
+     * @return the contigs with records in this column, in the order of the file
+     */
+    List<String> getContigs() {
+        return Collections.unmodifiableList(contigs);
+    }
+
+    /**
+     * Iterate over the records of this column overlapping an interval
+     *
+     * @param contig the contig of the interval
+     * @param start  the 1-based start of the interval
+     * @param end    the 1-based inclusive end of the interval
+     * @param inflater the block decompressor to use, which must not be used by another thread
+     * @return the records overlapping the interval, in file order
+     */
+    Iterator<VariantContext> query(final String contig, final int start, final int end, final BlockInflater inflater) {
+        final int contigIndex = contigs.indexOf(contig);
+        if ( contigIndex == -1 )
+            return Collections.<VariantContext>emptyList().iterator();
+
+        int first = 0;
+        while ( blockContig[first] != contigIndex )
+            first++;
+        int last = first;
+        while ( last < blockContig.length && blockContig[last] == contigIndex )
+            last++;
+
+        // the first block that can overlap the start, given the largest end of the blocks up to each block
+        int lo = first;
+        int hi = last;
+        while ( lo < hi ) {
+            final int mid = (lo + hi) >>> 1;
+            if ( blockRunningMaxEnd[mid] < start )
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return new BlockIterator(lo, last, start, end, inflater);
+    }
+
+    /**
+     * Iterates over the records of a run of blocks, skipping those outside an interval
+     *
+     * Only the inflated bytes of the current block are kept, and its records are decoded one at a time.
+     */
+    private final class BlockIterator implements Iterator<VariantContext> {
+        private final int lastBlock;
+        private final int start;
+        private final int end;
+        private final BlockInflater inflater;
+        private int nextBlock;
+
+        // the block being read
+        private byte[] raw = null;
+        private final GVCFColumnFormat.FieldCursor[] fields = new GVCFColumnFormat.FieldCursor[GVCFColumnFormat.N_FIELDS];
+        private final List<Allele> refAlleles = new ArrayList<>();
+        private final List<Allele> altAlleles = new ArrayList<>();
+        private String contig;
+        private int remainingRecords = 0;
+        private int previousStart;
+
+        private VariantContext next = null;
+
+        private BlockIterator(final int firstBlock, final int lastBlock, final int start, final int end, final BlockInflater inflater) {
+            this.nextBlock = firstBlock;
+            this.lastBlock = lastBlock;
+            this.start = start;
+            this.end = end;
+            this.inflater = inflater;
+            for ( int i = 0; i < fields.length; i++ )
+                fields[i] = new GVCFColumnFormat.FieldCursor();
+            advance();
+        }
+
+        private void advance() {
+            next = null;
+            while ( next == null ) {
+                if ( remainingRecords == 0 ) {
+                    while ( nextBlock < lastBlock && blockStart[nextBlock] <= end && blockMaxEnd[nextBlock] < start )
+                        nextBlock++;
+                    if ( nextBlock == lastBlock || blockStart[nextBlock] > end ) {
+                        raw = null;
+                        return;
+                    }
+                    loadBlock(nextBlock++);
+                }
+                final VariantContext vc = decodeRecord();
+                if ( vc.getStart() > end ) {
+                    nextBlock = lastBlock;
+                    remainingRecords = 0;
+                    raw = null;
+                    return;
+                }
+                if ( vc.getEnd() >= start )
+                    next = vc;
+            }
+        }
+
+        /**
+         * Read and inflate a block, and point the field cursors at its streams
+         */
+        private void loadBlock(final int blockIndex) {
+            final int rawLength;
+            try ( final RandomAccessFile in = new RandomAccessFile(file, "r") ) {
+                in.seek(blockOffset[blockIndex]);
+                rawLength = readVarInt(in);
+                final int compressedLength = readVarInt(in);
+                if ( inflater.compressed.length < compressedLength )
+                    inflater.compressed = new byte[compressedLength];
+                in.readFully(inflater.compressed, 0, compressedLength);
+                if ( raw == null || raw.length < rawLength )
+                    raw = new byte[rawLength];
+                inflater.inflater.reset();
+                inflater.inflater.setInput(inflater.compressed, 0, compressedLength);
+                if ( inflater.inflater.inflate(raw, 0, rawLength) != rawLength || ! inflater.inflater.finished() )
+                    throw new UserException.MalformedFile(file, "has a block whose length does not match its block index");
+            } catch ( final DataFormatException e ) {
+                throw new UserException.MalformedFile(file, "has a corrupt block", e);
+            } catch ( final IOException e ) {
+                throw new UserException.CouldNotReadInputFile(file, e);
+            }
+
+            final GVCFColumnFormat.FieldCursor block = new GVCFColumnFormat.FieldCursor();
+            block.reset(raw, 0, rawLength);
+            remainingRecords = block.readVarInt();
+            if ( remainingRecords != blockRecords[blockIndex] )
+                throw new UserException.MalformedFile(file, "has a block whose record count does not match its block index");
+            for ( final GVCFColumnFormat.FieldCursor field : fields )
+                block.readSection(field);
+            contig = contigs.get(blockContig[blockIndex]);
+            refAlleles.clear();
+            altAlleles.clear();
+            previousStart = 0;
+        }
+
+        /**
+         * Decode the next record of the current block
+         */
+        private VariantContext decodeRecord() {
+            remainingRecords--;
+            final GVCFColumnFormat.FieldCursor positions = fields[GVCFColumnFormat.POSITIONS];
+            final int recordStart = previousStart + positions.readVarInt();
+            previousStart = recordStart;
+            final int stop = recordStart + positions.readVarInt();
+            final boolean hasEnd = (positions.readVarInt() & GVCFColumnFormat.HAS_END_ATTRIBUTE) != 0;
+
+            final VariantContextBuilder builder = new VariantContextBuilder().source(source).chr(contig).start(recordStart).stop(stop);
+            final List<Allele> alleles = readAlleles(fields[GVCFColumnFormat.ALLELES], refAlleles, altAlleles);
+            builder.alleles(alleles);
+            readSite(fields[GVCFColumnFormat.SITE], builder);
+            builder.attributes(readInfo(fields[GVCFColumnFormat.INFO], hasEnd ? stop : -1));
+            builder.genotypes(readGenotype(fields, alleles));
+            return builder.make();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public VariantContext next() {
+            if ( next == null ) throw new NoSuchElementException();
+            final VariantContext vc = next;
+            advance();
+            return vc;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * The inflater and compressed buffer used to read blocks, which the columns read by one thread can share
+     */
+    static final class BlockInflater {
+        private final Inflater inflater = new Inflater();
+        private byte[] compressed = new byte[16 * 1024];
+
+        /**
+         * Release the native memory of the inflater
+         */
+        void close() {
+            inflater.end();
+        }
+    }
+
+    private static int readVarInt(final RandomAccessFile in) throws IOException {
+        int value = 0;
+        for ( int shift = 0; ; shift += 7 ) {
+            final int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ( (b & 0x80) == 0 )
+                return value;
+        }
+    }
+
+    /**
+     * Read the alleles of a record, adding any allele given inline to the allele table of the block
+     *
+     * The table holds the reference and alternate allele of each string, created when first needed.
+     */
+    private static List<Allele> readAlleles(final GVCFColumnFormat.FieldCursor cursor, final List<Allele> refAlleles, final List<Allele> altAlleles) {
+        final int nAlleles = cursor.readVarInt();
+        final List<Allele> alleles = new ArrayList<>(nAlleles);
+        for ( int i = 0; i < nAlleles; i++ ) {
+            final int code = cursor.readVarInt();
+            final int index;
+            if ( code == GVCFColumnFormat.INLINE_STRING ) {
+                final String bases = cursor.readString();
+                refAlleles.add(i == 0 ? Allele.create(bases, true) : null);
+                altAlleles.add(i == 0 ? null : Allele.create(bases, false));
+                index = refAlleles.size() - 1;
+            } else {
+                index = code - 1;
+                if ( index >= refAlleles.size() )
+                    throw new UserException.MalformedFile("Allele code " + code + " in gVCF column file is not defined by its block");
+            }
+
+            final List<Allele> table = i == 0 ? refAlleles : altAlleles;
+            Allele allele = table.get(index);
+            if ( allele == null ) {
+                final Allele other = i == 0 ? altAlleles.get(index) : refAlleles.get(index);
+                allele = Allele.create(other.getDisplayString(), i == 0);
+                table.set(index, allele);
+            }
+            alleles.add(allele);
+        }
+        return alleles;
+    }
+
+    private static void readSite(final GVCFColumnFormat.FieldCursor cursor, final VariantContextBuilder builder) {
+        final String id = cursor.readString();
+        if ( ! id.isEmpty() )
+            builder.id(id);
+
+        if ( cursor.readByte() != 0 )
+            builder.log10PError(Double.longBitsToDouble(cursor.readLong()) / -10.0);
+
+        final int filterCode = cursor.readVarInt();
+        if ( filterCode == GVCFColumnFormat.FILTERS_MISSING ) {
+            builder.unfiltered();
+        } else if ( filterCode == GVCFColumnFormat.FILTERS_PASS ) {
+            builder.passFilters();
+        } else {
+            final Set<String> filters = new LinkedHashSet<>();
+            for ( int i = GVCFColumnFormat.FILTERS_OFFSET; i < filterCode; i++ )
+                filters.add(cursor.readString());
+            builder.filters(filters);
+        }
+    }
+
+    /**
+     * Read the INFO fields of a record, as the VCF codec would parse them
+     *
+     * @param end the value of the END attribute, or -1 if the record has none
+     */
+    private Map<String, Object> readInfo(final GVCFColumnFormat.FieldCursor cursor, final int end) {
+        final int nAttributes = cursor.readVarInt();
+        final Map<String, Object> attributes = new HashMap<>((nAttributes + 1) * 2);
+        if ( end != -1 )
+            attributes.put(VCFConstants.END_KEY, Integer.toString(end));
+        for ( int i = 0; i < nAttributes; i++ ) {
+            final String key = cursor.readCoded(header.dictionaries.infoKeys);
+            final int code = cursor.readVarInt();
+            if ( code == GVCFColumnFormat.FLAG_VALUE ) {
+                attributes.put(key, true);
+            } else {
+                final String value = cursor.readString(code - 1);
+                if ( value.indexOf(VCFConstants.INFO_FIELD_ARRAY_SEPARATOR_CHAR) == -1 )
+                    attributes.put(key, value);
+                else
+                    attributes.put(key, Arrays.asList(value.split(VCFConstants.INFO_FIELD_ARRAY_SEPARATOR)));
+            }
+        }
+        return attributes;
+    }
+
+    private Genotype readGenotype(final GVCFColumnFormat.FieldCursor[] fields, final List<Allele> siteAlleles) {
+        final GVCFColumnFormat.FieldCursor genotype = fields[GVCFColumnFormat.GENOTYPE];
+        final int ploidy = genotype.readVarInt();
+        final List<Allele> alleles = new ArrayList<>(ploidy);
+        for ( int i = 0; i < ploidy; i++ ) {
+            final int index = genotype.readVarInt();
+            alleles.add(index == 0 ? Allele.NO_CALL : siteAlleles.get(index - 1));
+        }
+
+        final GenotypeBuilder gb = new GenotypeBuilder(sample, alleles);
+        gb.phased(genotype.readByte() != 0);
+        final int gq = fields[GVCFColumnFormat.GQ].readVarInt();
+        if ( gq != GVCFColumnFormat.MISSING_VALUE ) gb.GQ(gq - 1);
+        final int dp = fields[GVCFColumnFormat.DP].readVarInt();
+        if ( dp != GVCFColumnFormat.MISSING_VALUE ) gb.DP(dp - 1);
+        final int[] ad = fields[GVCFColumnFormat.AD].readInts();
+        if ( ad != null ) gb.AD(ad);
+        final int[] pl = fields[GVCFColumnFormat.PL].readInts();
+        if ( pl != null ) gb.PL(pl);
+
+        final GVCFColumnFormat.FieldCursor format = fields[GVCFColumnFormat.FORMAT];
+        final String filters = format.readString();
+        if ( ! filters.isEmpty() ) gb.filter(filters);
+        final int nAttributes = format.readVarInt();
+        for ( int i = 0; i < nAttributes; i++ ) {
+            final String key = format.readCoded(header.dictionaries.formatKeys);
+            gb.attribute(key, format.readString());
+        }
+        return gb.make();
+    }
+}
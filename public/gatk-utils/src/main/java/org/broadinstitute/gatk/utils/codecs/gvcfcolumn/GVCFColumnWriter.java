@@ -0,0 +1,395 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.codecs.gvcfcolumn;
+
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.Genotype;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCFConstants;
+import htsjdk.variant.vcf.VCFEncoder;
+import htsjdk.variant.vcf.VCFHeader;
+import org.broadinstitute.gatk.utils.exceptions.UserException;
+
+import java.io.FileOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Array;
+import java.util.*;
+import java.util.zip.Deflater;
+
+/**
+ * Writes the gVCF records of a single sample to a gVCF column file
+ *
+ * <p>
+ *     Values are stored exactly as the VCF writer would print them (so QUAL is rounded to two decimals and
+ *     doubles are formatted the usual way), which means that reading a column back yields the same records
+ *     as writing and re-reading a VCF would.  Records must be added in coordinate order.
+ * </p>
+ *
+ * <p>
+ *     Only the block being built is held in memory, and the file is only kept open while a block is written, so
+ *     that a cohort store can add many samples at once.
+ * </p>
+ *
+ * @see GVCFColumnReader
+ * @see GVCFCohortStore
+ */
+final class GVCFColumnWriter {
+    private final File file;
+    private final String sample;
+    private final GVCFColumnFormat.Dictionaries dictionaries;
+    private final BlockCompressor compressor;
+
+    private final GVCFColumnFormat.FieldBuffer[] fields = new GVCFColumnFormat.FieldBuffer[GVCFColumnFormat.N_FIELDS];
+    private final Map<String, Integer> alleleCodes = new HashMap<>();
+    private final GVCFColumnFormat.FieldBuffer blockIndex = new GVCFColumnFormat.FieldBuffer();
+    private final Set<String> finishedContigs = new HashSet<>();
+    private long position;
+    private int nBlocks = 0;
+
+    // the block being built
+    private String contig = null;
+    private int nRecords = 0;
+    private int blockBytes = 0;
+    private int firstStart;
+    private int maxEnd;
+    private int previousStart;
+
+    /**
+     * Create the column file of a sample and write its header
+     *
+     * @param file         the file to create; any existing file is overwritten
+     * @param sample       the sample of the column
+     * @param header       the header lines of the column; its samples are ignored
+     * @param dictionaries the dictionaries of {@code header}
+     * @param compressor   the compressor for the blocks, which may be shared with other writers of the same thread
+     */
+    GVCFColumnWriter(final File file, final String sample, final VCFHeader header, final GVCFColumnFormat.Dictionaries dictionaries, final BlockCompressor compressor) {
+        if ( file == null ) throw new IllegalArgumentException("file cannot be null");
+        if ( sample == null ) throw new IllegalArgumentException("sample cannot be null");
+        this.file = file;
+        this.sample = sample;
+        this.dictionaries = dictionaries;
+        this.compressor = compressor;
+        for ( int i = 0; i < fields.length; i++ )
+            fields[i] = new GVCFColumnFormat.FieldBuffer();
+
+        final GVCFColumnFormat.FieldBuffer start = compressor.frame;
+        start.clear();
+        start.writeBytes(GVCFColumnFormat.MAGIC, 0, GVCFColumnFormat.MAGIC.length);
+        start.writeByte(GVCFColumnFormat.VERSION);
+        start.writeString(sample);
+        start.writeString(GVCFColumnFormat.headerToText(header));
+        try ( final OutputStream out = new FileOutputStream(file) ) {
+            out.write(start.bytes, 0, start.length);
+        } catch ( final IOException e ) {
+            throw new UserException.CouldNotCreateOutputFile(file, e);
+        }
+        position = start.length;
+    }
+
+    /**
+     * @return the file being written
+     */
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * Add the site-level fields of a record together with one of its genotypes, which must be this column's sample's
+     *
+     * @param vc the record
+     * @param g  the genotype of this column's sample in {@code vc}
+     */
+    void add(final VariantContext vc, final Genotype g) {
+        if ( ! vc.getContig().equals(contig) ) {
+            flushBlock();
+            if ( contig != null )
+                finishedContigs.add(contig);
+            if ( finishedContigs.contains(vc.getContig()) )
+                throw new IllegalArgumentException("Records must be added to the gVCF column of " + sample + " in coordinate order, but contig " + vc.getContig() + " came back after other contigs");
+            contig = vc.getContig();
+        } else if ( vc.getStart() < previousStart ) {
+            throw new IllegalArgumentException("Records must be added to the gVCF column of " + sample + " in coordinate order, but " + vc.getContig() + ":" + vc.getStart() + " came after " + previousStart);
+        }
+
+        if ( nRecords == 0 ) {
+            firstStart = vc.getStart();
+            maxEnd = vc.getEnd();
+            previousStart = 0;
+        }
+        addPosition(vc);
+        addAlleles(vc);
+        addSite(vc);
+        addGenotype(vc, g);
+        previousStart = vc.getStart();
+        maxEnd = Math.max(maxEnd, vc.getEnd());
+
+        nRecords++;
+        blockBytes = 0;
+        for ( final GVCFColumnFormat.FieldBuffer field : fields )
+            blockBytes += field.length;
+        if ( nRecords == GVCFColumnFormat.MAX_RECORDS_PER_BLOCK || blockBytes >= GVCFColumnFormat.MAX_BYTES_PER_BLOCK )
+            flushBlock();
+    }
+
+    /**
+     * Is the END attribute of the record just its end position, which the span already records?
+     */
+    private static boolean hasRedundantEnd(final VariantContext vc) {
+        final Object end = vc.getAttribute(VCFConstants.END_KEY);
+        return end != null && formatValue(end).equals(Integer.toString(vc.getEnd()));
+    }
+
+    private void addPosition(final VariantContext vc) {
+        final GVCFColumnFormat.FieldBuffer positions = fields[GVCFColumnFormat.POSITIONS];
+        positions.writeVarInt(vc.getStart() - previousStart);
+        positions.writeVarInt(vc.getEnd() - vc.getStart());
+        positions.writeVarInt(hasRedundantEnd(vc) ? GVCFColumnFormat.HAS_END_ATTRIBUTE : 0);
+    }
+
+    private void addAlleles(final VariantContext vc) {
+        final GVCFColumnFormat.FieldBuffer alleles = fields[GVCFColumnFormat.ALLELES];
+        alleles.writeVarInt(vc.getNAlleles());
+        for ( final Allele allele : vc.getAlleles() ) {
+            final String bases = allele.getDisplayString();
+            final Integer code = alleleCodes.get(bases);
+            if ( code == null ) {
+                alleles.writeVarInt(GVCFColumnFormat.INLINE_STRING);
+                alleles.writeString(bases);
+                alleleCodes.put(bases, alleleCodes.size() + 1);
+            } else {
+                alleles.writeVarInt(code);
+            }
+        }
+    }
+
+    private void addSite(final VariantContext vc) {
+        final GVCFColumnFormat.FieldBuffer site = fields[GVCFColumnFormat.SITE];
+        site.writeString(vc.hasID() ? vc.getID() : "");
+
+        if ( vc.hasLog10PError() ) {
+            site.writeByte(1);
+            site.writeLong(Double.doubleToLongBits(Double.parseDouble(formatQualValue(vc.getPhredScaledQual()))));
+        } else {
+            site.writeByte(0);
+        }
+
+        if ( ! vc.filtersWereApplied() ) {
+            site.writeVarInt(GVCFColumnFormat.FILTERS_MISSING);
+        } else if ( vc.getFilters().isEmpty() ) {
+            site.writeVarInt(GVCFColumnFormat.FILTERS_PASS);
+        } else {
+            final List<String> filters = new ArrayList<>(vc.getFilters());
+            Collections.sort(filters);
+            site.writeVarInt(filters.size() + GVCFColumnFormat.FILTERS_OFFSET);
+            for ( final String filter : filters )
+                site.writeString(filter);
+        }
+
+        final GVCFColumnFormat.FieldBuffer info = fields[GVCFColumnFormat.INFO];
+        final Map<String, Object> attributes = vc.getAttributes();
+        final boolean skipEnd = hasRedundantEnd(vc);
+        info.writeVarInt(skipEnd ? attributes.size() - 1 : attributes.size());
+        for ( final Map.Entry<String, Object> attribute : attributes.entrySet() ) {
+            if ( skipEnd && attribute.getKey().equals(VCFConstants.END_KEY) )
+                continue;
+            info.writeCoded(attribute.getKey(), dictionaries.infoCodes);
+            final String value = formatValue(attribute.getValue());
+            if ( value.isEmpty() ) {
+                info.writeVarInt(GVCFColumnFormat.FLAG_VALUE);
+            } else {
+                final byte[] encoded = value.getBytes(GVCFColumnFormat.CHARSET);
+                info.writeVarInt(encoded.length + 1);
+                info.writeBytes(encoded, 0, encoded.length);
+            }
+        }
+    }
+
+    private void addGenotype(final VariantContext vc, final Genotype g) {
+        final GVCFColumnFormat.FieldBuffer genotype = fields[GVCFColumnFormat.GENOTYPE];
+        genotype.writeVarInt(g.getPloidy());
+        for ( final Allele allele : g.getAlleles() ) {
+            if ( allele.isNoCall() ) {
+                genotype.writeVarInt(0);
+            } else {
+                final int index = vc.getAlleleIndex(allele);
+                if ( index < 0 )
+                    throw new IllegalArgumentException("Genotype allele " + allele + " is not an allele of the record at " + vc.getContig() + ":" + vc.getStart());
+                genotype.writeVarInt(index + 1);
+            }
+        }
+        genotype.writeByte(g.isPhased() ? 1 : 0);
+
+        fields[GVCFColumnFormat.GQ].writeVarInt(g.hasGQ() ? g.getGQ() + 1 : GVCFColumnFormat.MISSING_VALUE);
+        fields[GVCFColumnFormat.DP].writeVarInt(g.hasDP() ? g.getDP() + 1 : GVCFColumnFormat.MISSING_VALUE);
+        fields[GVCFColumnFormat.AD].writeInts(g.hasAD() ? g.getAD() : null);
+        fields[GVCFColumnFormat.PL].writeInts(g.hasPL() ? g.getPL() : null);
+
+        final GVCFColumnFormat.FieldBuffer format = fields[GVCFColumnFormat.FORMAT];
+        format.writeString(g.isFiltered() ? g.getFilters() : "");
+        final Map<String, Object> attributes = g.getExtendedAttributes();
+        format.writeVarInt(attributes.size());
+        for ( final Map.Entry<String, Object> attribute : attributes.entrySet() ) {
+            format.writeCoded(attribute.getKey(), dictionaries.formatCodes);
+            format.writeString(formatValue(attribute.getValue()));
+        }
+    }
+
+    /**
+     * Compress the block being built, append it to the file and record it in the block index
+     */
+    private void flushBlock() {
+        if ( nRecords == 0 )
+            return;
+
+        final GVCFColumnFormat.FieldBuffer payload = compressor.payload;
+        payload.clear();
+        payload.writeVarInt(nRecords);
+        for ( final GVCFColumnFormat.FieldBuffer field : fields )
+            payload.writeBuffer(field);
+        final int compressedLength = compressor.compress();
+
+        final GVCFColumnFormat.FieldBuffer frame = compressor.frame;
+        frame.clear();
+        frame.writeVarInt(payload.length);
+        frame.writeVarInt(compressedLength);
+        try ( final OutputStream out = new FileOutputStream(file, true) ) {
+            out.write(frame.bytes, 0, frame.length);
+            out.write(compressor.compressed, 0, compressedLength);
+        } catch ( final IOException e ) {
+            throw new UserException.CouldNotCreateOutputFile(file, e);
+        }
+
+        blockIndex.writeString(contig);
+        blockIndex.writeVarInt(firstStart);
+        blockIndex.writeVarInt(maxEnd);
+        blockIndex.writeVarInt(nRecords);
+        blockIndex.writeLong(position);
+        nBlocks++;
+        position += frame.length + compressedLength;
+
+        for ( final GVCFColumnFormat.FieldBuffer field : fields )
+            field.clear();
+        alleleCodes.clear();
+        nRecords = 0;
+    }
+
+    /**
+     * Write the last block and the block index
+     */
+    void close() {
+        flushBlock();
+        final GVCFColumnFormat.FieldBuffer end = compressor.frame;
+        end.clear();
+        end.writeVarInt(nBlocks);
+        end.writeBytes(blockIndex.bytes, 0, blockIndex.length);
+        end.writeLong(position);
+        end.writeBytes(GVCFColumnFormat.MAGIC, 0, GVCFColumnFormat.MAGIC.length);
+        try ( final OutputStream out = new FileOutputStream(file, true) ) {
+            out.write(end.bytes, 0, end.length);
+        } catch ( final IOException e ) {
+            throw new UserException.CouldNotCreateOutputFile(file, e);
+        }
+    }
+
+    /**
+     * The deflater and buffers used to compress blocks, which the writers of one thread can share
+     */
+    static final class BlockCompressor {
+        private final Deflater deflater = new Deflater();
+        private final GVCFColumnFormat.FieldBuffer payload = new GVCFColumnFormat.FieldBuffer(64 * 1024);
+        private final GVCFColumnFormat.FieldBuffer frame = new GVCFColumnFormat.FieldBuffer();
+        private byte[] compressed = new byte[64 * 1024];
+
+        /**
+         * Deflate the payload into the compressed buffer
+         *
+         * @return the compressed length
+         */
+        private int compress() {
+            deflater.reset();
+            deflater.setInput(payload.bytes, 0, payload.length);
+            deflater.finish();
+            int length = 0;
+            while ( true ) {
+                length += deflater.deflate(compressed, length, compressed.length - length);
+                if ( deflater.finished() )
+                    return length;
+                compressed = Arrays.copyOf(compressed, compressed.length * 2);
+            }
+        }
+
+        /**
+         * Release the native memory of the deflater
+         */
+        void close() {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Format QUAL the way the VCF writer does
+     */
+    private static String formatQualValue(final double qual) {
+        String s = String.format("%.2f", qual);
+        if ( s.endsWith(".00") )
+            s = s.substring(0, s.length() - ".00".length());
+        return s;
+    }
+
+    /**
+     * Format an attribute value the way the VCF writer does; flags format as the empty string
+     */
+    static String formatValue(final Object value) {
+        if ( value == null )
+            return VCFConstants.MISSING_VALUE_v4;
+        if ( value instanceof Double )
+            return VCFEncoder.formatVCFDouble((Double)value);
+        if ( value instanceof Boolean )
+            return (Boolean)value ? "" : VCFConstants.MISSING_VALUE_v4;
+        if ( value instanceof List ) {
+            final List<?> values = (List<?>)value;
+            if ( values.isEmpty() )
+                return VCFConstants.MISSING_VALUE_v4;
+            final StringBuilder sb = new StringBuilder(formatValue(values.get(0)));
+            for ( int i = 1; i < values.size(); i++ )
+                sb.append(',').append(formatValue(values.get(i)));
+            return sb.toString();
+        }
+        if ( value.getClass().isArray() ) {
+            final int length = Array.getLength(value);
+            if ( length == 0 )
+                return VCFConstants.MISSING_VALUE_v4;
+            final StringBuilder sb = new StringBuilder(formatValue(Array.get(value, 0)));
+            for ( int i = 1; i < length; i++ )
+                sb.append(',').append(formatValue(Array.get(value, i)));
+            return sb.toString();
+        }
+        return value.toString();
+    }
+}
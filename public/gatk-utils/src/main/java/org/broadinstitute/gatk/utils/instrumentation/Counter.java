@@ -0,0 +1,72 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.instrumentation;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A counter of events, such as the number of records decoded, that many threads can increment without contention.
+ *
+ * Counters are created by {@link MetricsRegistry#counter(Subsystem, String)}, and are usually kept in a static field
+ * by the code that increments them.
+ */
+public final class Counter {
+    private final Subsystem subsystem;
+    private final String name;
+    private final LongAdder value = new LongAdder();
+
+    Counter(final Subsystem subsystem, final String name) {
+        this.subsystem = subsystem;
+        this.name = name;
+    }
+
+    public Subsystem getSubsystem() {
+        return subsystem;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void increment() {
+        value.increment();
+    }
+
+    public void add(final long n) {
+        value.add(n);
+    }
+
+    /**
+     * @return the sum of every increment since the counter was created or last reset
+     */
+    public long get() {
+        return value.sum();
+    }
+
+    void reset() {
+        value.reset();
+    }
+}
@@ -0,0 +1,210 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.instrumentation;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of latencies in nanoseconds.
+ *
+ * Values are counted in log-linear buckets, as in an HDR histogram: every power of two is split into
+ * {@link #SUB_BUCKET_COUNT} equal buckets, so values below {@link #SUB_BUCKET_COUNT} are counted exactly and larger
+ * values to within 1 / {@link #SUB_BUCKET_COUNT} of their magnitude.  Recording a value is a handful of atomic
+ * increments, so it can be done from any number of threads on hot paths.
+ *
+ * Histograms are created by {@link MetricsRegistry#histogram(Subsystem, String)}, and are usually kept in a static
+ * field by the code that records into them.
+ */
+public final class LatencyHistogram {
+    static final int SUB_BUCKET_BITS = 4;
+    static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    // values are non-negative, so the highest set bit is at most bit 62
+    static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    private final Subsystem subsystem;
+    private final String name;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    LatencyHistogram(final Subsystem subsystem, final String name) {
+        this.subsystem = subsystem;
+        this.name = name;
+    }
+
+    public Subsystem getSubsystem() {
+        return subsystem;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Record one latency
+     * @param nanos the latency in nanoseconds; negative values, from a clock going backwards, are counted as 0
+     */
+    public void record(final long nanos) {
+        final long value = Math.max(nanos, 0);
+        counts.incrementAndGet(bucketIndex(value));
+        total.add(value);
+        long currentMax;
+        while ( value > (currentMax = max.get()) && ! max.compareAndSet(currentMax, value) )
+            ; // another thread raised the max, try again against its value
+    }
+
+    /**
+     * Record the time elapsed since a call to {@link System#nanoTime()}
+     * @param startNanos the value returned by {@link System#nanoTime()} when the timed operation started
+     */
+    public void recordSince(final long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * @return a consistent enough copy of the histogram to compute summary statistics from
+     */
+    public Snapshot snapshot() {
+        final long[] copy = new long[BUCKET_COUNT];
+        long count = 0;
+        for ( int i = 0; i < BUCKET_COUNT; i++ ) {
+            copy[i] = counts.get(i);
+            count += copy[i];
+        }
+        return new Snapshot(copy, count, total.sum(), max.get());
+    }
+
+    void reset() {
+        for ( int i = 0; i < BUCKET_COUNT; i++ )
+            counts.set(i, 0);
+        total.reset();
+        max.set(0);
+    }
+
+    /**
+     * @param value a non-negative value
+     * @return the index of the bucket counting value
+     */
+    static int bucketIndex(final long value) {
+        if ( value < SUB_BUCKET_COUNT )
+            return (int)value;
+        final int shift = (Long.SIZE - 1 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKET_COUNT + (int)((value >>> shift) & (SUB_BUCKET_COUNT - 1));
+    }
+
+    /**
+     * @param index the index of a bucket
+     * @return the smallest value counted in the bucket
+     */
+    static long bucketLowerBound(final int index) {
+        if ( index < SUB_BUCKET_COUNT )
+            return index;
+        final int shift = index / SUB_BUCKET_COUNT - 1;
+        return (long)(SUB_BUCKET_COUNT + index % SUB_BUCKET_COUNT) << shift;
+    }
+
+    /**
+     * @param index the index of a bucket
+     * @return the largest value counted in the bucket
+     */
+    static long bucketUpperBound(final int index) {
+        if ( index < SUB_BUCKET_COUNT )
+            return index;
+        final int shift = index / SUB_BUCKET_COUNT - 1;
+        return bucketLowerBound(index) + (1L << shift) - 1;
+    }
+
+    /**
+     * The state of a histogram at some point in time
+     */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long total;
+        private final long max;
+
+        private Snapshot(final long[] counts, final long count, final long total, final long max) {
+            this.counts = counts;
+            this.count = count;
+            this.total = total;
+            this.max = max;
+        }
+
+        /**
+         * @return the number of latencies recorded
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return the sum of the latencies recorded, in nanoseconds
+         */
+        public long getTotalNanos() {
+            return total;
+        }
+
+        /**
+         * @return the largest latency recorded, in nanoseconds
+         */
+        public long getMaxNanos() {
+            return max;
+        }
+
+        /**
+         * @return the mean of the latencies recorded, in nanoseconds, or 0 if none were
+         */
+        public double getMeanNanos() {
+            return count == 0 ? 0.0 : (double)total / count;
+        }
+
+        /**
+         * Get a percentile of the latencies recorded
+         *
+         * As in an HDR histogram, the value returned is the largest value equivalent to the percentile within the
+         * precision of the histogram, but never more than the largest latency recorded.
+         *
+         * @param percentile the percentile, between 0 and 100
+         * @return the latency in nanoseconds, or 0 if no latency was recorded
+         */
+        public long getPercentileNanos(final double percentile) {
+            if ( percentile < 0.0 || percentile > 100.0 )
+                throw new IllegalArgumentException("percentile must be between 0 and 100 but was " + percentile);
+            if ( count == 0 )
+                return 0;
+            final long rank = Math.max(1, (long)Math.ceil(percentile / 100.0 * count));
+            long seen = 0;
+            for ( int i = 0; i < counts.length; i++ ) {
+                seen += counts[i];
+                if ( seen >= rank )
+                    return Math.min(bucketUpperBound(i), max);
+            }
+            return max;
+        }
+    }
+}
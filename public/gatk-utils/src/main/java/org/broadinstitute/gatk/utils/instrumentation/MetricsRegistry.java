@@ -0,0 +1,341 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.instrumentation;
+
+import org.apache.log4j.Logger;
+import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
+import org.broadinstitute.gatk.utils.exceptions.UserException;
+import org.broadinstitute.gatk.utils.report.GATKReport;
+import org.broadinstitute.gatk.utils.report.GATKReportTable;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The JVM-wide registry of the counters and latency histograms recorded on the hot paths of the GATK.
+ *
+ * Metrics are tagged by {@link Subsystem} and named within it.  Code that records a metric looks it up once, usually
+ * into a static field, and then only pays for an uncontended atomic increment per event:
+ *
+ * <pre>
+ *     private static final LatencyHistogram ALIGN_TIME = MetricsRegistry.getInstance().histogram(Subsystem.SMITH_WATERMAN, "align");
+ *     ...
+ *     final long startNanos = System.nanoTime();
+ *     align(reference, alternate);
+ *     ALIGN_TIME.recordSince(startNanos);
+ * </pre>
+ *
+ * The registry is always collecting.  It can be read over JMX once {@link #registerMBean()} has been called, and
+ * written periodically to a GATKReport file with {@link #startReporting(File, long)}.
+ */
+public final class MetricsRegistry implements MetricsRegistryMBean {
+    private final static Logger logger = Logger.getLogger(MetricsRegistry.class);
+
+    public static final String COUNTERS_TABLE_NAME = "Counters";
+    public static final String LATENCIES_TABLE_NAME = "Latencies";
+
+    private static final MetricsRegistry INSTANCE = new MetricsRegistry();
+
+    private final ConcurrentMap<String, Counter> counters = new ConcurrentSkipListMap<>();
+    private final ConcurrentMap<String, LatencyHistogram> histograms = new ConcurrentSkipListMap<>();
+
+    private ObjectName mBeanName = null;
+    private ScheduledExecutorService reporter = null;
+    private File reportFile = null;
+
+    /**
+     * @return the registry of this JVM
+     */
+    public static MetricsRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    MetricsRegistry() { }
+
+    /**
+     * Get the counter with the given name, creating it if necessary
+     * @param subsystem the subsystem the counter belongs to
+     * @param name the name of the counter within its subsystem
+     * @return a non-null counter, the same for every call with the same subsystem and name
+     */
+    public Counter counter(final Subsystem subsystem, final String name) {
+        final String key = getMetricName(subsystem, name);
+        final Counter counter = counters.get(key);
+        if ( counter != null )
+            return counter;
+        final Counter newCounter = new Counter(subsystem, name);
+        final Counter previous = counters.putIfAbsent(key, newCounter);
+        return previous == null ? newCounter : previous;
+    }
+
+    /**
+     * Get the latency histogram with the given name, creating it if necessary
+     * @param subsystem the subsystem the histogram belongs to
+     * @param name the name of the histogram within its subsystem
+     * @return a non-null histogram, the same for every call with the same subsystem and name
+     */
+    public LatencyHistogram histogram(final Subsystem subsystem, final String name) {
+        final String key = getMetricName(subsystem, name);
+        final LatencyHistogram histogram = histograms.get(key);
+        if ( histogram != null )
+            return histogram;
+        final LatencyHistogram newHistogram = new LatencyHistogram(subsystem, name);
+        final LatencyHistogram previous = histograms.putIfAbsent(key, newHistogram);
+        return previous == null ? newHistogram : previous;
+    }
+
+    private static String getMetricName(final Subsystem subsystem, final String name) {
+        if ( subsystem == null ) throw new IllegalArgumentException("subsystem cannot be null");
+        if ( name == null || name.isEmpty() ) throw new IllegalArgumentException("name cannot be null or empty");
+        return subsystem.getDisplayName() + "." + name;
+    }
+
+    // --------------------------------------------------------------------------------
+    //
+    // reporting
+    //
+    // --------------------------------------------------------------------------------
+
+    /**
+     * @return a report with one table of the counters and one table of the summary statistics of the histograms
+     */
+    public GATKReport getReport() {
+        final GATKReportTable counterTable = new GATKReportTable(COUNTERS_TABLE_NAME, "Hot-path event counts", 3, GATKReportTable.TableSortingWay.DO_NOT_SORT);
+        counterTable.addColumn("Subsystem");
+        counterTable.addColumn("Metric");
+        counterTable.addColumn("Count");
+        int row = 0;
+        for ( final Counter counter : counters.values() ) {
+            counterTable.set(row, 0, counter.getSubsystem().getDisplayName());
+            counterTable.set(row, 1, counter.getName());
+            counterTable.set(row, 2, counter.get());
+            row++;
+        }
+
+        final GATKReportTable latencyTable = new GATKReportTable(LATENCIES_TABLE_NAME, "Hot-path latencies in nanoseconds", 10, GATKReportTable.TableSortingWay.DO_NOT_SORT);
+        latencyTable.addColumn("Subsystem");
+        latencyTable.addColumn("Metric");
+        latencyTable.addColumn("Count");
+        latencyTable.addColumn("TotalNanos");
+        latencyTable.addColumn("MeanNanos", "%.1f");
+        latencyTable.addColumn("P50Nanos");
+        latencyTable.addColumn("P90Nanos");
+        latencyTable.addColumn("P99Nanos");
+        latencyTable.addColumn("P999Nanos");
+        latencyTable.addColumn("MaxNanos");
+        row = 0;
+        for ( final LatencyHistogram histogram : histograms.values() ) {
+            final LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+            latencyTable.set(row, 0, histogram.getSubsystem().getDisplayName());
+            latencyTable.set(row, 1, histogram.getName());
+            latencyTable.set(row, 2, snapshot.getCount());
+            latencyTable.set(row, 3, snapshot.getTotalNanos());
+            latencyTable.set(row, 4, snapshot.getMeanNanos());
+            latencyTable.set(row, 5, snapshot.getPercentileNanos(50));
+            latencyTable.set(row, 6, snapshot.getPercentileNanos(90));
+            latencyTable.set(row, 7, snapshot.getPercentileNanos(99));
+            latencyTable.set(row, 8, snapshot.getPercentileNanos(99.9));
+            latencyTable.set(row, 9, snapshot.getMaxNanos());
+            row++;
+        }
+
+        return new GATKReport(counterTable, latencyTable);
+    }
+
+    /**
+     * Write the report of the current metrics to a file
+     *
+     * The report is written next to the file and then moved over it, so that a reader never sees a partial report.
+     *
+     * @param file the file to write
+     * @throws IOException if the file cannot be written
+     */
+    public void writeReport(final File file) throws IOException {
+        final File parent = file.getAbsoluteFile().getParentFile();
+        final File temp = File.createTempFile(file.getName(), ".tmp", parent);
+        try {
+            try ( final PrintStream out = new PrintStream(temp) ) {
+                getReport().print(out);
+                if ( out.checkError() )
+                    throw new IOException("Unable to write " + temp);
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+
+    /**
+     * Write the report of the current metrics to a file now, and then every secondsBetweenUpdates seconds until
+     * {@link #stopReporting()} is called.  Reports to a previous file, if any, are stopped first.
+     *
+     * @param file the file to write
+     * @param secondsBetweenUpdates the number of seconds between two reports
+     */
+    public synchronized void startReporting(final File file, final long secondsBetweenUpdates) {
+        if ( file == null ) throw new IllegalArgumentException("file cannot be null");
+        if ( secondsBetweenUpdates < 1 ) throw new IllegalArgumentException("secondsBetweenUpdates must be positive but was " + secondsBetweenUpdates);
+        stopReporting();
+
+        try {
+            writeReport(file);
+        } catch ( IOException e ) {
+            throw new UserException.CouldNotCreateOutputFile(file, "Unable to write the metrics file", e);
+        }
+
+        reportFile = file;
+        reporter = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "MetricsRegistry-reporter");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        reporter.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    writeReport(file);
+                } catch ( IOException e ) {
+                    // a missed update is not worth failing the run for, the final report will tell
+                    logger.warn("Unable to update the metrics file " + file + ": " + e.getMessage());
+                }
+            }
+        }, secondsBetweenUpdates, secondsBetweenUpdates, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stop the periodic reports started by {@link #startReporting(File, long)}, and write a final one.
+     * Does nothing if the metrics are not being reported.
+     */
+    public synchronized void stopReporting() {
+        if ( reporter == null )
+            return;
+
+        reporter.shutdownNow();
+        try {
+            reporter.awaitTermination(1, TimeUnit.MINUTES);
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+        }
+
+        final File file = reportFile;
+        reporter = null;
+        reportFile = null;
+        try {
+            writeReport(file);
+        } catch ( IOException e ) {
+            throw new UserException.CouldNotCreateOutputFile(file, "Unable to write the metrics file", e);
+        }
+    }
+
+    // --------------------------------------------------------------------------------
+    //
+    // JMX
+    //
+    // --------------------------------------------------------------------------------
+
+    /**
+     * Register the registry with the platform MBean server, if it is not registered already
+     */
+    public synchronized void registerMBean() {
+        if ( mBeanName != null )
+            return;
+        try {
+            final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = new ObjectName("org.broadinstitute.gatk.utils.instrumentation:type=MetricsRegistry");
+            if ( ! mBeanServer.isRegistered(name) )
+                mBeanServer.registerMBean(this, name);
+            mBeanName = name;
+        }
+        catch (JMException ex) {
+            throw new ReviewedGATKException("Unable to register the metrics registry with JMX", ex);
+        }
+    }
+
+    @Override
+    public String[] getMetrics() {
+        final List<String> lines = new ArrayList<>(counters.size() + histograms.size());
+        for ( final Counter counter : counters.values() )
+            lines.add(String.format("%s.%s count=%d", counter.getSubsystem().getDisplayName(), counter.getName(), counter.get()));
+        for ( final LatencyHistogram histogram : histograms.values() ) {
+            final LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+            lines.add(String.format("%s.%s count=%d totalNanos=%d p50=%d p90=%d p99=%d max=%d",
+                    histogram.getSubsystem().getDisplayName(), histogram.getName(), snapshot.getCount(), snapshot.getTotalNanos(),
+                    snapshot.getPercentileNanos(50), snapshot.getPercentileNanos(90), snapshot.getPercentileNanos(99), snapshot.getMaxNanos()));
+        }
+        return lines.toArray(new String[lines.size()]);
+    }
+
+    @Override
+    public long getCount(final String metric) {
+        final Counter counter = counters.get(metric);
+        if ( counter != null )
+            return counter.get();
+        return getHistogram(metric).snapshot().getCount();
+    }
+
+    @Override
+    public long getTotalNanos(final String metric) {
+        return getHistogram(metric).snapshot().getTotalNanos();
+    }
+
+    @Override
+    public long getPercentileNanos(final String metric, final double percentile) {
+        return getHistogram(metric).snapshot().getPercentileNanos(percentile);
+    }
+
+    private LatencyHistogram getHistogram(final String metric) {
+        final LatencyHistogram histogram = histograms.get(metric);
+        if ( histogram == null ) throw new IllegalArgumentException("No such metric: " + metric);
+        return histogram;
+    }
+
+    @Override
+    public void reset() {
+        for ( final Counter counter : counters.values() )
+            counter.reset();
+        for ( final LatencyHistogram histogram : histograms.values() )
+            histogram.reset();
+    }
+}
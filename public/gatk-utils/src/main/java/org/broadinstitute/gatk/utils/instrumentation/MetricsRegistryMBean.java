@@ -0,0 +1,61 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.instrumentation;
+
+/**
+ * The JMX view of the {@link MetricsRegistry}.  Metrics are named by their subsystem and name, as in
+ * {@code PairHMM.computeLikelihoods}.
+ */
+public interface MetricsRegistryMBean {
+    /**
+     * @return one line per metric, with the value of each counter and the summary statistics of each histogram
+     */
+    String[] getMetrics();
+
+    /**
+     * @param metric the name of a counter or histogram
+     * @return the value of the counter, or the number of latencies recorded by the histogram
+     */
+    long getCount(String metric);
+
+    /**
+     * @param metric the name of a histogram
+     * @return the sum of the latencies recorded by the histogram, in nanoseconds
+     */
+    long getTotalNanos(String metric);
+
+    /**
+     * @param metric the name of a histogram
+     * @param percentile a percentile between 0 and 100
+     * @return the percentile of the latencies recorded by the histogram, in nanoseconds
+     */
+    long getPercentileNanos(String metric, double percentile);
+
+    /**
+     * Set every counter and histogram back to zero
+     */
+    void reset();
+}
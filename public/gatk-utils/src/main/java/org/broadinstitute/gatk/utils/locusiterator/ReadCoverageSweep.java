@@ -0,0 +1,345 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.locusiterator;
+
+import htsjdk.samtools.CigarElement;
+import org.broadinstitute.gatk.utils.GenomeLoc;
+import org.broadinstitute.gatk.utils.sam.GATKSAMRecord;
+import org.broadinstitute.gatk.utils.sam.ReadUtils;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Computes depths of coverage over a set of intervals as run-length segments, straight from the alignments of
+ * coordinate-sorted reads, without building pileups.
+ *
+ * Each depth is a "track" that reads are added to.  A read adds one to a track at each position where
+ * LocusIteratorByState would put it in the pileup -- its aligned bases and, optionally, its deletions, leaving out
+ * skipped ('N') regions and bases inside the adaptor -- optionally counting only bases of at least some quality.
+ * Depths only change where these blocks of a read start or end, so the sweep keeps just those changes, in a heap
+ * ordered by position, and reports the positions between them as segments of constant depth.
+ *
+ * Every position of the intervals is reported exactly once, in order, in a segment that doesn't cross the
+ * boundaries of its interval; positions without reads are reported with all depths at zero.  Positions are
+ * reported once no read added later can cover them: when a read starting after them is added, or on finish().
+ */
+public class ReadCoverageSweep {
+
+    /**
+     * Receives the segments of constant depth, in order
+     */
+    public interface SegmentHandler {
+        /**
+         * @param interval the interval containing the segment
+         * @param start    the first position of the segment
+         * @param stop     the last position of the segment
+         * @param depths   the depth of each track over the whole segment; only valid for the duration of the call
+         */
+        void addSegment(final GenomeLoc interval, final int start, final int stop, final int[] depths);
+    }
+
+    private final boolean includeDeletions;
+    private final SegmentHandler handler;
+    private final Iterator<GenomeLoc> intervals;
+
+    private final int[] depths;
+    private final int[] noDepths;
+
+    private GenomeLoc interval;         // the first interval not reported in full
+    private int contigIndex = -1;       // the contig of the last read added
+    private int lastStart = 0;          // the alignment start of the last read added
+    private int reportedTo = 0;         // the last position of that contig already reported
+
+    /**
+     * Min-heap of the changes to the depths still ahead, each packed in a long as position << 32 | track << 1 | increment
+     */
+    private long[] changes = new long[64];
+    private int nChanges = 0;
+
+    // the track of the read being added, and the run of its positions that is yet to be turned into changes
+    private int runTrack;
+    private int runStart = -1;
+    private int runStop = -1;
+
+    /**
+     * @param nTracks          the number of depths to compute
+     * @param includeDeletions should positions at which reads have deletions count towards the depths?
+     * @param intervals        the intervals to report, sorted and non-overlapping, e.g. a GenomeLocSortedSet
+     * @param handler          the receiver of the segments
+     */
+    public ReadCoverageSweep(final int nTracks, final boolean includeDeletions, final Iterable<GenomeLoc> intervals, final SegmentHandler handler) {
+        if ( nTracks < 1 || nTracks >= 1 << 30 ) throw new IllegalArgumentException("nTracks must be between 1 and 2^30: " + nTracks);
+        if ( intervals == null ) throw new IllegalArgumentException("intervals cannot be null");
+        if ( handler == null ) throw new IllegalArgumentException("handler cannot be null");
+
+        this.includeDeletions = includeDeletions;
+        this.handler = handler;
+        this.intervals = intervals.iterator();
+        this.depths = new int[nTracks];
+        this.noDepths = new int[nTracks];
+        this.interval = this.intervals.hasNext() ? this.intervals.next() : null;
+    }
+
+    /**
+     * Adds one to track at every position at which read is in the pileup
+     *
+     * @param read  a read, starting at or after the reads added before it; unmapped reads are ignored
+     * @param track the depth to add it to
+     */
+    public void addRead(final GATKSAMRecord read, final int track) {
+        addRead(read, track, 0);
+    }
+
+    /**
+     * Get the first position of a read that isn't inside its adaptor, as in ReadUtils.isBaseInsideAdaptor()
+     *
+     * @param read a mapped read
+     * @return the position after the adaptor of a reverse strand read, or Integer.MIN_VALUE if the read doesn't start in its adaptor
+     */
+    public static int getFirstPositionOutsideAdaptor(final GATKSAMRecord read) {
+        final int adaptorBoundary = getAdaptorBoundaryInsideRead(read);
+        return adaptorBoundary != ReadUtils.CANNOT_COMPUTE_ADAPTOR_BOUNDARY && read.getReadNegativeStrandFlag() ? adaptorBoundary + 1 : Integer.MIN_VALUE;
+    }
+
+    /**
+     * Get the last position of a read that isn't inside its adaptor, as in ReadUtils.isBaseInsideAdaptor()
+     *
+     * @param read a mapped read
+     * @return the position before the adaptor of a forward strand read, or Integer.MAX_VALUE if the read doesn't end in its adaptor
+     */
+    public static int getLastPositionOutsideAdaptor(final GATKSAMRecord read) {
+        final int adaptorBoundary = getAdaptorBoundaryInsideRead(read);
+        return adaptorBoundary != ReadUtils.CANNOT_COMPUTE_ADAPTOR_BOUNDARY && ! read.getReadNegativeStrandFlag() ? adaptorBoundary - 1 : Integer.MAX_VALUE;
+    }
+
+    private static int getAdaptorBoundaryInsideRead(final GATKSAMRecord read) {
+        final int adaptorBoundary = read.getAdaptorBoundary();
+        return adaptorBoundary != ReadUtils.CANNOT_COMPUTE_ADAPTOR_BOUNDARY && ReadUtils.isBaseInsideAdaptor(read, adaptorBoundary) ?
+                adaptorBoundary : ReadUtils.CANNOT_COMPUTE_ADAPTOR_BOUNDARY;
+    }
+
+    /**
+     * Adds one to track at every position at which read is in the pileup with a base quality of at least
+     * minBaseQuality, or with a deletion if deletions are included
+     *
+     * @param read           a read, starting at or after the reads added before it; unmapped reads are ignored
+     * @param track          the depth to add it to
+     * @param minBaseQuality the minimum quality of the bases to count
+     */
+    public void addRead(final GATKSAMRecord read, final int track, final int minBaseQuality) {
+        if ( track < 0 || track >= depths.length ) throw new IllegalArgumentException("track must be between 0 and " + (depths.length - 1) + ": " + track);
+        if ( read.getReadUnmappedFlag() ) return;
+
+        advanceTo(read.getReferenceIndex(), read.getAlignmentStart());
+
+        final int firstPosition = getFirstPositionOutsideAdaptor(read);
+        final int lastPosition = getLastPositionOutsideAdaptor(read);
+
+        final byte[] quals = minBaseQuality > 0 ? read.getBaseQualities() : null;
+        runTrack = track;
+        int position = read.getAlignmentStart();
+        int offset = 0;
+        for ( final CigarElement element : read.getCigar().getCigarElements() ) {
+            final int length = element.getLength();
+            switch ( element.getOperator() ) {
+                case M:
+                case EQ:
+                case X:
+                    if ( quals == null ) {
+                        addToRun(Math.max(position, firstPosition), Math.min(position + length - 1, lastPosition));
+                    } else {
+                        final int start = Math.max(position, firstPosition);
+                        final int stop = Math.min(position + length - 1, lastPosition);
+                        for ( int pos = start; pos <= stop; pos++ ) {
+                            if ( quals[offset + pos - position] >= minBaseQuality )
+                                addToRun(pos, pos);
+                        }
+                    }
+                    position += length;
+                    offset += length;
+                    break;
+                case D:
+                    if ( includeDeletions )
+                        addToRun(Math.max(position, firstPosition), Math.min(position + length - 1, lastPosition));
+                    position += length;
+                    break;
+                case N:
+                    position += length;
+                    break;
+                case I:
+                case S:
+                    offset += length;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        endRun();
+    }
+
+    /**
+     * Reports all the positions left, as no more reads will be added
+     */
+    public void finish() {
+        finishContig();
+        while ( interval != null ) {
+            handler.addSegment(interval, interval.getStart(), interval.getStop(), noDepths);
+            interval = intervals.hasNext() ? intervals.next() : null;
+        }
+    }
+
+    /**
+     * Reports all positions before position of contig newContigIndex, which no read starting there can cover
+     */
+    private void advanceTo(final int newContigIndex, final int position) {
+        if ( newContigIndex != contigIndex ) {
+            if ( newContigIndex < contigIndex ) throw new IllegalArgumentException("Reads must be added in coordinate order, but contig " + newContigIndex + " came after " + contigIndex);
+            finishContig();
+            while ( interval != null && interval.getContigIndex() < newContigIndex ) {
+                handler.addSegment(interval, interval.getStart(), interval.getStop(), noDepths);
+                interval = intervals.hasNext() ? intervals.next() : null;
+            }
+            contigIndex = newContigIndex;
+            reportedTo = 0;
+        } else if ( position < lastStart ) {
+            throw new IllegalArgumentException("Reads must be added in coordinate order, but position " + position + " came after " + lastStart);
+        }
+        lastStart = position;
+
+        reportChangesUpTo(position);
+    }
+
+    /**
+     * Reports the positions before each change at or before position, and applies the change
+     */
+    private void reportChangesUpTo(final int position) {
+        while ( nChanges > 0 && (int) (changes[0] >>> 32) <= position ) {
+            final int changePosition = (int) (changes[0] >>> 32);
+            report(reportedTo + 1, changePosition - 1, depths);
+            reportedTo = changePosition - 1;
+            while ( nChanges > 0 && (int) (changes[0] >>> 32) == changePosition ) {
+                final long change = removeFirstChange();
+                depths[(int) (change >>> 1) & 0x7fffffff] += (change & 1) == 1 ? 1 : -1;
+            }
+        }
+    }
+
+    /**
+     * Reports the rest of the current contig, which no more reads will cover
+     */
+    private void finishContig() {
+        if ( contigIndex < 0 )
+            return;
+
+        reportChangesUpTo(Integer.MAX_VALUE);
+        report(reportedTo + 1, Integer.MAX_VALUE, depths);
+        reportedTo = Integer.MAX_VALUE;
+    }
+
+    /**
+     * Reports the positions start to stop of the current contig at the given depths, in the parts that lie in the intervals
+     */
+    private void report(final int start, final int stop, final int[] segmentDepths) {
+        if ( start > stop )
+            return;
+        while ( interval != null && interval.getContigIndex() == contigIndex && interval.getStart() <= stop ) {
+            final int segmentStart = Math.max(start, interval.getStart());
+            final int segmentStop = Math.min(stop, interval.getStop());
+            if ( segmentStart <= segmentStop )
+                handler.addSegment(interval, segmentStart, segmentStop, segmentDepths);
+            if ( interval.getStop() > stop )
+                return;
+            interval = intervals.hasNext() ? intervals.next() : null;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------------------
+    //
+    // Turning runs of positions of a read into changes of depth
+    //
+    // ---------------------------------------------------------------------------------------------------------
+
+    private void addToRun(final int start, final int stop) {
+        if ( start > stop )
+            return;
+        if ( runStart < 0 || start != runStop + 1 ) {
+            if ( runStart >= 0 )
+                addChange(runStart, runStop + 1, runTrack);
+            runStart = start;
+        }
+        runStop = stop;
+    }
+
+    private void endRun() {
+        if ( runStart >= 0 )
+            addChange(runStart, runStop + 1, runTrack);
+        runStart = -1;
+    }
+
+    private void addChange(final int start, final int end, final int track) {
+        addChange(((long) start << 32) | ((long) track << 1) | 1);
+        addChange(((long) end << 32) | ((long) track << 1));
+    }
+
+    private void addChange(final long change) {
+        if ( nChanges == changes.length )
+            changes = Arrays.copyOf(changes, 2 * nChanges);
+
+        // sift up
+        int i = nChanges++;
+        while ( i > 0 ) {
+            final int parent = (i - 1) >>> 1;
+            if ( changes[parent] <= change )
+                break;
+            changes[i] = changes[parent];
+            i = parent;
+        }
+        changes[i] = change;
+    }
+
+    private long removeFirstChange() {
+        final long first = changes[0];
+        final long last = changes[--nChanges];
+
+        // sift down
+        int i = 0;
+        while ( true ) {
+            int child = 2 * i + 1;
+            if ( child >= nChanges )
+                break;
+            if ( child + 1 < nChanges && changes[child + 1] < changes[child] )
+                child++;
+            if ( last <= changes[child] )
+                break;
+            changes[i] = changes[child];
+            i = child;
+        }
+        changes[i] = last;
+        return first;
+    }
+}
@@ -31,6 +31,10 @@ import org.apache.log4j.Logger;
 import org.broadinstitute.gatk.utils.MathUtils;
 import org.broadinstitute.gatk.utils.genotyper.ReadLikelihoods;
 import org.broadinstitute.gatk.utils.haplotype.Haplotype;
+import org.broadinstitute.gatk.utils.instrumentation.Counter;
+import org.broadinstitute.gatk.utils.instrumentation.LatencyHistogram;
+import org.broadinstitute.gatk.utils.instrumentation.MetricsRegistry;
+import org.broadinstitute.gatk.utils.instrumentation.Subsystem;
 import org.broadinstitute.gatk.utils.sam.GATKSAMRecord;
 
 import java.util.Arrays;
@@ -113,6 +117,10 @@ public abstract class PairHMM {
     protected long threadLocalPairHMMComputeTimeDiff = 0;
     protected long startTime = 0;
 
+    // hot-path metrics, which unlike the profiling information above are recorded with any number of threads
+    private static final LatencyHistogram computeLikelihoodsTime = MetricsRegistry.getInstance().histogram(Subsystem.PAIRHMM, "computeLikelihoods");
+    private static final Counter readHaplotypePairs = MetricsRegistry.getInstance().counter(Subsystem.PAIRHMM, "readHaplotypePairs");
+
     /**
      * Initialize this PairHMM, making it suitable to run against a read and haplotype with given lengths
      *
@@ -213,8 +221,9 @@ public abstract class PairHMM {
                                    final Map<GATKSAMRecord,byte[]> gcp) {
         if (processedReads.isEmpty())
             return;
+        final long startNanos = System.nanoTime();
         if(doProfiling)
-            startTime = System.nanoTime();
+            startTime = startNanos;
         // (re)initialize the pairHMM only if necessary
         final int readMaxLength = findMaxReadLength(processedReads);
         final int haplotypeMaxLength = findMaxAlleleLength(likelihoods.alleles());
@@ -254,6 +263,17 @@ public abstract class PairHMM {
                 pairHMMComputeTime += threadLocalPairHMMComputeTimeDiff;
             }
         }
+        recordMetrics(startNanos, readCount * alleleCount);
+    }
+
+    /**
+     * Record the hot-path metrics of a call to computeLikelihoods
+     * @param startNanos the value of {@link System#nanoTime()} when the call started
+     * @param numberOfPairs the number of read / haplotype pairs whose likelihoods were computed
+     */
+    protected static void recordMetrics(final long startNanos, final long numberOfPairs) {
+        computeLikelihoodsTime.recordSince(startNanos);
+        readHaplotypePairs.add(numberOfPairs);
     }
 
     /**
@@ -34,6 +34,7 @@ import htsjdk.tribble.Feature;
 import htsjdk.tribble.FeatureCodec;
 import org.broadinstitute.gatk.utils.refdata.utils.FeatureToGATKFeatureIterator;
 import org.broadinstitute.gatk.utils.refdata.utils.GATKFeature;
+import org.broadinstitute.gatk.utils.refdata.utils.LazyGenotypeSubsetter;
 import org.broadinstitute.gatk.utils.GenomeLoc;
 import org.broadinstitute.gatk.utils.GenomeLocParser;
 import org.broadinstitute.gatk.utils.exceptions.UserException;
@@ -71,6 +72,9 @@ public class RMDTrack {
     // our codec type
     private final FeatureCodec codec;
 
+    // restricts the decoded genotypes to the samples needed by the walker, or null to decode all samples
+    private LazyGenotypeSubsetter genotypeSubsetter = null;
+
     public Class getType() {
         return type;
     }
@@ -109,7 +113,7 @@ public class RMDTrack {
      */
     public CloseableIterator<GATKFeature> getIterator() {
         try {
-            return new FeatureToGATKFeatureIterator(genomeLocParser,reader.iterator(),this.getName());
+            return new FeatureToGATKFeatureIterator(genomeLocParser,reader.iterator(),this.getName(),genotypeSubsetter);
         } catch (IOException e) {
             throw new UserException.CouldNotReadInputFile(getFile(), "Unable to read from file", e);
         }
@@ -117,7 +121,16 @@ public class RMDTrack {
 
     public CloseableIterator<GATKFeature> query(GenomeLoc interval) throws IOException {
         CloseableTribbleIterator<Feature> iter = reader.query(interval.getContig(),interval.getStart(),interval.getStop());
-        return new FeatureToGATKFeatureIterator(genomeLocParser, iter, this.getName());
+        return new FeatureToGATKFeatureIterator(genomeLocParser, iter, this.getName(), genotypeSubsetter);
+    }
+
+    /**
+     * Only decode the genotypes of some of the samples of this track.  The track must be a VCF.
+     *
+     * @param genotypeSubsetter the subsetter to apply to every record, or null to decode all samples
+     */
+    public void setGenotypeSubsetter(final LazyGenotypeSubsetter genotypeSubsetter) {
+        this.genotypeSubsetter = genotypeSubsetter;
     }
 
     public void close() {
@@ -27,6 +27,7 @@ package org.broadinstitute.gatk.utils.refdata.tracks;
 
 import htsjdk.samtools.SAMSequenceDictionary;
 import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.variant.vcf.VCFCodec;
 import htsjdk.variant.vcf.VCFContigHeaderLine;
 import htsjdk.variant.vcf.VCFHeader;
 import org.apache.log4j.Logger;
@@ -38,9 +39,12 @@ import htsjdk.tribble.index.Index;
 import htsjdk.tribble.index.IndexFactory;
 import htsjdk.tribble.util.LittleEndianOutputStream;
 import org.broadinstitute.gatk.utils.SequenceDictionaryUtils;
+import org.broadinstitute.gatk.utils.codecs.gvcfcolumn.GVCFCohortCodec;
+import org.broadinstitute.gatk.utils.codecs.gvcfcolumn.GVCFCohortReader;
 import org.broadinstitute.gatk.utils.commandline.ArgumentTypeDescriptor;
 import org.broadinstitute.gatk.utils.commandline.Tags;
 import org.broadinstitute.gatk.utils.ValidationExclusion;
+import org.broadinstitute.gatk.utils.refdata.utils.LazyGenotypeSubsetter;
 import org.broadinstitute.gatk.utils.refdata.utils.RMDTriplet;
 import org.broadinstitute.gatk.utils.refdata.utils.RMDTriplet.RMDStorageType;
 import org.broadinstitute.gatk.utils.GenomeLocParser;
@@ -56,6 +60,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 
 /**
@@ -96,6 +101,9 @@ public class RMDTrackBuilder { // extends PluginManager<FeatureCodec> {
     // Map of file name -> new sample name used when performing on-the-fly sample renaming
     private final Map<String, String> sampleRenameMap;
 
+    // Map of track name -> samples whose genotypes should be decoded, for tracks that don't need all of them
+    private Map<String, Set<String>> samplesToDecode = null;
+
     /**
      * Construct an RMDTrackerBuilder, allowing the user to define tracks to build after-the-fact.  This is generally
      * used when walkers want to directly manage the ROD system for whatever reason.  Before using this constructor,
@@ -147,7 +155,11 @@ public class RMDTrackBuilder { // extends PluginManager<FeatureCodec> {
 
         // return a feature reader track
         Pair<AbstractFeatureReader, SAMSequenceDictionary> pair;
-        if (ArgumentTypeDescriptor.isCompressed(inputFile.toString()))
+        if (descriptor.getCodecClass() == GVCFCohortCodec.class) {
+            // a cohort store is a directory of columns rather than a single Tribble file
+            final GVCFCohortReader reader = new GVCFCohortReader(inputFile, (GVCFCohortCodec)createCodec(descriptor, name, inputFile));
+            pair = new Pair<AbstractFeatureReader, SAMSequenceDictionary>(reader, reader.getSequenceDictionary());
+        } else if (ArgumentTypeDescriptor.isCompressed(inputFile.toString()))
             pair = createTabixIndexedFeatureSource(descriptor, name, inputFile);
         else
             pair = getFeatureSource(descriptor, name, inputFile, fileDescriptor.getStorageType());
@@ -155,7 +167,23 @@ public class RMDTrackBuilder { // extends PluginManager<FeatureCodec> {
 
         validateVariantAgainstSequenceDictionary(name, descriptor.getName(), pair.first, pair.second);
 
-        return new RMDTrack(descriptor.getCodecClass(), name, inputFile, pair.first, pair.second, genomeLocParser, createCodec(descriptor, name, inputFile));
+        final RMDTrack track = new RMDTrack(descriptor.getCodecClass(), name, inputFile, pair.first, pair.second, genomeLocParser, createCodec(descriptor, name, inputFile));
+        if ( samplesToDecode != null && samplesToDecode.containsKey(name) &&
+                descriptor.getCodecClass() == VCFCodec.class && track.getHeader() instanceof VCFHeader ) {
+            track.setGenotypeSubsetter(new LazyGenotypeSubsetter((VCFHeader)track.getHeader(), samplesToDecode.get(name),
+                    ValidationExclusion.lenientVCFProcessing(validationExclusionType)));
+        }
+        return track;
+    }
+
+    /**
+     * Only decode the genotypes of some samples of the given VCF tracks.  The records of these tracks will not contain
+     * genotypes for any other sample.  Tracks not in the map, and tracks that are not VCFs, are decoded in full.
+     *
+     * @param samplesToDecode map of track name -> samples whose genotypes are needed, or null to decode all tracks in full
+     */
+    public void setSamplesToDecode(final Map<String, Set<String>> samplesToDecode) {
+        this.samplesToDecode = samplesToDecode;
     }
 
     /**
@@ -28,6 +28,7 @@ package org.broadinstitute.gatk.utils.refdata.utils;
 import htsjdk.samtools.util.CloseableIterator;
 import htsjdk.tribble.CloseableTribbleIterator;
 import htsjdk.tribble.Feature;
+import htsjdk.variant.variantcontext.VariantContext;
 import org.broadinstitute.gatk.utils.GenomeLocParser;
 
 
@@ -43,11 +44,21 @@ public class FeatureToGATKFeatureIterator implements CloseableIterator<GATKFeatu
     private final GenomeLocParser genomeLocParser;
     private final CloseableTribbleIterator<Feature> iterator;
     private final String name;
+    private final LazyGenotypeSubsetter genotypeSubsetter;
 
     public FeatureToGATKFeatureIterator(GenomeLocParser genomeLocParser,CloseableTribbleIterator<Feature> iter, String name) {
+        this(genomeLocParser, iter, name, null);
+    }
+
+    /**
+     * @param genotypeSubsetter if not null, the genotypes of VariantContext features are restricted to its samples
+     */
+    public FeatureToGATKFeatureIterator(GenomeLocParser genomeLocParser,CloseableTribbleIterator<Feature> iter, String name,
+                                        LazyGenotypeSubsetter genotypeSubsetter) {
         this.genomeLocParser = genomeLocParser;
         this.name = name;
         this.iterator = iter;
+        this.genotypeSubsetter = genotypeSubsetter;
     }
 
     @Override
@@ -57,7 +68,10 @@ public class FeatureToGATKFeatureIterator implements CloseableIterator<GATKFeatu
 
     @Override
     public GATKFeature next() {
-        return new GATKFeature.TribbleGATKFeature(genomeLocParser,iterator.next(),name);
+        Feature feature = iterator.next();
+        if ( genotypeSubsetter != null && feature instanceof VariantContext )
+            feature = genotypeSubsetter.subset((VariantContext)feature);
+        return new GATKFeature.TribbleGATKFeature(genomeLocParser,feature,name);
     }
 
     @Override
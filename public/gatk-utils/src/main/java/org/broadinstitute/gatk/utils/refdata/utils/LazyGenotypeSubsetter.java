@@ -0,0 +1,152 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.refdata.utils;
+
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.GenotypesContext;
+import htsjdk.variant.variantcontext.LazyGenotypesContext;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.VariantContextBuilder;
+import htsjdk.variant.vcf.VCFCodec;
+import htsjdk.variant.vcf.VCFHeader;
+import htsjdk.variant.vcf.VCFHeaderLine;
+import htsjdk.variant.vcf.VCFHeaderVersion;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Restricts the still undecoded genotypes of VCF records to a subset of the samples in the header.
+ *
+ * The VCF codec keeps the genotype columns of each record as a single unparsed string until they are first accessed,
+ * at which point every sample is parsed.  When only a few samples are needed, this class cuts the columns of the other
+ * samples out of that string before anything is parsed, so the cost of decoding a record no longer depends on the
+ * total number of samples.  Records whose genotypes have already been decoded are returned unchanged.
+ */
+public class LazyGenotypeSubsetter {
+    private final boolean[] keepColumn;
+    private final int nKeptSamples;
+    private final VCFCodec subsetCodec;
+
+    /**
+     * @param header the header of the VCF being decoded
+     * @param samplesToKeep the samples whose genotypes should be kept; samples not in the header are ignored
+     * @param lenientProcessing whether the VCF is being decoded without on-the-fly header repairs
+     */
+    public LazyGenotypeSubsetter(final VCFHeader header, final Set<String> samplesToKeep, final boolean lenientProcessing) {
+        if ( header == null ) throw new IllegalArgumentException("header cannot be null");
+        if ( samplesToKeep == null ) throw new IllegalArgumentException("samplesToKeep cannot be null");
+
+        final List<String> samples = header.getGenotypeSamples();
+        final List<String> keptSamples = new ArrayList<>(samplesToKeep.size());
+        keepColumn = new boolean[samples.size()];
+        for ( int i = 0; i < samples.size(); i++ ) {
+            if ( samplesToKeep.contains(samples.get(i)) ) {
+                keepColumn[i] = true;
+                keptSamples.add(samples.get(i));
+            }
+        }
+        nKeptSamples = keptSamples.size();
+
+        // a second codec, whose header only lists the kept samples in their original column order, parses the cut string
+        subsetCodec = new VCFCodec();
+        if ( lenientProcessing )
+            subsetCodec.disableOnTheFlyModifications();
+        subsetCodec.setVCFHeader(new VCFHeader(header.getMetaDataInInputOrder(), keptSamples), getVersion(header));
+    }
+
+    /**
+     * @return the number of samples of the header that are kept
+     */
+    public int getNumberOfKeptSamples() {
+        return nKeptSamples;
+    }
+
+    /**
+     * Restrict the genotypes of a record to the kept samples
+     *
+     * @param vc a record decoded with the header given at construction
+     * @return a record with only the genotypes of the kept samples, or vc itself if its genotypes were already decoded
+     */
+    public VariantContext subset(final VariantContext vc) {
+        final GenotypesContext genotypes = vc.getGenotypes();
+        if ( ! (genotypes instanceof LazyGenotypesContext) )
+            return vc;
+
+        final Object unparsed = ((LazyGenotypesContext)genotypes).getUnparsedGenotypeData();
+        if ( ! (unparsed instanceof String) )
+            return vc;
+
+        final VariantContextBuilder builder = new VariantContextBuilder(vc);
+        if ( nKeptSamples == 0 ) {
+            builder.noGenotypes();
+        } else {
+            final List<Allele> alleles = vc.getAlleles();
+            final String contig = vc.getContig();
+            final int start = vc.getStart();
+            final LazyGenotypesContext.LazyParser parser = new LazyGenotypesContext.LazyParser() {
+                @Override
+                public LazyGenotypesContext.LazyData parse(final Object data) {
+                    synchronized ( subsetCodec ) {
+                        return subsetCodec.createGenotypeMap((String)data, alleles, contig, start);
+                    }
+                }
+            };
+            builder.genotypesNoValidation(new LazyGenotypesContext(parser, cutColumns((String)unparsed), nKeptSamples));
+        }
+        return builder.make();
+    }
+
+    /**
+     * Keep the FORMAT column and the columns of the kept samples of a tab separated genotype string
+     */
+    protected String cutColumns(final String genotypeColumns) {
+        final StringBuilder kept = new StringBuilder();
+        int columnStart = 0;
+        int column = -1; // the FORMAT column
+        final int length = genotypeColumns.length();
+        for ( int i = 0; i <= length; i++ ) {
+            if ( i == length || genotypeColumns.charAt(i) == '\t' ) {
+                if ( column == -1 || (column < keepColumn.length && keepColumn[column]) ) {
+                    if ( kept.length() > 0 )
+                        kept.append('\t');
+                    kept.append(genotypeColumns, columnStart, i);
+                }
+                column++;
+                columnStart = i + 1;
+            }
+        }
+        return kept.toString();
+    }
+
+    private static VCFHeaderVersion getVersion(final VCFHeader header) {
+        for ( final VCFHeaderLine line : header.getMetaDataInInputOrder() )
+            if ( VCFHeaderVersion.isFormatString(line.getKey()) && VCFHeaderVersion.isVersionString(line.getValue()) )
+                return VCFHeaderVersion.toHeaderVersion(line.getValue());
+        return VCFHeaderVersion.VCF4_2;
+    }
+}
@@ -66,7 +66,7 @@ public class GATKReport {
      * @param file the file to load
      */
     public GATKReport(File file) {
-        loadReport(file);
+        loadReport(file, null);
     }
 
     /**
@@ -78,12 +78,26 @@ public class GATKReport {
             addTable(table);
     }
 
+    /**
+     * Read a single table of a GATKReport file on disk, without parsing any of the tables that follow it.
+     *
+     * @param file      the file to load
+     * @param tableName the name of the table to read
+     * @return the table
+     */
+    public static GATKReportTable readTable(final File file, final String tableName) {
+        final GATKReport report = new GATKReport();
+        report.loadReport(file, tableName);
+        return report.getTable(tableName);
+    }
+
     /**
      * Load a GATKReport file from disk
      *
-     * @param file the file to load
+     * @param file          the file to load
+     * @param lastTableName if not null, stop reading after the table with this name
      */
-    private void loadReport(File file) {
+    private void loadReport(File file, final String lastTableName) {
         BufferedReader reader;
         String reportHeader;
         try {
@@ -106,7 +120,16 @@ public class GATKReport {
 
         // Read each table according ot the number of tables
         for (int i = 0; i < nTables; i++) {
-            addTable(new GATKReportTable(reader, version));
+            final GATKReportTable table = new GATKReportTable(reader, version);
+            addTable(table);
+            if ( table.getTableName().equals(lastTableName) )
+                break;
+        }
+
+        try {
+            reader.close();
+        } catch (IOException e) {
+            throw new UserException.CouldNotReadInputFile(file, e);
         }
     }
 
@@ -177,11 +200,22 @@ public class GATKReport {
      * @param out the PrintStream to which the tables should be written
      */
     public void print(PrintStream out) {
-        out.println(GATKREPORT_HEADER_PREFIX + getVersion().toString() + SEPARATOR + getTables().size());
+        printHeader(out, getVersion(), getTables().size());
         for (GATKReportTable table : tables.values())
             table.write(out);
     }
 
+    /**
+     * Print the header line of a report
+     *
+     * @param out     the PrintStream to which the header should be written
+     * @param version the version of the report
+     * @param nTables the number of tables that follow
+     */
+    static void printHeader(final PrintStream out, final GATKReportVersion version, final int nTables) {
+        out.println(GATKREPORT_HEADER_PREFIX + version.toString() + SEPARATOR + nTables);
+    }
+
     public Collection<GATKReportTable> getTables() {
         return tables.values();
     }
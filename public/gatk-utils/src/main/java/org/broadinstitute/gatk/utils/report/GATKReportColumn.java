@@ -100,7 +100,7 @@ public class GATKReportColumn {
      * @param obj The object to convert to a string
      * @return The string representation of the column
      */
-    private String formatValue(final Object obj) {
+    String formatValue(final Object obj) {
         String value;
         if (obj == null) {
             value = "null";
@@ -108,6 +108,8 @@ public class GATKReportColumn {
         else if ( dataType.equals(GATKReportDataType.Unknown) && (obj instanceof Double || obj instanceof Float) ) {
             value = String.format("%.8f", obj);
         }
+        else if ( obj instanceof String && format.equals("%s") )
+            value = (String) obj;
         else
             value = String.format(format, obj);
 
@@ -127,15 +129,31 @@ public class GATKReportColumn {
     }
 
     public void updateFormatting(final Object value) {
-        if (value != null) {
-            final String formatted = formatValue(value);
-            if ( formatted.length() > 0 ) {
-                updateMaxWidth(formatted);
-                updateFormat(formatted);
-            }
+        if (value != null)
+            updateFormattedValue(formatValue(value));
+    }
+
+    /**
+     * Update the width and alignment of this column for a value already formatted with formatValue
+     *
+     * @param formatted the formatted value
+     */
+    void updateFormattedValue(final String formatted) {
+        if ( formatted.length() > 0 ) {
+            updateMaxWidth(formatted);
+            updateFormat(formatted);
         }
     }
 
+    /**
+     * Update the width of this column for a formatted value known to be right alignable
+     *
+     * @param formattedLength the length of the formatted value
+     */
+    void updateWidth(final int formattedLength) {
+        maxWidth = Math.max(formattedLength, maxWidth);
+    }
+
     private void updateMaxWidth(final String formatted) {
         maxWidth = Math.max(formatted.length(), maxWidth);
     }
@@ -0,0 +1,247 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.report;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * The values of a single column in a GATKReportTable.
+ *
+ * Values are stored in a primitive array as long as every value in the column is a Long, an Integer or a Double,
+ * and in an Object array otherwise.  Values are boxed again on the way out, so get() returns an object of the same
+ * class as the one that was set.  Cells that were never set read as null.
+ */
+final class GATKReportColumnData {
+    private enum Storage { EMPTY, LONG, INT, DOUBLE, OBJECT }
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private Storage storage = Storage.EMPTY;
+    private long[] longs;
+    private int[] ints;
+    private double[] doubles;
+    private Object[] objects;
+    private final BitSet isSet = new BitSet();
+
+    /**
+     * Get the value of the cell at row, or null if it was never set
+     *
+     * @param row the row index
+     * @return the value at row
+     */
+    Object get(final int row) {
+        if ( ! isSet.get(row) )
+            return null;
+
+        switch ( storage ) {
+            case LONG: return longs[row];
+            case INT: return ints[row];
+            case DOUBLE: return doubles[row];
+            default: return objects[row];
+        }
+    }
+
+    /**
+     * Set the value of the cell at row, switching to Object storage if the value's class
+     * doesn't match the other values in this column
+     *
+     * @param row   the row index
+     * @param value the non-null value
+     */
+    void set(final int row, final Object value) {
+        if ( storage == Storage.EMPTY )
+            storage = storageFor(value);
+        else if ( storage != Storage.OBJECT && storage != storageFor(value) )
+            inflate();
+
+        ensureCapacity(row + 1);
+        switch ( storage ) {
+            case LONG: longs[row] = (Long)value; break;
+            case INT: ints[row] = (Integer)value; break;
+            case DOUBLE: doubles[row] = (Double)value; break;
+            default: objects[row] = value;
+        }
+        isSet.set(row);
+    }
+
+    void setLong(final int row, final long value) {
+        if ( storage == Storage.LONG || storage == Storage.EMPTY ) {
+            storage = Storage.LONG;
+            ensureCapacity(row + 1);
+            longs[row] = value;
+            isSet.set(row);
+        } else {
+            set(row, value);
+        }
+    }
+
+    void setDouble(final int row, final double value) {
+        if ( storage == Storage.DOUBLE || storage == Storage.EMPTY ) {
+            storage = Storage.DOUBLE;
+            ensureCapacity(row + 1);
+            doubles[row] = value;
+            isSet.set(row);
+        } else {
+            set(row, value);
+        }
+    }
+
+    /**
+     * Append the first nRows values of other after the first offset rows of this column
+     *
+     * @param offset the number of rows in this column
+     * @param other  the column to append
+     * @param nRows  the number of rows in other
+     */
+    void append(final int offset, final GATKReportColumnData other, final int nRows) {
+        if ( storage == Storage.EMPTY && other.storage != Storage.OBJECT )
+            storage = other.storage;
+        else if ( storage != Storage.OBJECT && other.storage != Storage.EMPTY && other.storage != storage )
+            inflate();
+
+        ensureCapacity(offset + nRows);
+        for ( int row = other.isSet.nextSetBit(0); row >= 0 && row < nRows; row = other.isSet.nextSetBit(row + 1) ) {
+            if ( storage == Storage.LONG && other.storage == Storage.LONG )
+                longs[offset + row] = other.longs[row];
+            else if ( storage == Storage.INT && other.storage == Storage.INT )
+                ints[offset + row] = other.ints[row];
+            else if ( storage == Storage.DOUBLE && other.storage == Storage.DOUBLE )
+                doubles[offset + row] = other.doubles[row];
+            else
+                set(offset + row, other.get(row));
+            isSet.set(offset + row);
+        }
+    }
+
+    /**
+     * Reorder the first nRows values of this column so that row i holds the value previously at order[i]
+     *
+     * @param order the new order of the rows
+     */
+    void permute(final int[] order) {
+        ensureCapacity(order.length);
+        final BitSet wasSet = (BitSet)isSet.clone();
+        for ( int i = 0; i < order.length; i++ )
+            isSet.set(i, wasSet.get(order[i]));
+
+        switch ( storage ) {
+            case LONG: {
+                final long[] old = Arrays.copyOf(longs, order.length);
+                for ( int i = 0; i < order.length; i++ ) longs[i] = old[order[i]];
+                break;
+            }
+            case INT: {
+                final int[] old = Arrays.copyOf(ints, order.length);
+                for ( int i = 0; i < order.length; i++ ) ints[i] = old[order[i]];
+                break;
+            }
+            case DOUBLE: {
+                final double[] old = Arrays.copyOf(doubles, order.length);
+                for ( int i = 0; i < order.length; i++ ) doubles[i] = old[order[i]];
+                break;
+            }
+            case OBJECT: {
+                final Object[] old = Arrays.copyOf(objects, order.length);
+                for ( int i = 0; i < order.length; i++ ) objects[i] = old[order[i]];
+                break;
+            }
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Compare the values at rows a and b, in the order used to sort tables by column: Integers and
+     * Doubles numerically and everything else by its string representation.
+     */
+    int compareRows(final int a, final int b) {
+        switch ( storage ) {
+            case INT: return Integer.compare(ints[a], ints[b]);
+            case DOUBLE: return Double.compare(doubles[a], doubles[b]);
+            case LONG: return Long.toString(longs[a]).compareTo(Long.toString(longs[b]));
+            default:
+                final Object objA = get(a);
+                final Object objB = get(b);
+                if ( objA instanceof Integer )
+                    return ((Integer)objA).compareTo((Integer)objB);
+                else if ( objA instanceof Double )
+                    return ((Double)objA).compareTo((Double)objB);
+                else
+                    return objA.toString().compareTo(objB.toString());
+        }
+    }
+
+    private static Storage storageFor(final Object value) {
+        if ( value instanceof Long ) return Storage.LONG;
+        if ( value instanceof Integer ) return Storage.INT;
+        if ( value instanceof Double ) return Storage.DOUBLE;
+        return Storage.OBJECT;
+    }
+
+    /**
+     * Switch to Object storage, boxing any values already in the column
+     */
+    private void inflate() {
+        final int capacity = capacity();
+        final Object[] boxed = new Object[Math.max(capacity, INITIAL_CAPACITY)];
+        for ( int row = isSet.nextSetBit(0); row >= 0; row = isSet.nextSetBit(row + 1) )
+            boxed[row] = get(row);
+        storage = Storage.OBJECT;
+        objects = boxed;
+        longs = null;
+        ints = null;
+        doubles = null;
+    }
+
+    private int capacity() {
+        switch ( storage ) {
+            case LONG: return longs == null ? 0 : longs.length;
+            case INT: return ints == null ? 0 : ints.length;
+            case DOUBLE: return doubles == null ? 0 : doubles.length;
+            case OBJECT: return objects == null ? 0 : objects.length;
+            default: return 0;
+        }
+    }
+
+    /**
+     * Make sure the storage array can hold at least the given number of rows
+     */
+    void ensureCapacity(final int nRows) {
+        final int capacity = capacity();
+        if ( nRows <= capacity )
+            return;
+
+        final int newCapacity = Math.max(Math.max(nRows, INITIAL_CAPACITY), capacity + (capacity >> 1));
+        switch ( storage ) {
+            case LONG: longs = longs == null ? new long[newCapacity] : Arrays.copyOf(longs, newCapacity); break;
+            case INT: ints = ints == null ? new int[newCapacity] : Arrays.copyOf(ints, newCapacity); break;
+            case DOUBLE: doubles = doubles == null ? new double[newCapacity] : Arrays.copyOf(doubles, newCapacity); break;
+            case OBJECT: objects = objects == null ? new Object[newCapacity] : Arrays.copyOf(objects, newCapacity); break;
+            default: break;
+        }
+    }
+}
@@ -49,20 +49,35 @@ public class GATKReportTable {
 
     private final TableSortingWay sortingWay;
 
-    private List<Object[]> underlyingData;
+    // the values of each column, for rows 0 ... nRows - 1
+    private final List<GATKReportColumnData> columnData;
+    private int nRows = 0;
     private final List<GATKReportColumn> columnInfo;
     private final Map<Object, Integer> columnNameToIndex;
     private final HashMap<Object, Integer> rowIdToIndex;
 
+    // rows 0 ... nImplicitRowIDs - 1 are mapped from their own (Integer) index, without entries in rowIdToIndex;
+    // the mapping is only made explicit (see getRowIdToIndex) when another kind of row ID is added
+    private int nImplicitRowIDs = 0;
+
     private static final String COULD_NOT_READ_HEADER = "Could not read the header of this file -- ";
     private static final String COULD_NOT_READ_COLUMN_NAMES = "Could not read the column names of this file -- ";
     private static final String COULD_NOT_READ_DATA_LINE = "Could not read a data line of this table -- ";
     private static final String COULD_NOT_READ_EMPTY_LINE = "Could not read the last empty line of this table -- ";
     private static final String OLD_GATK_TABLE_VERSION = "We no longer support older versions of the GATK Tables";
 
-    private static final int INITITAL_ARRAY_SIZE = 10000;
     private static final String NUMBER_CONVERSION_EXCEPTION = "String is a number but is not a long or a double: ";
 
+    // the largest number of digits in a decimal we parse ourselves, so that the digits fit exactly in a double
+    private static final int MAX_FAST_PARSE_DIGITS = 15;
+    private static final double[] POWERS_OF_TEN = new double[MAX_FAST_PARSE_DIGITS + 1];
+    static {
+        POWERS_OF_TEN[0] = 1.0;
+        for ( int i = 1; i < POWERS_OF_TEN.length; i++ )
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10.0;
+    }
+    private static final Pattern FIXED_POINT_FORMAT = Pattern.compile("%\\.(\\d+)f");
+
     protected enum TableDataHeaderFields {
         COLS(2),
         ROWS(3),
@@ -117,15 +132,13 @@ public class GATKReportTable {
 
                 // initialize the data
                 final int nColumns = Integer.parseInt(tableData[TableDataHeaderFields.COLS.index()]);
-                final int nRows = Integer.parseInt(tableData[TableDataHeaderFields.ROWS.index()]);
-                underlyingData = new ArrayList<Object[]>(nRows);
+                final int nRowsToRead = Integer.parseInt(tableData[TableDataHeaderFields.ROWS.index()]);
+                columnData = new ArrayList<GATKReportColumnData>(nColumns);
                 columnInfo = new ArrayList<GATKReportColumn>(nColumns);
                 columnNameToIndex = new HashMap<Object, Integer>(nColumns);
 
                 // when reading from a file, the row ID mapping is just the index
                 rowIdToIndex = new HashMap<Object, Integer>();
-                for ( int i = 0; i < nRows; i++ )
-                    rowIdToIndex.put(i, i);
 
                 // read the column names
                 final String columnLine;
@@ -145,20 +158,25 @@ public class GATKReportTable {
                 }
 
                 // fill in the table
+                final ColumnParser[] parsers = new ColumnParser[nColumns];
+                for ( int i = 0; i < nColumns; i++ ) {
+                    parsers[i] = new ColumnParser(i);
+                    columnData.get(i).ensureCapacity(nRowsToRead);
+                }
+                final int[] fieldStarts = new int[columnStarts.size() + 2];
+                for ( int i = 0; i < columnStarts.size(); i++ )
+                    fieldStarts[i + 1] = columnStarts.get(i);
                 try {
-                    for ( int i = 0; i < nRows; i++ ) {
+                    for ( int i = 0; i < nRowsToRead; i++ ) {
                         // read a data line
                         final String dataLine = reader.readLine();
-                        final List<String> lineSplits = Arrays.asList(TextFormattingUtils.splitFixedWidth(dataLine, columnStarts));
-
-                        underlyingData.add(new Object[nColumns]);
-                        for ( int columnIndex = 0; columnIndex < nColumns; columnIndex++ ) {
-
-                            final GATKReportDataType type = columnInfo.get(columnIndex).getDataType();
-                            final String columnName = columnNames[columnIndex];
-                            set(i, columnName, type.Parse(lineSplits.get(columnIndex)));
+                        if ( dataLine == null )
+                            throw new ReviewedGATKException(COULD_NOT_READ_DATA_LINE + "expected " + nRowsToRead + " rows but found " + i);
+                        fieldStarts[fieldStarts.length - 1] = dataLine.length();
 
-                        }
+                        expandTo(i, true);
+                        for ( int columnIndex = 0; columnIndex < nColumns; columnIndex++ )
+                            parsers[columnIndex].parse(i, dataLine, fieldStarts[columnIndex], fieldStarts[columnIndex + 1]);
                     }
                 } catch (IOException e) {
                     throw new ReviewedGATKException(COULD_NOT_READ_DATA_LINE + e.getMessage());
@@ -176,6 +194,132 @@ public class GATKReportTable {
         }
     }
 
+    /**
+     * Parses the fields of one column from the data lines of a table.
+     *
+     * Fields are parsed in place from the line where possible: integers, and decimals of the column's fixed point
+     * format, are parsed without creating a substring, and a string equal to the previous row's is shared with it.
+     * As such values are exactly the text that their format would write, the text is also used for the column's
+     * width.  Any other field is parsed and set just like values set through set().
+     */
+    private final class ColumnParser {
+        private final int columnIndex;
+        private final GATKReportColumn column;
+        private final GATKReportColumnData data;
+        private final boolean parseIntegers;
+        private final int decimalPlaces;
+        private final boolean parseStrings;
+        private String previousString = null;
+
+        private ColumnParser(final int columnIndex) {
+            this.columnIndex = columnIndex;
+            this.column = columnInfo.get(columnIndex);
+            this.data = columnData.get(columnIndex);
+
+            final GATKReportDataType type = column.getDataType();
+            final String format = column.getFormat();
+            parseIntegers = type == GATKReportDataType.Integer && format.equals("%d");
+            final Matcher fixedPoint = FIXED_POINT_FORMAT.matcher(format);
+            decimalPlaces = type == GATKReportDataType.Decimal && fixedPoint.matches() ? Integer.parseInt(fixedPoint.group(1)) : -1;
+            parseStrings = (type == GATKReportDataType.String || type == GATKReportDataType.Unknown) && format.equals("%s");
+        }
+
+        private void parse(final int row, final String line, int start, int stop) {
+            // trim the field, as String.trim() does
+            stop = Math.min(stop, line.length());
+            start = Math.min(start, stop);
+            while ( start < stop && line.charAt(start) <= ' ' ) start++;
+            while ( stop > start && line.charAt(stop - 1) <= ' ' ) stop--;
+
+            if ( parseIntegers && isInteger(line, start, stop) ) {
+                data.setLong(row, parseLong(line, start, stop));
+                column.updateWidth(stop - start);
+            } else if ( decimalPlaces >= 0 && isFixedPoint(line, start, stop, decimalPlaces) ) {
+                data.setDouble(row, parseFixedPoint(line, start, stop));
+                column.updateWidth(stop - start);
+            } else if ( parseStrings ) {
+                if ( previousString == null || previousString.length() != stop - start || ! line.regionMatches(start, previousString, 0, stop - start) ) {
+                    previousString = line.substring(start, stop);
+                    column.updateFormatting(previousString);
+                }
+                data.set(row, previousString);
+            } else {
+                set(row, columnIndex, column.getDataType().Parse(line.substring(start, stop)));
+            }
+        }
+    }
+
+    /**
+     * @return true if line[start, stop) is an integer of at most MAX_FAST_PARSE_DIGITS digits, written as %d would
+     */
+    private static boolean isInteger(final String line, final int start, final int stop) {
+        final int digitsStart = start < stop && line.charAt(start) == '-' ? start + 1 : start;
+        return isCanonicalDigits(line, digitsStart, stop)
+                && ! ( digitsStart > start && line.charAt(digitsStart) == '0' );   // no negative zero
+    }
+
+    /**
+     * @return true if line[start, stop) is a decimal with exactly decimalPlaces digits after the decimal point,
+     *         at most MAX_FAST_PARSE_DIGITS digits in total, and no leading zeros
+     */
+    private static boolean isFixedPoint(final String line, final int start, final int stop, final int decimalPlaces) {
+        if ( decimalPlaces == 0 )
+            return isInteger(line, start, stop);
+        final int point = stop - decimalPlaces - 1;
+        final int digitsStart = start < stop && line.charAt(start) == '-' ? start + 1 : start;
+        return point > digitsStart && line.charAt(point) == '.' && isCanonicalDigits(line, digitsStart, point)
+                && isDigits(line, point + 1, stop) && stop - digitsStart - 1 <= MAX_FAST_PARSE_DIGITS;
+    }
+
+    /**
+     * @return true if line[start, stop) is at most MAX_FAST_PARSE_DIGITS digits without leading zeros
+     */
+    private static boolean isCanonicalDigits(final String line, final int start, final int stop) {
+        return isDigits(line, start, stop) && stop - start <= MAX_FAST_PARSE_DIGITS
+                && ( line.charAt(start) != '0' || stop - start == 1 );
+    }
+
+    private static boolean isDigits(final String line, final int start, final int stop) {
+        if ( start >= stop )
+            return false;
+        for ( int i = start; i < stop; i++ ) {
+            final char c = line.charAt(i);
+            if ( c < '0' || c > '9' )
+                return false;
+        }
+        return true;
+    }
+
+    private static long parseLong(final String line, final int start, final int stop) {
+        final boolean negative = line.charAt(start) == '-';
+        long value = 0;
+        for ( int i = negative ? start + 1 : start; i < stop; i++ )
+            value = value * 10 + (line.charAt(i) - '0');
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parse a fixed point decimal accepted by isFixedPoint.  As both the digits and the power of ten are exactly
+     * representable as doubles, their quotient is the correctly rounded value, exactly as Double.parseDouble.
+     */
+    private static double parseFixedPoint(final String line, final int start, final int stop) {
+        final boolean negative = line.charAt(start) == '-';
+        long digits = 0;
+        int decimalPlaces = 0;
+        boolean afterPoint = false;
+        for ( int i = negative ? start + 1 : start; i < stop; i++ ) {
+            final char c = line.charAt(i);
+            if ( c == '.' ) {
+                afterPoint = true;
+            } else {
+                digits = digits * 10 + (c - '0');
+                if ( afterPoint ) decimalPlaces++;
+            }
+        }
+        final double value = digits / POWERS_OF_TEN[decimalPlaces];
+        return negative ? -value : value;
+    }
+
     /**
      * Construct a new GATK report table with the specified name and description
      *
@@ -208,7 +352,7 @@ public class GATKReportTable {
         this.tableDescription = tableDescription;
         this.sortingWay = sortingWay;
 
-        underlyingData = new ArrayList<Object[]>(INITITAL_ARRAY_SIZE);
+        columnData = new ArrayList<GATKReportColumnData>(numColumns);
         columnInfo = new ArrayList<GATKReportColumn>(numColumns);
         columnNameToIndex = new HashMap<Object, Integer>(numColumns);
         rowIdToIndex = new HashMap<Object, Integer>();
@@ -232,7 +376,7 @@ public class GATKReportTable {
         * @param name the name of the table or column
         * @return true if the name is valid, false if otherwise
         */
-    private boolean isValidName(String name) {
+    static boolean isValidName(String name) {
         Pattern p = Pattern.compile(INVALID_TABLE_NAME_REGEX);
         Matcher m = p.matcher(name);
 
@@ -245,13 +389,47 @@ public class GATKReportTable {
      * @param description the name of the table or column
      * @return true if the name is valid, false if otherwise
      */
-    private boolean isValidDescription(String description) {
+    static boolean isValidDescription(String description) {
         Pattern p = Pattern.compile("\\r|\\n");
         Matcher m = p.matcher(description);
 
         return !m.find();
     }
 
+    /**
+     * Get the map from row ID to row index, making the implicit mappings of rows to their own index explicit
+     *
+     * @return the row ID map
+     */
+    private HashMap<Object, Integer> getRowIdToIndex() {
+        if ( nImplicitRowIDs > 0 ) {
+            for ( int i = 0; i < nImplicitRowIDs; i++ )
+                rowIdToIndex.put(i, i);
+            nImplicitRowIDs = 0;
+        }
+        return rowIdToIndex;
+    }
+
+    /**
+     * Map the row ID to the index, implicitly if the ID is the next index of a table whose rows are all mapped
+     * from their own index
+     */
+    private void putRowID(final Object rowID, final int index) {
+        if ( rowIdToIndex.isEmpty() && nImplicitRowIDs == index && rowID instanceof Integer && (Integer)rowID == index )
+            nImplicitRowIDs++;
+        else
+            getRowIdToIndex().put(rowID, index);
+    }
+
+    /**
+     * @return the index of the row with the given ID, or null if there is no such row
+     */
+    private Integer getRowIndex(final Object rowID) {
+        if ( nImplicitRowIDs > 0 )
+            return rowID instanceof Integer && (Integer)rowID >= 0 && (Integer)rowID < nImplicitRowIDs ? (Integer)rowID : null;
+        return rowIdToIndex.get(rowID);
+    }
+
     /**
      * Add a mapping from ID to the index of a new row added to the table.
      *
@@ -268,7 +446,7 @@ public class GATKReportTable {
      * @param populateFirstColumn   should we automatically populate the first column with the row's ID?
      */
     public void addRowID(final String ID, final boolean populateFirstColumn) {
-        addRowIDMapping(ID, underlyingData.size(), populateFirstColumn);
+        addRowIDMapping(ID, nRows, populateFirstColumn);
     }
 
     /**
@@ -290,7 +468,7 @@ public class GATKReportTable {
      */
     public void addRowIDMapping(final Object ID, final int index, final boolean populateFirstColumn) {
         expandTo(index, false);
-        rowIdToIndex.put(ID, index);
+        getRowIdToIndex().put(ID, index);
 
         if ( populateFirstColumn )
             set(index, 0, ID);
@@ -302,7 +480,7 @@ public class GATKReportTable {
      * @param ID   the row ID
      */
     public void removeRowIDMapping(final Object ID) {
-        rowIdToIndex.remove(ID);
+        getRowIdToIndex().remove(ID);
     }
 
     /**
@@ -323,6 +501,7 @@ public class GATKReportTable {
     public void addColumn(String columnName, String format) {
         columnNameToIndex.put(columnName, columnInfo.size());
         columnInfo.add(new GATKReportColumn(columnName, format));
+        columnData.add(new GATKReportColumnData());
     }
 
     /**
@@ -343,15 +522,10 @@ public class GATKReportTable {
      * @param updateRowIdMap  should we update the row ID map?
      */
     private void expandTo(final int rowIndex, final boolean updateRowIdMap) {
-        int currentSize = underlyingData.size();
-        if ( rowIndex >= currentSize ) {
-            final int numNewRows = rowIndex - currentSize + 1;
-            for ( int i = 0; i < numNewRows; i++ ) {
-                if ( updateRowIdMap )
-                    rowIdToIndex.put(currentSize, currentSize);
-                underlyingData.add(new Object[getNumColumns()]);
-                currentSize++;
-            }
+        while ( rowIndex >= nRows ) {
+            if ( updateRowIdMap )
+                putRowID(nRows, nRows);
+            nRows++;
         }
     }
 
@@ -364,11 +538,13 @@ public class GATKReportTable {
      * @param value        the value to set
      */
     public void set(final Object rowID, final String columnName, final Object value) {
-        if ( !rowIdToIndex.containsKey(rowID) ) {
-            rowIdToIndex.put(rowID, underlyingData.size());
-            expandTo(underlyingData.size(), false);
+        Integer rowIndex = getRowIndex(rowID);
+        if ( rowIndex == null ) {
+            rowIndex = nRows;
+            putRowID(rowID, rowIndex);
+            expandTo(rowIndex, false);
         }
-        set(rowIdToIndex.get(rowID), columnNameToIndex.get(columnName), value);
+        set(rowIndex, columnNameToIndex.get(columnName), value);
     }
 
     /**
@@ -391,7 +567,7 @@ public class GATKReportTable {
             value = fixType(value, column);
 
         if ( column.getDataType().equals(GATKReportDataType.fromObject(value)) || column.getDataType().equals(GATKReportDataType.Unknown) ) {
-            underlyingData.get(rowIndex)[colIndex] = value;
+            columnData.get(colIndex).set(rowIndex, value);
             column.updateFormatting(value);
         } else {
             throw new ReviewedGATKException(String.format("Tried to add an object of type: %s to a column of type: %s", GATKReportDataType.fromObject(value).name(), column.getDataType().name()));
@@ -404,7 +580,7 @@ public class GATKReportTable {
      * @param rowID        the row ID
      */
     public boolean containsRowID(final Object rowID) {
-        return rowIdToIndex.containsKey(rowID);
+        return getRowIndex(rowID) != null;
     }
 
     /**
@@ -412,7 +588,7 @@ public class GATKReportTable {
      *
      */
     public Collection<Object> getRowIDs() {
-        return rowIdToIndex.keySet();
+        return getRowIdToIndex().keySet();
     }
 
     /**
@@ -424,9 +600,9 @@ public class GATKReportTable {
     */
     public void increment(final Object rowID, final String columnName) {
         int prevValue;
-        if ( !rowIdToIndex.containsKey(rowID) ) {
-            rowIdToIndex.put(rowID, underlyingData.size());
-            underlyingData.add(new Object[getNumColumns()]);
+        if ( !containsRowID(rowID) ) {
+            putRowID(rowID, nRows);
+            nRows++;
             prevValue = 0;
         } else {
             Object obj = get(rowID, columnName);
@@ -435,7 +611,7 @@ public class GATKReportTable {
             prevValue = (Integer)obj;
         }
 
-        set(rowIdToIndex.get(rowID), columnNameToIndex.get(columnName), prevValue + 1);
+        set(getRowIndex(rowID), columnNameToIndex.get(columnName), prevValue + 1);
     }
 
     /**
@@ -449,13 +625,11 @@ public class GATKReportTable {
         if ( columnValues == null || columnValues.length == 0 || columnValues.length > getNumColumns() )
             return -1;
 
-        for ( int rowIndex = 0; rowIndex < underlyingData.size(); rowIndex++ ) {
-
-            final Object[] row = underlyingData.get(rowIndex);
+        for ( int rowIndex = 0; rowIndex < nRows; rowIndex++ ) {
 
             boolean matches = true;
             for ( int colIndex = 0; colIndex < columnValues.length; colIndex++ ) {
-                if ( !columnValues[colIndex].equals(row[colIndex]) ) {
+                if ( !columnValues[colIndex].equals(columnData.get(colIndex).get(rowIndex)) ) {
                     matches = false;
                     break;
                 }
@@ -506,7 +680,7 @@ public class GATKReportTable {
      * @return the value stored at the specified position in the table
      */
     public Object get(final Object rowID, final String columnName) {
-        return get(rowIdToIndex.get(rowID), columnNameToIndex.get(columnName));
+        return get(getRowIndex(rowID), columnNameToIndex.get(columnName));
     }
 
     /**
@@ -529,7 +703,9 @@ public class GATKReportTable {
      */
     public Object get(int rowIndex, int columnIndex) {
         verifyEntry(rowIndex, columnIndex);
-        return underlyingData.get(rowIndex)[columnIndex];
+        if ( rowIndex >= nRows )
+            throw new IndexOutOfBoundsException("Index: " + rowIndex + ", Size: " + nRows);
+        return columnData.get(columnIndex).get(rowIndex);
     }
 
     /**
@@ -538,115 +714,87 @@ public class GATKReportTable {
      * @param out the PrintStream to which the table should be written
      */
      void write(final PrintStream out) {
-
-         /*
-          * Table header:
-          * #:GATKTable:nColumns:nRows:(DataType for each column):;
-          * #:GATKTable:TableName:Description :;
-          * key   colA  colB
-          * row1  xxxx  xxxxx
-         */
-
-         // write the table definition
-         out.printf(GATKTABLE_HEADER_PREFIX + ":%d:%d", getNumColumns(), getNumRows());
-
-         // write the formats for all the columns
-         for ( final GATKReportColumn column : columnInfo )
-             out.print(SEPARATOR + column.getFormat());
-         out.println(ENDLINE);
-
-         // write the table name & description
-         out.printf(GATKTABLE_HEADER_PREFIX + ":%s:%s\n", tableName, tableDescription);
-
-         // write the column names
-         boolean needsPadding = false;
-         for ( final GATKReportColumn column : columnInfo ) {
-             if ( needsPadding )
-                 out.printf("  ");
-             needsPadding = true;
-
-             out.printf(column.getColumnFormat().getNameFormat(), column.getColumnName());
-         }
-         out.println();
+         writeHeader(out, tableName, tableDescription, columnInfo, getNumRows());
 
          // write the table body
-         switch (sortingWay) {
-             case SORT_BY_COLUMN:
-                 Collections.sort(underlyingData, new Comparator<Object[]>() {
-                     //INVARIANT the two arrays are of the same length and corresponding elements are of the same type
-                     @Override
-                     public int compare(Object[] objectArr1, Object[] objectArr2) {
-                         final int EQUAL = 0;
-
-                         int result = EQUAL;
-
-                         int l = objectArr1.length;
-                         for (int x = 0; x < l; x++) {
-                             if (objectArr1[x] instanceof Integer) {
-                                 result = ((Integer)objectArr1[x]).compareTo((Integer)objectArr2[x]);
-                             } else if (objectArr1[x] instanceof Double) {
-                                 result = ((Double)objectArr1[x]).compareTo((Double)objectArr2[x]);
-                             } else { // default uses String comparison
-                                 result = objectArr1[x].toString().compareTo(objectArr2[x].toString());
-                             }
-                             if( result  != EQUAL) {
-                                 return result;
-                             }
-                         }
-                         return result;
-                     }
-                 });
-                 for ( final Object[] row : underlyingData )
-                     writeRow(out, row);
-                 break;
-             case SORT_BY_ROW:
-                 // make sure that there are exactly the correct number of ID mappings
-                 if ( rowIdToIndex.size() != underlyingData.size() )
-                     throw new ReviewedGATKException("There isn't a 1-to-1 mapping from row ID to index; this can happen when rows are not created consistently");
-
-                 final TreeMap<Object, Integer> sortedMap;
-                 try {
-                     sortedMap = new TreeMap<Object, Integer>(rowIdToIndex);
-                 } catch (ClassCastException e) {
-                     throw new ReviewedGATKException("Unable to sort the rows based on the row IDs because the ID Objects are of different types");
-                 }
-                 for ( final Map.Entry<Object, Integer> rowKey : sortedMap.entrySet() )
-                     writeRow(out, underlyingData.get(rowKey.getValue()));
-                 break;
-             case DO_NOT_SORT:
-                 for ( final Object[] row : underlyingData )
-                     writeRow(out, row);
+         final Object[] row = new Object[getNumColumns()];
+         for ( final int rowIndex : getOrderedRows(true) ) {
+             for ( int i = 0; i < row.length; i++ )
+                 row[i] = columnData.get(i).get(rowIndex);
+             writeRow(out, columnInfo, row);
          }
          out.println();
      }
 
-    private void writeRow(final PrintStream out, final Object[] row) {
+    /**
+     * Write the header of a table: its definition, its name and description, and its column names.
+     *
+     * Table header:
+     * #:GATKTable:nColumns:nRows:(DataType for each column):;
+     * #:GATKTable:TableName:Description :;
+     * key   colA  colB
+     * row1  xxxx  xxxxx
+     */
+    static void writeHeader(final PrintStream out, final String tableName, final String tableDescription,
+                            final List<GATKReportColumn> columnInfo, final int nRows) {
+        // write the table definition
+        out.printf(GATKTABLE_HEADER_PREFIX + ":%d:%d", columnInfo.size(), nRows);
+
+        // write the formats for all the columns
+        for ( final GATKReportColumn column : columnInfo )
+            out.print(SEPARATOR + column.getFormat());
+        out.println(ENDLINE);
+
+        // write the table name & description
+        out.printf(GATKTABLE_HEADER_PREFIX + ":%s:%s\n", tableName, tableDescription);
+
+        // write the column names
         boolean needsPadding = false;
-        for ( int i = 0; i < row.length; i++ ) {
+        for ( final GATKReportColumn column : columnInfo ) {
             if ( needsPadding )
-                out.printf("  ");
+                out.print("  ");
             needsPadding = true;
 
-            final Object obj = row[i];
-            final String value;
-
-            final GATKReportColumn info = columnInfo.get(i);
+            out.printf(column.getColumnFormat().getNameFormat(), column.getColumnName());
+        }
+        out.println();
+    }
 
-            if ( obj == null )
-                value = "null";
-            else if ( info.getDataType().equals(GATKReportDataType.Unknown) && (obj instanceof Double || obj instanceof Float) )
-                value = String.format("%.8f", obj);
-            else
-                value = String.format(info.getFormat(), obj);
+    /**
+     * Write a row of a table, formatting each value with its column's format
+     */
+    static void writeRow(final PrintStream out, final List<GATKReportColumn> columnInfo, final Object[] row) {
+        final String[] values = new String[row.length];
+        for ( int i = 0; i < row.length; i++ )
+            values[i] = columnInfo.get(i).formatValue(row[i]);
+        writeFormattedRow(out, columnInfo, values);
+    }
 
-            out.printf(info.getColumnFormat().getValueFormat(), value);
+    /**
+     * Write a row of already formatted values, padded to the width and alignment of their columns
+     */
+    static void writeFormattedRow(final PrintStream out, final List<GATKReportColumn> columnInfo, final String[] values) {
+        final StringBuilder line = new StringBuilder();
+        for ( int i = 0; i < values.length; i++ ) {
+            if ( i > 0 )
+                line.append("  ");
+
+            final GATKReportColumnFormat format = columnInfo.get(i).getColumnFormat();
+            final String value = values[i];
+            final int padding = format.getWidth() - value.length();
+            if ( format.getAlignment() == GATKReportColumnFormat.Alignment.LEFT ) {
+                line.append(value);
+                for ( int j = 0; j < padding; j++ ) line.append(' ');
+            } else {
+                for ( int j = 0; j < padding; j++ ) line.append(' ');
+                line.append(value);
+            }
         }
-
-        out.println();
+        out.println(line);
     }
 
     public int getNumRows() {
-        return underlyingData.size();
+        return nRows;
     }
 
     public int getNumColumns() {
@@ -675,12 +823,14 @@ public class GATKReportTable {
             throw new ReviewedGATKException("Error trying to concatenate tables with different formats");
 
         // add the data
-        underlyingData.addAll(table.underlyingData);
+        for ( int i = 0; i < columnData.size(); i++ )
+            columnData.get(i).append(nRows, table.columnData.get(i), table.nRows);
+        nRows += table.nRows;
 
         // update the row index map
         final int currentNumRows = getNumRows();
-        for ( Map.Entry<Object, Integer> entry : table.rowIdToIndex.entrySet() )
-            rowIdToIndex.put(entry.getKey(), entry.getValue() + currentNumRows);
+        for ( Map.Entry<Object, Integer> entry : table.getRowIdToIndex().entrySet() )
+            getRowIdToIndex().put(entry.getKey(), entry.getValue() + currentNumRows);
     }
 
     /**
@@ -714,17 +864,17 @@ public class GATKReportTable {
      */
     public boolean equals(final GATKReportTable table) {
         if ( !isSameFormat(table) ||
-                underlyingData.size() != table.underlyingData.size() )
+                nRows != table.nRows )
             return false;
 
-        final List<Object[]> myOrderedRows = getOrderedRows();
-        final List<Object[]> otherOrderedRows = table.getOrderedRows();
+        final int[] myOrderedRows = getOrderedRows(false);
+        final int[] otherOrderedRows = table.getOrderedRows(false);
 
-        for ( int i = 0; i < underlyingData.size(); i++ ) {
-            final Object[] myData = myOrderedRows.get(i);
-            final Object[] otherData = otherOrderedRows.get(i);
-            for ( int j = 0; j < myData.length; j++ ) {
-                if ( !myData[j].toString().equals(otherData[j].toString()) )       // need to deal with different typing (e.g. Long vs. Integer)
+        for ( int i = 0; i < nRows; i++ ) {
+            for ( int j = 0; j < columnData.size(); j++ ) {
+                final Object myData = columnData.get(j).get(myOrderedRows[i]);
+                final Object otherData = table.columnData.get(j).get(otherOrderedRows[i]);
+                if ( !myData.toString().equals(otherData.toString()) )       // need to deal with different typing (e.g. Long vs. Integer)
                     return false;
             }
         }
@@ -732,48 +882,77 @@ public class GATKReportTable {
         return true;
     }
 
-    private List<Object[]> getOrderedRows() {
-
+    /**
+     * Get the indices of the rows in the order they are written.  Tables sorted by column are sorted in place.
+     *
+     * @param requireAllRowIDs should we fail if not every row has exactly one ID when sorting by row?
+     * @return the row indices in order
+     */
+    private int[] getOrderedRows(final boolean requireAllRowIDs) {
         switch (sortingWay) {
             case SORT_BY_COLUMN:
-                Collections.sort(underlyingData, new Comparator<Object[]>() {
-                    //INVARIANT the two arrays are of the same length and corresponding elements are of the same type
-                    @Override
-                    public int compare(Object[] objectArr1, Object[] objectArr2) {
-                        final int EQUAL = 0;
-                        int result = EQUAL;
-                        int l = objectArr1.length;
-                            for (int x = 0; x < l; x++) {
-                                if (objectArr1[x] instanceof Integer) {
-                                    result = ((Integer)objectArr1[x]).compareTo((Integer)objectArr2[x]);
-                                } else if (objectArr1[x] instanceof Double) {
-                                    result = ((Double)objectArr1[x]).compareTo((Double)objectArr2[x]);
-                                } else  { // default uses String comparison
-                                    result = objectArr1[x].toString().compareTo(objectArr2[x].toString());
-                                }
-                                if( result != EQUAL) {
-                                    return result;
-                                }
-                            }
-                            return result;
-                    }
-                });
-                return underlyingData;
+                sortByColumns();
+                return identityOrder();
             case SORT_BY_ROW:
+                // make sure that there are exactly the correct number of ID mappings
+                if ( requireAllRowIDs && (nImplicitRowIDs > 0 ? nImplicitRowIDs : rowIdToIndex.size()) != nRows )
+                    throw new ReviewedGATKException("There isn't a 1-to-1 mapping from row ID to index; this can happen when rows are not created consistently");
+
+                // rows mapped from their own index are already sorted
+                if ( nImplicitRowIDs > 0 )
+                    return identityOrder();
+
                 final TreeMap<Object, Integer> sortedMap;
                 try {
                     sortedMap = new TreeMap<Object, Integer>(rowIdToIndex);
                 } catch (ClassCastException e) {
-                    return underlyingData;
+                    if ( requireAllRowIDs )
+                        throw new ReviewedGATKException("Unable to sort the rows based on the row IDs because the ID Objects are of different types");
+                    return identityOrder();
                 }
 
-                final List<Object[]> orderedData = new ArrayList<Object[]>(underlyingData.size());
+                final int[] orderedRows = new int[sortedMap.size()];
+                int i = 0;
                 for ( final int rowKey : sortedMap.values() )
-                    orderedData.add(underlyingData.get(rowKey));
-
-                return orderedData;
+                    orderedRows[i++] = rowKey;
+                return orderedRows;
             default:
-                return underlyingData;
+                return identityOrder();
         }
     }
+
+    private int[] identityOrder() {
+        final int[] order = new int[nRows];
+        for ( int i = 0; i < nRows; i++ )
+            order[i] = i;
+        return order;
+    }
+
+    /**
+     * Stably sort the rows of the table by the values of each column in turn: Integers and Doubles are
+     * compared numerically and everything else by its string representation
+     */
+    private void sortByColumns() {
+        final Integer[] order = new Integer[nRows];
+        for ( int i = 0; i < nRows; i++ )
+            order[i] = i;
+
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(final Integer row1, final Integer row2) {
+                for ( final GATKReportColumnData column : columnData ) {
+                    final int result = column.compareRows(row1, row2);
+                    if ( result != 0 )
+                        return result;
+                }
+                return 0;
+            }
+        });
+
+        final int[] permutation = new int[nRows];
+        for ( int i = 0; i < nRows; i++ )
+            permutation[i] = order[i];
+        for ( final GATKReportColumnData column : columnData )
+            column.permute(permutation);
+    }
 }
@@ -0,0 +1,177 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package org.broadinstitute.gatk.utils.report;
+
+import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
+import org.broadinstitute.gatk.utils.exceptions.UserException;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes a GATK report table whose rows are only ever appended, without keeping the rows in memory.
+ *
+ * The header of a table holds its number of rows and the widths of its columns, so nothing can be written until
+ * the last row has been added.  Instead of holding on to every value as a GATKReportTable does, each row is
+ * formatted as it is added and spooled to a temporary file, and only the column widths and alignments are kept.
+ * The output is exactly what a GATKReportTable with the same columns and rows, not sorted, would write.
+ *
+ * Example:
+ * <pre>
+ *     final GATKReportTableWriter table = new GATKReportTableWriter("Counts", "Counts per contig");
+ *     table.addColumn("contig");
+ *     table.addColumn("count", "%d");
+ *     table.addRow("chr1", 42);
+ *     table.writeReport(out);
+ * </pre>
+ */
+public class GATKReportTableWriter {
+    private final String tableName;
+    private final String tableDescription;
+    private final List<GATKReportColumn> columnInfo = new ArrayList<GATKReportColumn>();
+
+    private File spoolFile = null;
+    private DataOutputStream spool = null;
+    private int nRows = 0;
+
+    /**
+     * Construct a new table writer with the specified name and description
+     *
+     * @param tableName        the name of the table
+     * @param tableDescription the description of the table
+     */
+    public GATKReportTableWriter(final String tableName, final String tableDescription) {
+        if ( !GATKReportTable.isValidName(tableName) )
+            throw new ReviewedGATKException("Attempted to set a GATKReportTable name of '" + tableName + "'.  GATKReportTable names must be purely alphanumeric - no spaces or special characters are allowed.");
+        if ( !GATKReportTable.isValidDescription(tableDescription) )
+            throw new ReviewedGATKException("Attempted to set a GATKReportTable description of '" + tableDescription + "'.  GATKReportTable descriptions must not contain newlines.");
+
+        this.tableName = tableName;
+        this.tableDescription = tableDescription;
+    }
+
+    /**
+     * Add an untyped column to the table
+     *
+     * @param columnName the name of the column
+     */
+    public void addColumn(final String columnName) {
+        addColumn(columnName, "");
+    }
+
+    /**
+     * Add a column to the table and the format string used to display the data.
+     *
+     * @param columnName the name of the column
+     * @param format     the format string used to display data
+     */
+    public void addColumn(final String columnName, final String format) {
+        if ( nRows > 0 )
+            throw new ReviewedGATKException("Cannot add a column to table '" + tableName + "' after rows have been added");
+        columnInfo.add(new GATKReportColumn(columnName, format));
+    }
+
+    /**
+     * Append a row to the table.  Unlike GATKReportTable.set, values are not converted to the type of their
+     * column, so they must already match the column's format.
+     *
+     * @param values the values of the row, one for each column
+     */
+    public void addRow(final Object... values) {
+        if ( values.length != columnInfo.size() )
+            throw new ReviewedGATKException("The number of arguments in addRow (" + values.length + ") must match the number of columns in the table (" + columnInfo.size() + ")" );
+
+        try {
+            if ( spool == null ) {
+                spoolFile = File.createTempFile("GATKReportTable." + tableName + ".", ".tmp");
+                spoolFile.deleteOnExit();
+                spool = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(spoolFile)));
+            }
+
+            for ( int i = 0; i < values.length; i++ ) {
+                final GATKReportColumn column = columnInfo.get(i);
+                final String formatted = column.formatValue(values[i]);
+                column.updateFormattedValue(formatted);
+                spool.writeUTF(formatted);
+            }
+        } catch (IOException e) {
+            throw new UserException.CouldNotCreateOutputFile("Could not spool the rows of table " + tableName, e);
+        }
+        nRows++;
+    }
+
+    public int getNumRows() {
+        return nRows;
+    }
+
+    public int getNumColumns() {
+        return columnInfo.size();
+    }
+
+    /**
+     * Write a report containing just this table, as GATKReport.print would
+     *
+     * @param out the PrintStream to which the report should be written
+     */
+    public void writeReport(final PrintStream out) {
+        GATKReport.printHeader(out, GATKReport.LATEST_REPORT_VERSION, 1);
+        write(out);
+    }
+
+    /**
+     * Write the table, with the rows in the order in which they were added, and discard the spooled rows.
+     *
+     * @param out the PrintStream to which the table should be written
+     */
+    public void write(final PrintStream out) {
+        GATKReportTable.writeHeader(out, tableName, tableDescription, columnInfo, nRows);
+
+        if ( spool != null ) {
+            try {
+                spool.close();
+                final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(spoolFile)));
+                try {
+                    final String[] values = new String[columnInfo.size()];
+                    for ( int row = 0; row < nRows; row++ ) {
+                        for ( int i = 0; i < values.length; i++ )
+                            values[i] = in.readUTF();
+                        GATKReportTable.writeFormattedRow(out, columnInfo, values);
+                    }
+                } finally {
+                    in.close();
+                }
+            } catch (IOException e) {
+                throw new UserException.CouldNotReadInputFile(spoolFile, "could not read the spooled rows of table " + tableName, e);
+            } finally {
+                spoolFile.delete();
+                spool = null;
+                spoolFile = null;
+                nRows = 0;
+            }
+        }
+        out.println();
+    }
+}
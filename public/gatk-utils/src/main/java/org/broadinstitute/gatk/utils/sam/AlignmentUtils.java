@@ -39,7 +39,8 @@ import org.broadinstitute.gatk.utils.genotyper.PerReadAlleleLikelihoodMap;
 import org.broadinstitute.gatk.utils.haplotype.Haplotype;
 import org.broadinstitute.gatk.utils.pileup.PileupElement;
 import org.broadinstitute.gatk.utils.recalibration.EventType;
-import org.broadinstitute.gatk.utils.smithwaterman.SWPairwiseAlignment;
+import org.broadinstitute.gatk.utils.smithwaterman.SWImplementation;
+import org.broadinstitute.gatk.utils.smithwaterman.SmithWaterman;
 
 import java.util.*;
 
@@ -88,6 +89,31 @@ public final class AlignmentUtils {
                                                        final Haplotype refHaplotype,
                                                        final int referenceStart,
                                                        final boolean isInformative) {
+        return createReadAlignedToRef(originalRead, haplotype, refHaplotype, referenceStart, isInformative, SWImplementation.ORIGINAL);
+    }
+
+    /**
+     * Aligns reads the haplotype, and then projects this alignment of read -> hap onto the reference
+     * via the alignment of haplotype (via its getCigar) method.
+     *
+     * @param originalRead the read we want to write aligned to the reference genome
+     * @param haplotype the haplotype that the read should be aligned to, before aligning to the reference
+     * @param referenceStart the start of the reference that haplotype is aligned to.  Provides global coordinate frame.
+     * @param isInformative true if the read is differentially informative for one of the haplotypes
+     * @param swImplementation the Smith-Waterman implementation used to align the read to the haplotype
+     *
+     * @throws IllegalArgumentException if {@code originalRead} is {@code null} or {@code haplotype} is {@code null} or it
+     *   does not have a Cigar or the {@code referenceStart} is invalid (less than 1).
+     *
+     * @return a GATKSAMRecord aligned to reference. Never {@code null}.
+     */
+    public static GATKSAMRecord createReadAlignedToRef(final GATKSAMRecord originalRead,
+                                                       final Haplotype haplotype,
+                                                       final Haplotype refHaplotype,
+                                                       final int referenceStart,
+                                                       final boolean isInformative,
+                                                       final SWImplementation swImplementation) {
+        if ( swImplementation == null ) throw new IllegalArgumentException("swImplementation cannot be null");
         if ( originalRead == null ) throw new IllegalArgumentException("originalRead cannot be null");
         if ( haplotype == null ) throw new IllegalArgumentException("haplotype cannot be null");
         if ( refHaplotype == null ) throw new IllegalArgumentException("ref haplotype cannot be null");
@@ -95,7 +121,7 @@ public final class AlignmentUtils {
         if ( referenceStart < 1 ) throw new IllegalArgumentException("reference start much be >= 1 but got " + referenceStart);
 
         // compute the smith-waterman alignment of read -> haplotype
-        final SWPairwiseAlignment swPairwiseAlignment = new SWPairwiseAlignment(haplotype.getBases(), originalRead.getReadBases(), CigarUtils.NEW_SW_PARAMETERS);
+        final SmithWaterman swPairwiseAlignment = swImplementation.align(haplotype.getBases(), originalRead.getReadBases(), CigarUtils.NEW_SW_PARAMETERS);
         if ( swPairwiseAlignment.getAlignmentStart2wrt1() == -1 )
             // sw can fail (reasons not clear) so if it happens just don't realign the read
             return originalRead;
@@ -32,7 +32,7 @@ import htsjdk.samtools.CigarOperator;
 import htsjdk.samtools.TextCigarCodec;
 import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
 import org.broadinstitute.gatk.utils.smithwaterman.Parameters;
-import org.broadinstitute.gatk.utils.smithwaterman.SWPairwiseAlignment;
+import org.broadinstitute.gatk.utils.smithwaterman.SWImplementation;
 import org.broadinstitute.gatk.utils.smithwaterman.SmithWaterman;
 
 import java.util.Arrays;
@@ -182,6 +182,18 @@ public class CigarUtils {
      * @return a Cigar mapping this path to refSeq, or null if no reasonable alignment could be found
      */
     public static Cigar calculateCigar(final byte[] refSeq, final byte[] altSeq) {
+        return calculateCigar(refSeq, altSeq, SWImplementation.ORIGINAL);
+    }
+
+    /**
+     * Calculate the cigar elements for this path against the reference sequence
+     *
+     * @param refSeq the reference sequence that all of the bases in this path should align to
+     * @param swImplementation the Smith-Waterman implementation to use
+     * @return a Cigar mapping this path to refSeq, or null if no reasonable alignment could be found
+     */
+    public static Cigar calculateCigar(final byte[] refSeq, final byte[] altSeq, final SWImplementation swImplementation) {
+        if ( swImplementation == null ) throw new IllegalArgumentException("swImplementation cannot be null");
         if ( altSeq.length == 0 ) {
             // horrible edge case from the unit tests, where this path has no bases
             return new Cigar(Arrays.asList(new CigarElement(refSeq.length, CigarOperator.D)));
@@ -191,7 +203,7 @@ public class CigarUtils {
 
         final String paddedRef = SW_PAD + new String(refSeq) + SW_PAD;
         final String paddedPath = SW_PAD + new String(altSeq) + SW_PAD;
-        final SmithWaterman alignment = new SWPairwiseAlignment( paddedRef.getBytes(), paddedPath.getBytes(), NEW_SW_PARAMETERS);
+        final SmithWaterman alignment = swImplementation.align(paddedRef.getBytes(), paddedPath.getBytes(), NEW_SW_PARAMETERS);
 
         if ( isSWFailure(alignment) ) {
             return null;
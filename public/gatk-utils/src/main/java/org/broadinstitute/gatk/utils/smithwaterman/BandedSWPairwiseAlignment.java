@@ -0,0 +1,87 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.smithwaterman;
+
+/**
+ * Pairwise discrete smith-waterman alignment restricted to a band around the diagonals of the scoring matrix
+ *
+ * Only the cells whose diagonal lies within {@code bandWidth} of the diagonal starting at the top-left corner or of the
+ * diagonal ending at the bottom-right corner are computed; all other cells are treated as unreachable.  The work done
+ * is therefore proportional to (reference length) x (band width) rather than to the product of the sequence lengths.
+ *
+ * The resulting alignment is identical to the one of {@link SWPairwiseAlignment} as long as the best path stays
+ * within the band, which is always the case when the net indel length between the two sequences is smaller than
+ * the band width (e.g. haplotypes vs. the reference of an active region).
+ *
+ * ************************************************************************
+ * ****                    IMPORTANT NOTE:                             ****
+ * ****  This class assumes that all bytes come from UPPERCASED chars! ****
+ * ************************************************************************
+ */
+public final class BandedSWPairwiseAlignment extends FastSWPairwiseAlignment {
+
+    /**
+     * The band width used when none is provided
+     */
+    public final static int DEFAULT_BAND_WIDTH = 64;
+
+    /**
+     * Create a new banded SW pairwise aligner
+     *
+     * After creating the object the two sequences are aligned with an internal call to align(seq1, seq2)
+     *
+     * @param reference the reference sequence we want to align
+     * @param alternate the alternate sequence we want to align
+     * @param parameters the SW parameters to use
+     * @param strategy   the overhang strategy to use
+     * @param bandWidth  the number of off-diagonals to compute on each side of the band, must be >= 0
+     */
+    public BandedSWPairwiseAlignment(final byte[] reference, final byte[] alternate, final Parameters parameters,
+                                     final OVERHANG_STRATEGY strategy, final int bandWidth) {
+        super(reference, alternate, parameters, strategy, checkBandWidth(bandWidth));
+    }
+
+    /**
+     * @see #BandedSWPairwiseAlignment(byte[], byte[], Parameters, OVERHANG_STRATEGY, int) with the default band width
+     */
+    public BandedSWPairwiseAlignment(final byte[] reference, final byte[] alternate, final Parameters parameters,
+                                     final OVERHANG_STRATEGY strategy) {
+        this(reference, alternate, parameters, strategy, DEFAULT_BAND_WIDTH);
+    }
+
+    /**
+     * @see #BandedSWPairwiseAlignment(byte[], byte[], Parameters, OVERHANG_STRATEGY, int) with soft-clipped overhangs
+     * and the default band width
+     */
+    public BandedSWPairwiseAlignment(final byte[] reference, final byte[] alternate, final Parameters parameters) {
+        this(reference, alternate, parameters, OVERHANG_STRATEGY.SOFTCLIP);
+    }
+
+    private static int checkBandWidth(final int bandWidth) {
+        if ( bandWidth < 0 ) throw new IllegalArgumentException("bandWidth must be >= 0 but got " + bandWidth);
+        return bandWidth;
+    }
+}
@@ -0,0 +1,409 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+*
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+*
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+*
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.smithwaterman;
+
+import htsjdk.samtools.Cigar;
+import htsjdk.samtools.CigarElement;
+import org.broadinstitute.gatk.utils.sam.AlignmentUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Pairwise discrete smith-waterman alignment that produces exactly the same results as {@link SWPairwiseAlignment}
+ * without allocating the two full n x m matrices on every call.
+ *
+ * The scoring recurrence is computed row by row (one row = one reference base), striping the alternate sequence
+ * across a pair of rolling score rows.  Only the last column and the bottom row of the score matrix are needed to
+ * choose where the traceback starts, so those are the only score cells that are kept around.  The backtrack matrix
+ * is stored in a single flat array.  All of these buffers belong to the calling thread and are reused across
+ * alignments, so in steady state an alignment allocates nothing but its resulting cigar.
+ *
+ * Subclasses may restrict the computation to a diagonal band of the matrix (see {@link BandedSWPairwiseAlignment}).
+ *
+ * ************************************************************************
+ * ****                    IMPORTANT NOTE:                             ****
+ * ****  This class assumes that all bytes come from UPPERCASED chars! ****
+ * ************************************************************************
+ */
+public class FastSWPairwiseAlignment extends SWPairwiseAlignment {
+
+    /**
+     * Value of a cell that cannot be reached by any alignment (i.e. outside of the band)
+     */
+    protected final static int LOW_INIT_VALUE = Integer.MIN_VALUE / 2;
+
+    /**
+     * Backtrack buffers bigger than this (in cells) are not kept around after the alignment is done
+     */
+    private final static int MAX_CACHED_BACKTRACK_SIZE = 1 << 24;
+
+    /**
+     * Per-thread reusable buffers
+     */
+    private final static ThreadLocal<Buffers> BUFFERS = new ThreadLocal<Buffers>() {
+        @Override
+        protected Buffers initialValue() {
+            return new Buffers();
+        }
+    };
+
+    /**
+     * The width of the band around the diagonal(s) we compute, or -1 to compute the whole matrix
+     */
+    private final int bandWidth;
+
+    /**
+     * Create a new fast SW pairwise aligner
+     *
+     * After creating the object the two sequences are aligned with an internal call to align(seq1, seq2)
+     *
+     * @param reference the reference sequence we want to align
+     * @param alternate the alternate sequence we want to align
+     * @param parameters the SW parameters to use
+     */
+    public FastSWPairwiseAlignment(final byte[] reference, final byte[] alternate, final Parameters parameters) {
+        this(reference, alternate, parameters, OVERHANG_STRATEGY.SOFTCLIP);
+    }
+
+    /**
+     * Create a new fast SW pairwise aligner
+     *
+     * After creating the object the two sequences are aligned with an internal call to align(seq1, seq2)
+     *
+     * @param reference the reference sequence we want to align
+     * @param alternate the alternate sequence we want to align
+     * @param parameters the SW parameters to use
+     * @param strategy   the overhang strategy to use
+     */
+    public FastSWPairwiseAlignment(final byte[] reference, final byte[] alternate, final Parameters parameters, final OVERHANG_STRATEGY strategy) {
+        this(reference, alternate, parameters, strategy, -1);
+    }
+
+    /**
+     * @see #FastSWPairwiseAlignment(byte[], byte[], Parameters) with original default parameters
+     */
+    public FastSWPairwiseAlignment(final byte[] reference, final byte[] alternate) {
+        this(reference, alternate, SWParameterSet.ORIGINAL_DEFAULT.parameters);
+    }
+
+    /**
+     * Create a new SW pairwise aligner that only computes the cells within {@code bandWidth} of the diagonals
+     *
+     * @param reference the reference sequence we want to align
+     * @param alternate the alternate sequence we want to align
+     * @param parameters the SW parameters to use
+     * @param strategy   the overhang strategy to use
+     * @param bandWidth  the width of the band, or -1 to compute the whole matrix
+     */
+    protected FastSWPairwiseAlignment(final byte[] reference, final byte[] alternate, final Parameters parameters,
+                                      final OVERHANG_STRATEGY strategy, final int bandWidth) {
+        super(parameters);
+        if ( bandWidth < -1 ) throw new IllegalArgumentException("bandWidth must be >= 0 or -1 but got " + bandWidth);
+        if ( strategy == null ) throw new IllegalArgumentException("strategy cannot be null");
+        this.bandWidth = bandWidth;
+        overhang_strategy = strategy;
+        align(reference, alternate);
+    }
+
+    /**
+     * Aligns the alternate sequence to the reference sequence
+     *
+     * @param reference  ref sequence
+     * @param alternate  alt sequence
+     */
+    @Override
+    protected void align(final byte[] reference, final byte[] alternate) {
+        if ( reference == null || reference.length == 0 || alternate == null || alternate.length == 0 )
+            throw new IllegalArgumentException("Non-null, non-empty sequences are required for the Smith-Waterman calculation");
+
+        final long startNanos = System.nanoTime();
+        final int nrow = reference.length + 1;
+        final int ncol = alternate.length + 1;
+
+        // the band covers both the diagonal starting at the top-left corner and the one ending at the bottom-right corner
+        final int lowDiagonal, highDiagonal;
+        if ( bandWidth < 0 ) {
+            lowDiagonal = -nrow;
+            highDiagonal = ncol;
+        } else {
+            lowDiagonal = Math.min(0, ncol - nrow) - bandWidth;
+            highDiagonal = Math.max(0, ncol - nrow) + bandWidth;
+        }
+
+        final Buffers buffers = BUFFERS.get();
+        buffers.ensureCapacity(nrow, ncol);
+        try {
+            calculateScores(reference, alternate, nrow, ncol, lowDiagonal, highDiagonal, buffers);
+            alignmentResult = calculateCigar(nrow, ncol, buffers);
+        } finally {
+            buffers.releaseIfTooLarge();
+        }
+        alignTime.recordSince(startNanos);
+        alignMatrixCells.add((long)nrow * ncol);
+    }
+
+    /**
+     * Fills in the backtrack matrix, the last column and the bottom row of the scoring matrix
+     *
+     * This is exactly the recurrence of {@link SWPairwiseAlignment#calculateMatrix}, including its tie breaking rules,
+     * applied to rolling rows rather than to a full matrix.  Cells outside of [lowDiagonal, highDiagonal] are treated
+     * as unreachable.
+     */
+    private void calculateScores(final byte[] reference, final byte[] alternate, final int nrow, final int ncol,
+                                 final int lowDiagonal, final int highDiagonal, final Buffers buffers) {
+        final int matrixMinCutoff = cutoff ? 0 : (int) -1e8;
+        final int wMatch = parameters.w_match;
+        final int wMismatch = parameters.w_mismatch;
+        final int wOpen = parameters.w_open;
+        final int wExtend = parameters.w_extend;
+        final boolean initializeEdges = overhang_strategy == OVERHANG_STRATEGY.INDEL || overhang_strategy == OVERHANG_STRATEGY.LEADING_INDEL;
+
+        int[] lastRow = buffers.rowA;
+        int[] curRow = buffers.rowB;
+        final int[] bestGapV = buffers.bestGapV;
+        final int[] gapSizeV = buffers.gapSizeV;
+        final int[] lastColumn = buffers.lastColumn;
+        final int[] btrack = buffers.btrack;
+
+        Arrays.fill(bestGapV, 0, ncol, LOW_INIT_VALUE);
+        Arrays.fill(gapSizeV, 0, ncol, 0);
+
+        // initialize the first row
+        curRow[0] = 0;
+        for ( int j = 1; j < ncol; j++ ) {
+            if ( j > highDiagonal ) {
+                curRow[j] = LOW_INIT_VALUE;
+            } else {
+                curRow[j] = initializeEdges ? wOpen + (j - 1) * wExtend : 0;
+            }
+        }
+        lastColumn[0] = curRow[ncol - 1];
+
+        for ( int i = 1; i < nrow; i++ ) {
+            final byte refBase = reference[i - 1];
+            final int[] tmp = lastRow;
+            lastRow = curRow;
+            curRow = tmp;
+
+            final int jStart = Math.max(1, i + lowDiagonal);
+            final int jEnd = Math.min(ncol - 1, i + highDiagonal);
+
+            // the first column, and the cells that bound the band on this row
+            curRow[0] = initializeEdges ? wOpen + (i - 1) * wExtend : 0;
+            if ( jStart > 1 ) curRow[jStart - 1] = LOW_INIT_VALUE;
+            if ( jEnd < ncol - 1 ) curRow[jEnd + 1] = LOW_INIT_VALUE;
+
+            int bestGapH = LOW_INIT_VALUE;
+            int gapSizeH = 0;
+            final int rowOffset = i * ncol;
+
+            for ( int j = jStart; j <= jEnd; j++ ) {
+                final int stepDiag = lastRow[j - 1] + (refBase == alternate[j - 1] ? wMatch : wMismatch);
+
+                int prevGap = lastRow[j] + wOpen;
+                bestGapV[j] += wExtend;
+                if ( prevGap > bestGapV[j] ) {
+                    bestGapV[j] = prevGap;
+                    gapSizeV[j] = 1;
+                } else {
+                    gapSizeV[j]++;
+                }
+                final int stepDown = bestGapV[j];
+
+                prevGap = curRow[j - 1] + wOpen;
+                bestGapH += wExtend;
+                if ( prevGap > bestGapH ) {
+                    bestGapH = prevGap;
+                    gapSizeH = 1;
+                } else {
+                    gapSizeH++;
+                }
+                final int stepRight = bestGapH;
+
+                //priority here will be step diagonal, step right, step down
+                if ( stepDiag >= stepDown && stepDiag >= stepRight ) {
+                    curRow[j] = Math.max(matrixMinCutoff, stepDiag);
+                    btrack[rowOffset + j] = 0;
+                } else if ( stepRight >= stepDown ) {
+                    curRow[j] = Math.max(matrixMinCutoff, stepRight);
+                    btrack[rowOffset + j] = -gapSizeH; // negative = horizontal
+                } else {
+                    curRow[j] = Math.max(matrixMinCutoff, stepDown);
+                    btrack[rowOffset + j] = gapSizeV[j]; // positive = vertical
+                }
+            }
+
+            lastColumn[i] = jEnd == ncol - 1 ? curRow[ncol - 1] : LOW_INIT_VALUE;
+        }
+
+        // the bottom row is scanned in full by calculateCigar, so it can't keep stale values to the left of the band
+        final int bottomRowStart = Math.max(1, nrow - 1 + lowDiagonal);
+        if ( bottomRowStart > 1 ) Arrays.fill(curRow, 1, bottomRowStart - 1, LOW_INIT_VALUE);
+
+        // keep the bottom row where calculateCigar can find it
+        if ( curRow != buffers.rowB ) {
+            buffers.rowA = lastRow;
+            buffers.rowB = curRow;
+        }
+    }
+
+    /**
+     * Calculates the CIGAR for the alignment from the flat back track matrix
+     *
+     * Mirrors {@link SWPairwiseAlignment#calculateCigar(int[][], int[][], OVERHANG_STRATEGY)}
+     *
+     * @return non-null SWPairwiseAlignmentResult object
+     */
+    private SWPairwiseAlignmentResult calculateCigar(final int nrow, final int ncol, final Buffers buffers) {
+        final int[] lastColumn = buffers.lastColumn;
+        final int[] bottomRow = buffers.rowB;
+        final int[] btrack = buffers.btrack;
+
+        int p1 = 0, p2 = 0;
+
+        final int refLength = nrow - 1;
+        final int altLength = ncol - 1;
+
+        int maxscore = Integer.MIN_VALUE; // sw scores are allowed to be negative
+        int segment_length = 0; // length of the segment (continuous matches, insertions or deletions)
+
+        if ( overhang_strategy == OVERHANG_STRATEGY.INDEL ) {
+            p1 = refLength;
+            p2 = altLength;
+        } else {
+            p2 = altLength;
+
+            for ( int i = 1; i < nrow; i++ ) {
+                final int curScore = lastColumn[i];
+                if ( curScore >= maxscore ) {
+                    p1 = i;
+                    maxscore = curScore;
+                }
+            }
+            if ( overhang_strategy != OVERHANG_STRATEGY.LEADING_INDEL ) {
+                for ( int j = 1; j < ncol; j++ ) {
+                    final int curScore = bottomRow[j];
+                    if ( curScore > maxscore ||
+                            (curScore == maxscore && Math.abs(refLength - j) < Math.abs(p1 - p2)) ) {
+                        p1 = refLength;
+                        p2 = j;
+                        maxscore = curScore;
+                        segment_length = altLength - j;
+                    }
+                }
+            }
+        }
+
+        final List<CigarElement> lce = new ArrayList<CigarElement>(5);
+        if ( segment_length > 0 && overhang_strategy == OVERHANG_STRATEGY.SOFTCLIP ) {
+            lce.add(makeElement(State.CLIP, segment_length));
+            segment_length = 0;
+        }
+
+        State state = State.MATCH;
+        do {
+            final int btr = btrack[p1 * ncol + p2];
+            final State new_state;
+            int step_length = 1;
+            if ( btr > 0 ) {
+                new_state = State.DELETION;
+                step_length = btr;
+                p1 -= step_length;
+            } else if ( btr < 0 ) {
+                new_state = State.INSERTION;
+                step_length = -btr;
+                p2 -= step_length;
+            } else {
+                new_state = State.MATCH;
+                p1--;
+                p2--;
+            }
+
+            if ( new_state == state ) segment_length += step_length;
+            else {
+                lce.add(makeElement(state, segment_length));
+                segment_length = step_length;
+                state = new_state;
+            }
+        } while ( p1 > 0 && p2 > 0 );
+
+        final int alignment_offset;
+        if ( overhang_strategy == OVERHANG_STRATEGY.SOFTCLIP ) {
+            lce.add(makeElement(state, segment_length));
+            if ( p2 > 0 ) lce.add(makeElement(State.CLIP, p2));
+            alignment_offset = p1;
+        } else if ( overhang_strategy == OVERHANG_STRATEGY.IGNORE ) {
+            lce.add(makeElement(state, segment_length + p2));
+            alignment_offset = p1 - p2;
+        } else {  // overhang_strategy == OVERHANG_STRATEGY.INDEL || overhang_strategy == OVERHANG_STRATEGY.LEADING_INDEL
+            lce.add(makeElement(state, segment_length));
+            if ( p1 > 0 )
+                lce.add(makeElement(State.DELETION, p1));
+            else if ( p2 > 0 )
+                lce.add(makeElement(State.INSERTION, p2));
+            alignment_offset = 0;
+        }
+
+        Collections.reverse(lce);
+        return new SWPairwiseAlignmentResult(AlignmentUtils.consolidateCigar(new Cigar(lce)), alignment_offset);
+    }
+
+    /**
+     * Reusable, grow-only working storage of a single thread
+     */
+    private final static class Buffers {
+        private int[] rowA = new int[0];
+        private int[] rowB = new int[0];
+        private int[] bestGapV = new int[0];
+        private int[] gapSizeV = new int[0];
+        private int[] lastColumn = new int[0];
+        private int[] btrack = new int[0];
+
+        private void ensureCapacity(final int nrow, final int ncol) {
+            if ( rowA.length < ncol ) {
+                rowA = new int[ncol];
+                rowB = new int[ncol];
+                bestGapV = new int[ncol];
+                gapSizeV = new int[ncol];
+            }
+            if ( lastColumn.length < nrow )
+                lastColumn = new int[nrow];
+            final long cells = (long) nrow * ncol;
+            if ( cells > Integer.MAX_VALUE )
+                throw new IllegalArgumentException("Sequences are too long for the Smith-Waterman calculation: " + nrow + " x " + ncol);
+            if ( btrack.length < cells )
+                btrack = new int[(int) cells];
+        }
+
+        private void releaseIfTooLarge() {
+            if ( btrack.length > MAX_CACHED_BACKTRACK_SIZE )
+                btrack = new int[0];
+        }
+    }
+}
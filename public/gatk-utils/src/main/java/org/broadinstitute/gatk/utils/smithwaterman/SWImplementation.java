@@ -0,0 +1,71 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.smithwaterman;
+
+/**
+ * The available implementations of the {@link SmithWaterman} interface
+ *
+ * All of them produce the same alignments; {@link #BANDED} does so only as long as the best alignment lies within
+ * {@link BandedSWPairwiseAlignment#DEFAULT_BAND_WIDTH} off-diagonals of the corners of the scoring matrix.
+ */
+public enum SWImplementation {
+    /* The original implementation, allocating a full scoring and backtrack matrix for every alignment */
+    ORIGINAL,
+    /* Row-by-row implementation reusing per-thread buffers */
+    FAST,
+    /* Like FAST, but only computing a band around the diagonals of the scoring matrix */
+    BANDED;
+
+    /**
+     * Aligns the alternate sequence to the reference sequence with this implementation
+     *
+     * @param reference  the reference sequence we want to align
+     * @param alternate  the alternate sequence we want to align
+     * @param parameters the SW parameters to use
+     * @param strategy   the overhang strategy to use
+     * @return never {@code null}
+     */
+    public SmithWaterman align(final byte[] reference, final byte[] alternate, final Parameters parameters,
+                               final SWPairwiseAlignment.OVERHANG_STRATEGY strategy) {
+        switch ( this ) {
+            case ORIGINAL:
+                return new SWPairwiseAlignment(reference, alternate, parameters, strategy);
+            case FAST:
+                return new FastSWPairwiseAlignment(reference, alternate, parameters, strategy);
+            case BANDED:
+                return new BandedSWPairwiseAlignment(reference, alternate, parameters, strategy);
+            default:
+                throw new IllegalStateException("Unexpected Smith-Waterman implementation " + this);
+        }
+    }
+
+    /**
+     * @see #align(byte[], byte[], Parameters, SWPairwiseAlignment.OVERHANG_STRATEGY) with soft-clipped overhangs
+     */
+    public SmithWaterman align(final byte[] reference, final byte[] alternate, final Parameters parameters) {
+        return align(reference, alternate, parameters, SWPairwiseAlignment.OVERHANG_STRATEGY.SOFTCLIP);
+    }
+}
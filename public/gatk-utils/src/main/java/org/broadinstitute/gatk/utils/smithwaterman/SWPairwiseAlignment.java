@@ -29,6 +29,10 @@ import htsjdk.samtools.Cigar;
 import htsjdk.samtools.CigarElement;
 import htsjdk.samtools.CigarOperator;
 import org.broadinstitute.gatk.utils.exceptions.GATKException;
+import org.broadinstitute.gatk.utils.instrumentation.Counter;
+import org.broadinstitute.gatk.utils.instrumentation.LatencyHistogram;
+import org.broadinstitute.gatk.utils.instrumentation.MetricsRegistry;
+import org.broadinstitute.gatk.utils.instrumentation.Subsystem;
 import org.broadinstitute.gatk.utils.sam.AlignmentUtils;
 
 import java.util.ArrayList;
@@ -50,6 +54,10 @@ import java.util.List;
  */
 public class SWPairwiseAlignment implements SmithWaterman {
 
+    // hot-path metrics shared by every implementation of align
+    protected static final LatencyHistogram alignTime = MetricsRegistry.getInstance().histogram(Subsystem.SMITH_WATERMAN, "align");
+    protected static final Counter alignMatrixCells = MetricsRegistry.getInstance().counter(Subsystem.SMITH_WATERMAN, "matrixCells");
+
     protected SWPairwiseAlignmentResult alignmentResult;
 
     protected final Parameters parameters;
@@ -147,6 +155,22 @@ public class SWPairwiseAlignment implements SmithWaterman {
         align(seq1, seq2);
     }
 
+    /**
+     * Create a new SW pairwise aligner
+     *
+     * After creating the object the two sequences are aligned with an internal call to align(seq1, seq2)
+     *
+     * @param seq1 the first sequence we want to align
+     * @param seq2 the second sequence we want to align
+     * @param parameters the SW parameters to use
+     * @param strategy   the overhang strategy to use
+     */
+    public SWPairwiseAlignment(final byte[] seq1, final byte[] seq2, final Parameters parameters, final OVERHANG_STRATEGY strategy) {
+        this(parameters);
+        overhang_strategy = strategy;
+        align(seq1, seq2);
+    }
+
     /**
      * Create a new SW pairwise aligner, without actually doing any alignment yet
      *
@@ -189,6 +213,7 @@ public class SWPairwiseAlignment implements SmithWaterman {
         if ( reference == null || reference.length == 0 || alternate == null || alternate.length == 0 )
             throw new IllegalArgumentException("Non-null, non-empty sequences are required for the Smith-Waterman calculation");
 
+        final long startNanos = System.nanoTime();
         final int n = reference.length+1;
         final int m = alternate.length+1;
         int[][] sw = new int[n][m];
@@ -197,6 +222,8 @@ public class SWPairwiseAlignment implements SmithWaterman {
 
         calculateMatrix(reference, alternate, sw, btrack);
         alignmentResult = calculateCigar(sw, btrack, overhang_strategy); // length of the segment (continuous matches, insertions or deletions)
+        alignTime.recordSince(startNanos);
+        alignMatrixCells.add((long)n * m);
     }
 
     /**
@@ -1480,6 +1480,31 @@ public class GATKVariantContextUtils {
         return loc == null || loc.getStart() == vc.getStart();
     }
 
+    /**
+     * Forces the evaluation of everything a variant context computes lazily (genotype decoding, sample indexes,
+     * maximum ploidy, type and genotype counts) so that it can safely be read from several threads afterwards.
+     *
+     * <p>
+     *     A record that spans several loci, such as a gVCF reference block, is handed to every map call that overlaps it,
+     *     and those calls may run concurrently with -nct. The lazy initialization done by htsjdk is not thread-safe,
+     *     so every thread must go through this method before reading such a record.
+     * </p>
+     *
+     * @param vc the variant context to prepare.
+     * @return {@code vc} itself.
+     */
+    public static VariantContext prepareForConcurrentAccess(final VariantContext vc) {
+        synchronized (vc) {
+            final GenotypesContext genotypes = vc.getGenotypes();
+            genotypes.getMaxPloidy(DEFAULT_PLOIDY);
+            genotypes.getSampleNames();
+            genotypes.getSampleNamesOrderedByName();
+            vc.getType();
+            vc.getNoCallCount();
+        }
+        return vc;
+    }
+
     static private AlleleMapper resolveIncompatibleAlleles(final Allele refAllele, final VariantContext vc, final LinkedHashSet<Allele> allAlleles) {
         if ( refAllele.equals(vc.getReference()) )
             return new AlleleMapper(vc);
@@ -141,6 +141,73 @@ public class MWUnitTest extends BaseTest {
         Assert.assertEquals(test.getZ(), Z, DELTA_PRECISION, name);
     }
 
+    @DataProvider(name="exactPTestData")
+    public Object[][] exactPDataProvider() {
+        final java.util.Random random = new java.util.Random(12345);
+        final java.util.List<Object[]> tests = new ArrayList<>();
+        for (int n1 = 1; n1 < 8; n1++) {
+            for (int n2 = 1; n2 < 8; n2 += 2) {
+                final double[] series1 = new double[n1];
+                final double[] series2 = new double[n2];
+                for (int i = 0; i < n1; i++) series1[i] = random.nextInt(6);
+                for (int i = 0; i < n2; i++) series2[i] = random.nextInt(6);
+                tests.add(new Object[] {series1, series2});
+            }
+        }
+        return tests.toArray(new Object[][]{});
+    }
+
+    /**
+     * Checks the exact p-value against a brute-force enumeration of every assignment of the pooled ranks to group 1
+     */
+    @Test(dataProvider = "exactPTestData")
+    public void testExactPMatchesEnumeration(final double[] series1, final double[] series2) {
+        final int n1 = series1.length;
+        final double[] pooled = new double[n1 + series2.length];
+        System.arraycopy(series1, 0, pooled, 0, n1);
+        System.arraycopy(series2, 0, pooled, n1, series2.length);
+        Arrays.sort(pooled);
+        final double[] ranks = new double[pooled.length];
+        for (int i = 0; i < pooled.length; ) {
+            int j = i;
+            while (j < pooled.length && pooled[j] == pooled[i]) j++;
+            for (int k = i; k < j; k++) ranks[k] = (i + 1 + j) / 2.0;
+            i = j;
+        }
+
+        final MannWhitneyU.Result result = rst.test(series1.clone(), series2.clone(), MannWhitneyU.TestType.FIRST_DOMINATES);
+        double smaller = 0, total = 0;
+        for (int mask = 0; mask < (1 << pooled.length); mask++) {
+            if (Integer.bitCount(mask) != n1) continue;
+            double rankSum = 0;
+            for (int i = 0; i < pooled.length; i++)
+                if ((mask & (1 << i)) != 0) rankSum += ranks[i];
+            final double u = rankSum - n1 * (n1 + 1) / 2.0;
+            if (u < result.getU()) smaller += 1;
+            else if (u == result.getU()) smaller += 0.5;
+            total++;
+        }
+        Assert.assertEquals(result.getP(), smaller / total, DELTA_PRECISION);
+    }
+
+    @Test
+    public void testBuffersReusedAcrossTests() {
+        final MannWhitneyU reused = new MannWhitneyU();
+        final double[] large1 = {13,14,15,15,16,18,20,22,25,24,25,26,27,28,22,23,19,30,28,22,17};
+        final double[] large2 = {16,20,20,21,21,21,21,22,23,27,26,28,29,32,31,22,21,19,16,24,29};
+        final double[] small1 = {13,14,15,15,16};
+        final double[] small2 = {16,20,20,21,21};
+        final MannWhitneyU.Result expectedLarge = new MannWhitneyU().test(large1.clone(), large2.clone(), MannWhitneyU.TestType.FIRST_DOMINATES);
+        final MannWhitneyU.Result expectedSmall = new MannWhitneyU().test(small1.clone(), small2.clone(), MannWhitneyU.TestType.FIRST_DOMINATES);
+        for (int i = 0; i < 3; i++) {
+            final MannWhitneyU.Result large = reused.test(large1.clone(), large2.clone(), MannWhitneyU.TestType.FIRST_DOMINATES);
+            final MannWhitneyU.Result small = reused.test(small1.clone(), small2.clone(), MannWhitneyU.TestType.FIRST_DOMINATES);
+            Assert.assertEquals(large.getZ(), expectedLarge.getZ());
+            Assert.assertEquals(small.getZ(), expectedSmall.getZ());
+            Assert.assertEquals(small.getP(), expectedSmall.getP());
+        }
+    }
+
     @Test
     public void testTooManyTies(){
         ArrayList<Integer> listOfNumberOfTies = new ArrayList<>(Arrays.asList(26,3,6,4,13,18,29,36,60,58,87,63,98,125,158,185,193,171,17592,115,100,141,216,298,451,719,1060,1909,3210,5167,7135,10125,11035,3541,732,9));
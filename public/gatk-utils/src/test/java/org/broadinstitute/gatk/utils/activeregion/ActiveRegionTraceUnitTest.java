@@ -0,0 +1,107 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.activeregion;
+
+import htsjdk.samtools.SAMFileHeader;
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.broadinstitute.gatk.utils.GenomeLocParser;
+import org.broadinstitute.gatk.utils.sam.ArtificialSAMUtils;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+public class ActiveRegionTraceUnitTest extends BaseTest {
+
+    private static void spin(final long nanos) {
+        final long start = System.nanoTime();
+        while ( System.nanoTime() - start < nanos )
+            ;
+    }
+
+    @Test
+    public void testTrace() {
+        final SAMFileHeader header = ArtificialSAMUtils.createArtificialSamHeader(1, 1, 10000);
+        final GenomeLocParser genomeLocParser = new GenomeLocParser(header.getSequenceDictionary());
+        final ActiveRegion region = new ActiveRegion(genomeLocParser.createGenomeLoc("chr1", 101, 200), null, true, genomeLocParser, 50);
+        region.add(ArtificialSAMUtils.createArtificialRead(header, "read", 0, 120, 50));
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ActiveRegionTrace trace = new ActiveRegionTrace(new PrintStream(bytes, true));
+
+        // phases are ignored when no region is traced
+        ActiveRegionTrace.enterPhase(ActiveRegionTrace.Phase.ASSEMBLY);
+        ActiveRegionTrace.exitPhase();
+
+        trace.startRegion(region);
+        ActiveRegionTrace.enterPhase(ActiveRegionTrace.Phase.ASSEMBLY);
+        ActiveRegionTrace.addKmerSize(10);
+        ActiveRegionTrace.addKmerSize(25);
+        spin(2000000);
+        ActiveRegionTrace.exitPhase();
+        ActiveRegionTrace.setHaplotypeCount(3);
+        ActiveRegionTrace.enterPhase(ActiveRegionTrace.Phase.GENOTYPING);
+        spin(1000000);
+        ActiveRegionTrace.enterPhase(ActiveRegionTrace.Phase.ANNOTATION);
+        spin(5000000);
+        ActiveRegionTrace.exitPhase();
+        ActiveRegionTrace.exitPhase();
+        trace.endRegion();
+
+        final String[] lines = bytes.toString().split("\n");
+        Assert.assertEquals(lines.length, 2);
+        final String[] columns = lines[0].split("\t");
+        final String[] values = lines[1].split("\t");
+        Assert.assertEquals(values.length, columns.length);
+        Assert.assertEquals(values[0], "chr1");
+        Assert.assertEquals(values[1], "101");
+        Assert.assertEquals(values[2], "200");
+        Assert.assertEquals(values[3], "51");
+        Assert.assertEquals(values[4], "250");
+        Assert.assertEquals(values[5], "true");
+        Assert.assertEquals(values[6], "1");
+        Assert.assertEquals(values[7], "3");
+        Assert.assertEquals(values[8], "10,25");
+
+        final long total = Long.parseLong(values[9]);
+        final long assembly = Long.parseLong(values[10]);
+        final long pairHMM = Long.parseLong(values[11]);
+        final long genotyping = Long.parseLong(values[12]);
+        final long annotation = Long.parseLong(values[13]);
+        Assert.assertTrue(assembly >= 2000000);
+        Assert.assertEquals(pairHMM, 0);
+        // the annotation nested in the genotyping is not counted as genotyping time
+        Assert.assertTrue(genotyping >= 1000000 && genotyping < annotation, "genotyping " + genotyping + " annotation " + annotation);
+        Assert.assertTrue(annotation >= 5000000);
+        Assert.assertTrue(total >= assembly + genotyping + annotation);
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testEndWithoutStart() {
+        new ActiveRegionTrace(new PrintStream(new ByteArrayOutputStream())).endRegion();
+    }
+}
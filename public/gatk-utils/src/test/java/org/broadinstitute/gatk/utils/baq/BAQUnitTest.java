@@ -39,6 +39,7 @@ import org.broadinstitute.gatk.utils.Utils;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.PrintStream;
+import java.util.Arrays;
 import java.util.List;
 import java.util.ArrayList;
 
@@ -222,6 +223,63 @@ public class BAQUnitTest extends BaseTest {
         Assert.assertTrue(read.getAttribute("BQ") == null);
     }
 
+    @Test(enabled = true)
+    public void testBAQBuffersAreClearedBetweenReads() {
+        final BAQ baqHMM = new BAQ(1e-3, 0.1, 7, (byte)4, false);
+        final List<Object[]> tests = Arrays.asList(createData1());
+
+        // run every test twice, in opposite orders, so that each calculation follows one of a different size
+        final List<BAQ.BAQCalculationResult> forward = new ArrayList<BAQ.BAQCalculationResult>();
+        for ( final Object[] test : tests ) {
+            final BAQTest baqTest = (BAQTest)test[0];
+            if ( baqTest.refBases != null ) forward.add(baqHMM.calcBAQFromHMM(baqTest.createRead(), baqTest.refBases.getBytes(), baqTest.refOffset));
+        }
+        int i = forward.size();
+        for ( int j = tests.size() - 1; j >= 0; j-- ) {
+            final BAQTest baqTest = (BAQTest)tests.get(j)[0];
+            if ( baqTest.refBases != null )
+                Assert.assertEquals(baqHMM.calcBAQFromHMM(baqTest.createRead(), baqTest.refBases.getBytes(), baqTest.refOffset).bq, forward.get(--i).bq);
+        }
+    }
+
+    @Test(enabled = true)
+    public void testBAQWithSharedReferenceWindow() throws FileNotFoundException {
+        final ReferenceSequenceFile exampleFasta = new IndexedFastaSequenceFile(new File(exampleFASTA));
+        final SAMFileHeader exampleHeader = ArtificialSAMUtils.createArtificialSamHeader(exampleFasta.getSequenceDictionary());
+        final byte[] contigBases = exampleFasta.getSequence("chr1").getBases();
+
+        final List<SAMRecord> reads = new ArrayList<SAMRecord>();
+        for ( int start = 10; start < 5000; start += 37 ) {
+            final byte[] bases = Arrays.copyOfRange(contigBases, start - 1, start + 49);
+            bases[25] = bases[25] == 'A' ? (byte)'C' : (byte)'A';
+            bases[26] = bases[27]; // create some alignment uncertainty
+            final byte[] quals = new byte[bases.length];
+            Arrays.fill(quals, (byte)30);
+            reads.add(ArtificialSAMUtils.createArtificialRead(exampleHeader, "read" + start, 0, start, bases, quals, "50M"));
+        }
+
+        final BAQ baqHMM = new BAQ(1e-3, 0.1, 7, (byte)4, false);
+        final List<byte[]> expected = new ArrayList<byte[]>();
+        for ( final SAMRecord read : reads ) {
+            // the reference of each read, fetched on its own
+            final int offset = baqHMM.getBandWidth() / 2;
+            final int start = Math.max(read.getAlignmentStart() - offset, 1);
+            final int stop = read.getAlignmentEnd() + offset;
+            final byte[] ref = Arrays.copyOfRange(contigBases, start - 1, stop);
+            expected.add(baqHMM.calcBAQFromHMM(read, ref, start - read.getAlignmentStart()).bq);
+        }
+
+        for ( int i = 0; i < reads.size(); i++ )
+            Assert.assertEquals(baqHMM.calcBAQFromHMM(reads.get(i), exampleFasta).bq, expected.get(i), "Shared window BAQ differs for " + reads.get(i).getReadName());
+
+        // the read path, with a fresh BAQ so that the window is fetched by the first read and shared by the rest
+        final BAQ readPathBAQ = new BAQ(1e-3, 0.1, 7, (byte)4, false);
+        for ( int i = 0; i < reads.size(); i++ ) {
+            readPathBAQ.baqRead(reads.get(i), exampleFasta, BAQ.CalculationMode.RECALCULATE, BAQ.QualityMode.OVERWRITE_QUALS);
+            Assert.assertEquals(reads.get(i).getBaseQualities(), expected.get(i), "Read path BAQ differs for " + reads.get(i).getReadName());
+        }
+    }
+
     public void testBAQ(BAQTest test, boolean lookupWithFasta) {
         BAQ baqHMM = new BAQ(1e-3, 0.1, 7, (byte)4, false);         // matches current samtools parameters
 
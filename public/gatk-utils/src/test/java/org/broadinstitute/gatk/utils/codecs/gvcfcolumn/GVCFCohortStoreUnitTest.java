@@ -0,0 +1,335 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.codecs.gvcfcolumn;
+
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.tribble.CloseableTribbleIterator;
+import htsjdk.variant.variantcontext.*;
+import htsjdk.variant.variantcontext.writer.VariantContextWriter;
+import htsjdk.variant.vcf.*;
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.broadinstitute.gatk.utils.GenomeLocParser;
+import org.broadinstitute.gatk.utils.exceptions.UserException;
+import org.broadinstitute.gatk.utils.io.IOUtils;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Unit tests for the gVCF cohort store, its column writer and its merged reader
+ */
+public class GVCFCohortStoreUnitTest extends BaseTest {
+    private static final Allele REF = Allele.create("A", true);
+    private static final Allele ALT = Allele.create("C");
+    private static final Allele NON_REF = Allele.create("<NON_REF>");
+
+    /** enough records for a column to span several blocks */
+    private static final int N_RECORDS = 3 * GVCFColumnFormat.MAX_RECORDS_PER_BLOCK + 17;
+
+    private static VCFHeader makeHeader(final String... samples) {
+        final Set<VCFHeaderLine> lines = new LinkedHashSet<>();
+        lines.add(new VCFContigHeaderLine("<ID=chr1,length=1000000>", VCFHeaderVersion.VCF4_2, VCFHeader.CONTIG_KEY, 0));
+        lines.add(VCFStandardHeaderLines.getInfoLine(VCFConstants.END_KEY));
+        lines.add(VCFStandardHeaderLines.getInfoLine(VCFConstants.DEPTH_KEY));
+        lines.add(new VCFInfoHeaderLine("BaseQRankSum", 1, VCFHeaderLineType.Float, "rank sum"));
+        lines.add(new VCFInfoHeaderLine("DS", 0, VCFHeaderLineType.Flag, "downsampled"));
+        lines.add(VCFStandardHeaderLines.getFormatLine(VCFConstants.GENOTYPE_KEY));
+        lines.add(VCFStandardHeaderLines.getFormatLine(VCFConstants.GENOTYPE_QUALITY_KEY));
+        lines.add(VCFStandardHeaderLines.getFormatLine(VCFConstants.DEPTH_KEY));
+        lines.add(VCFStandardHeaderLines.getFormatLine(VCFConstants.GENOTYPE_ALLELE_DEPTHS));
+        lines.add(VCFStandardHeaderLines.getFormatLine(VCFConstants.GENOTYPE_PL_KEY));
+        lines.add(new VCFFormatHeaderLine("MIN_DP", 1, VCFHeaderLineType.Integer, "min dp"));
+        lines.add(new VCFFilterHeaderLine("LowQual"));
+        return new VCFHeader(lines, Arrays.asList(samples));
+    }
+
+    /**
+     * Make gVCF records every 100 bp: a variant every fifth record and 99 bp reference blocks in between
+     *
+     * @param offset added to every start, so that different samples can be made to interleave
+     */
+    private static List<VariantContext> makeRecords(final int nRecords, final int offset, final String... samples) {
+        final List<VariantContext> records = new ArrayList<>(nRecords);
+        for ( int i = 0; i < nRecords; i++ ) {
+            final int start = 1 + offset + i * 100;
+            final List<Genotype> genotypes = new ArrayList<>();
+            final VariantContextBuilder vcb = new VariantContextBuilder("test", "chr1", start, start, null);
+            if ( i % 5 == 0 ) {
+                vcb.alleles(Arrays.asList(REF, ALT, NON_REF)).log10PError(-12.3456).attribute(VCFConstants.DEPTH_KEY, 20 + i).attribute("BaseQRankSum", 0.123456);
+                if ( i % 10 == 0 ) vcb.filter("LowQual"); else vcb.passFilters();
+                if ( i % 15 == 0 ) vcb.attribute("DS", true).id("rs" + i);
+                for ( final String sample : samples )
+                    genotypes.add(new GenotypeBuilder(sample, Arrays.asList(REF, ALT)).GQ(40).DP(20 + i).AD(new int[]{10, 10 + i, 0}).PL(new int[]{300, 0, 200, 400, 250, 700}).make());
+            } else {
+                vcb.alleles(Arrays.asList(REF, NON_REF)).stop(start + 98).attribute(VCFConstants.END_KEY, start + 98);
+                for ( final String sample : samples )
+                    genotypes.add(new GenotypeBuilder(sample, i % 7 == 0 ? Arrays.asList(Allele.NO_CALL, Allele.NO_CALL) : Arrays.asList(REF, REF)).GQ(i % 99).DP(i + 3).PL(new int[]{0, i, 10 * i}).attribute("MIN_DP", i + 1).make());
+            }
+            records.add(vcb.genotypes(genotypes).make());
+        }
+        return records;
+    }
+
+    /**
+     * Add the records of several samples to a store the way CombineGVCFs does, one single-sample record at a time
+     */
+    private static void addSamples(final GVCFCohortStore store, final List<VariantContext> records, final String... samples) {
+        final VariantContextWriter writer = store.addSamples();
+        writer.writeHeader(makeHeader(samples));
+        for ( final VariantContext vc : records ) {
+            for ( final Genotype g : vc.getGenotypes() )
+                writer.add(new VariantContextBuilder(vc).genotypes(g).make());
+        }
+        writer.close();
+    }
+
+    private static List<VariantContext> toList(final CloseableTribbleIterator<VariantContext> iterator) {
+        final List<VariantContext> records = new ArrayList<>();
+        while ( iterator.hasNext() )
+            records.add(iterator.next());
+        iterator.close();
+        return records;
+    }
+
+    private static List<Integer> starts(final List<VariantContext> records) {
+        final List<Integer> starts = new ArrayList<>(records.size());
+        for ( final VariantContext vc : records )
+            starts.add(vc.getStart());
+        return starts;
+    }
+
+    private static List<VariantContext> ofSample(final List<VariantContext> records, final String sample) {
+        final List<VariantContext> ofSample = new ArrayList<>();
+        for ( final VariantContext vc : records ) {
+            if ( vc.getGenotype(0).getSampleName().equals(sample) )
+                ofSample.add(vc);
+        }
+        return ofSample;
+    }
+
+    private static void assertSameRecords(final List<VariantContext> decoded, final List<VariantContext> expected, final String sample) {
+        final VCFEncoder encoder = new VCFEncoder(makeHeader(sample), true, false);
+        Assert.assertEquals(decoded.size(), expected.size());
+        for ( int i = 0; i < expected.size(); i++ ) {
+            Assert.assertEquals(decoded.get(i).getStart(), expected.get(i).getStart());
+            Assert.assertEquals(decoded.get(i).getEnd(), expected.get(i).getEnd());
+            Assert.assertEquals(encoder.encode(decoded.get(i)), encoder.encode(new VariantContextBuilder(expected.get(i)).genotypes(expected.get(i).getGenotype(sample)).make()));
+        }
+    }
+
+    private static GVCFCohortReader open(final GVCFCohortStore store) {
+        final GVCFCohortCodec codec = new GVCFCohortCodec();
+        codec.setName("variant");
+        return new GVCFCohortReader(store.getManifest(), codec);
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        final GVCFCohortStore store = new GVCFCohortStore(IOUtils.tempDir("gvcfstore.", ""));
+        final List<VariantContext> records = makeRecords(N_RECORDS, 0, "NA12878");
+        addSamples(store, records, "NA12878");
+
+        try ( final GVCFCohortReader reader = open(store) ) {
+            final List<VariantContext> decoded = toList(reader.iterator());
+            assertSameRecords(decoded, records, "NA12878");
+
+            // INFO values come back the way the VCF codec would parse them
+            Assert.assertEquals(decoded.get(0).getSource(), "variant");
+            Assert.assertEquals(decoded.get(0).getAttribute(VCFConstants.DEPTH_KEY), "20");
+            Assert.assertEquals(decoded.get(0).getAttribute("DS"), Boolean.TRUE);
+            Assert.assertEquals(decoded.get(0).getPhredScaledQual(), 123.46, 1e-10);
+            Assert.assertTrue(decoded.get(0).isFiltered());
+            Assert.assertTrue(decoded.get(5).isNotFiltered() && decoded.get(5).filtersWereApplied());
+            Assert.assertFalse(decoded.get(1).filtersWereApplied());
+            Assert.assertTrue(decoded.get(7).getGenotype(0).isNoCall());
+
+            final VCFHeader header = (VCFHeader)reader.getHeader();
+            Assert.assertEquals(header.getGenotypeSamples(), Collections.singletonList("NA12878"));
+            Assert.assertTrue(header.hasInfoLine("BaseQRankSum"));
+            Assert.assertEquals(reader.getSequenceNames(), Collections.singletonList("chr1"));
+            Assert.assertEquals(reader.getSequenceDictionary().getSequence("chr1").getSequenceLength(), 1000000);
+        }
+    }
+
+    @Test
+    public void testStoreIsSmallerThanItsRecords() throws IOException {
+        final GVCFCohortStore store = new GVCFCohortStore(IOUtils.tempDir("gvcfstore.", ""));
+        final List<VariantContext> records = makeRecords(N_RECORDS, 0, "NA12878");
+        addSamples(store, records, "NA12878");
+
+        final VCFEncoder encoder = new VCFEncoder(makeHeader("NA12878"), true, false);
+        long textSize = 0;
+        for ( final VariantContext vc : records )
+            textSize += encoder.encode(vc).length() + 1;
+        Assert.assertTrue(store.getColumn("NA12878").length() * 4 < textSize,
+                "column of " + store.getColumn("NA12878").length() + " bytes is not much smaller than the " + textSize + " bytes of its records");
+    }
+
+    @Test
+    public void testQueryAcrossBlocks() throws IOException {
+        final GVCFCohortStore store = new GVCFCohortStore(IOUtils.tempDir("gvcfstore.", ""));
+        addSamples(store, makeRecords(N_RECORDS, 0, "NA12878"), "NA12878");
+
+        // the records on either side of every block boundary, including reference blocks that only span the query
+        final int lastOfFirstBlock = 1 + (GVCFColumnFormat.MAX_RECORDS_PER_BLOCK - 1) * 100;
+        try ( final GVCFCohortReader reader = open(store) ) {
+            Assert.assertEquals(starts(toList(reader.query("chr1", 1001, 1250))), Arrays.asList(1001, 1101, 1201));
+            Assert.assertEquals(starts(toList(reader.query("chr1", lastOfFirstBlock + 50, lastOfFirstBlock + 50))), Collections.singletonList(lastOfFirstBlock));
+            Assert.assertEquals(starts(toList(reader.query("chr1", lastOfFirstBlock + 50, lastOfFirstBlock + 150))), Arrays.asList(lastOfFirstBlock, lastOfFirstBlock + 100));
+            Assert.assertEquals(toList(reader.query("chr1", 1, 100 * N_RECORDS)).size(), N_RECORDS);
+            Assert.assertTrue(toList(reader.query("chr1", 100 * N_RECORDS + 1, 100 * N_RECORDS + 1000)).isEmpty());
+            Assert.assertTrue(toList(reader.query("chr2", 1, 1000)).isEmpty());
+        }
+    }
+
+    @Test
+    public void testMergedRecordsAreSorted() throws IOException {
+        final GVCFCohortStore store = new GVCFCohortStore(IOUtils.tempDir("gvcfstore.", ""));
+        final List<VariantContext> first = makeRecords(N_RECORDS, 0, "NA12878", "NA12891");
+        final List<VariantContext> second = makeRecords(N_RECORDS / 2, 50, "NA12892");
+        addSamples(store, first, "NA12878", "NA12891");
+        addSamples(store, second, "NA12892");
+
+        try ( final GVCFCohortReader reader = open(store) ) {
+            Assert.assertEquals(((VCFHeader)reader.getHeader()).getGenotypeSamples(), Arrays.asList("NA12878", "NA12891", "NA12892"));
+            final List<VariantContext> merged = toList(reader.iterator());
+            Assert.assertEquals(merged.size(), 2 * first.size() + second.size());
+            for ( int i = 1; i < merged.size(); i++ )
+                Assert.assertTrue(merged.get(i - 1).getStart() <= merged.get(i).getStart(), "records out of order at " + merged.get(i).getStart());
+
+            // records starting together come in the order their samples were added
+            Assert.assertEquals(merged.get(0).getGenotype(0).getSampleName(), "NA12878");
+            Assert.assertEquals(merged.get(1).getGenotype(0).getSampleName(), "NA12891");
+            Assert.assertEquals(merged.get(2).getGenotype(0).getSampleName(), "NA12892");
+
+            assertSameRecords(ofSample(merged, "NA12891"), first, "NA12891");
+            assertSameRecords(ofSample(merged, "NA12892"), second, "NA12892");
+        }
+    }
+
+    @Test
+    public void testPrioritizedValuePerSample() throws IOException {
+        final GVCFCohortStore store = new GVCFCohortStore(IOUtils.tempDir("gvcfstore.", ""));
+        addSamples(store, makeRecords(20, 0, "NA12878"), "NA12878");
+        addSamples(store, makeRecords(20, 50, "NA12891"), "NA12891");
+
+        final SAMSequenceDictionary dictionary = new SAMSequenceDictionary(Collections.singletonList(new SAMSequenceRecord("chr1", 1000000)));
+        final GenomeLocParser parser = new GenomeLocParser(dictionary);
+        try ( final GVCFCohortReader reader = open(store) ) {
+            // NA12878 has a reference block from 101 to 199 spanning 151, where NA12891 has a record starting
+            final List<VariantContext> picked = GVCFCohortReader.getPrioritizedValuePerSample(toList(reader.query("chr1", 151, 151)), parser.createGenomeLoc("chr1", 151));
+            Assert.assertEquals(picked.size(), 2);
+            Assert.assertEquals(picked.get(0).getGenotype(0).getSampleName(), "NA12878");
+            Assert.assertEquals(picked.get(0).getStart(), 101);
+            Assert.assertEquals(picked.get(1).getGenotype(0).getSampleName(), "NA12891");
+            Assert.assertEquals(picked.get(1).getStart(), 151);
+        }
+
+        // a record starting at the site is preferred over an earlier one of the same sample spanning it
+        final Allele deleted = Allele.create("AAAAAAAAAAAAAAAAAAAAA", true);
+        final Allele deletion = Allele.create("A");
+        final VariantContext spanning = new VariantContextBuilder("test", "chr1", 90, 110, Arrays.asList(deleted, deletion))
+                .genotypes(new GenotypeBuilder("NA12878", Arrays.asList(deleted, deletion)).make()).make();
+        final VariantContext starting = new VariantContextBuilder("test", "chr1", 100, 100, Arrays.asList(REF, NON_REF))
+                .genotypes(new GenotypeBuilder("NA12878", Arrays.asList(REF, REF)).make()).make();
+        Assert.assertEquals(GVCFCohortReader.getPrioritizedValuePerSample(Arrays.asList(spanning, starting), parser.createGenomeLoc("chr1", 100)),
+                Collections.singletonList(starting));
+        Assert.assertEquals(GVCFCohortReader.getPrioritizedValuePerSample(Arrays.asList(spanning, starting), parser.createGenomeLoc("chr1", 101)),
+                Collections.singletonList(spanning));
+    }
+
+    @Test
+    public void testStoreAddsSamplesIncrementally() throws IOException {
+        final GVCFCohortStore store = new GVCFCohortStore(IOUtils.tempDir("gvcfstore.", ""));
+        addSamples(store, makeRecords(50, 0, "NA12878", "NA12891"), "NA12878", "NA12891");
+        Assert.assertEquals(store.getColumns(), Arrays.asList(store.getColumn("NA12878"), store.getColumn("NA12891")));
+
+        addSamples(store, makeRecords(50, 0, "NA12892"), "NA12892");
+        Assert.assertEquals(store.getColumns(), Arrays.asList(store.getColumn("NA12878"), store.getColumn("NA12891"), store.getColumn("NA12892")));
+        Assert.assertTrue(GVCFCohortStore.isManifest(store.getManifest()));
+    }
+
+    @Test(expectedExceptions = UserException.BadInput.class)
+    public void testStoreRejectsExistingSample() {
+        final GVCFCohortStore store = new GVCFCohortStore(IOUtils.tempDir("gvcfstore.", ""));
+        addSamples(store, Collections.<VariantContext>emptyList(), "NA12878");
+        store.addSamples().writeHeader(makeHeader("NA12891", "NA12878"));
+    }
+
+    @Test(expectedExceptions = UserException.BadInput.class)
+    public void testStoreRejectsMultiSampleRecords() {
+        final VariantContextWriter writer = new GVCFCohortStore(IOUtils.tempDir("gvcfstore.", "")).addSamples();
+        writer.writeHeader(makeHeader("NA12878", "NA12891"));
+        writer.add(makeRecords(1, 0, "NA12878", "NA12891").get(0));
+    }
+
+    @Test
+    public void testColumnNamesAreDistinct() {
+        final GVCFCohortStore store = new GVCFCohortStore(IOUtils.tempDir("gvcfstore.", ""));
+        final String[] samples = { "NA 12878", "NA_12878", "NA%2012878", "NA/12878", "NA12878" };
+        final Set<File> columns = new HashSet<>();
+        for ( final String sample : samples )
+            columns.add(store.getColumn(sample));
+        Assert.assertEquals(columns.size(), samples.length);
+        Assert.assertEquals(store.getColumn("NA_12878.b-1").getName(), "NA_12878.b-1" + GVCFColumnFormat.FILE_EXTENSION);
+        Assert.assertEquals(store.getColumn("NA/12878").getParentFile(), store.getColumn("NA12878").getParentFile());
+    }
+
+    @Test
+    public void testStoreReplacesLeftoverColumns() throws IOException {
+        final GVCFCohortStore store = new GVCFCohortStore(IOUtils.tempDir("gvcfstore.", ""));
+
+        // an addition interrupted before closing leaves partial columns, and possibly stale complete ones, unlisted
+        final VariantContextWriter interrupted = store.addSamples();
+        interrupted.writeHeader(makeHeader("NA12878", "NA12891"));
+        interrupted.add(new VariantContextBuilder(makeRecords(1, 0, "NA12878").get(0)).make());
+        Assert.assertTrue(store.getColumn("NA12891").createNewFile());
+        Assert.assertTrue(store.getColumns().isEmpty());
+
+        final List<VariantContext> records = makeRecords(50, 0, "NA12878", "NA12891");
+        addSamples(store, records, "NA12878", "NA12891");
+
+        Assert.assertEquals(store.getColumns(), Arrays.asList(store.getColumn("NA12878"), store.getColumn("NA12891")));
+        try ( final GVCFCohortReader reader = open(store) ) {
+            assertSameRecords(ofSample(toList(reader.iterator()), "NA12891"), records, "NA12891");
+        }
+    }
+
+    @Test
+    public void testCanDecode() {
+        final GVCFCohortStore store = new GVCFCohortStore(IOUtils.tempDir("gvcfstore.", ""));
+        addSamples(store, Collections.<VariantContext>emptyList(), "NA12878");
+
+        final GVCFCohortCodec codec = new GVCFCohortCodec();
+        Assert.assertTrue(codec.canDecode(store.getManifest().getAbsolutePath()));
+        Assert.assertFalse(codec.canDecode(store.getColumn("NA12878").getAbsolutePath()));
+        Assert.assertFalse(codec.canDecode(publicTestDir + "exampleDBSNP.vcf"));
+    }
+}
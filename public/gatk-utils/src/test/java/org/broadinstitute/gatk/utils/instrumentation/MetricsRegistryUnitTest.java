@@ -0,0 +1,166 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.instrumentation;
+
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.broadinstitute.gatk.utils.report.GATKReport;
+import org.broadinstitute.gatk.utils.report.GATKReportTable;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class MetricsRegistryUnitTest extends BaseTest {
+
+    @DataProvider(name = "BucketValues")
+    public Object[][] makeBucketValues() {
+        final List<Object[]> tests = new ArrayList<>();
+        for ( final long value : new long[]{0, 1, 15, 16, 17, 31, 32, 33, 1000, 123456789, Long.MAX_VALUE >> 1, Long.MAX_VALUE} )
+            tests.add(new Object[]{value});
+        return tests.toArray(new Object[][]{});
+    }
+
+    @Test(dataProvider = "BucketValues")
+    public void testBucketBounds(final long value) {
+        final int index = LatencyHistogram.bucketIndex(value);
+        Assert.assertTrue(index >= 0 && index < LatencyHistogram.BUCKET_COUNT, "bad bucket " + index);
+        Assert.assertTrue(LatencyHistogram.bucketLowerBound(index) <= value, "lower bound above " + value);
+        Assert.assertTrue(LatencyHistogram.bucketUpperBound(index) >= value, "upper bound below " + value);
+        // buckets are within 1 / SUB_BUCKET_COUNT of their values
+        final long width = LatencyHistogram.bucketUpperBound(index) - LatencyHistogram.bucketLowerBound(index) + 1;
+        Assert.assertTrue(width == 1 || width <= value / LatencyHistogram.SUB_BUCKET_COUNT, "bucket too wide for " + value);
+    }
+
+    @Test
+    public void testBucketsAreContiguous() {
+        for ( int i = 1; i < LatencyHistogram.BUCKET_COUNT; i++ ) {
+            Assert.assertEquals(LatencyHistogram.bucketLowerBound(i), LatencyHistogram.bucketUpperBound(i - 1) + 1, "gap before bucket " + i);
+            Assert.assertEquals(LatencyHistogram.bucketIndex(LatencyHistogram.bucketLowerBound(i)), i);
+        }
+        Assert.assertEquals(LatencyHistogram.bucketUpperBound(LatencyHistogram.BUCKET_COUNT - 1), Long.MAX_VALUE);
+    }
+
+    @Test
+    public void testPercentiles() {
+        final LatencyHistogram histogram = new MetricsRegistry().histogram(Subsystem.PAIRHMM, "test");
+        final Random random = new Random(42);
+        final long[] values = new long[10000];
+        long total = 0;
+        for ( int i = 0; i < values.length; i++ ) {
+            values[i] = random.nextInt(1000000);
+            total += values[i];
+            histogram.record(values[i]);
+        }
+        java.util.Arrays.sort(values);
+
+        final LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        Assert.assertEquals(snapshot.getCount(), values.length);
+        Assert.assertEquals(snapshot.getTotalNanos(), total);
+        Assert.assertEquals(snapshot.getMaxNanos(), values[values.length - 1]);
+        Assert.assertEquals(snapshot.getPercentileNanos(100), values[values.length - 1]);
+        for ( final double percentile : new double[]{1, 50, 90, 99, 99.9} ) {
+            final long exact = values[(int)Math.ceil(percentile / 100 * values.length) - 1];
+            final long estimate = snapshot.getPercentileNanos(percentile);
+            Assert.assertTrue(estimate >= exact && estimate <= exact + exact / LatencyHistogram.SUB_BUCKET_COUNT,
+                    "percentile " + percentile + " was " + estimate + " but should be close above " + exact);
+        }
+    }
+
+    @Test
+    public void testEmptyHistogram() {
+        final LatencyHistogram.Snapshot snapshot = new MetricsRegistry().histogram(Subsystem.WRITER, "test").snapshot();
+        Assert.assertEquals(snapshot.getCount(), 0);
+        Assert.assertEquals(snapshot.getPercentileNanos(50), 0);
+        Assert.assertEquals(snapshot.getMeanNanos(), 0.0);
+    }
+
+    @Test
+    public void testConcurrentRecording() throws InterruptedException {
+        final MetricsRegistry registry = new MetricsRegistry();
+        final Counter counter = registry.counter(Subsystem.BAM_DECODE, "reads");
+        final LatencyHistogram histogram = registry.histogram(Subsystem.BAM_DECODE, "next");
+        final int nThreads = 4, nEvents = 100000;
+        final Thread[] threads = new Thread[nThreads];
+        for ( int t = 0; t < nThreads; t++ ) {
+            final int thread = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for ( int i = 0; i < nEvents; i++ ) {
+                        counter.increment();
+                        histogram.record(thread * nEvents + i);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for ( final Thread thread : threads )
+            thread.join();
+
+        Assert.assertEquals(counter.get(), nThreads * nEvents);
+        Assert.assertEquals(histogram.snapshot().getCount(), nThreads * nEvents);
+        Assert.assertEquals(histogram.snapshot().getMaxNanos(), nThreads * nEvents - 1);
+    }
+
+    @Test
+    public void testRegistry() throws IOException {
+        final MetricsRegistry registry = new MetricsRegistry();
+        final Counter counter = registry.counter(Subsystem.ROD_DECODE, "features");
+        Assert.assertSame(registry.counter(Subsystem.ROD_DECODE, "features"), counter);
+        Assert.assertNotSame(registry.counter(Subsystem.BAM_DECODE, "features"), counter);
+        final LatencyHistogram histogram = registry.histogram(Subsystem.ASSEMBLY, "runLocalAssembly");
+        Assert.assertSame(registry.histogram(Subsystem.ASSEMBLY, "runLocalAssembly"), histogram);
+
+        counter.add(12);
+        histogram.record(1000);
+        histogram.record(3000);
+        Assert.assertEquals(registry.getCount("RODDecode.features"), 12);
+        Assert.assertEquals(registry.getCount("Assembly.runLocalAssembly"), 2);
+        Assert.assertEquals(registry.getTotalNanos("Assembly.runLocalAssembly"), 4000);
+        Assert.assertEquals(registry.getMetrics().length, 3);
+
+        final File file = createTempFile("metrics", ".grp");
+        registry.writeReport(file);
+        final GATKReport report = new GATKReport(file);
+        final GATKReportTable counters = report.getTable(MetricsRegistry.COUNTERS_TABLE_NAME);
+        Assert.assertEquals(counters.getNumRows(), 2);
+        final int row = counters.findRowByData("RODDecode", "features");
+        Assert.assertEquals(Long.parseLong(counters.get(row, "Count").toString()), 12);
+        final GATKReportTable latencies = report.getTable(MetricsRegistry.LATENCIES_TABLE_NAME);
+        Assert.assertEquals(latencies.getNumRows(), 1);
+        Assert.assertEquals(Long.parseLong(latencies.get(0, "TotalNanos").toString()), 4000);
+        Assert.assertEquals(Long.parseLong(latencies.get(0, "MaxNanos").toString()), 3000);
+
+        registry.reset();
+        Assert.assertEquals(counter.get(), 0);
+        Assert.assertEquals(histogram.snapshot().getCount(), 0);
+    }
+}
@@ -0,0 +1,179 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.locusiterator;
+
+import htsjdk.samtools.Cigar;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.TextCigarCodec;
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.broadinstitute.gatk.utils.GenomeLoc;
+import org.broadinstitute.gatk.utils.GenomeLocParser;
+import org.broadinstitute.gatk.utils.GenomeLocSortedSet;
+import org.broadinstitute.gatk.utils.Utils;
+import org.broadinstitute.gatk.utils.contexts.AlignmentContext;
+import org.broadinstitute.gatk.utils.pileup.PileupElement;
+import org.broadinstitute.gatk.utils.sam.ArtificialSAMUtils;
+import org.broadinstitute.gatk.utils.sam.GATKSAMRecord;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.*;
+
+public class ReadCoverageSweepUnitTest extends BaseTest {
+    private static final int CONTIG_LENGTH = 400;
+    private static final int MIN_BASE_QUALITY = 20;
+
+    private SAMFileHeader header;
+    private GenomeLocParser parser;
+
+    @BeforeClass
+    public void init() {
+        header = ArtificialSAMUtils.createArtificialSamHeader(3, 1, CONTIG_LENGTH);
+        parser = new GenomeLocParser(header.getSequenceDictionary());
+    }
+
+    @DataProvider(name = "SweepTest")
+    public Object[][] makeSweepTests() {
+        final List<Object[]> tests = new LinkedList<Object[]>();
+        for ( final int nReads : Arrays.asList(0, 1, 10, 100) )
+            for ( final boolean includeDeletions : Arrays.asList(true, false) )
+                for ( final boolean wholeContigs : Arrays.asList(true, false) )
+                    tests.add(new Object[]{nReads, includeDeletions, wholeContigs});
+        return tests.toArray(new Object[][]{});
+    }
+
+    @Test(dataProvider = "SweepTest")
+    public void testSweepMatchesPileups(final int nReads, final boolean includeDeletions, final boolean wholeContigs) {
+        final Random random = Utils.getRandomGenerator();
+        final List<String> cigars = Arrays.asList("50M", "10S40M", "40M10S", "20M3D30M", "20M2I28M", "2H5S20M1I1D20M3S",
+                "15M5N35M", "25M1D1I25M", "10M2I3D10M1I20M", "1I49M", "20M100N30M");
+
+        // reads on the first and last contigs only, so that the middle one has no coverage at all
+        final List<GATKSAMRecord> reads = new ArrayList<GATKSAMRecord>();
+        for ( int i = 0; i < nReads; i++ ) {
+            final Cigar cigar = TextCigarCodec.decode(cigars.get(random.nextInt(cigars.size())));
+            final int contig = random.nextBoolean() ? 0 : 2;
+            final int start = 1 + random.nextInt(CONTIG_LENGTH - cigar.getReferenceLength());
+            final byte[] bases = Utils.dupBytes((byte) 'A', cigar.getReadLength());
+            final byte[] quals = new byte[bases.length];
+            for ( int j = 0; j < quals.length; j++ )
+                quals[j] = (byte) random.nextInt(41);
+            final GATKSAMRecord read = ArtificialSAMUtils.createArtificialRead(header, "read" + i, contig, start, bases, quals, cigar.toString());
+            if ( random.nextBoolean() ) {
+                // short fragments put some of the bases in the adaptor
+                read.setReadPairedFlag(true);
+                read.setMateReferenceIndex(contig);
+                read.setReadNegativeStrandFlag(random.nextBoolean());
+                read.setMateAlignmentStart(start + random.nextInt(40));
+                read.setInferredInsertSize(20 + random.nextInt(40));
+            }
+            reads.add(read);
+        }
+        Collections.sort(reads, new Comparator<GATKSAMRecord>() {
+            @Override
+            public int compare(final GATKSAMRecord o1, final GATKSAMRecord o2) {
+                final int byContig = o1.getReferenceIndex() - o2.getReferenceIndex();
+                return byContig != 0 ? byContig : o1.getAlignmentStart() - o2.getAlignmentStart();
+            }
+        });
+
+        final GenomeLocSortedSet intervals;
+        if ( wholeContigs ) {
+            intervals = GenomeLocSortedSet.createSetFromSequenceDictionary(header.getSequenceDictionary());
+        } else {
+            intervals = new GenomeLocSortedSet(parser);
+            for ( final String contig : Arrays.asList("chr1", "chr2", "chr3") ) {
+                intervals.add(parser.createGenomeLoc(contig, 1, 1));
+                intervals.add(parser.createGenomeLoc(contig, 30, 120));
+                intervals.add(parser.createGenomeLoc(contig, 200, 230));
+                intervals.add(parser.createGenomeLoc(contig, 300, CONTIG_LENGTH));
+            }
+        }
+
+        // depths by contig and position, as reported by the sweep
+        final int[][][] depths = new int[3][CONTIG_LENGTH + 1][];
+        final List<GenomeLoc> reported = new ArrayList<GenomeLoc>();
+        final ReadCoverageSweep sweep = new ReadCoverageSweep(2, includeDeletions, intervals, new ReadCoverageSweep.SegmentHandler() {
+            @Override
+            public void addSegment(final GenomeLoc interval, final int start, final int stop, final int[] segmentDepths) {
+                Assert.assertTrue(interval.getStart() <= start && start <= stop && stop <= interval.getStop(), "segment " + start + "-" + stop + " outside of " + interval);
+                final GenomeLoc segment = parser.createGenomeLoc(interval.getContig(), start, stop);
+                if ( ! reported.isEmpty() ) {
+                    final GenomeLoc last = reported.get(reported.size() - 1);
+                    Assert.assertTrue(last.isBefore(segment) && ! last.overlapsP(segment), "segment " + segment + " reported after " + last);
+                }
+                reported.add(segment);
+                for ( int pos = start; pos <= stop; pos++ )
+                    depths[interval.getContigIndex()][pos] = segmentDepths.clone();
+            }
+        });
+        for ( final GATKSAMRecord read : reads ) {
+            sweep.addRead(read, 0);
+            sweep.addRead(read, 1, MIN_BASE_QUALITY);
+        }
+        sweep.finish();
+
+        final LocusIteratorByState libs = new LocusIteratorByState(reads.iterator(), LocusIteratorByState.NO_DOWNSAMPLING,
+                includeDeletions, parser, LocusIteratorByState.sampleListForSAMWithoutReadGroups(), false);
+        final Map<GenomeLoc, int[]> expectedDepths = new HashMap<GenomeLoc, int[]>();
+        while ( libs.hasNext() ) {
+            final AlignmentContext context = libs.next();
+            final int[] expected = new int[2];
+            for ( final PileupElement e : context.getBasePileup() ) {
+                expected[0]++;
+                if ( e.isDeletion() || e.getQual() >= MIN_BASE_QUALITY )
+                    expected[1]++;
+            }
+            expectedDepths.put(context.getLocation(), expected);
+        }
+
+        for ( int contig = 0; contig < 3; contig++ ) {
+            for ( int pos = 1; pos <= CONTIG_LENGTH; pos++ ) {
+                final GenomeLoc loc = parser.createGenomeLoc(header.getSequence(contig).getSequenceName(), pos);
+                if ( ! intervals.overlaps(loc) ) {
+                    Assert.assertNull(depths[contig][pos], "reported " + loc + " outside of the intervals");
+                } else {
+                    final int[] expected = expectedDepths.containsKey(loc) ? expectedDepths.get(loc) : new int[2];
+                    Assert.assertNotNull(depths[contig][pos], "never reported " + loc);
+                    Assert.assertEquals(depths[contig][pos], expected, "depths at " + loc);
+                }
+            }
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testUnsortedReads() {
+        final ReadCoverageSweep sweep = new ReadCoverageSweep(1, true, GenomeLocSortedSet.createSetFromSequenceDictionary(header.getSequenceDictionary()),
+                new ReadCoverageSweep.SegmentHandler() {
+                    @Override
+                    public void addSegment(final GenomeLoc interval, final int start, final int stop, final int[] depths) { }
+                });
+        sweep.addRead(ArtificialSAMUtils.createArtificialRead(header, "read1", 0, 100, 10), 0);
+        sweep.addRead(ArtificialSAMUtils.createArtificialRead(header, "read2", 0, 10, 10), 0);
+    }
+}
@@ -0,0 +1,120 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.refdata.utils;
+
+import htsjdk.tribble.readers.LineIterator;
+import htsjdk.tribble.readers.LineIteratorImpl;
+import htsjdk.tribble.readers.SynchronousLineReader;
+import htsjdk.variant.variantcontext.Genotype;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCFCodec;
+import htsjdk.variant.vcf.VCFHeader;
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.StringReader;
+import java.util.*;
+
+public class LazyGenotypeSubsetterUnitTest extends BaseTest {
+    private static final String HEADER =
+            "##fileformat=VCFv4.2\n" +
+            "##FORMAT=<ID=GT,Number=1,Type=String,Description=\"Genotype\">\n" +
+            "##FORMAT=<ID=DP,Number=1,Type=Integer,Description=\"Depth\">\n" +
+            "##FORMAT=<ID=PL,Number=G,Type=Integer,Description=\"Likelihoods\">\n" +
+            "##FORMAT=<ID=FT,Number=1,Type=String,Description=\"Filter\">\n" +
+            "##contig=<ID=1,length=1000>\n" +
+            "#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT\tA\tB\tC\tD\n";
+
+    private static final String[] RECORDS = {
+            "1\t10\t.\tA\tC\t50\tPASS\t.\tGT:DP:PL\t0/0:10:0,30,300\t0/1:12:40,0,200\t1/1:8:300,20,0\t./.:.:.",
+            "1\t20\t.\tG\tT,GA\t50\tPASS\t.\tGT:DP:FT\t0/2:5:PASS\t1/2:7:lowDP\t0/0:9:PASS\t0|1:3:PASS",
+            "1\t30\t.\tT\tA\t50\tPASS\t.\tGT\t0/1\t0/0\t1/1\t0/1"
+    };
+
+    @DataProvider(name = "SampleSubsets")
+    public Object[][] makeSampleSubsets() {
+        return new Object[][]{
+                {new HashSet<>(Arrays.asList("A", "B", "C", "D"))},
+                {new HashSet<>(Arrays.asList("B", "D"))},
+                {new HashSet<>(Arrays.asList("D"))},
+                {new HashSet<>(Arrays.asList("A", "Z"))},
+                {Collections.<String>emptySet()}
+        };
+    }
+
+    @Test(dataProvider = "SampleSubsets")
+    public void testSubsetMatchesFullDecoding(final Set<String> samples) {
+        final VCFCodec codec = new VCFCodec();
+        final VCFHeader header = readHeader(codec);
+        final LazyGenotypeSubsetter subsetter = new LazyGenotypeSubsetter(header, samples, false);
+
+        for ( final String record : RECORDS ) {
+            final VariantContext subset = subsetter.subset(codec.decode(record));
+            final VariantContext full = codec.decode(record);
+
+            final List<String> expectedSamples = new ArrayList<>();
+            for ( final String sample : header.getGenotypeSamples() )
+                if ( samples.contains(sample) )
+                    expectedSamples.add(sample);
+
+            Assert.assertEquals(subset.getNSamples(), expectedSamples.size());
+            Assert.assertEquals(subset.getAlleles(), full.getAlleles());
+            Assert.assertEquals(new ArrayList<>(subset.getSampleNamesOrderedByName()), expectedSamples);
+            for ( final String sample : expectedSamples ) {
+                final Genotype expected = full.getGenotype(sample);
+                final Genotype actual = subset.getGenotype(sample);
+                Assert.assertEquals(actual.toString(), expected.toString(), "Genotypes of " + sample + " differ at " + full.getStart());
+            }
+        }
+    }
+
+    @Test
+    public void testDecodedRecordsAreUnchanged() {
+        final VCFCodec codec = new VCFCodec();
+        final LazyGenotypeSubsetter subsetter = new LazyGenotypeSubsetter(readHeader(codec), Collections.singleton("A"), false);
+
+        final VariantContext vc = codec.decode(RECORDS[0]);
+        vc.getGenotypes().size();
+        vc.getGenotype("B");
+        Assert.assertSame(subsetter.subset(vc), vc);
+    }
+
+    @Test
+    public void testCutColumns() {
+        final VCFCodec codec = new VCFCodec();
+        final LazyGenotypeSubsetter subsetter = new LazyGenotypeSubsetter(readHeader(codec), new HashSet<>(Arrays.asList("B", "D")), false);
+        Assert.assertEquals(subsetter.getNumberOfKeptSamples(), 2);
+        Assert.assertEquals(subsetter.cutColumns("GT\ta\tb\tc\td"), "GT\tb\td");
+        Assert.assertEquals(subsetter.cutColumns("GT\ta\t\tc\t"), "GT\t\t");
+    }
+
+    private static VCFHeader readHeader(final VCFCodec codec) {
+        final LineIterator lines = new LineIteratorImpl(new SynchronousLineReader(new StringReader(HEADER)));
+        return (VCFHeader)codec.readActualHeader(lines);
+    }
+}
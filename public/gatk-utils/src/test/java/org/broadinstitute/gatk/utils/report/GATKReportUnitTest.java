@@ -25,6 +25,7 @@
 
 package org.broadinstitute.gatk.utils.report;
 
+import org.apache.commons.io.FileUtils;
 import org.broadinstitute.gatk.utils.BaseTest;
 import org.broadinstitute.gatk.utils.report.GATKReport;
 import org.broadinstitute.gatk.utils.report.GATKReportColumn;
@@ -286,4 +287,68 @@ public class GATKReportUnitTest extends BaseTest {
             System.err.format("IOException: %s%n", x);
         }
     }
+
+    @Test
+    public void testParseFixedWidthValues() throws IOException {
+        final GATKReportTable table = new GATKReportTable("Values", "fixed width values", 3, GATKReportTable.TableSortingWay.DO_NOT_SORT);
+        table.addColumn("Name", "%s");
+        table.addColumn("Count", "%d");
+        table.addColumn("Fraction", "%.4f");
+        final Object[][] rows = {
+                {"a", 0L, 0.0},
+                {"a", -12L, -0.0001},
+                {"bb", 123456789012345678L, 0.5},
+                {"bb", Long.MIN_VALUE, 1234.5678},
+                {"c", -1L, Double.NaN},
+                {"c", 7L, -3.25}
+        };
+        for ( int i = 0; i < rows.length; i++ )
+            for ( int j = 0; j < rows[i].length; j++ )
+                table.set(i, j, rows[i][j]);
+
+        final File file = createTempFile("GATKReportFixedWidth-UnitTest", ".tbl");
+        final PrintStream ps = new PrintStream(file);
+        new GATKReport(table).print(ps);
+        ps.close();
+
+        final GATKReportTable read = new GATKReport(file).getTable("Values");
+        Assert.assertEquals(read.getNumRows(), rows.length);
+        for ( int i = 0; i < rows.length; i++ ) {
+            Assert.assertEquals(read.get(i, "Name"), rows[i][0]);
+            Assert.assertEquals(read.get(i, "Count"), rows[i][1]);
+            Assert.assertEquals(read.get(i, "Fraction"), Double.parseDouble(String.format("%.4f", rows[i][2])));
+        }
+        Assert.assertTrue(read.equals(table));
+        Assert.assertTrue(read.containsRowID(rows.length - 1));
+        Assert.assertFalse(read.containsRowID(rows.length));
+    }
+
+    @Test
+    public void testTableWriterMatchesTable() throws IOException {
+        final GATKReport report = GATKReport.newSimpleReport("Streamed", "Interval", "Depth", "Passed");
+        final GATKReportTableWriter writer = new GATKReportTableWriter("Streamed", "A simplified GATK table report");
+        writer.addColumn("Interval");
+        writer.addColumn("Depth");
+        writer.addColumn("Passed");
+
+        final Random random = new Random(42);
+        for ( int i = 0; i < 100; i++ ) {
+            final Object[] row = { "chr1:" + random.nextInt(100000), random.nextDouble() * 100, i % 3 == 0 ? null : random.nextBoolean() };
+            report.addRow(row);
+            writer.addRow(row);
+        }
+        Assert.assertEquals(writer.getNumRows(), 100);
+
+        final File expected = createTempFile("GATKReportTable-UnitTest", ".tbl");
+        final PrintStream expectedStream = new PrintStream(expected);
+        report.print(expectedStream);
+        expectedStream.close();
+
+        final File streamed = createTempFile("GATKReportTableWriter-UnitTest", ".tbl");
+        final PrintStream streamedStream = new PrintStream(streamed);
+        writer.writeReport(streamedStream);
+        streamedStream.close();
+
+        Assert.assertEquals(FileUtils.readFileToString(streamed), FileUtils.readFileToString(expected));
+    }
 }
@@ -0,0 +1,133 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.smithwaterman;
+
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.broadinstitute.gatk.utils.Utils;
+import org.broadinstitute.gatk.utils.sam.CigarUtils;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class FastSWPairwiseAlignmentUnitTest extends BaseTest {
+    private final static byte[] BASES = {'A', 'C', 'G', 'T'};
+
+    private static byte[] randomBases(final Random random, final int length) {
+        final byte[] bases = new byte[length];
+        for ( int i = 0; i < length; i++ )
+            bases[i] = BASES[random.nextInt(BASES.length)];
+        return bases;
+    }
+
+    /**
+     * Applies a few random SNPs and small indels to bases
+     */
+    private static byte[] mutate(final Random random, final byte[] bases, final int nEvents) {
+        final StringBuilder builder = new StringBuilder(new String(bases));
+        for ( int i = 0; i < nEvents && builder.length() > 10; i++ ) {
+            final int pos = random.nextInt(builder.length() - 5);
+            switch ( random.nextInt(3) ) {
+                case 0: builder.setCharAt(pos, (char) BASES[random.nextInt(BASES.length)]); break;
+                case 1: builder.delete(pos, pos + 1 + random.nextInt(4)); break;
+                default: builder.insert(pos, new String(randomBases(random, 1 + random.nextInt(4)))); break;
+            }
+        }
+        return builder.toString().getBytes();
+    }
+
+    @DataProvider(name = "RandomAlignments")
+    public Object[][] makeRandomAlignments() {
+        final List<Object[]> tests = new ArrayList<>();
+        final Random random = new Random(42);
+        final Parameters[] parameterSets = {SWParameterSet.ORIGINAL_DEFAULT.parameters, SWParameterSet.STANDARD_NGS.parameters, CigarUtils.NEW_SW_PARAMETERS};
+
+        for ( final SWPairwiseAlignment.OVERHANG_STRATEGY strategy : SWPairwiseAlignment.OVERHANG_STRATEGY.values() ) {
+            for ( final Parameters parameters : parameterSets ) {
+                for ( final int length : new int[]{1, 2, 10, 50, 200} ) {
+                    for ( int i = 0; i < 5; i++ ) {
+                        final byte[] ref = randomBases(random, length);
+                        tests.add(new Object[]{ref, mutate(random, ref, 1 + length / 20), parameters, strategy});
+                        tests.add(new Object[]{ref, randomBases(random, 1 + random.nextInt(length + 5)), parameters, strategy});
+                    }
+                }
+            }
+        }
+
+        return tests.toArray(new Object[][]{});
+    }
+
+    @Test(dataProvider = "RandomAlignments")
+    public void testFastMatchesOriginal(final byte[] ref, final byte[] alt, final Parameters parameters, final SWPairwiseAlignment.OVERHANG_STRATEGY strategy) {
+        final SmithWaterman original = SWImplementation.ORIGINAL.align(ref, alt, parameters, strategy);
+        final SmithWaterman fast = SWImplementation.FAST.align(ref, alt, parameters, strategy);
+        Assert.assertEquals(fast.getCigar(), original.getCigar());
+        Assert.assertEquals(fast.getAlignmentStart2wrt1(), original.getAlignmentStart2wrt1());
+    }
+
+    @Test(dataProvider = "RandomAlignments")
+    public void testBandedMatchesOriginalForSmallIndels(final byte[] ref, final byte[] alt, final Parameters parameters, final SWPairwiseAlignment.OVERHANG_STRATEGY strategy) {
+        if ( Math.abs(ref.length - alt.length) > 10 )
+            return;
+        final SmithWaterman original = SWImplementation.ORIGINAL.align(ref, alt, parameters, strategy);
+        final SmithWaterman banded = SWImplementation.BANDED.align(ref, alt, parameters, strategy);
+        Assert.assertEquals(banded.getCigar(), original.getCigar());
+        Assert.assertEquals(banded.getAlignmentStart2wrt1(), original.getAlignmentStart2wrt1());
+    }
+
+    @Test
+    public void testBuffersAreReusedAcrossSizes() {
+        // a big alignment followed by a small one must not see any state left over from the first
+        final Random random = new Random(13);
+        final byte[] bigRef = randomBases(random, 500);
+        new FastSWPairwiseAlignment(bigRef, mutate(random, bigRef, 20), CigarUtils.NEW_SW_PARAMETERS);
+
+        final String reference = "AAA" + Utils.dupString('C', 5);
+        final String read = Utils.dupString('C', 5) + "GGG";
+        final SmithWaterman sw = new FastSWPairwiseAlignment(reference.getBytes(), read.getBytes());
+        Assert.assertEquals(sw.getAlignmentStart2wrt1(), 3);
+        Assert.assertEquals(sw.getCigar().toString(), "5M3S");
+    }
+
+    @Test
+    public void testNarrowBand() {
+        final String ref = "ACGTACGTTTGACCAGTACGATCGAT";
+        final String alt = "ACGTACGTTTGACAGTACGATCGAT";
+        final SmithWaterman banded = new BandedSWPairwiseAlignment(ref.getBytes(), alt.getBytes(), CigarUtils.NEW_SW_PARAMETERS,
+                SWPairwiseAlignment.OVERHANG_STRATEGY.SOFTCLIP, 0);
+        final SmithWaterman original = new SWPairwiseAlignment(ref.getBytes(), alt.getBytes(), CigarUtils.NEW_SW_PARAMETERS);
+        Assert.assertEquals(banded.getCigar(), original.getCigar());
+        Assert.assertEquals(banded.getAlignmentStart2wrt1(), original.getAlignmentStart2wrt1());
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testNegativeBandWidth() {
+        new BandedSWPairwiseAlignment("ACGT".getBytes(), "ACGT".getBytes(), CigarUtils.NEW_SW_PARAMETERS, SWPairwiseAlignment.OVERHANG_STRATEGY.SOFTCLIP, -1);
+    }
+}
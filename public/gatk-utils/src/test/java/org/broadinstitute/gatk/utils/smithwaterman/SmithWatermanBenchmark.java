@@ -30,12 +30,12 @@ import com.google.caliper.SimpleBenchmark;
 import org.broadinstitute.gatk.utils.Utils;
 
 /**
- * Caliper microbenchmark of parsing a VCF file
+ * Caliper microbenchmark comparing the Smith-Waterman implementations
  */
 public class SmithWatermanBenchmark extends SimpleBenchmark {
 
-    @Param({"Original"})
-    String version; // set automatically by framework
+    @Param({"ORIGINAL", "FAST", "BANDED"})
+    SWImplementation version; // set automatically by framework
 
     @Param({"10", "50", "100", "500"})
     int sizeOfMiddleRegion; // set automatically by framework
@@ -73,10 +73,7 @@ public class SmithWatermanBenchmark extends SimpleBenchmark {
 
     public void timeSW(int rep) {
         for ( int i = 0; i < rep; i++ ) {
-            final SmithWaterman sw;
-            if ( version.equals("Greedy") )
-                throw new IllegalArgumentException("Unsupported implementation");
-            sw = new SWPairwiseAlignment(refString.getBytes(), hapString.getBytes());
+            final SmithWaterman sw = version.align(refString.getBytes(), hapString.getBytes(), SWParameterSet.ORIGINAL_DEFAULT.parameters);
             sw.getCigar();
         }
     }